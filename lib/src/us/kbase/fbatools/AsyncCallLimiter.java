@@ -0,0 +1,114 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * A non-blocking counting semaphore for asynchronous calls. Calls beyond the
+ * limit are queued rather than parked on a thread, so the number of calls
+ * waiting for a permit is bounded only by memory. Queued calls are started
+ * on the dispatch executor, never on the thread that released the permit, so
+ * a long run of calls failing synchronously cannot grow the stack.
+ */
+public class AsyncCallLimiter {
+    private final int maxConcurrent;
+    private final Executor dispatcher;
+    private final Queue<Runnable> waiting = new ArrayDeque<Runnable>();
+    private int running = 0;
+
+    /** Constructs a limiter.
+     * @param maxConcurrent the maximum number of calls in flight at once;
+     * zero or less means no limit.
+     */
+    public AsyncCallLimiter(int maxConcurrent) {
+        this(maxConcurrent, ForkJoinPool.commonPool());
+    }
+
+    /** Constructs a limiter.
+     * @param maxConcurrent the maximum number of calls in flight at once;
+     * zero or less means no limit.
+     * @param dispatcher the executor that starts queued calls.
+     */
+    public AsyncCallLimiter(int maxConcurrent, Executor dispatcher) {
+        this.maxConcurrent = maxConcurrent;
+        this.dispatcher = dispatcher;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /** Get the number of calls currently holding a permit.
+     * @return the number of running calls.
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /** Get the number of calls queued for a permit.
+     * @return the number of waiting calls.
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /** Starts a call once a permit is available and releases the permit when
+     * the call's future completes.
+     * @param call starts the call and returns its future.
+     * @return a future completing with the result of the call.
+     */
+    public <T> CompletableFuture<T> submit(final Supplier<CompletableFuture<T>> call) {
+        final CompletableFuture<T> ret = new CompletableFuture<T>();
+        Runnable start = new Runnable() {
+            @Override
+            public void run() {
+                CompletableFuture<T> f;
+                try {
+                    f = call.get();
+                } catch (Throwable e) {
+                    release();
+                    ret.completeExceptionally(e);
+                    return;
+                }
+                f.whenComplete((res, err) -> {
+                    release();
+                    if (err != null) {
+                        ret.completeExceptionally(err);
+                    } else {
+                        ret.complete(res);
+                    }
+                });
+            }
+        };
+        boolean runNow;
+        synchronized (this) {
+            runNow = maxConcurrent <= 0 || running < maxConcurrent;
+            if (runNow) {
+                running++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (runNow) {
+            start.run();
+        }
+        return ret;
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = waiting.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            dispatcher.execute(next);
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import com.fasterxml.jackson.databind.JsonNode;
+import us.kbase.auth.AuthToken;
+
+/**
+ * <p>Chunked, resumable, parallel transfer of {@link File} payloads to and
+ * from the Shock blob store that shock_id refers to.</p>
+ * <p>An upload first hashes the file. If the store already holds a complete
+ * node with the same SHA-256, recorded in its transfer_sha256 attribute by
+ * an earlier upload, that node is reused and nothing is sent. Otherwise a
+ * node is created with one part per chunk and the chunks are sent as its
+ * parts, several at a time, each on its own connection and retried on
+ * failure. The store assembles the file when the last part arrives, and the
+ * MD5 it reports must match the local one. A download fetches byte ranges
+ * of a node in parallel, each written straight into its place in the
+ * target file, and checks the MD5 of the whole file at the end.</p>
+ * <p>Given a journal file, every finished chunk is recorded in it with its
+ * MD5 as a {@link PipelineJournal} entry, so a transfer that failed part
+ * way can simply be run again: it sends or fetches only the chunks that are
+ * missing, and downloaded chunks are hashed again before they are trusted.
+ * The entries are tied to the content hash and the chunk size, so a changed
+ * file starts afresh.</p>
+ * <pre>
+ * BlobTransfer transfer = new BlobTransfer(shockUrl, token);
+ * ModelTsvFiles files = ModelTsv.writeModel(dir, "iMR1", reactions, compounds);
+ * transfer.resolve(files.getReactionsFile());
+ * transfer.resolve(files.getCompoundsFile());
+ * </pre>
+ */
+public class BlobTransfer {
+    /** The node attribute holding the SHA-256 of an uploaded file. */
+    public static final String HASH_ATTRIBUTE = "transfer_sha256";
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long RETRY_DELAY_MS = 200;
+
+    private final URL url;
+    private final AuthToken token;
+    private long chunkSize = 64L << 20;
+    private int threads = 4;
+    private int retries = 3;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** Receives each chunk as soon as it is transferred. Called from the
+     * transfer threads, so implementations must be thread safe.
+     */
+    public interface Listener {
+        void chunkDone(String shockId, int chunk, int chunkCount, long bytes);
+    }
+
+    /** Constructs a transfer client.
+     * @param url the URL of the Shock API, e.g.
+     * https://kbase.us/services/shock-api.
+     * @param token the token to authenticate with, or null for anonymous
+     * access.
+     */
+    public BlobTransfer(URL url, AuthToken token) {
+        this.url = url;
+        this.token = token;
+    }
+
+    /** Set the chunk size.
+     * @param chunkSize the size of every chunk but the last, in bytes.
+     * Default 64 MiB.
+     */
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /** Set the number of chunks transferred at once.
+     * @param threads the limit, at least 1. Default 4.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Set how often a failed chunk is tried again before the transfer
+     * fails.
+     * @param retries the number of retries. Default 3.
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /** Run the chunk transfers on the given executor instead of a private
+     * one. The executor is not shut down by this client.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Makes sure a file is in the blob store, uploading it from its path if
+     * it has no shock_id yet.
+     * @param file the file; its shock_id is set if it was uploaded.
+     * @return the same file.
+     * @throws IOException if the upload fails.
+     * @throws InterruptedException if interrupted during the upload.
+     */
+    public File resolve(File file) throws IOException, InterruptedException {
+        if (file.getShockId() == null) {
+            if (file.getPath() == null) {
+                throw new IllegalArgumentException("The file has neither a path nor a shock_id");
+            }
+            file.setShockId(upload(Paths.get(file.getPath()), null).getShockId());
+        }
+        return file;
+    }
+
+    /** Uploads a file, or finds the node already holding its content.
+     * @param path the file.
+     * @param journal the journal to resume from and record progress in, or
+     * null to not keep one.
+     * @return the file with its path and shock_id.
+     * @throws IOException if the upload fails; with a journal, calling again
+     * resumes it.
+     * @throws InterruptedException if interrupted; chunks in flight are
+     * cancelled.
+     */
+    public File upload(Path path, Path journal) throws IOException, InterruptedException {
+        String name = path.getFileName().toString();
+        long size = Files.size(path);
+        String[] hashes = hash(path);
+        String sha256 = hashes[0];
+        String md5 = hashes[1];
+        File result = new File().withPath(path.toString());
+        String existing = findNode(sha256, size, md5);
+        if (existing != null) {
+            return result.withShockId(existing);
+        }
+        String fingerprint = sha256 + ":" + chunkSize;
+        int chunkCount = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        PipelineJournal log = journal == null ? null : new PipelineJournal(journal);
+        try {
+            JsonNode recorded = log == null ? null : log.getResult("node", fingerprint);
+            String id;
+            if (recorded != null) {
+                id = recorded.asText();
+            } else {
+                id = createNode(name, sha256, chunkCount);
+                if (log != null) {
+                    log.record("node", fingerprint, id);
+                }
+            }
+            List<Integer> todo = new ArrayList<Integer>();
+            for (int i = 0; i < chunkCount; i++) {
+                if (log == null || log.getResult("part/" + (i + 1), fingerprint) == null) {
+                    todo.add(i);
+                }
+            }
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                runChunks(todo, i -> {
+                    long off = i * chunkSize;
+                    long len = Math.min(chunkSize, size - off);
+                    String partMd5 = withRetries(() -> putPart(id, i + 1, ch, off, len, name));
+                    if (log != null) {
+                        log.record("part/" + (i + 1), fingerprint, partMd5);
+                    }
+                    if (listener != null) {
+                        listener.chunkDone(id, i, chunkCount, len);
+                    }
+                });
+            }
+            JsonNode node = withRetries(() -> send("GET", "node/" + id, null));
+            JsonNode file = node.path("file");
+            if (file.path("size").asLong() != size || !md5.equals(file.path("checksum").path("md5").asText())) {
+                throw new IOException("The blob store node " + id + " does not match " + path + ": size " +
+                        file.path("size").asLong() + ", md5 " + file.path("checksum").path("md5").asText());
+            }
+            return result.withShockId(id);
+        } finally {
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /** Downloads a node into a file. A target that already has the node's
+     * content is left as it is.
+     * @param shockId the node id.
+     * @param target the file to write, created or overwritten.
+     * @param journal the journal to resume from and record progress in, or
+     * null to not keep one.
+     * @return the file with its path and shock_id.
+     * @throws IOException if the download fails; with a journal, calling
+     * again resumes it.
+     * @throws InterruptedException if interrupted; chunks in flight are
+     * cancelled.
+     */
+    public File download(String shockId, Path target, Path journal) throws IOException, InterruptedException {
+        JsonNode node = getNode(shockId);
+        long size = node.path("file").path("size").asLong();
+        String md5 = node.path("file").path("checksum").path("md5").asText();
+        File result = new File().withPath(target.toString()).withShockId(shockId);
+        if (Files.exists(target) && Files.size(target) == size && md5.equals(hash(target)[1])) {
+            return result;
+        }
+        String fingerprint = md5 + ":" + size + ":" + chunkSize;
+        int chunkCount = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        PipelineJournal log = journal == null ? null : new PipelineJournal(journal);
+        try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (ch.size() > size) {
+                ch.truncate(size);
+            }
+            List<Integer> todo = new ArrayList<Integer>();
+            for (int i = 0; i < chunkCount; i++) {
+                JsonNode done = log == null ? null : log.getResult("range/" + i, fingerprint);
+                long off = i * chunkSize;
+                if (done == null || off + Math.min(chunkSize, size - off) > ch.size() ||
+                        !done.asText().equals(hash(ch, off, Math.min(chunkSize, size - off), "MD5"))) {
+                    todo.add(i);
+                }
+            }
+            runChunks(todo, i -> {
+                long off = i * chunkSize;
+                long len = Math.min(chunkSize, size - off);
+                String rangeMd5 = withRetries(() -> getRange(shockId, ch, off, len));
+                if (log != null) {
+                    ch.force(false);
+                    log.record("range/" + i, fingerprint, rangeMd5);
+                }
+                if (listener != null) {
+                    listener.chunkDone(shockId, i, chunkCount, len);
+                }
+            });
+            String got = hash(ch, 0, size, "MD5");
+            if (!got.equals(md5)) {
+                throw new IOException("The download of node " + shockId + " has md5 " + got + ", expected " + md5);
+            }
+            return result;
+        } finally {
+            if (log != null) {
+                log.close();
+            }
+        }
+    }
+
+    /** Get the metadata of a node, such as its file name, size and MD5.
+     * @param shockId the node id.
+     * @return the node as the store describes it.
+     * @throws IOException if the node cannot be read.
+     * @throws InterruptedException if interrupted between retries.
+     */
+    public JsonNode getNode(String shockId) throws IOException, InterruptedException {
+        return withRetries(() -> send("GET", "node/" + shockId, null));
+    }
+
+    private interface Chunk {
+        void transfer(int chunk) throws IOException, InterruptedException;
+    }
+
+    private interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private void runChunks(List<Integer> chunks, Chunk task) throws IOException, InterruptedException {
+        if (chunks.isEmpty()) {
+            return;
+        }
+        ExecutorService exec = executor != null ? executor
+                : FbaExecutors.newBlockingCallExecutor("fba-blob-transfer", threads);
+        final Semaphore gate = new Semaphore(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        try {
+            for (final int c : chunks) {
+                futures.add(exec.submit(() -> {
+                    gate.acquire();
+                    try {
+                        task.transfer(c);
+                        return null;
+                    } finally {
+                        gate.release();
+                    }
+                }));
+            }
+            // let the other chunks finish, so that a journal keeps them
+            IOException failure = null;
+            for (Future<Void> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable t = e.getCause();
+                    if (t instanceof IOException) {
+                        if (failure == null) {
+                            failure = (IOException) t;
+                        }
+                    } else if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    } else {
+                        throw new IOException(t);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    private <T> T withRetries(Call<T> call) throws IOException, InterruptedException {
+        for (int attempt = 0;; attempt++) {
+            try {
+                return call.call();
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                Thread.sleep(RETRY_DELAY_MS << Math.min(attempt, 6));
+            }
+        }
+    }
+
+    private String findNode(String sha256, long size, String md5) throws IOException, InterruptedException {
+        String query = "node?query&" + HASH_ATTRIBUTE + "=" + sha256;
+        JsonNode nodes = withRetries(() -> send("GET", query, null));
+        for (JsonNode n : nodes) {
+            JsonNode file = n.path("file");
+            if (file.path("size").asLong() == size && md5.equals(file.path("checksum").path("md5").asText())) {
+                return n.path("id").asText();
+            }
+        }
+        return null;
+    }
+
+    private String createNode(String fileName, String sha256, int parts) throws IOException, InterruptedException {
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+        attributes.put(HASH_ATTRIBUTE, sha256);
+        attributes.put("file_name", fileName);
+        Multipart body = new Multipart();
+        body.field("parts", Integer.toString(parts));
+        body.field("file_name", fileName);
+        body.field("attributes_str", JsonRpcCodec.mapper().writeValueAsString(attributes));
+        // not retried: a lost response would leave a second, empty node
+        return send("POST", "node", body).path("id").asText();
+    }
+
+    // sends one part and returns its md5
+    private String putPart(String id, int part, FileChannel ch, long off, long len, String fileName)
+            throws IOException {
+        Multipart body = new Multipart();
+        body.file(Integer.toString(part), fileName, ch, off, len);
+        send("PUT", "node/" + id, body);
+        return body.fileMd5;
+    }
+
+    // fetches one range into the file and returns its md5
+    private String getRange(String id, FileChannel ch, long off, long len) throws IOException {
+        HttpURLConnection conn = open("GET", "node/" + id + "?download&seek=" + off + "&length=" + len);
+        int code = conn.getResponseCode();
+        if (code >= 400) {
+            readResponse(conn);
+        }
+        MessageDigest md = digest("MD5");
+        long pos = off;
+        try (InputStream in = conn.getInputStream()) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            int read;
+            while (pos < off + len && (read = in.read(buf, 0, (int) Math.min(buf.length, off + len - pos))) >= 0) {
+                md.update(buf, 0, read);
+                ByteBuffer bb = ByteBuffer.wrap(buf, 0, read);
+                while (bb.hasRemaining()) {
+                    pos += ch.write(bb, pos);
+                }
+            }
+        }
+        if (pos != off + len) {
+            throw new IOException("Short read of node " + id + " at " + off + ": got " + (pos - off) +
+                    " of " + len + " bytes");
+        }
+        return hex(md.digest());
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        String base = url.toString();
+        URL u = new URL(base.endsWith("/") ? base + path : base + "/" + path);
+        HttpURLConnection conn = (HttpURLConnection) u.openConnection();
+        conn.setRequestMethod(method);
+        if (token != null) {
+            conn.setRequestProperty("Authorization", "OAuth " + token.getToken());
+        }
+        return conn;
+    }
+
+    private JsonNode send(String method, String path, Multipart body) throws IOException {
+        HttpURLConnection conn = open(method, path);
+        if (body != null) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + body.boundary);
+            conn.setFixedLengthStreamingMode(body.length());
+            try (OutputStream os = conn.getOutputStream()) {
+                body.writeTo(os);
+            }
+        }
+        return readResponse(conn);
+    }
+
+    // the data of a Shock response envelope
+    private static JsonNode readResponse(HttpURLConnection conn) throws IOException {
+        int code = conn.getResponseCode();
+        InputStream in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        JsonNode resp = null;
+        if (in != null) {
+            try {
+                resp = JsonRpcCodec.mapper().readTree(in);
+            } catch (IOException e) {
+                if (code < 400) {
+                    throw e;
+                }
+            } finally {
+                in.close();
+            }
+        }
+        if (code >= 400 || resp == null || (resp.hasNonNull("error") && resp.get("error").size() > 0)) {
+            throw new IOException("Blob store request " + conn.getRequestMethod() + " " + conn.getURL() +
+                    " failed with status " + code + (resp == null ? "" : ": " + resp.path("error")));
+        }
+        return resp.path("data");
+    }
+
+    /** Computes the SHA-256 and the MD5 of a file in one pass.
+     * @param path the file.
+     * @return the hex SHA-256 and MD5.
+     * @throws IOException if the file cannot be read.
+     */
+    static String[] hash(Path path) throws IOException {
+        MessageDigest sha = digest("SHA-256");
+        MessageDigest md5 = digest("MD5");
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+            while (ch.read(buf) >= 0) {
+                buf.flip();
+                sha.update(buf.duplicate());
+                md5.update(buf);
+                buf.clear();
+            }
+        }
+        return new String[] {hex(sha.digest()), hex(md5.digest())};
+    }
+
+    private static String hash(FileChannel ch, long off, long len, String algorithm) throws IOException {
+        MessageDigest md = digest(algorithm);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = off;
+        while (pos < off + len) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), off + len - pos));
+            int read = ch.read(buf, pos);
+            if (read < 0) {
+                break;
+            }
+            pos += read;
+            buf.flip();
+            md.update(buf);
+        }
+        return hex(md.digest());
+    }
+
+    private static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /* A multipart/form-data body of text fields and at most one file range,
+     * streamed from the file with a known length.
+     */
+    private static class Multipart {
+        final String boundary = "----fbatools" + UUID.randomUUID().toString().replace("-", "");
+        private final StringBuilder fields = new StringBuilder();
+        private String fileHeader = null;
+        private FileChannel ch;
+        private long off;
+        private long len;
+        String fileMd5 = null;
+
+        void field(String name, String value) throws IOException {
+            fields.append("--").append(boundary).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+                    .append(value).append("\r\n");
+        }
+
+        void file(String name, String fileName, FileChannel ch, long off, long len) throws IOException {
+            fileHeader = "--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name +
+                    "\"; filename=\"" + URLEncoder.encode(fileName, "UTF-8") +
+                    "\"\r\nContent-Type: application/octet-stream\r\n\r\n";
+            this.ch = ch;
+            this.off = off;
+            this.len = len;
+        }
+
+        private byte[] head() {
+            return (fields + (fileHeader == null ? "" : fileHeader)).getBytes(StandardCharsets.UTF_8);
+        }
+
+        private byte[] tail() {
+            return ((fileHeader == null ? "" : "\r\n") + "--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        long length() {
+            return head().length + (fileHeader == null ? 0 : len) + tail().length;
+        }
+
+        void writeTo(OutputStream os) throws IOException {
+            os.write(head());
+            if (fileHeader != null) {
+                MessageDigest md = digest("MD5");
+                ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+                long pos = off;
+                while (pos < off + len) {
+                    buf.clear();
+                    buf.limit((int) Math.min(buf.capacity(), off + len - pos));
+                    int read = ch.read(buf, pos);
+                    if (read < 0) {
+                        throw new IOException("The file ended before " + (off + len) + " bytes");
+                    }
+                    pos += read;
+                    md.update(buf.array(), 0, read);
+                    os.write(buf.array(), 0, read);
+                }
+                fileMd5 = hex(md.digest());
+            }
+            os.write(tail());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package us.kbase.fbatools;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a {@link BulkExporter} run: one entry per object, in the
+ * order the objects finished.
+ */
+public class BulkExportResult {
+    private final Path archive;
+    private final List<Entry> entries;
+
+    /** The outcome of the export of one object. Exactly one of the archive
+     * entry name and the error is set.
+     */
+    public static class Entry {
+        private final BulkExporter.Item item;
+        private final String format;
+        private final String shockId;
+        private final String entryName;
+        private final long bytes;
+        private final Throwable error;
+        private final int attempts;
+
+        Entry(BulkExporter.Item item, String format, String shockId, String entryName, long bytes,
+                Throwable error, int attempts) {
+            this.item = item;
+            this.format = format;
+            this.shockId = shockId;
+            this.entryName = entryName;
+            this.bytes = bytes;
+            this.error = error;
+            this.attempts = attempts;
+        }
+
+        public BulkExporter.Item getItem() {
+            return item;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        /** Get the blob store node the service exported the object to.
+         * @return the shock id, or null if the export call failed.
+         */
+        public String getShockId() {
+            return shockId;
+        }
+
+        /** Get the name of the object's file in the archive.
+         * @return the entry name, or null if the export failed.
+         */
+        public String getEntryName() {
+            return entryName;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /** Get the number of times the export was tried.
+         * @return the attempts, at least 1.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public boolean isSucceeded() {
+            return error == null;
+        }
+
+        Entry withEntryName(String entryName) {
+            return new Entry(item, format, shockId, entryName, bytes, error, attempts);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry [ref=" + item.getRef() + ", format=" + format + ", shockId=" + shockId +
+                    ", entryName=" + entryName + ", bytes=" + bytes + ", error=" + error + ", attempts=" +
+                    attempts + "]";
+        }
+    }
+
+    BulkExportResult(Path archive, List<Entry> entries) {
+        this.archive = archive;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /** Get the archive the objects were written to.
+     * @return the zip file.
+     */
+    public Path getArchive() {
+        return archive;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public List<Entry> getFailed() {
+        List<Entry> ret = new ArrayList<Entry>();
+        for (Entry e : entries) {
+            if (!e.isSucceeded()) {
+                ret.add(e);
+            }
+        }
+        return ret;
+    }
+
+    /** Get the objects that could not be exported, ready to be passed to
+     * {@link BulkExporter#export(List, java.util.Map, Path,
+     * us.kbase.common.service.RpcContext...)} again.
+     * @return the failed objects.
+     */
+    public List<BulkExporter.Item> getFailedItems() {
+        List<BulkExporter.Item> ret = new ArrayList<BulkExporter.Item>();
+        for (Entry e : getFailed()) {
+            ret.add(e.getItem());
+        }
+        return ret;
+    }
+
+    /** Get the references of the exported objects, as the service reports
+     * them in downloaded_refs.
+     * @return the references.
+     */
+    public List<String> getDownloadedRefs() {
+        List<String> ret = new ArrayList<String>();
+        for (Entry e : entries) {
+            if (e.isSucceeded()) {
+                ret.add(e.getItem().getRef());
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkExportResult [archive=" + archive + ", entries=" + entries.size() + ", failed=" +
+                getFailed().size() + "]";
+    }
+}
@@ -0,0 +1,519 @@
+package us.kbase.fbatools;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import us.kbase.common.service.RpcContext;
+
+/**
+ * <p>Client-side replacement for bulk_export_objects that exports the
+ * objects concurrently and streams them into a zip archive.</p>
+ * <p>The objects are enumerated the way the service does it: the refs of
+ * the {@link BulkExportObjectsParams} plus every object of each type
+ * selected with the all_* flags in its workspace, without duplicates. Each
+ * object is exported with the per-type call for its format
+ * (exportModelAsSbmlFile, exportFbaAsTsvFile, ...), at most
+ * {@link #setMaxConcurrentExports(int)} at once, and its file is fetched
+ * from the blob store. Files are appended to the archive in the order they
+ * finish, while the other exports are still running, and each is deleted
+ * from the scratch directory once written. An export holds its slot until
+ * its file is deleted, so however far the archive falls behind, at most
+ * {@link #setMaxConcurrentExports(int)} files are held on disk. A failed
+ * export is retried; an object that
+ * still fails does not stop the others and is reported in the
+ * {@link BulkExportResult}, from where it can be exported again.</p>
+ * <p>Listing a workspace needs the workspace service, which this client does
+ * not talk to; the caller provides it through a {@link Catalog}.</p>
+ */
+public class BulkExporter {
+    /** The directory of the archive the files are placed in, as the service
+     * names it.
+     */
+    public static final String ARCHIVE_DIR = "model_objects";
+    private static final long RETRY_DELAY_MS = 500;
+
+    private final FbaToolsClient client;
+    private final BlobTransfer transfer;
+    private int maxConcurrentExports = 8;
+    private int retries = 2;
+    private Path scratch = null;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** The object types that can be exported, with the service's default
+     * format of each.
+     */
+    public enum Kind {
+        MODEL("KBaseFBA.FBAModel", "sbml"),
+        FBA("KBaseFBA.FBA", "tsv"),
+        MEDIA("KBaseBiochem.Media", "tsv"),
+        PHENOTYPE("KBasePhenotypes.PhenotypeSet", "tsv"),
+        PHENOSIM("KBasePhenotypes.PhenotypeSimulationSet", "tsv");
+
+        private final String type;
+        private final String defaultFormat;
+
+        Kind(String type, String defaultFormat) {
+            this.type = type;
+            this.defaultFormat = defaultFormat;
+        }
+
+        /** Get the workspace type name.
+         * @return the type name without a version, e.g. KBaseFBA.FBAModel.
+         */
+        public String getType() {
+            return type;
+        }
+
+        public String getDefaultFormat() {
+            return defaultFormat;
+        }
+
+        /** Get the kind of a workspace type.
+         * @param type the type name, with or without a version.
+         * @return the kind, or null if the type cannot be exported.
+         */
+        public static Kind forType(String type) {
+            String bare = type.replaceFirst("-.*$", "");
+            for (Kind k : values()) {
+                if (k.type.equals(bare)) {
+                    return k;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** An object to export. */
+    public static class Item {
+        private final String ref;
+        private final Kind kind;
+        private final String name;
+
+        /** Constructs an item.
+         * @param ref the object reference, e.g. 123/4/5.
+         * @param kind the object type.
+         * @param name the object name, or null to use the reference.
+         */
+        public Item(String ref, Kind kind, String name) {
+            this.ref = ref;
+            this.kind = kind;
+            this.name = name == null ? ref : name;
+        }
+
+        public String getRef() {
+            return ref;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return "Item [ref=" + ref + ", kind=" + kind + ", name=" + name + "]";
+        }
+    }
+
+    /** Looks up objects in the workspace, usually backed by a workspace
+     * client's list_objects and get_object_info3.
+     */
+    public interface Catalog {
+        /** Lists the objects of a type.
+         * @param workspace the workspace name or id.
+         * @param kind the object type.
+         * @return the latest version of every object of the type.
+         * @throws Exception if the workspace cannot be listed.
+         */
+        List<Item> listObjects(String workspace, Kind kind) throws Exception;
+
+        /** Describes an object.
+         * @param ref the object reference.
+         * @return the object, or null if its type cannot be exported.
+         * @throws Exception if the object cannot be looked up.
+         */
+        Item describe(String ref) throws Exception;
+    }
+
+    /** Receives each object's outcome as soon as its file is in the archive
+     * or its export has failed. Called on the thread running the export, in
+     * the order the objects finish.
+     */
+    public interface Listener {
+        void objectExported(BulkExportResult.Entry entry, int done, int total);
+    }
+
+    /** Constructs an exporter.
+     * @param client the client used for the export calls.
+     * @param transfer the blob store client used to fetch the exported files.
+     */
+    public BulkExporter(FbaToolsClient client, BlobTransfer transfer) {
+        this.client = client;
+        this.transfer = transfer;
+    }
+
+    /** Set the maximum number of objects exported at once.
+     * @param maxConcurrentExports the limit, at least 1. Default 8.
+     */
+    public void setMaxConcurrentExports(int maxConcurrentExports) {
+        if (maxConcurrentExports < 1) {
+            throw new IllegalArgumentException("maxConcurrentExports must be at least 1");
+        }
+        this.maxConcurrentExports = maxConcurrentExports;
+    }
+
+    public int getMaxConcurrentExports() {
+        return maxConcurrentExports;
+    }
+
+    /** Set how often a failed export is tried again before the object is
+     * reported as failed.
+     * @param retries the number of retries. Default 2.
+     */
+    public void setRetries(int retries) {
+        this.retries = Math.max(0, retries);
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /** Set the directory exported files are held in until they are written
+     * to the archive.
+     * @param scratch the directory, or null for a temporary directory.
+     */
+    public void setScratch(Path scratch) {
+        this.scratch = scratch;
+    }
+
+    /** Run the exports on the given executor instead of a private one. The
+     * executor is not shut down by this exporter.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Exports the objects selected by the parameters into an archive.
+     * @param params the parameters, as they would be passed to
+     * bulk_export_objects.
+     * @param catalog the workspace lookup.
+     * @param archive the zip file to write.
+     * @return the outcome of every object.
+     * @throws IOException if the objects cannot be enumerated or the archive
+     * cannot be written.
+     * @throws InterruptedException if interrupted; exports still in flight
+     * are cancelled.
+     */
+    public BulkExportResult export(BulkExportObjectsParams params, Catalog catalog, Path archive,
+            RpcContext... jsonRpcContext) throws IOException, InterruptedException {
+        return export(items(params, catalog), formats(params), archive, jsonRpcContext);
+    }
+
+    /** Exports objects into an archive.
+     * @param items the objects.
+     * @param formats the format of each type; types missing from the map use
+     * their default format.
+     * @param archive the zip file to write.
+     * @return the outcome of every object.
+     * @throws IOException if the archive cannot be written.
+     * @throws InterruptedException if interrupted; exports still in flight
+     * are cancelled.
+     */
+    public BulkExportResult export(List<Item> items, Map<Kind, String> formats, Path archive,
+            final RpcContext... jsonRpcContext) throws IOException, InterruptedException {
+        final Path dir = scratch != null ? Files.createDirectories(scratch) : Files.createTempDirectory("bulk-export");
+        ExecutorService exec = executor != null ? executor
+                : FbaExecutors.newBlockingCallExecutor("fba-bulk-export", maxConcurrentExports);
+        CompletionService<Exported> done = new ExecutorCompletionService<Exported>(exec);
+        final Semaphore gate = new Semaphore(maxConcurrentExports);
+        // set before the scratch is cleaned up, so that exports finishing
+        // after that remove their own files
+        final AtomicBoolean abandoned = new AtomicBoolean();
+        List<Future<Exported>> futures = new ArrayList<Future<Exported>>();
+        List<BulkExportResult.Entry> entries = new ArrayList<BulkExportResult.Entry>();
+        Set<String> names = new HashSet<String>();
+        boolean finished = false;
+        try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(archive));
+                ZipOutputStream zip = new ZipOutputStream(os)) {
+            for (int i = 0; i < items.size(); i++) {
+                final Item item = items.get(i);
+                final String format = formats.containsKey(item.getKind()) ? formats.get(item.getKind())
+                        : item.getKind().getDefaultFormat();
+                final Path file = dir.resolve("export-" + i);
+                futures.add(done.submit(() -> {
+                    gate.acquire();
+                    boolean handedOver = false;
+                    try {
+                        Exported e;
+                        try {
+                            e = exportOne(item, format, file, jsonRpcContext);
+                        } catch (InterruptedException | RuntimeException ex) {
+                            // a cancelled download may have created the file
+                            // after the scratch was cleaned up
+                            deletePartial(file);
+                            throw ex;
+                        }
+                        if (abandoned.get()) {
+                            deletePartial(file);
+                        }
+                        // the slot is released once the file is archived
+                        handedOver = true;
+                        return e;
+                    } finally {
+                        if (!handedOver) {
+                            gate.release();
+                        }
+                    }
+                }));
+            }
+            for (int n = 0; n < futures.size(); n++) {
+                Exported e;
+                try {
+                    e = done.take().get();
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException(ex.getCause());
+                }
+                BulkExportResult.Entry entry = e.entry;
+                try {
+                    if (e.file != null) {
+                        String name = uniqueName(ARCHIVE_DIR + "/" + e.fileName, names);
+                        zip.putNextEntry(new ZipEntry(name));
+                        Files.copy(e.file, zip);
+                        zip.closeEntry();
+                        entry = entry.withEntryName(name);
+                    }
+                } finally {
+                    if (e.file != null) {
+                        Files.deleteIfExists(e.file);
+                    }
+                    gate.release();
+                }
+                entries.add(entry);
+                if (listener != null) {
+                    listener.objectExported(entry, n + 1, futures.size());
+                }
+            }
+            finished = true;
+        } catch (InterruptedException | IOException | RuntimeException e) {
+            abandoned.set(true);
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+            if (scratch == null) {
+                try (Stream<Path> left = Files.list(dir)) {
+                    for (Path p : (Iterable<Path>) left::iterator) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+                Files.deleteIfExists(dir);
+            } else if (!finished) {
+                // leave the caller's directory as it was, without the files
+                // of the exports that did not make it into the archive
+                for (int i = 0; i < items.size(); i++) {
+                    Files.deleteIfExists(dir.resolve("export-" + i));
+                }
+            }
+        }
+        return new BulkExportResult(archive, entries);
+    }
+
+    private static class Exported {
+        final BulkExportResult.Entry entry;
+        final Path file;
+        final String fileName;
+
+        Exported(BulkExportResult.Entry entry, Path file, String fileName) {
+            this.entry = entry;
+            this.file = file;
+            this.fileName = fileName;
+        }
+    }
+
+    private Exported exportOne(Item item, String format, Path file, RpcContext[] jsonRpcContext)
+            throws InterruptedException {
+        String shockId = null;
+        for (int attempt = 1;; attempt++) {
+            try {
+                if (shockId == null) {
+                    shockId = call(item, format, jsonRpcContext).getShockId();
+                }
+                String fileName = transfer.getNode(shockId).path("file").path("name").asText("");
+                if (fileName.isEmpty()) {
+                    fileName = item.getName() + "." + format;
+                }
+                transfer.download(shockId, file, null);
+                return new Exported(new BulkExportResult.Entry(item, format, shockId, null, Files.size(file), null,
+                        attempt), file, fileName);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                if (attempt > retries) {
+                    deletePartial(file);
+                    return new Exported(new BulkExportResult.Entry(item, format, shockId, null, 0, e, attempt),
+                            null, null);
+                }
+                Thread.sleep(RETRY_DELAY_MS << Math.min(attempt - 1, 6));
+            }
+        }
+    }
+
+    // the partial download of an export that gave up
+    private static void deletePartial(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // nothing more can be done; a scratch of our own is removed anyway
+        }
+    }
+
+    private ExportOutput call(Item item, String format, RpcContext[] jsonRpcContext) throws Exception {
+        ExportParams params = new ExportParams().withInputRef(item.getRef());
+        String f = format.toLowerCase();
+        switch (item.getKind()) {
+        case MODEL:
+            if (f.equals("sbml")) {
+                return client.exportModelAsSbmlFile(params, jsonRpcContext);
+            } else if (f.equals("excel")) {
+                return client.exportModelAsExcelFile(params, jsonRpcContext);
+            } else if (f.equals("tsv")) {
+                return client.exportModelAsTsvFile(params, jsonRpcContext);
+            }
+            break;
+        case FBA:
+            if (f.equals("excel")) {
+                return client.exportFbaAsExcelFile(params, jsonRpcContext);
+            } else if (f.equals("tsv")) {
+                return client.exportFbaAsTsvFile(params, jsonRpcContext);
+            }
+            break;
+        case MEDIA:
+            if (f.equals("excel")) {
+                return client.exportMediaAsExcelFile(params, jsonRpcContext);
+            } else if (f.equals("tsv")) {
+                return client.exportMediaAsTsvFile(params, jsonRpcContext);
+            }
+            break;
+        case PHENOTYPE:
+            if (f.equals("tsv")) {
+                return client.exportPhenotypeSetAsTsvFile(params, jsonRpcContext);
+            }
+            break;
+        case PHENOSIM:
+            if (f.equals("excel")) {
+                return client.exportPhenotypeSimulationSetAsExcelFile(params, jsonRpcContext);
+            } else if (f.equals("tsv")) {
+                return client.exportPhenotypeSimulationSetAsTsvFile(params, jsonRpcContext);
+            }
+            break;
+        }
+        throw new IllegalArgumentException("Objects of type " + item.getKind().getType() +
+                " cannot be exported as " + format);
+    }
+
+    private static String uniqueName(String name, Set<String> names) {
+        String candidate = name;
+        int dot = name.lastIndexOf('.');
+        if (dot <= name.lastIndexOf('/')) {
+            dot = name.length();
+        }
+        for (int n = 2; !names.add(candidate); n++) {
+            candidate = name.substring(0, dot) + "_" + n + name.substring(dot);
+        }
+        return candidate;
+    }
+
+    /** Enumerates the objects selected by the parameters, as the service
+     * does.
+     * @param params the parameters.
+     * @param catalog the workspace lookup.
+     * @return the objects, without duplicates.
+     * @throws IOException if an object or the workspace cannot be looked up.
+     */
+    public static List<Item> items(BulkExportObjectsParams params, Catalog catalog) throws IOException {
+        Map<String, Item> items = new LinkedHashMap<String, Item>();
+        try {
+            if (params.getRefs() != null) {
+                for (String ref : params.getRefs()) {
+                    Item item = catalog.describe(ref);
+                    if (item == null) {
+                        throw new IllegalArgumentException("Object " + ref + " is not of an exportable type");
+                    }
+                    items.put(item.getRef(), item);
+                }
+            }
+            Map<Kind, Long> all = new EnumMap<Kind, Long>(Kind.class);
+            all.put(Kind.MODEL, params.getAllModels());
+            all.put(Kind.FBA, params.getAllFba());
+            all.put(Kind.MEDIA, params.getAllMedia());
+            all.put(Kind.PHENOTYPE, params.getAllPhenotypes());
+            all.put(Kind.PHENOSIM, params.getAllPhenosims());
+            for (Map.Entry<Kind, Long> e : all.entrySet()) {
+                if (e.getValue() != null && e.getValue() == 1L) {
+                    if (params.getWorkspace() == null) {
+                        throw new IllegalArgumentException("A workspace is required to export all objects of a type");
+                    }
+                    for (Item item : catalog.listObjects(params.getWorkspace(), e.getKey())) {
+                        items.put(item.getRef(), item);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot enumerate the objects to export: " + e.getMessage(), e);
+        }
+        return new ArrayList<Item>(items.values());
+    }
+
+    /** Get the format of each type selected by the parameters.
+     * @param params the parameters.
+     * @return the format of every type, defaults filled in.
+     */
+    public static Map<Kind, String> formats(BulkExportObjectsParams params) {
+        Map<Kind, String> formats = new EnumMap<Kind, String>(Kind.class);
+        formats.put(Kind.MODEL, params.getModelFormat());
+        formats.put(Kind.FBA, params.getFbaFormat());
+        formats.put(Kind.MEDIA, params.getMediaFormat());
+        formats.put(Kind.PHENOTYPE, params.getPhenotypeFormat());
+        formats.put(Kind.PHENOSIM, params.getPhenosimFormat());
+        for (Map.Entry<Kind, String> e : formats.entrySet()) {
+            if (e.getValue() == null) {
+                e.setValue(e.getKey().getDefaultFormat());
+            }
+        }
+        return formats;
+    }
+}
@@ -0,0 +1,79 @@
+package us.kbase.fbatools;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+
+/**
+ * <p>The FBAModel.spec type FBADeletionResult, written by hand: fba_tools.spec does not
+ * include it, so kb-sdk compile does not generate it.</p>
+ * <pre>
+ * FBADeletionResult object
+ * </pre>
+ * 
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({
+    "feature_refs",
+    "growthFraction"
+})
+public class FBADeletionResult {
+
+    @JsonProperty("feature_refs")
+    private List<String> featureRefs;
+    @JsonProperty("growthFraction")
+    private Double growthFraction;
+    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+
+    @JsonProperty("feature_refs")
+    public List<String> getFeatureRefs() {
+        return featureRefs;
+    }
+
+    @JsonProperty("feature_refs")
+    public void setFeatureRefs(List<String> featureRefs) {
+        this.featureRefs = featureRefs;
+    }
+
+    public FBADeletionResult withFeatureRefs(List<String> featureRefs) {
+        this.featureRefs = featureRefs;
+        return this;
+    }
+
+    @JsonProperty("growthFraction")
+    public Double getGrowthFraction() {
+        return growthFraction;
+    }
+
+    @JsonProperty("growthFraction")
+    public void setGrowthFraction(Double growthFraction) {
+        this.growthFraction = growthFraction;
+    }
+
+    public FBADeletionResult withGrowthFraction(Double growthFraction) {
+        this.growthFraction = growthFraction;
+        return this;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getAdditionalProperties() {
+        return this.additionalProperties;
+    }
+
+    @JsonAnySetter
+    public void setAdditionalProperties(String name, Object value) {
+        this.additionalProperties.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return ((((((("FBADeletionResult"+" [featureRefs=")+ featureRefs)+", growthFraction=")+ growthFraction)+", additionalProperties=")+ additionalProperties)+"]");
+    }
+
+}
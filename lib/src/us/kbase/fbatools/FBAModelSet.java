@@ -0,0 +1,76 @@
+package us.kbase.fbatools;
+
+import java.util.HashMap;
+import java.util.Map;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+
+/**
+ * <p>The FBAModel.spec type FBAModelSet, written by hand: fba_tools.spec does not
+ * include it, so kb-sdk compile does not generate it.</p>
+ * 
+ * 
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({
+    "description",
+    "elements"
+})
+public class FBAModelSet {
+
+    @JsonProperty("description")
+    private String description;
+    @JsonProperty("elements")
+    private Map<String, FBAModelSetElement> elements;
+    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+
+    @JsonProperty("description")
+    public String getDescription() {
+        return description;
+    }
+
+    @JsonProperty("description")
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public FBAModelSet withDescription(String description) {
+        this.description = description;
+        return this;
+    }
+
+    @JsonProperty("elements")
+    public Map<String, FBAModelSetElement> getElements() {
+        return elements;
+    }
+
+    @JsonProperty("elements")
+    public void setElements(Map<String, FBAModelSetElement> elements) {
+        this.elements = elements;
+    }
+
+    public FBAModelSet withElements(Map<String, FBAModelSetElement> elements) {
+        this.elements = elements;
+        return this;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getAdditionalProperties() {
+        return this.additionalProperties;
+    }
+
+    @JsonAnySetter
+    public void setAdditionalProperties(String name, Object value) {
+        this.additionalProperties.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return ((((((("FBAModelSet"+" [description=")+ description)+", elements=")+ elements)+", additionalProperties=")+ additionalProperties)+"]");
+    }
+
+}
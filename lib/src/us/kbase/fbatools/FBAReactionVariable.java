@@ -0,0 +1,184 @@
+package us.kbase.fbatools;
+
+import java.util.HashMap;
+import java.util.Map;
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+
+/**
+ * <p>The FBAModel.spec type FBAReactionVariable, written by hand: fba_tools.spec does not
+ * include it, so kb-sdk compile does not generate it.</p>
+ * 
+ * 
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({
+    "modelreaction_ref",
+    "variableType",
+    "upperBound",
+    "lowerBound",
+    "class",
+    "min",
+    "max",
+    "value"
+})
+public class FBAReactionVariable {
+
+    @JsonProperty("modelreaction_ref")
+    private String modelreactionRef;
+    @JsonProperty("variableType")
+    private String variableType;
+    @JsonProperty("upperBound")
+    private Double upperBound;
+    @JsonProperty("lowerBound")
+    private Double lowerBound;
+    @JsonProperty("class")
+    private String _class;
+    @JsonProperty("min")
+    private Double min;
+    @JsonProperty("max")
+    private Double max;
+    @JsonProperty("value")
+    private Double value;
+    private Map<String, Object> additionalProperties = new HashMap<String, Object>();
+
+    @JsonProperty("modelreaction_ref")
+    public String getModelreactionRef() {
+        return modelreactionRef;
+    }
+
+    @JsonProperty("modelreaction_ref")
+    public void setModelreactionRef(String modelreactionRef) {
+        this.modelreactionRef = modelreactionRef;
+    }
+
+    public FBAReactionVariable withModelreactionRef(String modelreactionRef) {
+        this.modelreactionRef = modelreactionRef;
+        return this;
+    }
+
+    @JsonProperty("variableType")
+    public String getVariableType() {
+        return variableType;
+    }
+
+    @JsonProperty("variableType")
+    public void setVariableType(String variableType) {
+        this.variableType = variableType;
+    }
+
+    public FBAReactionVariable withVariableType(String variableType) {
+        this.variableType = variableType;
+        return this;
+    }
+
+    @JsonProperty("upperBound")
+    public Double getUpperBound() {
+        return upperBound;
+    }
+
+    @JsonProperty("upperBound")
+    public void setUpperBound(Double upperBound) {
+        this.upperBound = upperBound;
+    }
+
+    public FBAReactionVariable withUpperBound(Double upperBound) {
+        this.upperBound = upperBound;
+        return this;
+    }
+
+    @JsonProperty("lowerBound")
+    public Double getLowerBound() {
+        return lowerBound;
+    }
+
+    @JsonProperty("lowerBound")
+    public void setLowerBound(Double lowerBound) {
+        this.lowerBound = lowerBound;
+    }
+
+    public FBAReactionVariable withLowerBound(Double lowerBound) {
+        this.lowerBound = lowerBound;
+        return this;
+    }
+
+    @JsonProperty("class")
+    public String getClass_() {
+        return _class;
+    }
+
+    @JsonProperty("class")
+    public void setClass_(String _class) {
+        this._class = _class;
+    }
+
+    public FBAReactionVariable withClass_(String _class) {
+        this._class = _class;
+        return this;
+    }
+
+    @JsonProperty("min")
+    public Double getMin() {
+        return min;
+    }
+
+    @JsonProperty("min")
+    public void setMin(Double min) {
+        this.min = min;
+    }
+
+    public FBAReactionVariable withMin(Double min) {
+        this.min = min;
+        return this;
+    }
+
+    @JsonProperty("max")
+    public Double getMax() {
+        return max;
+    }
+
+    @JsonProperty("max")
+    public void setMax(Double max) {
+        this.max = max;
+    }
+
+    public FBAReactionVariable withMax(Double max) {
+        this.max = max;
+        return this;
+    }
+
+    @JsonProperty("value")
+    public Double getValue() {
+        return value;
+    }
+
+    @JsonProperty("value")
+    public void setValue(Double value) {
+        this.value = value;
+    }
+
+    public FBAReactionVariable withValue(Double value) {
+        this.value = value;
+        return this;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getAdditionalProperties() {
+        return this.additionalProperties;
+    }
+
+    @JsonAnySetter
+    public void setAdditionalProperties(String name, Object value) {
+        this.additionalProperties.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        return ((((((((((((((((((("FBAReactionVariable"+" [modelreactionRef=")+ modelreactionRef)+", variableType=")+ variableType)+", upperBound=")+ upperBound)+", lowerBound=")+ lowerBound)+", class=")+ _class)+", min=")+ min)+", max=")+ max)+", value=")+ value)+", additionalProperties=")+ additionalProperties)+"]");
+    }
+
+}
@@ -0,0 +1,429 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>A local, parallel engine for the statistics of compare_fba_solutions.</p>
+ * <p>The reaction variables and the compound variables of the solutions are
+ * each aligned by model reaction or model compound id into a matrix with one
+ * column of fluxes per solution. The per-solution counts and the state
+ * conservation of every reaction and compound are then computed in sweeps
+ * down the columns, over blocks of rows handed out to the workers. For the
+ * pairwise similarities, the states of each solution are packed into
+ * bitsets, so a pair of solutions is compared 64 reactions at a time with a
+ * population count instead of reaction by reaction; the pairs are handed out
+ * by row of the similarity matrix.</p>
+ * <p>The states and thresholds are those of the service: a flux above 1e-9
+ * is forward, or uptake, and below -1e-9 reverse, or excretion, while the
+ * pairwise counts compare fluxes against 1e-8, and count as inactive only
+ * fluxes that are exactly zero. Unlike the service, a reaction a solution
+ * lacks counts as NA whatever the order of the solutions.</p>
+ * <pre>
+ * Map&lt;String, FbaResult&gt; fbas = new LinkedHashMap&lt;String, FbaResult&gt;();
+ * for (Path p : fbaJsonFiles) {
+ *     fbas.put(p.getFileName().toString(), FbaResult.read(p));
+ * }
+ * FbaComparisonResult c = new FbaComparison().compare(fbas);
+ * FbaComparisonResult.Alignment rxns = c.getReactions();
+ * for (int r = 0; r &lt; rxns.getIds().size(); r++) {
+ *     if (rxns.hasSignChange(r)) {
+ *         System.out.println(rxns.getIds().get(r) + " " + rxns.getMostCommonState(r));
+ *     }
+ * }
+ * </pre>
+ */
+public class FbaComparison {
+    // a flux beyond this is in the forward or reverse state
+    private static final double STATE_TOL = 1e-9;
+    // a flux beyond this counts as forward or reverse for the pairwise counts
+    private static final double PAIR_TOL = 1e-8;
+    // rows of the alignment swept by a worker at a time
+    private static final int ROW_BLOCK = 512;
+
+    private static final int POSITIVE = FbaComparisonResult.State.POSITIVE.ordinal();
+    private static final int NEGATIVE = FbaComparisonResult.State.NEGATIVE.ordinal();
+    private static final int INACTIVE = FbaComparisonResult.State.INACTIVE.ordinal();
+    private static final int ABSENT = FbaComparisonResult.State.ABSENT.ordinal();
+    private static final int STATES = FbaComparisonResult.State.values().length;
+
+    private int threads = 0;
+    private ExecutorService executor = null;
+
+    // one unit of parallel work
+    private interface Task {
+        void run(int i);
+    }
+
+    /** Set the number of workers.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this engine.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    static int state(double flux) {
+        if (Double.isNaN(flux)) {
+            return ABSENT;
+        } else if (flux > STATE_TOL) {
+            return POSITIVE;
+        } else if (flux < -STATE_TOL) {
+            return NEGATIVE;
+        }
+        return INACTIVE;
+    }
+
+    /** Compares FBA objects.
+     * @param fbas the FBA objects by id, usually their workspace refs, in
+     * comparison order.
+     * @return the comparison.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public FbaComparisonResult compare(Map<String, FbaResult> fbas) throws InterruptedException {
+        final List<String> ids = new ArrayList<String>(fbas.keySet());
+        final List<FbaResult> results = new ArrayList<FbaResult>(fbas.values());
+        int n = ids.size();
+        double[] objectives = new double[n];
+        String[] modelRefs = new String[n];
+        String[] mediaRefs = new String[n];
+        List<List<FbaResult.Variable>> rxnVars = new ArrayList<List<FbaResult.Variable>>();
+        List<List<FbaResult.Variable>> cpdVars = new ArrayList<List<FbaResult.Variable>>();
+        for (int f = 0; f < n; f++) {
+            FbaResult r = results.get(f);
+            objectives[f] = r.getObjectiveValue();
+            modelRefs[f] = r.getFbamodelRef();
+            mediaRefs[f] = r.getMediaRef();
+            rxnVars.add(r.getReactionVariables());
+            cpdVars.add(r.getCompoundVariables());
+        }
+        ExecutorService exec = executor();
+        try {
+            FbaComparisonResult.Alignment reactions = align(false, rxnVars, exec);
+            FbaComparisonResult.Alignment compounds = align(true, cpdVars, exec);
+            analyze(reactions, exec);
+            analyze(compounds, exec);
+            return new FbaComparisonResult(ids, objectives, modelRefs, mediaRefs, reactions, compounds);
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    /** Compares the solutions of a snapshot. A snapshot holds the reaction
+     * and biomass variables only, so the comparison has no compounds.
+     * @param snapshot the snapshot; every solution is compared, under its
+     * solution id.
+     * @return the comparison.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public FbaComparisonResult compare(final FbaSnapshot snapshot) throws InterruptedException {
+        int n = snapshot.getSolutionCount();
+        List<String> ids = new ArrayList<String>(n);
+        double[] objectives = new double[n];
+        for (int s = 0; s < n; s++) {
+            ids.add(snapshot.getSolutionId(s));
+            objectives[s] = snapshot.getObjectiveValue(s);
+        }
+        final FbaComparisonResult.Alignment reactions = new FbaComparisonResult.Alignment(false,
+                new ArrayList<String>(snapshot.getReactionIds()), n, false);
+        final int m = snapshot.getReactionCount();
+        ExecutorService exec = executor();
+        try {
+            run(n, exec, s -> {
+                reactions.values[s] = snapshot.copyColumn(s, FbaSnapshot.Column.VALUE, null);
+                reactions.min[s] = snapshot.copyColumn(s, FbaSnapshot.Column.MIN, null);
+                reactions.max[s] = snapshot.copyColumn(s, FbaSnapshot.Column.MAX, null);
+                reactions.lower[s] = snapshot.copyColumn(s, FbaSnapshot.Column.LOWER_BOUND, null);
+                reactions.upper[s] = snapshot.copyColumn(s, FbaSnapshot.Column.UPPER_BOUND, null);
+                String[] classes = new String[m];
+                for (int r = 0; r < snapshot.getWidth(s); r++) {
+                    classes[r] = snapshot.getVariableClass(s, r);
+                }
+                reactions.classes[s] = classes;
+            });
+            analyze(reactions, exec);
+            FbaComparisonResult.Alignment compounds = new FbaComparisonResult.Alignment(true,
+                    new ArrayList<String>(), n, false);
+            for (int s = 0; s < n; s++) {
+                compounds.values[s] = compounds.lower[s] = compounds.upper[s] = compounds.min[s] =
+                        compounds.max[s] = new double[0];
+                compounds.classes[s] = new String[0];
+            }
+            analyze(compounds, exec);
+            return new FbaComparisonResult(ids, objectives, new String[n], new String[n], reactions, compounds);
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    private ExecutorService executor() {
+        if (executor != null) {
+            return executor;
+        }
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return FbaExecutors.newComputeExecutor("fba-compare", workers);
+    }
+
+    private int workers() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    // assigns the rows in first-seen order, then fills the columns in parallel
+    private FbaComparisonResult.Alignment align(boolean compounds, final List<List<FbaResult.Variable>> vars,
+            ExecutorService exec) throws InterruptedException {
+        int n = vars.size();
+        List<String> ids = new ArrayList<String>();
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        final int[][] rowOf = new int[n][];
+        for (int f = 0; f < n; f++) {
+            List<FbaResult.Variable> list = vars.get(f);
+            rowOf[f] = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                String id = list.get(i).getEntityId();
+                Integer r = id == null ? null : index.get(id);
+                if (r == null && id != null) {
+                    r = ids.size();
+                    ids.add(id);
+                    index.put(id, r);
+                }
+                rowOf[f][i] = r == null ? -1 : r;
+            }
+        }
+        final int m = ids.size();
+        final FbaComparisonResult.Alignment a = new FbaComparisonResult.Alignment(compounds, ids, n, true);
+        run(n, exec, f -> {
+            double[] values = nan(m);
+            double[] lower = nan(m);
+            double[] upper = nan(m);
+            double[] min = nan(m);
+            double[] max = nan(m);
+            String[] classes = new String[m];
+            FbaResult.Variable[] variables = new FbaResult.Variable[m];
+            List<FbaResult.Variable> list = vars.get(f);
+            for (int i = 0; i < list.size(); i++) {
+                int r = rowOf[f][i];
+                if (r < 0) {
+                    continue;
+                }
+                FbaResult.Variable v = list.get(i);
+                // a variable without a value is still carried by the solution
+                values[r] = Double.isNaN(v.getValue()) ? 0 : v.getValue();
+                lower[r] = v.getLowerBound();
+                upper[r] = v.getUpperBound();
+                min[r] = v.getMin();
+                max[r] = v.getMax();
+                classes[r] = v.getVariableClass();
+                variables[r] = v;
+            }
+            a.values[f] = values;
+            a.lower[f] = lower;
+            a.upper[f] = upper;
+            a.min[f] = min;
+            a.max[f] = max;
+            a.classes[f] = classes;
+            a.variables[f] = variables;
+        });
+        return a;
+    }
+
+    private static double[] nan(int m) {
+        double[] ret = new double[m];
+        Arrays.fill(ret, Double.NaN);
+        return ret;
+    }
+
+    // computes the per-solution counts, the state conservation and the
+    // pairwise similarities of an aligned matrix
+    private void analyze(final FbaComparisonResult.Alignment a, ExecutorService exec)
+            throws InterruptedException {
+        final int n = a.fbaCount;
+        final int m = a.ids.size();
+        final int words = (m + 63) >>> 6;
+        // per solution: carried, beyond +-PAIR_TOL, and exactly zero
+        final long[][] present = new long[n][words];
+        final long[][] positive = new long[n][words];
+        final long[][] negative = new long[n][words];
+        final long[][] zero = new long[n][words];
+        run(n, exec, f -> {
+            double[] col = a.values[f];
+            int carried = 0;
+            int pos = 0;
+            int neg = 0;
+            for (int r = 0; r < m; r++) {
+                double v = col[r];
+                if (Double.isNaN(v)) {
+                    continue;
+                }
+                carried++;
+                long bit = 1L << r;
+                int w = r >>> 6;
+                present[f][w] |= bit;
+                if (v > STATE_TOL) {
+                    pos++;
+                } else if (v < -STATE_TOL) {
+                    neg++;
+                }
+                if (v > PAIR_TOL) {
+                    positive[f][w] |= bit;
+                } else if (v < -PAIR_TOL) {
+                    negative[f][w] |= bit;
+                } else if (v == 0) {
+                    zero[f][w] |= bit;
+                }
+            }
+            a.present[f] = carried;
+            a.positive[f] = pos;
+            a.negative[f] = neg;
+        });
+        // state conservation, a block of rows at a time down every column
+        final AtomicInteger common = new AtomicInteger();
+        run((m + ROW_BLOCK - 1) / ROW_BLOCK, exec, b -> {
+            int from = b * ROW_BLOCK;
+            int to = Math.min(m, from + ROW_BLOCK);
+            int[] counts = a.counts;
+            double[] means = a.means;
+            double[] sq = a.stddevs;
+            for (int f = 0; f < n; f++) {
+                double[] col = a.values[f];
+                for (int r = from; r < to; r++) {
+                    double v = col[r];
+                    int s = state(v);
+                    counts[r * STATES + s]++;
+                    if (s != ABSENT) {
+                        means[r * STATES + s] += v;
+                    }
+                }
+            }
+            for (int r = from; r < to; r++) {
+                for (int s = 0; s < STATES; s++) {
+                    int c = counts[r * STATES + s];
+                    if (c > 0) {
+                        means[r * STATES + s] /= c;
+                    }
+                }
+            }
+            for (int f = 0; f < n; f++) {
+                double[] col = a.values[f];
+                for (int r = from; r < to; r++) {
+                    double v = col[r];
+                    int s = state(v);
+                    if (s != ABSENT) {
+                        double d = v - means[r * STATES + s];
+                        sq[r * STATES + s] += d * d;
+                    }
+                }
+            }
+            int full = 0;
+            for (int r = from; r < to; r++) {
+                int best = 0;
+                for (int s = 0; s < STATES; s++) {
+                    int c = counts[r * STATES + s];
+                    if (c > 0) {
+                        sq[r * STATES + s] = Math.sqrt(sq[r * STATES + s] / c);
+                    }
+                    if (c > counts[r * STATES + best]) {
+                        best = s;
+                    }
+                }
+                a.mostCommon[r] = (byte) best;
+                if (counts[r * STATES + ABSENT] == 0) {
+                    full++;
+                }
+            }
+            common.addAndGet(full);
+        });
+        a.commonRows = common.get();
+        // pairwise similarities, a row of the packed upper triangle at a time
+        run(n, exec, i -> {
+            long[] pi = present[i];
+            long[] fi = positive[i];
+            long[] ri = negative[i];
+            long[] zi = zero[i];
+            int p = (int) KnockoutScreenResult.pairIndex(n, i, i + 1);
+            for (int j = i + 1; j < n; j++, p++) {
+                long[] pj = present[j];
+                long[] fj = positive[j];
+                long[] rj = negative[j];
+                long[] zj = zero[j];
+                int both = 0;
+                int forward = 0;
+                int reverse = 0;
+                int inactive = 0;
+                int flips = 0;
+                for (int w = 0; w < words; w++) {
+                    both += Long.bitCount(pi[w] & pj[w]);
+                    forward += Long.bitCount(fi[w] & fj[w]);
+                    reverse += Long.bitCount(ri[w] & rj[w]);
+                    inactive += Long.bitCount(zi[w] & zj[w]);
+                    flips += Long.bitCount((fi[w] & rj[w]) | (ri[w] & fj[w]));
+                }
+                a.common[p] = both;
+                a.commonPositive[p] = forward;
+                a.commonNegative[p] = reverse;
+                a.commonInactive[p] = inactive;
+                a.signChanges[p] = flips;
+            }
+        });
+    }
+
+    // runs tasks 0 to count - 1 on up to one worker per thread
+    private void run(int count, ExecutorService exec, final Task task) throws InterruptedException {
+        if (count == 0) {
+            return;
+        }
+        final AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(workers(), count));
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                futures.add(exec.submit(() -> {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        task.run(i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Comparison worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * <p>The comparison of a set of FBA solutions by an {@link FbaComparison}.</p>
+ * <p>The reactions and the exchanged compounds of the solutions are each
+ * aligned into an {@link Alignment}, a matrix with one row per reaction or
+ * compound and one column per solution, which carries the state statistics
+ * of every row. The pairwise similarities of the solutions are held in
+ * packed upper triangles. {@link #toJson(String, FbaModel)} renders the
+ * whole comparison as the KBaseFBA.FBAComparison object the service's
+ * compare_fba_solutions saves.</p>
+ */
+public class FbaComparisonResult {
+
+    /** The state of a reaction or compound in one solution. */
+    public enum State {
+        /** Forward flux, or uptake of a compound. */
+        POSITIVE,
+        /** Reverse flux, or excretion of a compound. */
+        NEGATIVE,
+        /** No flux. */
+        INACTIVE,
+        /** The solution does not carry the reaction or compound. */
+        ABSENT
+    }
+
+    /** The pairwise similarities of two solutions. The first eight are the
+     * fba_similarity tuple of an FBAComparisonFBA, in order.
+     */
+    public enum Similarity {
+        COMMON_REACTIONS, COMMON_FORWARD, COMMON_REVERSE, COMMON_INACTIVE, COMMON_EXCHANGE_COMPOUNDS,
+        COMMON_UPTAKE, COMMON_EXCRETION, COMMON_INACTIVE_COMPOUNDS,
+        /** Reactions carrying flux in opposite directions in the two
+         * solutions. */
+        REACTION_SIGN_CHANGES,
+        /** Compounds taken up in one solution and excreted in the other. */
+        COMPOUND_SIGN_CHANGES
+    }
+
+    /** The reactions or the compounds of all solutions, aligned by id. */
+    public static class Alignment {
+        private static final State[] STATES = State.values();
+
+        private final boolean compounds;
+        final List<String> ids;
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+        final int fbaCount;
+        // per solution, indexed by row; NaN where the solution lacks the row
+        final double[][] values;
+        final double[][] lower;
+        final double[][] upper;
+        final double[][] min;
+        final double[][] max;
+        final String[][] classes;
+        // the variables of the solutions, when compared from FBA objects
+        final FbaResult.Variable[][] variables;
+        // per row and state, at [row * 4 + state]
+        final int[] counts;
+        final double[] means;
+        final double[] stddevs;
+        final byte[] mostCommon;
+        // per solution
+        final int[] present;
+        final int[] positive;
+        final int[] negative;
+        // per pair of solutions, in packed upper triangles
+        final int[] common;
+        final int[] commonPositive;
+        final int[] commonNegative;
+        final int[] commonInactive;
+        final int[] signChanges;
+        int commonRows = 0;
+
+        Alignment(boolean compounds, List<String> ids, int fbaCount, boolean withVariables) {
+            this.compounds = compounds;
+            this.ids = Collections.unmodifiableList(ids);
+            for (int r = 0; r < ids.size(); r++) {
+                index.put(ids.get(r), r);
+            }
+            this.fbaCount = fbaCount;
+            int m = ids.size();
+            values = new double[fbaCount][];
+            lower = new double[fbaCount][];
+            upper = new double[fbaCount][];
+            min = new double[fbaCount][];
+            max = new double[fbaCount][];
+            classes = new String[fbaCount][];
+            variables = withVariables ? new FbaResult.Variable[fbaCount][] : null;
+            counts = new int[m * STATES.length];
+            means = new double[m * STATES.length];
+            stddevs = new double[m * STATES.length];
+            mostCommon = new byte[m];
+            present = new int[fbaCount];
+            positive = new int[fbaCount];
+            negative = new int[fbaCount];
+            int pairs = fbaCount * (fbaCount - 1) / 2;
+            common = new int[pairs];
+            commonPositive = new int[pairs];
+            commonNegative = new int[pairs];
+            commonInactive = new int[pairs];
+            signChanges = new int[pairs];
+        }
+
+        /** Check whether this is the alignment of the exchanged compounds.
+         * @return true for compounds, false for reactions.
+         */
+        public boolean isCompounds() {
+            return compounds;
+        }
+
+        /** Get the row ids, the model reaction or model compound ids, in the
+         * order they were first seen.
+         * @return the ids.
+         */
+        public List<String> getIds() {
+            return ids;
+        }
+
+        /** Get the row of a reaction or compound.
+         * @param id the model reaction or model compound id.
+         * @return the row, or -1 if no solution carries it.
+         */
+        public int indexOf(String id) {
+            Integer r = index.get(id);
+            return r == null ? -1 : r;
+        }
+
+        /** Get the label the service gives a state in an FBAComparison.
+         * @param state the state.
+         * @return FOR, REV, IA or NA for reactions, UP, EX, IA or NA for
+         * compounds.
+         */
+        public String getLabel(State state) {
+            switch (state) {
+            case POSITIVE:
+                return compounds ? "UP" : "FOR";
+            case NEGATIVE:
+                return compounds ? "EX" : "REV";
+            case INACTIVE:
+                return "IA";
+            default:
+                return "NA";
+            }
+        }
+
+        /** Get the state of a row in a solution.
+         * @param row the row.
+         * @param fba the solution.
+         * @return the state.
+         */
+        public State getState(int row, int fba) {
+            return STATES[FbaComparison.state(values[fba][row])];
+        }
+
+        /** Get the number of solutions in which a row is in a state.
+         * @param row the row.
+         * @param state the state.
+         * @return the count.
+         */
+        public int getCount(int row, State state) {
+            return counts[row * STATES.length + state.ordinal()];
+        }
+
+        /** Get the fraction of all solutions in which a row is in a state.
+         * @param row the row.
+         * @param state the state.
+         * @return the fraction.
+         */
+        public double getFraction(int row, State state) {
+            return fbaCount == 0 ? 0 : (double) getCount(row, state) / fbaCount;
+        }
+
+        /** Get the mean flux of a row over the solutions in which it is in a
+         * state.
+         * @param row the row.
+         * @param state the state.
+         * @return the mean, or 0 if the row is never in the state.
+         */
+        public double getMeanFlux(int row, State state) {
+            return means[row * STATES.length + state.ordinal()];
+        }
+
+        /** Get the population standard deviation of the flux of a row over
+         * the solutions in which it is in a state.
+         * @param row the row.
+         * @param state the state.
+         * @return the standard deviation, or 0 if the row is never in the
+         * state.
+         */
+        public double getFluxStddev(int row, State state) {
+            return stddevs[row * STATES.length + state.ordinal()];
+        }
+
+        /** Get the most common state of a row, the first in declaration
+         * order on a tie.
+         * @param row the row.
+         * @return the state.
+         */
+        public State getMostCommonState(int row) {
+            return STATES[mostCommon[row]];
+        }
+
+        /** Check whether a row carries flux in opposite directions in
+         * different solutions.
+         * @param row the row.
+         * @return true if its flux changes sign.
+         */
+        public boolean hasSignChange(int row) {
+            return getCount(row, State.POSITIVE) > 0 && getCount(row, State.NEGATIVE) > 0;
+        }
+
+        /** Get the number of solutions carrying a row.
+         * @param row the row.
+         * @return the count.
+         */
+        public int getFbaCount(int row) {
+            return fbaCount - getCount(row, State.ABSENT);
+        }
+
+        /** Get the number of rows carried by every solution.
+         * @return the count.
+         */
+        public int getCommonCount() {
+            return commonRows;
+        }
+
+        /** Get the flux of a row in a solution.
+         * @param row the row.
+         * @param fba the solution.
+         * @return the flux, or NaN if the solution does not carry the row.
+         */
+        public double getFlux(int row, int fba) {
+            return values[fba][row];
+        }
+
+        public double getLowerBound(int row, int fba) {
+            return lower[fba][row];
+        }
+
+        public double getUpperBound(int row, int fba) {
+            return upper[fba][row];
+        }
+
+        public double getMin(int row, int fba) {
+            return min[fba][row];
+        }
+
+        public double getMax(int row, int fba) {
+            return max[fba][row];
+        }
+
+        /** Get the variable class of a row in a solution.
+         * @param row the row.
+         * @param fba the solution.
+         * @return the class, or null if unknown.
+         */
+        public String getVariableClass(int row, int fba) {
+            return classes[fba][row];
+        }
+
+        /** Get the fluxes of a solution as a column of this alignment.
+         * @param fba the solution.
+         * @return a copy of the fluxes by row, NaN where the solution does
+         * not carry the row.
+         */
+        public double[] getFluxes(int fba) {
+            return values[fba].clone();
+        }
+
+        @Override
+        public String toString() {
+            return "Alignment [" + (compounds ? "compounds" : "reactions") + "=" + ids.size() + ", common=" +
+                    commonRows + "]";
+        }
+    }
+
+    private final List<String> fbaIds;
+    private final Map<String, Integer> fbaIndex = new HashMap<String, Integer>();
+    private final double[] objectives;
+    private final String[] modelRefs;
+    private final String[] mediaRefs;
+    private final Alignment reactions;
+    private final Alignment compounds;
+
+    FbaComparisonResult(List<String> fbaIds, double[] objectives, String[] modelRefs, String[] mediaRefs,
+            Alignment reactions, Alignment compounds) {
+        this.fbaIds = Collections.unmodifiableList(new ArrayList<String>(fbaIds));
+        for (int f = 0; f < fbaIds.size(); f++) {
+            fbaIndex.put(fbaIds.get(f), f);
+        }
+        this.objectives = objectives;
+        this.modelRefs = modelRefs;
+        this.mediaRefs = mediaRefs;
+        this.reactions = reactions;
+        this.compounds = compounds;
+    }
+
+    /** Get the ids of the compared solutions, in comparison order.
+     * @return the ids.
+     */
+    public List<String> getFbaIds() {
+        return fbaIds;
+    }
+
+    /** Get the position of a solution.
+     * @param fbaId the solution id.
+     * @return the position, or -1 if it was not compared.
+     */
+    public int indexOf(String fbaId) {
+        Integer f = fbaIndex.get(fbaId);
+        return f == null ? -1 : f;
+    }
+
+    public double getObjectiveValue(int fba) {
+        return objectives[fba];
+    }
+
+    public String getFbamodelRef(int fba) {
+        return modelRefs[fba];
+    }
+
+    public String getMediaRef(int fba) {
+        return mediaRefs[fba];
+    }
+
+    public Alignment getReactions() {
+        return reactions;
+    }
+
+    public Alignment getCompounds() {
+        return compounds;
+    }
+
+    /** Get the number of reactions of a solution.
+     * @param fba the solution.
+     * @return the number of its reaction variables.
+     */
+    public int getReactionCount(int fba) {
+        return reactions.present[fba];
+    }
+
+    /** Get the number of exchanged compounds of a solution.
+     * @param fba the solution.
+     * @return the number of its compound variables.
+     */
+    public int getCompoundCount(int fba) {
+        return compounds.present[fba];
+    }
+
+    public int getForwardReactions(int fba) {
+        return reactions.positive[fba];
+    }
+
+    public int getReverseReactions(int fba) {
+        return reactions.negative[fba];
+    }
+
+    public int getUptakeCompounds(int fba) {
+        return compounds.positive[fba];
+    }
+
+    public int getExcretionCompounds(int fba) {
+        return compounds.negative[fba];
+    }
+
+    /** Get a similarity of two solutions.
+     * @param similarity the similarity.
+     * @param fba1 one solution.
+     * @param fba2 the other solution.
+     * @return the number of reactions or compounds the similarity counts, 0
+     * for a solution with itself.
+     */
+    public int getSimilarity(Similarity similarity, int fba1, int fba2) {
+        if (fba1 == fba2) {
+            return 0;
+        }
+        int p = (int) (fba1 < fba2 ? KnockoutScreenResult.pairIndex(fbaIds.size(), fba1, fba2) :
+            KnockoutScreenResult.pairIndex(fbaIds.size(), fba2, fba1));
+        switch (similarity) {
+        case COMMON_REACTIONS:
+            return reactions.common[p];
+        case COMMON_FORWARD:
+            return reactions.commonPositive[p];
+        case COMMON_REVERSE:
+            return reactions.commonNegative[p];
+        case COMMON_INACTIVE:
+            return reactions.commonInactive[p];
+        case COMMON_EXCHANGE_COMPOUNDS:
+            return compounds.common[p];
+        case COMMON_UPTAKE:
+            return compounds.commonPositive[p];
+        case COMMON_EXCRETION:
+            return compounds.commonNegative[p];
+        case COMMON_INACTIVE_COMPOUNDS:
+            return compounds.commonInactive[p];
+        case REACTION_SIGN_CHANGES:
+            return reactions.signChanges[p];
+        default:
+            return compounds.signChanges[p];
+        }
+    }
+
+    /** Renders the comparison as a KBaseFBA.FBAComparison object, as
+     * compare_fba_solutions saves it.
+     * @param id the id of the comparison object.
+     * @param model the model of the solutions, for the names, stoichiometry
+     * and directions of the reactions and the names, charges and formulas
+     * of the compounds; or null to use the ids.
+     * @return the object.
+     */
+    public ObjectNode toJson(String id, FbaModel model) {
+        ObjectNode ret = JsonRpcCodec.mapper().createObjectNode();
+        ret.put("id", id);
+        ret.put("common_reactions", reactions.commonRows);
+        ret.put("common_compounds", compounds.commonRows);
+        ArrayNode fbas = ret.putArray("fbas");
+        Similarity[] tuple = Similarity.values();
+        for (int f = 0; f < fbaIds.size(); f++) {
+            ObjectNode fba = fbas.addObject();
+            fba.put("id", fbaIds.get(f));
+            fba.put("fba_ref", fbaIds.get(f));
+            fba.put("fbamodel_ref", modelRefs[f]);
+            ObjectNode similarity = fba.putObject("fba_similarity");
+            for (int g = 0; g < fbaIds.size(); g++) {
+                if (g != f) {
+                    ArrayNode t = similarity.putArray(fbaIds.get(g));
+                    for (int s = 0; s <= Similarity.COMMON_INACTIVE_COMPOUNDS.ordinal(); s++) {
+                        t.add(getSimilarity(tuple[s], f, g));
+                    }
+                }
+            }
+            fba.put("objective", objectives[f]);
+            fba.put("media_ref", mediaRefs[f]);
+            fba.put("reactions", reactions.present[f]);
+            fba.put("compounds", compounds.present[f]);
+            fba.put("forward_reactions", reactions.positive[f]);
+            fba.put("reverse_reactions", reactions.negative[f]);
+            fba.put("uptake_compounds", compounds.positive[f]);
+            fba.put("excretion_compounds", compounds.negative[f]);
+        }
+        ArrayNode rxns = ret.putArray("reactions");
+        for (int r = 0; r < reactions.ids.size(); r++) {
+            String rid = reactions.ids.get(r);
+            FbaModel.Reaction mr = model == null ? null : model.getReaction(rid);
+            ObjectNode rxn = rxns.addObject();
+            rxn.put("id", rid);
+            rxn.put("name", mr == null || mr.getName() == null ? rid : mr.getName());
+            ArrayNode stoichiometry = rxn.putArray("stoichiometry");
+            if (mr != null) {
+                for (int i = 0; i < mr.getReagentCount(); i++) {
+                    FbaModel.Compound c = model.getCompound(mr.getReagentId(i));
+                    stoichiometry.addArray().add(mr.getCoefficient(i))
+                            .add(c == null || c.getName() == null ? mr.getReagentId(i) : c.getName())
+                            .add(mr.getReagentId(i));
+                }
+            }
+            rxn.put("direction", mr == null ? "=" : String.valueOf(mr.getDirection()));
+            conservation(rxn, reactions, r);
+            ObjectNode fluxes = rxn.putObject("reaction_fluxes");
+            for (int f = 0; f < fbaIds.size(); f++) {
+                if (Double.isNaN(reactions.values[f][r])) {
+                    continue;
+                }
+                JsonNode extras = reactions.variables == null || reactions.variables[f][r] == null ? null :
+                    reactions.variables[f][r].getExtras();
+                fluxes.putArray(fbaIds.get(f)).add(reactions.getLabel(reactions.getState(r, f)))
+                        .add(reactions.upper[f][r]).add(reactions.lower[f][r]).add(reactions.max[f][r])
+                        .add(reactions.min[f][r]).add(reactions.values[f][r])
+                        .add(extras == null ? 0 : extras.path("scaled_exp").asDouble(0))
+                        .add(extras == null ? "unknown" : extras.path("exp_state").asText("unknown"))
+                        .add(rid);
+            }
+        }
+        ArrayNode cpds = ret.putArray("compounds");
+        for (int r = 0; r < compounds.ids.size(); r++) {
+            String cid = compounds.ids.get(r);
+            FbaModel.Compound mc = model == null ? null : model.getCompound(cid);
+            ObjectNode cpd = cpds.addObject();
+            cpd.put("id", cid);
+            cpd.put("name", mc == null || mc.getName() == null ? cid : mc.getName());
+            if (mc != null && !Double.isNaN(mc.getCharge())) {
+                cpd.put("charge", mc.getCharge());
+            }
+            if (mc != null && mc.getFormula() != null) {
+                cpd.put("formula", mc.getFormula());
+            }
+            conservation(cpd, compounds, r);
+            ObjectNode exchanges = cpd.putObject("exchanges");
+            for (int f = 0; f < fbaIds.size(); f++) {
+                if (Double.isNaN(compounds.values[f][r])) {
+                    continue;
+                }
+                exchanges.putArray(fbaIds.get(f)).add(compounds.getLabel(compounds.getState(r, f)))
+                        .add(compounds.upper[f][r]).add(compounds.lower[f][r]).add(compounds.max[f][r])
+                        .add(compounds.min[f][r]).add(compounds.values[f][r]).add(compounds.classes[f][r]);
+            }
+        }
+        return ret;
+    }
+
+    private static void conservation(ObjectNode entity, Alignment a, int row) {
+        ObjectNode sc = entity.putObject("state_conservation");
+        for (State s : State.values()) {
+            if (a.getCount(row, s) > 0) {
+                sc.putArray(a.getLabel(s)).add(a.getCount(row, s)).add(a.getFraction(row, s))
+                        .add(a.getMeanFlux(row, s)).add(a.getFluxStddev(row, s));
+            }
+        }
+        entity.put("most_common_state", a.getLabel(a.getMostCommonState(row)));
+    }
+
+    @Override
+    public String toString() {
+        return "FbaComparisonResult [fbas=" + fbaIds.size() + ", reactions=" + reactions.ids.size() +
+                ", compounds=" + compounds.ids.size() + ", commonReactions=" + reactions.commonRows +
+                ", commonCompounds=" + compounds.commonRows + "]";
+    }
+}
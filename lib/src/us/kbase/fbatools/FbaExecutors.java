@@ -0,0 +1,57 @@
+package us.kbase.fbatools;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for the client-side engines in this package.
+ */
+public class FbaExecutors {
+
+    private FbaExecutors() {}
+
+    /** Creates an executor that runs every task on its own thread, for tasks
+     * that spend nearly all their time blocked on a service call. On a
+     * runtime with virtual threads each task gets a virtual thread, so the
+     * number of tasks in flight is not limited by the number of platform
+     * threads; otherwise a pool of at most {@code fallbackThreads} daemon
+     * threads is used.
+     * @param name the prefix of the thread names.
+     * @param fallbackThreads the size of the fallback pool.
+     * @return a new executor; the caller must shut it down.
+     */
+    public static ExecutorService newBlockingCallExecutor(String name, int fallbackThreads) {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Math.max(1, fallbackThreads), daemonThreads(name));
+        }
+    }
+
+    /** Creates a fixed pool of daemon threads for CPU-bound work.
+     * @param name the prefix of the thread names.
+     * @param threads the number of threads; zero or less means one per
+     * available processor.
+     * @return a new executor; the caller must shut it down.
+     */
+    public static ExecutorService newComputeExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                daemonThreads(name));
+    }
+
+    static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
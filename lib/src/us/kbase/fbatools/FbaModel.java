@@ -0,0 +1,735 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>A typed, read-only view of a KBaseFBA.FBAModel object.</p>
+ * <p>The model is read straight off the JSON token stream into compact
+ * records instead of a tree of maps. Numeric fields are primitive doubles,
+ * NaN where the object leaves them out; the stoichiometry of a reaction or
+ * biomass is a pair of arrays of compound ids and coefficients; and ids
+ * that recur across records, such as compound and compartment ids, are
+ * interned per model so every reagent naming a compound shares its string.
+ * Fields that are seldom read, such as the proteins, aliases, dblinks and
+ * gapfill_data of a reaction, are kept as the bytes of their JSON and only
+ * parsed into a {@link JsonNode} by {@link Reaction#getExtras()} on first
+ * access. The gapfill_data of biomass compounds is not kept.</p>
+ * <pre>
+ * FbaModel model = FbaModel.read(path);
+ * for (FbaModel.Reaction r : model.getReactions()) {
+ *     for (int i = 0; i &lt; r.getReagentCount(); i++) {
+ *         double charge = model.getCompound(r.getReagentId(i)).getCharge();
+ *     }
+ * }
+ * </pre>
+ */
+public class FbaModel {
+    private static final List<String> FRACTIONS =
+            Arrays.asList("other", "dna", "rna", "protein", "cellwall", "lipid", "cofactor", "energy");
+
+    private String id = null;
+    private String name = null;
+    private String source = null;
+    private String sourceId = null;
+    private String type = null;
+    private String genomeRef = null;
+    private String templateRef = null;
+    private List<Compartment> compartments = Collections.emptyList();
+    private List<Compound> compounds = Collections.emptyList();
+    private List<Reaction> reactions = Collections.emptyList();
+    private List<Biomass> biomasses = Collections.emptyList();
+    private TypedJson.Extras extras = null;
+    private volatile Map<String, Compound> compoundIndex = null;
+    private volatile Map<String, Reaction> reactionIndex = null;
+
+    /** A ModelCompartment. */
+    public static class Compartment {
+        private final String id;
+        private final String compartmentRef;
+        private final int compartmentIndex;
+        private final String label;
+        private final double pH;
+        private final double potential;
+
+        Compartment(String id, String compartmentRef, int compartmentIndex, String label, double pH,
+                double potential) {
+            this.id = id;
+            this.compartmentRef = compartmentRef;
+            this.compartmentIndex = compartmentIndex;
+            this.label = label;
+            this.pH = pH;
+            this.potential = potential;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getCompartmentRef() {
+            return compartmentRef;
+        }
+
+        public int getCompartmentIndex() {
+            return compartmentIndex;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public double getPH() {
+            return pH;
+        }
+
+        public double getPotential() {
+            return potential;
+        }
+
+        @Override
+        public String toString() {
+            return "Compartment [id=" + id + ", label=" + label + "]";
+        }
+    }
+
+    /** A ModelCompound. */
+    public static class Compound {
+        private final String id;
+        private final String name;
+        private final String formula;
+        private final double charge;
+        private final double maxuptake;
+        private final String compoundRef;
+        private final String compartmentId;
+        private final String smiles;
+        private final String inchikey;
+        private final TypedJson.Extras extras;
+
+        Compound(String id, String name, String formula, double charge, double maxuptake, String compoundRef,
+                String compartmentId, String smiles, String inchikey, TypedJson.Extras extras) {
+            this.id = id;
+            this.name = name;
+            this.formula = formula;
+            this.charge = charge;
+            this.maxuptake = maxuptake;
+            this.compoundRef = compoundRef;
+            this.compartmentId = compartmentId;
+            this.smiles = smiles;
+            this.inchikey = inchikey;
+            this.extras = extras;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFormula() {
+            return formula;
+        }
+
+        public double getCharge() {
+            return charge;
+        }
+
+        public double getMaxuptake() {
+            return maxuptake;
+        }
+
+        public String getCompoundRef() {
+            return compoundRef;
+        }
+
+        /** Get the id of the compound's model compartment.
+         * @return the id the modelcompartment_ref points to, e.g. c0.
+         */
+        public String getCompartmentId() {
+            return compartmentId;
+        }
+
+        public String getSmiles() {
+            return smiles;
+        }
+
+        public String getInchikey() {
+            return inchikey;
+        }
+
+        /** Get the fields without a typed getter, such as aliases, dblinks,
+         * string_attributes and numerical_attributes.
+         * @return the fields as a JSON object, parsed on first access.
+         */
+        public JsonNode getExtras() {
+            return TypedJson.Extras.get(extras);
+        }
+
+        @Override
+        public String toString() {
+            return "Compound [id=" + id + ", name=" + name + ", formula=" + formula + ", charge=" + charge + "]";
+        }
+    }
+
+    /** A ModelReaction. */
+    public static class Reaction {
+        private final String id;
+        private final String name;
+        private final String reactionRef;
+        private final char direction;
+        private final double protons;
+        private final double maxforflux;
+        private final double maxrevflux;
+        private final double probability;
+        private final String compartmentId;
+        private final String importedGpr;
+        private final String[] reagentIds;
+        private final double[] coefficients;
+        private final TypedJson.Extras extras;
+
+        Reaction(String id, String name, String reactionRef, char direction, double protons, double maxforflux,
+                double maxrevflux, double probability, String compartmentId, String importedGpr,
+                TypedJson.Terms reagents, TypedJson.Extras extras) {
+            this.id = id;
+            this.name = name;
+            this.reactionRef = reactionRef;
+            this.direction = direction;
+            this.protons = protons;
+            this.maxforflux = maxforflux;
+            this.maxrevflux = maxrevflux;
+            this.probability = probability;
+            this.compartmentId = compartmentId;
+            this.importedGpr = importedGpr;
+            this.reagentIds = Arrays.copyOf(reagents.ids, reagents.size);
+            this.coefficients = Arrays.copyOf(reagents.coefficients, reagents.size);
+            this.extras = extras;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getReactionRef() {
+            return reactionRef;
+        }
+
+        /** Get the direction.
+         * @return '&gt;', '&lt;' or '='; '=' if the object leaves it out.
+         */
+        public char getDirection() {
+            return direction;
+        }
+
+        public double getProtons() {
+            return protons;
+        }
+
+        public double getMaxforflux() {
+            return maxforflux;
+        }
+
+        public double getMaxrevflux() {
+            return maxrevflux;
+        }
+
+        public double getProbability() {
+            return probability;
+        }
+
+        public String getCompartmentId() {
+            return compartmentId;
+        }
+
+        public String getImportedGpr() {
+            return importedGpr;
+        }
+
+        public int getReagentCount() {
+            return reagentIds.length;
+        }
+
+        /** Get the model compound of a reagent.
+         * @param i the reagent index.
+         * @return the compound id the modelcompound_ref points to.
+         */
+        public String getReagentId(int i) {
+            return reagentIds[i];
+        }
+
+        public double getCoefficient(int i) {
+            return coefficients[i];
+        }
+
+        /** Get the fields without a typed getter, such as
+         * modelReactionProteins, aliases, dblinks, pathway and gapfill_data.
+         * @return the fields as a JSON object, parsed on first access.
+         */
+        public JsonNode getExtras() {
+            return TypedJson.Extras.get(extras);
+        }
+
+        /** Get the proteins of the reaction; shorthand for the
+         * modelReactionProteins of {@link #getExtras()}.
+         * @return the proteins, an empty node if there are none.
+         */
+        public JsonNode getProteins() {
+            return getExtras().path("modelReactionProteins");
+        }
+
+        @Override
+        public String toString() {
+            return "Reaction [id=" + id + ", direction=" + direction + ", reagents=" + reagentIds.length + "]";
+        }
+    }
+
+    /** A Biomass. */
+    public static class Biomass {
+        private final String id;
+        private final String name;
+        private final double other;
+        private final double dna;
+        private final double rna;
+        private final double protein;
+        private final double cellwall;
+        private final double lipid;
+        private final double cofactor;
+        private final double energy;
+        private final String[] compoundIds;
+        private final double[] coefficients;
+        private final TypedJson.Extras extras;
+
+        Biomass(String id, String name, double[] fractions, TypedJson.Terms compounds, TypedJson.Extras extras) {
+            this.id = id;
+            this.name = name;
+            this.other = fractions[0];
+            this.dna = fractions[1];
+            this.rna = fractions[2];
+            this.protein = fractions[3];
+            this.cellwall = fractions[4];
+            this.lipid = fractions[5];
+            this.cofactor = fractions[6];
+            this.energy = fractions[7];
+            this.compoundIds = Arrays.copyOf(compounds.ids, compounds.size);
+            this.coefficients = Arrays.copyOf(compounds.coefficients, compounds.size);
+            this.extras = extras;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getOther() {
+            return other;
+        }
+
+        public double getDna() {
+            return dna;
+        }
+
+        public double getRna() {
+            return rna;
+        }
+
+        public double getProtein() {
+            return protein;
+        }
+
+        public double getCellwall() {
+            return cellwall;
+        }
+
+        public double getLipid() {
+            return lipid;
+        }
+
+        public double getCofactor() {
+            return cofactor;
+        }
+
+        public double getEnergy() {
+            return energy;
+        }
+
+        public int getCompoundCount() {
+            return compoundIds.length;
+        }
+
+        public String getCompoundId(int i) {
+            return compoundIds[i];
+        }
+
+        public double getCoefficient(int i) {
+            return coefficients[i];
+        }
+
+        /** Get the fields without a typed getter, such as removedcompounds.
+         * @return the fields as a JSON object, parsed on first access.
+         */
+        public JsonNode getExtras() {
+            return TypedJson.Extras.get(extras);
+        }
+
+        @Override
+        public String toString() {
+            return "Biomass [id=" + id + ", compounds=" + compoundIds.length + "]";
+        }
+    }
+
+    private FbaModel() {}
+
+    /** Reads a model from a file.
+     * @param path the FBAModel object as JSON.
+     * @return the model.
+     * @throws IOException if the file cannot be read or is not a JSON object.
+     */
+    public static FbaModel read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /** Reads a model from a stream, which is left open.
+     * @param in the FBAModel object as JSON.
+     * @return the model.
+     * @throws IOException if the stream cannot be read or is not a JSON
+     * object.
+     */
+    public static FbaModel read(InputStream in) throws IOException {
+        try (JsonParser p = TypedJson.parser(in)) {
+            return read(p);
+        }
+    }
+
+    /** Converts a model already parsed into a tree.
+     * @param model the FBAModel object.
+     * @return the model.
+     * @throws IOException if the node is not an object.
+     */
+    public static FbaModel fromJson(JsonNode model) throws IOException {
+        try (JsonParser p = TypedJson.parser(model)) {
+            return read(p);
+        }
+    }
+
+    private static FbaModel read(final JsonParser p) throws IOException {
+        final TypedJson.Ids ids = new TypedJson.Ids();
+        final TypedJson.ExtrasBuilder xb = new TypedJson.ExtrasBuilder();
+        // top level extras are gathered apart from those of the records
+        TypedJson.ExtrasBuilder top = new TypedJson.ExtrasBuilder();
+        FbaModel m = new FbaModel();
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                m.id = TypedJson.text(p);
+                break;
+            case "name":
+                m.name = TypedJson.text(p);
+                break;
+            case "source":
+                m.source = TypedJson.text(p);
+                break;
+            case "source_id":
+                m.sourceId = TypedJson.text(p);
+                break;
+            case "type":
+                m.type = TypedJson.text(p);
+                break;
+            case "genome_ref":
+                m.genomeRef = TypedJson.text(p);
+                break;
+            case "template_ref":
+                m.templateRef = TypedJson.text(p);
+                break;
+            case "modelcompartments":
+                m.compartments = TypedJson.array(p, r -> readCompartment(r, ids));
+                break;
+            case "modelcompounds":
+                m.compounds = TypedJson.array(p, r -> readCompound(r, ids, xb));
+                break;
+            case "modelreactions":
+                m.reactions = TypedJson.array(p, r -> readReaction(r, ids, xb));
+                break;
+            case "biomasses":
+                m.biomasses = TypedJson.array(p, r -> readBiomass(r, ids, xb));
+                break;
+            default:
+                top.add(f, p);
+            }
+        }
+        m.extras = top.build();
+        return m;
+    }
+
+    private static Compartment readCompartment(JsonParser p, TypedJson.Ids ids) throws IOException {
+        String id = null;
+        String ref = null;
+        int index = 0;
+        String label = null;
+        double pH = Double.NaN;
+        double potential = Double.NaN;
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                id = ids.intern(TypedJson.text(p));
+                break;
+            case "compartment_ref":
+                ref = TypedJson.text(p);
+                break;
+            case "compartmentIndex":
+                index = (int) TypedJson.number(p);
+                break;
+            case "label":
+                label = TypedJson.text(p);
+                break;
+            case "pH":
+                pH = TypedJson.number(p);
+                break;
+            case "potential":
+                potential = TypedJson.number(p);
+                break;
+            default:
+                p.skipChildren();
+            }
+        }
+        return new Compartment(id, ref, index, label, pH, potential);
+    }
+
+    private static Compound readCompound(JsonParser p, TypedJson.Ids ids, TypedJson.ExtrasBuilder xb)
+            throws IOException {
+        String id = null;
+        String name = null;
+        String formula = null;
+        double charge = Double.NaN;
+        double maxuptake = Double.NaN;
+        String ref = null;
+        String cmp = null;
+        String smiles = null;
+        String inchikey = null;
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                id = ids.intern(TypedJson.text(p));
+                break;
+            case "name":
+                name = TypedJson.text(p);
+                break;
+            case "formula":
+                formula = TypedJson.text(p);
+                break;
+            case "charge":
+                charge = TypedJson.number(p);
+                break;
+            case "maxuptake":
+                maxuptake = TypedJson.number(p);
+                break;
+            case "compound_ref":
+                ref = TypedJson.text(p);
+                break;
+            case "modelcompartment_ref":
+                String c = TypedJson.text(p);
+                cmp = c == null ? null : ids.intern(FbaProblem.refId(c));
+                break;
+            case "smiles":
+                smiles = TypedJson.text(p);
+                break;
+            case "inchikey":
+                inchikey = TypedJson.text(p);
+                break;
+            default:
+                xb.add(f, p);
+            }
+        }
+        return new Compound(id, name, formula, charge, maxuptake, ref, cmp, smiles, inchikey, xb.build());
+    }
+
+    private static Reaction readReaction(JsonParser p, TypedJson.Ids ids, TypedJson.ExtrasBuilder xb)
+            throws IOException {
+        String id = null;
+        String name = null;
+        String ref = null;
+        char direction = '=';
+        double protons = Double.NaN;
+        double maxforflux = Double.NaN;
+        double maxrevflux = Double.NaN;
+        double probability = Double.NaN;
+        String cmp = null;
+        String gpr = null;
+        TypedJson.Terms reagents = null;
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                id = TypedJson.text(p);
+                break;
+            case "name":
+                name = TypedJson.text(p);
+                break;
+            case "reaction_ref":
+                ref = TypedJson.text(p);
+                break;
+            case "direction":
+                String d = TypedJson.text(p);
+                direction = d == null || d.isEmpty() ? '=' : d.charAt(0);
+                break;
+            case "protons":
+                protons = TypedJson.number(p);
+                break;
+            case "maxforflux":
+                maxforflux = TypedJson.number(p);
+                break;
+            case "maxrevflux":
+                maxrevflux = TypedJson.number(p);
+                break;
+            case "probability":
+                probability = TypedJson.number(p);
+                break;
+            case "modelcompartment_ref":
+                String c = TypedJson.text(p);
+                cmp = c == null ? null : ids.intern(FbaProblem.refId(c));
+                break;
+            case "imported_gpr":
+                gpr = TypedJson.text(p);
+                break;
+            case "modelReactionReagents":
+                reagents = TypedJson.terms(p, ids);
+                break;
+            default:
+                xb.add(f, p);
+            }
+        }
+        return new Reaction(id, name, ref, direction, protons, maxforflux, maxrevflux, probability, cmp, gpr,
+                reagents == null ? new TypedJson.Terms() : reagents, xb.build());
+    }
+
+    private static Biomass readBiomass(JsonParser p, TypedJson.Ids ids, TypedJson.ExtrasBuilder xb)
+            throws IOException {
+        String id = null;
+        String name = null;
+        double[] fractions = new double[FRACTIONS.size()];
+        Arrays.fill(fractions, Double.NaN);
+        TypedJson.Terms compounds = null;
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            int fraction = FRACTIONS.indexOf(f);
+            if (fraction >= 0) {
+                fractions[fraction] = TypedJson.number(p);
+            } else if (f.equals("id")) {
+                id = TypedJson.text(p);
+            } else if (f.equals("name")) {
+                name = TypedJson.text(p);
+            } else if (f.equals("biomasscompounds")) {
+                compounds = TypedJson.terms(p, ids);
+            } else {
+                xb.add(f, p);
+            }
+        }
+        return new Biomass(id, name, fractions, compounds == null ? new TypedJson.Terms() : compounds,
+                xb.build());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getGenomeRef() {
+        return genomeRef;
+    }
+
+    public String getTemplateRef() {
+        return templateRef;
+    }
+
+    public List<Compartment> getCompartments() {
+        return compartments;
+    }
+
+    public List<Compound> getCompounds() {
+        return compounds;
+    }
+
+    public List<Reaction> getReactions() {
+        return reactions;
+    }
+
+    public List<Biomass> getBiomasses() {
+        return biomasses;
+    }
+
+    /** Get a compound by id; the index is built on first use.
+     * @param id the model compound id, e.g. cpd00001_c0.
+     * @return the compound, or null if there is none.
+     */
+    public Compound getCompound(String id) {
+        Map<String, Compound> index = compoundIndex;
+        if (index == null) {
+            index = new HashMap<String, Compound>(compounds.size() * 2);
+            for (int i = compounds.size() - 1; i >= 0; i--) {
+                index.put(compounds.get(i).getId(), compounds.get(i));
+            }
+            compoundIndex = index;
+        }
+        return index.get(id);
+    }
+
+    /** Get a reaction by id; the index is built on first use.
+     * @param id the model reaction id, e.g. rxn00001_c0.
+     * @return the reaction, or null if there is none.
+     */
+    public Reaction getReaction(String id) {
+        Map<String, Reaction> index = reactionIndex;
+        if (index == null) {
+            index = new HashMap<String, Reaction>(reactions.size() * 2);
+            for (int i = reactions.size() - 1; i >= 0; i--) {
+                index.put(reactions.get(i).getId(), reactions.get(i));
+            }
+            reactionIndex = index;
+        }
+        return index.get(id);
+    }
+
+    /** Get the top level fields without a typed getter, such as
+     * gapfillings, attributes and template_refs.
+     * @return the fields as a JSON object, parsed on first access.
+     */
+    public JsonNode getExtras() {
+        return TypedJson.Extras.get(extras);
+    }
+
+    @Override
+    public String toString() {
+        return "FbaModel [id=" + id + ", compounds=" + compounds.size() + ", reactions=" + reactions.size() +
+                ", biomasses=" + biomasses.size() + "]";
+    }
+}
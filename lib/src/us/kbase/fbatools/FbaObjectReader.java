@@ -0,0 +1,261 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * <p>Pull reader for large FBAModel and FBA objects.</p>
+ * <p>The object is read one top level field at a time. A small field is
+ * read whole with {@link #readValue()}; a large array field, such as
+ * modelreactions, modelcompounds or FBAReactionVariables, is read one
+ * element at a time with {@link #nextRecord()} or
+ * {@link #nextRecord(Class)}, so only the current record is ever held in
+ * memory. Fields that are not wanted are skipped without being built.</p>
+ * <pre>
+ * try (FbaObjectReader r = FbaObjectReader.open(path)) {
+ *     for (FBAReactionVariable v : r.records("FBAReactionVariables", FBAReactionVariable.class)) {
+ *         System.out.println(v.getModelreactionRef() + " " + v.getValue());
+ *     }
+ * }
+ * </pre>
+ * <p>A reader is not thread safe.</p>
+ */
+public class FbaObjectReader implements Closeable {
+    private final JsonParser parser;
+    private final ObjectMapper mapper;
+    private String field = null;
+    // the current field is an array whose elements are being read
+    private boolean inArray = false;
+    // the value of the current field has not been consumed
+    private boolean pending = false;
+    // the elements of the current field have all been read
+    private boolean arrayDone = false;
+
+    /** Constructs a reader of an object. The stream is closed with the
+     * reader.
+     * @param in the JSON of the object.
+     * @throws IOException if the stream does not start with an object.
+     */
+    public FbaObjectReader(InputStream in) throws IOException {
+        mapper = JsonRpcCodec.mapper();
+        parser = mapper.getFactory().createParser(in);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            parser.close();
+            throw new IOException("Expected a JSON object at " + parser.getCurrentLocation());
+        }
+    }
+
+    /** Opens a reader of an object stored in a file.
+     * @param path the file.
+     * @return the reader.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static FbaObjectReader open(Path path) throws IOException {
+        return new FbaObjectReader(Files.newInputStream(path));
+    }
+
+    /** Moves to the next top level field, skipping whatever is left of the
+     * current one.
+     * @return the field name, or null at the end of the object.
+     * @throws IOException if the JSON cannot be read.
+     */
+    public String nextField() throws IOException {
+        finishField();
+        arrayDone = false;
+        JsonToken t = parser.nextToken();
+        if (t == JsonToken.END_OBJECT || t == null) {
+            field = null;
+            return null;
+        }
+        field = parser.getCurrentName();
+        parser.nextToken();
+        pending = true;
+        return field;
+    }
+
+    /** Moves to a top level field, skipping the fields before it.
+     * @param name the field name.
+     * @return true if found, false if the object ends first.
+     * @throws IOException if the JSON cannot be read.
+     */
+    public boolean seekField(String name) throws IOException {
+        for (String f = nextField(); f != null; f = nextField()) {
+            if (f.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Get the name of the current field.
+     * @return the field name, or null before the first field and at the end.
+     */
+    public String getField() {
+        return field;
+    }
+
+    /** Reads the whole value of the current field. Meant for small fields;
+     * use {@link #nextRecord()} for large arrays.
+     * @return the value.
+     * @throws IOException if the JSON cannot be read.
+     * @throws IllegalStateException if the value was already read.
+     */
+    public JsonNode readValue() throws IOException {
+        checkPending();
+        pending = false;
+        return mapper.readTree(parser);
+    }
+
+    /** Reads the whole value of the current field into a type.
+     * @param type the type.
+     * @return the value.
+     * @throws IOException if the JSON cannot be read or bound.
+     * @throws IllegalStateException if the value was already read.
+     */
+    public <T> T readValue(Class<T> type) throws IOException {
+        checkPending();
+        pending = false;
+        return mapper.readValue(parser, type);
+    }
+
+    /** Reads the next element of the current field, which must be an array.
+     * @return the element, or null after the last one.
+     * @throws IOException if the JSON cannot be read or the field is not an
+     * array.
+     */
+    public JsonNode nextRecord() throws IOException {
+        if (!nextElement()) {
+            return null;
+        }
+        return mapper.readTree(parser);
+    }
+
+    /** Reads the next element of the current field, which must be an array,
+     * into a type.
+     * @param type the type.
+     * @return the element, or null after the last one.
+     * @throws IOException if the JSON cannot be read or bound, or the field
+     * is not an array.
+     */
+    public <T> T nextRecord(Class<T> type) throws IOException {
+        if (!nextElement()) {
+            return null;
+        }
+        return mapper.readValue(parser, type);
+    }
+
+    /** Iterates the elements of an array field. The fields before it are
+     * skipped; the iteration is empty if there is no such field. The
+     * iterator throws an {@link IllegalStateException} wrapping any
+     * IOException.
+     * @param name the field name.
+     * @param type the element type.
+     * @return the elements, read one at a time as the iteration advances.
+     * @throws IOException if the JSON cannot be read.
+     */
+    public <T> Iterable<T> records(String name, final Class<T> type) throws IOException {
+        final boolean found = name.equals(field) && (pending || inArray) || seekField(name);
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new Iterator<T>() {
+                    private T next = null;
+                    private boolean done = !found;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (next == null && !done) {
+                            try {
+                                next = nextRecord(type);
+                            } catch (IOException e) {
+                                throw new IllegalStateException("Failed to read " + field, e);
+                            }
+                            done = next == null;
+                        }
+                        return next != null;
+                    }
+
+                    @Override
+                    public T next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        T ret = next;
+                        next = null;
+                        return ret;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    // positions the parser on the first token of the next array element
+    private boolean nextElement() throws IOException {
+        if (arrayDone) {
+            return false;
+        }
+        if (!inArray) {
+            checkPending();
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                pending = false;
+                arrayDone = true;
+                return false;
+            }
+            if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Field " + field + " is not an array at " + parser.getCurrentLocation());
+            }
+            pending = false;
+            inArray = true;
+        }
+        if (parser.nextToken() == JsonToken.END_ARRAY) {
+            inArray = false;
+            arrayDone = true;
+            return false;
+        }
+        return true;
+    }
+
+    private void finishField() throws IOException {
+        if (pending) {
+            parser.skipChildren();
+            pending = false;
+        } else if (inArray) {
+            // skip the rest of the elements
+            for (JsonToken t = parser.nextToken(); t != JsonToken.END_ARRAY; t = parser.nextToken()) {
+                if (t == null) {
+                    throw new IOException("Unexpected end of input in field " + field);
+                }
+                parser.skipChildren();
+            }
+            inArray = false;
+        }
+    }
+
+    private void checkPending() {
+        if (field == null) {
+            throw new IllegalStateException("No current field");
+        }
+        if (!pending) {
+            throw new IllegalStateException("The value of " + field + " was already read");
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * <p>Streaming writer for large FBAModel and FBA objects, the counterpart
+ * of {@link FbaObjectReader}.</p>
+ * <p>The object is written one top level field at a time: small fields
+ * whole with {@link #writeField(String, Object)}, and large arrays one
+ * record at a time between {@link #beginArray(String)} and
+ * {@link #endArray()}, so a record can be dropped as soon as it is
+ * written. Values are serialized as by the service's JSON mapper, so the
+ * generated types such as FBAReactionVariable as well as JsonNodes and
+ * maps may be written.</p>
+ * <pre>
+ * try (FbaObjectReader r = FbaObjectReader.open(in);
+ *         FbaObjectWriter w = FbaObjectWriter.create(out)) {
+ *     for (String f = r.nextField(); f != null; f = r.nextField()) {
+ *         if (f.equals("modelreactions")) {
+ *             w.beginArray(f);
+ *             for (JsonNode rxn = r.nextRecord(); rxn != null; rxn = r.nextRecord()) {
+ *                 w.writeRecord(rxn);
+ *             }
+ *             w.endArray();
+ *         } else {
+ *             w.writeField(f, r.readValue());
+ *         }
+ *     }
+ * }
+ * </pre>
+ * <p>A writer is not thread safe.</p>
+ */
+public class FbaObjectWriter implements Closeable {
+    private final JsonGenerator generator;
+    private boolean inArray = false;
+    private boolean closed = false;
+
+    /** Constructs a writer and starts the object. The stream is closed with
+     * the writer.
+     * @param out the stream to write the JSON to.
+     * @throws IOException if the stream cannot be written.
+     */
+    public FbaObjectWriter(OutputStream out) throws IOException {
+        generator = JsonRpcCodec.mapper().getFactory().createGenerator(out);
+        generator.writeStartObject();
+    }
+
+    /** Creates a writer of a file, replacing any existing file.
+     * @param path the file.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static FbaObjectWriter create(Path path) throws IOException {
+        return new FbaObjectWriter(Files.newOutputStream(path));
+    }
+
+    /** Writes a whole top level field.
+     * @param name the field name.
+     * @param value the value; null is written as JSON null.
+     * @throws IOException if the stream cannot be written.
+     * @throws IllegalStateException if an array is open.
+     */
+    public void writeField(String name, Object value) throws IOException {
+        checkField();
+        generator.writeFieldName(name);
+        generator.writeObject(value);
+    }
+
+    /** Starts a top level array field, whose elements are then written with
+     * {@link #writeRecord(Object)}.
+     * @param name the field name.
+     * @throws IOException if the stream cannot be written.
+     * @throws IllegalStateException if an array is already open.
+     */
+    public void beginArray(String name) throws IOException {
+        checkField();
+        generator.writeArrayFieldStart(name);
+        inArray = true;
+    }
+
+    /** Writes an element of the open array.
+     * @param record the element.
+     * @throws IOException if the stream cannot be written.
+     * @throws IllegalStateException if no array is open.
+     */
+    public void writeRecord(Object record) throws IOException {
+        if (!inArray) {
+            throw new IllegalStateException("No array is open");
+        }
+        generator.writeObject(record);
+    }
+
+    /** Ends the open array.
+     * @throws IOException if the stream cannot be written.
+     * @throws IllegalStateException if no array is open.
+     */
+    public void endArray() throws IOException {
+        if (!inArray) {
+            throw new IllegalStateException("No array is open");
+        }
+        generator.writeEndArray();
+        inArray = false;
+    }
+
+    /** Flushes what has been written so far to the stream.
+     * @throws IOException if the stream cannot be written.
+     */
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    /** Ends any open array and the object, and closes the stream. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (inArray) {
+                generator.writeEndArray();
+                inArray = false;
+            }
+            generator.writeEndObject();
+        } finally {
+            generator.close();
+        }
+    }
+
+    private void checkField() {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        if (inArray) {
+            throw new IllegalStateException("An array is open");
+        }
+    }
+}
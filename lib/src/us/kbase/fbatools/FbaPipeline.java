@@ -0,0 +1,319 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import com.fasterxml.jackson.databind.JsonNode;
+import us.kbase.common.service.JsonClientException;
+
+/**
+ * <p>A DAG of fba_tools calls in which each stage feeds the reference of
+ * the object it produced into the stages downstream of it.</p>
+ * <p>Stages are declared in dependency order with the typed factory methods
+ * ({@link #buildMetabolicModel}, {@link #gapfillMetabolicModel},
+ * {@link #runFluxBalanceAnalysis}, {@link #simulateGrowthOnPhenotypeData})
+ * or with {@link #stage} for any other call. A stage starts as soon as all
+ * of its upstream stages have finished, so independent branches, such as
+ * FBA of one gapfilled model on many media, run concurrently. The number of
+ * concurrent calls is governed by the client's call limiter.</p>
+ * <p>With a {@link PipelineJournal}, every finished stage is checkpointed;
+ * when the same pipeline is run again with the same journal, stages whose id
+ * and definition are unchanged, and whose upstream stages were all restored
+ * too, are restored from it instead of being run. A stage's definition
+ * covers those of all stages upstream of it, so changing a stage re-runs
+ * everything downstream of it.</p>
+ * <pre>
+ * FbaPipeline p = new FbaPipeline(client);
+ * FbaPipeline.Stage&lt;BuildMetabolicModelResults&gt; build = p.buildMetabolicModel("build", buildParams);
+ * FbaPipeline.Stage&lt;GapfillMetabolicModelResults&gt; gf = p.gapfillMetabolicModel("gapfill", build, gfParams);
+ * for (String media : mediaIds) {
+ *     p.runFluxBalanceAnalysis("fba-" + media, gf, new RunFluxBalanceAnalysisParams().withMediaId(media)...);
+ * }
+ * p.run().get();
+ * </pre>
+ */
+public class FbaPipeline {
+    private final FbaToolsAsyncClient client;
+    private final PipelineJournal journal;
+    private final List<Stage<?>> stages = new ArrayList<Stage<?>>();
+    private final Map<String, Stage<?>> stagesById = new HashMap<String, Stage<?>>();
+    private boolean started = false;
+
+    /** A stage of the pipeline.
+     * @param <T> the type of the call result.
+     */
+    public static class Stage<T> {
+        private final String id;
+        private final Class<T> resultType;
+        private final List<Stage<?>> upstream;
+        private final Function<T, String> outputRef;
+        private final Supplier<CompletableFuture<T>> action;
+        private final String fingerprint;
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+        private volatile boolean restored = false;
+
+        private Stage(String id, Class<T> resultType, List<Stage<?>> upstream, Function<T, String> outputRef,
+                Supplier<CompletableFuture<T>> action, String fingerprint) {
+            this.id = id;
+            this.resultType = resultType;
+            this.upstream = upstream;
+            this.outputRef = outputRef;
+            this.action = action;
+            this.fingerprint = fingerprint;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public List<Stage<?>> getUpstream() {
+            return upstream;
+        }
+
+        /** Get a future completing with the result of this stage.
+         * @return the future result.
+         */
+        public CompletableFuture<T> getFuture() {
+            return future;
+        }
+
+        /** Check whether the result of this stage was restored from the
+         * journal rather than computed in this run.
+         * @return true if restored.
+         */
+        public boolean isRestored() {
+            return restored;
+        }
+
+        /** Get the reference of the object this stage produced. Only valid
+         * once the stage has finished successfully.
+         * @return the output object reference.
+         */
+        public String getOutputRef() {
+            return outputRef.apply(future.join());
+        }
+    }
+
+    /** Constructs a pipeline without checkpointing.
+     * @param client the client used for all calls.
+     */
+    public FbaPipeline(FbaToolsAsyncClient client) {
+        this(client, null);
+    }
+
+    /** Constructs a pipeline.
+     * @param client the client used for all calls.
+     * @param journal the checkpoint journal, or null.
+     */
+    public FbaPipeline(FbaToolsAsyncClient client, PipelineJournal journal) {
+        this.client = client;
+        this.journal = journal;
+    }
+
+    public List<Stage<?>> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /** Adds a stage running build_metabolic_model. Its output is the new
+     * model.
+     * @param id the stage id, unique in this pipeline and stable across runs.
+     * @param params the call parameters.
+     * @return the stage.
+     */
+    public Stage<BuildMetabolicModelResults> buildMetabolicModel(String id, BuildMetabolicModelParams params) {
+        final BuildMetabolicModelParams p = copy(params, BuildMetabolicModelParams.class);
+        return stage(id, BuildMetabolicModelResults.class, r -> r.getNewFbamodelRef(),
+                () -> client.buildMetabolicModel(p), fingerprint(p));
+    }
+
+    /** Adds a stage running gapfill_metabolic_model on the model produced by
+     * an upstream stage. Its output is the gapfilled model.
+     * @param id the stage id, unique in this pipeline and stable across runs.
+     * @param model the stage producing the model to gapfill.
+     * @param params the call parameters; fbamodel_id and fbamodel_workspace
+     * are replaced by the upstream model reference.
+     * @return the stage.
+     */
+    public Stage<GapfillMetabolicModelResults> gapfillMetabolicModel(String id, final Stage<?> model,
+            GapfillMetabolicModelParams params) {
+        final GapfillMetabolicModelParams p = copy(params, GapfillMetabolicModelParams.class);
+        return stage(id, GapfillMetabolicModelResults.class, r -> r.getNewFbamodelRef(), () -> {
+            GapfillMetabolicModelParams call = copy(p, GapfillMetabolicModelParams.class);
+            call.setFbamodelId(model.getOutputRef());
+            call.setFbamodelWorkspace(null);
+            return client.gapfillMetabolicModel(call);
+        }, fingerprint(p), model);
+    }
+
+    /** Adds a stage running run_flux_balance_analysis on the model produced
+     * by an upstream stage. Its output is the new FBA.
+     * @param id the stage id, unique in this pipeline and stable across runs.
+     * @param model the stage producing the model.
+     * @param params the call parameters; fbamodel_id and fbamodel_workspace
+     * are replaced by the upstream model reference.
+     * @return the stage.
+     */
+    public Stage<RunFluxBalanceAnalysisResults> runFluxBalanceAnalysis(String id, final Stage<?> model,
+            RunFluxBalanceAnalysisParams params) {
+        final RunFluxBalanceAnalysisParams p = copy(params, RunFluxBalanceAnalysisParams.class);
+        return stage(id, RunFluxBalanceAnalysisResults.class, r -> r.getNewFbaRef(), () -> {
+            RunFluxBalanceAnalysisParams call = copy(p, RunFluxBalanceAnalysisParams.class);
+            call.setFbamodelId(model.getOutputRef());
+            call.setFbamodelWorkspace(null);
+            return client.runFluxBalanceAnalysis(call);
+        }, fingerprint(p), model);
+    }
+
+    /** Adds a stage running simulate_growth_on_phenotype_data on the model
+     * produced by an upstream stage. Its output is the new phenotype
+     * simulation set.
+     * @param id the stage id, unique in this pipeline and stable across runs.
+     * @param model the stage producing the model.
+     * @param params the call parameters; fbamodel_id and fbamodel_workspace
+     * are replaced by the upstream model reference.
+     * @return the stage.
+     */
+    public Stage<SimulateGrowthOnPhenotypeDataResults> simulateGrowthOnPhenotypeData(String id,
+            final Stage<?> model, SimulateGrowthOnPhenotypeDataParams params) {
+        final SimulateGrowthOnPhenotypeDataParams p = copy(params, SimulateGrowthOnPhenotypeDataParams.class);
+        return stage(id, SimulateGrowthOnPhenotypeDataResults.class, r -> r.getNewPhenotypesimRef(), () -> {
+            SimulateGrowthOnPhenotypeDataParams call = copy(p, SimulateGrowthOnPhenotypeDataParams.class);
+            call.setFbamodelId(model.getOutputRef());
+            call.setFbamodelWorkspace(null);
+            return client.simulateGrowthOnPhenotypeData(call);
+        }, fingerprint(p), model);
+    }
+
+    /** Adds a stage running an arbitrary action once its upstream stages
+     * have finished. The action typically reads
+     * {@link Stage#getOutputRef()} of the upstream stages.
+     * @param id the stage id, unique in this pipeline and stable across runs.
+     * @param resultType the class of the stage result, used to restore it
+     * from the journal.
+     * @param outputRef extracts the output object reference from the result.
+     * @param action starts the stage.
+     * @param fingerprint identifies the definition of the stage; a journal
+     * entry is only reused if its fingerprint, and those of every stage
+     * upstream of it, are equal.
+     * @param upstream the stages this stage depends on.
+     * @return the stage.
+     */
+    public synchronized <T> Stage<T> stage(String id, Class<T> resultType, Function<T, String> outputRef,
+            Supplier<CompletableFuture<T>> action, String fingerprint, Stage<?>... upstream) {
+        if (started) {
+            throw new IllegalStateException("Stages cannot be added once the pipeline has started");
+        }
+        if (stagesById.containsKey(id)) {
+            throw new IllegalArgumentException("Duplicate stage id: " + id);
+        }
+        List<Stage<?>> ups = Collections.unmodifiableList(new ArrayList<Stage<?>>(Arrays.asList(upstream)));
+        StringBuilder fp = new StringBuilder(fingerprint);
+        for (Stage<?> up : ups) {
+            if (stagesById.get(up.id) != up) {
+                throw new IllegalArgumentException("Upstream stage " + up.id + " is not part of this pipeline");
+            }
+            // the upstream fingerprint already covers the stages above it
+            fp.append('|').append(up.id).append('=').append(ParamsHasher.hash(up.fingerprint));
+        }
+        Stage<T> stage = new Stage<T>(id, resultType, ups, outputRef, action, fp.toString());
+        stages.add(stage);
+        stagesById.put(id, stage);
+        return stage;
+    }
+
+    /** Starts every stage. Stages are started in declaration order, which is
+     * a topological order since a stage can only depend on stages declared
+     * before it, so whether its upstream stages were restored is known when
+     * a stage is started. A failed stage fails all stages downstream of it, while
+     * the other branches carry on.
+     * @return a future completing when every stage has finished, or
+     * exceptionally with the first stage failure once all stages are done.
+     */
+    public CompletableFuture<Void> run() {
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("This pipeline has already been run");
+            }
+            started = true;
+        }
+        List<CompletableFuture<?>> all = new ArrayList<CompletableFuture<?>>();
+        for (Stage<?> stage : stages) {
+            start(stage);
+            all.add(stage.future);
+        }
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[all.size()]));
+    }
+
+    private <T> void start(final Stage<T> stage) {
+        // an upstream stage that runs again may produce another object
+        boolean upstreamRestored = true;
+        for (Stage<?> up : stage.upstream) {
+            upstreamRestored &= up.restored;
+        }
+        if (journal != null && upstreamRestored) {
+            JsonNode recorded = journal.getResult(stage.id, stage.fingerprint);
+            if (recorded != null) {
+                try {
+                    T result = JsonRpcCodec.mapper().treeToValue(recorded, stage.resultType);
+                    stage.restored = true;
+                    stage.future.complete(result);
+                    return;
+                } catch (IOException e) {
+                    // unreadable entry, run the stage again
+                }
+            }
+        }
+        CompletableFuture<?>[] ups = new CompletableFuture<?>[stage.upstream.size()];
+        for (int i = 0; i < ups.length; i++) {
+            ups[i] = stage.upstream.get(i).future;
+        }
+        CompletableFuture.allOf(ups).handle((v, err) -> {
+            if (err != null) {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                stage.future.completeExceptionally(new JsonClientException(
+                        "Stage " + stage.id + " not run because an upstream stage failed: " + cause.getMessage(), cause));
+                return null;
+            }
+            CompletableFuture<T> call;
+            try {
+                call = stage.action.get();
+            } catch (RuntimeException e) {
+                stage.future.completeExceptionally(e);
+                return null;
+            }
+            call.whenComplete((res, callErr) -> {
+                if (callErr != null) {
+                    stage.future.completeExceptionally(callErr instanceof CompletionException &&
+                            callErr.getCause() != null ? callErr.getCause() : callErr);
+                    return;
+                }
+                if (journal != null) {
+                    try {
+                        journal.record(stage.id, stage.fingerprint, res);
+                    } catch (IOException | RuntimeException e) {
+                        stage.future.completeExceptionally(e);
+                        return;
+                    }
+                }
+                stage.future.complete(res);
+            });
+            return null;
+        });
+    }
+
+    private static <T> T copy(T params, Class<T> type) {
+        return JsonRpcCodec.mapper().convertValue(params, type);
+    }
+
+    private static String fingerprint(Object params) {
+        return ParamsHasher.canonicalJson(params);
+    }
+}
@@ -0,0 +1,785 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>The flux balance linear program of an FBAModel on a Media, built and
+ * solved in-process instead of through run_flux_balance_analysis.</p>
+ * <p>The program follows the MFAToolkit formulation the service uses: one
+ * mass balance row per model compound, one flux variable per model
+ * reaction, one per biomass reaction, and one drain flux per extracellular
+ * compound, positive for uptake. Reaction bounds come from the reaction
+ * direction and its maxforflux / maxrevflux, drains on media compounds from
+ * the media's minFlux / maxFlux, and drains on other extracellular
+ * compounds from [-1000, default_max_uptake] (unlimited uptake on the
+ * Complete media). The biomass compound (cpd11416) can only be drained out.
+ * By default the first biomass reaction is maximized.</p>
+ * <p>Of the {@link RunFluxBalanceAnalysisParams}, the local engine honours
+ * target_reaction, feature_ko_list, reaction_ko_list, custom_bound_list,
+ * media_supplement_list, all_reversible, default_max_uptake, fva with
+ * objective_fraction, which {@link #solve()} runs with a
+ * {@link FluxVariabilityAnalysis}, and simulate_ko, which it runs as a
+ * single gene {@link KnockoutScreen}; options it does not implement are
+ * rejected rather than silently ignored.</p>
+ * <pre>
+ * FbaProblem p = FbaProblem.fromModel(modelJson, mediaJson, params);
+ * FbaSolution s = p.solve();
+ * double growth = s.getObjectiveValue();
+ * </pre>
+ */
+public class FbaProblem {
+    /** The default flux bound of a reaction. */
+    public static final double DEFAULT_MAX_FLUX = 1000;
+    /** The default lower bound of a drain, i.e. the maximal excretion. */
+    public static final double DEFAULT_MIN_DRAIN_FLUX = -1000;
+    /** The biomass compound, produced by biomass reactions. */
+    public static final String BIOMASS_COMPOUND = "cpd11416";
+    // maxforflux / maxrevflux value meaning "no explicit bound"
+    private static final double UNSET_FLUX_BOUND = 1000000;
+    private static final double DEFAULT_MEDIA_MIN_FLUX = -100;
+    private static final double DEFAULT_MEDIA_MAX_FLUX = 100;
+    private static final String COMPLETE_MEDIA = "Complete";
+    // objective_fraction when not given, as in the service
+    private static final double DEFAULT_OBJECTIVE_FRACTION = 0.1;
+
+    /** The kind of a variable of the program. */
+    public enum VariableType {
+        FLUX("flux"), BIOMASS_FLUX("biomassflux"), DRAIN_FLUX("drainflux");
+
+        private final String label;
+
+        private VariableType(String label) {
+            this.label = label;
+        }
+
+        /** Get the variableType of this kind in FBA objects.
+         * @return the label.
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // the model and biomass reactions are the first variables, in matrix column order
+    private StoichiometricMatrix matrix;
+    private final List<String> variableIds = new ArrayList<String>();
+    private final List<VariableType> variableTypes = new ArrayList<VariableType>();
+    private final Map<String, Integer> drainVariables = new HashMap<String, Integer>();
+    // per drain variable, after the matrix columns: the drained row
+    private final List<Integer> drainRows = new ArrayList<Integer>();
+    // per reaction variable: proteins -> subunits -> features, null if no proteins
+    private final Map<Integer, String[][][]> gpr = new HashMap<Integer, String[][][]>();
+    // feature -> the reaction variables whose proteins include it, sorted
+    private final Map<String, int[]> featureReactions = new TreeMap<String, int[]>();
+    private final List<Double> lowerList = new ArrayList<Double>();
+    private final List<Double> upperList = new ArrayList<Double>();
+    // default_max_uptake, the supplemented compounds and the custom bounds on
+    // drains, to set the drains again for another media
+    private double defaultMaxUptake;
+    private final List<String> supplements = new ArrayList<String>();
+    private final Map<Integer, double[]> customDrainBounds = new HashMap<Integer, double[]>();
+
+    private int[] colStart;
+    private int[] rowIndex;
+    private double[] values;
+    private double[] lower;
+    private double[] upper;
+    private double[] objective;
+    private String objectiveId;
+    private int objectiveVariable;
+    private boolean fva;
+    private boolean simulateKo;
+    private double objectiveFraction = DEFAULT_OBJECTIVE_FRACTION;
+
+    private FbaProblem() {}
+
+    /** Builds the program of a model on a media.
+     * @param model the FBAModel object, as JSON.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     * @param params the run parameters, or null for the defaults; only the
+     * fields listed in the class description are used.
+     * @return the program.
+     */
+    public static FbaProblem fromModel(JsonNode model, JsonNode media, RunFluxBalanceAnalysisParams params) {
+        if (params == null) {
+            params = new RunFluxBalanceAnalysisParams();
+        }
+        rejectUnsupported(params);
+        FbaProblem p = new FbaProblem();
+        boolean allReversible = isSet(params.getAllReversible());
+        p.matrix = StoichiometricMatrix.fromModel(model);
+        p.addReactions(model, allReversible);
+        p.addBiomasses(model);
+        p.defaultMaxUptake = params.getDefaultMaxUptake() == null ? 0 : params.getDefaultMaxUptake();
+        p.addDrains(maxUptake(media, p.defaultMaxUptake));
+        if (media != null) {
+            p.applyMedia(media);
+        }
+        p.applyParams(params);
+        p.compile();
+        return p;
+    }
+
+    private static double maxUptake(JsonNode media, double defaultMaxUptake) {
+        if ((media == null || COMPLETE_MEDIA.equals(media.path("name").asText())) && defaultMaxUptake <= 0) {
+            return DEFAULT_MAX_FLUX;
+        }
+        return defaultMaxUptake;
+    }
+
+    private static boolean isSet(Long flag) {
+        return flag != null && flag != 0;
+    }
+
+    private static void rejectUnsupported(RunFluxBalanceAnalysisParams params) {
+        List<String> unsupported = new ArrayList<String>();
+        if (isSet(params.getMinimizeFlux())) {
+            unsupported.add("minimize_flux");
+        }
+        if (isSet(params.getFindMinMedia())) {
+            unsupported.add("find_min_media");
+        }
+        if (isSet(params.getThermodynamicConstraints())) {
+            unsupported.add("thermodynamic_constraints");
+        }
+        if (params.getExpseriesId() != null) {
+            unsupported.add("expseries_id");
+        }
+        if (params.getMaxCUptake() != null || params.getMaxNUptake() != null || params.getMaxPUptake() != null ||
+                params.getMaxSUptake() != null || params.getMaxOUptake() != null) {
+            unsupported.add("max_*_uptake");
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalArgumentException("Not supported by the local FBA engine: " + unsupported);
+        }
+    }
+
+    /** Get the id at the end of a reference such as ~/modelcompounds/id/cpd00001_c0.
+     * @param ref the reference.
+     * @return the id.
+     */
+    static String refId(String ref) {
+        return ref.substring(ref.lastIndexOf('/') + 1);
+    }
+
+    private int addVariable(String id, VariableType type, double lo, double up) {
+        int j = variableIds.size();
+        variableIds.add(id);
+        variableTypes.add(type);
+        lowerList.add(lo);
+        upperList.add(up);
+        return j;
+    }
+
+    private void addReactions(JsonNode model, boolean allReversible) {
+        for (JsonNode rxn : model.path("modelreactions")) {
+            double[] bounds = reactionBounds(rxn, allReversible);
+            int j = addVariable(rxn.path("id").asText(), VariableType.FLUX, bounds[0], bounds[1]);
+            List<String[][]> proteins = reactionProteins(rxn);
+            if (!proteins.isEmpty()) {
+                gpr.put(j, proteins.toArray(new String[proteins.size()][][]));
+                indexFeatures(j, proteins);
+            }
+        }
+    }
+
+    /** Get the flux bounds of a model reaction from its direction and its
+     * maxforflux / maxrevflux.
+     * @param rxn the ModelReaction, as JSON.
+     * @param allReversible true to ignore the direction.
+     * @return the lower and upper bound.
+     */
+    static double[] reactionBounds(JsonNode rxn, boolean allReversible) {
+        String dir = rxn.path("direction").asText("=");
+        double lo = -DEFAULT_MAX_FLUX;
+        double up = DEFAULT_MAX_FLUX;
+        if (!allReversible) {
+            if (dir.equals(">")) {
+                lo = 0;
+            } else if (dir.equals("<")) {
+                up = 0;
+            }
+        }
+        double maxFor = rxn.path("maxforflux").asDouble(UNSET_FLUX_BOUND);
+        double maxRev = rxn.path("maxrevflux").asDouble(UNSET_FLUX_BOUND);
+        if (maxFor != UNSET_FLUX_BOUND) {
+            up = Math.min(up, maxFor);
+        }
+        if (maxRev != UNSET_FLUX_BOUND) {
+            lo = Math.max(lo, -maxRev);
+        }
+        return new double[] {Math.min(lo, up), up};
+    }
+
+    /** Get the gene-protein-reaction rule of a model reaction: any of the
+     * proteins catalyses it, a protein needs all of its subunits, and a
+     * subunit needs any of its features.
+     * @param rxn the ModelReaction, as JSON.
+     * @return the feature ids of the subunits of the proteins; empty
+     * subunits and proteins are left out.
+     */
+    static List<String[][]> reactionProteins(JsonNode rxn) {
+        List<String[][]> proteins = new ArrayList<String[][]>();
+        for (JsonNode prot : rxn.path("modelReactionProteins")) {
+            List<String[]> subunits = new ArrayList<String[]>();
+            for (JsonNode sub : prot.path("modelReactionProteinSubunits")) {
+                List<String> features = new ArrayList<String>();
+                for (JsonNode f : sub.path("feature_refs")) {
+                    features.add(refId(f.asText()));
+                }
+                if (!features.isEmpty()) {
+                    subunits.add(features.toArray(new String[features.size()]));
+                }
+            }
+            if (!subunits.isEmpty()) {
+                proteins.add(subunits.toArray(new String[subunits.size()][]));
+            }
+        }
+        return proteins;
+    }
+
+    private void indexFeatures(int j, List<String[][]> proteins) {
+        Set<String> features = new TreeSet<String>();
+        for (String[][] protein : proteins) {
+            for (String[] subunit : protein) {
+                features.addAll(Arrays.asList(subunit));
+            }
+        }
+        for (String f : features) {
+            int[] old = featureReactions.get(f);
+            int[] rxns = old == null ? new int[1] : Arrays.copyOf(old, old.length + 1);
+            // reactions are added in order, so the list stays sorted
+            rxns[rxns.length - 1] = j;
+            featureReactions.put(f, rxns);
+        }
+    }
+
+    private void addBiomasses(JsonNode model) {
+        for (JsonNode bio : model.path("biomasses")) {
+            addVariable(bio.path("id").asText(), VariableType.BIOMASS_FLUX, 0, DEFAULT_MAX_FLUX);
+        }
+    }
+
+    private void addDrains(double maxUptake) {
+        for (int i = 0; i < matrix.getRowCount(); i++) {
+            String cpd = matrix.getCompoundId(i);
+            if (matrix.getCompartmentId(matrix.getCompartment(i)).startsWith("e")) {
+                addDrain(cpd, DEFAULT_MIN_DRAIN_FLUX, maxUptake);
+            } else if (cpd.startsWith(BIOMASS_COMPOUND + "_")) {
+                addDrain(cpd, -DEFAULT_MAX_FLUX, 0);
+            }
+        }
+    }
+
+    private int addDrain(String cpd, double lo, double up) {
+        Integer j = drainVariables.get(cpd);
+        if (j != null) {
+            lowerList.set(j, lo);
+            upperList.set(j, up);
+            return j;
+        }
+        j = addVariable(cpd, VariableType.DRAIN_FLUX, lo, up);
+        drainVariables.put(cpd, j);
+        drainRows.add(matrix.getCompoundIndex(cpd));
+        return j;
+    }
+
+    // the model compound a media compound is drained into
+    private static String mediaCompoundId(JsonNode mc) {
+        String cid = refId(mc.path("compound_ref").asText());
+        // a media compound with a compartment suffix is fed directly into that compartment
+        if (!cid.matches(".*_[a-z]+\\d+$")) {
+            cid = cid + "_e0";
+        }
+        return cid;
+    }
+
+    private void applyMedia(JsonNode media) {
+        for (JsonNode mc : media.path("mediacompounds")) {
+            String cid = mediaCompoundId(mc);
+            if (matrix.getCompoundIndex(cid) >= 0) {
+                addDrain(cid, mc.path("minFlux").asDouble(DEFAULT_MEDIA_MIN_FLUX),
+                        mc.path("maxFlux").asDouble(DEFAULT_MEDIA_MAX_FLUX));
+            }
+        }
+    }
+
+    private void applyParams(RunFluxBalanceAnalysisParams params) {
+        if (params.getMediaSupplementList() != null) {
+            for (String cpd : params.getMediaSupplementList()) {
+                String id = findCompound(cpd);
+                if (id != null) {
+                    supplements.add(id);
+                    Integer j = drainVariables.get(id);
+                    addDrain(id, j == null ? DEFAULT_MIN_DRAIN_FLUX : lowerList.get(j), DEFAULT_MAX_FLUX);
+                }
+            }
+        }
+        if (params.getReactionKoList() != null) {
+            for (String rxn : params.getReactionKoList()) {
+                Integer j = findReaction(rxn);
+                if (j != null) {
+                    lowerList.set(j, 0.0);
+                    upperList.set(j, 0.0);
+                }
+            }
+        }
+        if (params.getFeatureKoList() != null && !params.getFeatureKoList().isEmpty()) {
+            for (int j : knockedOutReactions(params.getFeatureKoList())) {
+                lowerList.set(j, 0.0);
+                upperList.set(j, 0.0);
+            }
+        }
+        if (params.getCustomBoundList() != null) {
+            for (String bound : params.getCustomBoundList()) {
+                applyCustomBound(bound);
+            }
+        }
+        fva = isSet(params.getFva());
+        simulateKo = isSet(params.getSimulateKo());
+        if (params.getObjectiveFraction() != null) {
+            objectiveFraction = params.getObjectiveFraction();
+        }
+        String target = params.getTargetReaction();
+        if (target != null && !target.isEmpty()) {
+            objectiveId = target;
+        } else if (getBiomassVariable("bio1") >= 0) {
+            objectiveId = "bio1";
+        } else {
+            for (int j = 0; j < variableIds.size() && objectiveId == null; j++) {
+                if (variableTypes.get(j) == VariableType.BIOMASS_FLUX) {
+                    objectiveId = variableIds.get(j);
+                }
+            }
+        }
+        if (objectiveId == null) {
+            throw new IllegalArgumentException("The model has no biomass reaction and no target_reaction was given");
+        }
+    }
+
+    /** Parses a custom bound of the form lower&lt;id&lt;upper, as accepted by
+     * run_flux_balance_analysis.
+     * @param bound the custom bound.
+     * @param range receives the lower and upper bound.
+     * @return the reaction or compound id.
+     */
+    static String parseCustomBound(String bound, double[] range) {
+        String[] parts = bound.split("[<;]");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Custom bound must be of the form lower<id<upper: " + bound);
+        }
+        try {
+            range[0] = Double.parseDouble(parts[0].trim());
+            range[1] = Double.parseDouble(parts[2].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Custom bound must be of the form lower<id<upper: " + bound, e);
+        }
+        return parts[1].trim();
+    }
+
+    private void applyCustomBound(String bound) {
+        double[] range = new double[2];
+        String id = parseCustomBound(bound, range);
+        double lo = range[0];
+        double up = range[1];
+        Integer j = findReaction(id);
+        if (j == null) {
+            String cpd = findCompound(id);
+            if (cpd == null) {
+                throw new IllegalArgumentException("Custom bound on unknown reaction or compound: " + bound);
+            }
+            j = addDrain(cpd, lo, up);
+            customDrainBounds.put(j, new double[] {lo, up});
+        }
+        lowerList.set(j, lo);
+        upperList.set(j, up);
+    }
+
+    private Integer findReaction(String id) {
+        int j = getReactionVariable(id);
+        if (j < 0) {
+            j = getBiomassVariable(id);
+        }
+        return j < 0 ? null : j;
+    }
+
+    private String findCompound(String id) {
+        for (String cand : new String[] {id, id + "_e0", id + "_c0"}) {
+            if (matrix.getCompoundIndex(cand) >= 0) {
+                return cand;
+            }
+        }
+        return null;
+    }
+
+    private void compile() {
+        int n = variableIds.size();
+        int cols = matrix.getColumnCount();
+        int nnz = matrix.getNonZeroCount();
+        // the matrix columns as they are, then one coefficient per drain
+        colStart = Arrays.copyOf(matrix.getColumnStarts(), n + 1);
+        rowIndex = Arrays.copyOf(matrix.getRowIndexes(), nnz + drainRows.size());
+        values = Arrays.copyOf(matrix.getColumnValues(), nnz + drainRows.size());
+        for (int d = 0; d < drainRows.size(); d++) {
+            colStart[cols + d] = nnz + d;
+            rowIndex[nnz + d] = drainRows.get(d);
+            // uptake adds the compound to the system
+            values[nnz + d] = 1;
+        }
+        colStart[n] = nnz + drainRows.size();
+        lower = new double[n];
+        upper = new double[n];
+        for (int j = 0; j < n; j++) {
+            lower[j] = Math.min(lowerList.get(j), upperList.get(j));
+            upper[j] = upperList.get(j);
+        }
+        objective = new double[n];
+        Integer obj = findReaction(objectiveId);
+        if (obj == null) {
+            throw new IllegalArgumentException("Unknown target reaction: " + objectiveId);
+        }
+        objectiveId = variableIds.get(obj);
+        objectiveVariable = obj;
+        objective[obj] = 1;
+    }
+
+    /** Get the number of mass balance rows, one per model compound.
+     * @return the row count.
+     */
+    public int getRowCount() {
+        return matrix.getRowCount();
+    }
+
+    /** Get the number of variables.
+     * @return the variable count.
+     */
+    public int getVariableCount() {
+        return variableIds.size();
+    }
+
+    public String getCompoundId(int row) {
+        return matrix.getCompoundId(row);
+    }
+
+    /** Get the stoichiometry of the model reactions and biomasses, whose
+     * columns are the first variables of the program.
+     * @return the stoichiometric matrix.
+     */
+    public StoichiometricMatrix getMatrix() {
+        return matrix;
+    }
+
+    /** Get the id of a variable: the model reaction, biomass or drained
+     * compound id.
+     * @param j the variable.
+     * @return the id.
+     */
+    public String getVariableId(int j) {
+        return variableIds.get(j);
+    }
+
+    public VariableType getVariableType(int j) {
+        return variableTypes.get(j);
+    }
+
+    /** Get the variable of a model reaction.
+     * @param id the model reaction id; an id without compartment is looked
+     * up in c0.
+     * @return the variable, or -1 if the model has no such reaction.
+     */
+    public int getReactionVariable(String id) {
+        int j = matrix.getReactionIndex(id);
+        if (j < 0 || matrix.isBiomass(j)) {
+            j = matrix.getReactionIndex(id + "_c0");
+        }
+        return j < 0 || matrix.isBiomass(j) ? -1 : j;
+    }
+
+    /** Get the variable of a biomass reaction.
+     * @param id the biomass id.
+     * @return the variable, or -1 if the model has no such biomass.
+     */
+    public int getBiomassVariable(String id) {
+        int j = matrix.getReactionIndex(id);
+        return j >= 0 && matrix.isBiomass(j) ? j : -1;
+    }
+
+    /** Get the drain variable of a compound.
+     * @param compoundId the model compound id; an id without compartment is
+     * looked up in e0, then c0.
+     * @return the variable, or -1 if the compound has no drain.
+     */
+    public int getDrainVariable(String compoundId) {
+        Integer j = drainVariables.get(compoundId);
+        if (j == null) {
+            j = drainVariables.get(compoundId + "_e0");
+        }
+        if (j == null) {
+            j = drainVariables.get(compoundId + "_c0");
+        }
+        return j == null ? -1 : j;
+    }
+
+    /** Get the id of the maximized variable.
+     * @return the objective id.
+     */
+    public String getObjectiveId() {
+        return objectiveId;
+    }
+
+    public int getObjectiveVariable() {
+        return objectiveVariable;
+    }
+
+    /** Check whether the parameters asked for a single gene knockout screen.
+     * @return true if simulate_ko was set.
+     */
+    public boolean isSimulateKo() {
+        return simulateKo;
+    }
+
+    /** Check whether the parameters asked for flux variability analysis.
+     * @return true if fva was set.
+     */
+    public boolean isFva() {
+        return fva;
+    }
+
+    /** Get the fraction of the optimal objective value every variability
+     * solve must still reach.
+     * @return the objective_fraction, 0.1 by default.
+     */
+    public double getObjectiveFraction() {
+        return objectiveFraction;
+    }
+
+    public double getLowerBound(int j) {
+        return lower[j];
+    }
+
+    public double getUpperBound(int j) {
+        return upper[j];
+    }
+
+    /** Get the objective coefficients.
+     * @return a copy of the objective, one coefficient per variable.
+     */
+    public double[] getObjective() {
+        return objective.clone();
+    }
+
+    /** Lists the features of the model's gene-protein-reaction rules.
+     * @return the feature ids, sorted.
+     */
+    public List<String> getFeatures() {
+        return new ArrayList<String>(featureReactions.keySet());
+    }
+
+    /** Lists the reactions whose gene-protein-reaction rule includes a
+     * feature, whether or not knocking the feature out alone stops them.
+     * @param feature the feature id.
+     * @return the reaction variables, sorted; empty if the feature is in no
+     * rule.
+     */
+    public int[] getFeatureReactions(String feature) {
+        int[] rxns = featureReactions.get(feature);
+        return rxns == null ? new int[0] : rxns.clone();
+    }
+
+    /** Lists the reactions knocked out by a set of gene knockouts. A
+     * reaction is knocked out when every one of its proteins has a subunit
+     * all of whose genes are knocked out; reactions without any protein are
+     * never knocked out. Only the rules that include a knocked out feature
+     * are evaluated.
+     * @param features the knocked out feature ids.
+     * @return the knocked out reaction variables, sorted.
+     */
+    public int[] knockedOutReactions(Collection<String> features) {
+        Set<String> ko = new HashSet<String>(features);
+        Set<Integer> candidates = new TreeSet<Integer>();
+        for (String f : ko) {
+            int[] rxns = featureReactions.get(f);
+            if (rxns != null) {
+                for (int j : rxns) {
+                    candidates.add(j);
+                }
+            }
+        }
+        int[] out = new int[candidates.size()];
+        int k = 0;
+        for (int j : candidates) {
+            if (isKnockedOut(gpr.get(j), ko)) {
+                out[k++] = j;
+            }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    private static boolean isKnockedOut(String[][][] proteins, Set<String> ko) {
+        for (String[][] protein : proteins) {
+            boolean active = true;
+            for (String[] subunit : protein) {
+                boolean subunitActive = false;
+                for (String f : subunit) {
+                    if (!ko.contains(f)) {
+                        subunitActive = true;
+                        break;
+                    }
+                }
+                if (!subunitActive) {
+                    active = false;
+                    break;
+                }
+            }
+            if (active) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Creates a solver loaded with this program: matrix, bounds and
+     * objective. The solver can then be changed and re-solved freely.
+     * @return a new solver.
+     */
+    public SimplexSolver newSolver() {
+        int n = variableIds.size();
+        SimplexSolver s = new SimplexSolver(matrix.getRowCount(), n, colStart, rowIndex, values);
+        for (int j = 0; j < n; j++) {
+            s.setBounds(j, lower[j], upper[j]);
+        }
+        s.setObjective(objective, true);
+        return s;
+    }
+
+    /** Sets the drains of a solver created by {@link #newSolver()} to their
+     * bounds on another media, as {@link #fromModel} would set them with the
+     * same model and parameters: the default drain bounds for the media,
+     * then its compounds, the media_supplement_list and the custom bounds on
+     * compounds. Only the drains of this program can be set, so a media
+     * compound outside the extracellular compartment is left out unless it
+     * was drained in the program already; build the program on a media
+     * holding every such compound to switch between media freely.
+     * @param solver the solver.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     */
+    public void setMedia(SimplexSolver solver, JsonNode media) {
+        setMedia(solver, media, defaultMaxUptake);
+    }
+
+    /** Sets the drains of a solver created by {@link #newSolver()} as
+     * {@link #setMedia(SimplexSolver, JsonNode)} does, but as if the program
+     * had been built with another default_max_uptake.
+     * @param solver the solver.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     * @param defaultMaxUptake the uptake limit of the extracellular compounds
+     * outside the media; zero or less means none on the Complete media.
+     */
+    public void setMedia(SimplexSolver solver, JsonNode media, double defaultMaxUptake) {
+        int cols = matrix.getColumnCount();
+        int drains = drainRows.size();
+        double maxUptake = maxUptake(media, defaultMaxUptake);
+        double[] lo = new double[drains];
+        double[] up = new double[drains];
+        // whether the drain would exist in a program built on the media
+        boolean[] open = new boolean[drains];
+        for (int d = 0; d < drains; d++) {
+            int row = drainRows.get(d);
+            if (matrix.getCompartmentId(matrix.getCompartment(row)).startsWith("e")) {
+                lo[d] = DEFAULT_MIN_DRAIN_FLUX;
+                up[d] = maxUptake;
+                open[d] = true;
+            } else if (matrix.getCompoundId(row).startsWith(BIOMASS_COMPOUND + "_")) {
+                lo[d] = -DEFAULT_MAX_FLUX;
+                open[d] = true;
+            }
+        }
+        if (media != null) {
+            for (JsonNode mc : media.path("mediacompounds")) {
+                Integer j = drainVariables.get(mediaCompoundId(mc));
+                if (j != null) {
+                    lo[j - cols] = mc.path("minFlux").asDouble(DEFAULT_MEDIA_MIN_FLUX);
+                    up[j - cols] = mc.path("maxFlux").asDouble(DEFAULT_MEDIA_MAX_FLUX);
+                    open[j - cols] = true;
+                }
+            }
+        }
+        for (String id : supplements) {
+            int d = drainVariables.get(id) - cols;
+            lo[d] = open[d] ? lo[d] : DEFAULT_MIN_DRAIN_FLUX;
+            up[d] = DEFAULT_MAX_FLUX;
+            open[d] = true;
+        }
+        for (Map.Entry<Integer, double[]> e : customDrainBounds.entrySet()) {
+            lo[e.getKey() - cols] = e.getValue()[0];
+            up[e.getKey() - cols] = e.getValue()[1];
+        }
+        for (int d = 0; d < drains; d++) {
+            solver.setBounds(cols + d, Math.min(lo[d], up[d]), up[d]);
+        }
+    }
+
+    /** Solves the program with a new solver. If the parameters asked for
+     * fva, the variability of every variable is computed too, and if they
+     * asked for simulate_ko, the growth of every single gene knockout; both
+     * run on one thread per processor.
+     * @return the solution.
+     */
+    public FbaSolution solve() {
+        return solve(objectiveFraction, 0);
+    }
+
+    // solve() with another objective_fraction for the fva, and the number of
+    // workers of the fva and the knockout screen, zero for one per processor
+    FbaSolution solve(double objectiveFraction, int threads) {
+        try {
+            FbaSolution sol;
+            if (fva) {
+                FluxVariabilityAnalysis fva = new FluxVariabilityAnalysis(this);
+                fva.setObjectiveFraction(objectiveFraction);
+                fva.setThreads(threads);
+                sol = fva.run();
+            } else {
+                SimplexSolver s = newSolver();
+                s.solve();
+                sol = solution(s);
+            }
+            if (simulateKo && sol.isOptimal()) {
+                KnockoutScreen screen = new KnockoutScreen(this);
+                screen.setThreads(threads);
+                sol.setDeletionResults(screen.screenFeatures(false).getDeletionResults(Double.POSITIVE_INFINITY));
+            }
+            return sol;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", e);
+        }
+    }
+
+    /** Reads the solution of a solver created by {@link #newSolver()}.
+     * @param solver the solver, after a solve.
+     * @return the solution.
+     */
+    public FbaSolution solution(SimplexSolver solver) {
+        int n = variableIds.size();
+        double[] lo = new double[n];
+        double[] up = new double[n];
+        for (int j = 0; j < n; j++) {
+            lo[j] = solver.getLowerBound(j);
+            up[j] = solver.getUpperBound(j);
+        }
+        boolean optimal = solver.getStatus() == SimplexSolver.Status.OPTIMAL;
+        return new FbaSolution(this, solver.getStatus(), optimal ? solver.getObjectiveValue() : 0,
+                optimal ? solver.getValues() : new double[n], lo, up);
+    }
+}
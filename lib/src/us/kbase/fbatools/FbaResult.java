@@ -0,0 +1,311 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>A typed, read-only view of a KBaseFBA.FBA object, the stored result of
+ * a flux balance analysis.</p>
+ * <p>It is read the same way as an {@link FbaModel}: the
+ * FBAReactionVariables, FBACompoundVariables and FBABiomassVariables become
+ * compact {@link Variable} records with primitive doubles, NaN where the
+ * object leaves them out, and interned ids and classes. Every other field,
+ * including the other_values and expression fields of the variables, is
+ * kept as the bytes of its JSON and parsed on first access by the
+ * getExtras methods.</p>
+ */
+public class FbaResult {
+    private String id = null;
+    private String fbamodelRef = null;
+    private String mediaRef = null;
+    private double objectiveValue = Double.NaN;
+    private boolean maximizeObjective = true;
+    private boolean fva = false;
+    private double defaultMaxFlux = Double.NaN;
+    private double defaultMaxDrainFlux = Double.NaN;
+    private double defaultMinDrainFlux = Double.NaN;
+    private List<Variable> reactionVariables = Collections.emptyList();
+    private List<Variable> compoundVariables = Collections.emptyList();
+    private List<Variable> biomassVariables = Collections.emptyList();
+    private TypedJson.Extras extras = null;
+
+    /** An FBAReactionVariable, FBACompoundVariable or FBABiomassVariable. */
+    public static class Variable {
+        private final String entityId;
+        private final String variableType;
+        private final double lowerBound;
+        private final double upperBound;
+        private final double min;
+        private final double max;
+        private final double value;
+        private final String variableClass;
+        private final TypedJson.Extras extras;
+
+        Variable(String entityId, String variableType, double lowerBound, double upperBound, double min,
+                double max, double value, String variableClass, TypedJson.Extras extras) {
+            this.entityId = entityId;
+            this.variableType = variableType;
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.min = min;
+            this.max = max;
+            this.value = value;
+            this.variableClass = variableClass;
+            this.extras = extras;
+        }
+
+        /** Get the model reaction, compound or biomass of the variable.
+         * @return the id its modelreaction_ref, modelcompound_ref or
+         * biomass_ref points to.
+         */
+        public String getEntityId() {
+            return entityId;
+        }
+
+        public String getVariableType() {
+            return variableType;
+        }
+
+        public double getLowerBound() {
+            return lowerBound;
+        }
+
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        /** Get the class of the variable, e.g. Positive or Blocked.
+         * @return the class.
+         */
+        public String getVariableClass() {
+            return variableClass;
+        }
+
+        /** Get the fields without a typed getter, such as other_values,
+         * exp_state and coupled_reactions.
+         * @return the fields as a JSON object, parsed on first access.
+         */
+        public JsonNode getExtras() {
+            return TypedJson.Extras.get(extras);
+        }
+
+        @Override
+        public String toString() {
+            return "Variable [entityId=" + entityId + ", variableType=" + variableType + ", value=" + value +
+                    ", class=" + variableClass + "]";
+        }
+    }
+
+    private FbaResult() {}
+
+    /** Reads an FBA object from a file.
+     * @param path the FBA object as JSON.
+     * @return the result.
+     * @throws IOException if the file cannot be read or is not a JSON object.
+     */
+    public static FbaResult read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /** Reads an FBA object from a stream, which is left open.
+     * @param in the FBA object as JSON.
+     * @return the result.
+     * @throws IOException if the stream cannot be read or is not a JSON
+     * object.
+     */
+    public static FbaResult read(InputStream in) throws IOException {
+        try (JsonParser p = TypedJson.parser(in)) {
+            return read(p);
+        }
+    }
+
+    /** Converts an FBA object already parsed into a tree.
+     * @param fba the FBA object.
+     * @return the result.
+     * @throws IOException if the node is not an object.
+     */
+    public static FbaResult fromJson(JsonNode fba) throws IOException {
+        try (JsonParser p = TypedJson.parser(fba)) {
+            return read(p);
+        }
+    }
+
+    private static FbaResult read(JsonParser p) throws IOException {
+        final TypedJson.Ids ids = new TypedJson.Ids();
+        final TypedJson.ExtrasBuilder xb = new TypedJson.ExtrasBuilder();
+        TypedJson.ExtrasBuilder top = new TypedJson.ExtrasBuilder();
+        FbaResult r = new FbaResult();
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                r.id = TypedJson.text(p);
+                break;
+            case "fbamodel_ref":
+                r.fbamodelRef = TypedJson.text(p);
+                break;
+            case "media_ref":
+                r.mediaRef = TypedJson.text(p);
+                break;
+            case "objectiveValue":
+                r.objectiveValue = TypedJson.number(p);
+                break;
+            case "maximizeObjective":
+                r.maximizeObjective = TypedJson.bool(p);
+                break;
+            case "fva":
+                r.fva = TypedJson.bool(p);
+                break;
+            case "defaultMaxFlux":
+                r.defaultMaxFlux = TypedJson.number(p);
+                break;
+            case "defaultMaxDrainFlux":
+                r.defaultMaxDrainFlux = TypedJson.number(p);
+                break;
+            case "defaultMinDrainFlux":
+                r.defaultMinDrainFlux = TypedJson.number(p);
+                break;
+            case "FBAReactionVariables":
+                r.reactionVariables = TypedJson.array(p, v -> readVariable(v, "modelreaction_ref", ids, xb));
+                break;
+            case "FBACompoundVariables":
+                r.compoundVariables = TypedJson.array(p, v -> readVariable(v, "modelcompound_ref", ids, xb));
+                break;
+            case "FBABiomassVariables":
+                r.biomassVariables = TypedJson.array(p, v -> readVariable(v, "biomass_ref", ids, xb));
+                break;
+            default:
+                top.add(f, p);
+            }
+        }
+        r.extras = top.build();
+        return r;
+    }
+
+    private static Variable readVariable(JsonParser p, String refField, TypedJson.Ids ids,
+            TypedJson.ExtrasBuilder xb) throws IOException {
+        String entity = null;
+        String type = null;
+        double lower = Double.NaN;
+        double upper = Double.NaN;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double value = Double.NaN;
+        String cls = null;
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            if (f.equals(refField)) {
+                String ref = TypedJson.text(p);
+                entity = ref == null ? null : FbaProblem.refId(ref);
+                continue;
+            }
+            switch (f) {
+            case "variableType":
+                type = ids.intern(TypedJson.text(p));
+                break;
+            case "lowerBound":
+                lower = TypedJson.number(p);
+                break;
+            case "upperBound":
+                upper = TypedJson.number(p);
+                break;
+            case "min":
+                min = TypedJson.number(p);
+                break;
+            case "max":
+                max = TypedJson.number(p);
+                break;
+            case "value":
+                value = TypedJson.number(p);
+                break;
+            case "class":
+                cls = ids.intern(TypedJson.text(p));
+                break;
+            default:
+                xb.add(f, p);
+            }
+        }
+        return new Variable(entity, type, lower, upper, min, max, value, cls, xb.build());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFbamodelRef() {
+        return fbamodelRef;
+    }
+
+    public String getMediaRef() {
+        return mediaRef;
+    }
+
+    public double getObjectiveValue() {
+        return objectiveValue;
+    }
+
+    public boolean isMaximizeObjective() {
+        return maximizeObjective;
+    }
+
+    public boolean isFva() {
+        return fva;
+    }
+
+    public double getDefaultMaxFlux() {
+        return defaultMaxFlux;
+    }
+
+    public double getDefaultMaxDrainFlux() {
+        return defaultMaxDrainFlux;
+    }
+
+    public double getDefaultMinDrainFlux() {
+        return defaultMinDrainFlux;
+    }
+
+    public List<Variable> getReactionVariables() {
+        return reactionVariables;
+    }
+
+    public List<Variable> getCompoundVariables() {
+        return compoundVariables;
+    }
+
+    public List<Variable> getBiomassVariables() {
+        return biomassVariables;
+    }
+
+    /** Get the top level fields without a typed getter, such as
+     * FBADeletionResults, gapfillingSolutions and parameters.
+     * @return the fields as a JSON object, parsed on first access.
+     */
+    public JsonNode getExtras() {
+        return TypedJson.Extras.get(extras);
+    }
+
+    @Override
+    public String toString() {
+        return "FbaResult [id=" + id + ", objectiveValue=" + objectiveValue + ", reactionVariables=" +
+                reactionVariables.size() + ", compoundVariables=" + compoundVariables.size() +
+                ", biomassVariables=" + biomassVariables.size() + "]";
+    }
+}
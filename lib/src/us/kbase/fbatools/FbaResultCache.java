@@ -0,0 +1,366 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import us.kbase.common.service.JsonClientException;
+
+/**
+ * <p>A content-addressed cache of run_flux_balance_analysis results.</p>
+ * <p>The key of a call is the {@link ParamsHasher canonical hash} of its
+ * parameters together with the exact versions of the workspace objects it
+ * reads (model, media and expression series), as resolved by a
+ * {@link VersionResolver}. A call with the same parameters against the same
+ * object versions is answered from the cache; a new version of any input
+ * changes the key. Results are kept in a size-bounded in-memory LRU tier
+ * and, optionally, in an on-disk tier bounded by total bytes, which is
+ * evicted least recently used first and survives restarts.</p>
+ * <p>A cached result points at the FBA object saved by the call that filled
+ * the cache; callers relying on fba_output_id naming a fresh object on every
+ * call should not use the cache.</p>
+ */
+public class FbaResultCache {
+    private static final String METHOD = "fba_tools.run_flux_balance_analysis";
+    private static final String SUFFIX = ".json";
+
+    private final int maxMemoryEntries;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, RunFluxBalanceAnalysisResults> memory;
+    // disk index in access order: key -> file size
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long diskBytes = 0;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Resolves workspace references to the exact object versions they
+     * currently point at, typically with the workspace's get_object_info3.
+     */
+    public interface VersionResolver {
+        /** Resolves references.
+         * @param refs the references to resolve, in "workspace/object" or
+         * "workspace/object/version" form.
+         * @return the resolved "wsid/objid/version" reference of each input.
+         * @throws IOException if an IO exception occurs
+         * @throws JsonClientException if a JSON RPC exception occurs
+         */
+        Map<String, String> resolve(List<String> refs) throws IOException, JsonClientException;
+    }
+
+    /** Constructs a memory-only cache.
+     * @param maxMemoryEntries the maximum number of results kept in memory.
+     */
+    public FbaResultCache(int maxMemoryEntries) {
+        this(maxMemoryEntries, null, 0);
+    }
+
+    /** Constructs a cache with an on-disk tier.
+     * @param maxMemoryEntries the maximum number of results kept in memory.
+     * @param directory the directory of the on-disk tier, or null for none.
+     * It is created if needed and entries already in it are reused.
+     * @param maxDiskBytes the maximum total size of the on-disk tier.
+     */
+    public FbaResultCache(final int maxMemoryEntries, Path directory, long maxDiskBytes) {
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, RunFluxBalanceAnalysisResults>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RunFluxBalanceAnalysisResults> eldest) {
+                if (size() > FbaResultCache.this.maxMemoryEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (directory != null) {
+            loadDiskIndex();
+        }
+    }
+
+    private void loadDiskIndex() {
+        try {
+            Files.createDirectories(directory);
+            // oldest access first, so the index starts in LRU order
+            TreeMap<FileTime, List<Path>> byTime = new TreeMap<FileTime, List<Path>>();
+            DirectoryStream<Path> ds = Files.newDirectoryStream(directory, "*" + SUFFIX);
+            try {
+                for (Path p : ds) {
+                    FileTime t = Files.getLastModifiedTime(p);
+                    if (!byTime.containsKey(t)) {
+                        byTime.put(t, new ArrayList<Path>());
+                    }
+                    byTime.get(t).add(p);
+                }
+            } finally {
+                ds.close();
+            }
+            for (List<Path> paths : byTime.values()) {
+                for (Path p : paths) {
+                    String name = p.getFileName().toString();
+                    long size = Files.size(p);
+                    disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                    diskBytes += size;
+                }
+            }
+            trimDisk();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the cache directory " + directory, e);
+        }
+    }
+
+    /** Lists the workspace references a call reads, in the form the service
+     * builds them: an id containing '/' is already a reference, any other id
+     * is looked up in its workspace.
+     * @param params the call parameters.
+     * @return the input references.
+     */
+    public static List<String> inputRefs(RunFluxBalanceAnalysisParams params) {
+        List<String> refs = new ArrayList<String>();
+        addRef(refs, params.getFbamodelId(), params.getFbamodelWorkspace(), params.getWorkspace());
+        addRef(refs, params.getMediaId(), params.getMediaWorkspace(), params.getWorkspace());
+        addRef(refs, params.getExpseriesId(), params.getExpseriesWorkspace(), params.getWorkspace());
+        return refs;
+    }
+
+    private static void addRef(List<String> refs, String id, String ws, String defaultWs) {
+        if (id == null || id.isEmpty()) {
+            return;
+        }
+        if (id.contains("/")) {
+            refs.add(id);
+        } else {
+            refs.add((ws != null ? ws : defaultWs) + "/" + id);
+        }
+    }
+
+    /** Computes the cache key of a call.
+     * @param params the call parameters.
+     * @param resolvedVersions the resolved version of every input reference.
+     * @return the key.
+     */
+    public static String key(RunFluxBalanceAnalysisParams params, Map<String, String> resolvedVersions) {
+        return ParamsHasher.hash(METHOD, params, new TreeMap<String, String>(resolvedVersions));
+    }
+
+    /** Looks up a result.
+     * @param key the cache key.
+     * @return a copy of the cached result, which the caller may change
+     * freely, or null on a miss.
+     */
+    public synchronized RunFluxBalanceAnalysisResults get(String key) {
+        RunFluxBalanceAnalysisResults res = memory.get(key);
+        if (res != null) {
+            memoryHits.incrementAndGet();
+            return copy(res);
+        }
+        if (disk.containsKey(key)) {
+            Path p = file(key);
+            try {
+                res = JsonRpcCodec.mapper().readValue(p.toFile(), RunFluxBalanceAnalysisResults.class);
+                Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+                // move to the most recently used end
+                disk.get(key);
+                diskHits.incrementAndGet();
+                memory.put(key, res);
+                return copy(res);
+            } catch (IOException e) {
+                // lost or damaged entry, treat as a miss
+                removeDisk(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /** Stores a copy of a result in both tiers.
+     * @param key the cache key.
+     * @param result the result.
+     * @throws IOException if the on-disk entry cannot be written; the
+     * result is still kept in memory.
+     */
+    public synchronized void put(String key, RunFluxBalanceAnalysisResults result) throws IOException {
+        memory.put(key, copy(result));
+        if (directory == null) {
+            return;
+        }
+        Path p = file(key);
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            JsonRpcCodec.mapper().writeValue(tmp.toFile(), result);
+            Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        long size = Files.size(p);
+        Long old = disk.put(key, size);
+        diskBytes += size - (old == null ? 0 : old);
+        trimDisk();
+    }
+
+    /** Runs a call through the cache with a blocking client.
+     * @param client the client used on a miss.
+     * @param resolver resolves the versions of the call's inputs.
+     * @param params the call parameters.
+     * @return the cached or computed result.
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if a JSON RPC exception occurs
+     */
+    public RunFluxBalanceAnalysisResults runFluxBalanceAnalysis(FbaToolsClient client, VersionResolver resolver,
+            RunFluxBalanceAnalysisParams params) throws IOException, JsonClientException {
+        String key = key(params, resolver.resolve(inputRefs(params)));
+        RunFluxBalanceAnalysisResults res = get(key);
+        if (res == null) {
+            res = client.runFluxBalanceAnalysis(params);
+            if (res != null) {
+                try {
+                    put(key, res);
+                } catch (IOException e) {
+                    // the result is still good, it just is not persisted
+                }
+            }
+        }
+        return res;
+    }
+
+    /** Runs a call through the cache with an asynchronous client. Version
+     * resolution runs on the calling thread.
+     * @param client the client used on a miss.
+     * @param resolver resolves the versions of the call's inputs.
+     * @param params the call parameters.
+     * @return a future completing with the cached or computed result.
+     */
+    public CompletableFuture<RunFluxBalanceAnalysisResults> runFluxBalanceAnalysis(FbaToolsAsyncClient client,
+            VersionResolver resolver, RunFluxBalanceAnalysisParams params) {
+        final String key;
+        try {
+            key = key(params, resolver.resolve(inputRefs(params)));
+        } catch (IOException | JsonClientException e) {
+            return FbaToolsAsyncClient.failed(e);
+        }
+        RunFluxBalanceAnalysisResults res = get(key);
+        if (res != null) {
+            return CompletableFuture.completedFuture(res);
+        }
+        return client.runFluxBalanceAnalysis(params).thenApply(r -> {
+            if (r != null) {
+                try {
+                    put(key, r);
+                } catch (IOException e) {
+                    // the result is still good, it just is not persisted
+                }
+            }
+            return r;
+        });
+    }
+
+    /** Drops every entry from both tiers. Metrics are kept. */
+    public synchronized void clear() {
+        memory.clear();
+        for (String key : new ArrayList<String>(disk.keySet())) {
+            removeDisk(key);
+        }
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /** Get the fraction of lookups answered from either tier.
+     * @return the hit ratio, or 0 before the first lookup.
+     */
+    public double getHitRatio() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    public synchronized int getDiskEntries() {
+        return disk.size();
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "FbaResultCache [memoryHits=" + getMemoryHits() + ", diskHits=" + getDiskHits() + ", misses=" +
+                getMisses() + ", evictions=" + getEvictions() + ", memoryEntries=" + getMemoryEntries() +
+                ", diskEntries=" + getDiskEntries() + ", diskBytes=" + getDiskBytes() + "]";
+    }
+
+    // results are mutable, so no caller gets the instance another holds
+    private static RunFluxBalanceAnalysisResults copy(RunFluxBalanceAnalysisResults res) {
+        try {
+            return JsonRpcCodec.mapper().treeToValue(JsonRpcCodec.mapper().valueToTree(res),
+                    RunFluxBalanceAnalysisResults.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to copy " + res, e);
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+        List<String> evict = new ArrayList<String>();
+        long bytes = diskBytes;
+        while (bytes > maxDiskBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            evict.add(e.getKey());
+            bytes -= e.getValue();
+        }
+        for (String key : evict) {
+            removeDisk(key);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void removeDisk(String key) {
+        Long size = disk.remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            // left for the next eviction of the same key
+        }
+    }
+}
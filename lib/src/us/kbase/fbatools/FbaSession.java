@@ -0,0 +1,267 @@
+package us.kbase.fbatools;
+
+import java.util.Collection;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>A flux balance program loaded once and changed in place, for many
+ * variants of the same FBA at interactive latency.</p>
+ * <p>A session holds an {@link FbaProblem} and one solver. Changes to the
+ * media, bounds, knockouts and objective are applied to the solver as
+ * deltas, and every {@link #solve()} re-optimizes from the optimal basis of
+ * the previous one, as the MFAToolkit does with LoadState and
+ * loadChangedBoundsIntoSolver, instead of rebuilding and reloading the
+ * whole program. {@link #saveState()} and {@link #loadState(State)} undo a
+ * set of changes, and {@link #reset()} returns to the program as built.</p>
+ * <pre>
+ * FbaSession session = FbaSession.open(modelJson, mediaJson, params);
+ * double wildType = session.solve().getObjectiveValue();
+ * FbaSession.State state = session.saveState();
+ * session.knockOutFeatures(Arrays.asList("b0001"));
+ * session.setCustomBound("0&lt;rxn00148_c0&lt;10");
+ * double mutant = session.solve().getObjectiveValue();
+ * session.loadState(state);
+ * </pre>
+ * <p>A session is not thread safe; {@link #copy()} gives each thread its
+ * own.</p>
+ */
+public class FbaSession {
+    private final FbaProblem problem;
+    private final SimplexSolver solver;
+    private int objective;
+
+    /** The bounds and objective of a session, saved to be restored later. */
+    public static class State {
+        private final double[] lower;
+        private final double[] upper;
+        private final int objective;
+        private final boolean maximize;
+
+        private State(SimplexSolver s, int objective) {
+            int n = s.getColumns();
+            lower = new double[n];
+            upper = new double[n];
+            for (int j = 0; j < n; j++) {
+                lower[j] = s.getLowerBound(j);
+                upper[j] = s.getUpperBound(j);
+            }
+            this.objective = objective;
+            this.maximize = s.isMaximize();
+        }
+    }
+
+    /** Starts a session on a program.
+     * @param problem the program.
+     */
+    public FbaSession(FbaProblem problem) {
+        this.problem = problem;
+        this.solver = problem.newSolver();
+        this.objective = problem.getObjectiveVariable();
+    }
+
+    private FbaSession(FbaSession other) {
+        this.problem = other.problem;
+        this.solver = other.solver.copy();
+        this.objective = other.objective;
+    }
+
+    /** Builds the program of a model on a media and starts a session on it.
+     * @param model the FBAModel object, as JSON.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     * @param params the run parameters, or null for the defaults; fva and
+     * simulate_ko are not run by a session.
+     * @return the session.
+     * @see FbaProblem#fromModel(JsonNode, JsonNode, RunFluxBalanceAnalysisParams)
+     */
+    public static FbaSession open(JsonNode model, JsonNode media, RunFluxBalanceAnalysisParams params) {
+        return new FbaSession(FbaProblem.fromModel(model, media, params));
+    }
+
+    /** Get an independent session with the same changes and basis.
+     * @return the copy.
+     */
+    public FbaSession copy() {
+        return new FbaSession(this);
+    }
+
+    public FbaProblem getProblem() {
+        return problem;
+    }
+
+    /** Switches to another media, see
+     * {@link FbaProblem#setMedia(SimplexSolver, JsonNode)}. Custom bounds on
+     * compounds set in this session are replaced.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     */
+    public void setMedia(JsonNode media) {
+        problem.setMedia(solver, media);
+    }
+
+    /** Sets the bounds of a model or biomass reaction.
+     * @param id the reaction id; an id without compartment is looked up in c0.
+     * @param lo the lower bound.
+     * @param up the upper bound.
+     * @throws IllegalArgumentException if the model has no such reaction.
+     */
+    public void setReactionBounds(String id, double lo, double up) {
+        solver.setBounds(reaction(id), Math.min(lo, up), up);
+    }
+
+    /** Sets the bounds of the drain of a compound, positive for uptake.
+     * @param compoundId the compound id; an id without compartment is looked
+     * up in e0, then c0.
+     * @param lo the lower bound.
+     * @param up the upper bound.
+     * @throws IllegalArgumentException if the compound has no drain in the
+     * program.
+     */
+    public void setDrainBounds(String compoundId, double lo, double up) {
+        int j = problem.getDrainVariable(compoundId);
+        if (j < 0) {
+            throw new IllegalArgumentException("No drain for compound " + compoundId);
+        }
+        solver.setBounds(j, Math.min(lo, up), up);
+    }
+
+    /** Sets a bound of the form lower&lt;id&lt;upper, as in custom_bound_list:
+     * on a reaction if the model has one with the id, else on the drain of a
+     * compound.
+     * @param bound the custom bound.
+     * @throws IllegalArgumentException if the bound is malformed or on
+     * neither a reaction nor a drained compound.
+     */
+    public void setCustomBound(String bound) {
+        double[] range = new double[2];
+        String id = FbaProblem.parseCustomBound(bound, range);
+        int j = findReaction(id);
+        if (j < 0) {
+            j = problem.getDrainVariable(id);
+        }
+        if (j < 0) {
+            throw new IllegalArgumentException("Custom bound on unknown reaction or undrained compound: " + bound);
+        }
+        solver.setBounds(j, Math.min(range[0], range[1]), range[1]);
+    }
+
+    /** Knocks out model or biomass reactions.
+     * @param ids the reaction ids; an id without compartment is looked up in
+     * c0.
+     * @throws IllegalArgumentException if the model has no such reaction.
+     */
+    public void knockOutReactions(Collection<String> ids) {
+        for (String id : ids) {
+            solver.setBounds(reaction(id), 0, 0);
+        }
+    }
+
+    /** Knocks out features, stopping every reaction none of whose proteins
+     * remains active. A feature in no gene-protein-reaction rule knocks out
+     * nothing.
+     * @param features the feature ids.
+     */
+    public void knockOutFeatures(Collection<String> features) {
+        for (int j : problem.knockedOutReactions(features)) {
+            solver.setBounds(j, 0, 0);
+        }
+    }
+
+    /** Replaces the objective with a single variable.
+     * @param id the reaction, biomass or drained compound id.
+     * @param maximize true to maximize, false to minimize.
+     * @throws IllegalArgumentException if there is no such variable.
+     */
+    public void setObjective(String id, boolean maximize) {
+        int j = findReaction(id);
+        if (j < 0) {
+            j = problem.getDrainVariable(id);
+        }
+        if (j < 0) {
+            throw new IllegalArgumentException("Unknown objective: " + id);
+        }
+        solver.setObjectiveCoefficient(objective, 0);
+        solver.setObjectiveCoefficient(j, 1);
+        solver.setMaximize(maximize);
+        objective = j;
+    }
+
+    /** Get the variable of the current objective.
+     * @return the variable.
+     */
+    public int getObjectiveVariable() {
+        return objective;
+    }
+
+    /** Saves the current bounds and objective.
+     * @return the state.
+     */
+    public State saveState() {
+        return new State(solver, objective);
+    }
+
+    /** Restores the bounds and objective of a saved state. Only the bounds
+     * that differ are changed, and the basis is kept.
+     * @param state a state saved from this session or a copy of it.
+     */
+    public void loadState(State state) {
+        for (int j = 0; j < state.lower.length; j++) {
+            if (solver.getLowerBound(j) != state.lower[j] || solver.getUpperBound(j) != state.upper[j]) {
+                solver.setBounds(j, state.lower[j], state.upper[j]);
+            }
+        }
+        solver.setObjectiveCoefficient(objective, 0);
+        solver.setObjectiveCoefficient(state.objective, 1);
+        solver.setMaximize(state.maximize);
+        objective = state.objective;
+    }
+
+    /** Returns to the bounds and objective of the program as built, keeping
+     * the basis.
+     */
+    public void reset() {
+        for (int j = 0; j < problem.getVariableCount(); j++) {
+            if (solver.getLowerBound(j) != problem.getLowerBound(j) ||
+                    solver.getUpperBound(j) != problem.getUpperBound(j)) {
+                solver.setBounds(j, problem.getLowerBound(j), problem.getUpperBound(j));
+            }
+        }
+        solver.setObjectiveCoefficient(objective, 0);
+        objective = problem.getObjectiveVariable();
+        solver.setObjectiveCoefficient(objective, 1);
+        solver.setMaximize(true);
+    }
+
+    /** Solves the program as currently changed, from the basis of the last
+     * solve.
+     * @return the solution; its objective value is that of the current
+     * objective.
+     */
+    public FbaSolution solve() {
+        SimplexSolver.Status status = solver.solve();
+        if (status != SimplexSolver.Status.OPTIMAL && status != SimplexSolver.Status.INFEASIBLE) {
+            // a stalled warm start, try again from scratch
+            solver.resetBasis();
+            solver.solve();
+        }
+        return problem.solution(solver);
+    }
+
+    /** Get the number of simplex iterations of the last solve.
+     * @return the iteration count.
+     */
+    public int getIterations() {
+        return solver.getIterations();
+    }
+
+    private int findReaction(String id) {
+        int j = problem.getReactionVariable(id);
+        return j >= 0 ? j : problem.getBiomassVariable(id);
+    }
+
+    private int reaction(String id) {
+        int j = findReaction(id);
+        if (j < 0) {
+            throw new IllegalArgumentException("No such model reaction: " + id);
+        }
+        return j;
+    }
+}
@@ -0,0 +1,654 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A compact binary snapshot of many FBA solutions, read through a memory
+ * mapping without parsing or copying.</p>
+ * <p>The reaction and biomass ids of all solutions are dictionary encoded
+ * once, in the order they are first seen. Each solution is stored as a
+ * block of little-endian double columns indexed by that dictionary, one
+ * column each for the value, min, max, lowerBound and upperBound of the
+ * FBAReactionVariables and FBABiomassVariables, followed by a byte column
+ * with the index of the variable class. A reaction a solution does not
+ * carry reads as NaN. The dictionary and the index of the solutions are in
+ * a footer written on close, so a snapshot is written in a single pass in
+ * bounded memory, whatever the number of solutions.</p>
+ * <p>Solutions are added from FBA objects as JSON, from the reactions files
+ * of fba_to_tsv_file, which carry no variable classes, or from a local
+ * {@link FbaSolution} or flux vector:</p>
+ * <pre>
+ * try (FbaSnapshot.Writer w = FbaSnapshot.create(path)) {
+ *     for (Path fba : fbaJsonFiles) {
+ *         w.add(fba.getFileName().toString(), FbaResult.read(fba));
+ *     }
+ * }
+ * try (FbaSnapshot snapshot = FbaSnapshot.open(path)) {
+ *     int r = snapshot.getReactionIndex("rxn00148_c0");
+ *     for (int s = 0; s &lt; snapshot.getSolutionCount(); s++) {
+ *         System.out.println(snapshot.getSolutionId(s) + " " + snapshot.get(s, FbaSnapshot.Column.VALUE, r));
+ *     }
+ * }
+ * </pre>
+ * <p>An open snapshot is safe for concurrent reads. The mapping is released
+ * by the garbage collector once the snapshot and the buffers it returned are
+ * unreachable.</p>
+ */
+public class FbaSnapshot implements Closeable {
+    static final int MAGIC = 0x53414246; // "FBAS" in little-endian order
+    static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int TRAILER = 16;
+    private static final int NO_CLASS = 0xff;
+    // a mapping is limited to 2 GiB, so larger files are mapped in segments
+    private static final long MAX_SEGMENT = Integer.MAX_VALUE & ~7L;
+
+    /** The double columns of a solution. */
+    public enum Column {
+        VALUE, MIN, MAX, LOWER_BOUND, UPPER_BOUND
+    }
+
+    private final Path path;
+    private final List<String> reactions;
+    private final Map<String, Integer> reactionIndex;
+    private final List<String> classes;
+    private final String[] solutionIds;
+    private final Map<String, Integer> solutionIndex;
+    private final double[] objectives;
+    private final int[] widths;
+    private final int[] segmentOf;
+    private final int[] positions;
+    private volatile ByteBuffer[] segments;
+
+    private FbaSnapshot(Path path, List<String> reactions, List<String> classes, String[] solutionIds,
+            double[] objectives, int[] widths, int[] segmentOf, int[] positions, ByteBuffer[] segments) {
+        this.path = path;
+        this.reactions = Collections.unmodifiableList(reactions);
+        this.reactionIndex = index(reactions);
+        this.classes = classes;
+        this.solutionIds = solutionIds;
+        this.solutionIndex = index(Arrays.asList(solutionIds));
+        this.objectives = objectives;
+        this.widths = widths;
+        this.segmentOf = segmentOf;
+        this.positions = positions;
+        this.segments = segments;
+    }
+
+    private static Map<String, Integer> index(List<String> ids) {
+        Map<String, Integer> ret = new HashMap<String, Integer>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            ret.put(ids.get(i), i);
+        }
+        return ret;
+    }
+
+    private static int blockSize(int width) {
+        return pad(width * (Column.values().length * 8 + 1));
+    }
+
+    private static int pad(int n) {
+        return (n + 7) & ~7;
+    }
+
+    /** Opens a snapshot for writing, replacing any file at the path.
+     * @param path the snapshot file.
+     * @return the writer; the snapshot is complete once it is closed.
+     * @throws IOException if the file cannot be created.
+     */
+    public static Writer create(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    /** Opens a snapshot and maps it into memory.
+     * @param path the snapshot file.
+     * @return the snapshot.
+     * @throws IOException if the file cannot be read or is not a complete
+     * snapshot.
+     */
+    public static FbaSnapshot open(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < HEADER + TRAILER) {
+                throw new IOException("Not an FBA snapshot: " + path);
+            }
+            ByteBuffer trailer = read(ch, size - TRAILER, TRAILER);
+            long footer = trailer.getLong();
+            if (trailer.getInt() != MAGIC || footer < HEADER || footer > size - TRAILER) {
+                throw new IOException("Not a complete FBA snapshot: " + path);
+            }
+            int version = trailer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported FBA snapshot version " + version + ": " + path);
+            }
+            ByteBuffer f = read(ch, footer, (int) (size - TRAILER - footer));
+            List<String> reactions = strings(f);
+            List<String> classes = strings(f);
+            int n = f.getInt();
+            String[] ids = new String[n];
+            double[] objectives = new double[n];
+            long[] offsets = new long[n];
+            int[] widths = new int[n];
+            for (int s = 0; s < n; s++) {
+                ids[s] = string(f);
+                objectives[s] = f.getDouble();
+                offsets[s] = f.getLong();
+                widths[s] = f.getInt();
+            }
+            // map the blocks in segments that never split a block
+            List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+            int[] segmentOf = new int[n];
+            int[] positions = new int[n];
+            long start = HEADER;
+            for (int s = 0; s < n; s++) {
+                long end = offsets[s] + blockSize(widths[s]);
+                if (end - start > MAX_SEGMENT) {
+                    segments.add(map(ch, start, offsets[s] - start));
+                    start = offsets[s];
+                }
+                segmentOf[s] = segments.size();
+                positions[s] = (int) (offsets[s] - start);
+            }
+            segments.add(map(ch, start, footer - start));
+            return new FbaSnapshot(path, reactions, classes, ids, objectives, widths, segmentOf, positions,
+                    segments.toArray(new ByteBuffer[segments.size()]));
+        }
+    }
+
+    private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static ByteBuffer map(FileChannel ch, long position, long length) throws IOException {
+        MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        return buf;
+    }
+
+    private static String string(ByteBuffer buf) {
+        byte[] b = new byte[buf.getInt()];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> strings(ByteBuffer buf) {
+        int n = buf.getInt();
+        List<String> ret = new ArrayList<String>(n);
+        for (int i = 0; i < n; i++) {
+            ret.add(string(buf));
+        }
+        return ret;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getSolutionCount() {
+        return solutionIds.length;
+    }
+
+    public String getSolutionId(int solution) {
+        return solutionIds[solution];
+    }
+
+    /** Get the index of a solution.
+     * @param id the solution id it was added with.
+     * @return the index, or -1 if there is no such solution.
+     */
+    public int getSolutionIndex(String id) {
+        Integer s = solutionIndex.get(id);
+        return s == null ? -1 : s;
+    }
+
+    /** Get the objective value of a solution.
+     * @param solution the solution index.
+     * @return the objective value, or NaN if it was added from a reactions
+     * file.
+     */
+    public double getObjectiveValue(int solution) {
+        return objectives[solution];
+    }
+
+    /** Get the number of reaction and biomass ids over all solutions.
+     * @return the size of the dictionary.
+     */
+    public int getReactionCount() {
+        return reactions.size();
+    }
+
+    /** Get the reaction and biomass ids of all solutions, in dictionary
+     * order.
+     * @return the ids.
+     */
+    public List<String> getReactionIds() {
+        return reactions;
+    }
+
+    /** Get the dictionary index of a reaction.
+     * @param id the reaction or biomass id, e.g. rxn00148_c0 or bio1.
+     * @return the index, or -1 if no solution carries the reaction.
+     */
+    public int getReactionIndex(String id) {
+        Integer r = reactionIndex.get(id);
+        return r == null ? -1 : r;
+    }
+
+    /** Get the number of dictionary entries stored for a solution. Entries
+     * at or past this index were added to the dictionary by later solutions
+     * and are absent from this one.
+     * @param solution the solution index.
+     * @return the width of the solution's columns.
+     */
+    public int getWidth(int solution) {
+        return widths[solution];
+    }
+
+    private ByteBuffer segment(int solution) {
+        ByteBuffer[] segs = segments;
+        if (segs == null) {
+            throw new IllegalStateException("The snapshot is closed");
+        }
+        return segs[segmentOf[solution]];
+    }
+
+    /** Get a value of a solution.
+     * @param solution the solution index.
+     * @param column the column.
+     * @param reaction the dictionary index of the reaction.
+     * @return the value, or NaN if the solution does not carry the reaction.
+     */
+    public double get(int solution, Column column, int reaction) {
+        int w = widths[solution];
+        if (reaction < 0 || reaction >= w) {
+            return Double.NaN;
+        }
+        return segment(solution).getDouble(positions[solution] + (column.ordinal() * w + reaction) * 8);
+    }
+
+    /** Get the flux through a reaction in a solution.
+     * @param solution the solution index.
+     * @param reactionId the reaction or biomass id.
+     * @return the flux, or NaN if the solution does not carry the reaction.
+     */
+    public double getFlux(int solution, String reactionId) {
+        return get(solution, Column.VALUE, getReactionIndex(reactionId));
+    }
+
+    /** Get a column of a solution as a view of the mapped file, without
+     * copying. The view holds {@link #getWidth(int)} values in dictionary
+     * order.
+     * @param solution the solution index.
+     * @param column the column.
+     * @return a read-only view of the column.
+     */
+    public DoubleBuffer getColumn(int solution, Column column) {
+        int w = widths[solution];
+        ByteBuffer b = segment(solution).duplicate();
+        int start = positions[solution] + column.ordinal() * w * 8;
+        b.position(start);
+        b.limit(start + w * 8);
+        return b.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    /** Copies a column of a solution into an array indexed by the whole
+     * dictionary, with NaN for the reactions the solution does not carry.
+     * @param solution the solution index.
+     * @param column the column.
+     * @param target an array of at least {@link #getReactionCount()} values,
+     * or null to allocate one.
+     * @return the target.
+     */
+    public double[] copyColumn(int solution, Column column, double[] target) {
+        if (target == null) {
+            target = new double[reactions.size()];
+        }
+        DoubleBuffer col = getColumn(solution, column);
+        int w = col.remaining();
+        col.get(target, 0, w);
+        Arrays.fill(target, w, reactions.size(), Double.NaN);
+        return target;
+    }
+
+    /** Get the variable class of a reaction in a solution, e.g. Positive or
+     * Blocked.
+     * @param solution the solution index.
+     * @param reaction the dictionary index of the reaction.
+     * @return the class, or null if it is unknown or the solution does not
+     * carry the reaction.
+     */
+    public String getVariableClass(int solution, int reaction) {
+        int w = widths[solution];
+        if (reaction < 0 || reaction >= w) {
+            return null;
+        }
+        int c = segment(solution).get(positions[solution] + Column.values().length * w * 8 + reaction) & 0xff;
+        return c == NO_CLASS ? null : classes.get(c);
+    }
+
+    /** Releases the snapshot. Buffers returned by {@link #getColumn} stay
+     * readable until they are unreachable.
+     */
+    @Override
+    public void close() {
+        segments = null;
+    }
+
+    @Override
+    public String toString() {
+        return "FbaSnapshot [path=" + path + ", solutions=" + solutionIds.length + ", reactions=" +
+                reactions.size() + "]";
+    }
+
+    /** Writes a snapshot one solution at a time. A writer is not thread
+     * safe.
+     */
+    public static class Writer implements Closeable {
+        private final Path path;
+        private final FileChannel channel;
+        private final List<String> reactions = new ArrayList<String>();
+        private final Map<String, Integer> reactionIndex = new HashMap<String, Integer>();
+        private final List<String> classes = new ArrayList<String>();
+        private final Map<String, Integer> solutionIndex = new HashMap<String, Integer>();
+        private final List<String> solutionIds = new ArrayList<String>();
+        private double[] objectives = new double[64];
+        private long[] offsets = new long[64];
+        private int[] widths = new int[64];
+        private long position = HEADER;
+        // the block being built, indexed by the dictionary
+        private double[][] columns = new double[Column.values().length][0];
+        private byte[] classColumn = new byte[0];
+        private ByteBuffer buf = ByteBuffer.allocate(0);
+
+        Writer(Path path) throws IOException {
+            this.path = path;
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(0);
+            header.flip();
+            write(header);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /** Adds the reaction and biomass variables of an FBA object.
+         * @param id the solution id, unique in the snapshot.
+         * @param fba the FBA object.
+         * @return this writer.
+         * @throws IOException if the snapshot cannot be written.
+         */
+        public Writer add(String id, FbaResult fba) throws IOException {
+            begin(id);
+            for (FbaResult.Variable v : fba.getReactionVariables()) {
+                set(v.getEntityId(), v.getValue(), v.getMin(), v.getMax(), v.getLowerBound(), v.getUpperBound(),
+                        v.getVariableClass());
+            }
+            for (FbaResult.Variable v : fba.getBiomassVariables()) {
+                set(v.getEntityId(), v.getValue(), v.getMin(), v.getMax(), v.getLowerBound(), v.getUpperBound(),
+                        v.getVariableClass());
+            }
+            return end(id, fba.getObjectiveValue());
+        }
+
+        /** Adds the reaction and biomass variables of a local solution.
+         * @param id the solution id, unique in the snapshot.
+         * @param solution the solution.
+         * @return this writer.
+         * @throws IOException if the snapshot cannot be written.
+         */
+        public Writer add(String id, FbaSolution solution) throws IOException {
+            begin(id);
+            FbaProblem problem = solution.getProblem();
+            for (int j = 0; j < problem.getVariableCount(); j++) {
+                FbaProblem.VariableType type = problem.getVariableType(j);
+                if (type == FbaProblem.VariableType.FLUX || type == FbaProblem.VariableType.BIOMASS_FLUX) {
+                    set(problem.getVariableId(j), solution.getValue(j), solution.getMin(j), solution.getMax(j),
+                            problem.getLowerBound(j), problem.getUpperBound(j),
+                            solution.hasVariability() ? solution.getVariableClass(j) : null);
+                }
+            }
+            return end(id, solution.getObjectiveValue());
+        }
+
+        /** Adds a flux vector of a local program, such as a sample of its
+         * solution space from a {@link FluxSampler}. The min and max of the
+         * variables are left unknown.
+         * @param id the solution id, unique in the snapshot.
+         * @param problem the program.
+         * @param values the value of every variable of the program.
+         * @param objectiveValue the objective value, or NaN if unknown.
+         * @return this writer.
+         * @throws IOException if the snapshot cannot be written.
+         */
+        public Writer add(String id, FbaProblem problem, double[] values, double objectiveValue)
+                throws IOException {
+            begin(id);
+            for (int j = 0; j < problem.getVariableCount(); j++) {
+                FbaProblem.VariableType type = problem.getVariableType(j);
+                if (type == FbaProblem.VariableType.FLUX || type == FbaProblem.VariableType.BIOMASS_FLUX) {
+                    set(problem.getVariableId(j), values[j], Double.NaN, Double.NaN, problem.getLowerBound(j),
+                            problem.getUpperBound(j), null);
+                }
+            }
+            return end(id, objectiveValue);
+        }
+
+        /** Adds a reactions table written by fba_to_tsv_file. The table
+         * carries no objective value or variable classes, which are left
+         * unknown.
+         * @param id the solution id, unique in the snapshot.
+         * @param reactionsFile the reactions table.
+         * @return this writer.
+         * @throws IOException if the table cannot be read or the snapshot
+         * cannot be written.
+         */
+        public Writer addTsv(String id, Path reactionsFile) throws IOException {
+            begin(id);
+            try (ModelTsv.RecordReader<ModelTsv.Reaction> r = ModelTsv.readReactions(reactionsFile)) {
+                for (ModelTsv.Reaction rxn = r.next(); rxn != null; rxn = r.next()) {
+                    set(rxn.getId(), nan(rxn.getFlux()), nan(rxn.getMinFlux()), nan(rxn.getMaxFlux()),
+                            nan(rxn.getLowerBound()), nan(rxn.getUpperBound()), null);
+                }
+            }
+            return end(id, Double.NaN);
+        }
+
+        /** Adds the output of fba_to_tsv_file, once its reactions file has
+         * been fetched to a local path, e.g. by {@link BlobTransfer}.
+         * @param id the solution id, unique in the snapshot.
+         * @param files the files.
+         * @return this writer.
+         * @throws IOException if the reactions file has no local path or
+         * cannot be read, or the snapshot cannot be written.
+         */
+        public Writer add(String id, FBATsvFiles files) throws IOException {
+            File reactionsFile = files.getReactionsFile();
+            if (reactionsFile == null || reactionsFile.getPath() == null) {
+                throw new IOException("The reactions file of " + id + " has no local path");
+            }
+            return addTsv(id, Paths.get(reactionsFile.getPath()));
+        }
+
+        private static double nan(Double d) {
+            return d == null ? Double.NaN : d;
+        }
+
+        private void begin(String id) {
+            if (id == null) {
+                throw new NullPointerException("id");
+            }
+            if (!channel.isOpen()) {
+                throw new IllegalStateException("The writer is closed");
+            }
+            if (solutionIndex.containsKey(id)) {
+                throw new IllegalArgumentException("Duplicate solution id " + id);
+            }
+            for (double[] col : columns) {
+                Arrays.fill(col, Double.NaN);
+            }
+            Arrays.fill(classColumn, (byte) NO_CLASS);
+        }
+
+        private void set(String reactionId, double value, double min, double max, double lower, double upper,
+                String variableClass) {
+            if (reactionId == null) {
+                return;
+            }
+            Integer r = reactionIndex.get(reactionId);
+            if (r == null) {
+                r = reactions.size();
+                reactions.add(reactionId);
+                reactionIndex.put(reactionId, r);
+                if (r == classColumn.length) {
+                    int n = Math.max(64, r * 2);
+                    for (int c = 0; c < columns.length; c++) {
+                        int old = columns[c].length;
+                        columns[c] = Arrays.copyOf(columns[c], n);
+                        Arrays.fill(columns[c], old, n, Double.NaN);
+                    }
+                    classColumn = Arrays.copyOf(classColumn, n);
+                    Arrays.fill(classColumn, r, n, (byte) NO_CLASS);
+                }
+            }
+            columns[Column.VALUE.ordinal()][r] = value;
+            columns[Column.MIN.ordinal()][r] = min;
+            columns[Column.MAX.ordinal()][r] = max;
+            columns[Column.LOWER_BOUND.ordinal()][r] = lower;
+            columns[Column.UPPER_BOUND.ordinal()][r] = upper;
+            classColumn[r] = classIndex(variableClass);
+        }
+
+        private byte classIndex(String variableClass) {
+            if (variableClass == null) {
+                return (byte) NO_CLASS;
+            }
+            int c = classes.indexOf(variableClass);
+            if (c < 0) {
+                if (classes.size() == NO_CLASS) {
+                    throw new IllegalArgumentException("Too many variable classes");
+                }
+                c = classes.size();
+                classes.add(variableClass);
+            }
+            return (byte) c;
+        }
+
+        private Writer end(String id, double objectiveValue) throws IOException {
+            int w = reactions.size();
+            int size = blockSize(w);
+            if (buf.capacity() < size) {
+                buf = ByteBuffer.allocate(Math.max(size, buf.capacity() * 2));
+            }
+            buf.clear();
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            for (double[] col : columns) {
+                buf.asDoubleBuffer().put(col, 0, w);
+                buf.position(buf.position() + w * 8);
+            }
+            buf.put(classColumn, 0, w);
+            while (buf.position() < size) {
+                buf.put((byte) 0);
+            }
+            buf.flip();
+            write(buf);
+            int s = solutionIds.size();
+            if (s == offsets.length) {
+                objectives = Arrays.copyOf(objectives, s * 2);
+                offsets = Arrays.copyOf(offsets, s * 2);
+                widths = Arrays.copyOf(widths, s * 2);
+            }
+            objectives[s] = objectiveValue;
+            offsets[s] = position;
+            widths[s] = w;
+            solutionIds.add(id);
+            solutionIndex.put(id, s);
+            position += size;
+            return this;
+        }
+
+        private void write(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+
+        /** Writes the footer and closes the file. A writer that fails
+         * before it is closed leaves an incomplete snapshot, which
+         * {@link FbaSnapshot#open(Path)} rejects.
+         * @throws IOException if the footer cannot be written.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                List<byte[]> ids = utf8(solutionIds);
+                List<byte[]> rxns = utf8(reactions);
+                List<byte[]> cls = utf8(classes);
+                int size = 12 + TRAILER;
+                for (List<byte[]> l : Arrays.asList(ids, rxns, cls)) {
+                    for (byte[] b : l) {
+                        size += 4 + b.length;
+                    }
+                }
+                size += ids.size() * 20;
+                ByteBuffer f = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+                putStrings(f, rxns);
+                putStrings(f, cls);
+                f.putInt(ids.size());
+                for (int s = 0; s < ids.size(); s++) {
+                    f.putInt(ids.get(s).length).put(ids.get(s));
+                    f.putDouble(objectives[s]).putLong(offsets[s]).putInt(widths[s]);
+                }
+                f.putLong(position).putInt(MAGIC).putInt(VERSION);
+                f.flip();
+                write(f);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private static List<byte[]> utf8(List<String> strings) {
+            List<byte[]> ret = new ArrayList<byte[]>(strings.size());
+            for (String s : strings) {
+                ret.add(s.getBytes(StandardCharsets.UTF_8));
+            }
+            return ret;
+        }
+
+        private static void putStrings(ByteBuffer f, List<byte[]> strings) {
+            f.putInt(strings.size());
+            for (byte[] b : strings) {
+                f.putInt(b.length).put(b);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The solution of an {@link FbaProblem}, with the variables shaped like
+ * the FBAReactionVariables, FBABiomassVariables and FBACompoundVariables of
+ * an FBA object.</p>
+ * <p>A solution from a {@link FluxVariabilityAnalysis} also carries the
+ * range of every variable, reported as the min and max of the variables
+ * together with the class the service derives from them. A solution of a
+ * program with simulate_ko carries the FBADeletionResults of the single gene
+ * knockouts.</p>
+ */
+public class FbaSolution {
+    // fluxes below this are reported as zero, as the service does
+    private static final double ZERO_FLUX = 1e-9;
+
+    private final FbaProblem problem;
+    private final SimplexSolver.Status status;
+    private final double objectiveValue;
+    private final double[] values;
+    private final double[] lower;
+    private final double[] upper;
+    private double[] min = null;
+    private double[] max = null;
+    private List<FBADeletionResult> deletionResults = null;
+
+    FbaSolution(FbaProblem problem, SimplexSolver.Status status, double objectiveValue, double[] values,
+            double[] lower, double[] upper) {
+        this.problem = problem;
+        this.status = status;
+        this.objectiveValue = objectiveValue;
+        this.values = values;
+        this.lower = lower;
+        this.upper = upper;
+        for (int j = 0; j < values.length; j++) {
+            if (Math.abs(values[j]) < ZERO_FLUX) {
+                values[j] = 0;
+            }
+        }
+    }
+
+    // sets the variability found by an FVA
+    void setVariability(double[] min, double[] max) {
+        for (int j = 0; j < min.length; j++) {
+            if (Math.abs(min[j]) < ZERO_FLUX) {
+                min[j] = 0;
+            }
+            if (Math.abs(max[j]) < ZERO_FLUX) {
+                max[j] = 0;
+            }
+        }
+        this.min = min;
+        this.max = max;
+    }
+
+    void setDeletionResults(List<FBADeletionResult> deletionResults) {
+        this.deletionResults = deletionResults;
+    }
+
+    public FbaProblem getProblem() {
+        return problem;
+    }
+
+    public SimplexSolver.Status getStatus() {
+        return status;
+    }
+
+    /** Check whether the program was solved to optimality.
+     * @return true if optimal.
+     */
+    public boolean isOptimal() {
+        return status == SimplexSolver.Status.OPTIMAL;
+    }
+
+    /** Get the optimal value of the objective, e.g. the growth rate.
+     * @return the objective value, or 0 if the program was not solved.
+     */
+    public double getObjectiveValue() {
+        return objectiveValue;
+    }
+
+    /** Get the value of a variable.
+     * @param j the variable.
+     * @return the value.
+     */
+    public double getValue(int j) {
+        return values[j];
+    }
+
+    /** Get the values of all variables.
+     * @return a copy of the values.
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    /** Get the flux through a model or biomass reaction.
+     * @param id the reaction id.
+     * @return the flux.
+     * @throws IllegalArgumentException if there is no such reaction.
+     */
+    public double getFlux(String id) {
+        int j = problem.getReactionVariable(id);
+        if (j < 0) {
+            j = problem.getBiomassVariable(id);
+        }
+        if (j < 0) {
+            throw new IllegalArgumentException("No reaction " + id);
+        }
+        return values[j];
+    }
+
+    /** Get the drain flux of a compound, positive for uptake.
+     * @param compoundId the model compound id.
+     * @return the drain flux, or 0 if the compound has no drain.
+     */
+    public double getDrainFlux(String compoundId) {
+        int j = problem.getDrainVariable(compoundId);
+        return j < 0 ? 0 : values[j];
+    }
+
+    /** Check whether this solution carries the variability of its variables.
+     * @return true if it comes from a flux variability analysis.
+     */
+    public boolean hasVariability() {
+        return min != null;
+    }
+
+    /** Get the minimal value of a variable over the solutions reaching the
+     * objective fraction.
+     * @param j the variable.
+     * @return the minimum, or the lower bound without variability, or NaN if
+     * that solve failed.
+     */
+    public double getMin(int j) {
+        return min == null ? lower[j] : min[j];
+    }
+
+    /** Get the maximal value of a variable over the solutions reaching the
+     * objective fraction.
+     * @param j the variable.
+     * @return the maximum, or the upper bound without variability, or NaN if
+     * that solve failed.
+     */
+    public double getMax(int j) {
+        return max == null ? upper[j] : max[j];
+    }
+
+    /** Get the class of a variable from its variability, as the service
+     * assigns it: Positive, Negative, Positive variable, Negative variable,
+     * Blocked or Variable.
+     * @param j the variable.
+     * @return the class, or "unknown" without variability.
+     */
+    public String getVariableClass(int j) {
+        if (min == null || Double.isNaN(min[j]) || Double.isNaN(max[j])) {
+            return "unknown";
+        }
+        if (min[j] > 0) {
+            return "Positive";
+        } else if (max[j] < 0) {
+            return "Negative";
+        } else if (min[j] == 0 && max[j] > 0) {
+            return "Positive variable";
+        } else if (max[j] == 0 && min[j] < 0) {
+            return "Negative variable";
+        } else if (max[j] == 0 && min[j] == 0) {
+            return "Blocked";
+        }
+        return "Variable";
+    }
+
+    /** Get the model reaction variables.
+     * @return one variable per model reaction.
+     */
+    public List<FBAReactionVariable> getReactionVariables() {
+        List<FBAReactionVariable> ret = new ArrayList<FBAReactionVariable>();
+        for (int j = 0; j < values.length; j++) {
+            if (problem.getVariableType(j) == FbaProblem.VariableType.FLUX) {
+                ret.add(new FBAReactionVariable()
+                        .withModelreactionRef("~/fbamodel/modelreactions/id/" + problem.getVariableId(j))
+                        .withVariableType(FbaProblem.VariableType.FLUX.getLabel())
+                        .withLowerBound(lower[j]).withUpperBound(upper[j])
+                        .withMin(getMin(j)).withMax(getMax(j)).withValue(values[j]).withClass_(getVariableClass(j)));
+            }
+        }
+        return ret;
+    }
+
+    /** Get the biomass reaction variables.
+     * @return one variable per biomass reaction.
+     */
+    public List<FBABiomassVariable> getBiomassVariables() {
+        List<FBABiomassVariable> ret = new ArrayList<FBABiomassVariable>();
+        for (int j = 0; j < values.length; j++) {
+            if (problem.getVariableType(j) == FbaProblem.VariableType.BIOMASS_FLUX) {
+                ret.add(new FBABiomassVariable()
+                        .withBiomassRef("~/fbamodel/biomasses/id/" + problem.getVariableId(j))
+                        .withVariableType(FbaProblem.VariableType.BIOMASS_FLUX.getLabel())
+                        .withLowerBound(lower[j]).withUpperBound(upper[j])
+                        .withMin(getMin(j)).withMax(getMax(j)).withValue(values[j]).withClass_(getVariableClass(j)));
+            }
+        }
+        return ret;
+    }
+
+    /** Get the compound drain variables.
+     * @return one variable per drained compound.
+     */
+    public List<FBACompoundVariable> getCompoundVariables() {
+        List<FBACompoundVariable> ret = new ArrayList<FBACompoundVariable>();
+        for (int j = 0; j < values.length; j++) {
+            if (problem.getVariableType(j) == FbaProblem.VariableType.DRAIN_FLUX) {
+                ret.add(new FBACompoundVariable()
+                        .withModelcompoundRef("~/fbamodel/modelcompounds/id/" + problem.getVariableId(j))
+                        .withVariableType(FbaProblem.VariableType.DRAIN_FLUX.getLabel())
+                        .withLowerBound(lower[j]).withUpperBound(upper[j])
+                        .withMin(getMin(j)).withMax(getMax(j)).withValue(values[j]).withClass_(getVariableClass(j)));
+            }
+        }
+        return ret;
+    }
+
+    /** Get the knockout results of a program with simulate_ko.
+     * @return the results, or an empty list if no knockouts were simulated.
+     */
+    public List<FBADeletionResult> getDeletionResults() {
+        return deletionResults == null ? new ArrayList<FBADeletionResult>() : deletionResults;
+    }
+
+    @Override
+    public String toString() {
+        return "FbaSolution [status=" + status + ", objective=" + problem.getObjectiveId() + ", objectiveValue=" +
+                objectiveValue + "]";
+    }
+}
@@ -0,0 +1,1029 @@
+package us.kbase.fbatools;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import us.kbase.auth.AuthToken;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.RpcContext;
+import us.kbase.common.service.UnauthorizedException;
+
+/**
+ * <p>Non-blocking counterpart of {@link FbaToolsClient}.</p>
+ * <p>Every method starts the call and immediately returns a
+ * {@link CompletableFuture} that completes with the same result the blocking
+ * client would have returned, or exceptionally with the
+ * {@link IOException} or {@link JsonClientException} it would have thrown.
+ * Calls go over a shared {@link HttpClient}, so no thread is held while a
+ * call is in flight. The number of calls in flight at once can be capped
+ * with {@link #setMaxConcurrentCalls(int)}; calls over the cap are queued
+ * without occupying a thread.</p>
+ * <p>With {@link #setInFlightDeduplication(boolean)} on, a call to one of
+ * the {@link #setDeduplicatedMethods(Collection) deduplicated methods} that
+ * is identical to a call already in flight from this client (same method,
+ * canonically equal parameters, same token and service version) does not
+ * go to the service but shares the result of the call in flight.</p>
+ */
+public class FbaToolsAsyncClient {
+    private final URL url;
+    private final URI uri;
+    private final AuthToken token;
+    private final HttpClient http;
+    private AsyncCallLimiter limiter = new AsyncCallLimiter(0);
+    private Duration requestTimeout = null;
+    private boolean insecureHttpConnectionAllowed = false;
+    private String serviceVersion = null;
+    private final SingleFlight<String, Object> inFlight = new SingleFlight<String, Object>();
+    private boolean inFlightDeduplication = false;
+    private Set<String> deduplicatedMethods = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+            "fba_tools.run_flux_balance_analysis", "fba_tools.gapfill_metabolic_model")));
+
+    /** Constructs a client with a custom URL and no user credentials.
+     * @param url the URL of the service.
+     */
+    public FbaToolsAsyncClient(URL url) {
+        this(url, null, HttpClient.newBuilder().build());
+    }
+
+    /** Constructs a client with a custom URL.
+     * @param url the URL of the service.
+     * @param token the user's authorization token.
+     */
+    public FbaToolsAsyncClient(URL url, AuthToken token) {
+        this(url, token, HttpClient.newBuilder().build());
+    }
+
+    /** Constructs a client with a custom URL and HTTP transport.
+     * @param url the URL of the service.
+     * @param token the user's authorization token, or null.
+     * @param http the HTTP client used to send requests. It may be shared
+     * between several clients.
+     */
+    public FbaToolsAsyncClient(URL url, AuthToken token, HttpClient http) {
+        this.url = url;
+        this.token = token;
+        this.http = http;
+        try {
+            this.uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid service URL: " + url, e);
+        }
+    }
+
+    /** Get the token this client uses to communicate with the server.
+     * @return the authorization token.
+     */
+    public AuthToken getToken() {
+        return token;
+    }
+
+    /** Get the URL of the service with which this client communicates.
+     * @return the service URL.
+     */
+    public URL getURL() {
+        return url;
+    }
+
+    /** Set the maximum number of calls this client keeps in flight at once.
+     * Calls made while the limit is reached wait in a queue without holding
+     * a thread. Calls already started are not affected.
+     * @param maxConcurrentCalls the limit; zero or less means no limit.
+     */
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+        this.limiter = new AsyncCallLimiter(maxConcurrentCalls);
+    }
+
+    /** Share a limiter between several clients, so that the limit applies to
+     * all of them together.
+     * @param limiter the limiter.
+     */
+    public void setCallLimiter(AsyncCallLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    public AsyncCallLimiter getCallLimiter() {
+        return limiter;
+    }
+
+    /** Set the time to wait for a response to each call. A value of zero or
+     * null implies no timeout.
+     * @param milliseconds the milliseconds to wait for a response.
+     */
+    public void setConnectionReadTimeOut(Integer milliseconds) {
+        this.requestTimeout = (milliseconds == null || milliseconds <= 0) ? null : Duration.ofMillis(milliseconds);
+    }
+
+    /** Check if this client allows insecure http (vs https) connections.
+     * @return true if insecure connections are allowed.
+     */
+    public boolean isInsecureHttpConnectionAllowed() {
+        return insecureHttpConnectionAllowed;
+    }
+
+    /** Set whether insecure http (vs https) connections should be allowed by
+     * this client.
+     * @param allowed true to allow insecure connections. Default false
+     */
+    public void setIsInsecureHttpConnectionAllowed(boolean allowed) {
+        this.insecureHttpConnectionAllowed = allowed;
+    }
+
+    public String getServiceVersion() {
+        return this.serviceVersion;
+    }
+
+    public void setServiceVersion(String newValue) {
+        this.serviceVersion = newValue;
+    }
+
+    /** Set whether identical concurrent calls of the deduplicated methods
+     * share one call to the service. Default false.
+     * @param deduplicate true to share identical calls in flight.
+     */
+    public void setInFlightDeduplication(boolean deduplicate) {
+        this.inFlightDeduplication = deduplicate;
+    }
+
+    public boolean isInFlightDeduplication() {
+        return inFlightDeduplication;
+    }
+
+    /** Set the methods subject to in-flight deduplication. By default these
+     * are run_flux_balance_analysis and gapfill_metabolic_model.
+     * @param methods the fully qualified method names, e.g.
+     * fba_tools.run_flux_balance_analysis.
+     */
+    public void setDeduplicatedMethods(Collection<String> methods) {
+        this.deduplicatedMethods = Collections.unmodifiableSet(new HashSet<String>(methods));
+    }
+
+    public Set<String> getDeduplicatedMethods() {
+        return deduplicatedMethods;
+    }
+
+    /** Get the in-flight call registry used for deduplication, e.g. to read
+     * how many calls were collapsed.
+     * @return the registry.
+     */
+    public SingleFlight<String, Object> getInFlightCalls() {
+        return inFlight;
+    }
+
+    /** Makes a call to the service.
+     * @param method the fully qualified method name.
+     * @param args the positional arguments.
+     * @param retType the type of the result list.
+     * @param authRequired true if the call must carry the user's token.
+     * @param jsonRpcContext the optional call context.
+     * @return a future completing with the result list.
+     */
+    protected <RET> CompletableFuture<RET> call(final String method, final List<Object> args,
+            final TypeReference<RET> retType, final boolean authRequired, final RpcContext... jsonRpcContext) {
+        if (!inFlightDeduplication || !deduplicatedMethods.contains(method)) {
+            return limiter.submit(() -> send(method, args, retType, authRequired, jsonRpcContext));
+        }
+        String key = ParamsHasher.hash(method, args, serviceVersion, token == null ? null : token.getToken());
+        @SuppressWarnings("unchecked")
+        CompletableFuture<RET> ret = (CompletableFuture<RET>) (CompletableFuture<?>) inFlight.execute(key,
+                () -> (CompletableFuture<Object>) (CompletableFuture<?>)
+                        limiter.submit(() -> send(method, args, retType, authRequired, jsonRpcContext)));
+        return ret;
+    }
+
+    private <RET> CompletableFuture<RET> send(String method, List<Object> args,
+            final TypeReference<RET> retType, boolean authRequired, RpcContext[] jsonRpcContext) {
+        final byte[] body;
+        try {
+            body = JsonRpcCodec.encode(JsonRpcCodec.request(method, args,
+                    JsonRpcCodec.newCallId(), jsonRpcContext, serviceVersion));
+        } catch (IOException e) {
+            return failed(e);
+        }
+        return post(body, authRequired).thenApply(resp -> {
+            try {
+                return JsonRpcCodec.result(resp, retType);
+            } catch (JsonClientException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /** Posts an already encoded request body to the service, bypassing the
+     * call limiter.
+     * @param body the request body.
+     * @param authRequired true if the request must carry the user's token.
+     * @return a future completing with the parsed response body.
+     */
+    CompletableFuture<JsonNode> post(byte[] body, boolean authRequired) {
+        HttpRequest request;
+        try {
+            request = buildRequest(body, authRequired);
+        } catch (JsonClientException e) {
+            return failed(e);
+        }
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).thenApply(resp -> {
+            try {
+                return JsonRpcCodec.parse(resp.statusCode(), resp.body());
+            } catch (JsonClientException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> ret = new CompletableFuture<T>();
+        ret.completeExceptionally(e);
+        return ret;
+    }
+
+    private HttpRequest buildRequest(byte[] body, boolean authRequired) throws JsonClientException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        if (token != null) {
+            if ("http".equals(uri.getScheme()) && !insecureHttpConnectionAllowed) {
+                throw new UnauthorizedException("RPC method required authentication shouldn't be called through unsecured http, " +
+                        "use https instead or call setIsInsecureHttpConnectionAllowed(true) for your client");
+            }
+            builder.header("Authorization", token.getToken());
+        } else if (authRequired) {
+            throw new UnauthorizedException("RPC method requires authentication but credential is null");
+        }
+        return builder.build();
+    }
+
+    /** Starts a batch of calls to be sent to the service in one JSON-RPC
+     * 2.0 batch request.
+     * @return a new, empty batch.
+     */
+    public FbaToolsBatch newBatch() {
+        return new FbaToolsBatch(this);
+    }
+
+    private static <T> CompletableFuture<T> first(CompletableFuture<List<T>> res) {
+        return res.thenApply(list -> list.get(0));
+    }
+
+    /**
+     * <p>Original spec-file function name: build_metabolic_model</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildMetabolicModelParams BuildMetabolicModelParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.BuildMetabolicModelResults BuildMetabolicModelResults}
+     */
+    public CompletableFuture<BuildMetabolicModelResults> buildMetabolicModel(BuildMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMetabolicModelResults>> retType = new TypeReference<List<BuildMetabolicModelResults>>() {};
+        return first(call("fba_tools.build_metabolic_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: characterize_genome_metabolism_using_model</p>
+     * <pre>
+     * Builds a model and characterizes an input genome using the model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CharacterizeGenomeUsingModelParams CharacterizeGenomeUsingModelParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.CharacterizeGenomeUsingModelResults CharacterizeGenomeUsingModelResults}
+     */
+    public CompletableFuture<CharacterizeGenomeUsingModelResults> characterizeGenomeMetabolismUsingModel(CharacterizeGenomeUsingModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CharacterizeGenomeUsingModelResults>> retType = new TypeReference<List<CharacterizeGenomeUsingModelResults>>() {};
+        return first(call("fba_tools.characterize_genome_metabolism_using_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: run_model_characterization</p>
+     * <pre>
+     * Builds a model and characterizes an input genome using the model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.RunModelCharacterizationParams RunModelCharacterizationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.RunModelCharacterizationResults RunModelCharacterizationResults}
+     */
+    public CompletableFuture<RunModelCharacterizationResults> runModelCharacterization(RunModelCharacterizationParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunModelCharacterizationResults>> retType = new TypeReference<List<RunModelCharacterizationResults>>() {};
+        return first(call("fba_tools.run_model_characterization", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: build_plant_metabolic_model</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildPlantMetabolicModelParams BuildPlantMetabolicModelParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.BuildPlantMetabolicModelResults BuildPlantMetabolicModelResults}
+     */
+    public CompletableFuture<BuildPlantMetabolicModelResults> buildPlantMetabolicModel(BuildPlantMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildPlantMetabolicModelResults>> retType = new TypeReference<List<BuildPlantMetabolicModelResults>>() {};
+        return first(call("fba_tools.build_plant_metabolic_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: build_multiple_metabolic_models</p>
+     * <pre>
+     * Build multiple genome-scale metabolic models based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildMultipleMetabolicModelsParams BuildMultipleMetabolicModelsParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.BuildMultipleMetabolicModelsResults BuildMultipleMetabolicModelsResults}
+     */
+    public CompletableFuture<BuildMultipleMetabolicModelsResults> buildMultipleMetabolicModels(BuildMultipleMetabolicModelsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMultipleMetabolicModelsResults>> retType = new TypeReference<List<BuildMultipleMetabolicModelsResults>>() {};
+        return first(call("fba_tools.build_multiple_metabolic_models", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: gapfill_metabolic_model</p>
+     * <pre>
+     * Gapfills a metabolic model to induce flux in a specified reaction
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.GapfillMetabolicModelParams GapfillMetabolicModelParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.GapfillMetabolicModelResults GapfillMetabolicModelResults}
+     */
+    public CompletableFuture<GapfillMetabolicModelResults> gapfillMetabolicModel(GapfillMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<GapfillMetabolicModelResults>> retType = new TypeReference<List<GapfillMetabolicModelResults>>() {};
+        return first(call("fba_tools.gapfill_metabolic_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: run_flux_balance_analysis</p>
+     * <pre>
+     * Run flux balance analysis and return ID of FBA object with results
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.RunFluxBalanceAnalysisParams RunFluxBalanceAnalysisParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.RunFluxBalanceAnalysisResults RunFluxBalanceAnalysisResults}
+     */
+    public CompletableFuture<RunFluxBalanceAnalysisResults> runFluxBalanceAnalysis(RunFluxBalanceAnalysisParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunFluxBalanceAnalysisResults>> retType = new TypeReference<List<RunFluxBalanceAnalysisResults>>() {};
+        return first(call("fba_tools.run_flux_balance_analysis", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: compare_fba_solutions</p>
+     * <pre>
+     * Compares multiple FBA solutions and saves comparison as a new object in the workspace
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CompareFBASolutionsParams CompareFBASolutionsParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.CompareFBASolutionsResults CompareFBASolutionsResults}
+     */
+    public CompletableFuture<CompareFBASolutionsResults> compareFbaSolutions(CompareFBASolutionsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CompareFBASolutionsResults>> retType = new TypeReference<List<CompareFBASolutionsResults>>() {};
+        return first(call("fba_tools.compare_fba_solutions", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: lookup_modelseed_ids</p>
+     * <pre>
+     * Attempts to map peaks in the input metabolomics matrix to compounds in the ModelSEED database
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.LookupModelSEEDIDsParams LookupModelSEEDIDsParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.LookupModelSEEDIDsResults LookupModelSEEDIDsResults}
+     */
+    public CompletableFuture<LookupModelSEEDIDsResults> lookupModelseedIds(LookupModelSEEDIDsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<LookupModelSEEDIDsResults>> retType = new TypeReference<List<LookupModelSEEDIDsResults>>() {};
+        return first(call("fba_tools.lookup_modelseed_ids", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: propagate_model_to_new_genome</p>
+     * <pre>
+     * Translate the metabolic model of one organism to another, using a mapping of similar proteins between their genomes
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.PropagateModelToNewGenomeParams PropagateModelToNewGenomeParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.PropagateModelToNewGenomeResults PropagateModelToNewGenomeResults}
+     */
+    public CompletableFuture<PropagateModelToNewGenomeResults> propagateModelToNewGenome(PropagateModelToNewGenomeParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<PropagateModelToNewGenomeResults>> retType = new TypeReference<List<PropagateModelToNewGenomeResults>>() {};
+        return first(call("fba_tools.propagate_model_to_new_genome", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: simulate_growth_on_phenotype_data</p>
+     * <pre>
+     * Use Flux Balance Analysis (FBA) to simulate multiple growth phenotypes.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.SimulateGrowthOnPhenotypeDataParams SimulateGrowthOnPhenotypeDataParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.SimulateGrowthOnPhenotypeDataResults SimulateGrowthOnPhenotypeDataResults}
+     */
+    public CompletableFuture<SimulateGrowthOnPhenotypeDataResults> simulateGrowthOnPhenotypeData(SimulateGrowthOnPhenotypeDataParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<SimulateGrowthOnPhenotypeDataResults>> retType = new TypeReference<List<SimulateGrowthOnPhenotypeDataResults>>() {};
+        return first(call("fba_tools.simulate_growth_on_phenotype_data", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: merge_metabolic_models_into_community_model</p>
+     * <pre>
+     * Merge two or more metabolic models into a compartmentalized community model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.MergeMetabolicModelsIntoCommunityModelParams MergeMetabolicModelsIntoCommunityModelParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.MergeMetabolicModelsIntoCommunityModelResults MergeMetabolicModelsIntoCommunityModelResults}
+     */
+    public CompletableFuture<MergeMetabolicModelsIntoCommunityModelResults> mergeMetabolicModelsIntoCommunityModel(MergeMetabolicModelsIntoCommunityModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<MergeMetabolicModelsIntoCommunityModelResults>> retType = new TypeReference<List<MergeMetabolicModelsIntoCommunityModelResults>>() {};
+        return first(call("fba_tools.merge_metabolic_models_into_community_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: view_flux_network</p>
+     * <pre>
+     * Merge two or more metabolic models into a compartmentalized community model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ViewFluxNetworkParams ViewFluxNetworkParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.ViewFluxNetworkResults ViewFluxNetworkResults}
+     */
+    public CompletableFuture<ViewFluxNetworkResults> viewFluxNetwork(ViewFluxNetworkParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ViewFluxNetworkResults>> retType = new TypeReference<List<ViewFluxNetworkResults>>() {};
+        return first(call("fba_tools.view_flux_network", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: compare_flux_with_expression</p>
+     * <pre>
+     * Merge two or more metabolic models into a compartmentalized community model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CompareFluxWithExpressionParams CompareFluxWithExpressionParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.CompareFluxWithExpressionResults CompareFluxWithExpressionResults}
+     */
+    public CompletableFuture<CompareFluxWithExpressionResults> compareFluxWithExpression(CompareFluxWithExpressionParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CompareFluxWithExpressionResults>> retType = new TypeReference<List<CompareFluxWithExpressionResults>>() {};
+        return first(call("fba_tools.compare_flux_with_expression", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: check_model_mass_balance</p>
+     * <pre>
+     * Identifies reactions in the model that are not mass balanced
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CheckModelMassBalanceParams CheckModelMassBalanceParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.CheckModelMassBalanceResults CheckModelMassBalanceResults}
+     */
+    public CompletableFuture<CheckModelMassBalanceResults> checkModelMassBalance(CheckModelMassBalanceParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CheckModelMassBalanceResults>> retType = new TypeReference<List<CheckModelMassBalanceResults>>() {};
+        return first(call("fba_tools.check_model_mass_balance", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: predict_auxotrophy</p>
+     * <pre>
+     * Identifies reactions in the model that are not mass balanced
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.PredictAuxotrophyParams PredictAuxotrophyParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.PredictAuxotrophyResults PredictAuxotrophyResults}
+     */
+    public CompletableFuture<PredictAuxotrophyResults> predictAuxotrophy(PredictAuxotrophyParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<PredictAuxotrophyResults>> retType = new TypeReference<List<PredictAuxotrophyResults>>() {};
+        return first(call("fba_tools.predict_auxotrophy", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: predict_metabolite_biosynthesis_pathway</p>
+     * <pre>
+     * Identifies reactions in the model that are not mass balanced
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.PredictMetaboliteBiosynthesisPathwayInput PredictMetaboliteBiosynthesisPathwayInput}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.PredictMetaboliteBiosynthesisPathwayResults PredictMetaboliteBiosynthesisPathwayResults}
+     */
+    public CompletableFuture<PredictMetaboliteBiosynthesisPathwayResults> predictMetaboliteBiosynthesisPathway(PredictMetaboliteBiosynthesisPathwayInput params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<PredictMetaboliteBiosynthesisPathwayResults>> retType = new TypeReference<List<PredictMetaboliteBiosynthesisPathwayResults>>() {};
+        return first(call("fba_tools.predict_metabolite_biosynthesis_pathway", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: build_metagenome_metabolic_model</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildMetagenomeMetabolicModelParams BuildMetagenomeMetabolicModelParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.BuildMetabolicModelResults BuildMetabolicModelResults}
+     */
+    public CompletableFuture<BuildMetabolicModelResults> buildMetagenomeMetabolicModel(BuildMetagenomeMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMetabolicModelResults>> retType = new TypeReference<List<BuildMetabolicModelResults>>() {};
+        return first(call("fba_tools.build_metagenome_metabolic_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: build_model_from_roles</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildModelFromRolesParams BuildModelFromRolesParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.BuildMetabolicModelResults BuildMetabolicModelResults}
+     */
+    public CompletableFuture<BuildMetabolicModelResults> buildModelFromRoles(BuildModelFromRolesParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMetabolicModelResults>> retType = new TypeReference<List<BuildMetabolicModelResults>>() {};
+        return first(call("fba_tools.build_model_from_roles", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: fit_exometabolite_data</p>
+     * <pre>
+     * Gapfills a metabolic model to fit input exometabolite data
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.FitExometaboliteDataParams FitExometaboliteDataParams}
+     * @return   a future completing with parameter "results" of type {@link us.kbase.fbatools.FitExometaboliteDataResults FitExometaboliteDataResults}
+     */
+    public CompletableFuture<FitExometaboliteDataResults> fitExometaboliteData(FitExometaboliteDataParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<FitExometaboliteDataResults>> retType = new TypeReference<List<FitExometaboliteDataResults>>() {};
+        return first(call("fba_tools.fit_exometabolite_data", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: compare_models</p>
+     * <pre>
+     * Compare models
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ModelComparisonParams ModelComparisonParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.ModelComparisonResult ModelComparisonResult}
+     */
+    public CompletableFuture<ModelComparisonResult> compareModels(ModelComparisonParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ModelComparisonResult>> retType = new TypeReference<List<ModelComparisonResult>>() {};
+        return first(call("fba_tools.compare_models", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: edit_metabolic_model</p>
+     * <pre>
+     * Edit models
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.EditMetabolicModelParams EditMetabolicModelParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.EditMetabolicModelResult EditMetabolicModelResult}
+     */
+    public CompletableFuture<EditMetabolicModelResult> editMetabolicModel(EditMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<EditMetabolicModelResult>> retType = new TypeReference<List<EditMetabolicModelResult>>() {};
+        return first(call("fba_tools.edit_metabolic_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: edit_media</p>
+     * <pre>
+     * Edit models
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.EditMediaParams EditMediaParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.EditMediaResult EditMediaResult}
+     */
+    public CompletableFuture<EditMediaResult> editMedia(EditMediaParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<EditMediaResult>> retType = new TypeReference<List<EditMediaResult>>() {};
+        return first(call("fba_tools.edit_media", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: excel_file_to_model</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.ModelCreationParams ModelCreationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public CompletableFuture<WorkspaceRef> excelFileToModel(ModelCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return first(call("fba_tools.excel_file_to_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: sbml_file_to_model</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.ModelCreationParams ModelCreationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public CompletableFuture<WorkspaceRef> sbmlFileToModel(ModelCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return first(call("fba_tools.sbml_file_to_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: tsv_file_to_model</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.ModelCreationParams ModelCreationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public CompletableFuture<WorkspaceRef> tsvFileToModel(ModelCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return first(call("fba_tools.tsv_file_to_model", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: model_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   model   instance of type {@link us.kbase.fbatools.ModelObjectSelectionParams ModelObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> modelToExcelFile(ModelObjectSelectionParams model, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(model);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.model_to_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: model_to_sbml_file</p>
+     * <pre>
+     * </pre>
+     * @param   model   instance of type {@link us.kbase.fbatools.ModelObjectSelectionParams ModelObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> modelToSbmlFile(ModelObjectSelectionParams model, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(model);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.model_to_sbml_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: model_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   model   instance of type {@link us.kbase.fbatools.ModelObjectSelectionParams ModelObjectSelectionParams}
+     * @return   a future completing with parameter "files" of type {@link us.kbase.fbatools.ModelTsvFiles ModelTsvFiles}
+     */
+    public CompletableFuture<ModelTsvFiles> modelToTsvFile(ModelObjectSelectionParams model, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(model);
+        TypeReference<List<ModelTsvFiles>> retType = new TypeReference<List<ModelTsvFiles>>() {};
+        return first(call("fba_tools.model_to_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_model_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportModelAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_model_as_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_model_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportModelAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_model_as_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_model_as_sbml_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportModelAsSbmlFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_model_as_sbml_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: fba_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   fba   instance of type {@link us.kbase.fbatools.FBAObjectSelectionParams FBAObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> fbaToExcelFile(FBAObjectSelectionParams fba, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(fba);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.fba_to_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: fba_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   fba   instance of type {@link us.kbase.fbatools.FBAObjectSelectionParams FBAObjectSelectionParams}
+     * @return   a future completing with parameter "files" of type {@link us.kbase.fbatools.FBATsvFiles FBATsvFiles}
+     */
+    public CompletableFuture<FBATsvFiles> fbaToTsvFile(FBAObjectSelectionParams fba, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(fba);
+        TypeReference<List<FBATsvFiles>> retType = new TypeReference<List<FBATsvFiles>>() {};
+        return first(call("fba_tools.fba_to_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_fba_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportFbaAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_fba_as_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_fba_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportFbaAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_fba_as_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: tsv_file_to_media</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.MediaCreationParams MediaCreationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public CompletableFuture<WorkspaceRef> tsvFileToMedia(MediaCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return first(call("fba_tools.tsv_file_to_media", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: excel_file_to_media</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.MediaCreationParams MediaCreationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public CompletableFuture<WorkspaceRef> excelFileToMedia(MediaCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return first(call("fba_tools.excel_file_to_media", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: media_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   media   instance of type {@link us.kbase.fbatools.MediaObjectSelectionParams MediaObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> mediaToTsvFile(MediaObjectSelectionParams media, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(media);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.media_to_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: media_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   media   instance of type {@link us.kbase.fbatools.MediaObjectSelectionParams MediaObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> mediaToExcelFile(MediaObjectSelectionParams media, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(media);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.media_to_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_media_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportMediaAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_media_as_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_media_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportMediaAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_media_as_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: tsv_file_to_phenotype_set</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.PhenotypeSetCreationParams PhenotypeSetCreationParams}
+     * @return   a future completing with instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public CompletableFuture<WorkspaceRef> tsvFileToPhenotypeSet(PhenotypeSetCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return first(call("fba_tools.tsv_file_to_phenotype_set", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: phenotype_set_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   phenotypeSet   instance of type {@link us.kbase.fbatools.PhenotypeSetObjectSelectionParams PhenotypeSetObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> phenotypeSetToTsvFile(PhenotypeSetObjectSelectionParams phenotypeSet, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(phenotypeSet);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.phenotype_set_to_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_phenotype_set_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportPhenotypeSetAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_phenotype_set_as_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: phenotype_simulation_set_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   pss   instance of type {@link us.kbase.fbatools.PhenotypeSimulationSetObjectSelectionParams PhenotypeSimulationSetObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> phenotypeSimulationSetToExcelFile(PhenotypeSimulationSetObjectSelectionParams pss, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(pss);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.phenotype_simulation_set_to_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: phenotype_simulation_set_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   pss   instance of type {@link us.kbase.fbatools.PhenotypeSimulationSetObjectSelectionParams PhenotypeSimulationSetObjectSelectionParams}
+     * @return   a future completing with parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public CompletableFuture<us.kbase.fbatools.File> phenotypeSimulationSetToTsvFile(PhenotypeSimulationSetObjectSelectionParams pss, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(pss);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return first(call("fba_tools.phenotype_simulation_set_to_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_phenotype_simulation_set_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportPhenotypeSimulationSetAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_phenotype_simulation_set_as_excel_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: export_phenotype_simulation_set_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public CompletableFuture<ExportOutput> exportPhenotypeSimulationSetAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return first(call("fba_tools.export_phenotype_simulation_set_as_tsv_file", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: bulk_export_objects</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BulkExportObjectsParams BulkExportObjectsParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.BulkExportObjectsResult BulkExportObjectsResult}
+     */
+    public CompletableFuture<BulkExportObjectsResult> bulkExportObjects(BulkExportObjectsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BulkExportObjectsResult>> retType = new TypeReference<List<BulkExportObjectsResult>>() {};
+        return first(call("fba_tools.bulk_export_objects", args, retType, true, jsonRpcContext));
+    }
+
+    /**
+     * <p>Original spec-file function name: run_fba_tools_tests</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.RunFbaToolsTestsParams RunFbaToolsTestsParams}
+     * @return   a future completing with parameter "output" of type {@link us.kbase.fbatools.RunFbaToolsTestsResult RunFbaToolsTestsResult}
+     */
+    public CompletableFuture<RunFbaToolsTestsResult> runFbaToolsTests(RunFbaToolsTestsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunFbaToolsTestsResult>> retType = new TypeReference<List<RunFbaToolsTestsResult>>() {};
+        return first(call("fba_tools.run_fba_tools_tests", args, retType, true, jsonRpcContext));
+    }
+
+    public CompletableFuture<Map<String, Object>> status(RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        TypeReference<List<Map<String, Object>>> retType = new TypeReference<List<Map<String, Object>>>() {};
+        return first(call("fba_tools.status", args, retType, false, jsonRpcContext));
+    }
+}
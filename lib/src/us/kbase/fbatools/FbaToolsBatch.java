@@ -0,0 +1,980 @@
+package us.kbase.fbatools;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.RpcContext;
+
+/**
+ * <p>Collects calls of any fba_tools methods and sends them to the service
+ * in a single JSON-RPC 2.0 batch request.</p>
+ * <p>Each method queues one call and returns a {@link Call} handle; nothing
+ * is sent until {@link #execute()} or {@link #executeAsync()} is called.
+ * Every call gets its own result or error, so one failing call does not
+ * affect the others. A batch can be executed only once. Batches are created
+ * with {@link FbaToolsAsyncClient#newBatch()} and use that client's
+ * credentials, service version and call limiter; the whole batch counts as
+ * one call against the limit.</p>
+ */
+public class FbaToolsBatch {
+    private final FbaToolsAsyncClient client;
+    private final List<Call<?>> calls = new ArrayList<Call<?>>();
+    private boolean authRequired = false;
+    private boolean executed = false;
+
+    FbaToolsBatch(FbaToolsAsyncClient client) {
+        this.client = client;
+    }
+
+    /** The handle of one call in a batch.
+     * @param <T> the type of the call's result.
+     */
+    public static class Call<T> {
+        private final String method;
+        private final String id;
+        private final Map<String, Object> request;
+        private final TypeReference<List<T>> retType;
+        private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        private Call(String method, String id, Map<String, Object> request, TypeReference<List<T>> retType) {
+            this.method = method;
+            this.id = id;
+            this.request = request;
+            this.retType = retType;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /** Get a future that completes when the batch response arrives.
+         * @return the future result of this call.
+         */
+        public CompletableFuture<T> getFuture() {
+            return future;
+        }
+
+        /** Check whether this call has completed with an error.
+         * @return true if the call failed.
+         */
+        public boolean isFailed() {
+            return future.isCompletedExceptionally();
+        }
+
+        /** Waits for the batch and returns the result of this call.
+         * @return the result of the call.
+         * @throws IOException if an IO exception occurs
+         * @throws JsonClientException if a JSON RPC exception occurs
+         */
+        public T get() throws IOException, JsonClientException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the batch response", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof JsonClientException) {
+                    throw (JsonClientException) cause;
+                }
+                throw new JsonClientException(cause.getMessage(), cause);
+            }
+        }
+
+        private void complete(JsonNode response) {
+            try {
+                List<T> res = JsonRpcCodec.result(response, retType);
+                future.complete(res == null || res.isEmpty() ? null : res.get(0));
+            } catch (JsonClientException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /** Get the number of calls queued in this batch.
+     * @return the number of calls.
+     */
+    public int size() {
+        return calls.size();
+    }
+
+    public List<Call<?>> getCalls() {
+        return new ArrayList<Call<?>>(calls);
+    }
+
+    /** Queues a call of an arbitrary method.
+     * @param method the fully qualified method name, e.g. fba_tools.status.
+     * @param args the positional arguments.
+     * @param retType the type of the result list.
+     * @param authRequired true if the call must carry the user's token.
+     * @param jsonRpcContext the optional call context.
+     * @return the handle of the queued call.
+     */
+    public synchronized <T> Call<T> add(String method, List<Object> args, TypeReference<List<T>> retType,
+            boolean authRequired, RpcContext... jsonRpcContext) {
+        if (executed) {
+            throw new IllegalStateException("This batch has already been executed");
+        }
+        String id = Integer.toString(calls.size());
+        Call<T> call = new Call<T>(method, id, JsonRpcCodec.batchEntry(method, args, id,
+                jsonRpcContext, client.getServiceVersion()), retType);
+        calls.add(call);
+        this.authRequired |= authRequired;
+        return call;
+    }
+
+    /** Sends all queued calls in one request and completes their futures as
+     * the response is processed.
+     * @return a future that completes once every call has its result or
+     * error. It completes exceptionally only if the batch request itself
+     * fails, in which case every call fails with the same error.
+     */
+    public CompletableFuture<Void> executeAsync() {
+        final List<Call<?>> toSend;
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("This batch has already been executed");
+            }
+            executed = true;
+            toSend = new ArrayList<Call<?>>(calls);
+        }
+        if (toSend.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Object> requests = new ArrayList<Object>();
+        for (Call<?> call : toSend) {
+            requests.add(call.request);
+        }
+        final byte[] body;
+        try {
+            body = JsonRpcCodec.encode(requests);
+        } catch (IOException e) {
+            failAll(toSend, e);
+            return FbaToolsAsyncClient.failed(e);
+        }
+        final boolean auth = authRequired;
+        return client.getCallLimiter().submit(() -> client.post(body, auth)).handle((resp, err) -> {
+            if (err == null) {
+                try {
+                    dispatch(toSend, resp);
+                } catch (JsonClientException e) {
+                    err = e;
+                }
+            }
+            if (err != null) {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                failAll(toSend, cause);
+                throw new CompletionException(cause);
+            }
+            return null;
+        });
+    }
+
+    /** Sends all queued calls in one request and waits for the response.
+     * Errors of individual calls are reported through their handles.
+     * @throws IOException if an IO exception occurs
+     * @throws JsonClientException if the batch request as a whole fails
+     */
+    public void execute() throws IOException, JsonClientException {
+        try {
+            executeAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the batch response", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof JsonClientException) {
+                throw (JsonClientException) cause;
+            }
+            throw new JsonClientException(cause.getMessage(), cause);
+        }
+    }
+
+    private static void dispatch(List<Call<?>> calls, JsonNode resp) throws JsonClientException {
+        if (!resp.isArray()) {
+            // a server that does not understand batches answers with a single error
+            JsonRpcCodec.checkError(resp);
+            throw new JsonClientException("Batch response is not a JSON array");
+        }
+        Map<String, JsonNode> byId = new HashMap<String, JsonNode>();
+        for (JsonNode entry : resp) {
+            byId.put(entry.path("id").asText(), entry);
+        }
+        for (Call<?> call : calls) {
+            JsonNode entry = byId.get(call.id);
+            if (entry == null) {
+                call.future.completeExceptionally(new JsonClientException(
+                        "Batch response has no entry for call " + call.id + " (" + call.method + ")"));
+            } else {
+                call.complete(entry);
+            }
+        }
+    }
+
+    private static void failAll(List<Call<?>> calls, Throwable err) {
+        for (Call<?> call : calls) {
+            call.future.completeExceptionally(err);
+        }
+    }
+
+    /**
+     * <p>Original spec-file function name: build_metabolic_model</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildMetabolicModelParams BuildMetabolicModelParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.BuildMetabolicModelResults BuildMetabolicModelResults}
+     */
+    public Call<BuildMetabolicModelResults> buildMetabolicModel(BuildMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMetabolicModelResults>> retType = new TypeReference<List<BuildMetabolicModelResults>>() {};
+        return add("fba_tools.build_metabolic_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: characterize_genome_metabolism_using_model</p>
+     * <pre>
+     * Builds a model and characterizes an input genome using the model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CharacterizeGenomeUsingModelParams CharacterizeGenomeUsingModelParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.CharacterizeGenomeUsingModelResults CharacterizeGenomeUsingModelResults}
+     */
+    public Call<CharacterizeGenomeUsingModelResults> characterizeGenomeMetabolismUsingModel(CharacterizeGenomeUsingModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CharacterizeGenomeUsingModelResults>> retType = new TypeReference<List<CharacterizeGenomeUsingModelResults>>() {};
+        return add("fba_tools.characterize_genome_metabolism_using_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: run_model_characterization</p>
+     * <pre>
+     * Builds a model and characterizes an input genome using the model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.RunModelCharacterizationParams RunModelCharacterizationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.RunModelCharacterizationResults RunModelCharacterizationResults}
+     */
+    public Call<RunModelCharacterizationResults> runModelCharacterization(RunModelCharacterizationParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunModelCharacterizationResults>> retType = new TypeReference<List<RunModelCharacterizationResults>>() {};
+        return add("fba_tools.run_model_characterization", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: build_plant_metabolic_model</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildPlantMetabolicModelParams BuildPlantMetabolicModelParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.BuildPlantMetabolicModelResults BuildPlantMetabolicModelResults}
+     */
+    public Call<BuildPlantMetabolicModelResults> buildPlantMetabolicModel(BuildPlantMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildPlantMetabolicModelResults>> retType = new TypeReference<List<BuildPlantMetabolicModelResults>>() {};
+        return add("fba_tools.build_plant_metabolic_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: build_multiple_metabolic_models</p>
+     * <pre>
+     * Build multiple genome-scale metabolic models based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildMultipleMetabolicModelsParams BuildMultipleMetabolicModelsParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.BuildMultipleMetabolicModelsResults BuildMultipleMetabolicModelsResults}
+     */
+    public Call<BuildMultipleMetabolicModelsResults> buildMultipleMetabolicModels(BuildMultipleMetabolicModelsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMultipleMetabolicModelsResults>> retType = new TypeReference<List<BuildMultipleMetabolicModelsResults>>() {};
+        return add("fba_tools.build_multiple_metabolic_models", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: gapfill_metabolic_model</p>
+     * <pre>
+     * Gapfills a metabolic model to induce flux in a specified reaction
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.GapfillMetabolicModelParams GapfillMetabolicModelParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.GapfillMetabolicModelResults GapfillMetabolicModelResults}
+     */
+    public Call<GapfillMetabolicModelResults> gapfillMetabolicModel(GapfillMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<GapfillMetabolicModelResults>> retType = new TypeReference<List<GapfillMetabolicModelResults>>() {};
+        return add("fba_tools.gapfill_metabolic_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: run_flux_balance_analysis</p>
+     * <pre>
+     * Run flux balance analysis and return ID of FBA object with results
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.RunFluxBalanceAnalysisParams RunFluxBalanceAnalysisParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.RunFluxBalanceAnalysisResults RunFluxBalanceAnalysisResults}
+     */
+    public Call<RunFluxBalanceAnalysisResults> runFluxBalanceAnalysis(RunFluxBalanceAnalysisParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunFluxBalanceAnalysisResults>> retType = new TypeReference<List<RunFluxBalanceAnalysisResults>>() {};
+        return add("fba_tools.run_flux_balance_analysis", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: compare_fba_solutions</p>
+     * <pre>
+     * Compares multiple FBA solutions and saves comparison as a new object in the workspace
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CompareFBASolutionsParams CompareFBASolutionsParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.CompareFBASolutionsResults CompareFBASolutionsResults}
+     */
+    public Call<CompareFBASolutionsResults> compareFbaSolutions(CompareFBASolutionsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CompareFBASolutionsResults>> retType = new TypeReference<List<CompareFBASolutionsResults>>() {};
+        return add("fba_tools.compare_fba_solutions", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: lookup_modelseed_ids</p>
+     * <pre>
+     * Attempts to map peaks in the input metabolomics matrix to compounds in the ModelSEED database
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.LookupModelSEEDIDsParams LookupModelSEEDIDsParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.LookupModelSEEDIDsResults LookupModelSEEDIDsResults}
+     */
+    public Call<LookupModelSEEDIDsResults> lookupModelseedIds(LookupModelSEEDIDsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<LookupModelSEEDIDsResults>> retType = new TypeReference<List<LookupModelSEEDIDsResults>>() {};
+        return add("fba_tools.lookup_modelseed_ids", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: propagate_model_to_new_genome</p>
+     * <pre>
+     * Translate the metabolic model of one organism to another, using a mapping of similar proteins between their genomes
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.PropagateModelToNewGenomeParams PropagateModelToNewGenomeParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.PropagateModelToNewGenomeResults PropagateModelToNewGenomeResults}
+     */
+    public Call<PropagateModelToNewGenomeResults> propagateModelToNewGenome(PropagateModelToNewGenomeParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<PropagateModelToNewGenomeResults>> retType = new TypeReference<List<PropagateModelToNewGenomeResults>>() {};
+        return add("fba_tools.propagate_model_to_new_genome", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: simulate_growth_on_phenotype_data</p>
+     * <pre>
+     * Use Flux Balance Analysis (FBA) to simulate multiple growth phenotypes.
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.SimulateGrowthOnPhenotypeDataParams SimulateGrowthOnPhenotypeDataParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.SimulateGrowthOnPhenotypeDataResults SimulateGrowthOnPhenotypeDataResults}
+     */
+    public Call<SimulateGrowthOnPhenotypeDataResults> simulateGrowthOnPhenotypeData(SimulateGrowthOnPhenotypeDataParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<SimulateGrowthOnPhenotypeDataResults>> retType = new TypeReference<List<SimulateGrowthOnPhenotypeDataResults>>() {};
+        return add("fba_tools.simulate_growth_on_phenotype_data", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: merge_metabolic_models_into_community_model</p>
+     * <pre>
+     * Merge two or more metabolic models into a compartmentalized community model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.MergeMetabolicModelsIntoCommunityModelParams MergeMetabolicModelsIntoCommunityModelParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.MergeMetabolicModelsIntoCommunityModelResults MergeMetabolicModelsIntoCommunityModelResults}
+     */
+    public Call<MergeMetabolicModelsIntoCommunityModelResults> mergeMetabolicModelsIntoCommunityModel(MergeMetabolicModelsIntoCommunityModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<MergeMetabolicModelsIntoCommunityModelResults>> retType = new TypeReference<List<MergeMetabolicModelsIntoCommunityModelResults>>() {};
+        return add("fba_tools.merge_metabolic_models_into_community_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: view_flux_network</p>
+     * <pre>
+     * Merge two or more metabolic models into a compartmentalized community model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ViewFluxNetworkParams ViewFluxNetworkParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.ViewFluxNetworkResults ViewFluxNetworkResults}
+     */
+    public Call<ViewFluxNetworkResults> viewFluxNetwork(ViewFluxNetworkParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ViewFluxNetworkResults>> retType = new TypeReference<List<ViewFluxNetworkResults>>() {};
+        return add("fba_tools.view_flux_network", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: compare_flux_with_expression</p>
+     * <pre>
+     * Merge two or more metabolic models into a compartmentalized community model
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CompareFluxWithExpressionParams CompareFluxWithExpressionParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.CompareFluxWithExpressionResults CompareFluxWithExpressionResults}
+     */
+    public Call<CompareFluxWithExpressionResults> compareFluxWithExpression(CompareFluxWithExpressionParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CompareFluxWithExpressionResults>> retType = new TypeReference<List<CompareFluxWithExpressionResults>>() {};
+        return add("fba_tools.compare_flux_with_expression", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: check_model_mass_balance</p>
+     * <pre>
+     * Identifies reactions in the model that are not mass balanced
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.CheckModelMassBalanceParams CheckModelMassBalanceParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.CheckModelMassBalanceResults CheckModelMassBalanceResults}
+     */
+    public Call<CheckModelMassBalanceResults> checkModelMassBalance(CheckModelMassBalanceParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<CheckModelMassBalanceResults>> retType = new TypeReference<List<CheckModelMassBalanceResults>>() {};
+        return add("fba_tools.check_model_mass_balance", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: predict_auxotrophy</p>
+     * <pre>
+     * Identifies reactions in the model that are not mass balanced
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.PredictAuxotrophyParams PredictAuxotrophyParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.PredictAuxotrophyResults PredictAuxotrophyResults}
+     */
+    public Call<PredictAuxotrophyResults> predictAuxotrophy(PredictAuxotrophyParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<PredictAuxotrophyResults>> retType = new TypeReference<List<PredictAuxotrophyResults>>() {};
+        return add("fba_tools.predict_auxotrophy", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: predict_metabolite_biosynthesis_pathway</p>
+     * <pre>
+     * Identifies reactions in the model that are not mass balanced
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.PredictMetaboliteBiosynthesisPathwayInput PredictMetaboliteBiosynthesisPathwayInput}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.PredictMetaboliteBiosynthesisPathwayResults PredictMetaboliteBiosynthesisPathwayResults}
+     */
+    public Call<PredictMetaboliteBiosynthesisPathwayResults> predictMetaboliteBiosynthesisPathway(PredictMetaboliteBiosynthesisPathwayInput params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<PredictMetaboliteBiosynthesisPathwayResults>> retType = new TypeReference<List<PredictMetaboliteBiosynthesisPathwayResults>>() {};
+        return add("fba_tools.predict_metabolite_biosynthesis_pathway", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: build_metagenome_metabolic_model</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildMetagenomeMetabolicModelParams BuildMetagenomeMetabolicModelParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.BuildMetabolicModelResults BuildMetabolicModelResults}
+     */
+    public Call<BuildMetabolicModelResults> buildMetagenomeMetabolicModel(BuildMetagenomeMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMetabolicModelResults>> retType = new TypeReference<List<BuildMetabolicModelResults>>() {};
+        return add("fba_tools.build_metagenome_metabolic_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: build_model_from_roles</p>
+     * <pre>
+     * Build a genome-scale metabolic model based on annotations in an input genome typed object
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BuildModelFromRolesParams BuildModelFromRolesParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.BuildMetabolicModelResults BuildMetabolicModelResults}
+     */
+    public Call<BuildMetabolicModelResults> buildModelFromRoles(BuildModelFromRolesParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BuildMetabolicModelResults>> retType = new TypeReference<List<BuildMetabolicModelResults>>() {};
+        return add("fba_tools.build_model_from_roles", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: fit_exometabolite_data</p>
+     * <pre>
+     * Gapfills a metabolic model to fit input exometabolite data
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.FitExometaboliteDataParams FitExometaboliteDataParams}
+     * @return   the handle of the queued call, resolving to parameter "results" of type {@link us.kbase.fbatools.FitExometaboliteDataResults FitExometaboliteDataResults}
+     */
+    public Call<FitExometaboliteDataResults> fitExometaboliteData(FitExometaboliteDataParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<FitExometaboliteDataResults>> retType = new TypeReference<List<FitExometaboliteDataResults>>() {};
+        return add("fba_tools.fit_exometabolite_data", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: compare_models</p>
+     * <pre>
+     * Compare models
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ModelComparisonParams ModelComparisonParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.ModelComparisonResult ModelComparisonResult}
+     */
+    public Call<ModelComparisonResult> compareModels(ModelComparisonParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ModelComparisonResult>> retType = new TypeReference<List<ModelComparisonResult>>() {};
+        return add("fba_tools.compare_models", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: edit_metabolic_model</p>
+     * <pre>
+     * Edit models
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.EditMetabolicModelParams EditMetabolicModelParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.EditMetabolicModelResult EditMetabolicModelResult}
+     */
+    public Call<EditMetabolicModelResult> editMetabolicModel(EditMetabolicModelParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<EditMetabolicModelResult>> retType = new TypeReference<List<EditMetabolicModelResult>>() {};
+        return add("fba_tools.edit_metabolic_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: edit_media</p>
+     * <pre>
+     * Edit models
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.EditMediaParams EditMediaParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.EditMediaResult EditMediaResult}
+     */
+    public Call<EditMediaResult> editMedia(EditMediaParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<EditMediaResult>> retType = new TypeReference<List<EditMediaResult>>() {};
+        return add("fba_tools.edit_media", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: excel_file_to_model</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.ModelCreationParams ModelCreationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public Call<WorkspaceRef> excelFileToModel(ModelCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return add("fba_tools.excel_file_to_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: sbml_file_to_model</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.ModelCreationParams ModelCreationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public Call<WorkspaceRef> sbmlFileToModel(ModelCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return add("fba_tools.sbml_file_to_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: tsv_file_to_model</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.ModelCreationParams ModelCreationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public Call<WorkspaceRef> tsvFileToModel(ModelCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return add("fba_tools.tsv_file_to_model", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: model_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   model   instance of type {@link us.kbase.fbatools.ModelObjectSelectionParams ModelObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> modelToExcelFile(ModelObjectSelectionParams model, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(model);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.model_to_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: model_to_sbml_file</p>
+     * <pre>
+     * </pre>
+     * @param   model   instance of type {@link us.kbase.fbatools.ModelObjectSelectionParams ModelObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> modelToSbmlFile(ModelObjectSelectionParams model, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(model);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.model_to_sbml_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: model_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   model   instance of type {@link us.kbase.fbatools.ModelObjectSelectionParams ModelObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "files" of type {@link us.kbase.fbatools.ModelTsvFiles ModelTsvFiles}
+     */
+    public Call<ModelTsvFiles> modelToTsvFile(ModelObjectSelectionParams model, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(model);
+        TypeReference<List<ModelTsvFiles>> retType = new TypeReference<List<ModelTsvFiles>>() {};
+        return add("fba_tools.model_to_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_model_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportModelAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_model_as_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_model_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportModelAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_model_as_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_model_as_sbml_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportModelAsSbmlFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_model_as_sbml_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: fba_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   fba   instance of type {@link us.kbase.fbatools.FBAObjectSelectionParams FBAObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> fbaToExcelFile(FBAObjectSelectionParams fba, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(fba);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.fba_to_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: fba_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   fba   instance of type {@link us.kbase.fbatools.FBAObjectSelectionParams FBAObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "files" of type {@link us.kbase.fbatools.FBATsvFiles FBATsvFiles}
+     */
+    public Call<FBATsvFiles> fbaToTsvFile(FBAObjectSelectionParams fba, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(fba);
+        TypeReference<List<FBATsvFiles>> retType = new TypeReference<List<FBATsvFiles>>() {};
+        return add("fba_tools.fba_to_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_fba_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportFbaAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_fba_as_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_fba_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportFbaAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_fba_as_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: tsv_file_to_media</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.MediaCreationParams MediaCreationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public Call<WorkspaceRef> tsvFileToMedia(MediaCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return add("fba_tools.tsv_file_to_media", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: excel_file_to_media</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.MediaCreationParams MediaCreationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public Call<WorkspaceRef> excelFileToMedia(MediaCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return add("fba_tools.excel_file_to_media", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: media_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   media   instance of type {@link us.kbase.fbatools.MediaObjectSelectionParams MediaObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> mediaToTsvFile(MediaObjectSelectionParams media, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(media);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.media_to_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: media_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   media   instance of type {@link us.kbase.fbatools.MediaObjectSelectionParams MediaObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> mediaToExcelFile(MediaObjectSelectionParams media, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(media);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.media_to_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_media_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportMediaAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_media_as_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_media_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportMediaAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_media_as_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: tsv_file_to_phenotype_set</p>
+     * <pre>
+     * </pre>
+     * @param   p   instance of type {@link us.kbase.fbatools.PhenotypeSetCreationParams PhenotypeSetCreationParams}
+     * @return   the handle of the queued call, resolving to instance of type {@link us.kbase.fbatools.WorkspaceRef WorkspaceRef}
+     */
+    public Call<WorkspaceRef> tsvFileToPhenotypeSet(PhenotypeSetCreationParams p, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(p);
+        TypeReference<List<WorkspaceRef>> retType = new TypeReference<List<WorkspaceRef>>() {};
+        return add("fba_tools.tsv_file_to_phenotype_set", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: phenotype_set_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   phenotypeSet   instance of type {@link us.kbase.fbatools.PhenotypeSetObjectSelectionParams PhenotypeSetObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> phenotypeSetToTsvFile(PhenotypeSetObjectSelectionParams phenotypeSet, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(phenotypeSet);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.phenotype_set_to_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_phenotype_set_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportPhenotypeSetAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_phenotype_set_as_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: phenotype_simulation_set_to_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   pss   instance of type {@link us.kbase.fbatools.PhenotypeSimulationSetObjectSelectionParams PhenotypeSimulationSetObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> phenotypeSimulationSetToExcelFile(PhenotypeSimulationSetObjectSelectionParams pss, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(pss);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.phenotype_simulation_set_to_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: phenotype_simulation_set_to_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   pss   instance of type {@link us.kbase.fbatools.PhenotypeSimulationSetObjectSelectionParams PhenotypeSimulationSetObjectSelectionParams}
+     * @return   the handle of the queued call, resolving to parameter "f" of type {@link us.kbase.fbatools.File File}
+     */
+    public Call<us.kbase.fbatools.File> phenotypeSimulationSetToTsvFile(PhenotypeSimulationSetObjectSelectionParams pss, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(pss);
+        TypeReference<List<us.kbase.fbatools.File>> retType = new TypeReference<List<us.kbase.fbatools.File>>() {};
+        return add("fba_tools.phenotype_simulation_set_to_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_phenotype_simulation_set_as_excel_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportPhenotypeSimulationSetAsExcelFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_phenotype_simulation_set_as_excel_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: export_phenotype_simulation_set_as_tsv_file</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.ExportParams ExportParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.ExportOutput ExportOutput}
+     */
+    public Call<ExportOutput> exportPhenotypeSimulationSetAsTsvFile(ExportParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<ExportOutput>> retType = new TypeReference<List<ExportOutput>>() {};
+        return add("fba_tools.export_phenotype_simulation_set_as_tsv_file", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: bulk_export_objects</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.BulkExportObjectsParams BulkExportObjectsParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.BulkExportObjectsResult BulkExportObjectsResult}
+     */
+    public Call<BulkExportObjectsResult> bulkExportObjects(BulkExportObjectsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<BulkExportObjectsResult>> retType = new TypeReference<List<BulkExportObjectsResult>>() {};
+        return add("fba_tools.bulk_export_objects", args, retType, true, jsonRpcContext);
+    }
+
+    /**
+     * <p>Original spec-file function name: run_fba_tools_tests</p>
+     * <pre>
+     * </pre>
+     * @param   params   instance of type {@link us.kbase.fbatools.RunFbaToolsTestsParams RunFbaToolsTestsParams}
+     * @return   the handle of the queued call, resolving to parameter "output" of type {@link us.kbase.fbatools.RunFbaToolsTestsResult RunFbaToolsTestsResult}
+     */
+    public Call<RunFbaToolsTestsResult> runFbaToolsTests(RunFbaToolsTestsParams params, RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        args.add(params);
+        TypeReference<List<RunFbaToolsTestsResult>> retType = new TypeReference<List<RunFbaToolsTestsResult>>() {};
+        return add("fba_tools.run_fba_tools_tests", args, retType, true, jsonRpcContext);
+    }
+
+    public Call<Map<String, Object>> status(RpcContext... jsonRpcContext) {
+        List<Object> args = new ArrayList<Object>();
+        TypeReference<List<Map<String, Object>>> retType = new TypeReference<List<Map<String, Object>>>() {};
+        return add("fba_tools.status", args, retType, false, jsonRpcContext);
+    }
+}
@@ -0,0 +1,236 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * <p>The flux loops of a model found by a {@link FluxLoopFinder}: the
+ * cycles of reactions that can carry flux with every drain closed, which no
+ * thermodynamics allows.</p>
+ * <p>A catalogue carries the key of the network it was found on, so it can
+ * be stored with {@link #write(Path)} and reused for the same model version
+ * until the reactions, their stoichiometry or their bounds change.</p>
+ */
+public class FluxLoopCatalogue {
+    private final String networkKey;
+    private final List<Loop> loops;
+    private final int reactionCount;
+    private final int graphCandidates;
+    private final int nullSpaceCandidates;
+    private final boolean complete;
+    private final long elapsedMillis;
+
+    /** One cycle of reactions, with the flux each carries around it. */
+    public static class Loop {
+        private final List<String> reactionIds;
+        private final double[] fluxes;
+
+        Loop(List<String> reactionIds, double[] fluxes) {
+            this.reactionIds = Collections.unmodifiableList(reactionIds);
+            this.fluxes = fluxes;
+        }
+
+        /** Get the reactions of the loop.
+         * @return the model reaction ids, in model order.
+         */
+        public List<String> getReactionIds() {
+            return reactionIds;
+        }
+
+        /** Get the flux of a reaction around the loop.
+         * @param i the position of the reaction in {@link #getReactionIds()}.
+         * @return the flux, negative in the reverse direction, scaled so that
+         * the largest is 1 in absolute value.
+         */
+        public double getFlux(int i) {
+            return fluxes[i];
+        }
+
+        public int size() {
+            return reactionIds.size();
+        }
+
+        // the reactions with their directions, the same for the same cycle
+        // whichever reaction it was found through
+        String key() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < fluxes.length; i++) {
+                sb.append(fluxes[i] > 0 ? '+' : '-').append(reactionIds.get(i)).append(' ');
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Loop [" + key().trim() + "]";
+        }
+    }
+
+    FluxLoopCatalogue(String networkKey, List<Loop> loops, int reactionCount, int graphCandidates,
+            int nullSpaceCandidates, boolean complete, long elapsedMillis) {
+        this.networkKey = networkKey;
+        this.loops = Collections.unmodifiableList(new ArrayList<Loop>(loops));
+        this.reactionCount = reactionCount;
+        this.graphCandidates = graphCandidates;
+        this.nullSpaceCandidates = nullSpaceCandidates;
+        this.complete = complete;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /** Get the key of the network the loops were found on.
+     * @return the key, see {@link FluxLoopFinder#getNetworkKey()}.
+     */
+    public String getNetworkKey() {
+        return networkKey;
+    }
+
+    public List<Loop> getLoops() {
+        return loops;
+    }
+
+    /** Get the loops a reaction is in.
+     * @param reactionId the model reaction id.
+     * @return the loops, empty if the reaction is in none.
+     */
+    public List<Loop> getLoops(String reactionId) {
+        List<Loop> ret = new ArrayList<Loop>();
+        for (Loop l : loops) {
+            if (l.reactionIds.contains(reactionId)) {
+                ret.add(l);
+            }
+        }
+        return ret;
+    }
+
+    /** Get the reactions in at least one loop.
+     * @return the model reaction ids, sorted.
+     */
+    public List<String> getLoopReactions() {
+        TreeSet<String> ret = new TreeSet<String>();
+        for (Loop l : loops) {
+            ret.addAll(l.reactionIds);
+        }
+        return new ArrayList<String>(ret);
+    }
+
+    /** Get the number of model reactions that could carry flux by their
+     * bounds.
+     * @return the reaction count.
+     */
+    public int getReactionCount() {
+        return reactionCount;
+    }
+
+    /** Get the number of reactions left after pruning the reactions that
+     * make or use a compound nothing else uses or makes.
+     * @return the reaction count.
+     */
+    public int getGraphCandidateCount() {
+        return graphCandidates;
+    }
+
+    /** Get the number of reactions left after also pruning those outside
+     * the null space of the stoichiometric matrix, each of which was then
+     * verified with a linear program.
+     * @return the reaction count.
+     */
+    public int getNullSpaceCandidateCount() {
+        return nullSpaceCandidates;
+    }
+
+    /** Check whether every candidate was verified.
+     * @return false if a linear program could not be solved, so some loops
+     * may be missing.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** Get the catalogue as JSON.
+     * @return the catalogue.
+     */
+    public ObjectNode toJson() {
+        ObjectNode ret = JsonRpcCodec.mapper().createObjectNode();
+        ret.put("network_key", networkKey);
+        ret.put("reaction_count", reactionCount);
+        ret.put("graph_candidates", graphCandidates);
+        ret.put("null_space_candidates", nullSpaceCandidates);
+        ret.put("complete", complete ? 1 : 0);
+        ret.put("elapsed_ms", elapsedMillis);
+        ArrayNode ls = ret.putArray("loops");
+        for (Loop l : loops) {
+            ObjectNode lj = ls.addObject();
+            ArrayNode ids = lj.putArray("reactions");
+            ArrayNode fluxes = lj.putArray("fluxes");
+            for (int i = 0; i < l.size(); i++) {
+                ids.add(l.reactionIds.get(i));
+                fluxes.add(l.fluxes[i]);
+            }
+        }
+        return ret;
+    }
+
+    /** Reads a catalogue from its JSON form.
+     * @param json the catalogue, as written by {@link #toJson()}.
+     * @return the catalogue.
+     */
+    public static FluxLoopCatalogue fromJson(JsonNode json) {
+        List<Loop> loops = new ArrayList<Loop>();
+        for (JsonNode lj : json.path("loops")) {
+            List<String> ids = new ArrayList<String>();
+            double[] fluxes = new double[lj.path("reactions").size()];
+            for (int i = 0; i < fluxes.length; i++) {
+                ids.add(lj.path("reactions").get(i).asText());
+                fluxes[i] = lj.path("fluxes").path(i).asDouble();
+            }
+            loops.add(new Loop(ids, fluxes));
+        }
+        return new FluxLoopCatalogue(json.path("network_key").asText(), loops, json.path("reaction_count").asInt(),
+                json.path("graph_candidates").asInt(), json.path("null_space_candidates").asInt(),
+                json.path("complete").asInt() != 0, json.path("elapsed_ms").asLong());
+    }
+
+    /** Writes the catalogue as JSON, replacing the file atomically.
+     * @param path the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            JsonRpcCodec.mapper().writeValue(tmp.toFile(), toJson());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Reads a catalogue written by {@link #write(Path)}.
+     * @param path the file.
+     * @return the catalogue.
+     * @throws IOException if the file cannot be read.
+     */
+    public static FluxLoopCatalogue read(Path path) throws IOException {
+        return fromJson(JsonRpcCodec.mapper().readTree(path.toFile()));
+    }
+
+    @Override
+    public String toString() {
+        return "FluxLoopCatalogue [loops=" + loops.size() + ", reactionCount=" + reactionCount +
+                ", graphCandidates=" + graphCandidates + ", nullSpaceCandidates=" + nullSpaceCandidates +
+                ", complete=" + complete + ", elapsedMillis=" + elapsedMillis + "]";
+    }
+}
@@ -0,0 +1,559 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * <p>Catalogues the flux loops of an {@link FbaProblem}, the cycles of
+ * model reactions that can carry flux with every drain and biomass
+ * reaction closed, as CatalogueFluxLoops in the MFAToolkit does with one
+ * MILP after another.</p>
+ * <p>Most reactions are in no loop, and two cheap passes over the
+ * stoichiometric matrix rule them out before any program is solved. The
+ * graph pass drops every reaction direction that makes a compound nothing
+ * left can use, or uses one nothing left can make, until no more can be
+ * dropped. The null space pass reduces the matrix of each connected group
+ * of the remaining reactions to echelon form and drops the reactions whose
+ * flux every steady state fixes at zero, then the graph pass runs again.</p>
+ * <p>Each remaining reaction direction is then verified with a linear
+ * program over its group, in parallel: the direction is forced to carry a
+ * unit of flux and the total flux is minimized, which gives the smallest
+ * loop through it, or shows there is none. The reaction costs differ very
+ * slightly, so that ties between loops are broken the same way whichever
+ * basis a solve starts from. Each worker keeps its own warm-started solver
+ * per group. Loops found through several of their reactions are kept once,
+ * in reaction order.</p>
+ * <pre>
+ * FluxLoopFinder finder = new FluxLoopFinder(FbaProblem.fromModel(modelJson, null, null));
+ * FluxLoopCatalogue loops = finder.run(Paths.get("loops", modelRef.replace('/', '_') + ".json"));
+ * for (String rxn : loops.getLoopReactions()) {
+ *     System.out.println(rxn + " " + loops.getLoops(rxn).size());
+ * }
+ * </pre>
+ */
+public class FluxLoopFinder {
+    // a flux this small is not carried
+    private static final double FLUX_TOL = 1e-9;
+    // entries of the echelon form this small are round off
+    private static final double ELIMINATION_TOL = 1e-9;
+    // relative spread of the reaction costs that breaks ties between loops
+    private static final double COST_SPREAD = 1e-3;
+    // candidates handed to a worker at a time
+    private static final int CHUNK = 4;
+
+    private final FbaProblem problem;
+    private int threads = 0;
+    private ExecutorService executor = null;
+
+    public FluxLoopFinder(FbaProblem problem) {
+        this.problem = problem;
+    }
+
+    /** Set the number of workers. One worker verifies the candidates
+     * serially.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this finder.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** Get the key of the program's internal network: the model reactions
+     * with their bounds and stoichiometry. Drains, biomass reactions and the
+     * objective are left out, as the loops do not depend on them.
+     * @return the lower case hex encoded hash.
+     */
+    public String getNetworkKey() {
+        StoichiometricMatrix matrix = problem.getMatrix();
+        ArrayNode network = JsonRpcCodec.mapper().createArrayNode();
+        for (int j = 0; j < matrix.getReactionCount(); j++) {
+            ArrayNode rxn = network.addArray();
+            rxn.add(matrix.getReactionId(j));
+            rxn.add(problem.getLowerBound(j));
+            rxn.add(problem.getUpperBound(j));
+            for (int p = matrix.getColumnStart(j); p < matrix.getColumnEnd(j); p++) {
+                rxn.add(matrix.getCompoundId(matrix.getRow(p)));
+                rxn.add(matrix.getColumnValue(p));
+            }
+        }
+        return ParamsHasher.hash("flux_loops", network);
+    }
+
+    /** Catalogues the loops, reusing a stored catalogue of the same network.
+     * @param cache the file of the stored catalogue. If it holds a complete
+     * catalogue with the key of this network, that is returned; otherwise
+     * the loops are catalogued and, if complete, written to it.
+     * @return the catalogue.
+     * @throws IOException if the file cannot be read or written.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public FluxLoopCatalogue run(Path cache) throws IOException, InterruptedException {
+        String key = getNetworkKey();
+        if (Files.exists(cache)) {
+            FluxLoopCatalogue stored = FluxLoopCatalogue.read(cache);
+            if (stored.isComplete() && key.equals(stored.getNetworkKey())) {
+                return stored;
+            }
+        }
+        FluxLoopCatalogue ret = run(key);
+        if (ret.isComplete()) {
+            ret.write(cache);
+        }
+        return ret;
+    }
+
+    /** Catalogues the loops.
+     * @return the catalogue.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public FluxLoopCatalogue run() throws InterruptedException {
+        return run(getNetworkKey());
+    }
+
+    private FluxLoopCatalogue run(String key) throws InterruptedException {
+        long start = System.nanoTime();
+        int n = problem.getMatrix().getReactionCount();
+        boolean[] fwd = new boolean[n];
+        boolean[] rev = new boolean[n];
+        for (int j = 0; j < n; j++) {
+            fwd[j] = problem.getUpperBound(j) > 0;
+            rev[j] = problem.getLowerBound(j) < 0;
+        }
+        int reactionCount = count(fwd, rev);
+        prune(fwd, rev);
+        int graphCandidates = count(fwd, rev);
+        int[] group = new int[n];
+        int groups = groups(fwd, rev, group);
+        for (int g = 0; g < groups; g++) {
+            pruneNullSpace(fwd, rev, group, g);
+        }
+        prune(fwd, rev);
+        int nullSpaceCandidates = count(fwd, rev);
+        groups = groups(fwd, rev, group);
+        // each direction left to verify, as reaction * 2 + 1 for reverse
+        List<Integer> candidates = new ArrayList<Integer>();
+        for (int j = 0; j < n; j++) {
+            if (fwd[j]) {
+                candidates.add(j * 2);
+            }
+            if (rev[j]) {
+                candidates.add(j * 2 + 1);
+            }
+        }
+        FluxLoopCatalogue.Loop[] found = new FluxLoopCatalogue.Loop[candidates.size()];
+        boolean complete = verify(candidates, found, fwd, rev, group, groups);
+        // the same loop is found through each of its reactions
+        Map<String, FluxLoopCatalogue.Loop> loops = new LinkedHashMap<String, FluxLoopCatalogue.Loop>();
+        for (FluxLoopCatalogue.Loop l : found) {
+            if (l != null && !loops.containsKey(l.key())) {
+                loops.put(l.key(), l);
+            }
+        }
+        return new FluxLoopCatalogue(key, new ArrayList<FluxLoopCatalogue.Loop>(loops.values()), reactionCount,
+                graphCandidates, nullSpaceCandidates, complete, (System.nanoTime() - start) / 1000000);
+    }
+
+    private static int count(boolean[] fwd, boolean[] rev) {
+        int ret = 0;
+        for (int j = 0; j < fwd.length; j++) {
+            if (fwd[j] || rev[j]) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    // drops the directions that make a compound nothing left uses, or use
+    // one nothing left makes, and the reactions alone on a compound, until
+    // none is left to drop
+    private void prune(boolean[] fwd, boolean[] rev) {
+        StoichiometricMatrix matrix = problem.getMatrix();
+        int n = fwd.length;
+        int rows = matrix.getRowCount();
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        boolean[] queued = new boolean[rows];
+        for (int i = 0; i < rows; i++) {
+            queue.add(i);
+            queued[i] = true;
+        }
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            queued[i] = false;
+            int makers = 0;
+            int users = 0;
+            int reactions = 0;
+            for (int p = matrix.getRowStart(i); p < matrix.getRowEnd(i); p++) {
+                int j = matrix.getColumn(p);
+                double a = matrix.getRowValue(p);
+                if (j >= n || a == 0 || !(fwd[j] || rev[j])) {
+                    continue;
+                }
+                reactions++;
+                if (fwd[j]) {
+                    if (a > 0) {
+                        makers++;
+                    } else {
+                        users++;
+                    }
+                }
+                if (rev[j]) {
+                    if (a < 0) {
+                        makers++;
+                    } else {
+                        users++;
+                    }
+                }
+            }
+            if (reactions == 0 || (reactions > 1 && makers > 0 && users > 0)) {
+                continue;
+            }
+            for (int p = matrix.getRowStart(i); p < matrix.getRowEnd(i); p++) {
+                int j = matrix.getColumn(p);
+                double a = matrix.getRowValue(p);
+                if (j >= n || a == 0 || !(fwd[j] || rev[j])) {
+                    continue;
+                }
+                boolean wasFwd = fwd[j];
+                boolean wasRev = rev[j];
+                if (reactions == 1) {
+                    fwd[j] = false;
+                    rev[j] = false;
+                } else {
+                    // the directions on the side of the compound that has no
+                    // counterpart
+                    boolean makes = makers > 0;
+                    if (fwd[j] && (a > 0) == makes) {
+                        fwd[j] = false;
+                    }
+                    if (rev[j] && (a < 0) == makes) {
+                        rev[j] = false;
+                    }
+                }
+                if (fwd[j] != wasFwd || rev[j] != wasRev) {
+                    for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                        int row = matrix.getRow(q);
+                        if (!queued[row]) {
+                            queue.add(row);
+                            queued[row] = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // the connected groups of the remaining reactions, joined by the
+    // compounds they share; -1 for the dropped reactions
+    private int groups(boolean[] fwd, boolean[] rev, int[] group) {
+        StoichiometricMatrix matrix = problem.getMatrix();
+        int n = fwd.length;
+        Arrays.fill(group, -1);
+        boolean[] seenRow = new boolean[matrix.getRowCount()];
+        int groups = 0;
+        ArrayDeque<Integer> stack = new ArrayDeque<Integer>();
+        for (int s = 0; s < n; s++) {
+            if (group[s] >= 0 || !(fwd[s] || rev[s])) {
+                continue;
+            }
+            group[s] = groups;
+            stack.push(s);
+            while (!stack.isEmpty()) {
+                int j = stack.pop();
+                for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                    int i = matrix.getRow(q);
+                    if (seenRow[i]) {
+                        continue;
+                    }
+                    seenRow[i] = true;
+                    for (int p = matrix.getRowStart(i); p < matrix.getRowEnd(i); p++) {
+                        int k = matrix.getColumn(p);
+                        if (k < n && group[k] < 0 && (fwd[k] || rev[k])) {
+                            group[k] = groups;
+                            stack.push(k);
+                        }
+                    }
+                }
+            }
+            groups++;
+        }
+        return groups;
+    }
+
+    // drops the reactions of a group that are zero in every vector of the
+    // null space of its matrix: in the reduced echelon form, the pivot
+    // reactions with no free reaction in their row
+    private void pruneNullSpace(boolean[] fwd, boolean[] rev, int[] group, int g) {
+        StoichiometricMatrix matrix = problem.getMatrix();
+        List<Integer> cols = new ArrayList<Integer>();
+        Map<Integer, Integer> rowOf = new HashMap<Integer, Integer>();
+        for (int j = 0; j < group.length; j++) {
+            if (group[j] != g) {
+                continue;
+            }
+            cols.add(j);
+            for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                if (!rowOf.containsKey(matrix.getRow(q))) {
+                    rowOf.put(matrix.getRow(q), rowOf.size());
+                }
+            }
+        }
+        int m = rowOf.size();
+        int c = cols.size();
+        double[][] a = new double[m][c];
+        for (int k = 0; k < c; k++) {
+            int j = cols.get(k);
+            for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                a[rowOf.get(matrix.getRow(q))][k] += matrix.getColumnValue(q);
+            }
+        }
+        int[] pivotRow = new int[c];
+        Arrays.fill(pivotRow, -1);
+        int r = 0;
+        for (int k = 0; k < c && r < m; k++) {
+            int best = r;
+            for (int i = r + 1; i < m; i++) {
+                if (Math.abs(a[i][k]) > Math.abs(a[best][k])) {
+                    best = i;
+                }
+            }
+            if (Math.abs(a[best][k]) <= ELIMINATION_TOL) {
+                continue;
+            }
+            double[] t = a[r];
+            a[r] = a[best];
+            a[best] = t;
+            double[] pr = a[r];
+            double pivot = pr[k];
+            for (int l = k; l < c; l++) {
+                pr[l] /= pivot;
+            }
+            for (int i = 0; i < m; i++) {
+                double f = a[i][k];
+                if (i == r || f == 0) {
+                    continue;
+                }
+                double[] row = a[i];
+                for (int l = k; l < c; l++) {
+                    if (pr[l] != 0) {
+                        row[l] -= f * pr[l];
+                        if (Math.abs(row[l]) <= ELIMINATION_TOL) {
+                            row[l] = 0;
+                        }
+                    }
+                }
+            }
+            pivotRow[k] = r++;
+        }
+        for (int k = 0; k < c; k++) {
+            if (pivotRow[k] < 0) {
+                continue;
+            }
+            boolean free = false;
+            for (int l = k + 1; l < c && !free; l++) {
+                free = pivotRow[l] < 0 && a[pivotRow[k]][l] != 0;
+            }
+            if (!free) {
+                fwd[cols.get(k)] = false;
+                rev[cols.get(k)] = false;
+            }
+        }
+    }
+
+    // the program of a group: each reaction split into a forward and a
+    // reverse part, mass balanced, minimizing the total flux
+    private SimplexSolver newSolver(boolean[] fwd, boolean[] rev, int[] group, int g, int[] local) {
+        StoichiometricMatrix matrix = problem.getMatrix();
+        List<Integer> cols = new ArrayList<Integer>();
+        Map<Integer, Integer> rowOf = new HashMap<Integer, Integer>();
+        int nnz = 0;
+        for (int j = 0; j < group.length; j++) {
+            if (group[j] != g) {
+                continue;
+            }
+            local[j] = cols.size();
+            cols.add(j);
+            for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                if (!rowOf.containsKey(matrix.getRow(q))) {
+                    rowOf.put(matrix.getRow(q), rowOf.size());
+                }
+                nnz++;
+            }
+        }
+        int c = cols.size();
+        int[] colStart = new int[2 * c + 1];
+        int[] rowIndex = new int[2 * nnz];
+        double[] values = new double[2 * nnz];
+        int p = 0;
+        for (int k = 0; k < 2 * c; k++) {
+            int j = cols.get(k / 2);
+            colStart[k] = p;
+            for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                rowIndex[p] = rowOf.get(matrix.getRow(q));
+                values[p++] = k % 2 == 0 ? matrix.getColumnValue(q) : -matrix.getColumnValue(q);
+            }
+        }
+        colStart[2 * c] = p;
+        SimplexSolver s = new SimplexSolver(rowOf.size(), 2 * c, colStart, rowIndex, values);
+        double[] cost = new double[2 * c];
+        for (int k = 0; k < c; k++) {
+            int j = cols.get(k);
+            s.setBounds(2 * k, 0, fwd[j] ? problem.getUpperBound(j) : 0);
+            s.setBounds(2 * k + 1, 0, rev[j] ? -problem.getLowerBound(j) : 0);
+            // slightly different per reaction, so that loops with the same
+            // total flux do not tie whatever basis the solve starts from
+            double c1 = 1 + COST_SPREAD * ((j * 2654435761L) & 0xffff) / 65536.0;
+            cost[2 * k] = c1;
+            cost[2 * k + 1] = c1;
+        }
+        s.setObjective(cost, false);
+        s.solve();
+        return s;
+    }
+
+    private boolean verify(final List<Integer> candidates, final FluxLoopCatalogue.Loop[] found, boolean[] fwd,
+            boolean[] rev, final int[] group, int groups) throws InterruptedException {
+        if (candidates.isEmpty()) {
+            return true;
+        }
+        final int[] local = new int[group.length];
+        final SimplexSolver[] bases = new SimplexSolver[groups];
+        final int[][] members = new int[groups][];
+        for (int g = 0; g < groups; g++) {
+            bases[g] = newSolver(fwd, rev, group, g, local);
+            members[g] = new int[bases[g].getColumns() / 2];
+        }
+        for (int j = 0; j < group.length; j++) {
+            if (group[j] >= 0) {
+                members[group[j]][local[j]] = j;
+            }
+        }
+        final AtomicBoolean complete = new AtomicBoolean(true);
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, Math.min(workers, (candidates.size() + CHUNK - 1) / CHUNK));
+        ExecutorService exec = executor != null ? executor : FbaExecutors.newComputeExecutor("fba-loops", workers);
+        final AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                futures.add(exec.submit(() -> {
+                    SimplexSolver[] solvers = new SimplexSolver[bases.length];
+                    for (int t = next.getAndAdd(CHUNK); t < candidates.size(); t = next.getAndAdd(CHUNK)) {
+                        for (int u = t; u < Math.min(t + CHUNK, candidates.size()); u++) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return null;
+                            }
+                            int j = candidates.get(u) / 2;
+                            int g = group[j];
+                            if (solvers[g] == null) {
+                                solvers[g] = bases[g].copy();
+                            }
+                            found[u] = smallestLoop(solvers[g], local[j], candidates.get(u) % 2 == 1, members[g],
+                                    complete);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Flux loop worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+        return complete.get();
+    }
+
+    // solves for the smallest loop through one direction of a reaction,
+    // leaving the solver's bounds as they were; null if there is none
+    private FluxLoopCatalogue.Loop smallestLoop(SimplexSolver s, int k, boolean reverse, int[] members,
+            AtomicBoolean complete) {
+        int part = 2 * k + (reverse ? 1 : 0);
+        int other = 2 * k + (reverse ? 0 : 1);
+        double partUp = s.getUpperBound(part);
+        double otherUp = s.getUpperBound(other);
+        // loops scale freely, so a unit of flux, or all the bound allows
+        s.setBounds(part, Math.min(1, partUp), partUp);
+        s.setBounds(other, 0, 0);
+        try {
+            SimplexSolver.Status status = s.solve();
+            if (status != SimplexSolver.Status.OPTIMAL && status != SimplexSolver.Status.INFEASIBLE) {
+                // a stalled warm start, try again from scratch
+                s.resetBasis();
+                status = s.solve();
+            }
+            if (status == SimplexSolver.Status.OPTIMAL) {
+                return loop(s, members);
+            }
+            if (status != SimplexSolver.Status.INFEASIBLE) {
+                complete.set(false);
+            }
+            return null;
+        } finally {
+            s.setBounds(part, 0, partUp);
+            s.setBounds(other, 0, otherUp);
+        }
+    }
+
+    // the loop of a solved program
+    private FluxLoopCatalogue.Loop loop(SimplexSolver s, int[] members) {
+        List<String> ids = new ArrayList<String>();
+        List<Double> fluxes = new ArrayList<Double>();
+        double max = 0;
+        for (int k = 0; k < members.length; k++) {
+            double v = s.getValue(2 * k) - s.getValue(2 * k + 1);
+            if (Math.abs(v) > FLUX_TOL) {
+                ids.add(problem.getMatrix().getReactionId(members[k]));
+                fluxes.add(v);
+                max = Math.max(max, Math.abs(v));
+            }
+        }
+        double[] scaled = new double[fluxes.size()];
+        for (int i = 0; i < scaled.length; i++) {
+            scaled[i] = fluxes.get(i) / max;
+        }
+        return new FluxLoopCatalogue.Loop(ids, scaled);
+    }
+}
@@ -0,0 +1,338 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Uniform sampling of the feasible flux space of an {@link FbaProblem}
+ * with the parallel OPTGP variant of artificial centering hit-and-run,
+ * run in-process.</p>
+ * <p>Warm-up points are first found by minimizing and maximizing every
+ * variable, in parallel with warm-started solvers as in
+ * {@link FluxVariabilityAnalysis}; their mean is the center. Each worker
+ * then runs its own chain from the center: a step moves along the
+ * direction from the center to a random warm-up point, by a distance drawn
+ * uniformly from the range the variable bounds allow. Warm-up points and
+ * center are all mass balanced, so every direction is too and the chains
+ * stay in the solution space without solving again; a step never leaves
+ * the bounds, so points are never clamped back. Only one point in every
+ * thinning steps is kept. ACHR's running center would make the
+ * chains depend on each other, so the fixed OPTGP center is used instead.</p>
+ * <p>With an objective fraction, the objective variable is first bounded
+ * below by that fraction of its optimum, so only near optimal fluxes are
+ * sampled. With the same seed and number of threads the samples are the
+ * same.</p>
+ * <pre>
+ * FluxSampler sampler = new FluxSampler(problem);
+ * sampler.setObjectiveFraction(0.9);
+ * try (FbaSnapshot.Writer w = FbaSnapshot.create(path)) {
+ *     sampler.sample(10000, w, "glucose.");
+ * }
+ * </pre>
+ */
+public class FluxSampler {
+    // variables handed to a warm-up worker at a time, as in the variability analysis
+    private static final int CHUNK = 8;
+
+    private final FbaProblem problem;
+    private double objectiveFraction = 0;
+    private int thinning = 100;
+    private long seed = System.nanoTime();
+    private int threads = 0;
+    private ExecutorService executor = null;
+
+    public FluxSampler(FbaProblem problem) {
+        this.problem = problem;
+    }
+
+    /** Set the fraction of the optimal objective value every sample must
+     * still reach.
+     * @param objectiveFraction the fraction, between 0 and 1. Default 0, the
+     * whole solution space.
+     */
+    public void setObjectiveFraction(double objectiveFraction) {
+        if (objectiveFraction < 0 || objectiveFraction > 1) {
+            throw new IllegalArgumentException("objectiveFraction must be between 0 and 1");
+        }
+        this.objectiveFraction = objectiveFraction;
+    }
+
+    public double getObjectiveFraction() {
+        return objectiveFraction;
+    }
+
+    /** Set the number of steps a chain takes between two kept samples.
+     * @param thinning the number of steps, at least 1. Default 100.
+     */
+    public void setThinning(int thinning) {
+        if (thinning < 1) {
+            throw new IllegalArgumentException("thinning must be at least 1");
+        }
+        this.thinning = thinning;
+    }
+
+    public int getThinning() {
+        return thinning;
+    }
+
+    /** Set the seed of the chains' random numbers.
+     * @param seed the seed. Default the time of construction.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /** Set the number of workers, which is also the number of chains.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this sampler.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** Draws samples into memory.
+     * @param count the number of samples.
+     * @return per sample, the value of every variable of the program.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     * @throws IllegalStateException if the program has no optimal solution.
+     */
+    public double[][] sample(int count) throws InterruptedException {
+        final double[][] ret = new double[count][];
+        run(count, new Sink() {
+            @Override
+            public void add(int sample, double[] values) {
+                ret[sample] = values.clone();
+            }
+        });
+        return ret;
+    }
+
+    /** Draws samples and writes each to a snapshot as soon as it is drawn,
+     * so memory does not grow with the number of samples. Samples are
+     * written in the order they are drawn, with the sample number in their
+     * id.
+     * @param count the number of samples.
+     * @param out the snapshot writer.
+     * @param idPrefix the prefix of the solution ids, followed by the sample
+     * number.
+     * @throws IOException if the snapshot cannot be written; the workers
+     * are cancelled.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     * @throws IllegalStateException if the program has no optimal solution.
+     */
+    public void sample(int count, final FbaSnapshot.Writer out, final String idPrefix)
+            throws IOException, InterruptedException {
+        final int obj = problem.getObjectiveVariable();
+        try {
+            run(count, new Sink() {
+                @Override
+                public void add(int sample, double[] values) {
+                    synchronized (out) {
+                        try {
+                            out.add(idPrefix + sample, problem, values, values[obj]);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // receives the samples from the chains; the values are reused afterwards
+    private interface Sink {
+        void add(int sample, double[] values);
+    }
+
+    // one pass of a worker over a shared schedule, with its own solver
+    private interface Worker {
+        void run(int worker, SimplexSolver s);
+    }
+
+    private void run(final int count, final Sink sink) throws InterruptedException {
+        final int n = problem.getVariableCount();
+        final SimplexSolver base = problem.newSolver();
+        if (base.solve() != SimplexSolver.Status.OPTIMAL) {
+            throw new IllegalStateException("The program has no optimal solution: " + base.getStatus());
+        }
+        int obj = problem.getObjectiveVariable();
+        double floor = objectiveFraction * base.getObjectiveValue();
+        base.setBounds(obj, Math.min(Math.max(base.getLowerBound(obj), floor), base.getUpperBound(obj)),
+                base.getUpperBound(obj));
+        base.setObjective(new double[n], true);
+        final double[] lower = new double[n];
+        final double[] upper = new double[n];
+        for (int j = 0; j < n; j++) {
+            lower[j] = base.getLowerBound(j);
+            upper[j] = base.getUpperBound(j);
+        }
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, workers);
+        ExecutorService exec = executor != null ? executor : FbaExecutors.newComputeExecutor("fba-sample", workers);
+        try {
+            // the minimum and maximum of every variable that can vary; the
+            // chunks are dealt out in a fixed order, so that each solver
+            // warm starts from the same bases on every run
+            final double[][] warmup = new double[2 * n][];
+            final int warmupWorkers = Math.min(workers, (n + CHUNK - 1) / CHUNK);
+            run(exec, warmupWorkers, base, new Worker() {
+                @Override
+                public void run(int worker, SimplexSolver s) {
+                    for (int from = worker * CHUNK; from < n; from += warmupWorkers * CHUNK) {
+                        for (int j = from; j < Math.min(n, from + CHUNK); j++) {
+                            if (lower[j] < upper[j]) {
+                                warmup[2 * j] = optimize(s, j, false);
+                                warmup[2 * j + 1] = optimize(s, j, true);
+                            }
+                        }
+                    }
+                }
+            });
+            List<double[]> points = new ArrayList<double[]>();
+            for (double[] p : warmup) {
+                if (p != null) {
+                    points.add(p);
+                }
+            }
+            if (points.isEmpty()) {
+                // nothing can vary: the optimum is the only point
+                base.solve();
+                points.add(base.getValues());
+            }
+            final double[] center = new double[n];
+            for (double[] p : points) {
+                for (int j = 0; j < n; j++) {
+                    center[j] += p[j] / points.size();
+                }
+            }
+            // the directions from the center to the warm-up points
+            final double[][] directions = new double[points.size()][n];
+            for (int k = 0; k < directions.length; k++) {
+                for (int j = 0; j < n; j++) {
+                    directions[k][j] = points.get(k)[j] - center[j];
+                }
+            }
+            final int chains = Math.max(1, Math.min(workers, count));
+            run(exec, chains, base, new Worker() {
+                @Override
+                public void run(int chain, SimplexSolver s) {
+                    SplittableRandom random = new SplittableRandom(seed + chain);
+                    double[] x = center.clone();
+                    for (int sample = chain; sample < count; sample += chains) {
+                        for (int step = 0; step < thinning; step++) {
+                            step(x, directions[random.nextInt(directions.length)], lower, upper, random);
+                        }
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        sink.add(sample, x);
+                    }
+                }
+            });
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    private static void run(ExecutorService exec, int workers, SimplexSolver base, final Worker worker)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final SimplexSolver s = base.copy();
+                final int index = w;
+                futures.add(exec.submit(() -> {
+                    worker.run(index, s);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Flux sampling worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    // minimizes or maximizes variable j from the solver's current basis,
+    // returning the solution, or null if none was found
+    private static double[] optimize(SimplexSolver s, int j, boolean maximize) {
+        s.setObjectiveCoefficient(j, 1);
+        s.setMaximize(maximize);
+        try {
+            if (s.solve() != SimplexSolver.Status.OPTIMAL) {
+                // a stalled warm start, try again from scratch
+                s.resetBasis();
+                if (s.solve() != SimplexSolver.Status.OPTIMAL) {
+                    return null;
+                }
+            }
+            return s.getValues();
+        } finally {
+            s.setObjectiveCoefficient(j, 0);
+        }
+    }
+
+    // moves x along d by a uniform distance within the bounds; every
+    // component that moves limits the step, however small, as clamping x
+    // to the bounds afterwards would take it off the mass balance
+    private static void step(double[] x, double[] d, double[] lower, double[] upper, SplittableRandom random) {
+        double min = Double.NEGATIVE_INFINITY;
+        double max = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < x.length; j++) {
+            if (d[j] > 0) {
+                min = Math.max(min, Math.min(0, lower[j] - x[j]) / d[j]);
+                max = Math.min(max, Math.max(0, upper[j] - x[j]) / d[j]);
+            } else if (d[j] < 0) {
+                min = Math.max(min, Math.max(0, upper[j] - x[j]) / d[j]);
+                max = Math.min(max, Math.min(0, lower[j] - x[j]) / d[j]);
+            }
+        }
+        if (!(max > min) || Double.isInfinite(min) || Double.isInfinite(max)) {
+            return;
+        }
+        double alpha = min + random.nextDouble() * (max - min);
+        for (int j = 0; j < x.length; j++) {
+            x[j] += alpha * d[j];
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>Flux variability analysis of an {@link FbaProblem}, run in parallel.</p>
+ * <p>The program is first solved for its objective; the objective variable
+ * is then bounded below by objective_fraction times the optimum and every
+ * variable is minimized and maximized in turn, as the service's
+ * FindTightBounds does. The variables are handed out in small contiguous
+ * chunks to one worker per thread. Each worker keeps its own copy of the
+ * solver and starts every solve from the optimal basis of the previous
+ * one, so after the first few solves most take a handful of pivots.
+ * Whenever a solution puts a variable at one of its bounds, that side of
+ * its range is known and is not solved for again.</p>
+ * <p>The range of each variable is passed to the {@link Listener} as soon
+ * as it is known.</p>
+ * <pre>
+ * FbaSolution s = new FluxVariabilityAnalysis(problem).run();
+ * for (FBAReactionVariable v : s.getReactionVariables()) {
+ *     System.out.println(v.getModelreactionRef() + " " + v.getMin() + " " + v.getMax() + " " + v.getClass_());
+ * }
+ * </pre>
+ */
+public class FluxVariabilityAnalysis {
+    // variables handed to a worker at a time; neighbouring reactions tend to
+    // share a pathway, so their optimal bases are close
+    private static final int CHUNK = 8;
+    // a value this close to a bound is at the bound
+    private static final double BOUND_TOL = 1e-9;
+
+    private final FbaProblem problem;
+    private double objectiveFraction;
+    private int threads = 0;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** Receives the range of each variable as soon as it is known. Called
+     * from the worker threads, so implementations must be thread safe.
+     */
+    public interface Listener {
+        void variableDone(int variable, double min, double max);
+    }
+
+    /** Constructs an analysis with the objective fraction of the problem.
+     * @param problem the program.
+     */
+    public FluxVariabilityAnalysis(FbaProblem problem) {
+        this.problem = problem;
+        this.objectiveFraction = problem.getObjectiveFraction();
+    }
+
+    /** Set the fraction of the optimal objective value every solution must
+     * still reach.
+     * @param objectiveFraction the fraction, between 0 and 1.
+     */
+    public void setObjectiveFraction(double objectiveFraction) {
+        if (objectiveFraction < 0 || objectiveFraction > 1) {
+            throw new IllegalArgumentException("objectiveFraction must be between 0 and 1");
+        }
+        this.objectiveFraction = objectiveFraction;
+    }
+
+    public double getObjectiveFraction() {
+        return objectiveFraction;
+    }
+
+    /** Set the number of workers. One worker runs the solves serially.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this analysis.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Runs the analysis.
+     * @return the optimal solution of the program, carrying the range of
+     * every variable; if the program itself has no optimal solution, that
+     * solution without variability.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public FbaSolution run() throws InterruptedException {
+        final SimplexSolver base = problem.newSolver();
+        base.solve();
+        FbaSolution solution = problem.solution(base);
+        if (!solution.isOptimal()) {
+            return solution;
+        }
+        final int n = problem.getVariableCount();
+        int obj = problem.getObjectiveVariable();
+        double floor = objectiveFraction * base.getObjectiveValue();
+        base.setBounds(obj, Math.min(Math.max(base.getLowerBound(obj), floor), base.getUpperBound(obj)),
+                base.getUpperBound(obj));
+        base.setObjective(new double[n], true);
+        final double[] min = new double[n];
+        final double[] max = new double[n];
+        Arrays.fill(min, Double.NaN);
+        Arrays.fill(max, Double.NaN);
+        // 1 once a solution has put the variable at its lower / upper bound
+        final AtomicIntegerArray atLower = new AtomicIntegerArray(n);
+        final AtomicIntegerArray atUpper = new AtomicIntegerArray(n);
+        final double[] start = base.getValues();
+        markBounds(base, start, atLower, atUpper);
+        final AtomicInteger next = new AtomicInteger();
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, Math.min(workers, (n + CHUNK - 1) / CHUNK));
+        ExecutorService exec = executor != null ? executor : FbaExecutors.newComputeExecutor("fba-fva", workers);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final SimplexSolver s = base.copy();
+                futures.add(exec.submit(() -> {
+                    double[] x = new double[n];
+                    for (int from = next.getAndAdd(CHUNK); from < n; from = next.getAndAdd(CHUNK)) {
+                        for (int j = from; j < Math.min(n, from + CHUNK); j++) {
+                            min[j] = atLower.get(j) == 1 ? s.getLowerBound(j) : optimize(s, j, false, x, atLower,
+                                    atUpper);
+                            max[j] = atUpper.get(j) == 1 ? s.getUpperBound(j) : optimize(s, j, true, x, atLower,
+                                    atUpper);
+                            if (listener != null) {
+                                listener.variableDone(j, min[j], max[j]);
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Flux variability worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+        solution.setVariability(min, max);
+        return solution;
+    }
+
+    // minimizes or maximizes variable j from the solver's current basis
+    private static double optimize(SimplexSolver s, int j, boolean maximize, double[] x,
+            AtomicIntegerArray atLower, AtomicIntegerArray atUpper) {
+        s.setObjectiveCoefficient(j, 1);
+        s.setMaximize(maximize);
+        try {
+            if (s.solve() != SimplexSolver.Status.OPTIMAL) {
+                // a stalled warm start, try again from scratch
+                s.resetBasis();
+                if (s.solve() != SimplexSolver.Status.OPTIMAL) {
+                    return Double.NaN;
+                }
+            }
+            for (int k = 0; k < x.length; k++) {
+                x[k] = s.getValue(k);
+            }
+            markBounds(s, x, atLower, atUpper);
+            return x[j];
+        } finally {
+            s.setObjectiveCoefficient(j, 0);
+        }
+    }
+
+    private static void markBounds(SimplexSolver s, double[] x, AtomicIntegerArray atLower,
+            AtomicIntegerArray atUpper) {
+        for (int k = 0; k < x.length; k++) {
+            if (x[k] <= s.getLowerBound(k) + BOUND_TOL) {
+                atLower.lazySet(k, 1);
+            }
+            if (x[k] >= s.getUpperBound(k) - BOUND_TOL) {
+                atUpper.lazySet(k, 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The alternative solutions of a {@link Gapfiller}, cheapest first, each
+ * convertible to a GapfillingSolution of an FBA object.
+ */
+public class GapfillResult {
+    private static final String TEMPLATE_REACTION_REF = "~/fbamodel/template/reactions/id/";
+    private static final String TEMPLATE_COMPARTMENT_REF = "~/fbamodel/template/compartments/id/";
+
+    private final List<Solution> solutions;
+    private final boolean complete;
+    private final long nodes;
+    private final long elapsedMillis;
+    private final boolean gapfillingNeeded;
+
+    /** One set of template reactions that lets the target carry its minimum
+     * flux. */
+    public static class Solution {
+        private final List<String> reactionIds;
+        private final List<String> compartmentIds;
+        private final List<String> directions;
+        private final double cost;
+        private String id;
+        private boolean suboptimal;
+
+        Solution(List<String> reactionIds, List<String> compartmentIds, List<String> directions, double cost) {
+            this.reactionIds = Collections.unmodifiableList(reactionIds);
+            this.compartmentIds = Collections.unmodifiableList(compartmentIds);
+            this.directions = Collections.unmodifiableList(directions);
+            this.cost = cost;
+        }
+
+        /** Get the id of the solution in its result.
+         * @return gf.0 for the cheapest solution, gf.1 for the next and so on.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /** Get the added template reactions.
+         * @return the template reaction ids, e.g. rxn00001_c, in template
+         * order.
+         */
+        public List<String> getReactionIds() {
+            return reactionIds;
+        }
+
+        /** Get the direction each reaction is added in.
+         * @return &gt;, &lt; or =, one per reaction.
+         */
+        public List<String> getDirections() {
+            return directions;
+        }
+
+        /** Get the cost of the solution, the number of added reaction
+         * directions.
+         * @return the cost.
+         */
+        public double getCost() {
+            return cost;
+        }
+
+        /** Check whether a cheaper solution was found.
+         * @return true if this is not among the cheapest solutions.
+         */
+        public boolean isSuboptimal() {
+            return suboptimal;
+        }
+
+        /** Builds the GapfillingSolution of an FBA object for this solution,
+         * with the reactions added in compartment index 0.
+         * @return the GapfillingSolution, as JSON.
+         */
+        public ObjectNode toJson() {
+            ObjectNode ret = JsonRpcCodec.mapper().createObjectNode();
+            ret.put("id", id);
+            ret.put("solutionCost", cost);
+            ret.putArray("biomassRemoval_refs");
+            ret.putArray("mediaSupplement_refs");
+            ret.putArray("koRestore_refs");
+            ret.put("integrated", 0);
+            ret.put("suboptimal", suboptimal ? 1 : 0);
+            ArrayNode rxns = ret.putArray("gapfillingSolutionReactions");
+            for (int i = 0; i < reactionIds.size(); i++) {
+                ObjectNode rxn = rxns.addObject();
+                rxn.put("reaction_ref", TEMPLATE_REACTION_REF + reactionIds.get(i));
+                rxn.put("compartment_ref", TEMPLATE_COMPARTMENT_REF + compartmentIds.get(i));
+                rxn.put("direction", directions.get(i));
+                rxn.put("compartmentIndex", 0);
+                rxn.putArray("candidateFeature_refs");
+            }
+            return ret;
+        }
+
+        @Override
+        public String toString() {
+            return "Solution [id=" + id + ", cost=" + cost + ", reactions=" + reactionIds + ", directions=" +
+                    directions + "]";
+        }
+    }
+
+    GapfillResult(List<Solution> solutions, boolean complete, long nodes, long elapsedMillis,
+            boolean gapfillingNeeded) {
+        this.solutions = Collections.unmodifiableList(new ArrayList<Solution>(solutions));
+        this.complete = complete;
+        this.nodes = nodes;
+        this.elapsedMillis = elapsedMillis;
+        this.gapfillingNeeded = gapfillingNeeded;
+        for (int i = 0; i < solutions.size(); i++) {
+            Solution s = solutions.get(i);
+            s.id = "gf." + i;
+            s.suboptimal = s.cost > solutions.get(0).cost;
+        }
+    }
+
+    /** Get the solutions, cheapest first.
+     * @return the solutions; empty if the target cannot carry its minimum
+     * flux even with every candidate, or if it already does without any.
+     */
+    public List<Solution> getSolutions() {
+        return solutions;
+    }
+
+    /** Check whether the search ran to the end, so that the solutions are
+     * the cheapest there are.
+     * @return false if the time limit ran out or a relaxation could not be
+     * solved.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /** Check whether the model needs gapfilling at all.
+     * @return false if the target already carries its minimum flux without
+     * any candidate, in which case there are no solutions.
+     */
+    public boolean isGapfillingNeeded() {
+        return gapfillingNeeded;
+    }
+
+    /** Get the number of branch and bound nodes solved.
+     * @return the node count.
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /** Builds the gapfillingSolutions of an FBA object.
+     * @return the GapfillingSolutions, as JSON.
+     */
+    public ArrayNode toJson() {
+        ArrayNode ret = JsonRpcCodec.mapper().createArrayNode();
+        for (Solution s : solutions) {
+            ret.add(s.toJson());
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "GapfillResult [solutions=" + solutions.size() + ", complete=" + complete + ", gapfillingNeeded=" +
+                gapfillingNeeded + ", nodes=" + nodes + ", elapsedMillis=" + elapsedMillis + "]";
+    }
+}
@@ -0,0 +1,742 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * <p>Gapfilling of an FBAModel from its ModelTemplate, with the
+ * alternative solutions enumerated by a parallel branch and bound, run
+ * in-process instead of through gapfill_metabolic_model.</p>
+ * <p>Every template reaction the model lacks is a candidate, in the
+ * directions its GapfillDirection allows, and is added to the flux balance
+ * program of the model with a binary variable per direction: the flux may
+ * only run in a direction whose binary is one. The mixed integer program
+ * minimizes the number of candidate directions used, each at a cost of 1 as
+ * the service sets them, while the target reaction carries at least
+ * minimum_target_flux.</p>
+ * <p>The workers share one queue of open nodes, best bound first, and one
+ * list of incumbents, the number_of_solutions cheapest solutions found so
+ * far; a node whose bound cannot beat the last of them is pruned. A worker
+ * dives from the node it takes, fixing the largest fractional binary to one
+ * and queueing the other branch, with its own solver warm started from the
+ * basis of the previous node. Every node's relaxation also gives a
+ * solution, the candidates that carry flux in it. Instead of resolving with
+ * an integer cut after each solution, as RecursiveMILP does, a node whose
+ * relaxation is integral is split into the nodes where one more of its
+ * candidates is off, so all alternatives come out of one search. As with
+ * the cuts, a solution that includes all the reactions of another is not an
+ * alternative and is left out. A model whose target already carries the
+ * minimum flux with every candidate off needs no gapfilling: the result has
+ * no solutions and says so.</p>
+ * <p>Of the {@link GapfillMetabolicModelParams}, the local engine honours
+ * target_reaction, minimum_target_flux, number_of_solutions,
+ * feature_ko_list, reaction_ko_list, custom_bound_list and
+ * media_supplement_list; options it does not implement are rejected rather
+ * than silently ignored.</p>
+ * <pre>
+ * Gapfiller gf = Gapfiller.fromModel(modelJson, templateJson, mediaJson, params);
+ * GapfillResult r = gf.run();
+ * for (GapfillResult.Solution s : r.getSolutions()) {
+ *     System.out.println(s.getCost() + " " + s.getReactionIds());
+ * }
+ * </pre>
+ */
+public class Gapfiller {
+    /** The minimum flux through the target reaction when not given, as in
+     * the service. */
+    public static final double DEFAULT_MINIMUM_TARGET_FLUX = 0.1;
+    // a relaxed binary this close to 0 or 1 is integral
+    private static final double INTEGER_TOL = 1e-6;
+    // a flux this small is not carried
+    private static final double FLUX_TOL = 1e-9;
+    // the cost of a candidate direction, as the service sets it
+    private static final double CANDIDATE_COST = 1;
+    // the placeholder reaction of the templates, never a candidate
+    private static final String NULL_REACTION = "rxn00000_c";
+
+    private static final byte FREE = 0;
+    private static final byte OFF = 1;
+    private static final byte ON = 2;
+
+    private final FbaProblem problem;
+    // per binary: the flux variable, whether it gates the reverse direction,
+    // its big M and its cost
+    private final int[] gated;
+    private final boolean[] reverse;
+    private final double[] bigM;
+    private final double[] cost;
+    // per binary: the template reaction and compartment
+    private final String[] templateIds;
+    private final String[] compartmentIds;
+    private final double minimumTargetFlux;
+    private int numberOfSolutions;
+    private int threads = 0;
+    private ExecutorService executor = null;
+    private long timeLimit = 0;
+
+    private Gapfiller(FbaProblem problem, List<String> candidates, Map<String, String> compartments,
+            double minimumTargetFlux, int numberOfSolutions) {
+        this.problem = problem;
+        this.minimumTargetFlux = minimumTargetFlux;
+        this.numberOfSolutions = numberOfSolutions;
+        List<Integer> vars = new ArrayList<Integer>();
+        List<Boolean> rev = new ArrayList<Boolean>();
+        for (String id : candidates) {
+            int j = problem.getReactionVariable(id + "0");
+            if (problem.getUpperBound(j) > 0) {
+                vars.add(j);
+                rev.add(false);
+            }
+            if (problem.getLowerBound(j) < 0) {
+                vars.add(j);
+                rev.add(true);
+            }
+        }
+        int k = vars.size();
+        gated = new int[k];
+        reverse = new boolean[k];
+        bigM = new double[k];
+        cost = new double[k];
+        templateIds = new String[k];
+        compartmentIds = new String[k];
+        for (int b = 0; b < k; b++) {
+            int j = vars.get(b);
+            gated[b] = j;
+            reverse[b] = rev.get(b);
+            bigM[b] = reverse[b] ? -problem.getLowerBound(j) : problem.getUpperBound(j);
+            cost[b] = CANDIDATE_COST;
+            String id = problem.getVariableId(j);
+            templateIds[b] = id.substring(0, id.length() - 1);
+            compartmentIds[b] = compartments.get(templateIds[b]);
+        }
+    }
+
+    /** Builds the gapfilling program of a model from a template on a media.
+     * @param model the FBAModel object, as JSON.
+     * @param template the ModelTemplate object, as JSON.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     * @param params the gapfilling parameters, or null for the defaults;
+     * only the fields listed in the class description are used.
+     * @return the gapfiller.
+     */
+    public static Gapfiller fromModel(JsonNode model, JsonNode template, JsonNode media,
+            GapfillMetabolicModelParams params) {
+        if (params == null) {
+            params = new GapfillMetabolicModelParams();
+        }
+        rejectUnsupported(params);
+        List<String> candidates = new ArrayList<String>();
+        Map<String, String> compartments = new HashMap<String, String>();
+        JsonNode merged = addCandidates(model, template, candidates, compartments);
+        RunFluxBalanceAnalysisParams fba = new RunFluxBalanceAnalysisParams()
+                .withTargetReaction(params.getTargetReaction())
+                .withFeatureKoList(params.getFeatureKoList())
+                .withReactionKoList(params.getReactionKoList())
+                .withCustomBoundList(params.getCustomBoundList())
+                .withMediaSupplementList(params.getMediaSupplementList());
+        FbaProblem problem = FbaProblem.fromModel(merged, media, fba);
+        Long solutions = params.getNumberOfSolutions();
+        return new Gapfiller(problem, candidates, compartments,
+                params.getMinimumTargetFlux() == null ? DEFAULT_MINIMUM_TARGET_FLUX : params.getMinimumTargetFlux(),
+                solutions == null ? 1 : (int) Math.max(1, solutions));
+    }
+
+    private static void rejectUnsupported(GapfillMetabolicModelParams params) {
+        List<String> unsupported = new ArrayList<String>();
+        if (params.getThermodynamicConstraints() != null && params.getThermodynamicConstraints() != 0) {
+            unsupported.add("thermodynamic_constraints");
+        }
+        if (params.getComprehensiveGapfill() != null && params.getComprehensiveGapfill() != 0) {
+            unsupported.add("comprehensive_gapfill");
+        }
+        if (params.getSourceFbamodelId() != null) {
+            unsupported.add("source_fbamodel_id");
+        }
+        if (params.getExpseriesId() != null) {
+            unsupported.add("expseries_id");
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalArgumentException("Not supported by the local gapfilling engine: " + unsupported);
+        }
+    }
+
+    // a copy of the model with every template reaction it lacks as a model
+    // reaction in compartment index 0, as the MFAToolkit adds them
+    private static JsonNode addCandidates(JsonNode model, JsonNode template, List<String> candidates,
+            Map<String, String> compartments) {
+        ObjectNode merged = model.deepCopy();
+        Set<String> reactions = new HashSet<String>();
+        for (JsonNode rxn : model.path("modelreactions")) {
+            reactions.add(rxn.path("id").asText());
+        }
+        Set<String> compounds = new HashSet<String>();
+        for (JsonNode cpd : model.path("modelcompounds")) {
+            compounds.add(cpd.path("id").asText());
+        }
+        Map<String, String> compCompartments = new HashMap<String, String>();
+        for (JsonNode cc : template.path("compcompounds")) {
+            compCompartments.put(cc.path("id").asText(), FbaProblem.refId(cc.path("templatecompartment_ref").asText()));
+        }
+        ArrayNode mdlrxns = merged.withArray("modelreactions");
+        ArrayNode mdlcpds = merged.withArray("modelcompounds");
+        for (JsonNode trxn : template.path("reactions")) {
+            String id = trxn.path("id").asText();
+            String dir = trxn.path("GapfillDirection").asText(trxn.path("direction").asText("="));
+            if (id.equals(NULL_REACTION) || reactions.contains(id + "0") || dir.isEmpty()) {
+                continue;
+            }
+            ObjectNode rxn = mdlrxns.addObject();
+            rxn.put("id", id + "0");
+            rxn.put("direction", dir);
+            rxn.put("maxforflux", trxn.path("maxforflux").asDouble(FbaProblem.DEFAULT_MAX_FLUX));
+            rxn.put("maxrevflux", trxn.path("maxrevflux").asDouble(FbaProblem.DEFAULT_MAX_FLUX));
+            ArrayNode rgts = rxn.putArray("modelReactionReagents");
+            for (JsonNode trgt : trxn.path("templateReactionReagents")) {
+                String cc = FbaProblem.refId(trgt.path("templatecompcompound_ref").asText());
+                String cmp = compCompartments.get(cc);
+                if (cmp == null) {
+                    cmp = cc.substring(cc.lastIndexOf('_') + 1);
+                }
+                String cpd = cc + "0";
+                if (compounds.add(cpd)) {
+                    mdlcpds.addObject().put("id", cpd).put("modelcompartment_ref", "~/modelcompartments/id/" + cmp + "0");
+                }
+                rgts.addObject().put("modelcompound_ref", "~/modelcompounds/id/" + cpd)
+                        .put("coefficient", trgt.path("coefficient").asDouble());
+            }
+            reactions.add(id + "0");
+            candidates.add(id);
+            compartments.put(id, FbaProblem.refId(trxn.path("templatecompartment_ref").asText("c")));
+        }
+        return merged;
+    }
+
+    /** Get the flux balance program of the model with the candidate
+     * reactions added.
+     * @return the program.
+     */
+    public FbaProblem getProblem() {
+        return problem;
+    }
+
+    /** Get the number of binary variables, one per direction of each
+     * candidate reaction.
+     * @return the binary count.
+     */
+    public int getCandidateCount() {
+        return gated.length;
+    }
+
+    public double getMinimumTargetFlux() {
+        return minimumTargetFlux;
+    }
+
+    /** Set the number of alternative solutions to enumerate.
+     * @param numberOfSolutions the number of solutions, at least 1. Default
+     * number_of_solutions, or 1.
+     */
+    public void setNumberOfSolutions(int numberOfSolutions) {
+        if (numberOfSolutions < 1) {
+            throw new IllegalArgumentException("numberOfSolutions must be at least 1");
+        }
+        this.numberOfSolutions = numberOfSolutions;
+    }
+
+    public int getNumberOfSolutions() {
+        return numberOfSolutions;
+    }
+
+    /** Set the number of workers. One worker runs the search serially.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this gapfiller.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** Set a limit on the time of the search, as the Recursive MILP timeout
+     * of the service. When it runs out, the solutions found so far are
+     * returned and the result is not complete.
+     * @param timeLimit the limit in milliseconds; zero or less for none.
+     * Default none.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    // a subproblem: the binaries fixed off or on, and the bound of its parent
+    private static class Node implements Comparable<Node> {
+        private final byte[] fixed;
+        private final double bound;
+        private final int depth;
+        private final long sequence;
+
+        private Node(byte[] fixed, double bound, int depth, long sequence) {
+            this.fixed = fixed;
+            this.bound = bound;
+            this.depth = depth;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            if (bound != o.bound) {
+                return Double.compare(bound, o.bound);
+            }
+            if (depth != o.depth) {
+                return o.depth - depth;
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+
+    // a solution: the binaries used and their cost
+    private static class Incumbent {
+        private final BitSet used;
+        private final double cost;
+
+        private Incumbent(BitSet used, double cost) {
+            this.used = used;
+            this.cost = cost;
+        }
+    }
+
+    // the state shared by the workers
+    private class Search {
+        private final PriorityQueue<Node> queue = new PriorityQueue<Node>();
+        private final List<Incumbent> incumbents = new ArrayList<Incumbent>();
+        private final long deadline;
+        private double cutoff = Double.POSITIVE_INFINITY;
+        private int active = 0;
+        private long sequence = 0;
+        private long nodes = 0;
+        private boolean stopped = false;
+        private boolean complete = true;
+
+        private Search(long deadline) {
+            this.deadline = deadline;
+        }
+
+        // the next open node that can still beat the incumbents, or null
+        // once there is none and no worker can add one
+        private synchronized Node take() throws InterruptedException {
+            while (true) {
+                if (!stopped && deadline > 0 && System.nanoTime() > deadline) {
+                    stop(false);
+                }
+                if (stopped) {
+                    return null;
+                }
+                Node node = queue.poll();
+                if (node != null) {
+                    if (node.bound >= cutoff - INTEGER_TOL) {
+                        continue;
+                    }
+                    active++;
+                    nodes++;
+                    return node;
+                }
+                if (active == 0) {
+                    notifyAll();
+                    return null;
+                }
+                wait();
+            }
+        }
+
+        private synchronized void done() {
+            active--;
+            if (active == 0 && queue.isEmpty()) {
+                notifyAll();
+            }
+        }
+
+        private synchronized void push(byte[] fixed, double bound, int depth) {
+            if (bound < cutoff - INTEGER_TOL) {
+                queue.add(new Node(fixed, bound, depth, sequence++));
+                notify();
+            }
+        }
+
+        private synchronized void stop(boolean searched) {
+            stopped = true;
+            complete &= searched;
+            notifyAll();
+        }
+
+        private synchronized void incomplete() {
+            complete = false;
+        }
+
+        private synchronized double cutoff() {
+            return cutoff;
+        }
+
+        // whether a solution would be among the cheapest found, and does not
+        // include one of them
+        private synchronized boolean accepts(BitSet used, double c) {
+            if (c >= cutoff - INTEGER_TOL) {
+                return false;
+            }
+            for (Incumbent inc : incumbents) {
+                if (includes(used, inc.used)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // keeps a minimal solution if it is among the cheapest found; being
+        // minimal, it cannot include another, nor be included in one found
+        // later, so the cutoff only ever goes down
+        private synchronized void offer(BitSet used, double c) {
+            if (!accepts(used, c)) {
+                return;
+            }
+            int at = 0;
+            while (at < incumbents.size() && incumbents.get(at).cost <= c) {
+                at++;
+            }
+            incumbents.add(at, new Incumbent(used, c));
+            if (incumbents.size() > numberOfSolutions) {
+                incumbents.remove(incumbents.size() - 1);
+            }
+            if (incumbents.size() == numberOfSolutions) {
+                cutoff = incumbents.get(incumbents.size() - 1).cost;
+            }
+        }
+    }
+
+    private static boolean includes(BitSet set, BitSet subset) {
+        BitSet rest = (BitSet) subset.clone();
+        rest.andNot(set);
+        return rest.isEmpty();
+    }
+
+    /** Enumerates the cheapest alternative gapfilling solutions.
+     * @return the solutions, cheapest first.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public GapfillResult run() throws InterruptedException {
+        long start = System.nanoTime();
+        final Search search = new Search(timeLimit > 0 ? start + timeLimit * 1000000 : 0);
+        if (problem.getUpperBound(problem.getObjectiveVariable()) < minimumTargetFlux) {
+            // the target is bounded below the minimum flux
+            return new GapfillResult(new ArrayList<GapfillResult.Solution>(), true, 0, 0, true);
+        }
+        final SimplexSolver base = newSolver();
+        // the root relaxation, so that every worker starts from its basis
+        base.solve();
+        byte[] none = new byte[gated.length];
+        Arrays.fill(none, OFF);
+        if (solve(base.copy(), new byte[gated.length], none) == SimplexSolver.Status.OPTIMAL) {
+            // the model reaches the minimum flux without any candidate
+            return new GapfillResult(new ArrayList<GapfillResult.Solution>(), true, 0,
+                    (System.nanoTime() - start) / 1000000, false);
+        }
+        search.push(new byte[gated.length], 0, 0);
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, workers);
+        ExecutorService exec = executor != null ? executor : FbaExecutors.newComputeExecutor("fba-gapfill", workers);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final SimplexSolver s = base.copy();
+                futures.add(exec.submit(() -> {
+                    work(search, s);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Gapfilling worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            search.stop(false);
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+        List<GapfillResult.Solution> solutions = new ArrayList<GapfillResult.Solution>();
+        for (Incumbent inc : search.incumbents) {
+            solutions.add(solution(inc));
+        }
+        // equal costs are found in any order by the workers
+        solutions.sort((a, b) -> a.getCost() != b.getCost() ? Double.compare(a.getCost(), b.getCost())
+                : a.getReactionIds().toString().compareTo(b.getReactionIds().toString()));
+        return new GapfillResult(solutions, search.complete, search.nodes,
+                (System.nanoTime() - start) / 1000000, true);
+    }
+
+    // the flux balance program with the candidates gated by their binaries:
+    // one row per binary, flux - M b <= 0 forward and flux + M b >= 0 reverse
+    private SimplexSolver newSolver() {
+        int rows = problem.getRowCount();
+        int vars = problem.getVariableCount();
+        int k = gated.length;
+        StoichiometricMatrix matrix = problem.getMatrix();
+        int cols = matrix.getColumnCount();
+        List<List<Integer>> gates = new ArrayList<List<Integer>>();
+        for (int j = 0; j < vars; j++) {
+            gates.add(null);
+        }
+        for (int b = 0; b < k; b++) {
+            if (gates.get(gated[b]) == null) {
+                gates.set(gated[b], new ArrayList<Integer>());
+            }
+            gates.get(gated[b]).add(b);
+        }
+        int nnz = matrix.getNonZeroCount() + (vars - cols) + 2 * k;
+        int[] colStart = new int[vars + k + 1];
+        int[] rowIndex = new int[nnz];
+        double[] values = new double[nnz];
+        int p = 0;
+        for (int j = 0; j < vars; j++) {
+            colStart[j] = p;
+            if (j < cols) {
+                for (int q = matrix.getColumnStart(j); q < matrix.getColumnEnd(j); q++) {
+                    rowIndex[p] = matrix.getRow(q);
+                    values[p++] = matrix.getColumnValue(q);
+                }
+            } else {
+                // uptake adds the compound to the system
+                rowIndex[p] = matrix.getCompoundIndex(problem.getVariableId(j));
+                values[p++] = 1;
+            }
+            if (gates.get(j) != null) {
+                for (int b : gates.get(j)) {
+                    rowIndex[p] = rows + b;
+                    values[p++] = 1;
+                }
+            }
+        }
+        for (int b = 0; b < k; b++) {
+            colStart[vars + b] = p;
+            rowIndex[p] = rows + b;
+            values[p++] = reverse[b] ? bigM[b] : -bigM[b];
+        }
+        colStart[vars + k] = p;
+        SimplexSolver s = new SimplexSolver(rows + k, vars + k, colStart, rowIndex, values);
+        double[] c = new double[vars + k];
+        for (int j = 0; j < vars; j++) {
+            s.setBounds(j, problem.getLowerBound(j), problem.getUpperBound(j));
+        }
+        int target = problem.getObjectiveVariable();
+        s.setBounds(target, Math.max(problem.getLowerBound(target), minimumTargetFlux), problem.getUpperBound(target));
+        for (int b = 0; b < k; b++) {
+            s.setBounds(vars + b, 0, 1);
+            if (reverse[b]) {
+                s.setRowBounds(rows + b, 0, Double.POSITIVE_INFINITY);
+            } else {
+                s.setRowBounds(rows + b, Double.NEGATIVE_INFINITY, 0);
+            }
+            c[vars + b] = cost[b];
+        }
+        s.setObjective(c, false);
+        return s;
+    }
+
+    private void work(Search search, SimplexSolver s) throws InterruptedException {
+        byte[] current = new byte[gated.length];
+        // the solutions are made minimal on a solver of their own, so that
+        // the far off fixings of the trials do not move the basis of the dive
+        SimplexSolver trials = s.copy();
+        byte[] trialCurrent = new byte[gated.length];
+        try {
+            Node node;
+            while ((node = search.take()) != null) {
+                try {
+                    dive(search, s, current, trials, trialCurrent, node);
+                } finally {
+                    search.done();
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            search.stop(false);
+            throw e;
+        }
+    }
+
+    // solves the node and its branches with the binary fixed on, queueing
+    // the branches with it fixed off
+    private void dive(Search search, SimplexSolver s, byte[] current, SimplexSolver trials, byte[] trialCurrent,
+            Node node) {
+        int vars = problem.getVariableCount();
+        byte[] fixed = node.fixed.clone();
+        int depth = node.depth;
+        while (!Thread.currentThread().isInterrupted()) {
+            SimplexSolver.Status status = solve(s, current, fixed);
+            if (status == SimplexSolver.Status.INFEASIBLE) {
+                return;
+            }
+            if (status != SimplexSolver.Status.OPTIMAL) {
+                search.incomplete();
+                return;
+            }
+            // the costs are whole numbers, so is the best solution of the node
+            double bound = Math.ceil(s.getObjectiveValue() - INTEGER_TOL);
+            if (bound >= search.cutoff() - INTEGER_TOL) {
+                return;
+            }
+            // the candidates carrying flux are a solution; the relaxation is
+            // integral when all of them have their binaries at one, however
+            // small the fraction of the big M the others carry
+            BitSet used = new BitSet(fixed.length);
+            int branch = -1;
+            double branchValue = -1;
+            boolean[] on = new boolean[fixed.length];
+            for (int b = 0; b < fixed.length; b++) {
+                double flux = s.getValue(gated[b]);
+                double z = s.getValue(vars + b);
+                on[b] = z > 1 - INTEGER_TOL;
+                if (reverse[b] ? flux < -FLUX_TOL : flux > FLUX_TOL) {
+                    used.set(b);
+                    if (fixed[b] == FREE && !on[b] && z > branchValue) {
+                        branch = b;
+                        branchValue = z;
+                    }
+                }
+            }
+            // fluxes within the tolerance of zero are not a solution: the
+            // model was checked to need at least one candidate
+            if (!used.isEmpty() && search.accepts(used, cost(used))) {
+                used = minimize(trials, trialCurrent, used);
+                search.offer(used, cost(used));
+            }
+            if (branch < 0) {
+                // the relaxation is integral: its solution is the best of the
+                // node, and the rest of the node is where one more of its
+                // candidates is off
+                byte[] child = fixed.clone();
+                for (int b = 0; b < fixed.length; b++) {
+                    if (fixed[b] == FREE && on[b]) {
+                        byte[] off = child.clone();
+                        off[b] = OFF;
+                        search.push(off, bound, depth + 1);
+                        child[b] = ON;
+                    }
+                }
+                return;
+            }
+            byte[] off = fixed.clone();
+            off[branch] = OFF;
+            search.push(off, bound, depth + 1);
+            fixed[branch] = ON;
+            depth++;
+        }
+    }
+
+    // drops the candidates of a solution the target can do without, so
+    // that no solution found later is a part of it
+    private BitSet minimize(SimplexSolver s, byte[] current, BitSet used) {
+        byte[] trial = new byte[gated.length];
+        Arrays.fill(trial, OFF);
+        for (int b = used.nextSetBit(0); b >= 0; b = used.nextSetBit(b + 1)) {
+            trial[b] = ON;
+        }
+        BitSet ret = (BitSet) used.clone();
+        for (int b = used.nextSetBit(0); b >= 0; b = used.nextSetBit(b + 1)) {
+            trial[b] = OFF;
+            if (solve(s, current, trial) == SimplexSolver.Status.OPTIMAL) {
+                ret.clear(b);
+            } else {
+                trial[b] = ON;
+            }
+        }
+        return ret;
+    }
+
+    private double cost(BitSet used) {
+        double ret = 0;
+        for (int b = used.nextSetBit(0); b >= 0; b = used.nextSetBit(b + 1)) {
+            ret += cost[b];
+        }
+        return ret;
+    }
+
+    // fixes the binaries that changed since the last solve and solves from
+    // the current basis
+    private SimplexSolver.Status solve(SimplexSolver s, byte[] current, byte[] fixed) {
+        int vars = problem.getVariableCount();
+        for (int b = 0; b < fixed.length; b++) {
+            if (fixed[b] != current[b]) {
+                s.setBounds(vars + b, fixed[b] == ON ? 1 : 0, fixed[b] == OFF ? 0 : 1);
+                current[b] = fixed[b];
+            }
+        }
+        SimplexSolver.Status status = s.solve();
+        if (status != SimplexSolver.Status.OPTIMAL && status != SimplexSolver.Status.INFEASIBLE) {
+            // a stalled warm start, try again from scratch
+            s.resetBasis();
+            status = s.solve();
+        }
+        return status;
+    }
+
+    private GapfillResult.Solution solution(Incumbent inc) {
+        List<String> ids = new ArrayList<String>();
+        List<String> compartments = new ArrayList<String>();
+        List<String> directions = new ArrayList<String>();
+        for (int b = inc.used.nextSetBit(0); b >= 0; b = inc.used.nextSetBit(b + 1)) {
+            String dir = reverse[b] ? "<" : ">";
+            int last = ids.size() - 1;
+            if (last >= 0 && ids.get(last).equals(templateIds[b])) {
+                // both directions of the reaction
+                directions.set(last, "=");
+                continue;
+            }
+            ids.add(templateIds[b]);
+            compartments.add(compartmentIds[b]);
+            directions.add(dir);
+        }
+        return new GapfillResult.Solution(ids, compartments, directions, inc.cost);
+    }
+
+    @Override
+    public String toString() {
+        return "Gapfiller [objective=" + problem.getObjectiveId() + ", candidates=" + gated.length +
+                ", minimumTargetFlux=" + minimumTargetFlux + ", numberOfSolutions=" + numberOfSolutions + "]";
+    }
+}
@@ -0,0 +1,149 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.RpcContext;
+import us.kbase.common.service.ServerException;
+import us.kbase.common.service.UObject;
+
+/**
+ * Encodes and decodes the KBase flavour of JSON-RPC used by the fba_tools
+ * service, so that clients which do not go through
+ * {@link us.kbase.common.service.JsonClientCaller JsonClientCaller} put the
+ * same bytes on the wire.
+ */
+class JsonRpcCodec {
+    private static final AtomicLong CALL_COUNTER = new AtomicLong();
+
+    private JsonRpcCodec() {}
+
+    static ObjectMapper mapper() {
+        return UObject.getMapper();
+    }
+
+    static String newCallId() {
+        return Long.toString(System.nanoTime(), 36) + "-" + CALL_COUNTER.incrementAndGet();
+    }
+
+    /** Builds the request envelope for a single call.
+     * @param method the fully qualified method name, e.g. fba_tools.status.
+     * @param args the positional arguments of the call.
+     * @param id the call id.
+     * @param jsonRpcContext the optional call context; only the first entry is used.
+     * @param serviceVersion the requested service version, or null.
+     * @return the request envelope, ready to be serialized.
+     */
+    static Map<String, Object> request(String method, List<Object> args, String id,
+            RpcContext[] jsonRpcContext, String serviceVersion) {
+        Map<String, Object> req = new LinkedHashMap<String, Object>();
+        req.put("params", args);
+        req.put("method", method);
+        req.put("version", "1.1");
+        req.put("id", id);
+        Map<String, Object> context = context(jsonRpcContext, serviceVersion);
+        if (context != null) {
+            req.put("context", context);
+        }
+        return req;
+    }
+
+    /** Builds a JSON-RPC 2.0 request object for one entry of a batch. The
+     * KBase call context, if any, is carried in the non-standard "context"
+     * member, as in single calls.
+     * @param method the fully qualified method name.
+     * @param args the positional arguments of the call.
+     * @param id the call id, unique within the batch.
+     * @param jsonRpcContext the optional call context; only the first entry is used.
+     * @param serviceVersion the requested service version, or null.
+     * @return the request object, ready to be serialized.
+     */
+    static Map<String, Object> batchEntry(String method, List<Object> args, String id,
+            RpcContext[] jsonRpcContext, String serviceVersion) {
+        Map<String, Object> req = new LinkedHashMap<String, Object>();
+        req.put("jsonrpc", "2.0");
+        req.put("method", method);
+        req.put("params", args);
+        req.put("id", id);
+        Map<String, Object> context = context(jsonRpcContext, serviceVersion);
+        if (context != null) {
+            req.put("context", context);
+        }
+        return req;
+    }
+
+    static byte[] encode(Object request) throws IOException {
+        return mapper().writeValueAsBytes(request);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> context(RpcContext[] jsonRpcContext, String serviceVersion) {
+        RpcContext rpcContext = (jsonRpcContext != null && jsonRpcContext.length > 0) ? jsonRpcContext[0] : null;
+        if (rpcContext == null && serviceVersion == null) {
+            return null;
+        }
+        Map<String, Object> context = rpcContext == null ? new LinkedHashMap<String, Object>()
+                : mapper().convertValue(rpcContext, Map.class);
+        if (serviceVersion != null) {
+            context.put("service_ver", serviceVersion);
+        }
+        return context;
+    }
+
+    /** Parses a raw HTTP response body.
+     * @param httpStatus the HTTP status code of the response.
+     * @param body the response body.
+     * @return the parsed response envelope.
+     * @throws JsonClientException if the body is not a JSON document.
+     */
+    static JsonNode parse(int httpStatus, byte[] body) throws JsonClientException {
+        try {
+            return mapper().readTree(body);
+        } catch (IOException e) {
+            throw new JsonClientException("Server returned HTTP status " + httpStatus +
+                    " with a response body that is not JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /** Extracts the result of a single call from its response envelope.
+     * @param response the parsed response envelope.
+     * @param retType the type of the "result" field.
+     * @return the deserialized result, or null if the call has no return value.
+     * @throws ServerException if the envelope carries an error.
+     * @throws JsonClientException if the result cannot be deserialized.
+     */
+    static <RET> RET result(JsonNode response, TypeReference<RET> retType) throws JsonClientException {
+        checkError(response);
+        JsonNode result = response.get("result");
+        if (result == null || result.isNull()) {
+            return null;
+        }
+        try {
+            return mapper().readValue(mapper().treeAsTokens(result), retType);
+        } catch (IOException e) {
+            throw new JsonClientException("Unable to parse the result of the call: " + e.getMessage(), e);
+        }
+    }
+
+    static void checkError(JsonNode response) throws ServerException {
+        JsonNode error = response.get("error");
+        if (error == null || error.isNull()) {
+            return;
+        }
+        if (!error.isObject()) {
+            throw new ServerException(error.asText(), 0, "JSONRPCError");
+        }
+        String message = error.path("message").asText(null);
+        int code = error.path("code").asInt(0);
+        String name = error.path("name").asText("JSONRPCError");
+        JsonNode data = error.has("error") ? error.get("error") : error.get("data");
+        throw new ServerException(message, code, name,
+                data == null || data.isNull() ? null : data.isTextual() ? data.asText() : data.toString());
+    }
+}
@@ -0,0 +1,338 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Single and double knockout screen of an {@link FbaProblem}, run in
+ * parallel.</p>
+ * <p>Every feature of the model's gene-protein-reaction rules, or every
+ * reaction, is knocked out in turn and the program re-solved for its
+ * objective; a pairwise screen then does the same for every unordered pair.
+ * Each worker keeps its own copy of the solver and starts every solve from
+ * the optimal basis of the previous one. A knockout needs no solve at all
+ * when none of the reactions it stops carries flux in the wild type
+ * solution, or, for a pair, in the solution of either single knockout;
+ * a pair with a lethal single knockout is lethal.</p>
+ * <p>The growth of each knockout is passed to the {@link Listener} as soon
+ * as it is known.</p>
+ * <pre>
+ * KnockoutScreenResult r = new KnockoutScreen(problem).screenFeatures(true);
+ * for (FBADeletionResult d : r.getDeletionResults(0.1)) {
+ *     System.out.println(d.getFeatureRefs() + " " + d.getGrowthFraction());
+ * }
+ * </pre>
+ */
+public class KnockoutScreen {
+    // a flux this small is not carried
+    private static final double FLUX_TOL = 1e-9;
+
+    private final FbaProblem problem;
+    private int threads = 0;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** Receives the growth fraction of each knockout as soon as it is known.
+     * Called from the worker threads, so implementations must be thread
+     * safe.
+     */
+    public interface Listener {
+        /** @param first the position of the knocked out target.
+         * @param second the position of the other target of a pair, or -1 for
+         * a single knockout.
+         * @param growthFraction the fraction of the wild type growth.
+         */
+        void knockoutDone(int first, int second, double growthFraction);
+    }
+
+    public KnockoutScreen(FbaProblem problem) {
+        this.problem = problem;
+    }
+
+    /** Set the number of workers. One worker runs the solves serially.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this screen.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Knocks out every feature of the model's gene-protein-reaction rules.
+     * @param pairs true to knock out every pair of features as well.
+     * @return the growth fractions, with the features in sorted order.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public KnockoutScreenResult screenFeatures(boolean pairs) throws InterruptedException {
+        return screenFeatures(problem.getFeatures(), pairs);
+    }
+
+    /** Knocks out the given features. A feature in no gene-protein-reaction
+     * rule knocks out nothing.
+     * @param features the feature ids.
+     * @param pairs true to knock out every pair of the features as well.
+     * @return the growth fractions, with the features in the given order.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public KnockoutScreenResult screenFeatures(final List<String> features, boolean pairs)
+            throws InterruptedException {
+        return screen(features, true, pairs, new Targets() {
+            @Override
+            public int[] single(int i) {
+                return problem.knockedOutReactions(Arrays.asList(features.get(i)));
+            }
+
+            @Override
+            public int[] pair(int i, int k) {
+                return problem.knockedOutReactions(Arrays.asList(features.get(i), features.get(k)));
+            }
+        });
+    }
+
+    /** Knocks out every model reaction.
+     * @param pairs true to knock out every pair of reactions as well.
+     * @return the growth fractions, with the reactions in model order.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     */
+    public KnockoutScreenResult screenReactions(boolean pairs) throws InterruptedException {
+        List<String> ids = new ArrayList<String>();
+        for (int j = 0; j < problem.getVariableCount(); j++) {
+            if (problem.getVariableType(j) == FbaProblem.VariableType.FLUX) {
+                ids.add(problem.getVariableId(j));
+            }
+        }
+        return screenReactions(ids, pairs);
+    }
+
+    /** Knocks out the given model reactions.
+     * @param reactions the model reaction ids; an id without compartment is
+     * looked up in c0.
+     * @param pairs true to knock out every pair of the reactions as well.
+     * @return the growth fractions, with the reactions in the given order.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     * @throws IllegalArgumentException if the model has no such reaction.
+     */
+    public KnockoutScreenResult screenReactions(List<String> reactions, boolean pairs)
+            throws InterruptedException {
+        final int[] vars = new int[reactions.size()];
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = problem.getReactionVariable(reactions.get(i));
+            if (vars[i] < 0) {
+                throw new IllegalArgumentException("No such model reaction: " + reactions.get(i));
+            }
+        }
+        return screen(reactions, false, pairs, new Targets() {
+            @Override
+            public int[] single(int i) {
+                return new int[] {vars[i]};
+            }
+
+            @Override
+            public int[] pair(int i, int k) {
+                return new int[] {vars[i], vars[k]};
+            }
+        });
+    }
+
+    // the reaction variables stopped by knocking out targets
+    private interface Targets {
+        int[] single(int i);
+
+        int[] pair(int i, int k);
+    }
+
+    private KnockoutScreenResult screen(List<String> ids, boolean features, final boolean pairs,
+            final Targets targets) throws InterruptedException {
+        final int n = ids.size();
+        if (pairs && (long) n * (n - 1) / 2 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many targets for a pairwise screen: " + n);
+        }
+        final float[] single = new float[n];
+        final float[] pair = pairs ? new float[(int) ((long) n * (n - 1) / 2)] : null;
+        final SimplexSolver base = problem.newSolver();
+        final double wildType = base.solve() == SimplexSolver.Status.OPTIMAL ? base.getObjectiveValue() : 0;
+        if (wildType <= 0) {
+            // nothing to lose; every knockout keeps the zero growth
+            return new KnockoutScreenResult(ids, features, wildType, single, pair);
+        }
+        final BitSet wildTypeActive = active(base);
+        // flux carried by each single knockout's solution, to skip pair solves
+        final BitSet[] singleActive = pairs ? new BitSet[n] : null;
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, Math.min(workers, n));
+        ExecutorService exec = executor != null ? executor : FbaExecutors.newComputeExecutor("fba-ko", workers);
+        try {
+            final AtomicInteger next = new AtomicInteger();
+            run(exec, workers, base, new Worker() {
+                @Override
+                public void run(SimplexSolver s) {
+                    for (int i = next.getAndIncrement(); i < n; i = next.getAndIncrement()) {
+                        int[] ko = targets.single(i);
+                        if (!carries(wildTypeActive, ko)) {
+                            single[i] = 1;
+                            if (pairs) {
+                                singleActive[i] = wildTypeActive;
+                            }
+                        } else {
+                            single[i] = knockout(s, ko, wildType);
+                            if (pairs && single[i] > 0) {
+                                singleActive[i] = active(s);
+                            }
+                        }
+                        if (listener != null) {
+                            listener.knockoutDone(i, -1, single[i]);
+                        }
+                    }
+                }
+            });
+            if (pairs) {
+                final AtomicInteger nextRow = new AtomicInteger();
+                run(exec, workers, base, new Worker() {
+                    @Override
+                    public void run(SimplexSolver s) {
+                        for (int i = nextRow.getAndIncrement(); i < n; i = nextRow.getAndIncrement()) {
+                            int p = (int) KnockoutScreenResult.pairIndex(n, i, i + 1);
+                            for (int k = i + 1; k < n; k++, p++) {
+                                pair[p] = pairFraction(s, targets, i, k, single, singleActive, wildType);
+                                if (listener != null) {
+                                    listener.knockoutDone(i, k, pair[p]);
+                                }
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+        return new KnockoutScreenResult(ids, features, wildType, single, pair);
+    }
+
+    private static float pairFraction(SimplexSolver s, Targets targets, int i, int k, float[] single,
+            BitSet[] singleActive, double wildType) {
+        if (single[i] == 0 || single[k] == 0) {
+            return 0;
+        }
+        int[] ko = targets.pair(i, k);
+        // the solution of either single knockout that carries no flux through
+        // the pair's knockouts is still optimal for the pair
+        if (singleActive[i] != null && !carries(singleActive[i], ko)) {
+            return single[i];
+        }
+        if (singleActive[k] != null && !carries(singleActive[k], ko)) {
+            return single[k];
+        }
+        return knockout(s, ko, wildType);
+    }
+
+    // one pass of a worker over a shared schedule, with its own solver
+    private interface Worker {
+        void run(SimplexSolver s);
+    }
+
+    private static void run(ExecutorService exec, int workers, SimplexSolver base, final Worker worker)
+            throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final SimplexSolver s = base.copy();
+                futures.add(exec.submit(() -> {
+                    worker.run(s);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Knockout screen worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        }
+    }
+
+    // solves with the reactions knocked out from the solver's current basis
+    private static float knockout(SimplexSolver s, int[] ko, double wildType) {
+        double[] lo = new double[ko.length];
+        double[] up = new double[ko.length];
+        for (int t = 0; t < ko.length; t++) {
+            lo[t] = s.getLowerBound(ko[t]);
+            up[t] = s.getUpperBound(ko[t]);
+            s.setBounds(ko[t], 0, 0);
+        }
+        try {
+            SimplexSolver.Status status = s.solve();
+            if (status != SimplexSolver.Status.OPTIMAL && status != SimplexSolver.Status.INFEASIBLE) {
+                // a stalled warm start, try again from scratch
+                s.resetBasis();
+                status = s.solve();
+            }
+            if (status == SimplexSolver.Status.INFEASIBLE) {
+                return 0;
+            }
+            if (status != SimplexSolver.Status.OPTIMAL) {
+                return Float.NaN;
+            }
+            return (float) Math.max(0, s.getObjectiveValue() / wildType);
+        } finally {
+            for (int t = 0; t < ko.length; t++) {
+                s.setBounds(ko[t], lo[t], up[t]);
+            }
+        }
+    }
+
+    private static BitSet active(SimplexSolver s) {
+        BitSet active = new BitSet(s.getColumns());
+        for (int j = 0; j < s.getColumns(); j++) {
+            if (Math.abs(s.getValue(j)) > FLUX_TOL) {
+                active.set(j);
+            }
+        }
+        return active;
+    }
+
+    private static boolean carries(BitSet active, int[] ko) {
+        for (int j : ko) {
+            if (active.get(j)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
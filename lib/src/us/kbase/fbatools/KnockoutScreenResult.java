@@ -0,0 +1,144 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The growth of every knockout of a {@link KnockoutScreen}, as a fraction
+ * of the wild type growth.</p>
+ * <p>Fractions are held as floats: one per target for the single knockouts
+ * and, for a pairwise screen, one per unordered pair in a packed upper
+ * triangle. A fraction is NaN if its program could not be solved.</p>
+ */
+public class KnockoutScreenResult {
+    private static final String FEATURE_REF = "~/fbamodel/genome/features/id/";
+    private static final String REACTION_REF = "~/fbamodel/modelreactions/id/";
+
+    private final List<String> targets;
+    private final boolean features;
+    private final double wildTypeGrowth;
+    private final float[] single;
+    private final float[] pairs;
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+    KnockoutScreenResult(List<String> targets, boolean features, double wildTypeGrowth, float[] single,
+            float[] pairs) {
+        this.targets = Collections.unmodifiableList(new ArrayList<String>(targets));
+        this.features = features;
+        this.wildTypeGrowth = wildTypeGrowth;
+        this.single = single;
+        this.pairs = pairs;
+        for (int i = 0; i < targets.size(); i++) {
+            index.put(targets.get(i), i);
+        }
+    }
+
+    // position of the pair i < k in the packed upper triangle
+    static long pairIndex(int n, int i, int k) {
+        return (long) i * (2L * n - i - 1) / 2 + (k - i - 1);
+    }
+
+    /** Get the knocked out features or reactions, in screen order.
+     * @return the target ids.
+     */
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    /** Get the position of a target.
+     * @param target the feature or reaction id.
+     * @return the position, or -1 if it was not screened.
+     */
+    public int indexOf(String target) {
+        Integer i = index.get(target);
+        return i == null ? -1 : i;
+    }
+
+    /** Check whether the targets are features rather than reactions.
+     * @return true for a gene knockout screen.
+     */
+    public boolean isFeatureScreen() {
+        return features;
+    }
+
+    public double getWildTypeGrowth() {
+        return wildTypeGrowth;
+    }
+
+    public boolean hasPairs() {
+        return pairs != null;
+    }
+
+    /** Get the growth fraction of a single knockout.
+     * @param i the target position.
+     * @return the fraction of the wild type growth.
+     */
+    public double getGrowthFraction(int i) {
+        return single[i];
+    }
+
+    /** Get the growth fraction of a double knockout.
+     * @param i the position of one target.
+     * @param k the position of the other target; if equal to i, the single
+     * knockout.
+     * @return the fraction of the wild type growth.
+     * @throws IllegalStateException if pairs were not screened.
+     */
+    public double getGrowthFraction(int i, int k) {
+        if (i == k) {
+            return single[i];
+        }
+        if (pairs == null) {
+            throw new IllegalStateException("Pairs were not screened");
+        }
+        return i < k ? pairs[(int) pairIndex(single.length, i, k)] : pairs[(int) pairIndex(single.length, k, i)];
+    }
+
+    /** Lists the knockouts at or below a growth fraction as FBADeletionResults,
+     * with the refs the service uses in an FBA object: features under
+     * ~/fbamodel/genome/features/id/, or, for a reaction screen, model
+     * reactions under ~/fbamodel/modelreactions/id/. Single knockouts come
+     * first, then pairs; knockouts that could not be solved are left out.
+     * @param maxGrowthFraction the largest growth fraction listed;
+     * Double.POSITIVE_INFINITY lists every knockout.
+     * @return the deletion results.
+     */
+    public List<FBADeletionResult> getDeletionResults(double maxGrowthFraction) {
+        List<FBADeletionResult> ret = new ArrayList<FBADeletionResult>();
+        int n = single.length;
+        for (int i = 0; i < n; i++) {
+            if (single[i] <= maxGrowthFraction) {
+                ret.add(deletion(single[i], i));
+            }
+        }
+        if (pairs != null) {
+            int p = 0;
+            for (int i = 0; i < n; i++) {
+                for (int k = i + 1; k < n; k++, p++) {
+                    if (pairs[p] <= maxGrowthFraction) {
+                        ret.add(deletion(pairs[p], i, k));
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    private FBADeletionResult deletion(float fraction, int... positions) {
+        String[] refs = new String[positions.length];
+        for (int t = 0; t < positions.length; t++) {
+            refs[t] = (features ? FEATURE_REF : REACTION_REF) + targets.get(positions[t]);
+        }
+        return new FBADeletionResult().withFeatureRefs(Arrays.asList(refs)).withGrowthFraction((double) fraction);
+    }
+
+    @Override
+    public String toString() {
+        return "KnockoutScreenResult [targets=" + targets.size() + ", features=" + features + ", pairs=" +
+                hasPairs() + ", wildTypeGrowth=" + wildTypeGrowth + "]";
+    }
+}
@@ -0,0 +1,276 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>A typed, read-only view of a KBaseBiochem.Media object.</p>
+ * <p>It is read the same way as an {@link FbaModel}: the mediacompounds
+ * become compact {@link Compound} records with primitive doubles, NaN where
+ * the object leaves them out, and every other field, such as the reagents,
+ * is kept as the bytes of its JSON and parsed on first access by
+ * {@link #getExtras()}.</p>
+ */
+public class Media {
+    private String id = null;
+    private String name = null;
+    private String source = null;
+    private String sourceId = null;
+    private String type = null;
+    private boolean defined = false;
+    private boolean minimal = false;
+    private boolean aerobic = false;
+    private double temperature = Double.NaN;
+    private String pHData = null;
+    private List<Compound> compounds = Collections.emptyList();
+    private TypedJson.Extras extras = null;
+
+    /** A MediaCompound. */
+    public static class Compound {
+        private final String id;
+        private final String compoundRef;
+        private final String name;
+        private final double concentration;
+        private final double minFlux;
+        private final double maxFlux;
+        private final TypedJson.Extras extras;
+
+        Compound(String id, String compoundRef, String name, double concentration, double minFlux,
+                double maxFlux, TypedJson.Extras extras) {
+            this.id = id;
+            this.compoundRef = compoundRef;
+            this.name = name;
+            this.concentration = concentration;
+            this.minFlux = minFlux;
+            this.maxFlux = maxFlux;
+            this.extras = extras;
+        }
+
+        /** Get the compound id.
+         * @return the id field, or else the id the compound_ref points to,
+         * e.g. cpd00027.
+         */
+        public String getId() {
+            return id;
+        }
+
+        public String getCompoundRef() {
+            return compoundRef;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getConcentration() {
+            return concentration;
+        }
+
+        public double getMinFlux() {
+            return minFlux;
+        }
+
+        public double getMaxFlux() {
+            return maxFlux;
+        }
+
+        /** Get the fields without a typed getter, such as smiles and
+         * inchikey.
+         * @return the fields as a JSON object, parsed on first access.
+         */
+        public JsonNode getExtras() {
+            return TypedJson.Extras.get(extras);
+        }
+
+        @Override
+        public String toString() {
+            return "Compound [id=" + id + ", concentration=" + concentration + ", minFlux=" + minFlux +
+                    ", maxFlux=" + maxFlux + "]";
+        }
+    }
+
+    private Media() {}
+
+    /** Reads a media from a file.
+     * @param path the Media object as JSON.
+     * @return the media.
+     * @throws IOException if the file cannot be read or is not a JSON object.
+     */
+    public static Media read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /** Reads a media from a stream, which is left open.
+     * @param in the Media object as JSON.
+     * @return the media.
+     * @throws IOException if the stream cannot be read or is not a JSON
+     * object.
+     */
+    public static Media read(InputStream in) throws IOException {
+        try (JsonParser p = TypedJson.parser(in)) {
+            return read(p);
+        }
+    }
+
+    /** Converts a media already parsed into a tree.
+     * @param media the Media object.
+     * @return the media.
+     * @throws IOException if the node is not an object.
+     */
+    public static Media fromJson(JsonNode media) throws IOException {
+        try (JsonParser p = TypedJson.parser(media)) {
+            return read(p);
+        }
+    }
+
+    private static Media read(JsonParser p) throws IOException {
+        final TypedJson.Ids ids = new TypedJson.Ids();
+        final TypedJson.ExtrasBuilder xb = new TypedJson.ExtrasBuilder();
+        TypedJson.ExtrasBuilder top = new TypedJson.ExtrasBuilder();
+        Media m = new Media();
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                m.id = TypedJson.text(p);
+                break;
+            case "name":
+                m.name = TypedJson.text(p);
+                break;
+            case "source":
+                m.source = TypedJson.text(p);
+                break;
+            case "source_id":
+                m.sourceId = TypedJson.text(p);
+                break;
+            case "type":
+                m.type = TypedJson.text(p);
+                break;
+            case "isDefined":
+                m.defined = TypedJson.bool(p);
+                break;
+            case "isMinimal":
+                m.minimal = TypedJson.bool(p);
+                break;
+            case "isAerobic":
+                m.aerobic = TypedJson.bool(p);
+                break;
+            case "temperature":
+                m.temperature = TypedJson.number(p);
+                break;
+            case "pH_data":
+                m.pHData = TypedJson.text(p);
+                break;
+            case "mediacompounds":
+                m.compounds = TypedJson.array(p, c -> readCompound(c, ids, xb));
+                break;
+            default:
+                top.add(f, p);
+            }
+        }
+        m.extras = top.build();
+        return m;
+    }
+
+    private static Compound readCompound(JsonParser p, TypedJson.Ids ids, TypedJson.ExtrasBuilder xb)
+            throws IOException {
+        String id = null;
+        String ref = null;
+        String name = null;
+        double concentration = Double.NaN;
+        double minFlux = Double.NaN;
+        double maxFlux = Double.NaN;
+        for (String f = TypedJson.nextField(p); f != null; f = TypedJson.nextField(p)) {
+            switch (f) {
+            case "id":
+                id = ids.intern(TypedJson.text(p));
+                break;
+            case "compound_ref":
+                ref = TypedJson.text(p);
+                break;
+            case "name":
+                name = TypedJson.text(p);
+                break;
+            case "concentration":
+                concentration = TypedJson.number(p);
+                break;
+            case "minFlux":
+                minFlux = TypedJson.number(p);
+                break;
+            case "maxFlux":
+                maxFlux = TypedJson.number(p);
+                break;
+            default:
+                xb.add(f, p);
+            }
+        }
+        if (id == null && ref != null) {
+            id = ids.intern(FbaProblem.refId(ref));
+        }
+        return new Compound(id, ref, name, concentration, minFlux, maxFlux, xb.build());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isDefined() {
+        return defined;
+    }
+
+    public boolean isMinimal() {
+        return minimal;
+    }
+
+    public boolean isAerobic() {
+        return aerobic;
+    }
+
+    public double getTemperature() {
+        return temperature;
+    }
+
+    public String getPHData() {
+        return pHData;
+    }
+
+    public List<Compound> getCompounds() {
+        return compounds;
+    }
+
+    /** Get the top level fields without a typed getter, such as reagents
+     * and atmosphere.
+     * @return the fields as a JSON object, parsed on first access.
+     */
+    public JsonNode getExtras() {
+        return TypedJson.Extras.get(extras);
+    }
+
+    @Override
+    public String toString() {
+        return "Media [id=" + id + ", name=" + name + ", compounds=" + compounds.size() + "]";
+    }
+}
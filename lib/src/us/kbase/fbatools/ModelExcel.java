@@ -0,0 +1,154 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * <p>Typed streaming access to the model workbooks of model_to_excel_file,
+ * fba_to_excel_file and excel_file_to_model, with the records of
+ * {@link ModelTsv}.</p>
+ * <p>A workbook has a ModelCompounds and a ModelReactions sheet, with the
+ * columns of the matching TSV tables. On import, as in the service, the
+ * first sheet whose name contains "Compound" and the first whose name
+ * contains "Reaction" are used.</p>
+ * <p>Media and phenotype simulation workbooks are read and written the
+ * same way, as the {@link ModelTsv.MediaCompound} and
+ * {@link ModelTsv.PhenotypeSimulation} records of a MediaCompounds or a
+ * PhenotypeSimulations sheet. A media workbook without a sheet whose name
+ * contains "Media" is read from its first sheet.</p>
+ * <pre>
+ * try (XlsxReader wb = XlsxReader.open(path);
+ *         ModelTsv.RecordReader&lt;ModelTsv.Reaction&gt; r = ModelExcel.readReactions(wb)) {
+ *     for (ModelTsv.Reaction rxn = r.next(); rxn != null; rxn = r.next()) {
+ *         System.out.println(rxn.getId() + " " + rxn.getFlux());
+ *     }
+ * }
+ * </pre>
+ */
+public class ModelExcel {
+    public static final String COMPOUNDS_SHEET = "ModelCompounds";
+    public static final String REACTIONS_SHEET = "ModelReactions";
+    public static final String MEDIA_SHEET = "MediaCompounds";
+    public static final String PHENOTYPE_SIMULATIONS_SHEET = "PhenotypeSimulations";
+
+    private ModelExcel() {}
+
+    /** Opens the reactions sheet of a workbook.
+     * @param workbook the workbook.
+     * @return the reader; closing it closes the sheet but not the workbook.
+     * @throws IOException if the workbook has no reactions sheet or it
+     * cannot be read.
+     */
+    public static ModelTsv.RecordReader<ModelTsv.Reaction> readReactions(XlsxReader workbook) throws IOException {
+        return ModelTsv.readReactions(openSheet(workbook, "Reaction"));
+    }
+
+    /** Opens the compounds sheet of a workbook.
+     * @param workbook the workbook.
+     * @return the reader; closing it closes the sheet but not the workbook.
+     * @throws IOException if the workbook has no compounds sheet or it
+     * cannot be read.
+     */
+    public static ModelTsv.RecordReader<ModelTsv.Compound> readCompounds(XlsxReader workbook) throws IOException {
+        return ModelTsv.readCompounds(openSheet(workbook, "Compound"));
+    }
+
+    /** Opens the media sheet of a workbook.
+     * @param workbook the workbook.
+     * @return the reader; closing it closes the sheet but not the workbook.
+     * @throws IOException if the workbook has no sheets or the media sheet
+     * cannot be read.
+     */
+    public static ModelTsv.RecordReader<ModelTsv.MediaCompound> readMedia(XlsxReader workbook)
+            throws IOException {
+        String name = workbook.findSheet("Media");
+        if (name == null) {
+            if (workbook.getSheetNames().isEmpty()) {
+                throw new IOException("The workbook has no sheets");
+            }
+            name = workbook.getSheetNames().get(0);
+        }
+        return ModelTsv.readMedia(workbook.openSheet(name));
+    }
+
+    /** Opens the phenotype simulations sheet of a workbook.
+     * @param workbook the workbook.
+     * @return the reader; closing it closes the sheet but not the workbook.
+     * @throws IOException if the workbook has no phenotype sheet or it
+     * cannot be read.
+     */
+    public static ModelTsv.RecordReader<ModelTsv.PhenotypeSimulation> readPhenotypeSimulations(
+            XlsxReader workbook) throws IOException {
+        return ModelTsv.readPhenotypeSimulations(openSheet(workbook, "Phenotype"));
+    }
+
+    private static TableReader openSheet(XlsxReader workbook, String word) throws IOException {
+        String name = workbook.findSheet(word);
+        if (name == null) {
+            throw new IOException("The workbook has no " + word + "s sheet");
+        }
+        return workbook.openSheet(name);
+    }
+
+    /** Writes a model workbook, streaming the records into it as they are
+     * iterated.
+     * @param path the .xlsx file, replaced if it exists.
+     * @param reactions the reactions.
+     * @param compounds the compounds.
+     * @param fba true for the fba_to_excel_file layout, false for the
+     * excel_file_to_model one.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeModel(Path path, Iterable<ModelTsv.Reaction> reactions,
+            Iterable<ModelTsv.Compound> compounds, boolean fba) throws IOException {
+        try (XlsxWriter wb = XlsxWriter.create(path)) {
+            ModelTsv.RecordWriter<ModelTsv.Compound> cw = ModelTsv.writeCompounds(
+                    wb.beginSheet(COMPOUNDS_SHEET, ModelTsv.compoundColumns(fba)), fba);
+            for (ModelTsv.Compound c : compounds) {
+                cw.write(c);
+            }
+            cw.close();
+            ModelTsv.RecordWriter<ModelTsv.Reaction> rw = ModelTsv.writeReactions(
+                    wb.beginSheet(REACTIONS_SHEET, ModelTsv.reactionColumns(fba)), fba);
+            for (ModelTsv.Reaction r : reactions) {
+                rw.write(r);
+            }
+            rw.close();
+        }
+    }
+
+    /** Writes a media workbook, streaming the compounds into it as they are
+     * iterated.
+     * @param path the .xlsx file, replaced if it exists.
+     * @param compounds the media compounds.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writeMedia(Path path, Iterable<ModelTsv.MediaCompound> compounds) throws IOException {
+        try (XlsxWriter wb = XlsxWriter.create(path)) {
+            ModelTsv.RecordWriter<ModelTsv.MediaCompound> w = ModelTsv.writeMedia(
+                    wb.beginSheet(MEDIA_SHEET, ModelTsv.MEDIA_COLUMNS));
+            for (ModelTsv.MediaCompound c : compounds) {
+                w.write(c);
+            }
+            w.close();
+        }
+    }
+
+    /** Writes a phenotype simulation workbook, streaming the simulations
+     * into it as they are iterated.
+     * @param path the .xlsx file, replaced if it exists.
+     * @param simulations the simulations.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void writePhenotypeSimulations(Path path, Iterable<ModelTsv.PhenotypeSimulation> simulations)
+            throws IOException {
+        try (XlsxWriter wb = XlsxWriter.create(path)) {
+            ModelTsv.RecordWriter<ModelTsv.PhenotypeSimulation> w = ModelTsv.writePhenotypeSimulations(
+                    wb.beginSheet(PHENOTYPE_SIMULATIONS_SHEET, ModelTsv.PHENOTYPE_SIMULATION_COLUMNS));
+            for (ModelTsv.PhenotypeSimulation p : simulations) {
+                w.write(p);
+            }
+            w.close();
+        }
+    }
+}
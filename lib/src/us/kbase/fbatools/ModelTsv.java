@@ -0,0 +1,955 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Typed streaming access to the reactions and compounds tables of
+ * {@link ModelTsvFiles} and {@link FBATsvFiles}, on top of
+ * {@link TsvReader} and {@link TsvWriter}, or of any other
+ * {@link TableReader} and {@link TableWriter}.</p>
+ * <p>Rows are read one {@link Reaction} or {@link Compound} at a time and
+ * written back the same way, so a table of any size is processed in
+ * bounded memory. Media tables and phenotype simulation tables are read
+ * and written the same way, as {@link MediaCompound} and
+ * {@link PhenotypeSimulation} records. Reading accepts both the model layout taken by
+ * tsv_file_to_model and the FBA layout written by fba_to_tsv_file, with
+ * the columns in any order; empty fields and columns a table lacks are
+ * left null. The
+ * files for a tsv_file_to_model call are written with
+ * {@link #writeModel(Path, String, Iterable, Iterable)}.</p>
+ * <pre>
+ * try (ModelTsv.RecordReader&lt;ModelTsv.Reaction&gt; r = ModelTsv.readReactions(path)) {
+ *     for (ModelTsv.Reaction rxn = r.next(); rxn != null; rxn = r.next()) {
+ *         System.out.println(rxn.getId() + " " + rxn.getFlux());
+ *     }
+ * }
+ * </pre>
+ */
+public class ModelTsv {
+    /** The reactions columns read by tsv_file_to_model. */
+    public static final List<String> REACTION_COLUMNS = Collections.unmodifiableList(Arrays.asList("id",
+            "direction", "compartment", "gpr", "name", "enzyme", "pathway", "reference", "equation",
+            "definition"));
+    /** The compounds columns read by tsv_file_to_model. */
+    public static final List<String> COMPOUND_COLUMNS = Collections.unmodifiableList(Arrays.asList("id",
+            "name", "formula", "charge", "aliases", "compartment", "inchikey", "smiles"));
+    /** The reactions columns written by fba_to_tsv_file. */
+    public static final List<String> FBA_REACTION_COLUMNS = Collections.unmodifiableList(Arrays.asList("id",
+            "direction", "compartment", "gpr", "name", "pathway", "equation", "definition", "flux", "min_flux",
+            "lowerbound", "max_flux", "upperbound"));
+    /** The compounds columns written by fba_to_tsv_file. */
+    public static final List<String> FBA_COMPOUND_COLUMNS = Collections.unmodifiableList(Arrays.asList("id",
+            "name", "formula", "charge", "compartment", "uptake", "min_uptake", "lowerbound", "max_uptake",
+            "upperbound"));
+
+    /** The media columns read by tsv_file_to_media. */
+    public static final List<String> MEDIA_COLUMNS = Collections.unmodifiableList(Arrays.asList("compounds",
+            "name", "formula", "minFlux", "maxFlux", "concentration"));
+    /** The phenotype simulation columns written by
+     * phenotype_simulation_set_to_tsv_file. */
+    public static final List<String> PHENOTYPE_SIMULATION_COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "geneko", "mediaws", "media", "addtlCpd", "growth", "simulated growth", "simulated growth fraction",
+            "gapfilled reaction count", "gapfilled reactions"));
+
+    private ModelTsv() {}
+
+    /** Get the reactions columns of a layout.
+     * @param fba true for the fba_to_tsv_file layout, false for the
+     * tsv_file_to_model one.
+     * @return the column names.
+     */
+    public static List<String> reactionColumns(boolean fba) {
+        return fba ? FBA_REACTION_COLUMNS : REACTION_COLUMNS;
+    }
+
+    /** Get the compounds columns of a layout.
+     * @param fba true for the fba_to_tsv_file layout, false for the
+     * tsv_file_to_model one.
+     * @return the column names.
+     */
+    public static List<String> compoundColumns(boolean fba) {
+        return fba ? FBA_COMPOUND_COLUMNS : COMPOUND_COLUMNS;
+    }
+
+    /** A row of a reactions table. The flux columns are only set for FBA
+     * tables.
+     */
+    public static class Reaction {
+        private String id;
+        private String direction;
+        private String compartment;
+        private String gpr;
+        private String name;
+        private String enzyme;
+        private String pathway;
+        private String reference;
+        private String equation;
+        private String definition;
+        private Double flux;
+        private Double minFlux;
+        private Double lowerBound;
+        private Double maxFlux;
+        private Double upperBound;
+
+        public String getId() {
+            return id;
+        }
+
+        public Reaction withId(String id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getDirection() {
+            return direction;
+        }
+
+        public Reaction withDirection(String direction) {
+            this.direction = direction;
+            return this;
+        }
+
+        public String getCompartment() {
+            return compartment;
+        }
+
+        public Reaction withCompartment(String compartment) {
+            this.compartment = compartment;
+            return this;
+        }
+
+        public String getGpr() {
+            return gpr;
+        }
+
+        public Reaction withGpr(String gpr) {
+            this.gpr = gpr;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Reaction withName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public String getEnzyme() {
+            return enzyme;
+        }
+
+        public Reaction withEnzyme(String enzyme) {
+            this.enzyme = enzyme;
+            return this;
+        }
+
+        public String getPathway() {
+            return pathway;
+        }
+
+        public Reaction withPathway(String pathway) {
+            this.pathway = pathway;
+            return this;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public Reaction withReference(String reference) {
+            this.reference = reference;
+            return this;
+        }
+
+        public String getEquation() {
+            return equation;
+        }
+
+        public Reaction withEquation(String equation) {
+            this.equation = equation;
+            return this;
+        }
+
+        public String getDefinition() {
+            return definition;
+        }
+
+        public Reaction withDefinition(String definition) {
+            this.definition = definition;
+            return this;
+        }
+
+        public Double getFlux() {
+            return flux;
+        }
+
+        public Reaction withFlux(Double flux) {
+            this.flux = flux;
+            return this;
+        }
+
+        public Double getMinFlux() {
+            return minFlux;
+        }
+
+        public Reaction withMinFlux(Double minFlux) {
+            this.minFlux = minFlux;
+            return this;
+        }
+
+        public Double getLowerBound() {
+            return lowerBound;
+        }
+
+        public Reaction withLowerBound(Double lowerBound) {
+            this.lowerBound = lowerBound;
+            return this;
+        }
+
+        public Double getMaxFlux() {
+            return maxFlux;
+        }
+
+        public Reaction withMaxFlux(Double maxFlux) {
+            this.maxFlux = maxFlux;
+            return this;
+        }
+
+        public Double getUpperBound() {
+            return upperBound;
+        }
+
+        public Reaction withUpperBound(Double upperBound) {
+            this.upperBound = upperBound;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Reaction [id=" + id + ", direction=" + direction + ", compartment=" + compartment + ", gpr=" +
+                    gpr + ", name=" + name + ", equation=" + equation + ", flux=" + flux + "]";
+        }
+    }
+
+    /** A row of a compounds table. The uptake columns are only set for FBA
+     * tables.
+     */
+    public static class Compound {
+        private String id;
+        private String name;
+        private String formula;
+        private Double charge;
+        private String aliases;
+        private String compartment;
+        private String inchikey;
+        private String smiles;
+        private Double uptake;
+        private Double minUptake;
+        private Double lowerBound;
+        private Double maxUptake;
+        private Double upperBound;
+
+        public String getId() {
+            return id;
+        }
+
+        public Compound withId(String id) {
+            this.id = id;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Compound withName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public String getFormula() {
+            return formula;
+        }
+
+        public Compound withFormula(String formula) {
+            this.formula = formula;
+            return this;
+        }
+
+        public Double getCharge() {
+            return charge;
+        }
+
+        public Compound withCharge(Double charge) {
+            this.charge = charge;
+            return this;
+        }
+
+        public String getAliases() {
+            return aliases;
+        }
+
+        public Compound withAliases(String aliases) {
+            this.aliases = aliases;
+            return this;
+        }
+
+        public String getCompartment() {
+            return compartment;
+        }
+
+        public Compound withCompartment(String compartment) {
+            this.compartment = compartment;
+            return this;
+        }
+
+        public String getInchikey() {
+            return inchikey;
+        }
+
+        public Compound withInchikey(String inchikey) {
+            this.inchikey = inchikey;
+            return this;
+        }
+
+        public String getSmiles() {
+            return smiles;
+        }
+
+        public Compound withSmiles(String smiles) {
+            this.smiles = smiles;
+            return this;
+        }
+
+        public Double getUptake() {
+            return uptake;
+        }
+
+        public Compound withUptake(Double uptake) {
+            this.uptake = uptake;
+            return this;
+        }
+
+        public Double getMinUptake() {
+            return minUptake;
+        }
+
+        public Compound withMinUptake(Double minUptake) {
+            this.minUptake = minUptake;
+            return this;
+        }
+
+        public Double getLowerBound() {
+            return lowerBound;
+        }
+
+        public Compound withLowerBound(Double lowerBound) {
+            this.lowerBound = lowerBound;
+            return this;
+        }
+
+        public Double getMaxUptake() {
+            return maxUptake;
+        }
+
+        public Compound withMaxUptake(Double maxUptake) {
+            this.maxUptake = maxUptake;
+            return this;
+        }
+
+        public Double getUpperBound() {
+            return upperBound;
+        }
+
+        public Compound withUpperBound(Double upperBound) {
+            this.upperBound = upperBound;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Compound [id=" + id + ", name=" + name + ", formula=" + formula + ", charge=" + charge +
+                    ", compartment=" + compartment + ", uptake=" + uptake + "]";
+        }
+    }
+
+    /** A row of a media table. The compound is a ModelSEED compound id or
+     * a compound name.
+     */
+    public static class MediaCompound {
+        private String compound;
+        private String name;
+        private String formula;
+        private Double minFlux;
+        private Double maxFlux;
+        private Double concentration;
+
+        public String getCompound() {
+            return compound;
+        }
+
+        public MediaCompound withCompound(String compound) {
+            this.compound = compound;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public MediaCompound withName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public String getFormula() {
+            return formula;
+        }
+
+        public MediaCompound withFormula(String formula) {
+            this.formula = formula;
+            return this;
+        }
+
+        public Double getMinFlux() {
+            return minFlux;
+        }
+
+        public MediaCompound withMinFlux(Double minFlux) {
+            this.minFlux = minFlux;
+            return this;
+        }
+
+        public Double getMaxFlux() {
+            return maxFlux;
+        }
+
+        public MediaCompound withMaxFlux(Double maxFlux) {
+            this.maxFlux = maxFlux;
+            return this;
+        }
+
+        public Double getConcentration() {
+            return concentration;
+        }
+
+        public MediaCompound withConcentration(Double concentration) {
+            this.concentration = concentration;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "MediaCompound [compound=" + compound + ", minFlux=" + minFlux + ", maxFlux=" + maxFlux +
+                    ", concentration=" + concentration + "]";
+        }
+    }
+
+    /** A row of a phenotype simulation table. The additional compounds and
+     * the gapfilled reactions are the ';' separated lists of the table,
+     * and "none" stands for no knockouts or additional compounds.
+     */
+    public static class PhenotypeSimulation {
+        private String geneKo;
+        private String mediaWorkspace;
+        private String media;
+        private String additionalCompounds;
+        private Double growth;
+        private Double simulatedGrowth;
+        private Double simulatedGrowthFraction;
+        private Long gapfilledReactionCount;
+        private String gapfilledReactions;
+
+        public String getGeneKo() {
+            return geneKo;
+        }
+
+        public PhenotypeSimulation withGeneKo(String geneKo) {
+            this.geneKo = geneKo;
+            return this;
+        }
+
+        public String getMediaWorkspace() {
+            return mediaWorkspace;
+        }
+
+        public PhenotypeSimulation withMediaWorkspace(String mediaWorkspace) {
+            this.mediaWorkspace = mediaWorkspace;
+            return this;
+        }
+
+        public String getMedia() {
+            return media;
+        }
+
+        public PhenotypeSimulation withMedia(String media) {
+            this.media = media;
+            return this;
+        }
+
+        public String getAdditionalCompounds() {
+            return additionalCompounds;
+        }
+
+        public PhenotypeSimulation withAdditionalCompounds(String additionalCompounds) {
+            this.additionalCompounds = additionalCompounds;
+            return this;
+        }
+
+        public Double getGrowth() {
+            return growth;
+        }
+
+        public PhenotypeSimulation withGrowth(Double growth) {
+            this.growth = growth;
+            return this;
+        }
+
+        public Double getSimulatedGrowth() {
+            return simulatedGrowth;
+        }
+
+        public PhenotypeSimulation withSimulatedGrowth(Double simulatedGrowth) {
+            this.simulatedGrowth = simulatedGrowth;
+            return this;
+        }
+
+        public Double getSimulatedGrowthFraction() {
+            return simulatedGrowthFraction;
+        }
+
+        public PhenotypeSimulation withSimulatedGrowthFraction(Double simulatedGrowthFraction) {
+            this.simulatedGrowthFraction = simulatedGrowthFraction;
+            return this;
+        }
+
+        public Long getGapfilledReactionCount() {
+            return gapfilledReactionCount;
+        }
+
+        public PhenotypeSimulation withGapfilledReactionCount(Long gapfilledReactionCount) {
+            this.gapfilledReactionCount = gapfilledReactionCount;
+            return this;
+        }
+
+        public String getGapfilledReactions() {
+            return gapfilledReactions;
+        }
+
+        public PhenotypeSimulation withGapfilledReactions(String gapfilledReactions) {
+            this.gapfilledReactions = gapfilledReactions;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "PhenotypeSimulation [geneKo=" + geneKo + ", media=" + media + ", additionalCompounds=" +
+                    additionalCompounds + ", growth=" + growth + ", simulatedGrowth=" + simulatedGrowth + "]";
+        }
+    }
+
+    /** Reads the rows of a table one record at a time. */
+    public abstract static class RecordReader<T> implements Closeable {
+        final TableReader in;
+
+        RecordReader(TableReader in) {
+            this.in = in;
+        }
+
+        /** Reads the next row.
+         * @return the record, or null at the end of the table.
+         * @throws IOException if the file cannot be read or a numeric field
+         * is not a number.
+         */
+        public T next() throws IOException {
+            if (!in.next()) {
+                return null;
+            }
+            try {
+                return read();
+            } catch (NumberFormatException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        abstract T read();
+
+        String text(int column) {
+            return in.isEmpty(column) ? null : in.getString(column);
+        }
+
+        Double number(int column) {
+            return in.isEmpty(column) ? null : in.getDouble(column, 0);
+        }
+
+        Long integer(int column) {
+            return in.isEmpty(column) ? null : (long) in.getDouble(column, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Writes records as the rows of a table. */
+    public abstract static class RecordWriter<T> implements Closeable {
+        final TableWriter out;
+
+        RecordWriter(TableWriter out) {
+            this.out = out;
+        }
+
+        /** Writes a record as a row.
+         * @param record the record.
+         * @throws IOException if the file cannot be written.
+         */
+        public abstract void write(T record) throws IOException;
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /** Opens a reactions table, in the model or the FBA layout.
+     * @param path the file.
+     * @return the reader.
+     * @throws IOException if the file cannot be read or has no id column.
+     */
+    public static RecordReader<Reaction> readReactions(Path path) throws IOException {
+        return readReactions(open(path));
+    }
+
+    /** Reads the rows of a reactions table, in the model or the FBA layout.
+     * The table is closed with the reader.
+     * @param in the table, before its first row.
+     * @return the reader.
+     */
+    public static RecordReader<Reaction> readReactions(final TableReader in) {
+        return new RecordReader<Reaction>(in) {
+            private final int id = in.indexOf("id");
+            private final int direction = in.indexOf("direction");
+            private final int compartment = in.indexOf("compartment");
+            private final int gpr = in.indexOf("gpr");
+            private final int name = in.indexOf("name");
+            private final int enzyme = in.indexOf("enzyme");
+            private final int pathway = in.indexOf("pathway");
+            private final int reference = in.indexOf("reference");
+            private final int equation = in.indexOf("equation");
+            private final int definition = in.indexOf("definition");
+            private final int flux = in.indexOf("flux");
+            private final int minFlux = in.indexOf("min_flux");
+            private final int lowerBound = in.indexOf("lowerbound");
+            private final int maxFlux = in.indexOf("max_flux");
+            private final int upperBound = in.indexOf("upperbound");
+
+            @Override
+            Reaction read() {
+                return new Reaction().withId(text(id)).withDirection(text(direction))
+                        .withCompartment(text(compartment)).withGpr(text(gpr))
+                        .withName(text(name)).withEnzyme(text(enzyme))
+                        .withPathway(text(pathway)).withReference(text(reference))
+                        .withEquation(text(equation)).withDefinition(text(definition))
+                        .withFlux(number(flux)).withMinFlux(number(minFlux)).withLowerBound(number(lowerBound))
+                        .withMaxFlux(number(maxFlux)).withUpperBound(number(upperBound));
+            }
+        };
+    }
+
+    /** Opens a compounds table, in the model or the FBA layout.
+     * @param path the file.
+     * @return the reader.
+     * @throws IOException if the file cannot be read or has no id column.
+     */
+    public static RecordReader<Compound> readCompounds(Path path) throws IOException {
+        return readCompounds(open(path));
+    }
+
+    /** Reads the rows of a compounds table, in the model or the FBA layout.
+     * The table is closed with the reader.
+     * @param in the table, before its first row.
+     * @return the reader.
+     */
+    public static RecordReader<Compound> readCompounds(final TableReader in) {
+        return new RecordReader<Compound>(in) {
+            private final int id = in.indexOf("id");
+            private final int name = in.indexOf("name");
+            private final int formula = in.indexOf("formula");
+            private final int charge = in.indexOf("charge");
+            private final int aliases = in.indexOf("aliases");
+            private final int compartment = in.indexOf("compartment");
+            private final int inchikey = in.indexOf("inchikey");
+            private final int smiles = in.indexOf("smiles");
+            private final int uptake = in.indexOf("uptake");
+            private final int minUptake = in.indexOf("min_uptake");
+            private final int lowerBound = in.indexOf("lowerbound");
+            private final int maxUptake = in.indexOf("max_uptake");
+            private final int upperBound = in.indexOf("upperbound");
+
+            @Override
+            Compound read() {
+                return new Compound().withId(text(id)).withName(text(name))
+                        .withFormula(text(formula)).withCharge(number(charge))
+                        .withAliases(text(aliases)).withCompartment(text(compartment))
+                        .withInchikey(text(inchikey)).withSmiles(text(smiles))
+                        .withUptake(number(uptake)).withMinUptake(number(minUptake))
+                        .withLowerBound(number(lowerBound)).withMaxUptake(number(maxUptake))
+                        .withUpperBound(number(upperBound));
+            }
+        };
+    }
+
+    private static TsvReader open(Path path) throws IOException {
+        return open(path, "id");
+    }
+
+    private static TsvReader open(Path path, String required) throws IOException {
+        TsvReader in = TsvReader.open(path);
+        if (in.indexOf(required) < 0) {
+            in.close();
+            throw new IOException("Table file missing required column '" + required + "': " + path);
+        }
+        return in;
+    }
+
+    /** Opens a media table.
+     * @param path the file.
+     * @return the reader.
+     * @throws IOException if the file cannot be read or has no compounds
+     * column.
+     */
+    public static RecordReader<MediaCompound> readMedia(Path path) throws IOException {
+        return readMedia(open(path, "compounds"));
+    }
+
+    /** Reads the rows of a media table. The table is closed with the
+     * reader.
+     * @param in the table, before its first row.
+     * @return the reader.
+     */
+    public static RecordReader<MediaCompound> readMedia(final TableReader in) {
+        return new RecordReader<MediaCompound>(in) {
+            private final int compound = in.indexOf("compounds");
+            private final int name = in.indexOf("name");
+            private final int formula = in.indexOf("formula");
+            private final int minFlux = in.indexOf("minflux");
+            private final int maxFlux = in.indexOf("maxflux");
+            private final int concentration = in.indexOf("concentration");
+
+            @Override
+            MediaCompound read() {
+                return new MediaCompound().withCompound(text(compound)).withName(text(name))
+                        .withFormula(text(formula)).withMinFlux(number(minFlux)).withMaxFlux(number(maxFlux))
+                        .withConcentration(number(concentration));
+            }
+        };
+    }
+
+    /** Opens a phenotype simulation table.
+     * @param path the file.
+     * @return the reader.
+     * @throws IOException if the file cannot be read or has no media
+     * column.
+     */
+    public static RecordReader<PhenotypeSimulation> readPhenotypeSimulations(Path path) throws IOException {
+        return readPhenotypeSimulations(open(path, "media"));
+    }
+
+    /** Reads the rows of a phenotype simulation table, or of a phenotype
+     * set table, whose simulation columns are left null. The table is
+     * closed with the reader.
+     * @param in the table, before its first row.
+     * @return the reader.
+     */
+    public static RecordReader<PhenotypeSimulation> readPhenotypeSimulations(final TableReader in) {
+        return new RecordReader<PhenotypeSimulation>(in) {
+            private final int geneKo = in.indexOf("geneko");
+            private final int mediaWorkspace = in.indexOf("mediaws");
+            private final int media = in.indexOf("media");
+            private final int additionalCompounds = in.indexOf("addtlcpd");
+            private final int growth = in.indexOf("growth");
+            private final int simulatedGrowth = in.indexOf("simulated growth");
+            private final int simulatedGrowthFraction = in.indexOf("simulated growth fraction");
+            private final int gapfilledReactionCount = in.indexOf("gapfilled reaction count");
+            private final int gapfilledReactions = in.indexOf("gapfilled reactions");
+
+            @Override
+            PhenotypeSimulation read() {
+                return new PhenotypeSimulation().withGeneKo(text(geneKo)).withMediaWorkspace(text(mediaWorkspace))
+                        .withMedia(text(media)).withAdditionalCompounds(text(additionalCompounds))
+                        .withGrowth(number(growth)).withSimulatedGrowth(number(simulatedGrowth))
+                        .withSimulatedGrowthFraction(number(simulatedGrowthFraction))
+                        .withGapfilledReactionCount(integer(gapfilledReactionCount))
+                        .withGapfilledReactions(text(gapfilledReactions));
+            }
+        };
+    }
+
+    /** Creates a reactions table.
+     * @param path the file, replaced if it exists.
+     * @param fba true for the fba_to_tsv_file layout, false for the
+     * tsv_file_to_model one.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static RecordWriter<Reaction> writeReactions(Path path, boolean fba) throws IOException {
+        return writeReactions(TsvWriter.create(path, reactionColumns(fba)), fba);
+    }
+
+    /** Writes reactions to a table whose header is
+     * {@link #reactionColumns(boolean)}. The table is closed with the writer.
+     * @param out the table.
+     * @param fba true for the fba_to_tsv_file layout, false for the
+     * tsv_file_to_model one.
+     * @return the writer.
+     */
+    public static RecordWriter<Reaction> writeReactions(TableWriter out, final boolean fba) {
+        return new RecordWriter<Reaction>(out) {
+            @Override
+            public void write(Reaction r) throws IOException {
+                if (fba) {
+                    out.writeRow(r.getId(), r.getDirection(), r.getCompartment(), r.getGpr(), r.getName(),
+                            r.getPathway(), r.getEquation(), r.getDefinition(), r.getFlux(), r.getMinFlux(),
+                            r.getLowerBound(), r.getMaxFlux(), r.getUpperBound());
+                } else {
+                    out.writeRow(r.getId(), r.getDirection(), r.getCompartment(), r.getGpr(), r.getName(),
+                            r.getEnzyme(), r.getPathway(), r.getReference(), r.getEquation(), r.getDefinition());
+                }
+            }
+        };
+    }
+
+    /** Creates a compounds table.
+     * @param path the file, replaced if it exists.
+     * @param fba true for the fba_to_tsv_file layout, false for the
+     * tsv_file_to_model one.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static RecordWriter<Compound> writeCompounds(Path path, boolean fba) throws IOException {
+        return writeCompounds(TsvWriter.create(path, compoundColumns(fba)), fba);
+    }
+
+    /** Writes compounds to a table whose header is
+     * {@link #compoundColumns(boolean)}. The table is closed with the writer.
+     * @param out the table.
+     * @param fba true for the fba_to_tsv_file layout, false for the
+     * tsv_file_to_model one.
+     * @return the writer.
+     */
+    public static RecordWriter<Compound> writeCompounds(TableWriter out, final boolean fba) {
+        return new RecordWriter<Compound>(out) {
+            @Override
+            public void write(Compound c) throws IOException {
+                if (fba) {
+                    out.writeRow(c.getId(), c.getName(), c.getFormula(), c.getCharge(), c.getCompartment(),
+                            c.getUptake(), c.getMinUptake(), c.getLowerBound(), c.getMaxUptake(),
+                            c.getUpperBound());
+                } else {
+                    out.writeRow(c.getId(), c.getName(), c.getFormula(), c.getCharge(), c.getAliases(),
+                            c.getCompartment(), c.getInchikey(), c.getSmiles());
+                }
+            }
+        };
+    }
+
+    /** Creates a media table.
+     * @param path the file, replaced if it exists.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static RecordWriter<MediaCompound> writeMedia(Path path) throws IOException {
+        return writeMedia(TsvWriter.create(path, MEDIA_COLUMNS));
+    }
+
+    /** Writes media compounds to a table whose header is
+     * {@link #MEDIA_COLUMNS}. The table is closed with the writer.
+     * @param out the table.
+     * @return the writer.
+     */
+    public static RecordWriter<MediaCompound> writeMedia(TableWriter out) {
+        return new RecordWriter<MediaCompound>(out) {
+            @Override
+            public void write(MediaCompound c) throws IOException {
+                out.writeRow(c.getCompound(), c.getName(), c.getFormula(), c.getMinFlux(), c.getMaxFlux(),
+                        c.getConcentration());
+            }
+        };
+    }
+
+    /** Creates a phenotype simulation table.
+     * @param path the file, replaced if it exists.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static RecordWriter<PhenotypeSimulation> writePhenotypeSimulations(Path path) throws IOException {
+        return writePhenotypeSimulations(TsvWriter.create(path, PHENOTYPE_SIMULATION_COLUMNS));
+    }
+
+    /** Writes phenotype simulations to a table whose header is
+     * {@link #PHENOTYPE_SIMULATION_COLUMNS}. The table is closed with the
+     * writer.
+     * @param out the table.
+     * @return the writer.
+     */
+    public static RecordWriter<PhenotypeSimulation> writePhenotypeSimulations(TableWriter out) {
+        return new RecordWriter<PhenotypeSimulation>(out) {
+            @Override
+            public void write(PhenotypeSimulation p) throws IOException {
+                out.writeRow(p.getGeneKo(), p.getMediaWorkspace(), p.getMedia(), p.getAdditionalCompounds(),
+                        p.getGrowth(), p.getSimulatedGrowth(), p.getSimulatedGrowthFraction(),
+                        p.getGapfilledReactionCount(), p.getGapfilledReactions());
+            }
+        };
+    }
+
+    /** Writes the reactions and compounds files of a model for
+     * tsv_file_to_model, streaming the records to disk as they are
+     * iterated.
+     * @param dir the directory, which must exist.
+     * @param modelId the model id, used to name the files
+     * &lt;modelId&gt;-reactions.tsv and &lt;modelId&gt;-compounds.tsv.
+     * @param reactions the reactions.
+     * @param compounds the compounds.
+     * @return the local paths of the files.
+     * @throws IOException if a file cannot be written.
+     */
+    public static ModelTsvFiles writeModel(Path dir, String modelId, Iterable<Reaction> reactions,
+            Iterable<Compound> compounds) throws IOException {
+        Path rxnPath = dir.resolve(modelId + "-reactions.tsv");
+        Path cpdPath = dir.resolve(modelId + "-compounds.tsv");
+        try (RecordWriter<Reaction> w = writeReactions(rxnPath, false)) {
+            for (Reaction r : reactions) {
+                w.write(r);
+            }
+        }
+        try (RecordWriter<Compound> w = writeCompounds(cpdPath, false)) {
+            for (Compound c : compounds) {
+                w.write(c);
+            }
+        }
+        return new ModelTsvFiles().withReactionsFile(new File().withPath(rxnPath.toString()))
+                .withCompoundsFile(new File().withPath(cpdPath.toString()));
+    }
+
+    /** Builds the parameters of a tsv_file_to_model call for model files.
+     * @param files the reactions and compounds files.
+     * @param workspaceName the workspace to save the model in.
+     * @param modelName the name of the model object.
+     * @return the parameters; genome and biomass are left to the caller.
+     */
+    public static ModelCreationParams creationParams(ModelTsvFiles files, String workspaceName,
+            String modelName) {
+        return new ModelCreationParams().withModelFile(files.getReactionsFile())
+                .withCompoundsFile(files.getCompoundsFile()).withWorkspaceName(workspaceName)
+                .withModelName(modelName);
+    }
+}
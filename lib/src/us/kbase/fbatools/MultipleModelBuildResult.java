@@ -0,0 +1,129 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a {@link MultipleModelBuilder} run: one entry per genome,
+ * in input order.
+ */
+public class MultipleModelBuildResult {
+    private final List<GenomeBuild> builds;
+
+    /** The outcome of the model build of one genome. Exactly one of the
+     * results and the error is set.
+     */
+    public static class GenomeBuild {
+        private final String genomeId;
+        private final BuildMetabolicModelResults results;
+        private final Throwable error;
+        private final long elapsedMillis;
+
+        GenomeBuild(String genomeId, BuildMetabolicModelResults results, Throwable error, long elapsedMillis) {
+            this.genomeId = genomeId;
+            this.results = results;
+            this.error = error;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getGenomeId() {
+            return genomeId;
+        }
+
+        public BuildMetabolicModelResults getResults() {
+            return results;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSucceeded() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "GenomeBuild [genomeId=" + genomeId + ", results=" + results + ", error=" + error +
+                    ", elapsedMillis=" + elapsedMillis + "]";
+        }
+    }
+
+    MultipleModelBuildResult(List<GenomeBuild> builds) {
+        this.builds = Collections.unmodifiableList(builds);
+    }
+
+    public List<GenomeBuild> getBuilds() {
+        return builds;
+    }
+
+    public List<GenomeBuild> getSucceeded() {
+        List<GenomeBuild> ret = new ArrayList<GenomeBuild>();
+        for (GenomeBuild b : builds) {
+            if (b.isSucceeded()) {
+                ret.add(b);
+            }
+        }
+        return ret;
+    }
+
+    public List<GenomeBuild> getFailed() {
+        List<GenomeBuild> ret = new ArrayList<GenomeBuild>();
+        for (GenomeBuild b : builds) {
+            if (!b.isSucceeded()) {
+                ret.add(b);
+            }
+        }
+        return ret;
+    }
+
+    /** Check whether some, but not all, genomes failed.
+     * @return true on partial failure.
+     */
+    public boolean isPartialFailure() {
+        int failed = getFailed().size();
+        return failed > 0 && failed < builds.size();
+    }
+
+    /** Collects the successfully built models into an FBAModelSet, keyed by
+     * genome id, ready to be saved as a KBaseFBA.FBAModelSet object.
+     * @param description the description of the set.
+     * @return the model set.
+     */
+    public FBAModelSet toFBAModelSet(String description) {
+        Map<String, FBAModelSetElement> elements = new LinkedHashMap<String, FBAModelSetElement>();
+        for (GenomeBuild b : getSucceeded()) {
+            Map<String, String> metadata = new LinkedHashMap<String, String>();
+            metadata.put("genome_ref", b.getGenomeId());
+            if (b.getResults().getNewFbaRef() != null) {
+                metadata.put("fba_ref", b.getResults().getNewFbaRef());
+            }
+            elements.put(b.getGenomeId(), new FBAModelSetElement()
+                    .withRef(b.getResults().getNewFbamodelRef()).withMetadata(metadata));
+        }
+        return new FBAModelSet().withDescription(description).withElements(elements);
+    }
+
+    /** Summarises the run in the same form as the service report.
+     * @return one line per genome.
+     */
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (GenomeBuild b : builds) {
+            sb.append(b.getGenomeId()).append(b.isSucceeded() ? " succeeded!" : " failed: " + b.getError()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "MultipleModelBuildResult [builds=" + builds.size() + ", failed=" + getFailed().size() + "]";
+    }
+}
@@ -0,0 +1,180 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import us.kbase.common.service.RpcContext;
+
+/**
+ * <p>Client-side replacement for build_multiple_metabolic_models that builds
+ * the models concurrently.</p>
+ * <p>The genome list of a {@link BuildMultipleMetabolicModelsParams} is
+ * expanded the same way the service does it (genome_ids followed by the
+ * entries of genome_text split on newlines, ';' and '|'), and every genome
+ * becomes its own build_metabolic_model call with otherwise identical
+ * parameters. Calls run on virtual threads where the runtime provides them,
+ * and at most {@link #setMaxConcurrentBuilds(int)} calls are in flight at
+ * once. A failed genome does not stop the others; every genome gets a
+ * {@link MultipleModelBuildResult.GenomeBuild} with either its results or
+ * its error.</p>
+ * <p>Unlike the service, genome_ids entries naming a GenomeSet are not
+ * expanded, since that needs the workspace; pass the member genomes
+ * instead.</p>
+ */
+public class MultipleModelBuilder {
+    private final FbaToolsClient client;
+    private int maxConcurrentBuilds = 16;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** Receives each genome's outcome as soon as its build finishes. Called
+     * from the build threads, so implementations must be thread safe.
+     */
+    public interface Listener {
+        void genomeBuilt(MultipleModelBuildResult.GenomeBuild build);
+    }
+
+    /** Constructs a builder.
+     * @param client the client used for the build_metabolic_model calls.
+     */
+    public MultipleModelBuilder(FbaToolsClient client) {
+        this.client = client;
+    }
+
+    /** Set the maximum number of build_metabolic_model calls in flight.
+     * @param maxConcurrentBuilds the limit, at least 1. Default 16.
+     */
+    public void setMaxConcurrentBuilds(int maxConcurrentBuilds) {
+        if (maxConcurrentBuilds < 1) {
+            throw new IllegalArgumentException("maxConcurrentBuilds must be at least 1");
+        }
+        this.maxConcurrentBuilds = maxConcurrentBuilds;
+    }
+
+    public int getMaxConcurrentBuilds() {
+        return maxConcurrentBuilds;
+    }
+
+    /** Run the builds on the given executor instead of a private one. The
+     * executor is not shut down by this builder.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Builds a model for every genome of the parameters and waits for all
+     * of them to finish.
+     * @param params the parameters, as they would be passed to
+     * build_multiple_metabolic_models.
+     * @return the outcome of every genome, in input order.
+     * @throws InterruptedException if interrupted while waiting; builds
+     * still in flight are cancelled.
+     */
+    public MultipleModelBuildResult build(final BuildMultipleMetabolicModelsParams params,
+            final RpcContext... jsonRpcContext) throws InterruptedException {
+        List<String> genomes = genomeIds(params);
+        ExecutorService exec = executor != null ? executor
+                : FbaExecutors.newBlockingCallExecutor("fba-model-build", maxConcurrentBuilds);
+        final Semaphore gate = new Semaphore(maxConcurrentBuilds);
+        List<Future<MultipleModelBuildResult.GenomeBuild>> futures =
+                new ArrayList<Future<MultipleModelBuildResult.GenomeBuild>>();
+        try {
+            for (final String genome : genomes) {
+                futures.add(exec.submit(() -> {
+                    gate.acquire();
+                    try {
+                        return buildOne(params, genome, jsonRpcContext);
+                    } finally {
+                        gate.release();
+                    }
+                }));
+            }
+            List<MultipleModelBuildResult.GenomeBuild> builds =
+                    new ArrayList<MultipleModelBuildResult.GenomeBuild>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    builds.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    builds.add(new MultipleModelBuildResult.GenomeBuild(genomes.get(i), null, e.getCause(), 0));
+                }
+            }
+            return new MultipleModelBuildResult(builds);
+        } catch (InterruptedException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    private MultipleModelBuildResult.GenomeBuild buildOne(BuildMultipleMetabolicModelsParams params,
+            String genome, RpcContext[] jsonRpcContext) {
+        long start = System.currentTimeMillis();
+        MultipleModelBuildResult.GenomeBuild build;
+        try {
+            BuildMetabolicModelResults res = client.buildMetabolicModel(paramsForGenome(params, genome), jsonRpcContext);
+            build = new MultipleModelBuildResult.GenomeBuild(genome, res, null, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            build = new MultipleModelBuildResult.GenomeBuild(genome, null, e, System.currentTimeMillis() - start);
+        }
+        if (listener != null) {
+            listener.genomeBuilt(build);
+        }
+        return build;
+    }
+
+    /** Expands the genome list of the parameters, dropping duplicates.
+     * @param params the parameters.
+     * @return the genome ids or references, in input order.
+     */
+    public static List<String> genomeIds(BuildMultipleMetabolicModelsParams params) {
+        Set<String> genomes = new LinkedHashSet<String>();
+        if (params.getGenomeIds() != null) {
+            for (String g : params.getGenomeIds()) {
+                if (g != null && !g.trim().isEmpty()) {
+                    genomes.add(g.trim());
+                }
+            }
+        }
+        if (params.getGenomeText() != null) {
+            for (String g : params.getGenomeText().split("[\\n;\\|]+")) {
+                if (!g.trim().isEmpty()) {
+                    genomes.add(g.trim());
+                }
+            }
+        }
+        return new ArrayList<String>(genomes);
+    }
+
+    /** Derives the build_metabolic_model parameters of one genome. The
+     * output model id is left unset, as the service does, so each model is
+     * named after its genome.
+     * @param params the parameters of the whole set.
+     * @param genome the genome id or reference.
+     * @return the parameters of the single build.
+     */
+    @SuppressWarnings("unchecked")
+    public static BuildMetabolicModelParams paramsForGenome(BuildMultipleMetabolicModelsParams params, String genome) {
+        Map<String, Object> map = JsonRpcCodec.mapper().convertValue(params, Map.class);
+        map.remove("genome_ids");
+        map.remove("genome_text");
+        map.remove("fbamodel_output_id");
+        map.put("genome_id", genome);
+        return JsonRpcCodec.mapper().convertValue(map, BuildMetabolicModelParams.class);
+    }
+}
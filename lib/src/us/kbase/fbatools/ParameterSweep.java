@@ -0,0 +1,410 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoublePredicate;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import us.kbase.common.service.RpcContext;
+
+/**
+ * <p>Runs an FBA or gap filling over a grid of numeric parameter values
+ * concurrently, with the objective of every point in one table.</p>
+ * <p>A sweep starts from base parameters holding the unchanged setup: model,
+ * media, workspace and every other option. Each axis names a numeric field
+ * as in the spec, e.g. objective_fraction, omega or max_c_uptake, with its
+ * values; every combination of the axes' values is a point, and a point's
+ * parameters are the base with those fields replaced, and its output id
+ * suffixed with the point's index so that the outputs do not overwrite each
+ * other. At most {@link #setMaxConcurrentRuns(int)} points run at once;
+ * the next point is only submitted once one is done.</p>
+ * <p>With a {@link #setTarget(DoublePredicate) target}, the first point
+ * whose objective meets it stops the sweep: points already running finish,
+ * the others are skipped. A failed point does not stop the sweep.</p>
+ * <pre>
+ * ParameterSweep&lt;RunFluxBalanceAnalysisParams, RunFluxBalanceAnalysisResults&gt; sweep =
+ *         ParameterSweep.fluxBalance(client, params);
+ * sweep.addRange("max_c_uptake", 5, 50, 10).addAxis("objective_fraction", 0.1, 0.5, 0.9);
+ * sweep.setTarget(objective -&gt; objective &gt;= 0.8);
+ * ParameterSweepResult&lt;?, ?&gt; result = sweep.run();
+ * try (TsvWriter w = TsvWriter.create(path, result.getColumns())) {
+ *     result.writeTable(w);
+ * }
+ * </pre>
+ * @param <P> the type of the parameters.
+ * @param <R> the type of the results.
+ */
+public class ParameterSweep<P, R> {
+    private final Class<P> type;
+    private final P base;
+    private final Runner<P, R> runner;
+    private final Objective<R> objective;
+    private final Set<String> numericFields = new HashSet<String>();
+    private final Map<String, double[]> axes = new LinkedHashMap<String, double[]>();
+    private String outputField = null;
+    private String outputBase = null;
+    private DoublePredicate target = null;
+    private boolean maximize = true;
+    private int maxConcurrentRuns = 8;
+    private ExecutorService executor = null;
+    private boolean computeExecutor = false;
+    // the fields a local sweep applies per point; null for any
+    private Set<String> sweepable = null;
+    private Listener<P, R> listener = null;
+
+    /** Runs the parameters of one point and waits for its results. */
+    public interface Runner<P, R> {
+        R run(P params) throws Exception;
+    }
+
+    /** Reads the value a sweep optimizes from the results of a point. */
+    public interface Objective<R> {
+        double of(R results);
+    }
+
+    /** Receives each point as soon as it is done. Called from the run
+     * threads, so implementations must be thread safe.
+     */
+    public interface Listener<P, R> {
+        void pointDone(ParameterSweepResult.Point<P, R> point);
+    }
+
+    /** Constructs a sweep of any method.
+     * @param type the class of the parameters.
+     * @param base the parameters every point starts from.
+     * @param runner runs the parameters of a point.
+     * @param objective reads the objective from the results of a point.
+     */
+    public ParameterSweep(Class<P> type, P base, Runner<P, R> runner, Objective<R> objective) {
+        this.type = type;
+        this.base = base;
+        this.runner = runner;
+        this.objective = objective;
+        for (BeanPropertyDefinition prop : JsonRpcCodec.mapper().getSerializationConfig()
+                .introspect(JsonRpcCodec.mapper().constructType(type)).findProperties()) {
+            Class<?> raw = prop.getRawPrimaryType();
+            if (Number.class.isAssignableFrom(raw) || (raw.isPrimitive() && raw != boolean.class)) {
+                numericFields.add(prop.getName());
+            }
+        }
+    }
+
+    /** Sweeps run_flux_balance_analysis on the service, maximizing the
+     * objective it reports. Each point's fba_output_id is that of the base,
+     * or the model id followed by .fba, with the point's index appended.
+     * @param client the client.
+     * @param base the parameters every point starts from.
+     * @param jsonRpcContext the call context of every point.
+     * @return the sweep.
+     */
+    public static ParameterSweep<RunFluxBalanceAnalysisParams, RunFluxBalanceAnalysisResults> fluxBalance(
+            final FbaToolsClient client, RunFluxBalanceAnalysisParams base, final RpcContext... jsonRpcContext) {
+        ParameterSweep<RunFluxBalanceAnalysisParams, RunFluxBalanceAnalysisResults> sweep =
+                new ParameterSweep<RunFluxBalanceAnalysisParams, RunFluxBalanceAnalysisResults>(
+                        RunFluxBalanceAnalysisParams.class, base,
+                        p -> client.runFluxBalanceAnalysis(p, jsonRpcContext),
+                        r -> r.getObjective() == null ? Double.NaN : r.getObjective());
+        String output = base.getFbaOutputId() != null ? base.getFbaOutputId() : base.getFbamodelId() + ".fba";
+        sweep.setOutputField("fba_output_id", output);
+        return sweep;
+    }
+
+    /** Sweeps gapfill_metabolic_model on the service, minimizing the number
+     * of gap filled reactions. Each point's fbamodel_output_id is that of the
+     * base, or the model id followed by .gf, with the point's index appended.
+     * @param client the client.
+     * @param base the parameters every point starts from.
+     * @param jsonRpcContext the call context of every point.
+     * @return the sweep.
+     */
+    public static ParameterSweep<GapfillMetabolicModelParams, GapfillMetabolicModelResults> gapfill(
+            final FbaToolsClient client, GapfillMetabolicModelParams base, final RpcContext... jsonRpcContext) {
+        ParameterSweep<GapfillMetabolicModelParams, GapfillMetabolicModelResults> sweep =
+                new ParameterSweep<GapfillMetabolicModelParams, GapfillMetabolicModelResults>(
+                        GapfillMetabolicModelParams.class, base,
+                        p -> client.gapfillMetabolicModel(p, jsonRpcContext),
+                        r -> r.getNumberGapfilledReactions() == null ? Double.NaN : r.getNumberGapfilledReactions());
+        String output = base.getFbamodelOutputId() != null ? base.getFbamodelOutputId() :
+                base.getFbamodelId() + ".gf";
+        sweep.setOutputField("fbamodel_output_id", output);
+        sweep.setMaximize(false);
+        return sweep;
+    }
+
+    /** Sweeps the in-process {@link FbaProblem} on an already loaded model
+     * and media, maximizing the objective value. The program is built once
+     * from the base, and every point solves a copy of it with its own
+     * values. Only the fields the local engine honours per point can be
+     * swept: objective_fraction when the base asks for fva, and
+     * default_max_uptake when it asks for neither fva nor simulate_ko;
+     * adding an axis on any other field throws. Points run on a pool of one
+     * thread per processor unless another executor is set, and the fva and
+     * knockout screen of a point run on its own thread.
+     * @param model the FBAModel object, as JSON.
+     * @param media the Media object, as JSON, or null for the Complete media.
+     * @param base the parameters every point starts from.
+     * @return the sweep.
+     * @throws IllegalArgumentException if the base cannot be run locally.
+     */
+    public static ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> local(final JsonNode model,
+            final JsonNode media, RunFluxBalanceAnalysisParams base) {
+        final FbaProblem problem = FbaProblem.fromModel(model, media, base);
+        final boolean singleSolve = !problem.isFva() && !problem.isSimulateKo();
+        ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> sweep =
+                new ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution>(RunFluxBalanceAnalysisParams.class,
+                        base, p -> {
+                            if (!singleSolve) {
+                                // the points already run side by side
+                                return problem.solve(p.getObjectiveFraction() == null ?
+                                        problem.getObjectiveFraction() : p.getObjectiveFraction(), 1);
+                            }
+                            SimplexSolver s = problem.newSolver();
+                            if (p.getDefaultMaxUptake() != null) {
+                                problem.setMedia(s, media, p.getDefaultMaxUptake());
+                            }
+                            s.solve();
+                            return problem.solution(s);
+                        },
+                        s -> s.isOptimal() ? s.getObjectiveValue() : Double.NaN);
+        sweep.sweepable = new HashSet<String>();
+        if (problem.isFva()) {
+            sweep.sweepable.add("objective_fraction");
+        }
+        if (singleSolve) {
+            sweep.sweepable.add("default_max_uptake");
+        }
+        sweep.setMaxConcurrentRuns(Runtime.getRuntime().availableProcessors());
+        sweep.computeExecutor = true;
+        return sweep;
+    }
+
+    /** Adds an axis of values.
+     * @param field the numeric field, named as in the spec.
+     * @param values the values.
+     * @return this sweep.
+     * @throws IllegalArgumentException if the parameters have no such
+     * numeric field, it is already swept, or a local sweep cannot vary it.
+     */
+    public ParameterSweep<P, R> addAxis(String field, double... values) {
+        if (!numericFields.contains(field)) {
+            throw new IllegalArgumentException("No numeric field " + field + " in " + type.getSimpleName());
+        }
+        if (sweepable != null && !sweepable.contains(field)) {
+            throw new IllegalArgumentException("Not supported by the local FBA engine: sweeping " + field +
+                    ", only " + sweepable + " with these parameters");
+        }
+        if (axes.containsKey(field)) {
+            throw new IllegalArgumentException("Field " + field + " is already swept");
+        }
+        if (values.length == 0) {
+            throw new IllegalArgumentException("No values for " + field);
+        }
+        axes.put(field, values.clone());
+        return this;
+    }
+
+    /** Adds an axis of evenly spaced values.
+     * @param field the numeric field, named as in the spec.
+     * @param from the first value.
+     * @param to the last value.
+     * @param count the number of values, at least 1; a single value is from.
+     * @return this sweep.
+     * @throws IllegalArgumentException if the parameters have no such
+     * numeric field, it is already swept, or a local sweep cannot vary it.
+     */
+    public ParameterSweep<P, R> addRange(String field, double from, double to, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("count must be at least 1");
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = count == 1 ? from : from + (to - from) * i / (count - 1);
+        }
+        return addAxis(field, values);
+    }
+
+    // the output id field, suffixed per point so that outputs do not collide
+    private void setOutputField(String field, String output) {
+        this.outputField = field;
+        this.outputBase = output;
+    }
+
+    /** Stop the sweep at the first point whose objective meets a target.
+     * @param target the test of the objective, or null to run every point.
+     */
+    public void setTarget(DoublePredicate target) {
+        this.target = target;
+    }
+
+    /** Set whether the best point has the highest or the lowest objective.
+     * @param maximize true for the highest. Default true, except for gap
+     * filling.
+     */
+    public void setMaximize(boolean maximize) {
+        this.maximize = maximize;
+    }
+
+    public boolean isMaximize() {
+        return maximize;
+    }
+
+    /** Set the maximum number of points running at once.
+     * @param maxConcurrentRuns the limit, at least 1. Default 8, or one per
+     * processor for a local sweep.
+     */
+    public void setMaxConcurrentRuns(int maxConcurrentRuns) {
+        if (maxConcurrentRuns < 1) {
+            throw new IllegalArgumentException("maxConcurrentRuns must be at least 1");
+        }
+        this.maxConcurrentRuns = maxConcurrentRuns;
+    }
+
+    public int getMaxConcurrentRuns() {
+        return maxConcurrentRuns;
+    }
+
+    /** Run the points on the given executor instead of a private one. The
+     * executor is not shut down by this sweep.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener<P, R> listener) {
+        this.listener = listener;
+    }
+
+    /** Get the number of points of the grid.
+     * @return the product of the axes' sizes, 1 without axes.
+     */
+    public int getPointCount() {
+        long count = 1;
+        for (double[] values : axes.values()) {
+            count *= values.length;
+            if (count > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Too many points in the sweep");
+            }
+        }
+        return (int) count;
+    }
+
+    /** Get the swept values of a point. The last axis varies fastest.
+     * @param index the position of the point in grid order.
+     * @return the value of each swept field, in axis order.
+     */
+    public Map<String, Double> getValues(int index) {
+        Map<String, Double> ret = new LinkedHashMap<String, Double>();
+        int stride = getPointCount();
+        for (Map.Entry<String, double[]> e : axes.entrySet()) {
+            stride /= e.getValue().length;
+            ret.put(e.getKey(), e.getValue()[index / stride % e.getValue().length]);
+        }
+        return ret;
+    }
+
+    /** Derives the parameters of a point from the base.
+     * @param index the position of the point in grid order.
+     * @return the parameters.
+     */
+    @SuppressWarnings("unchecked")
+    public P paramsForPoint(int index) {
+        Map<String, Object> map = JsonRpcCodec.mapper().convertValue(base, Map.class);
+        map.putAll(getValues(index));
+        if (outputField != null) {
+            map.put(outputField, outputBase + "." + index);
+        }
+        return JsonRpcCodec.mapper().convertValue(map, type);
+    }
+
+    /** Runs every point, or until the target is reached, and waits for the
+     * points started to finish.
+     * @return the points, in grid order.
+     * @throws InterruptedException if interrupted while waiting; points
+     * still running are cancelled.
+     */
+    public ParameterSweepResult<P, R> run() throws InterruptedException {
+        final int n = getPointCount();
+        final List<String> fields = new ArrayList<String>(axes.keySet());
+        final AtomicReference<ParameterSweepResult.Point<P, R>> reached =
+                new AtomicReference<ParameterSweepResult.Point<P, R>>();
+        ExecutorService exec = executor != null ? executor : computeExecutor ?
+                FbaExecutors.newComputeExecutor("fba-sweep", maxConcurrentRuns) :
+                FbaExecutors.newBlockingCallExecutor("fba-sweep", maxConcurrentRuns);
+        final Semaphore gate = new Semaphore(maxConcurrentRuns);
+        List<Future<ParameterSweepResult.Point<P, R>>> futures =
+                new ArrayList<Future<ParameterSweepResult.Point<P, R>>>();
+        try {
+            for (int i = 0; i < n; i++) {
+                final int index = i;
+                // wait for a free run before submitting, so that a shared
+                // executor is not filled with points waiting their turn
+                gate.acquire();
+                futures.add(exec.submit(() -> {
+                    try {
+                        return runPoint(index, reached);
+                    } finally {
+                        gate.release();
+                    }
+                }));
+            }
+            List<ParameterSweepResult.Point<P, R>> points = new ArrayList<ParameterSweepResult.Point<P, R>>();
+            for (int i = 0; i < n; i++) {
+                try {
+                    points.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    points.add(new ParameterSweepResult.Point<P, R>(i, getValues(i), null, null, e.getCause(),
+                            ParameterSweepResult.Status.FAILED, Double.NaN, 0));
+                }
+            }
+            return new ParameterSweepResult<P, R>(fields, points, reached.get(), maximize);
+        } catch (InterruptedException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    private ParameterSweepResult.Point<P, R> runPoint(int index,
+            AtomicReference<ParameterSweepResult.Point<P, R>> reached) {
+        Map<String, Double> values = getValues(index);
+        if (reached.get() != null) {
+            return new ParameterSweepResult.Point<P, R>(index, values, null, null, null,
+                    ParameterSweepResult.Status.SKIPPED, Double.NaN, 0);
+        }
+        long start = System.currentTimeMillis();
+        P params = null;
+        ParameterSweepResult.Point<P, R> point;
+        try {
+            params = paramsForPoint(index);
+            R results = runner.run(params);
+            point = new ParameterSweepResult.Point<P, R>(index, values, params, results, null,
+                    ParameterSweepResult.Status.SUCCEEDED, objective.of(results), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            point = new ParameterSweepResult.Point<P, R>(index, values, params, null, e,
+                    ParameterSweepResult.Status.FAILED, Double.NaN, System.currentTimeMillis() - start);
+        }
+        if (target != null && point.getStatus() == ParameterSweepResult.Status.SUCCEEDED &&
+                !Double.isNaN(point.getObjective()) && target.test(point.getObjective())) {
+            reached.compareAndSet(null, point);
+        }
+        if (listener != null) {
+            listener.pointDone(point);
+        }
+        return point;
+    }
+}
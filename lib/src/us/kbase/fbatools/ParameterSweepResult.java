@@ -0,0 +1,196 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a {@link ParameterSweep}: one point per combination of the
+ * swept values, in grid order, each with its objective, and the point that
+ * reached the target if one did.
+ * @param <P> the type of the parameters.
+ * @param <R> the type of the results.
+ */
+public class ParameterSweepResult<P, R> {
+    private final List<String> fields;
+    private final List<Point<P, R>> points;
+    private final Point<P, R> targetPoint;
+    private final boolean maximize;
+
+    /** How a point of the grid ended. */
+    public enum Status {
+        /** The run finished and its objective is known. */
+        SUCCEEDED,
+        /** The run failed; the error is set. */
+        FAILED,
+        /** The run was not started, as the target had been reached. */
+        SKIPPED
+    }
+
+    /** One point of the grid.
+     * @param <P> the type of the parameters.
+     * @param <R> the type of the results.
+     */
+    public static class Point<P, R> {
+        private final int index;
+        private final Map<String, Double> values;
+        private final P params;
+        private final R results;
+        private final Throwable error;
+        private final Status status;
+        private final double objective;
+        private final long elapsedMillis;
+
+        Point(int index, Map<String, Double> values, P params, R results, Throwable error, Status status,
+                double objective, long elapsedMillis) {
+            this.index = index;
+            this.values = Collections.unmodifiableMap(values);
+            this.params = params;
+            this.results = results;
+            this.error = error;
+            this.status = status;
+            this.objective = objective;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /** Get the position of the point in grid order.
+         * @return the index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /** Get the swept values of the point.
+         * @return the value of each swept field, in axis order.
+         */
+        public Map<String, Double> getValues() {
+            return values;
+        }
+
+        public P getParams() {
+            return params;
+        }
+
+        public R getResults() {
+            return results;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        /** Get the objective of the point's results.
+         * @return the objective, or NaN if the point did not succeed.
+         */
+        public double getObjective() {
+            return objective;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        @Override
+        public String toString() {
+            return "Point [index=" + index + ", values=" + values + ", status=" + getStatus() + ", objective=" +
+                    objective + ", error=" + error + ", elapsedMillis=" + elapsedMillis + "]";
+        }
+    }
+
+    ParameterSweepResult(List<String> fields, List<Point<P, R>> points, Point<P, R> targetPoint,
+            boolean maximize) {
+        this.fields = Collections.unmodifiableList(new ArrayList<String>(fields));
+        this.points = Collections.unmodifiableList(points);
+        this.targetPoint = targetPoint;
+        this.maximize = maximize;
+    }
+
+    /** Get the swept fields.
+     * @return the field names, in axis order.
+     */
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public List<Point<P, R>> getPoints() {
+        return points;
+    }
+
+    /** Get the point whose objective first reached the target.
+     * @return the point, or null if no target was set or none reached it.
+     */
+    public Point<P, R> getTargetPoint() {
+        return targetPoint;
+    }
+
+    public boolean isTargetReached() {
+        return targetPoint != null;
+    }
+
+    /** Get the succeeded point with the best objective, the highest or the
+     * lowest as the sweep was set to maximize or minimize.
+     * @return the point, or null if none succeeded.
+     */
+    public Point<P, R> getBest() {
+        Point<P, R> best = null;
+        for (Point<P, R> p : points) {
+            if (p.getStatus() == Status.SUCCEEDED && !Double.isNaN(p.getObjective()) && (best == null ||
+                    (maximize ? p.getObjective() > best.getObjective() : p.getObjective() < best.getObjective()))) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    /** Get the columns of the table written by {@link #writeTable(TableWriter)}.
+     * @return the swept fields, then objective, status, elapsed_ms and error.
+     */
+    public List<String> getColumns() {
+        List<String> ret = new ArrayList<String>(fields);
+        ret.add("objective");
+        ret.add("status");
+        ret.add("elapsed_ms");
+        ret.add("error");
+        return ret;
+    }
+
+    /** Writes one row per point, in grid order.
+     * @param out a table with the columns of {@link #getColumns()}, e.g. a
+     * {@link TsvWriter}.
+     * @throws IOException if the table cannot be written.
+     */
+    public void writeTable(TableWriter out) throws IOException {
+        for (Point<P, R> p : points) {
+            Object[] row = new Object[fields.size() + 4];
+            for (int f = 0; f < fields.size(); f++) {
+                row[f] = p.getValues().get(fields.get(f));
+            }
+            row[fields.size()] = Double.isNaN(p.getObjective()) ? null : p.getObjective();
+            row[fields.size() + 1] = p.getStatus();
+            row[fields.size() + 2] = p.getStatus() == Status.SKIPPED ? null : p.getElapsedMillis();
+            row[fields.size() + 3] = p.getError() == null ? null : p.getError().getMessage();
+            out.writeRow(row);
+        }
+    }
+
+    @Override
+    public String toString() {
+        int failed = 0;
+        int skipped = 0;
+        for (Point<P, R> p : points) {
+            if (p.getStatus() == Status.FAILED) {
+                failed++;
+            } else if (p.getStatus() == Status.SKIPPED) {
+                skipped++;
+            }
+        }
+        return "ParameterSweepResult [fields=" + fields + ", points=" + points.size() + ", failed=" + failed +
+                ", skipped=" + skipped + ", targetReached=" + isTargetReached() + "]";
+    }
+}
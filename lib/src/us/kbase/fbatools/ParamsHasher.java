@@ -0,0 +1,97 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * <p>Canonical hashing of call parameters.</p>
+ * <p>A parameters object is serialized exactly as it would be sent to the
+ * service, additionalProperties included, then rewritten into a canonical
+ * form: object members sorted by name at every level and null members
+ * dropped, since the service treats an absent and a null member alike. Two
+ * parameters objects that the service cannot tell apart therefore get the
+ * same hash, whatever order their maps were filled in.</p>
+ */
+public class ParamsHasher {
+
+    private ParamsHasher() {}
+
+    /** Get the canonical JSON form of a value.
+     * @param value the value, usually a parameters object.
+     * @return the canonical JSON string.
+     */
+    public static String canonicalJson(Object value) {
+        try {
+            return JsonRpcCodec.mapper().writeValueAsString(canonical(JsonRpcCodec.mapper().valueToTree(value)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize " + value, e);
+        }
+    }
+
+    /** Get the SHA-256 hash of the canonical form of a sequence of values.
+     * @param values the values, e.g. the method name followed by its arguments.
+     * @return the lower case hex encoded hash.
+     */
+    public static String hash(Object... values) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Object value : values) {
+            md.update(canonicalJson(value).getBytes(StandardCharsets.UTF_8));
+            // separator that cannot occur in JSON text
+            md.update((byte) 0);
+        }
+        return hex(md.digest());
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static JsonNode canonical(JsonNode node) {
+        if (node == null) {
+            return JsonNodeFactory.instance.nullNode();
+        }
+        if (node.isObject()) {
+            List<String> names = new ArrayList<String>();
+            Iterator<String> it = node.fieldNames();
+            while (it.hasNext()) {
+                names.add(it.next());
+            }
+            Collections.sort(names);
+            ObjectNode ret = JsonNodeFactory.instance.objectNode();
+            for (String name : names) {
+                JsonNode child = node.get(name);
+                if (child != null && !child.isNull()) {
+                    ret.set(name, canonical(child));
+                }
+            }
+            return ret;
+        }
+        if (node.isArray()) {
+            ArrayNode ret = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode child : node) {
+                ret.add(canonical(child));
+            }
+            return ret;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,128 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>The simulated growth of every phenotype of a {@link PhenotypeSimulator}
+ * run, in phenotype order.</p>
+ * <p>Growth below 1e-7 is taken as no growth, as in the service. The
+ * fraction is the simulated growth over the growth on the same media without
+ * the phenotype's gene knockouts, zero when that does not grow, and the class
+ * compares it with the observed normalized growth: CP and CN for correct
+ * positives and negatives, FP and FN for false ones, and UN when there is no
+ * observation or the program could not be solved, in which case the growth
+ * values are NaN.</p>
+ */
+public class PhenotypeSimulationResult {
+    /** Class of a correctly predicted growth. */
+    public static final String CORRECT_POSITIVE = "CP";
+    /** Class of a correctly predicted lack of growth. */
+    public static final String CORRECT_NEGATIVE = "CN";
+    /** Class of a growth observed but not predicted. */
+    public static final String FALSE_NEGATIVE = "FN";
+    /** Class of a growth predicted but not observed. */
+    public static final String FALSE_POSITIVE = "FP";
+    /** Class of a phenotype without observation or solution. */
+    public static final String UNKNOWN = "UN";
+
+    private final List<String> ids;
+    private final double[] simulatedGrowth;
+    private final double[] wildTypeGrowth;
+    private final double[] fraction;
+    private final String[] classes;
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+    PhenotypeSimulationResult(List<String> ids, double[] simulatedGrowth, double[] wildTypeGrowth,
+            double[] fraction, String[] classes) {
+        this.ids = Collections.unmodifiableList(new ArrayList<String>(ids));
+        this.simulatedGrowth = simulatedGrowth;
+        this.wildTypeGrowth = wildTypeGrowth;
+        this.fraction = fraction;
+        this.classes = classes;
+        for (int i = 0; i < ids.size(); i++) {
+            index.put(ids.get(i), i);
+        }
+    }
+
+    /** Get the simulated phenotypes, in the given order.
+     * @return the phenotype ids.
+     */
+    public List<String> getPhenotypeIds() {
+        return ids;
+    }
+
+    /** Get the position of a phenotype.
+     * @param id the phenotype id.
+     * @return the position, or -1 if it was not simulated.
+     */
+    public int indexOf(String id) {
+        Integer i = index.get(id);
+        return i == null ? -1 : i;
+    }
+
+    /** Get the simulated growth of a phenotype, with its gene knockouts.
+     * @param i the phenotype position.
+     * @return the growth.
+     */
+    public double getSimulatedGrowth(int i) {
+        return simulatedGrowth[i];
+    }
+
+    /** Get the growth on the phenotype's media without its gene knockouts.
+     * @param i the phenotype position.
+     * @return the growth.
+     */
+    public double getWildTypeGrowth(int i) {
+        return wildTypeGrowth[i];
+    }
+
+    /** Get the simulated growth as a fraction of the wild type growth.
+     * @param i the phenotype position.
+     * @return the fraction, zero if the wild type does not grow.
+     */
+    public double getGrowthFraction(int i) {
+        return fraction[i];
+    }
+
+    /** Get the class of a phenotype's simulation.
+     * @param i the phenotype position.
+     * @return CP, CN, FP, FN or UN.
+     */
+    public String getPhenoclass(int i) {
+        return classes[i];
+    }
+
+    /** Get the number of phenotypes of a class.
+     * @param phenoclass CP, CN, FP, FN or UN.
+     * @return the count.
+     */
+    public int getClassCount(String phenoclass) {
+        int count = 0;
+        for (String c : classes) {
+            if (c.equals(phenoclass)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Get the fraction of the observed phenotypes predicted correctly.
+     * @return (CP + CN) / (CP + CN + FP + FN), or NaN if none was observed.
+     */
+    public double getAccuracy() {
+        int correct = getClassCount(CORRECT_POSITIVE) + getClassCount(CORRECT_NEGATIVE);
+        int observed = correct + getClassCount(FALSE_POSITIVE) + getClassCount(FALSE_NEGATIVE);
+        return observed == 0 ? Double.NaN : (double) correct / observed;
+    }
+
+    @Override
+    public String toString() {
+        return "PhenotypeSimulationResult [phenotypes=" + ids.size() + ", CP=" + getClassCount(CORRECT_POSITIVE) +
+                ", CN=" + getClassCount(CORRECT_NEGATIVE) + ", FP=" + getClassCount(FALSE_POSITIVE) +
+                ", FN=" + getClassCount(FALSE_NEGATIVE) + ", UN=" + getClassCount(UNKNOWN) + "]";
+    }
+}
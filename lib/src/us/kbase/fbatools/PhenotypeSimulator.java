@@ -0,0 +1,639 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * <p>Growth simulation of a PhenotypeSet, run in-process and in parallel
+ * instead of through simulate_growth_on_phenotype_data.</p>
+ * <p>The model is loaded into a single {@link FbaProblem}, built on the union
+ * of the phenotypes' media so that every compound they feed is drained.
+ * Each worker keeps its own copy of the solver and, per phenotype, sets the
+ * drains for the phenotype's media with its additional compounds and the
+ * phenotype's custom reaction bounds, solves for the wild type growth, then
+ * knocks out the reactions stopped by the phenotype's gene knockouts and
+ * solves again, every solve starting from the optimal basis of the previous
+ * one. Phenotypes are handed out grouped by condition, so consecutive solves
+ * differ little, and the wild type growth of a condition is solved once and
+ * shared; a phenotype without gene knockouts needs no further solve.</p>
+ * <p>Of the {@link SimulateGrowthOnPhenotypeDataParams}, the simulator
+ * honours target_reaction, feature_ko_list, reaction_ko_list,
+ * custom_bound_list, media_supplement_list and all_reversible, which apply to
+ * every phenotype; gap filling, fitting and transporter options are rejected
+ * rather than silently ignored.</p>
+ * <p>The PhenotypeSimulation rows are written as soon as they are known, in
+ * the order the phenotypes complete, and the growth of each phenotype is
+ * passed to the {@link Listener}.</p>
+ * <pre>
+ * List&lt;PhenotypeSimulator.Phenotype&gt; phenos =
+ *         PhenotypeSimulator.Phenotype.fromPhenotypeSet(setJson, setRef);
+ * try (FbaObjectWriter w = FbaObjectWriter.create(out)) {
+ *     w.writeField("id", simId);
+ *     w.writeField("fbamodel_ref", modelRef);
+ *     w.writeField("phenotypeset_ref", setRef);
+ *     w.beginArray("phenotypeSimulations");
+ *     PhenotypeSimulationResult r = new PhenotypeSimulator(modelJson, params)
+ *             .simulate(phenos, mediaByRef, w);
+ *     w.endArray();
+ * }
+ * </pre>
+ */
+public class PhenotypeSimulator {
+    // growth this small is no growth, as in the service
+    private static final double GROWTH_TOL = 1e-7;
+    // observed normalized growth above this is growth
+    private static final double OBSERVED_GROWTH_TOL = 0.0001;
+    private static final double DEFAULT_ADDITIONAL_MIN_FLUX = -100;
+    private static final double DEFAULT_ADDITIONAL_MAX_FLUX = 100;
+
+    private final JsonNode model;
+    private final RunFluxBalanceAnalysisParams params;
+    private int threads = 0;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** Receives the growth of each phenotype as soon as it is known. Called
+     * from the worker threads, so implementations must be thread safe.
+     */
+    public interface Listener {
+        /** @param phenotype the position of the phenotype.
+         * @param simulatedGrowth the growth with the phenotype's knockouts.
+         * @param phenoclass CP, CN, FP, FN or UN.
+         */
+        void phenotypeDone(int phenotype, double simulatedGrowth, String phenoclass);
+    }
+
+    /** A phenotype of a PhenotypeSet: a media, optionally with additional
+     * compounds and custom reaction bounds, gene knockouts and the observed
+     * growth.
+     */
+    public static class Phenotype {
+        private final String id;
+        private final String mediaRef;
+        private String ref = null;
+        private List<String> geneKos = Collections.emptyList();
+        private List<String> additionalCompounds = Collections.emptyList();
+        private List<double[]> additionalCompoundBounds = Collections.emptyList();
+        private List<String> customReactionBounds = Collections.emptyList();
+        private Double normalizedGrowth = null;
+
+        /** @param id the phenotype id.
+         * @param mediaRef the reference of the media, a key of the media map
+         * passed to {@link PhenotypeSimulator#simulate}.
+         */
+        public Phenotype(String id, String mediaRef) {
+            this.id = id;
+            this.mediaRef = mediaRef;
+        }
+
+        /** Reads the phenotypes of a PhenotypeSet.
+         * @param set the PhenotypeSet object, as JSON.
+         * @param setRef the reference of the set, to refer to each phenotype
+         * from its simulation, or null to leave phenotype_ref out.
+         * @return the phenotypes, in set order.
+         */
+        public static List<Phenotype> fromPhenotypeSet(JsonNode set, String setRef) {
+            List<Phenotype> ret = new ArrayList<Phenotype>();
+            for (JsonNode ph : set.path("phenotypes")) {
+                Phenotype p = new Phenotype(ph.path("id").asText(), ph.path("media_ref").asText());
+                if (setRef != null) {
+                    p.withRef(setRef + "/phenotypes/id/" + p.getId());
+                }
+                List<String> kos = new ArrayList<String>();
+                for (JsonNode ko : ph.path("geneko_refs")) {
+                    kos.add(FbaProblem.refId(ko.asText()));
+                }
+                List<String> cpds = new ArrayList<String>();
+                List<double[]> bounds = new ArrayList<double[]>();
+                JsonNode cpdBounds = ph.path("additionalcompound_bounds");
+                for (int i = 0; i < ph.path("additionalcompound_refs").size(); i++) {
+                    cpds.add(FbaProblem.refId(ph.path("additionalcompound_refs").get(i).asText()));
+                    JsonNode b = cpdBounds.path(i);
+                    bounds.add(b.size() == 2 ? new double[] {b.get(0).asDouble(), b.get(1).asDouble()} : null);
+                }
+                List<String> rxnBounds = new ArrayList<String>();
+                for (JsonNode b : ph.path("custom_reaction_bounds")) {
+                    // the reaction is the text of the tuple, the bounds its numbers in order
+                    String rxn = null;
+                    List<String> values = new ArrayList<String>();
+                    for (JsonNode v : b) {
+                        if (v.isTextual()) {
+                            rxn = FbaProblem.refId(v.asText());
+                        } else {
+                            values.add(v.asText());
+                        }
+                    }
+                    if (rxn == null || values.size() != 2) {
+                        throw new IllegalArgumentException("Custom reaction bound of phenotype " + p.getId() +
+                                " must be a reaction and two bounds: " + b);
+                    }
+                    rxnBounds.add(values.get(0) + "<" + rxn + "<" + values.get(1));
+                }
+                p.withGeneKos(kos).withAdditionalCompounds(cpds, bounds).withCustomReactionBounds(rxnBounds);
+                if (ph.hasNonNull("normalizedGrowth")) {
+                    p.withNormalizedGrowth(ph.get("normalizedGrowth").asDouble());
+                }
+                ret.add(p);
+            }
+            return ret;
+        }
+
+        /** @param ref the reference of the phenotype, written as the
+         * phenotype_ref of its simulation.
+         * @return this phenotype.
+         */
+        public Phenotype withRef(String ref) {
+            this.ref = ref;
+            return this;
+        }
+
+        /** @param geneKos the knocked out feature ids.
+         * @return this phenotype.
+         */
+        public Phenotype withGeneKos(List<String> geneKos) {
+            this.geneKos = geneKos;
+            return this;
+        }
+
+        /** @param compounds the compound ids added to the media; an id without
+         * compartment is fed into e0.
+         * @param bounds per compound its [minFlux, maxFlux], or null, or a null
+         * entry, for [-100, 100].
+         * @return this phenotype.
+         */
+        public Phenotype withAdditionalCompounds(List<String> compounds, List<double[]> bounds) {
+            this.additionalCompounds = compounds;
+            this.additionalCompoundBounds = bounds == null ? Collections.<double[]>emptyList() : bounds;
+            return this;
+        }
+
+        /** @param bounds bounds on model reactions, each of the form
+         * lower&lt;id&lt;upper as in custom_bound_list.
+         * @return this phenotype.
+         */
+        public Phenotype withCustomReactionBounds(List<String> bounds) {
+            this.customReactionBounds = bounds;
+            return this;
+        }
+
+        /** @param normalizedGrowth the observed growth, or null if unknown.
+         * @return this phenotype.
+         */
+        public Phenotype withNormalizedGrowth(Double normalizedGrowth) {
+            this.normalizedGrowth = normalizedGrowth;
+            return this;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getMediaRef() {
+            return mediaRef;
+        }
+
+        public String getRef() {
+            return ref;
+        }
+
+        public List<String> getGeneKos() {
+            return geneKos;
+        }
+
+        public List<String> getAdditionalCompounds() {
+            return additionalCompounds;
+        }
+
+        public List<double[]> getAdditionalCompoundBounds() {
+            return additionalCompoundBounds;
+        }
+
+        public List<String> getCustomReactionBounds() {
+            return customReactionBounds;
+        }
+
+        public Double getNormalizedGrowth() {
+            return normalizedGrowth;
+        }
+    }
+
+    // a media with additional compounds and reaction bounds, shared by the
+    // phenotypes grown on it
+    private static class Condition {
+        private final JsonNode media;
+        private final List<String> reactionBounds;
+        private int[] vars;
+        private double[] lower;
+        private double[] upper;
+        // set by the first worker to solve it
+        private volatile Double wildType = null;
+
+        private Condition(JsonNode media, List<String> reactionBounds) {
+            this.media = media;
+            this.reactionBounds = reactionBounds;
+        }
+    }
+
+    /** @param model the FBAModel object, as JSON.
+     * @param params the parameters, or null for the defaults; only the
+     * fields listed in the class description are used.
+     */
+    public PhenotypeSimulator(JsonNode model, SimulateGrowthOnPhenotypeDataParams params) {
+        this.model = model;
+        this.params = toFbaParams(params == null ? new SimulateGrowthOnPhenotypeDataParams() : params);
+    }
+
+    private static boolean isSet(Long flag) {
+        return flag != null && flag != 0;
+    }
+
+    private static RunFluxBalanceAnalysisParams toFbaParams(SimulateGrowthOnPhenotypeDataParams params) {
+        List<String> unsupported = new ArrayList<String>();
+        if (isSet(params.getGapfillPhenotypes())) {
+            unsupported.add("gapfill_phenotypes");
+        }
+        if (isSet(params.getFitPhenotypeData())) {
+            unsupported.add("fit_phenotype_data");
+        }
+        if (isSet(params.getSaveFluxes())) {
+            unsupported.add("save_fluxes");
+        }
+        if (isSet(params.getAddAllTransporters()) || isSet(params.getAddPositiveTransporters())) {
+            unsupported.add("add_*_transporters");
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalArgumentException("Not supported by the local phenotype simulator: " + unsupported);
+        }
+        return new RunFluxBalanceAnalysisParams()
+                .withTargetReaction(params.getTargetReaction())
+                .withFeatureKoList(params.getFeatureKoList())
+                .withReactionKoList(params.getReactionKoList())
+                .withCustomBoundList(params.getCustomBoundList())
+                .withMediaSupplementList(params.getMediaSupplementList())
+                .withAllReversible(params.getAllReversible());
+    }
+
+    /** Set the number of workers. One worker runs the solves serially.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the workers on the given executor instead of a private one. The
+     * executor is not shut down by this simulator.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Simulates the growth of the phenotypes.
+     * @param phenotypes the phenotypes.
+     * @param media the Media objects, as JSON, by the phenotypes' media_ref.
+     * @return the simulated growth, in phenotype order.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     * @throws IllegalArgumentException if a phenotype's media is missing, or
+     * a bound is not on a model reaction.
+     */
+    public PhenotypeSimulationResult simulate(List<Phenotype> phenotypes, Map<String, JsonNode> media)
+            throws InterruptedException {
+        return run(phenotypes, media, null);
+    }
+
+    /** Simulates the growth of the phenotypes and writes a PhenotypeSimulation
+     * record per phenotype into the array the writer has open, in the order
+     * the phenotypes complete. A phenotype whose program could not be solved
+     * has no record.
+     * @param phenotypes the phenotypes.
+     * @param media the Media objects, as JSON, by the phenotypes' media_ref.
+     * @param out the writer, inside the phenotypeSimulations array.
+     * @return the simulated growth, in phenotype order.
+     * @throws IOException if a record cannot be written; the workers are
+     * cancelled.
+     * @throws InterruptedException if interrupted while waiting; the
+     * workers are cancelled.
+     * @throws IllegalArgumentException if a phenotype's media is missing, or
+     * a bound is not on a model reaction.
+     */
+    public PhenotypeSimulationResult simulate(List<Phenotype> phenotypes, Map<String, JsonNode> media,
+            FbaObjectWriter out) throws IOException, InterruptedException {
+        try {
+            return run(phenotypes, media, out);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private PhenotypeSimulationResult run(final List<Phenotype> phenotypes, Map<String, JsonNode> media,
+            final FbaObjectWriter out) throws InterruptedException {
+        final int n = phenotypes.size();
+        final Condition[] conditions = new Condition[n];
+        Map<String, Condition> byKey = new LinkedHashMap<String, Condition>();
+        for (int i = 0; i < n; i++) {
+            Phenotype p = phenotypes.get(i);
+            if (!media.containsKey(p.getMediaRef())) {
+                throw new IllegalArgumentException("No media " + p.getMediaRef() + " for phenotype " + p.getId());
+            }
+            String key = conditionKey(p);
+            Condition c = byKey.get(key);
+            if (c == null) {
+                c = new Condition(conditionMedia(media.get(p.getMediaRef()), p), p.getCustomReactionBounds());
+                byKey.put(key, c);
+            }
+            conditions[i] = c;
+        }
+        final FbaProblem problem = FbaProblem.fromModel(model, unionMedia(byKey.values()), params);
+        List<Condition> order = new ArrayList<Condition>(byKey.values());
+        for (Condition c : order) {
+            resolveBounds(problem, c);
+        }
+        // the phenotypes grouped by condition, in order of first appearance
+        final int[] schedule = new int[n];
+        Map<Condition, List<Integer>> members = new LinkedHashMap<Condition, List<Integer>>();
+        for (Condition c : order) {
+            members.put(c, new ArrayList<Integer>());
+        }
+        for (int i = 0; i < n; i++) {
+            members.get(conditions[i]).add(i);
+        }
+        int pos = 0;
+        for (List<Integer> m : members.values()) {
+            for (int i : m) {
+                schedule[pos++] = i;
+            }
+        }
+        final double[] growth = new double[n];
+        final double[] wildType = new double[n];
+        final double[] fraction = new double[n];
+        final String[] classes = new String[n];
+        Arrays.fill(classes, PhenotypeSimulationResult.UNKNOWN);
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        workers = Math.max(1, Math.min(workers, n));
+        final SimplexSolver base = problem.newSolver();
+        ExecutorService exec = executor != null ? executor : FbaExecutors.newComputeExecutor("fba-pheno", workers);
+        final AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (int w = 0; w < workers; w++) {
+                final SimplexSolver s = base.copy();
+                futures.add(exec.submit(() -> {
+                    Condition current = null;
+                    double[] saved = null;
+                    for (int k = next.getAndIncrement(); k < n; k = next.getAndIncrement()) {
+                        int i = schedule[k];
+                        Condition c = conditions[i];
+                        if (c != current) {
+                            restore(s, current, saved);
+                            problem.setMedia(s, c.media);
+                            saved = apply(s, c);
+                            current = c;
+                        }
+                        simulate(s, problem, phenotypes.get(i), c, i, growth, wildType, fraction, classes);
+                        if (out != null && !Double.isNaN(growth[i])) {
+                            ObjectNode row = row(phenotypes.get(i), growth[i], wildType[i], fraction[i], classes[i]);
+                            synchronized (out) {
+                                try {
+                                    out.writeRecord(row);
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            }
+                        }
+                        if (listener != null) {
+                            listener.phenotypeDone(i, growth[i], classes[i]);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw new IllegalStateException("Phenotype simulation worker failed", cause);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+        List<String> ids = new ArrayList<String>();
+        for (Phenotype p : phenotypes) {
+            ids.add(p.getId());
+        }
+        return new PhenotypeSimulationResult(ids, growth, wildType, fraction, classes);
+    }
+
+    private static void simulate(SimplexSolver s, FbaProblem problem, Phenotype p, Condition c, int i,
+            double[] growth, double[] wildType, double[] fraction, String[] classes) {
+        Double wt = c.wildType;
+        if (wt == null) {
+            wt = growth(s);
+            c.wildType = wt;
+        }
+        double sim = wt;
+        if (!p.getGeneKos().isEmpty()) {
+            int[] ko = problem.knockedOutReactions(p.getGeneKos());
+            double[] lo = new double[ko.length];
+            double[] up = new double[ko.length];
+            for (int t = 0; t < ko.length; t++) {
+                lo[t] = s.getLowerBound(ko[t]);
+                up[t] = s.getUpperBound(ko[t]);
+                s.setBounds(ko[t], 0, 0);
+            }
+            try {
+                sim = ko.length == 0 ? wt : growth(s);
+            } finally {
+                for (int t = 0; t < ko.length; t++) {
+                    s.setBounds(ko[t], lo[t], up[t]);
+                }
+            }
+        }
+        growth[i] = sim < GROWTH_TOL ? 0 : sim;
+        wildType[i] = wt < GROWTH_TOL ? 0 : wt;
+        if (Double.isNaN(sim) || Double.isNaN(wt)) {
+            growth[i] = Double.NaN;
+            fraction[i] = Double.NaN;
+            return;
+        }
+        fraction[i] = wildType[i] == 0 ? 0 : growth[i] / wildType[i];
+        Double observed = p.getNormalizedGrowth();
+        if (observed != null) {
+            if (observed > OBSERVED_GROWTH_TOL) {
+                classes[i] = fraction[i] > 0 ? PhenotypeSimulationResult.CORRECT_POSITIVE :
+                        PhenotypeSimulationResult.FALSE_NEGATIVE;
+            } else {
+                classes[i] = fraction[i] > 0 ? PhenotypeSimulationResult.FALSE_POSITIVE :
+                        PhenotypeSimulationResult.CORRECT_NEGATIVE;
+            }
+        }
+    }
+
+    // solves from the solver's current basis: the objective, 0 if infeasible, NaN if unsolved
+    private static double growth(SimplexSolver s) {
+        SimplexSolver.Status status = s.solve();
+        if (status != SimplexSolver.Status.OPTIMAL && status != SimplexSolver.Status.INFEASIBLE) {
+            // a stalled warm start, try again from scratch
+            s.resetBasis();
+            status = s.solve();
+        }
+        if (status == SimplexSolver.Status.INFEASIBLE) {
+            return 0;
+        }
+        if (status != SimplexSolver.Status.OPTIMAL) {
+            return Double.NaN;
+        }
+        return Math.max(0, s.getObjectiveValue());
+    }
+
+    private static ObjectNode row(Phenotype p, double growth, double wildType, double fraction,
+            String phenoclass) {
+        ObjectNode row = JsonRpcCodec.mapper().createObjectNode();
+        row.put("id", p.getId() + ".sim");
+        if (p.getRef() != null) {
+            row.put("phenotype_ref", p.getRef());
+        }
+        row.put("simulatedGrowth", growth);
+        row.put("wildtype", wildType);
+        row.put("simulatedGrowthFraction", fraction);
+        row.put("phenoclass", phenoclass);
+        row.putArray("noGrowthCompounds");
+        row.putArray("dependantReactions");
+        row.putArray("dependantGenes");
+        row.putObject("fluxes");
+        return row;
+    }
+
+    private static String conditionKey(Phenotype p) {
+        StringBuilder key = new StringBuilder(p.getMediaRef());
+        for (int k = 0; k < p.getAdditionalCompounds().size(); k++) {
+            key.append('|').append(p.getAdditionalCompounds().get(k));
+            double[] b = bounds(p, k);
+            key.append(':').append(b[0]).append(':').append(b[1]);
+        }
+        for (String b : p.getCustomReactionBounds()) {
+            key.append('#').append(b);
+        }
+        return key.toString();
+    }
+
+    private static double[] bounds(Phenotype p, int k) {
+        List<double[]> bounds = p.getAdditionalCompoundBounds();
+        double[] b = k < bounds.size() ? bounds.get(k) : null;
+        return b != null ? b : new double[] {DEFAULT_ADDITIONAL_MIN_FLUX, DEFAULT_ADDITIONAL_MAX_FLUX};
+    }
+
+    // the media with the phenotype's additional compounds, overriding the
+    // media's own bounds on them as the service's temporary media do
+    private static JsonNode conditionMedia(JsonNode media, Phenotype p) {
+        if (p.getAdditionalCompounds().isEmpty()) {
+            return media;
+        }
+        ObjectNode ret = JsonRpcCodec.mapper().createObjectNode();
+        ret.put("name", media.path("name").asText());
+        ArrayNode cpds = ret.putArray("mediacompounds");
+        for (JsonNode mc : media.path("mediacompounds")) {
+            cpds.add(mc);
+        }
+        for (int k = 0; k < p.getAdditionalCompounds().size(); k++) {
+            double[] b = bounds(p, k);
+            cpds.addObject().put("compound_ref", p.getAdditionalCompounds().get(k))
+                    .put("concentration", 0.001).put("minFlux", b[0]).put("maxFlux", b[1]);
+        }
+        return ret;
+    }
+
+    // every compound of every condition, so that the program drains them all
+    private static JsonNode unionMedia(Collection<Condition> conditions) {
+        ObjectNode ret = JsonRpcCodec.mapper().createObjectNode();
+        ret.put("name", "PhenotypeUnion");
+        ArrayNode cpds = ret.putArray("mediacompounds");
+        Map<String, Boolean> seen = new HashMap<String, Boolean>();
+        for (Condition c : conditions) {
+            for (JsonNode mc : c.media.path("mediacompounds")) {
+                if (seen.put(mc.path("compound_ref").asText(), true) == null) {
+                    cpds.add(mc);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static void resolveBounds(FbaProblem problem, Condition c) {
+        int m = c.reactionBounds.size();
+        c.vars = new int[m];
+        c.lower = new double[m];
+        c.upper = new double[m];
+        for (int k = 0; k < m; k++) {
+            String bound = c.reactionBounds.get(k);
+            double[] range = new double[2];
+            String id = FbaProblem.parseCustomBound(bound, range);
+            c.lower[k] = range[0];
+            c.upper[k] = range[1];
+            int j = problem.getReactionVariable(id);
+            c.vars[k] = j >= 0 ? j : problem.getBiomassVariable(id);
+            if (c.vars[k] < 0) {
+                throw new IllegalArgumentException("Custom bound on unknown reaction: " + bound);
+            }
+        }
+    }
+
+    // sets the condition's reaction bounds, returning the bounds they replace
+    private static double[] apply(SimplexSolver s, Condition c) {
+        double[] saved = new double[2 * c.vars.length];
+        for (int k = 0; k < c.vars.length; k++) {
+            saved[2 * k] = s.getLowerBound(c.vars[k]);
+            saved[2 * k + 1] = s.getUpperBound(c.vars[k]);
+        }
+        for (int k = 0; k < c.vars.length; k++) {
+            s.setBounds(c.vars[k], Math.min(c.lower[k], c.upper[k]), c.upper[k]);
+        }
+        return saved;
+    }
+
+    private static void restore(SimplexSolver s, Condition c, double[] saved) {
+        if (c == null) {
+            return;
+        }
+        // in reverse, in case a reaction is bound twice
+        for (int k = c.vars.length - 1; k >= 0; k--) {
+            s.setBounds(c.vars[k], saved[2 * k], saved[2 * k + 1]);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package us.kbase.fbatools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>The checkpoint journal of an {@link FbaPipeline}.</p>
+ * <p>The journal is an append-only file with one JSON line per finished
+ * stage, holding the stage id, the fingerprint of its definition and its
+ * result. Every line is forced to disk before the stage is reported
+ * complete, so after a crash the journal lists exactly the stages whose
+ * results are safe to reuse. A torn last line left by a crash is ignored.</p>
+ */
+public class PipelineJournal implements AutoCloseable {
+    private final Path path;
+    private final Map<String, JsonNode> entries = new HashMap<String, JsonNode>();
+    private FileChannel channel = null;
+
+    /** Opens a journal, loading the entries already in it.
+     * @param path the journal file; it is created on the first write.
+     * @throws IOException if the existing journal cannot be read.
+     */
+    public PipelineJournal(Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) {
+            BufferedReader br = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+            try {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    JsonNode entry;
+                    try {
+                        entry = JsonRpcCodec.mapper().readTree(line);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    if (entry != null && entry.hasNonNull("stage")) {
+                        entries.put(entry.get("stage").asText(), entry);
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /** Looks up the recorded result of a stage.
+     * @param stageId the stage id.
+     * @param fingerprint the fingerprint of the stage's current definition.
+     * @return the recorded result, or null if the stage has no entry or was
+     * recorded with a different definition.
+     */
+    public synchronized JsonNode getResult(String stageId, String fingerprint) {
+        JsonNode entry = entries.get(stageId);
+        if (entry == null || !fingerprint.equals(entry.path("fingerprint").asText())) {
+            return null;
+        }
+        return entry.get("result");
+    }
+
+    /** Records the result of a finished stage and forces it to disk.
+     * @param stageId the stage id.
+     * @param fingerprint the fingerprint of the stage's definition.
+     * @param result the stage result.
+     * @throws IOException if the entry cannot be written.
+     */
+    public synchronized void record(String stageId, String fingerprint, Object result) throws IOException {
+        Map<String, Object> entry = new LinkedHashMap<String, Object>();
+        entry.put("stage", stageId);
+        entry.put("fingerprint", fingerprint);
+        entry.put("result", result);
+        entry.put("finished", System.currentTimeMillis());
+        byte[] line = (JsonRpcCodec.mapper().writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ);
+            channel.position(channel.size());
+            if (channel.size() > 0) {
+                // terminate a line torn by a crash so it cannot swallow this entry
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, channel.size() - 1);
+                if (last.get(0) != '\n') {
+                    channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+                }
+            }
+        }
+        ByteBuffer buf = ByteBuffer.wrap(line);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        channel.force(false);
+        entries.put(stageId, JsonRpcCodec.mapper().valueToTree(entry));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,778 @@
+package us.kbase.fbatools;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>Streaming reader of SBML models, such as those given to
+ * sbml_file_to_model.</p>
+ * <p>The document is read with a StAX pull parser, one species or reaction
+ * at a time, and each is converted to the row tsv_file_to_model would read
+ * for it, with the rules the service applies to SBML: M_ and R_ prefixes
+ * are dropped, __NN__ escapes decoded, compound ids rebuilt from the root
+ * id and the compartment, formulas taken from species names or notes,
+ * boundary species left out of the equations, and GPRs, EC numbers and
+ * subsystems taken from fbc:geneProductAssociation or the notes. Only the
+ * compartments, the parameters and the id and compartment of every species
+ * are kept in memory, since reactions refer to them.</p>
+ * <pre>
+ * try (SbmlReader sbml = SbmlReader.open(path)) {
+ *     for (ModelTsv.Compound c = sbml.nextCompound(); c != null; c = sbml.nextCompound()) {
+ *         ...
+ *     }
+ *     for (ModelTsv.Reaction r = sbml.nextReaction(); r != null; r = sbml.nextReaction()) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * <p>Both SBML Level 2 with COBRA style notes and Level 3 with the fbc
+ * package are read. Flux bounds come from fbc version 2 bound parameters
+ * or from the LOWER_BOUND and UPPER_BOUND kinetic law parameters; the
+ * fbc:fluxBound elements of fbc version 1 are not read. As in the service,
+ * GPRs name gene products by their SBML ids; {@link #getGeneTranslation()}
+ * maps them to their labels.</p>
+ * <p>While reading, the reader notes dangling references and duplicate ids;
+ * see {@link #getProblems()}. A reader is not thread safe.</p>
+ */
+public class SbmlReader implements Closeable {
+    static final String FBC_NS_PREFIX = "http://www.sbml.org/sbml/level3/version1/fbc/";
+    // the most problems kept; further ones are only counted
+    private static final int MAX_PROBLEMS = 100;
+    // compartment names the service translates, from Bio::KBase::constants
+    private static final Map<String, String> COMPARTMENT_TRANSLATION = new HashMap<String, String>();
+    private static final Pattern ESCAPE = Pattern.compile("([^!]+)!(\\d+)!(.*)", Pattern.DOTALL);
+    private static final Pattern NAME_FORMULA = Pattern.compile("(.+)_((?:[A-Z][a-z]?\\d*)+)");
+    private static final Pattern COMPARTMENT_SUFFIX = Pattern.compile(".*_([a-z])(\\d?)");
+    private static final String[] COMPOUND_ALIASES = {"BIOCYC", "INCHI", "CHEBI", "CHEMSPIDER", "PUBCHEM", "KEGG"};
+
+    static {
+        String[] trans = {"Extracellular", "e", "Extra_organism", "e", "Cytosol", "c", "extracellular", "e",
+                "cellwall", "w", "periplasm", "p", "cytosol", "c", "golgi", "g", "endoplasm", "r",
+                "lysosome", "l", "nucleus", "n", "chloroplast", "h", "mitochondria", "m", "peroxisome", "x",
+                "vacuole", "v", "plastid", "d", "unknown", "u"};
+        for (int i = 0; i < trans.length; i += 2) {
+            COMPARTMENT_TRANSLATION.put(trans[i], trans[i + 1]);
+        }
+    }
+
+    private final InputStream in;
+    private final XMLStreamReader xml;
+    private int level = 0;
+    private String modelId = null;
+    private String modelName = null;
+    // SBML compartment id to name
+    private final Map<String, String> compartments = new LinkedHashMap<String, String>();
+    private final Map<String, Double> parameters = new HashMap<String, Double>();
+    // SBML species id to its equation term, root id[compartment]
+    private final Map<String, String> species = new HashMap<String, String>();
+    private final Set<String> boundarySpecies = new HashSet<String>();
+    private final Set<String> reactionIds = new HashSet<String>();
+    private final Map<String, List<String>> geneTranslation = new LinkedHashMap<String, List<String>>();
+    private final Set<String> geneProductRefs = new HashSet<String>();
+    private final Map<String, List<String>> objectives = new LinkedHashMap<String, List<String>>();
+    private String activeObjective = null;
+    private String currentObjective = null;
+    private final List<String> kineticObjective = new ArrayList<String>();
+    private final List<String> problems = new ArrayList<String>();
+    private int problemCount = 0;
+    private boolean atReaction = false;
+    private boolean done = false;
+
+    /** Constructs a reader and reads up to the model element. The stream is
+     * closed with the reader.
+     * @param in the SBML document.
+     * @throws IOException if the stream cannot be read or is not SBML.
+     */
+    public SbmlReader(InputStream in) throws IOException {
+        this.in = in;
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        try {
+            xml = factory.createXMLStreamReader(in);
+            xml.nextTag();
+            if (!xml.getLocalName().equals("sbml")) {
+                throw new IOException("Not an SBML document: the root element is " + xml.getLocalName());
+            }
+            String lv = attr("level");
+            level = lv == null ? 0 : Integer.parseInt(lv.trim());
+            while (xml.hasNext()) {
+                if (xml.next() == XMLStreamConstants.START_ELEMENT && xml.getLocalName().equals("model")) {
+                    modelId = attr("id");
+                    modelName = attr("name");
+                    return;
+                }
+            }
+            throw new IOException("The SBML document has no model");
+        } catch (XMLStreamException | NumberFormatException e) {
+            in.close();
+            throw new IOException("Failed to read the SBML document: " + e.getMessage(), e);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /** Opens an SBML file.
+     * @param path the file.
+     * @return the reader.
+     * @throws IOException if the file cannot be read or is not SBML.
+     */
+    public static SbmlReader open(Path path) throws IOException {
+        return new SbmlReader(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public String getModelName() {
+        return modelName;
+    }
+
+    /** Get the compartments read so far; all of them once the first
+     * compound has been read.
+     * @return the compartment names by SBML id.
+     */
+    public Map<String, String> getCompartments() {
+        return Collections.unmodifiableMap(compartments);
+    }
+
+    /** Get the labels of the gene products named in the GPRs. Complete once
+     * the reactions have been read to the end.
+     * @return the labels by gene product id.
+     */
+    public Map<String, List<String>> getGeneTranslation() {
+        return Collections.unmodifiableMap(geneTranslation);
+    }
+
+    /** Get the reactions of the active objective, or of the first objective
+     * if none is active, or with a non zero OBJECTIVE_COEFFICIENT in a
+     * Level 2 document. Complete once the reactions have been read to the
+     * end.
+     * @return the reaction ids, as in the reaction records.
+     */
+    public List<String> getObjective() {
+        List<String> rxns = objectives.get(activeObjective);
+        if (rxns == null) {
+            rxns = objectives.isEmpty() ? kineticObjective : objectives.values().iterator().next();
+        }
+        List<String> ids = new ArrayList<String>();
+        for (String r : rxns) {
+            ids.add(reactionId(r));
+        }
+        return ids;
+    }
+
+    /** Get the problems found so far: duplicate ids, and species,
+     * compartments, parameters, gene products and objective reactions that
+     * are referred to but not defined. Complete once the reactions have
+     * been read to the end.
+     * @return at most the first 100 problems.
+     */
+    public List<String> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    /** Get the number of problems found so far, including those beyond the
+     * first 100.
+     * @return the number of problems.
+     */
+    public int getProblemCount() {
+        return problemCount;
+    }
+
+    private void problem(String message) {
+        problemCount++;
+        if (problems.size() < MAX_PROBLEMS) {
+            problems.add(message);
+        }
+    }
+
+    /** Reads the next species as a compound. The species must be read before
+     * the reactions; once a reaction has been read this returns null.
+     * @return the compound, or null after the last species.
+     * @throws IOException if the document cannot be read.
+     */
+    public ModelTsv.Compound nextCompound() throws IOException {
+        if (atReaction || done) {
+            return null;
+        }
+        try {
+            String element = advance();
+            if (element == null) {
+                return null;
+            }
+            if (element.equals("reaction")) {
+                atReaction = true;
+                return null;
+            }
+            return readSpecies();
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Failed to read the SBML document: " + e.getMessage(), e);
+        }
+    }
+
+    /** Reads the next reaction. Species not read yet are skipped.
+     * @return the reaction, or null after the last one.
+     * @throws IOException if the document cannot be read.
+     */
+    public ModelTsv.Reaction nextReaction() throws IOException {
+        if (done) {
+            return null;
+        }
+        try {
+            while (!atReaction) {
+                String element = advance();
+                if (element == null) {
+                    return null;
+                }
+                if (element.equals("reaction")) {
+                    break;
+                }
+                readSpecies();
+            }
+            atReaction = false;
+            return readReaction();
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Failed to read the SBML document: " + e.getMessage(), e);
+        }
+    }
+
+    /** Converts the model into the reactions and compounds files of
+     * tsv_file_to_model, reading the rest of the document.
+     * @param dir the directory, which must exist.
+     * @param modelId the model id, used to name the files as
+     * {@link ModelTsv#writeModel(Path, String, Iterable, Iterable)} does.
+     * @return the local paths of the files.
+     * @throws IOException if the document cannot be read or a file written.
+     */
+    public ModelTsvFiles writeModelTsv(Path dir, String modelId) throws IOException {
+        Path rxnPath = dir.resolve(modelId + "-reactions.tsv");
+        Path cpdPath = dir.resolve(modelId + "-compounds.tsv");
+        try (ModelTsv.RecordWriter<ModelTsv.Compound> w = ModelTsv.writeCompounds(cpdPath, false)) {
+            for (ModelTsv.Compound c = nextCompound(); c != null; c = nextCompound()) {
+                w.write(c);
+            }
+        }
+        try (ModelTsv.RecordWriter<ModelTsv.Reaction> w = ModelTsv.writeReactions(rxnPath, false)) {
+            for (ModelTsv.Reaction r = nextReaction(); r != null; r = nextReaction()) {
+                w.write(r);
+            }
+        }
+        return new ModelTsvFiles().withReactionsFile(new File().withPath(rxnPath.toString()))
+                .withCompoundsFile(new File().withPath(cpdPath.toString()));
+    }
+
+    /* Reads on to the next species or reaction, taking in the compartments,
+     * parameters, gene products and objectives on the way. Returns the
+     * element name, or null at the end of the document.
+     */
+    private String advance() throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = xml.getLocalName();
+            boolean fbc = isFbc();
+            if (name.equals("species") || name.equals("reaction")) {
+                return name;
+            } else if (name.equals("compartment")) {
+                String id = attr("id");
+                if (compartments.containsKey(id)) {
+                    problem("Duplicate compartment " + id);
+                }
+                String cname = attr("name");
+                compartments.put(id, cname == null ? id : cname);
+            } else if (name.equals("parameter")) {
+                String value = attr("value");
+                if (value != null) {
+                    parameters.put(attr("id"), parseDouble(value));
+                }
+            } else if (fbc && name.equals("geneProduct")) {
+                String id = fbcAttr("id");
+                String label = fbcAttr("label");
+                if (id != null && label != null) {
+                    List<String> labels = geneTranslation.get(id);
+                    if (labels == null) {
+                        labels = new ArrayList<String>(1);
+                        geneTranslation.put(id, labels);
+                    }
+                    labels.add(label);
+                }
+            } else if (fbc && name.equals("listOfObjectives")) {
+                activeObjective = fbcAttr("activeObjective");
+            } else if (fbc && name.equals("objective")) {
+                currentObjective = fbcAttr("id");
+                objectives.put(currentObjective, new ArrayList<String>());
+            } else if (fbc && name.equals("fluxObjective")) {
+                List<String> rxns = objectives.get(currentObjective);
+                if (rxns != null) {
+                    rxns.add(fbcAttr("reaction"));
+                }
+            } else if (name.equals("notes") || name.equals("annotation")) {
+                skipElement();
+            }
+        }
+        finish();
+        return null;
+    }
+
+    // checks the references that may come after the reactions
+    private void finish() {
+        done = true;
+        if (!geneTranslation.isEmpty() || level >= 3) {
+            for (String g : geneProductRefs) {
+                if (!geneTranslation.containsKey(g)) {
+                    problem("Undefined gene product " + g);
+                }
+            }
+        }
+        List<String> objective = objectives.get(activeObjective);
+        if (activeObjective != null && objective == null) {
+            problem("Undefined active objective " + activeObjective);
+        }
+        for (List<String> rxns : objectives.values()) {
+            for (String r : rxns) {
+                if (!reactionIds.contains(r)) {
+                    problem("Undefined objective reaction " + r);
+                }
+            }
+        }
+    }
+
+    private ModelTsv.Compound readSpecies() throws XMLStreamException {
+        String sbmlId = attr("id");
+        String name = attr("name");
+        String cmp = attr("compartment");
+        String charge = attr("charge");
+        if (charge == null) {
+            charge = fbcAttr("charge");
+        }
+        String formula = attr("formula");
+        if (formula == null) {
+            formula = fbcAttr("chemicalFormula");
+        }
+        String boundary = attr("boundaryCondition");
+        List<String> notes = readChildNotes("species");
+        if (sbmlId == null) {
+            problem("Species without an id");
+            sbmlId = "";
+        }
+        if (cmp != null && !compartments.isEmpty() && !compartments.containsKey(cmp)) {
+            problem("Species " + sbmlId + " is in undefined compartment " + cmp);
+        }
+
+        String id = decodeId(sbmlId.startsWith("M_") ? sbmlId.substring(2) : sbmlId);
+        String rootId = id.replaceFirst("_[a-z]\\d*$", "").replaceAll("[^\\w]", "_");
+        String compartment = cmp == null ? "c0" : decodeId(cmp);
+        if (COMPARTMENT_TRANSLATION.containsKey(compartment)) {
+            compartment = COMPARTMENT_TRANSLATION.get(compartment);
+        }
+        if (compartment.length() == 1) {
+            compartment += "0";
+        }
+        String nameFormula = null;
+        if (name != null) {
+            name = name.replace("_plus_", "+");
+            if (name.startsWith("M_")) {
+                name = name.substring(2);
+            }
+            Matcher m = NAME_FORMULA.matcher(name);
+            if (m.matches()) {
+                name = m.group(1);
+                nameFormula = m.group(2);
+            }
+            name = name.replace('_', ' ');
+        }
+        if (formula == null) {
+            formula = nameFormula;
+        }
+        // the compartment suffix is dropped from the name as well as the id
+        for (String c : compartments.keySet()) {
+            String suffix = "_" + decodeId(c);
+            if (id.length() > suffix.length() && id.endsWith(suffix)) {
+                id = id.substring(0, id.length() - suffix.length());
+                if (name != null && name.length() > suffix.length() && name.endsWith(suffix)) {
+                    name = name.substring(0, name.length() - suffix.length());
+                }
+                break;
+            }
+        }
+        StringBuilder aliases = new StringBuilder();
+        for (String line : notes) {
+            String v;
+            if ((v = noteValue(line, "FORMULA")) != null) {
+                formula = v;
+            } else if ((v = noteValue(line, "CHARGE")) != null) {
+                charge = v;
+            } else {
+                for (String db : COMPOUND_ALIASES) {
+                    if ((v = noteValue(line, db)) != null) {
+                        if (aliases.length() > 0) {
+                            aliases.append('|');
+                        }
+                        aliases.append(db).append(':').append(v);
+                        break;
+                    }
+                }
+            }
+        }
+        if (species.put(sbmlId, rootId + "[" + compartment + "]") != null) {
+            problem("Duplicate species " + sbmlId);
+        }
+        if (boundary != null && boundary.trim().equalsIgnoreCase("true")) {
+            boundarySpecies.add(sbmlId);
+        }
+        return new ModelTsv.Compound().withId(rootId + "_" + compartment)
+                .withName(name == null ? id : name)
+                .withFormula(formula == null ? "Unknown" : formula)
+                .withCharge(charge == null ? 0 : parseDouble(charge))
+                .withAliases(aliases.length() == 0 ? null : aliases.toString());
+    }
+
+    private ModelTsv.Reaction readReaction() throws XMLStreamException {
+        String sbmlId = attr("id");
+        String name = attr("name");
+        String reversible = attr("reversible");
+        Double lower = fluxBound(fbcAttr("lowerFluxBound"));
+        Double upper = fluxBound(fbcAttr("upperFluxBound"));
+        if (sbmlId == null) {
+            problem("Reaction without an id");
+            sbmlId = "";
+        } else if (!reactionIds.add(sbmlId)) {
+            problem("Duplicate reaction " + sbmlId);
+        }
+        StringBuilder reactants = new StringBuilder();
+        StringBuilder products = new StringBuilder();
+        StringBuilder side = null;
+        Gpr gpr = null;
+        List<Gpr> gprStack = new ArrayList<Gpr>();
+        List<String> notes = new ArrayList<String>();
+        String objectiveCoefficient = null;
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (isFbc() && (xml.getLocalName().equals("and") || xml.getLocalName().equals("or"))) {
+                    gprStack.remove(gprStack.size() - 1);
+                }
+                continue;
+            } else if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            depth++;
+            String element = xml.getLocalName();
+            boolean fbc = isFbc();
+            if (element.equals("listOfReactants")) {
+                side = reactants;
+            } else if (element.equals("listOfProducts")) {
+                side = products;
+            } else if (element.equals("listOfModifiers")) {
+                side = null;
+            } else if (element.equals("speciesReference") && side != null) {
+                addTerm(side, sbmlId, attr("species"), attr("stoichiometry"));
+            } else if (fbc && element.equals("geneProductAssociation")) {
+                gpr = new Gpr("or");
+                gprStack.add(gpr);
+            } else if (fbc && (element.equals("and") || element.equals("or")) && !gprStack.isEmpty()) {
+                Gpr node = new Gpr(element);
+                gprStack.get(gprStack.size() - 1).children.add(node);
+                gprStack.add(node);
+            } else if (fbc && element.equals("geneProductRef") && !gprStack.isEmpty()) {
+                String gene = fbcAttr("geneProduct");
+                gprStack.get(gprStack.size() - 1).genes.add(gene);
+                geneProductRefs.add(gene);
+            } else if (element.equals("parameter") || element.equals("localParameter")) {
+                // Level 2 COBRA bounds and objective
+                String pid = attr("id");
+                String value = attr("value");
+                if (value != null && "LOWER_BOUND".equals(pid)) {
+                    lower = parseDouble(value);
+                } else if (value != null && "UPPER_BOUND".equals(pid)) {
+                    upper = parseDouble(value);
+                } else if ("OBJECTIVE_COEFFICIENT".equals(pid)) {
+                    objectiveCoefficient = value;
+                }
+            } else if (element.equals("notes")) {
+                notes.addAll(readNotes());
+                depth--;
+            } else if (element.equals("annotation") || element.equals("math")) {
+                skipElement();
+                depth--;
+            }
+        }
+        if (objectiveCoefficient != null && parseDouble(objectiveCoefficient) != 0) {
+            kineticObjective.add(sbmlId);
+        }
+
+        String id = reactionId(sbmlId);
+        String compartment = "c0";
+        Matcher m = COMPARTMENT_SUFFIX.matcher(id);
+        if (m.matches()) {
+            compartment = m.group(1) + (m.group(2).isEmpty() ? "0" : m.group(2));
+        }
+        if (name != null) {
+            name = (name.startsWith("R_") ? name.substring(2) : name).replace('_', '-');
+        }
+        String gprText = null;
+        String enzyme = null;
+        String pathway = null;
+        for (String line : notes) {
+            String v;
+            if ((v = noteValue(line, "GENE_ASSOCIATION")) != null) {
+                gprText = v;
+            } else if (noteValue(line, "PROTEIN_ASSOCIATION") != null) {
+                continue;
+            } else if ((v = noteValue(line, "PROTEIN_CLASS")) != null ||
+                    (v = noteValue(line, "EC Number")) != null) {
+                enzyme = v.split("\\s")[0];
+            } else if ((v = noteValue(line, "SUBSYSTEM")) != null) {
+                pathway = v.startsWith("S_") ? v.substring(2) : v;
+            }
+        }
+        if (gpr != null) {
+            gprText = gpr.render("or");
+        }
+        return new ModelTsv.Reaction().withId(id)
+                .withDirection(reversible == null || reversible.trim().equals("true") ? "=" : ">")
+                .withCompartment(compartment).withGpr(gprText).withName(name == null ? id : name)
+                .withEnzyme(enzyme).withPathway(pathway)
+                .withEquation(reactants + " => " + products)
+                .withLowerBound(lower).withUpperBound(upper);
+    }
+
+    private void addTerm(StringBuilder side, String reaction, String sp, String stoichiometry) {
+        if (sp == null) {
+            problem("Reaction " + reaction + " has a species reference without a species");
+            return;
+        }
+        String term = species.get(sp);
+        if (term == null) {
+            problem("Reaction " + reaction + " refers to undefined species " + sp);
+            term = sp;
+        } else if (boundarySpecies.contains(sp)) {
+            return;
+        }
+        if (side.length() > 0) {
+            side.append(" + ");
+        }
+        side.append('(').append(stoichiometry == null ? "1" : stoichiometry).append(") ").append(term);
+    }
+
+    private Double fluxBound(String parameter) {
+        if (parameter == null) {
+            return null;
+        }
+        Double value = parameters.get(parameter);
+        if (value == null) {
+            problem("Undefined flux bound parameter " + parameter);
+        }
+        return value;
+    }
+
+    private static String reactionId(String sbmlId) {
+        return decodeId(sbmlId.startsWith("R_") ? sbmlId.substring(2) : sbmlId);
+    }
+
+    /** Decodes the __NN__ character escapes of an SBML id the way the
+     * service does, so that M_glc__45__D_e becomes M_glc-D_e.
+     * @param id the id.
+     * @return the decoded id.
+     */
+    static String decodeId(String id) {
+        if (!id.contains("__")) {
+            return id;
+        }
+        String s = id.replace("__", "!");
+        for (Matcher m = ESCAPE.matcher(s); m.matches(); m = ESCAPE.matcher(s)) {
+            int code;
+            try {
+                code = Integer.parseInt(m.group(2));
+            } catch (NumberFormatException e) {
+                break;
+            }
+            if (!Character.isValidCodePoint(code)) {
+                break;
+            }
+            s = m.group(1) + new String(Character.toChars(code)) + m.group(3);
+        }
+        return s.replace("!", "__");
+    }
+
+    // the value of a "KEY: value" notes line, or null if absent or empty
+    private static String noteValue(String line, String key) {
+        int i = line.indexOf(key + ":");
+        if (i < 0) {
+            return null;
+        }
+        String v = line.substring(i + key.length() + 1).trim();
+        return v.isEmpty() ? null : v;
+    }
+
+    private static double parseDouble(String value) {
+        String v = value.trim();
+        if (v.equalsIgnoreCase("INF") || v.equalsIgnoreCase("+INF")) {
+            return Double.POSITIVE_INFINITY;
+        } else if (v.equalsIgnoreCase("-INF")) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return Double.parseDouble(v);
+    }
+
+    private boolean isFbc() {
+        String ns = xml.getNamespaceURI();
+        return ns != null && ns.startsWith(FBC_NS_PREFIX);
+    }
+
+    // an attribute in no namespace, as the core attributes are
+    private String attr(String name) {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            String ns = xml.getAttributeNamespace(i);
+            if ((ns == null || ns.isEmpty()) && xml.getAttributeLocalName(i).equals(name)) {
+                return xml.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private String fbcAttr(String name) {
+        for (int i = 0; i < xml.getAttributeCount(); i++) {
+            String ns = xml.getAttributeNamespace(i);
+            if (ns != null && ns.startsWith(FBC_NS_PREFIX) && xml.getAttributeLocalName(i).equals(name)) {
+                return xml.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    // reads the notes among the children of the current element
+    private List<String> readChildNotes(String element) throws XMLStreamException {
+        List<String> notes = Collections.emptyList();
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (xml.getLocalName().equals("notes")) {
+                    notes = readNotes();
+                } else if (xml.getLocalName().equals("annotation")) {
+                    skipElement();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return notes;
+    }
+
+    // the text of every element of a notes element, which is consumed
+    private List<String> readNotes() throws XMLStreamException {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(xml.getText());
+                continue;
+            }
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else {
+                continue;
+            }
+            if (text.toString().trim().length() > 0) {
+                lines.add(text.toString());
+            }
+            text.setLength(0);
+        }
+        return lines;
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            xml.close();
+        } catch (XMLStreamException e) {
+            // the stream is closed below either way
+        } finally {
+            in.close();
+        }
+    }
+
+    /* A node of an fbc:geneProductAssociation, rendered as the service does:
+     * the "and" children, then the "or" children, each in parentheses, then
+     * the gene products, all joined with the operator of the node.
+     */
+    private static class Gpr {
+        final String op;
+        final List<Gpr> children = new ArrayList<Gpr>();
+        final List<String> genes = new ArrayList<String>();
+
+        Gpr(String op) {
+            this.op = op;
+        }
+
+        String render(String current) {
+            StringBuilder sb = new StringBuilder();
+            String sep = " " + current + " ";
+            for (String childOp : new String[] {"and", "or"}) {
+                for (Gpr c : children) {
+                    if (c.op.equals(childOp)) {
+                        if (sb.length() > 0) {
+                            sb.append(sep);
+                        }
+                        sb.append('(').append(c.render(childOp)).append(')');
+                    }
+                }
+            }
+            for (String g : genes) {
+                if (sb.length() > 0) {
+                    sb.append(sep);
+                }
+                sb.append(g);
+            }
+            return sb.toString();
+        }
+    }
+}
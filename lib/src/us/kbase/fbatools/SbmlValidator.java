@@ -0,0 +1,199 @@
+package us.kbase.fbatools;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Checks collections of SBML files in parallel before they are imported
+ * with sbml_file_to_model.</p>
+ * <p>Every file is read through with an {@link SbmlReader}, which converts
+ * every species and reaction as the import would and notes duplicate ids
+ * and dangling references, without ever holding more than the species ids
+ * of one model. Files are checked concurrently, so a collection of
+ * thousands of models is limited by the disk rather than by memory. A file
+ * that cannot be read does not stop the others; its report carries the
+ * error.</p>
+ */
+public class SbmlValidator {
+    private int threads = 0;
+    private ExecutorService executor = null;
+    private Listener listener = null;
+
+    /** Receives each file's report as soon as it is checked. Called from the
+     * worker threads, so implementations must be thread safe.
+     */
+    public interface Listener {
+        void fileChecked(Report report);
+    }
+
+    /** The outcome of checking one file. */
+    public static class Report {
+        private final Path path;
+        private final String modelId;
+        private final int compoundCount;
+        private final int reactionCount;
+        private final int geneCount;
+        private final List<String> problems;
+        private final int problemCount;
+        private final Throwable error;
+
+        Report(Path path, String modelId, int compoundCount, int reactionCount, int geneCount,
+                List<String> problems, int problemCount, Throwable error) {
+            this.path = path;
+            this.modelId = modelId;
+            this.compoundCount = compoundCount;
+            this.reactionCount = reactionCount;
+            this.geneCount = geneCount;
+            this.problems = problems;
+            this.problemCount = problemCount;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public String getModelId() {
+            return modelId;
+        }
+
+        public int getCompoundCount() {
+            return compoundCount;
+        }
+
+        public int getReactionCount() {
+            return reactionCount;
+        }
+
+        public int getGeneCount() {
+            return geneCount;
+        }
+
+        /** Get the first problems found; see {@link SbmlReader#getProblems()}.
+         * @return the problems.
+         */
+        public List<String> getProblems() {
+            return problems;
+        }
+
+        public int getProblemCount() {
+            return problemCount;
+        }
+
+        /** Get the error that stopped the file from being read.
+         * @return the error, or null if the whole file was read.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /** Check whether the file can be imported as it is.
+         * @return true if it was read without an error or a problem and has
+         * both compounds and reactions, as the import requires.
+         */
+        public boolean isValid() {
+            return error == null && problemCount == 0 && compoundCount > 0 && reactionCount > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Report [path=" + path + ", modelId=" + modelId + ", compoundCount=" + compoundCount +
+                    ", reactionCount=" + reactionCount + ", geneCount=" + geneCount + ", problemCount=" +
+                    problemCount + ", error=" + error + "]";
+        }
+    }
+
+    /** Set the number of files checked at once.
+     * @param threads the number of workers; zero or less means one per
+     * available processor. Default 0.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Run the checks on the given executor instead of a private one. The
+     * executor is not shut down by this validator.
+     * @param executor the executor, or null to use a private one.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Checks a single file.
+     * @param path the SBML file.
+     * @return the report.
+     */
+    public static Report check(Path path) {
+        String modelId = null;
+        int compounds = 0;
+        int reactions = 0;
+        try (SbmlReader sbml = SbmlReader.open(path)) {
+            modelId = sbml.getModelId();
+            while (sbml.nextCompound() != null) {
+                compounds++;
+            }
+            while (sbml.nextReaction() != null) {
+                reactions++;
+            }
+            return new Report(path, modelId, compounds, reactions, sbml.getGeneTranslation().size(),
+                    new ArrayList<String>(sbml.getProblems()), sbml.getProblemCount(), null);
+        } catch (Exception e) {
+            return new Report(path, modelId, compounds, reactions, 0, Collections.<String>emptyList(), 0, e);
+        }
+    }
+
+    /** Checks the files and waits for all of them.
+     * @param paths the SBML files.
+     * @return the reports, in input order.
+     * @throws InterruptedException if interrupted while waiting; checks
+     * still running are cancelled.
+     */
+    public List<Report> check(List<Path> paths) throws InterruptedException {
+        ExecutorService exec = executor != null ? executor
+                : FbaExecutors.newComputeExecutor("fba-sbml-check", threads);
+        List<Future<Report>> futures = new ArrayList<Future<Report>>();
+        try {
+            for (final Path p : paths) {
+                futures.add(exec.submit(() -> {
+                    Report r = check(p);
+                    if (listener != null) {
+                        listener.fileChecked(r);
+                    }
+                    return r;
+                }));
+            }
+            List<Report> reports = new ArrayList<Report>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    reports.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    reports.add(new Report(paths.get(i), null, 0, 0, 0, Collections.<String>emptyList(), 0,
+                            e.getCause()));
+                }
+            }
+            return reports;
+        } catch (InterruptedException | RuntimeException e) {
+            for (Future<?> f : futures) {
+                f.cancel(true);
+            }
+            throw e;
+        } finally {
+            if (exec != executor) {
+                exec.shutdownNow();
+            }
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package us.kbase.fbatools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>Streaming writer of FBAModel objects as SBML Level 3 Version 1 with the
+ * fbc package, version 2, the format COBRA tools and BiGG use; the
+ * counterpart of {@link SbmlReader}.</p>
+ * <p>Compartments, compounds, reactions and biomass reactions are given as
+ * the JSON records of an FBAModel, in any order. SBML wants the species
+ * before the flux bound parameters and both before the reactions, so the
+ * species and the reactions are spooled to temporary files as they come
+ * and the document is assembled from them when the writer is closed; only
+ * the compartments, the distinct flux bounds and the gene ids are held in
+ * memory.</p>
+ * <pre>
+ * try (FbaObjectReader in = FbaObjectReader.open(modelJson);
+ *         OutputStream out = Files.newOutputStream(sbmlPath)) {
+ *     SbmlWriter.writeModel(in, out);
+ * }
+ * </pre>
+ * <p>Ids become SBML ids with M_, R_ and G_ prefixes and __NN__ escapes for
+ * the characters SBML ids may not hold, which {@link SbmlReader} and the
+ * service's SBML import undo. Reaction bounds follow the direction and
+ * maxforflux / maxrevflux as in {@link FbaProblem}, GPRs are written as
+ * fbc:geneProductAssociation with the feature ids as gene product labels,
+ * and the first biomass reaction is the objective. As in the service's
+ * SBML export, every extracellular compound and the biomass compound get an
+ * EX_ exchange reaction. A writer is not thread safe.</p>
+ */
+public class SbmlWriter implements Closeable {
+    static final String CORE_NS = "http://www.sbml.org/sbml/level3/version1/core";
+    static final String FBC_NS = SbmlReader.FBC_NS_PREFIX + "version2";
+    private static final String FLUX_UNITS = "mmol_per_gDW_per_hr";
+    private static final Pattern FORMULA = Pattern.compile("([A-Z][a-z]?\\d*)+");
+
+    private final OutputStream out;
+    private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    private String modelId = "model";
+    private String name = null;
+    private final Map<String, String> compartments = new LinkedHashMap<String, String>();
+    private final Spool species;
+    private final Spool reactions;
+    // distinct flux bounds and their parameter ids
+    private final Map<Double, String> bounds = new LinkedHashMap<Double, String>();
+    private final Set<String> genes = new LinkedHashSet<String>();
+    // compound ids that get an exchange reaction, and their bounds
+    private final Map<String, double[]> exchanges = new LinkedHashMap<String, double[]>();
+    private String objective = null;
+    private boolean closed = false;
+
+    /** Constructs a writer. The stream is closed with the writer.
+     * @param out the stream to write the document to.
+     * @throws IOException if the temporary files cannot be created.
+     */
+    public SbmlWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        bounds.put(-FbaProblem.DEFAULT_MAX_FLUX, "cobra_default_lb");
+        bounds.put(FbaProblem.DEFAULT_MAX_FLUX, "cobra_default_ub");
+        bounds.put(0.0, "cobra_0_bound");
+        species = new Spool("listOfSpecies");
+        Spool r = null;
+        try {
+            r = new Spool("listOfReactions");
+        } finally {
+            if (r == null) {
+                species.delete();
+            }
+        }
+        reactions = r;
+    }
+
+    /** Creates a writer of a file, replacing any existing file.
+     * @param path the file.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static SbmlWriter create(Path path) throws IOException {
+        return new SbmlWriter(Files.newOutputStream(path));
+    }
+
+    /** Writes a whole FBAModel, reading its fields in whatever order they
+     * come and its records one at a time.
+     * @param model the FBAModel object.
+     * @param out the stream to write the document to; not closed.
+     * @throws IOException if the model cannot be read or the document
+     * written.
+     */
+    public static void writeModel(FbaObjectReader model, OutputStream out) throws IOException {
+        try (SbmlWriter w = new SbmlWriter(new NonClosingStream(out))) {
+            for (String field = model.nextField(); field != null; field = model.nextField()) {
+                if (field.equals("id")) {
+                    w.setModelId(model.readValue().asText());
+                } else if (field.equals("name")) {
+                    w.setName(model.readValue().asText());
+                } else if (field.equals("modelcompartments")) {
+                    for (JsonNode c = model.nextRecord(); c != null; c = model.nextRecord()) {
+                        w.writeCompartment(c);
+                    }
+                } else if (field.equals("modelcompounds")) {
+                    for (JsonNode c = model.nextRecord(); c != null; c = model.nextRecord()) {
+                        w.writeCompound(c);
+                    }
+                } else if (field.equals("modelreactions")) {
+                    for (JsonNode r = model.nextRecord(); r != null; r = model.nextRecord()) {
+                        w.writeReaction(r);
+                    }
+                } else if (field.equals("biomasses")) {
+                    for (JsonNode b = model.nextRecord(); b != null; b = model.nextRecord()) {
+                        w.writeBiomass(b);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Set the model id.
+     * @param modelId the FBAModel id. Default "model".
+     */
+    public void setModelId(String modelId) {
+        this.modelId = modelId;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /** Writes a compartment.
+     * @param compartment the ModelCompartment record.
+     */
+    public void writeCompartment(JsonNode compartment) {
+        checkOpen();
+        String id = compartment.path("id").asText();
+        compartments.put(id, compartment.path("label").asText(id));
+    }
+
+    /** Writes a compound as a species.
+     * @param compound the ModelCompound record.
+     * @throws IOException if the spool cannot be written.
+     */
+    public void writeCompound(JsonNode compound) throws IOException {
+        checkOpen();
+        String id = compound.path("id").asText();
+        String cmp = FbaProblem.refId(compound.path("modelcompartment_ref").asText());
+        if (!compartments.containsKey(cmp)) {
+            compartments.put(cmp, cmp);
+        }
+        try {
+            XMLStreamWriter w = species.start();
+            w.writeEmptyElement("species");
+            w.writeAttribute("id", "M_" + sbmlId(id));
+            if (compound.hasNonNull("name")) {
+                w.writeAttribute("name", compound.path("name").asText());
+            }
+            w.writeAttribute("compartment", leadingLetter(sbmlId(cmp)));
+            w.writeAttribute("hasOnlySubstanceUnits", "false");
+            w.writeAttribute("boundaryCondition", "false");
+            w.writeAttribute("constant", "false");
+            if (compound.path("charge").isNumber()) {
+                w.writeAttribute("fbc", FBC_NS, "charge", Long.toString(Math.round(compound.path("charge").asDouble())));
+            }
+            String formula = compound.path("formula").asText();
+            if (FORMULA.matcher(formula).matches()) {
+                w.writeAttribute("fbc", FBC_NS, "chemicalFormula", formula);
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write compound " + id, e);
+        }
+        if (cmp.startsWith("e")) {
+            exchanges.put(id, new double[] {FbaProblem.DEFAULT_MIN_DRAIN_FLUX, FbaProblem.DEFAULT_MAX_FLUX});
+        } else if (id.startsWith(FbaProblem.BIOMASS_COMPOUND + "_")) {
+            exchanges.put(id, new double[] {0, FbaProblem.DEFAULT_MAX_FLUX});
+        }
+    }
+
+    /** Writes a model reaction.
+     * @param reaction the ModelReaction record.
+     * @throws IOException if the spool cannot be written.
+     */
+    public void writeReaction(JsonNode reaction) throws IOException {
+        checkOpen();
+        String id = reaction.path("id").asText();
+        double[] b = FbaProblem.reactionBounds(reaction, false);
+        List<String[][]> proteins = FbaProblem.reactionProteins(reaction);
+        try {
+            XMLStreamWriter w = reactions.start();
+            startReaction(w, id, reaction.path("name").asText(null), b[0], b[1]);
+            writeReagents(w, reaction.path("modelReactionReagents"));
+            if (!proteins.isEmpty()) {
+                w.writeStartElement("fbc", "geneProductAssociation", FBC_NS);
+                writeGpr(w, proteins);
+                w.writeEndElement();
+            }
+            w.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write reaction " + id, e);
+        }
+    }
+
+    /** Writes a biomass reaction. The first one written is the objective.
+     * @param biomass the Biomass record.
+     * @throws IOException if the spool cannot be written.
+     */
+    public void writeBiomass(JsonNode biomass) throws IOException {
+        checkOpen();
+        String id = biomass.path("id").asText();
+        if (objective == null) {
+            objective = id;
+        }
+        try {
+            XMLStreamWriter w = reactions.start();
+            startReaction(w, id, biomass.path("name").asText(null), 0, FbaProblem.DEFAULT_MAX_FLUX);
+            writeReagents(w, biomass.path("biomasscompounds"));
+            w.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write biomass " + id, e);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The writer is closed");
+        }
+    }
+
+    private void startReaction(XMLStreamWriter w, String id, String rxnName, double lo, double up)
+            throws XMLStreamException {
+        w.writeStartElement("reaction");
+        w.writeAttribute("id", "R_" + sbmlId(id));
+        if (rxnName != null) {
+            w.writeAttribute("name", rxnName);
+        }
+        w.writeAttribute("reversible", Boolean.toString(lo < 0));
+        w.writeAttribute("fast", "false");
+        w.writeAttribute("fbc", FBC_NS, "lowerFluxBound", boundParameter(lo));
+        w.writeAttribute("fbc", FBC_NS, "upperFluxBound", boundParameter(up));
+    }
+
+    private String boundParameter(double value) {
+        // -0.0 is a different key from 0.0, as from -maxrevflux of 0
+        value = value == 0 ? 0.0 : value;
+        String id = bounds.get(value);
+        if (id == null) {
+            id = "bound_" + bounds.size();
+            bounds.put(value, id);
+        }
+        return id;
+    }
+
+    private static void writeReagents(XMLStreamWriter w, JsonNode reagents) throws XMLStreamException {
+        for (int sign = -1; sign <= 1; sign += 2) {
+            boolean started = false;
+            for (JsonNode r : reagents) {
+                double coef = r.path("coefficient").asDouble();
+                if (coef * sign <= 0) {
+                    continue;
+                }
+                if (!started) {
+                    w.writeStartElement(sign < 0 ? "listOfReactants" : "listOfProducts");
+                    started = true;
+                }
+                w.writeEmptyElement("speciesReference");
+                w.writeAttribute("species", "M_" + sbmlId(FbaProblem.refId(r.path("modelcompound_ref").asText())));
+                w.writeAttribute("stoichiometry", number(Math.abs(coef)));
+                w.writeAttribute("constant", "true");
+            }
+            if (started) {
+                w.writeEndElement();
+            }
+        }
+    }
+
+    // any protein; all subunits of a protein; any feature of a subunit
+    private void writeGpr(XMLStreamWriter w, List<String[][]> proteins) throws XMLStreamException {
+        if (proteins.size() > 1) {
+            w.writeStartElement("fbc", "or", FBC_NS);
+        }
+        for (String[][] protein : proteins) {
+            if (protein.length > 1) {
+                w.writeStartElement("fbc", "and", FBC_NS);
+            }
+            for (String[] subunit : protein) {
+                if (subunit.length > 1) {
+                    w.writeStartElement("fbc", "or", FBC_NS);
+                }
+                for (String feature : subunit) {
+                    genes.add(feature);
+                    w.writeEmptyElement("fbc", "geneProductRef", FBC_NS);
+                    w.writeAttribute("fbc", FBC_NS, "geneProduct", "G_" + sbmlId(feature));
+                }
+                if (subunit.length > 1) {
+                    w.writeEndElement();
+                }
+            }
+            if (protein.length > 1) {
+                w.writeEndElement();
+            }
+        }
+        if (proteins.size() > 1) {
+            w.writeEndElement();
+        }
+    }
+
+    /** Converts an id to an SBML id, escaping the characters other than
+     * letters, digits and '_' as __NN__.
+     * @param id the id.
+     * @return the SBML id, without a prefix.
+     */
+    static String sbmlId(String id) {
+        StringBuilder sb = null;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            boolean ok = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+            if (!ok && sb == null) {
+                sb = new StringBuilder(id.length() + 16).append(id, 0, i);
+            }
+            if (sb != null) {
+                if (ok) {
+                    sb.append(c);
+                } else {
+                    sb.append("__").append((int) c).append("__");
+                }
+            }
+        }
+        return sb == null ? id : sb.toString();
+    }
+
+    // SBML ids must start with a letter or '_'; the service's export adds A_
+    private static String leadingLetter(String sid) {
+        return sid.isEmpty() || Character.isDigit(sid.charAt(0)) ? "A_" + sid : sid;
+    }
+
+    private static String number(double d) {
+        if (Double.isInfinite(d)) {
+            return d > 0 ? "INF" : "-INF";
+        }
+        return d == Math.rint(d) && Math.abs(d) < 1e15 ? Long.toString((long) d) : Double.toString(d);
+    }
+
+    /** Writes the exchange reactions and assembles the document from the
+     * spooled species and reactions, then deletes the spools and closes the
+     * stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writeExchanges();
+            species.finish();
+            reactions.finish();
+            writeDocument();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write the SBML document", e);
+        } finally {
+            try {
+                species.delete();
+                reactions.delete();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private void writeExchanges() throws IOException, XMLStreamException {
+        for (Map.Entry<String, double[]> e : exchanges.entrySet()) {
+            XMLStreamWriter w = reactions.start();
+            startReaction(w, "EX_" + e.getKey(), "EX_" + e.getKey(), e.getValue()[0], e.getValue()[1]);
+            w.writeStartElement("listOfReactants");
+            w.writeEmptyElement("speciesReference");
+            w.writeAttribute("species", "M_" + sbmlId(e.getKey()));
+            w.writeAttribute("stoichiometry", "1");
+            w.writeAttribute("constant", "true");
+            w.writeEndElement();
+            w.writeEndElement();
+        }
+    }
+
+    private void writeDocument() throws IOException, XMLStreamException {
+        XMLStreamWriter w = factory.createXMLStreamWriter(out, "UTF-8");
+        w.writeStartDocument("UTF-8", "1.0");
+        w.writeStartElement("sbml");
+        w.writeDefaultNamespace(CORE_NS);
+        w.writeNamespace("fbc", FBC_NS);
+        w.writeAttribute("level", "3");
+        w.writeAttribute("version", "1");
+        w.writeAttribute("fbc", FBC_NS, "required", "false");
+        w.writeStartElement("model");
+        w.writeAttribute("id", leadingLetter(sbmlId(modelId)));
+        if (name != null) {
+            w.writeAttribute("name", name);
+        }
+        w.writeAttribute("fbc", FBC_NS, "strict", "true");
+
+        w.writeStartElement("listOfUnitDefinitions");
+        w.writeStartElement("unitDefinition");
+        w.writeAttribute("id", FLUX_UNITS);
+        w.writeStartElement("listOfUnits");
+        unit(w, "mole", 1, -3, 1);
+        unit(w, "gram", -1, 0, 1);
+        unit(w, "second", -1, 0, 3600);
+        w.writeEndElement();
+        w.writeEndElement();
+        w.writeEndElement();
+        if (!compartments.isEmpty()) {
+            w.writeStartElement("listOfCompartments");
+            for (Map.Entry<String, String> c : compartments.entrySet()) {
+                w.writeEmptyElement("compartment");
+                w.writeAttribute("id", leadingLetter(sbmlId(c.getKey())));
+                w.writeAttribute("name", c.getValue());
+                w.writeAttribute("constant", "true");
+            }
+            w.writeEndElement();
+        }
+        w.flush();
+        species.copyTo(out);
+
+        w.writeStartElement("listOfParameters");
+        for (Map.Entry<Double, String> b : bounds.entrySet()) {
+            w.writeEmptyElement("parameter");
+            w.writeAttribute("id", b.getValue());
+            w.writeAttribute("value", number(b.getKey()));
+            w.writeAttribute("units", FLUX_UNITS);
+            w.writeAttribute("constant", "true");
+        }
+        w.writeEndElement();
+        w.flush();
+        reactions.copyTo(out);
+
+        if (objective != null) {
+            w.writeStartElement("fbc", "listOfObjectives", FBC_NS);
+            w.writeAttribute("fbc", FBC_NS, "activeObjective", "obj");
+            w.writeStartElement("fbc", "objective", FBC_NS);
+            w.writeAttribute("fbc", FBC_NS, "id", "obj");
+            w.writeAttribute("fbc", FBC_NS, "type", "maximize");
+            w.writeStartElement("fbc", "listOfFluxObjectives", FBC_NS);
+            w.writeEmptyElement("fbc", "fluxObjective", FBC_NS);
+            w.writeAttribute("fbc", FBC_NS, "reaction", "R_" + sbmlId(objective));
+            w.writeAttribute("fbc", FBC_NS, "coefficient", "1");
+            w.writeEndElement();
+            w.writeEndElement();
+            w.writeEndElement();
+        }
+        if (!genes.isEmpty()) {
+            w.writeStartElement("fbc", "listOfGeneProducts", FBC_NS);
+            for (String g : genes) {
+                w.writeEmptyElement("fbc", "geneProduct", FBC_NS);
+                w.writeAttribute("fbc", FBC_NS, "id", "G_" + sbmlId(g));
+                w.writeAttribute("fbc", FBC_NS, "label", g);
+            }
+            w.writeEndElement();
+        }
+        w.writeEndElement();
+        w.writeEndElement();
+        w.writeEndDocument();
+        w.flush();
+        w.close();
+    }
+
+    private static void unit(XMLStreamWriter w, String kind, int exponent, int scale, int multiplier)
+            throws XMLStreamException {
+        w.writeEmptyElement("unit");
+        w.writeAttribute("kind", kind);
+        w.writeAttribute("exponent", Integer.toString(exponent));
+        w.writeAttribute("scale", Integer.toString(scale));
+        w.writeAttribute("multiplier", Integer.toString(multiplier));
+    }
+
+    /* A list element written to a temporary file, started with its first
+     * record and copied into the document at the end.
+     */
+    private class Spool {
+        private final String list;
+        private final Path path;
+        private final OutputStream file;
+        private XMLStreamWriter w = null;
+
+        Spool(String list) throws IOException {
+            this.list = list;
+            path = Files.createTempFile("sbml-" + list, ".xml");
+            file = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16);
+        }
+
+        XMLStreamWriter start() throws IOException {
+            if (w == null) {
+                try {
+                    w = factory.createXMLStreamWriter(file, "UTF-8");
+                    w.writeStartElement(list);
+                } catch (XMLStreamException e) {
+                    throw new IOException("Failed to write " + list, e);
+                }
+            }
+            return w;
+        }
+
+        void finish() throws IOException, XMLStreamException {
+            if (w != null) {
+                w.writeEndElement();
+                w.flush();
+                w.close();
+            }
+            file.close();
+        }
+
+        void copyTo(OutputStream target) throws IOException {
+            if (w != null) {
+                Files.copy(path, target);
+            }
+        }
+
+        void delete() throws IOException {
+            try {
+                file.close();
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static class NonClosingStream extends FilterOutputStream {
+        NonClosingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,1107 @@
+package us.kbase.fbatools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>A bounded-variable revised simplex solver for the linear programs of
+ * flux balance analysis.</p>
+ * <p>The program is to minimize or maximize c'x subject to
+ * rowLower &lt;= A x &lt;= rowUpper and lower &lt;= x &lt;= upper, with the
+ * constraint matrix A given in compressed sparse column form. Mass balance
+ * rows simply have both row bounds at zero. Every row has a logical
+ * variable, so the all-logical basis is always available as a start, and
+ * with every flux at zero that start is already feasible for a plain
+ * stoichiometric model.</p>
+ * <p>The basis inverse is kept in product form, as a file of sparse eta
+ * vectors. A refactorization orders the basis so that as much of it as
+ * possible is triangular, which turns most basic columns into etas without
+ * any fill in; every pivot then appends one eta, and after a fixed number
+ * of pivots the basis is refactorized. An iteration costs time in
+ * proportion to the non zeros of the matrix and of the eta file, which for
+ * the sparse stoichiometry of a genome-scale model is far less than
+ * m<sup>2</sup>. A solved instance keeps its
+ * basis: after bounds or the objective change, {@link #solve()} restarts
+ * from that basis, with the dual simplex when the basis is still dual
+ * feasible (bound changes, knockouts) and the primal simplex otherwise
+ * (objective changes). {@link #copy()} gives an independent instance
+ * sharing the matrix and starting from the same basis, so parallel workers
+ * start warm.</p>
+ * <p>Instances are not thread safe.</p>
+ */
+public class SimplexSolver {
+    /** The outcome of a solve. */
+    public enum Status {
+        OPTIMAL, INFEASIBLE, UNBOUNDED, ITERATION_LIMIT, NOT_SOLVED
+    }
+
+    private static final double FEAS_TOL = 1e-7;
+    private static final double OPT_TOL = 1e-7;
+    private static final double PIVOT_TOL = 1e-9;
+    // entries of an eta below this are round off and dropped
+    private static final double DROP_TOL = 1e-14;
+    // smallest pivot element accepted by the ratio tests
+    private static final double MIN_PIVOT = 1e-7;
+    private static final double RESIDUAL_TOL = 1e-6;
+    // size of the bound perturbation against degeneracy
+    private static final double PERTURBATION = 1e-6;
+    // consecutive degenerate pivots before perturbing the bounds, and
+    // before switching to Bland's rule once they have been perturbed
+    private static final int DEGENERATE_LIMIT = 50;
+    // dual degenerate pivots without a drop in the primal infeasibility
+    // before handing over to the primal
+    private static final int DUAL_DEGENERATE_LIMIT = 200;
+    // relative drop in the primal infeasibility counted as dual progress
+    private static final double PROGRESS = 1e-3;
+    // pivots between recomputations of the basic values from scratch
+    private static final int REFRESH_INTERVAL = 100;
+    // pivots between refactorizations of the basis
+    private static final int REFACTOR_INTERVAL = 100;
+    // a refactorization pivot may be this fraction of the largest candidate
+    private static final double PIVOT_THRESHOLD = 0.1;
+
+    private static final byte BASIC = 0;
+    private static final byte AT_LOWER = 1;
+    private static final byte AT_UPPER = 2;
+    // nonbasic strictly between its bounds, typically at zero
+    private static final byte BETWEEN = 3;
+
+    // problem data, shared between copies
+    private final int m;
+    private final int n;
+    private final int[] colStart;
+    private final int[] rowIndex;
+    private final double[] values;
+
+    // per variable, structural 0..n-1 then logical n..n+m-1
+    private final double[] lower;
+    private final double[] upper;
+    private final double[] cost;
+    private final double[] x;
+    private final byte[] state;
+    private final int[] head;
+    // the basis inverse in product form, B^-1 = E_k ... E_1: eta t is the
+    // identity but for column etaRow[t], which has etaPivot[t] on the
+    // diagonal and etaIndex / etaValue[etaStart[t], etaStart[t + 1]) off it
+    private int etaCount = 0;
+    private int[] etaRow;
+    private double[] etaPivot;
+    private int[] etaStart;
+    private int[] etaIndex;
+    private double[] etaValue;
+    // pivots since the last refactorization
+    private int updates = 0;
+    private boolean maximize = false;
+    private boolean hasBasis = false;
+    // the true bounds while the working bounds are perturbed
+    private double[] savedLower = null;
+    private double[] savedUpper = null;
+    private boolean perturbed = false;
+
+    private Status status = Status.NOT_SOLVED;
+    private int iterations = 0;
+    private int iterationLimit;
+
+    // work arrays
+    private final double[] alpha;
+    private final double[] y;
+    private final double[] rho;
+    private final int[] candidates;
+    private final double[] candidateAlpha;
+    private final double[] candidateD;
+
+    /** Constructs a solver. All variables start with bounds [0, +inf], all
+     * rows with bounds [0, 0] and the objective is zero.
+     * @param rows the number of rows m.
+     * @param columns the number of structural variables n.
+     * @param colStart the start of each column in rowIndex and values, of
+     * length n + 1.
+     * @param rowIndex the row of each non zero.
+     * @param values the value of each non zero.
+     */
+    public SimplexSolver(int rows, int columns, int[] colStart, int[] rowIndex, double[] values) {
+        if (colStart.length != columns + 1) {
+            throw new IllegalArgumentException("colStart must have " + (columns + 1) + " entries");
+        }
+        this.m = rows;
+        this.n = columns;
+        this.colStart = colStart;
+        this.rowIndex = rowIndex;
+        this.values = values;
+        int total = n + m;
+        lower = new double[total];
+        upper = new double[total];
+        Arrays.fill(upper, 0, n, Double.POSITIVE_INFINITY);
+        cost = new double[total];
+        x = new double[total];
+        state = new byte[total];
+        head = new int[m];
+        etaRow = new int[m + REFACTOR_INTERVAL];
+        etaPivot = new double[m + REFACTOR_INTERVAL];
+        etaStart = new int[m + REFACTOR_INTERVAL + 1];
+        etaIndex = new int[Math.max(16, 2 * values.length)];
+        etaValue = new double[etaIndex.length];
+        alpha = new double[m];
+        y = new double[m];
+        rho = new double[m];
+        candidates = new int[n + m];
+        candidateAlpha = new double[n + m];
+        candidateD = new double[n + m];
+        iterationLimit = Math.max(10000, 20 * total);
+    }
+
+    private SimplexSolver(SimplexSolver s) {
+        m = s.m;
+        n = s.n;
+        colStart = s.colStart;
+        rowIndex = s.rowIndex;
+        values = s.values;
+        lower = s.lower.clone();
+        upper = s.upper.clone();
+        cost = s.cost.clone();
+        x = s.x.clone();
+        state = s.state.clone();
+        head = s.head.clone();
+        etaCount = s.etaCount;
+        etaRow = s.etaRow.clone();
+        etaPivot = s.etaPivot.clone();
+        etaStart = s.etaStart.clone();
+        etaIndex = Arrays.copyOf(s.etaIndex, Math.max(16, s.etaStart[s.etaCount] * 2));
+        etaValue = Arrays.copyOf(s.etaValue, etaIndex.length);
+        updates = s.updates;
+        maximize = s.maximize;
+        hasBasis = s.hasBasis;
+        status = s.status;
+        iterationLimit = s.iterationLimit;
+        alpha = new double[m];
+        y = new double[m];
+        rho = new double[m];
+        candidates = new int[n + m];
+        candidateAlpha = new double[n + m];
+        candidateD = new double[n + m];
+    }
+
+    /** Get an independent copy of this solver, with the same bounds,
+     * objective and basis. The matrix is shared, not copied.
+     * @return the copy.
+     */
+    public SimplexSolver copy() {
+        return new SimplexSolver(this);
+    }
+
+    public int getRows() {
+        return m;
+    }
+
+    public int getColumns() {
+        return n;
+    }
+
+    /** Sets the bounds of a structural variable. Infinite bounds are allowed.
+     * @param j the variable.
+     * @param lo the lower bound.
+     * @param up the upper bound.
+     */
+    public void setBounds(int j, double lo, double up) {
+        checkColumn(j);
+        setVariableBounds(j, lo, up);
+    }
+
+    /** Sets the bounds of a row activity.
+     * @param i the row.
+     * @param lo the lower bound.
+     * @param up the upper bound.
+     */
+    public void setRowBounds(int i, double lo, double up) {
+        if (i < 0 || i >= m) {
+            throw new IndexOutOfBoundsException("No row " + i);
+        }
+        setVariableBounds(n + i, lo, up);
+    }
+
+    private void setVariableBounds(int j, double lo, double up) {
+        if (lo > up) {
+            throw new IllegalArgumentException("Lower bound " + lo + " above upper bound " + up);
+        }
+        lower[j] = lo;
+        upper[j] = up;
+        if (hasBasis && state[j] != BASIC) {
+            replaceNonbasic(j);
+        }
+    }
+
+    public double getLowerBound(int j) {
+        checkColumn(j);
+        return lower[j];
+    }
+
+    public double getUpperBound(int j) {
+        checkColumn(j);
+        return upper[j];
+    }
+
+    /** Sets the objective.
+     * @param c the objective coefficient of every structural variable.
+     * @param maximize true to maximize, false to minimize.
+     */
+    public void setObjective(double[] c, boolean maximize) {
+        if (c.length != n) {
+            throw new IllegalArgumentException("Objective must have " + n + " coefficients");
+        }
+        System.arraycopy(c, 0, cost, 0, n);
+        this.maximize = maximize;
+    }
+
+    /** Sets the objective coefficient of one structural variable, keeping
+     * the others and the direction.
+     * @param j the variable.
+     * @param c the coefficient.
+     */
+    public void setObjectiveCoefficient(int j, double c) {
+        checkColumn(j);
+        cost[j] = c;
+    }
+
+    public double getObjectiveCoefficient(int j) {
+        checkColumn(j);
+        return cost[j];
+    }
+
+    public void setMaximize(boolean maximize) {
+        this.maximize = maximize;
+    }
+
+    public boolean isMaximize() {
+        return maximize;
+    }
+
+    public void setIterationLimit(int iterationLimit) {
+        this.iterationLimit = iterationLimit;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /** Get the number of simplex iterations of the last solve.
+     * @return the iteration count.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** Drops the current basis, so the next solve starts from scratch. */
+    public void resetBasis() {
+        hasBasis = false;
+    }
+
+    /** Solves the program, starting from the current basis if there is one.
+     * @return the status, also available from {@link #getStatus()}.
+     */
+    public Status solve() {
+        iterations = 0;
+        perturbed = false;
+        if (!hasBasis) {
+            initBasis();
+        }
+        status = optimize();
+        if (savedLower != null) {
+            // back to the true bounds, then clean up from the same basis
+            unperturb();
+            status = optimize();
+        }
+        if (status == Status.OPTIMAL && residual() > RESIDUAL_TOL) {
+            // accumulated round off in the product form inverse
+            refactor();
+            status = optimize();
+        }
+        return status;
+    }
+
+    private Status optimize() {
+        recomputeBasics();
+        if (!primalFeasible()) {
+            if (dualFeasible()) {
+                Status s = dual();
+                if (s == Status.OPTIMAL || s == Status.INFEASIBLE) {
+                    return s;
+                }
+            }
+            Status s = primal(true);
+            if (s != Status.OPTIMAL) {
+                return s;
+            }
+        }
+        return primal(false);
+    }
+
+    /** Get the objective value of the current solution.
+     * @return the objective value, in the direction of the objective.
+     */
+    public double getObjectiveValue() {
+        double z = 0;
+        for (int j = 0; j < n; j++) {
+            z += cost[j] * x[j];
+        }
+        return z;
+    }
+
+    /** Get the value of a structural variable in the current solution.
+     * @param j the variable.
+     * @return the value.
+     */
+    public double getValue(int j) {
+        checkColumn(j);
+        return x[j];
+    }
+
+    /** Get the values of all structural variables in the current solution.
+     * @return a new array of n values.
+     */
+    public double[] getValues() {
+        return Arrays.copyOf(x, n);
+    }
+
+    /** Get the activity A x of a row in the current solution.
+     * @param i the row.
+     * @return the activity.
+     */
+    public double getRowActivity(int i) {
+        return x[n + i];
+    }
+
+    /** Get the dual values (shadow prices) of the rows at the current basis.
+     * @return a new array of m values, in the direction of the objective.
+     */
+    public double[] getDuals() {
+        computeDuals();
+        double[] ret = y.clone();
+        if (maximize) {
+            for (int i = 0; i < m; i++) {
+                ret[i] = -ret[i];
+            }
+        }
+        return ret;
+    }
+
+    /** Get the reduced costs of the structural variables at the current basis.
+     * @return a new array of n values, in the direction of the objective.
+     */
+    public double[] getReducedCosts() {
+        computeDuals();
+        double[] ret = new double[n];
+        for (int j = 0; j < n; j++) {
+            double dj = state[j] == BASIC ? 0 : c(j) - dotColumn(y, j);
+            ret[j] = maximize ? -dj : dj;
+        }
+        return ret;
+    }
+
+    /** Check whether a structural variable is basic at the current solution.
+     * @param j the variable.
+     * @return true if basic.
+     */
+    public boolean isBasic(int j) {
+        checkColumn(j);
+        return state[j] == BASIC;
+    }
+
+    private void checkColumn(int j) {
+        if (j < 0 || j >= n) {
+            throw new IndexOutOfBoundsException("No column " + j);
+        }
+    }
+
+    // internal cost, always minimized
+    private double c(int j) {
+        return maximize ? -cost[j] : cost[j];
+    }
+
+    private void initBasis() {
+        for (int i = 0; i < m; i++) {
+            head[i] = n + i;
+            state[n + i] = BASIC;
+        }
+        for (int j = 0; j < n; j++) {
+            placeNonbasic(j);
+        }
+        refactor();
+        hasBasis = true;
+    }
+
+    private void placeNonbasic(int j) {
+        double lo = lower[j];
+        double up = upper[j];
+        if (lo <= 0 && up >= 0) {
+            x[j] = 0;
+            state[j] = lo == 0 ? AT_LOWER : up == 0 ? AT_UPPER : BETWEEN;
+        } else if (lo > 0) {
+            x[j] = lo;
+            state[j] = AT_LOWER;
+        } else {
+            x[j] = up;
+            state[j] = AT_UPPER;
+        }
+    }
+
+    private void replaceNonbasic(int j) {
+        double lo = lower[j];
+        double up = upper[j];
+        if (x[j] >= lo && x[j] <= up) {
+            // the value is still within bounds, so a feasible basis stays
+            // feasible; this is what makes undoing a bound change cheap
+            state[j] = x[j] == lo ? AT_LOWER : x[j] == up ? AT_UPPER : BETWEEN;
+        } else if (state[j] == AT_LOWER && !Double.isInfinite(lo)) {
+            x[j] = lo;
+        } else if (state[j] == AT_UPPER && !Double.isInfinite(up)) {
+            x[j] = up;
+        } else {
+            placeNonbasic(j);
+        }
+    }
+
+    // alpha = B^-1 a_j
+    private void ftran(int j, double[] out) {
+        Arrays.fill(out, 0);
+        if (j >= n) {
+            out[j - n] = -1;
+        } else {
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                out[rowIndex[p]] = values[p];
+            }
+        }
+        ftran(out);
+        for (int i = 0; i < m; i++) {
+            if (Math.abs(out[i]) < DROP_TOL) {
+                out[i] = 0;
+            }
+        }
+    }
+
+    // v = B^-1 v, applying the etas first to last
+    private void ftran(double[] v) {
+        for (int t = 0; t < etaCount; t++) {
+            int r = etaRow[t];
+            double vr = v[r];
+            if (vr == 0) {
+                continue;
+            }
+            vr /= etaPivot[t];
+            v[r] = vr;
+            for (int p = etaStart[t]; p < etaStart[t + 1]; p++) {
+                v[etaIndex[p]] -= etaValue[p] * vr;
+            }
+        }
+    }
+
+    // v' = v' B^-1, applying the transposed etas last to first
+    private void btran(double[] v) {
+        for (int t = etaCount - 1; t >= 0; t--) {
+            int r = etaRow[t];
+            double s = v[r];
+            for (int p = etaStart[t]; p < etaStart[t + 1]; p++) {
+                s -= etaValue[p] * v[etaIndex[p]];
+            }
+            v[r] = s / etaPivot[t];
+        }
+    }
+
+    // appends the eta of a column with B^-1 a = v pivoted on row r
+    private void appendEta(int r, double[] v) {
+        ensureEtaCapacity(0);
+        int p = etaStart[etaCount];
+        for (int i = 0; i < m; i++) {
+            double a = v[i];
+            if (i == r || a == 0 || Math.abs(a) < DROP_TOL) {
+                continue;
+            }
+            if (p == etaIndex.length) {
+                ensureEtaCapacity(p + 1 - etaStart[etaCount]);
+            }
+            etaIndex[p] = i;
+            etaValue[p++] = a;
+        }
+        finishEta(r, v[r], p);
+    }
+
+    // appends the eta of a logical pivoted on its own row
+    private void appendLogicalEta(int r) {
+        ensureEtaCapacity(0);
+        finishEta(r, -1, etaStart[etaCount]);
+    }
+
+    private void finishEta(int r, double pivot, int end) {
+        etaRow[etaCount] = r;
+        etaPivot[etaCount++] = pivot;
+        etaStart[etaCount] = end;
+    }
+
+    // room for one more eta with the given number of entries
+    private void ensureEtaCapacity(int entries) {
+        if (etaCount + 1 >= etaStart.length) {
+            int size = etaStart.length * 2;
+            etaRow = Arrays.copyOf(etaRow, size);
+            etaPivot = Arrays.copyOf(etaPivot, size);
+            etaStart = Arrays.copyOf(etaStart, size + 1);
+        }
+        int need = etaStart[etaCount] + entries;
+        if (need > etaIndex.length) {
+            int size = Math.max(need, etaIndex.length * 2);
+            etaIndex = Arrays.copyOf(etaIndex, size);
+            etaValue = Arrays.copyOf(etaValue, size);
+        }
+    }
+
+    private double dotColumn(double[] v, int j) {
+        if (j >= n) {
+            return -v[j - n];
+        }
+        double s = 0;
+        for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+            s += v[rowIndex[p]] * values[p];
+        }
+        return s;
+    }
+
+    // y = c_B' B^-1 for the objective
+    private void computeDuals() {
+        computeDuals(null);
+    }
+
+    // y = c_B' B^-1 for the phase 1 cost, or the objective if null
+    private void computeDuals(double[] phase1Cost) {
+        for (int i = 0; i < m; i++) {
+            int v = head[i];
+            y[i] = phase1Cost == null ? c(v) : phase1Cost[v];
+        }
+        btran(y);
+    }
+
+    private void recomputeBasics() {
+        double[] r = new double[m];
+        for (int j = 0; j < n + m; j++) {
+            if (state[j] != BASIC && x[j] != 0) {
+                if (j >= n) {
+                    r[j - n] += x[j];
+                } else {
+                    for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                        r[rowIndex[p]] -= values[p] * x[j];
+                    }
+                }
+            }
+        }
+        ftran(r);
+        for (int i = 0; i < m; i++) {
+            x[head[i]] = r[i];
+        }
+    }
+
+    private double residual() {
+        double[] r = new double[m];
+        for (int j = 0; j < n; j++) {
+            if (x[j] != 0) {
+                for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                    r[rowIndex[p]] += values[p] * x[j];
+                }
+            }
+        }
+        double max = 0;
+        for (int i = 0; i < m; i++) {
+            max = Math.max(max, Math.abs(r[i] - x[n + i]));
+        }
+        return max;
+    }
+
+    private double infeasibility(int v) {
+        if (x[v] < lower[v] - FEAS_TOL) {
+            return lower[v] - x[v];
+        }
+        if (x[v] > upper[v] + FEAS_TOL) {
+            return x[v] - upper[v];
+        }
+        return 0;
+    }
+
+    private boolean primalFeasible() {
+        for (int i = 0; i < m; i++) {
+            if (infeasibility(head[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean dualFeasible() {
+        computeDuals();
+        for (int j = 0; j < n + m; j++) {
+            if (state[j] == BASIC || lower[j] == upper[j]) {
+                continue;
+            }
+            double dj = c(j) - dotColumn(y, j);
+            if ((state[j] == AT_LOWER && dj < -OPT_TOL) || (state[j] == AT_UPPER && dj > OPT_TOL) ||
+                    (state[j] == BETWEEN && Math.abs(dj) > OPT_TOL)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canIncrease(int j) {
+        return (state[j] == AT_LOWER || state[j] == BETWEEN) && upper[j] > lower[j];
+    }
+
+    private boolean canDecrease(int j) {
+        return (state[j] == AT_UPPER || state[j] == BETWEEN) && upper[j] > lower[j];
+    }
+
+    /* The primal simplex. In phase 1 the cost is the sum of the bound
+     * violations of the basic variables, recomputed every iteration, and the
+     * phase ends as soon as the basis is feasible.
+     */
+    private Status primal(boolean phase1) {
+        double[] c1 = phase1 ? new double[n + m] : null;
+        int degenerate = 0;
+        int sinceRefresh = 0;
+        while (true) {
+            if (iterations >= iterationLimit) {
+                return Status.ITERATION_LIMIT;
+            }
+            if (sinceRefresh >= REFRESH_INTERVAL) {
+                recomputeBasics();
+                sinceRefresh = 0;
+            }
+            if (phase1) {
+                boolean infeasible = false;
+                for (int i = 0; i < m; i++) {
+                    int v = head[i];
+                    c1[v] = x[v] < lower[v] - FEAS_TOL ? -1 : x[v] > upper[v] + FEAS_TOL ? 1 : 0;
+                    infeasible |= c1[v] != 0;
+                }
+                if (!infeasible) {
+                    return Status.OPTIMAL;
+                }
+                computeDuals(c1);
+            } else {
+                computeDuals();
+            }
+            if (degenerate > DEGENERATE_LIMIT && !perturbed) {
+                perturb();
+                degenerate = 0;
+                continue;
+            }
+            // Bland's rule: first eligible variable, exact ratio test, ties to the lowest index
+            boolean bland = degenerate > DEGENERATE_LIMIT;
+            int q = -1;
+            double best = 0;
+            int dir = 0;
+            for (int j = 0; j < n + m; j++) {
+                if (state[j] == BASIC) {
+                    continue;
+                }
+                double dj = (phase1 ? 0 : c(j)) - dotColumn(y, j);
+                int jdir = 0;
+                if (dj < -OPT_TOL && canIncrease(j)) {
+                    jdir = 1;
+                } else if (dj > OPT_TOL && canDecrease(j)) {
+                    jdir = -1;
+                }
+                if (jdir != 0 && Math.abs(dj) > best) {
+                    q = j;
+                    dir = jdir;
+                    best = Math.abs(dj);
+                    if (bland) {
+                        break;
+                    }
+                }
+            }
+            if (q < 0) {
+                return phase1 ? Status.INFEASIBLE : Status.OPTIMAL;
+            }
+            ftran(q, alpha);
+            // Harris two pass ratio test
+            double relaxed = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < m; i++) {
+                // a basic variable already past its bound blocks at once
+                double lim = Math.max(0, ratio(i, dir, bland ? 0 : FEAS_TOL, phase1));
+                if (lim < relaxed) {
+                    relaxed = lim;
+                }
+            }
+            int r = -1;
+            double step = Double.POSITIVE_INFINITY;
+            double bestPivot = 0;
+            if (relaxed < Double.POSITIVE_INFINITY) {
+                for (int i = 0; i < m; i++) {
+                    double lim = ratio(i, dir, 0, phase1);
+                    if (bland ? lim <= relaxed + PIVOT_TOL && (r < 0 || head[i] < head[r])
+                            : lim <= relaxed && Math.abs(alpha[i]) > bestPivot) {
+                        r = i;
+                        step = Math.max(0, lim);
+                        bestPivot = Math.abs(alpha[i]);
+                    }
+                }
+            }
+            double flip = dir > 0 ? upper[q] - x[q] : x[q] - lower[q];
+            if (r < 0 && Double.isInfinite(flip)) {
+                return phase1 ? Status.INFEASIBLE : Status.UNBOUNDED;
+            }
+            iterations++;
+            sinceRefresh++;
+            if (flip <= step) {
+                move(q, dir * flip);
+                x[q] = dir > 0 ? upper[q] : lower[q];
+                state[q] = dir > 0 ? AT_UPPER : AT_LOWER;
+                degenerate = flip > PIVOT_TOL ? 0 : degenerate + 1;
+                continue;
+            }
+            int leaving = head[r];
+            double delta = -dir * alpha[r];
+            // phase 1 lets an infeasible variable leave at the bound it reaches first
+            boolean toLower = delta < 0 ? !(phase1 && x[leaving] > upper[leaving] + FEAS_TOL)
+                    : phase1 && x[leaving] < lower[leaving] - FEAS_TOL;
+            move(q, dir * step);
+            x[leaving] = toLower ? lower[leaving] : upper[leaving];
+            state[leaving] = toLower || lower[leaving] == upper[leaving] ? AT_LOWER : AT_UPPER;
+            pivot(r, q);
+            degenerate = step > PIVOT_TOL ? 0 : degenerate + 1;
+        }
+    }
+
+    /* Widens the finite bounds of the basic variables by a small, variable
+     * specific amount, so that they are rarely exactly at a bound and
+     * degenerate pivots become rare. Widening keeps the basis feasible. The
+     * true bounds are restored once optimal.
+     */
+    private void perturb() {
+        perturbed = true;
+        savedLower = lower.clone();
+        savedUpper = upper.clone();
+        for (int i = 0; i < m; i++) {
+            int v = head[i];
+            // deterministic pseudo random factor in [1, 2)
+            double f = 1 + ((v * 2654435761L) & 0xffff) / 65536.0;
+            if (!Double.isInfinite(lower[v])) {
+                lower[v] -= f * PERTURBATION;
+            }
+            if (!Double.isInfinite(upper[v])) {
+                upper[v] += f * PERTURBATION;
+            }
+        }
+    }
+
+    private void unperturb() {
+        System.arraycopy(savedLower, 0, lower, 0, n + m);
+        System.arraycopy(savedUpper, 0, upper, 0, n + m);
+        savedLower = null;
+        savedUpper = null;
+        for (int j = 0; j < n + m; j++) {
+            if (state[j] != BASIC) {
+                replaceNonbasic(j);
+            }
+        }
+    }
+
+    // the step of the entering variable at which basic row i blocks
+    private double ratio(int i, int dir, double tol, boolean phase1) {
+        double a = alpha[i];
+        if (Math.abs(a) < MIN_PIVOT) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int v = head[i];
+        double delta = -dir * a;
+        if (delta < 0) {
+            if (phase1 && x[v] > upper[v] + FEAS_TOL) {
+                return (x[v] - upper[v] + tol) / -delta;
+            }
+            if (phase1 && x[v] < lower[v] - FEAS_TOL) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return Double.isInfinite(lower[v]) ? Double.POSITIVE_INFINITY : (x[v] - lower[v] + tol) / -delta;
+        }
+        if (phase1 && x[v] < lower[v] - FEAS_TOL) {
+            return (lower[v] - x[v] + tol) / delta;
+        }
+        if (phase1 && x[v] > upper[v] + FEAS_TOL) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Double.isInfinite(upper[v]) ? Double.POSITIVE_INFINITY : (upper[v] - x[v] + tol) / delta;
+    }
+
+    // moves the entering variable q by t, and the basic variables with it
+    private void move(int q, double t) {
+        if (t == 0) {
+            return;
+        }
+        x[q] += t;
+        for (int i = 0; i < m; i++) {
+            if (alpha[i] != 0) {
+                x[head[i]] -= alpha[i] * t;
+            }
+        }
+    }
+
+    /* The dual simplex, for a dual feasible but primal infeasible basis:
+     * the most infeasible basic variable leaves at its violated bound.
+     */
+    private Status dual() {
+        int degenerate = 0;
+        double bestInf = Double.POSITIVE_INFINITY;
+        while (true) {
+            if (iterations >= iterationLimit) {
+                return Status.ITERATION_LIMIT;
+            }
+            int r = -1;
+            double worst = 0;
+            double sumInf = 0;
+            for (int i = 0; i < m; i++) {
+                double inf = infeasibility(head[i]);
+                sumInf += inf;
+                if (inf > worst) {
+                    worst = inf;
+                    r = i;
+                }
+            }
+            if (r < 0) {
+                return Status.OPTIMAL;
+            }
+            if (sumInf < bestInf * (1 - PROGRESS)) {
+                bestInf = sumInf;
+                degenerate = 0;
+            }
+            int leaving = head[r];
+            boolean up = x[leaving] < lower[leaving];
+            computeDuals();
+            // row r of B^-1
+            Arrays.fill(rho, 0);
+            rho[r] = 1;
+            btran(rho);
+            // Harris two pass ratio test over the pivot row
+            int cand = 0;
+            double thetaMax = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < n + m; j++) {
+                if (state[j] == BASIC || lower[j] == upper[j]) {
+                    continue;
+                }
+                double a = dotColumn(rho, j);
+                if (Math.abs(a) < MIN_PIVOT) {
+                    continue;
+                }
+                // the leaving variable moves by -a per unit of x_j
+                boolean eligible = up ? (a < 0 && canIncrease(j)) || (a > 0 && canDecrease(j))
+                        : (a > 0 && canIncrease(j)) || (a < 0 && canDecrease(j));
+                if (!eligible) {
+                    continue;
+                }
+                double dj = Math.abs(c(j) - dotColumn(y, j));
+                thetaMax = Math.min(thetaMax, (dj + OPT_TOL) / Math.abs(a));
+                candidates[cand] = j;
+                candidateAlpha[cand] = a;
+                candidateD[cand++] = dj;
+            }
+            int q = -1;
+            double bestPivot = 0;
+            double step = 0;
+            for (int k = 0; k < cand; k++) {
+                double a = Math.abs(candidateAlpha[k]);
+                if (candidateD[k] / a <= thetaMax && a > bestPivot) {
+                    q = candidates[k];
+                    bestPivot = a;
+                    step = candidateD[k] / a;
+                }
+            }
+            if (q < 0) {
+                return Status.INFEASIBLE;
+            }
+            degenerate = step > PIVOT_TOL ? 0 : degenerate + 1;
+            if (degenerate > DUAL_DEGENERATE_LIMIT) {
+                // stalling on a dual degenerate basis, let the primal simplex finish
+                return Status.ITERATION_LIMIT;
+            }
+            iterations++;
+            ftran(q, alpha);
+            double target = up ? lower[leaving] : upper[leaving];
+            move(q, (x[leaving] - target) / alpha[r]);
+            x[leaving] = target;
+            state[leaving] = up || lower[leaving] == upper[leaving] ? AT_LOWER : AT_UPPER;
+            pivot(r, q);
+        }
+    }
+
+    // replaces the basic variable of row r by q, alpha holding B^-1 a_q
+    private void pivot(int r, int q) {
+        appendEta(r, alpha);
+        head[r] = q;
+        state[q] = BASIC;
+        if (++updates >= REFACTOR_INTERVAL) {
+            refactor();
+        }
+    }
+
+    /* Refactorizes the current basis into a fresh eta file. The basic
+     * logicals come first, pivoted on their own rows. Then, as long as some
+     * row not yet pivoted on has a single basic structural column left,
+     * that column is pivoted on it; these columns form a triangular block
+     * and their etas are just their coefficients, without fill in. The
+     * remaining columns follow sparsest first, each pivoted on the row with
+     * the fewest remaining entries among those whose pivot is within
+     * PIVOT_THRESHOLD of the largest. A column without an acceptable pivot
+     * (a singular basis) is made nonbasic and its row goes to the logical.
+     */
+    private void refactor() {
+        etaCount = 0;
+        etaStart[0] = 0;
+        updates = 0;
+        int[] pivotOf = new int[m];
+        Arrays.fill(pivotOf, -1);
+        int[] cols = new int[m];
+        int nc = 0;
+        for (int i = 0; i < m; i++) {
+            int v = head[i];
+            if (v >= n) {
+                pivotOf[v - n] = v;
+                appendLogicalEta(v - n);
+            } else {
+                cols[nc++] = v;
+            }
+        }
+        // the basic structural columns by row, over the rows left
+        int[] rowCount = new int[m + 1];
+        for (int c = 0; c < nc; c++) {
+            int j = cols[c];
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                if (pivotOf[rowIndex[p]] < 0) {
+                    rowCount[rowIndex[p] + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            rowCount[i + 1] += rowCount[i];
+        }
+        int[] rowStart = rowCount.clone();
+        int[] rowCols = new int[rowCount[m]];
+        for (int c = 0; c < nc; c++) {
+            int j = cols[c];
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                int i = rowIndex[p];
+                if (pivotOf[i] < 0) {
+                    rowCols[rowCount[i]++] = c;
+                }
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            rowCount[i] = rowStart[i + 1] - rowStart[i];
+        }
+        boolean[] done = new boolean[nc];
+        int[] stack = new int[m];
+        int top = 0;
+        for (int i = 0; i < m; i++) {
+            if (pivotOf[i] < 0 && rowCount[i] == 1) {
+                stack[top++] = i;
+            }
+        }
+        while (top > 0) {
+            int r = stack[--top];
+            if (pivotOf[r] >= 0 || rowCount[r] != 1) {
+                continue;
+            }
+            int c = -1;
+            for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                if (!done[rowCols[k]]) {
+                    c = rowCols[k];
+                }
+            }
+            int j = cols[c];
+            // no fill in: the only rows already pivoted on that the column
+            // meets are those of logicals, whose etas just negate it
+            double pivot = 0;
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                if (rowIndex[p] == r) {
+                    pivot = values[p];
+                }
+            }
+            if (Math.abs(pivot) < MIN_PIVOT) {
+                // too small to pivot on, left to the general pass
+                continue;
+            }
+            ensureEtaCapacity(colStart[j + 1] - colStart[j]);
+            int e = etaStart[etaCount];
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                int i = rowIndex[p];
+                if (i != r) {
+                    etaIndex[e] = i;
+                    etaValue[e++] = pivotOf[i] >= n ? -values[p] : values[p];
+                }
+            }
+            finishEta(r, pivot, e);
+            pivotOf[r] = j;
+            done[c] = true;
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                int i = rowIndex[p];
+                if (pivotOf[i] < 0 && --rowCount[i] == 1) {
+                    stack[top++] = i;
+                }
+            }
+        }
+        // the rest, sparsest first
+        List<Integer> rest = new ArrayList<Integer>();
+        final int[] count = new int[nc];
+        for (int c = 0; c < nc; c++) {
+            if (!done[c]) {
+                rest.add(c);
+                int j = cols[c];
+                for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                    if (pivotOf[rowIndex[p]] < 0) {
+                        count[c]++;
+                    }
+                }
+            }
+        }
+        Collections.sort(rest, (a, b) -> count[a] - count[b]);
+        boolean singular = false;
+        for (int c : rest) {
+            int j = cols[c];
+            ftran(j, alpha);
+            double max = 0;
+            for (int i = 0; i < m; i++) {
+                if (pivotOf[i] < 0) {
+                    max = Math.max(max, Math.abs(alpha[i]));
+                }
+            }
+            int r = -1;
+            if (max > PIVOT_TOL) {
+                for (int i = 0; i < m; i++) {
+                    if (pivotOf[i] < 0 && Math.abs(alpha[i]) >= PIVOT_THRESHOLD * max &&
+                            (r < 0 || rowCount[i] < rowCount[r])) {
+                        r = i;
+                    }
+                }
+            }
+            if (r < 0) {
+                singular = true;
+                placeNonbasic(j);
+                continue;
+            }
+            appendEta(r, alpha);
+            pivotOf[r] = j;
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                if (pivotOf[rowIndex[p]] < 0) {
+                    rowCount[rowIndex[p]]--;
+                }
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            if (pivotOf[i] < 0) {
+                // untouched by the etas so far, so its eta is just -e_i
+                pivotOf[i] = n + i;
+                appendLogicalEta(i);
+            }
+            head[i] = pivotOf[i];
+            state[head[i]] = BASIC;
+        }
+        if (singular) {
+            recomputeBasics();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package us.kbase.fbatools;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * <p>Collapses concurrent identical calls into one.</p>
+ * <p>While a call for a key is in flight, further calls for the same key do
+ * not start a call of their own but wait for the one in flight and receive
+ * its result or error. The key is forgotten as soon as the call finishes, so
+ * this is not a cache: a call made after the first one finished runs again.
+ * All callers of a collapsed call receive the same result instance.</p>
+ * @param <K> the key type.
+ * @param <V> the result type.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<K, CompletableFuture<V>>();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    /** Runs a call unless an identical one is already in flight.
+     * @param key the key identifying identical calls.
+     * @param call starts the call.
+     * @return a future completing with the result of the shared call.
+     * Cancelling it does not affect the shared call or the other callers.
+     */
+    public CompletableFuture<V> execute(final K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> mine = new CompletableFuture<V>();
+        CompletableFuture<V> shared = inFlight.putIfAbsent(key, mine);
+        if (shared != null) {
+            joined.incrementAndGet();
+            return copy(shared);
+        }
+        started.incrementAndGet();
+        CompletableFuture<V> f;
+        try {
+            f = call.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            return copy(mine);
+        }
+        f.whenComplete((res, err) -> {
+            inFlight.remove(key, mine);
+            if (err != null) {
+                mine.completeExceptionally(err);
+            } else {
+                mine.complete(res);
+            }
+        });
+        return copy(mine);
+    }
+
+    /** Get the number of calls currently in flight.
+     * @return the number of distinct keys in flight.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /** Get the number of calls that were actually started.
+     * @return the started call count.
+     */
+    public long getStarted() {
+        return started.get();
+    }
+
+    /** Get the number of calls that joined a call already in flight.
+     * @return the collapsed call count.
+     */
+    public long getJoined() {
+        return joined.get();
+    }
+
+    private static <V> CompletableFuture<V> copy(CompletableFuture<V> f) {
+        return f.thenApply(v -> v);
+    }
+}
@@ -0,0 +1,599 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * <p>The stoichiometric matrix of an FBAModel in compressed sparse form.</p>
+ * <p>Rows are the model compounds and columns the model reactions followed
+ * by the biomass reactions. Compound, reaction and compartment ids are
+ * interned to dense int indexes, and the coefficients are held both column
+ * wise (CSC) and row wise (CSR) in primitive arrays, so that the reagents of
+ * a reaction and the reactions of a compound are each a contiguous slice
+ * found in constant time. Coefficients of the same compound in one reaction
+ * are summed, and every slice is sorted by index.</p>
+ * <p>A matrix can be written to a file with {@link #write(Path)} and opened
+ * again with {@link #map(Path)}, which maps the numeric sections of the file
+ * into memory instead of reading them onto the heap.</p>
+ * <pre>
+ * StoichiometricMatrix s = StoichiometricMatrix.fromModel(modelJson);
+ * int rxn = s.getReactionIndex("rxn00001_c0");
+ * for (int p = s.getColumnStart(rxn); p &lt; s.getColumnEnd(rxn); p++) {
+ *     String cpd = s.getCompoundId(s.getRow(p));
+ *     double coef = s.getColumnValue(p);
+ * }
+ * </pre>
+ */
+public class StoichiometricMatrix {
+    private static final int MAGIC = 0x46424d53;
+    private static final int VERSION = 1;
+
+    private final Ids compounds;
+    private final Ids reactions;
+    private final Ids compartments;
+    private final int reactionCount;
+    private final IntBuffer compoundCompartment;
+    // CSC
+    private final IntBuffer colStart;
+    private final IntBuffer rowIndex;
+    private final DoubleBuffer colValues;
+    // CSR
+    private final IntBuffer rowStart;
+    private final IntBuffer colIndex;
+    private final DoubleBuffer rowValues;
+
+    // ids interned to their position
+    private static class Ids {
+        private final String[] ids;
+        private final Map<String, Integer> index;
+
+        private Ids(List<String> ids) {
+            this.ids = ids.toArray(new String[ids.size()]);
+            this.index = new HashMap<String, Integer>(this.ids.length * 2);
+            for (int i = this.ids.length - 1; i >= 0; i--) {
+                // the first of duplicated ids wins
+                index.put(this.ids[i], i);
+            }
+        }
+
+        private int indexOf(String id) {
+            Integer i = index.get(id);
+            return i == null ? -1 : i;
+        }
+    }
+
+    private StoichiometricMatrix(Ids compounds, Ids reactions, Ids compartments, int reactionCount,
+            IntBuffer compoundCompartment, IntBuffer colStart, IntBuffer rowIndex, DoubleBuffer colValues,
+            IntBuffer rowStart, IntBuffer colIndex, DoubleBuffer rowValues) {
+        this.compounds = compounds;
+        this.reactions = reactions;
+        this.compartments = compartments;
+        this.reactionCount = reactionCount;
+        this.compoundCompartment = compoundCompartment;
+        this.colStart = colStart;
+        this.rowIndex = rowIndex;
+        this.colValues = colValues;
+        this.rowStart = rowStart;
+        this.colIndex = colIndex;
+        this.rowValues = rowValues;
+    }
+
+    /** Builds the matrix of a model.
+     * @param model the FBAModel object, as JSON.
+     * @return the matrix.
+     */
+    public static StoichiometricMatrix fromModel(JsonNode model) {
+        List<String> cpdIds = new ArrayList<String>();
+        Map<String, Integer> cpdIndex = new HashMap<String, Integer>();
+        List<String> cmpIds = new ArrayList<String>();
+        Map<String, Integer> cmpIndex = new HashMap<String, Integer>();
+        int[] cpdCmp = new int[16];
+        for (JsonNode cpd : model.path("modelcompounds")) {
+            String id = cpd.path("id").asText();
+            if (cpdIndex.containsKey(id)) {
+                continue;
+            }
+            String cmp = FbaProblem.refId(cpd.path("modelcompartment_ref").asText(""));
+            if (cmp.isEmpty() && id.lastIndexOf('_') > 0) {
+                cmp = id.substring(id.lastIndexOf('_') + 1);
+            }
+            Integer c = cmpIndex.get(cmp);
+            if (c == null) {
+                c = cmpIds.size();
+                cmpIndex.put(cmp, c);
+                cmpIds.add(cmp);
+            }
+            if (cpdIds.size() == cpdCmp.length) {
+                cpdCmp = Arrays.copyOf(cpdCmp, cpdCmp.length * 2);
+            }
+            cpdCmp[cpdIds.size()] = c;
+            cpdIndex.put(id, cpdIds.size());
+            cpdIds.add(id);
+        }
+        List<String> rxnIds = new ArrayList<String>();
+        int[] starts = new int[16];
+        int[] rows = new int[64];
+        double[] vals = new double[64];
+        int nnz = 0;
+        int reactionCount = 0;
+        for (String section : new String[] {"modelreactions", "biomasses"}) {
+            boolean biomass = section.equals("biomasses");
+            for (JsonNode rxn : model.path(section)) {
+                if (rxnIds.size() + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[rxnIds.size()] = nnz;
+                rxnIds.add(rxn.path("id").asText());
+                for (JsonNode rgt : rxn.path(biomass ? "biomasscompounds" : "modelReactionReagents")) {
+                    Integer row = cpdIndex.get(FbaProblem.refId(rgt.path("modelcompound_ref").asText()));
+                    double coef = rgt.path("coefficient").asDouble();
+                    if (row == null || coef == 0) {
+                        continue;
+                    }
+                    if (nnz == rows.length) {
+                        rows = Arrays.copyOf(rows, nnz * 2);
+                        vals = Arrays.copyOf(vals, nnz * 2);
+                    }
+                    rows[nnz] = row;
+                    vals[nnz++] = coef;
+                }
+                nnz = sortColumn(rows, vals, starts[rxnIds.size() - 1], nnz);
+            }
+            if (!biomass) {
+                reactionCount = rxnIds.size();
+            }
+        }
+        int n = rxnIds.size();
+        starts[n] = nnz;
+        return build(cpdIds, rxnIds, cmpIds, reactionCount, Arrays.copyOf(cpdCmp, cpdIds.size()),
+                Arrays.copyOf(starts, n + 1), Arrays.copyOf(rows, nnz), Arrays.copyOf(vals, nnz));
+    }
+
+    // sorts rows[from, to) by row, merging duplicates and dropping zeros; returns the new end
+    private static int sortColumn(int[] rows, double[] vals, int from, int to) {
+        // reactions have a handful of reagents, insertion sort is enough
+        for (int i = from + 1; i < to; i++) {
+            int r = rows[i];
+            double v = vals[i];
+            int k = i - 1;
+            while (k >= from && rows[k] > r) {
+                rows[k + 1] = rows[k];
+                vals[k + 1] = vals[k];
+                k--;
+            }
+            rows[k + 1] = r;
+            vals[k + 1] = v;
+        }
+        int out = from;
+        for (int i = from; i < to; i++) {
+            if (out > from && rows[out - 1] == rows[i]) {
+                vals[out - 1] += vals[i];
+            } else {
+                rows[out] = rows[i];
+                vals[out++] = vals[i];
+            }
+        }
+        int end = from;
+        for (int i = from; i < out; i++) {
+            if (vals[i] != 0) {
+                rows[end] = rows[i];
+                vals[end++] = vals[i];
+            }
+        }
+        return end;
+    }
+
+    private static StoichiometricMatrix build(List<String> cpdIds, List<String> rxnIds, List<String> cmpIds,
+            int reactionCount, int[] cpdCmp, int[] colStart, int[] rowIndex, double[] colValues) {
+        int m = cpdIds.size();
+        int n = rxnIds.size();
+        int nnz = rowIndex.length;
+        // transpose; walking the columns in order leaves every row sorted
+        int[] rowStart = new int[m + 1];
+        for (int p = 0; p < nnz; p++) {
+            rowStart[rowIndex[p] + 1]++;
+        }
+        for (int i = 0; i < m; i++) {
+            rowStart[i + 1] += rowStart[i];
+        }
+        int[] next = Arrays.copyOf(rowStart, m);
+        int[] colIndex = new int[nnz];
+        double[] rowValues = new double[nnz];
+        for (int j = 0; j < n; j++) {
+            for (int p = colStart[j]; p < colStart[j + 1]; p++) {
+                int q = next[rowIndex[p]]++;
+                colIndex[q] = j;
+                rowValues[q] = colValues[p];
+            }
+        }
+        return new StoichiometricMatrix(new Ids(cpdIds), new Ids(rxnIds), new Ids(cmpIds), reactionCount,
+                IntBuffer.wrap(cpdCmp), IntBuffer.wrap(colStart), IntBuffer.wrap(rowIndex),
+                DoubleBuffer.wrap(colValues), IntBuffer.wrap(rowStart), IntBuffer.wrap(colIndex),
+                DoubleBuffer.wrap(rowValues));
+    }
+
+    /** Get the number of rows, i.e. model compounds.
+     * @return the row count.
+     */
+    public int getRowCount() {
+        return compounds.ids.length;
+    }
+
+    /** Get the number of columns, i.e. model and biomass reactions.
+     * @return the column count.
+     */
+    public int getColumnCount() {
+        return reactions.ids.length;
+    }
+
+    /** Get the number of model reactions. Columns from this index on are
+     * biomass reactions.
+     * @return the model reaction count.
+     */
+    public int getReactionCount() {
+        return reactionCount;
+    }
+
+    /** Get the number of stored coefficients.
+     * @return the non zero count.
+     */
+    public int getNonZeroCount() {
+        return rowIndex.limit();
+    }
+
+    public int getCompartmentCount() {
+        return compartments.ids.length;
+    }
+
+    public boolean isBiomass(int col) {
+        return col >= reactionCount;
+    }
+
+    public String getCompoundId(int row) {
+        return compounds.ids[row];
+    }
+
+    /** Get the row of a compound.
+     * @param id the model compound id.
+     * @return the row, or -1 if there is no such compound.
+     */
+    public int getCompoundIndex(String id) {
+        return compounds.indexOf(id);
+    }
+
+    public String getReactionId(int col) {
+        return reactions.ids[col];
+    }
+
+    /** Get the column of a model or biomass reaction.
+     * @param id the reaction id.
+     * @return the column, or -1 if there is no such reaction.
+     */
+    public int getReactionIndex(String id) {
+        return reactions.indexOf(id);
+    }
+
+    public String getCompartmentId(int compartment) {
+        return compartments.ids[compartment];
+    }
+
+    /** Get the index of a compartment.
+     * @param id the compartment id, e.g. c0.
+     * @return the index, or -1 if no compound is in that compartment.
+     */
+    public int getCompartmentIndex(String id) {
+        return compartments.indexOf(id);
+    }
+
+    /** Get the compartment of a compound.
+     * @param row the compound row.
+     * @return the compartment index.
+     */
+    public int getCompartment(int row) {
+        return compoundCompartment.get(row);
+    }
+
+    /** Get the position of the first coefficient of a column.
+     * @param col the column.
+     * @return the position, for {@link #getRow(int)} and {@link #getColumnValue(int)}.
+     */
+    public int getColumnStart(int col) {
+        return colStart.get(col);
+    }
+
+    /** Get the position after the last coefficient of a column.
+     * @param col the column.
+     * @return the end position.
+     */
+    public int getColumnEnd(int col) {
+        return colStart.get(col + 1);
+    }
+
+    /** Get the row of a coefficient in column order.
+     * @param p the position, between a column start and end.
+     * @return the row.
+     */
+    public int getRow(int p) {
+        return rowIndex.get(p);
+    }
+
+    public double getColumnValue(int p) {
+        return colValues.get(p);
+    }
+
+    /** Get the position of the first coefficient of a row.
+     * @param row the row.
+     * @return the position, for {@link #getColumn(int)} and {@link #getRowValue(int)}.
+     */
+    public int getRowStart(int row) {
+        return rowStart.get(row);
+    }
+
+    /** Get the position after the last coefficient of a row.
+     * @param row the row.
+     * @return the end position.
+     */
+    public int getRowEnd(int row) {
+        return rowStart.get(row + 1);
+    }
+
+    /** Get the column of a coefficient in row order.
+     * @param p the position, between a row start and end.
+     * @return the column.
+     */
+    public int getColumn(int p) {
+        return colIndex.get(p);
+    }
+
+    public double getRowValue(int p) {
+        return rowValues.get(p);
+    }
+
+    /** Get a single coefficient.
+     * @param row the compound row.
+     * @param col the reaction column.
+     * @return the coefficient, 0 if the compound is not in the reaction.
+     */
+    public double getCoefficient(int row, int col) {
+        int lo = colStart.get(col);
+        int hi = colStart.get(col + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int r = rowIndex.get(mid);
+            if (r < row) {
+                lo = mid + 1;
+            } else if (r > row) {
+                hi = mid - 1;
+            } else {
+                return colValues.get(mid);
+            }
+        }
+        return 0;
+    }
+
+    /** Get the column starts of the CSC form, as taken by
+     * {@link SimplexSolver}.
+     * @return a copy of the column starts, one more than the columns.
+     */
+    public int[] getColumnStarts() {
+        return toArray(colStart);
+    }
+
+    /** Get the rows of the CSC form.
+     * @return a copy of the row indexes, in column order.
+     */
+    public int[] getRowIndexes() {
+        return toArray(rowIndex);
+    }
+
+    /** Get the coefficients of the CSC form.
+     * @return a copy of the coefficients, in column order.
+     */
+    public double[] getColumnValues() {
+        return toArray(colValues);
+    }
+
+    private static int[] toArray(IntBuffer b) {
+        int[] a = new int[b.limit()];
+        b.duplicate().position(0).get(a);
+        return a;
+    }
+
+    private static double[] toArray(DoubleBuffer b) {
+        double[] a = new double[b.limit()];
+        b.duplicate().position(0).get(a);
+        return a;
+    }
+
+    /** Writes the matrix to a file, replacing it atomically.
+     * @param path the file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        byte[][] cpd = encode(compounds.ids);
+        byte[][] rxn = encode(reactions.ids);
+        byte[][] cmp = encode(compartments.ids);
+        int m = getRowCount();
+        int n = getColumnCount();
+        int nnz = getNonZeroCount();
+        long size = align(24 + stringsSize(cpd) + stringsSize(rxn) + stringsSize(cmp));
+        size += align(4L * m) + align(4L * (n + 1)) + align(4L * nnz) + 8L * nnz;
+        size += align(4L * (m + 1)) + align(4L * nnz) + 8L * nnz;
+        Path tmp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buf.order(ByteOrder.LITTLE_ENDIAN);
+                buf.putInt(MAGIC).putInt(VERSION).putInt(m).putInt(n).putInt(nnz).putInt(reactionCount);
+                putStrings(buf, cmp);
+                putStrings(buf, cpd);
+                putStrings(buf, rxn);
+                pad(buf);
+                putInts(buf, compoundCompartment);
+                putInts(buf, colStart);
+                putInts(buf, rowIndex);
+                putDoubles(buf, colValues);
+                putInts(buf, rowStart);
+                putInts(buf, colIndex);
+                putDoubles(buf, rowValues);
+                buf.force();
+            } finally {
+                ch.close();
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Opens a matrix written by {@link #write(Path)}. The ids are read into
+     * memory and the coefficient arrays are accessed through a read-only
+     * memory mapping of the file, which stays valid after this returns.
+     * @param path the file.
+     * @return the matrix.
+     * @throws IOException if the file cannot be read or is not a matrix file.
+     */
+    public static StoichiometricMatrix map(Path path) throws IOException {
+        MappedByteBuffer buf;
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } finally {
+            ch.close();
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Not a stoichiometric matrix file: " + path);
+            }
+            int version = buf.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported stoichiometric matrix file version " + version + ": " + path);
+            }
+            int m = buf.getInt();
+            int n = buf.getInt();
+            int nnz = buf.getInt();
+            int reactionCount = buf.getInt();
+            List<String> cmp = getStrings(buf);
+            List<String> cpd = getStrings(buf);
+            List<String> rxn = getStrings(buf);
+            if (cpd.size() != m || rxn.size() != n || reactionCount > n) {
+                throw new IOException("Corrupt stoichiometric matrix file: " + path);
+            }
+            skipPad(buf);
+            IntBuffer cpdCmp = ints(buf, m);
+            IntBuffer colStart = ints(buf, n + 1);
+            IntBuffer rowIndex = ints(buf, nnz);
+            DoubleBuffer colValues = doubles(buf, nnz);
+            IntBuffer rowStart = ints(buf, m + 1);
+            IntBuffer colIndex = ints(buf, nnz);
+            DoubleBuffer rowValues = doubles(buf, nnz);
+            return new StoichiometricMatrix(new Ids(cpd), new Ids(rxn), new Ids(cmp), reactionCount, cpdCmp,
+                    colStart, rowIndex, colValues, rowStart, colIndex, rowValues);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IllegalArgumentException on bad sizes
+            throw new IOException("Corrupt stoichiometric matrix file: " + path, e);
+        }
+    }
+
+    private static byte[][] encode(String[] ids) {
+        byte[][] ret = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            ret[i] = ids[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return ret;
+    }
+
+    private static long stringsSize(byte[][] strings) {
+        long size = 4;
+        for (byte[] s : strings) {
+            size += 4 + s.length;
+        }
+        return size;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static void putStrings(ByteBuffer buf, byte[][] strings) {
+        buf.putInt(strings.length);
+        for (byte[] s : strings) {
+            buf.putInt(s.length).put(s);
+        }
+    }
+
+    private static List<String> getStrings(ByteBuffer buf) {
+        int count = buf.getInt();
+        if (count < 0) {
+            throw new IllegalArgumentException("Negative count");
+        }
+        List<String> ret = new ArrayList<String>(Math.min(count, buf.remaining() / 4));
+        for (int i = 0; i < count; i++) {
+            byte[] s = new byte[buf.getInt()];
+            buf.get(s);
+            ret.add(new String(s, StandardCharsets.UTF_8));
+        }
+        return ret;
+    }
+
+    // sections start on 8 byte boundaries so that the doubles are aligned
+    private static void pad(ByteBuffer buf) {
+        while (buf.position() % 8 != 0) {
+            buf.put((byte) 0);
+        }
+    }
+
+    private static void skipPad(ByteBuffer buf) {
+        buf.position((int) align(buf.position()));
+    }
+
+    private static void putInts(ByteBuffer buf, IntBuffer src) {
+        buf.asIntBuffer().put(src.duplicate().position(0));
+        buf.position(buf.position() + 4 * src.limit());
+        pad(buf);
+    }
+
+    private static void putDoubles(ByteBuffer buf, DoubleBuffer src) {
+        buf.asDoubleBuffer().put(src.duplicate().position(0));
+        buf.position(buf.position() + 8 * src.limit());
+    }
+
+    private static IntBuffer ints(ByteBuffer buf, int count) {
+        ByteBuffer slice = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(4 * count);
+        buf.position((int) align(buf.position() + 4L * count));
+        return slice.asIntBuffer();
+    }
+
+    private static DoubleBuffer doubles(ByteBuffer buf, int count) {
+        ByteBuffer slice = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(8 * count);
+        buf.position(buf.position() + 8 * count);
+        return slice.asDoubleBuffer();
+    }
+
+    @Override
+    public String toString() {
+        return "StoichiometricMatrix [compounds=" + getRowCount() + ", reactions=" + getReactionCount() +
+                ", biomasses=" + (getColumnCount() - reactionCount) + ", compartments=" + getCompartmentCount() +
+                ", nonZeros=" + getNonZeroCount() + "]";
+    }
+}
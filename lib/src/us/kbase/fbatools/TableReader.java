@@ -0,0 +1,57 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A table read one row at a time, with a header row naming the columns:
+ * a {@link TsvReader} or a sheet of an {@link XlsxReader}. Column names are
+ * matched case insensitively and without underscores, as the service's
+ * table import does.
+ */
+public interface TableReader extends Closeable {
+    /** Get the column names, as in the header row.
+     * @return the column names.
+     */
+    List<String> getColumns();
+
+    /** Get the position of a column.
+     * @param column the column name.
+     * @return the position, or -1 if the table has no such column.
+     */
+    int indexOf(String column);
+
+    /** Moves to the next non blank row.
+     * @return false at the end of the table.
+     * @throws IOException if the table cannot be read.
+     */
+    boolean next() throws IOException;
+
+    /** Get the number of fields in the current row, which may be fewer than
+     * the columns.
+     * @return the field count.
+     */
+    int getFieldCount();
+
+    /** Get a field of the current row.
+     * @param column the column position.
+     * @return the trimmed field, or null if the row has no such field or
+     * the column is -1.
+     */
+    String getString(int column);
+
+    /** Get a numeric field of the current row.
+     * @param column the column position.
+     * @param dflt the value of a missing or empty field.
+     * @return the value.
+     * @throws NumberFormatException if the field is not a number.
+     */
+    double getDouble(int column, double dflt);
+
+    /** Check whether a field of the current row is missing or empty.
+     * @param column the column position.
+     * @return true if there is no value.
+     */
+    boolean isEmpty(int column);
+}
@@ -0,0 +1,19 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A table written one row at a time after its header row: a
+ * {@link TsvWriter} or a sheet of an {@link XlsxWriter}.
+ */
+public interface TableWriter extends Closeable {
+    /** Writes a row.
+     * @param values the field values, one per column; null is an empty
+     * field.
+     * @throws IOException if the table cannot be written.
+     * @throws IllegalArgumentException if the number of values is not the
+     * number of columns.
+     */
+    void writeRow(Object... values) throws IOException;
+}
@@ -0,0 +1,340 @@
+package us.kbase.fbatools;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Streaming reader of the tab or comma separated tables the service
+ * imports and exports, such as the reactions and compounds files of
+ * {@link ModelTsvFiles} and {@link FBATsvFiles}.</p>
+ * <p>The file is memory mapped a window at a time and scanned in place:
+ * {@link #next()} only finds the field boundaries of the next row, and a
+ * field is decoded to a String when it is asked for. Memory use is bounded
+ * by the window whatever the size of the file.</p>
+ * <p>Parsing follows the service's table import: the delimiter is a tab if
+ * the header line has one, otherwise a comma; column names are matched
+ * case insensitively and without underscores; fields are trimmed of
+ * surrounding white space; blank lines are skipped; and \n, \r\n and \r
+ * line endings are all accepted.</p>
+ * <pre>
+ * try (TsvReader r = TsvReader.open(path)) {
+ *     int id = r.indexOf("id");
+ *     int flux = r.indexOf("flux");
+ *     while (r.next()) {
+ *         System.out.println(r.getString(id) + " " + r.getDouble(flux, 0));
+ *     }
+ * }
+ * </pre>
+ * <p>A reader is not thread safe.</p>
+ */
+public class TsvReader implements TableReader {
+    private static final int DEFAULT_WINDOW = 64 << 20;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private int window;
+    private MappedByteBuffer buf = null;
+    // file offset of the start of buf
+    private long bufStart = 0;
+    // position in buf of the next row
+    private int pos = 0;
+    private boolean skipNewline = false;
+    private byte delimiter;
+    private final List<String> columns;
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+    // field boundaries of the current row, in buf
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount = 0;
+    private long lineNumber = 0;
+    private byte[] scratch = new byte[256];
+
+    private TsvReader(Path path, int window) throws IOException {
+        this.path = path;
+        this.window = window;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            columns = readHeader();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Opens a table and reads its header line.
+     * @param path the file.
+     * @return the reader, positioned before the first row.
+     * @throws IOException if the file cannot be read or has no header with
+     * a tab or comma.
+     */
+    public static TsvReader open(Path path) throws IOException {
+        return new TsvReader(path, DEFAULT_WINDOW);
+    }
+
+    /** Opens a table mapping a given number of bytes at a time. A line
+     * longer than the window doubles it.
+     * @param path the file.
+     * @param window the initial window size in bytes.
+     * @return the reader, positioned before the first row.
+     * @throws IOException if the file cannot be read or has no header with
+     * a tab or comma.
+     */
+    public static TsvReader open(Path path, int window) throws IOException {
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must be at least one byte");
+        }
+        return new TsvReader(path, window);
+    }
+
+    private List<String> readHeader() throws IOException {
+        map(0);
+        if (buf.limit() < 3 && size > buf.limit()) {
+            // too small a window to hold a byte order mark
+            window = 3;
+            map(0);
+        }
+        // a UTF-8 byte order mark
+        if (buf.limit() >= 3 && (buf.get(0) & 0xff) == 0xef && (buf.get(1) & 0xff) == 0xbb &&
+                (buf.get(2) & 0xff) == 0xbf) {
+            pos = 3;
+        }
+        int end = lineEnd();
+        if (end < 0) {
+            throw new IOException("Empty table file: " + path);
+        }
+        delimiter = '\t';
+        if (indexOf(pos, end, (byte) '\t') < 0) {
+            if (indexOf(pos, end, (byte) ',') < 0) {
+                throw new IOException(path + " either does not use commas or tabs as a separator");
+            }
+            delimiter = ',';
+        }
+        split(end);
+        advance(end);
+        List<String> cols = new ArrayList<String>();
+        for (int c = 0; c < fieldCount; c++) {
+            String col = decode(starts[c], ends[c]);
+            cols.add(col);
+            String key = normalize(col);
+            if (!index.containsKey(key)) {
+                index.put(key, c);
+            }
+        }
+        fieldCount = 0;
+        return Collections.unmodifiableList(cols);
+    }
+
+    // the heading form the service matches on
+    static String normalize(String column) {
+        return column.replace("_", "").trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public int indexOf(String column) {
+        Integer c = index.get(normalize(column));
+        return c == null ? -1 : c;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (true) {
+            int end = lineEnd();
+            if (end < 0) {
+                fieldCount = 0;
+                return false;
+            }
+            lineNumber++;
+            if (isBlank(pos, end)) {
+                advance(end);
+                continue;
+            }
+            split(end);
+            advance(end);
+            return true;
+        }
+    }
+
+    /** Get the line number of the current row; the header is line 1.
+     * @return the line number.
+     */
+    public long getLineNumber() {
+        return lineNumber + 1;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String getString(int column) {
+        if (column < 0 || column >= fieldCount) {
+            return null;
+        }
+        return decode(starts[column], ends[column]);
+    }
+
+    /** Get a field of the current row by column name.
+     * @param column the column name.
+     * @return the trimmed field, or null if there is no such field.
+     */
+    public String getString(String column) {
+        return getString(indexOf(column));
+    }
+
+    @Override
+    public double getDouble(int column, double dflt) {
+        if (column < 0 || column >= fieldCount || starts[column] == ends[column]) {
+            return dflt;
+        }
+        try {
+            return Double.parseDouble(decode(starts[column], ends[column]));
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Not a number in column " + columns.get(column) + " at line " +
+                    getLineNumber() + " of " + path + ": " + getString(column));
+        }
+    }
+
+    @Override
+    public boolean isEmpty(int column) {
+        return column < 0 || column >= fieldCount || starts[column] == ends[column];
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        channel.close();
+    }
+
+    private void map(long from) throws IOException {
+        bufStart = from;
+        pos = 0;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(window, size - from));
+    }
+
+    /* Finds the end of the line starting at pos, remapping the window from
+     * pos if the line runs past it. Returns -1 at the end of the file.
+     */
+    private int lineEnd() throws IOException {
+        while (true) {
+            if (bufStart + pos >= size) {
+                return -1;
+            }
+            int limit = buf.limit();
+            if (skipNewline && pos < limit) {
+                skipNewline = false;
+                if (buf.get(pos) == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            for (int p = pos; p < limit; p++) {
+                byte b = buf.get(p);
+                if (b == '\n' || b == '\r') {
+                    return p;
+                }
+            }
+            if (bufStart + limit >= size) {
+                // last line without a line ending
+                return limit;
+            }
+            if (pos == 0) {
+                // a line longer than the window
+                if (window > Integer.MAX_VALUE / 2) {
+                    throw new IOException("Line " + (lineNumber + 1) + " of " + path + " is too long");
+                }
+                window *= 2;
+            }
+            map(bufStart + pos);
+        }
+    }
+
+    // moves pos past the line ending at end
+    private void advance(int end) {
+        pos = end;
+        if (pos < buf.limit() && buf.get(pos) == '\r') {
+            pos++;
+            // the \n of a \r\n may be in the next window
+            skipNewline = true;
+        }
+        if (pos < buf.limit() && buf.get(pos) == '\n') {
+            pos++;
+            skipNewline = false;
+        }
+    }
+
+    private void split(int end) {
+        fieldCount = 0;
+        int from = pos;
+        for (int p = pos; p <= end; p++) {
+            if (p == end || buf.get(p) == delimiter) {
+                if (fieldCount == starts.length) {
+                    starts = Arrays.copyOf(starts, fieldCount * 2);
+                    ends = Arrays.copyOf(ends, fieldCount * 2);
+                }
+                int s = from;
+                int e = p;
+                while (s < e && isSpace(buf.get(s))) {
+                    s++;
+                }
+                while (e > s && isSpace(buf.get(e - 1))) {
+                    e--;
+                }
+                starts[fieldCount] = s;
+                ends[fieldCount++] = e;
+                from = p + 1;
+            }
+        }
+    }
+
+    private int indexOf(int from, int end, byte b) {
+        for (int p = from; p < end; p++) {
+            if (buf.get(p) == b) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isBlank(int from, int end) {
+        for (int p = from; p < end; p++) {
+            if (!isSpace(buf.get(p))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\f' || b == 0x0b;
+    }
+
+    private String decode(int from, int to) {
+        int len = to - from;
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        for (int p = 0; p < len; p++) {
+            scratch[p] = buf.get(from + p);
+        }
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+}
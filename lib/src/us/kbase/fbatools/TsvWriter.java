@@ -0,0 +1,90 @@
+package us.kbase.fbatools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * <p>Streaming writer of tab separated tables in the layout the service
+ * imports and exports; the counterpart of {@link TsvReader}.</p>
+ * <p>Rows are written straight to a buffered stream as they are given.
+ * Tabs and line breaks inside a value are replaced by spaces, null is
+ * written as an empty field, and whole numbers are written without a
+ * fraction, as the service does.</p>
+ * <p>A writer is not thread safe.</p>
+ */
+public class TsvWriter implements TableWriter {
+    private final Writer out;
+    private final int columnCount;
+
+    /** Constructs a writer and writes the header line. The stream is closed
+     * with the writer.
+     * @param out the stream to write the table to.
+     * @param columns the column names.
+     * @throws IOException if the stream cannot be written.
+     */
+    public TsvWriter(OutputStream out, List<String> columns) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.columnCount = columns.size();
+        writeRow(columns.toArray());
+    }
+
+    /** Creates a writer of a file, replacing any existing file.
+     * @param path the file.
+     * @param columns the column names.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static TsvWriter create(Path path, List<String> columns) throws IOException {
+        return new TsvWriter(Files.newOutputStream(path), columns);
+    }
+
+    @Override
+    public void writeRow(Object... values) throws IOException {
+        if (values.length != columnCount) {
+            throw new IllegalArgumentException("Expected " + columnCount + " values, got " + values.length);
+        }
+        for (int c = 0; c < values.length; c++) {
+            if (c > 0) {
+                out.write('\t');
+            }
+            writeValue(values[c]);
+        }
+        out.write('\n');
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                out.write(Long.toString((long) d));
+            } else {
+                out.write(Double.toString(d));
+            }
+            return;
+        }
+        String s = value.toString();
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            out.write(ch == '\t' || ch == '\n' || ch == '\r' ? ' ' : ch);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
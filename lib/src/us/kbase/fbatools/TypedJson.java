@@ -0,0 +1,244 @@
+package us.kbase.fbatools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Helpers shared by the typed domain objects {@link FbaModel},
+ * {@link FbaResult} and {@link Media}, which are read straight off the JSON
+ * token stream without building a tree first.
+ */
+final class TypedJson {
+
+    private TypedJson() {}
+
+    /** Reads one record; the parser is on its START_OBJECT. */
+    interface RecordParser<T> {
+        T read(JsonParser p) throws IOException;
+    }
+
+    /* Interns the strings of one object, so the many records naming the
+     * same compound, compartment or variable type share a single string.
+     */
+    static final class Ids {
+        private final Map<String, String> pool = new HashMap<String, String>();
+
+        String intern(String s) {
+            if (s == null) {
+                return null;
+            }
+            String prev = pool.putIfAbsent(s, s);
+            return prev == null ? s : prev;
+        }
+    }
+
+    /* The fields of a record that have no typed field, kept as the UTF-8
+     * bytes of a JSON object and parsed on first access.
+     */
+    static final class Extras {
+        private volatile byte[] raw;
+        private volatile JsonNode node = null;
+
+        private Extras(byte[] raw) {
+            this.raw = raw;
+        }
+
+        static JsonNode get(Extras extras) {
+            if (extras == null) {
+                return JsonRpcCodec.mapper().createObjectNode();
+            }
+            JsonNode n = extras.node;
+            if (n == null) {
+                synchronized (extras) {
+                    n = extras.node;
+                    if (n == null) {
+                        try {
+                            n = JsonRpcCodec.mapper().readTree(extras.raw);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        extras.node = n;
+                        extras.raw = null;
+                    }
+                }
+            }
+            return n;
+        }
+    }
+
+    /* Collects the untyped fields of the record being read. One generator
+     * is kept for all records, since creating one per record costs more
+     * than the record itself.
+     */
+    static final class ExtrasBuilder {
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+        private final JsonGenerator gen;
+        private boolean open = false;
+
+        ExtrasBuilder() throws IOException {
+            gen = JsonRpcCodec.mapper().getFactory().createGenerator(buf);
+            gen.setRootValueSeparator(null);
+        }
+
+        void add(String name, JsonParser p) throws IOException {
+            if (!open) {
+                gen.writeStartObject();
+                open = true;
+            }
+            gen.writeFieldName(name);
+            gen.copyCurrentStructure(p);
+        }
+
+        Extras build() throws IOException {
+            if (!open) {
+                return null;
+            }
+            gen.writeEndObject();
+            gen.flush();
+            open = false;
+            byte[] raw = buf.toByteArray();
+            buf.reset();
+            return new Extras(raw);
+        }
+    }
+
+    /* The modelcompound_ref and coefficient pairs of a reaction or biomass. */
+    static final class Terms {
+        String[] ids = new String[8];
+        double[] coefficients = new double[8];
+        int size = 0;
+
+        void add(String id, double coefficient) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                coefficients = Arrays.copyOf(coefficients, size * 2);
+            }
+            ids[size] = id;
+            coefficients[size++] = coefficient;
+        }
+    }
+
+    static JsonParser parser(InputStream in) throws IOException {
+        JsonParser p = JsonRpcCodec.mapper().getFactory().createParser(in);
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            p.close();
+            throw new IOException("Expected a JSON object at " + p.getCurrentLocation());
+        }
+        return p;
+    }
+
+    static JsonParser parser(JsonNode node) throws IOException {
+        JsonParser p = node.traverse(JsonRpcCodec.mapper());
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object");
+        }
+        return p;
+    }
+
+    /** Moves to the value of the next field of the current object.
+     * @return the field name, or null at the end of the object.
+     */
+    static String nextField(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.FIELD_NAME) {
+            return null;
+        }
+        String name = p.getCurrentName();
+        p.nextToken();
+        return name;
+    }
+
+    // the current value as a string; containers are skipped and read as null
+    static String text(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return null;
+        }
+        return t == JsonToken.VALUE_NULL ? null : p.getText();
+    }
+
+    // the current value as a number, NaN if it is missing or not a number
+    static double number(JsonParser p) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT) {
+            return p.getDoubleValue();
+        } else if (t == JsonToken.VALUE_STRING) {
+            try {
+                return Double.parseDouble(p.getText().trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        } else if (t == JsonToken.VALUE_TRUE) {
+            return 1;
+        } else if (t == JsonToken.VALUE_FALSE) {
+            return 0;
+        }
+        p.skipChildren();
+        return Double.NaN;
+    }
+
+    // a KBase bool, which is usually an int
+    static boolean bool(JsonParser p) throws IOException {
+        double d = number(p);
+        return !Double.isNaN(d) && d != 0;
+    }
+
+    static <T> List<T> array(JsonParser p, RecordParser<T> records) throws IOException {
+        ArrayList<T> list = new ArrayList<T>();
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return Collections.unmodifiableList(list);
+        }
+        for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY && t != null; t = p.nextToken()) {
+            if (t == JsonToken.START_OBJECT) {
+                list.add(records.read(p));
+            } else {
+                p.skipChildren();
+            }
+        }
+        list.trimToSize();
+        return Collections.unmodifiableList(list);
+    }
+
+    // an array of {modelcompound_ref, coefficient} objects
+    static Terms terms(JsonParser p, Ids ids) throws IOException {
+        Terms terms = new Terms();
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            p.skipChildren();
+            return terms;
+        }
+        for (JsonToken t = p.nextToken(); t != JsonToken.END_ARRAY && t != null; t = p.nextToken()) {
+            if (t != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            String cpd = null;
+            double coef = 0;
+            for (String f = nextField(p); f != null; f = nextField(p)) {
+                if (f.equals("modelcompound_ref")) {
+                    String ref = text(p);
+                    cpd = ref == null ? null : ids.intern(FbaProblem.refId(ref));
+                } else if (f.equals("coefficient")) {
+                    coef = number(p);
+                } else {
+                    p.skipChildren();
+                }
+            }
+            if (cpd != null) {
+                terms.add(cpd, coef);
+            }
+        }
+        return terms;
+    }
+}
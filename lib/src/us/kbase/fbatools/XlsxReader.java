@@ -0,0 +1,404 @@
+package us.kbase.fbatools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * <p>Streaming reader of .xlsx workbooks, such as those written by
+ * model_to_excel_file and fba_to_excel_file or given to
+ * excel_file_to_model.</p>
+ * <p>A workbook is a zip of XML parts. The sheets are read with a StAX
+ * pull parser straight from the compressed entries, one row at a time, so
+ * memory use does not grow with the number of rows; only the shared string
+ * table of the workbook is held in memory, since any cell may refer to any
+ * of its entries. Each sheet is a {@link TableReader} whose first non blank
+ * row is the header.</p>
+ * <pre>
+ * try (XlsxReader wb = XlsxReader.open(path);
+ *         TableReader sheet = wb.openSheet("ModelReactions")) {
+ *     int id = sheet.indexOf("id");
+ *     while (sheet.next()) {
+ *         System.out.println(sheet.getString(id));
+ *     }
+ * }
+ * </pre>
+ * <p>Only cell values are read: numbers as written in the file, booleans as
+ * 1 and 0, and cached formula results; styles and dates are not
+ * interpreted. A reader is not thread safe.</p>
+ */
+public class XlsxReader implements Closeable {
+    static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private final Path path;
+    private final ZipFile zip;
+    private final XMLInputFactory factory;
+    // sheet name to zip entry name, in workbook order
+    private final Map<String, String> sheets = new LinkedHashMap<String, String>();
+    private List<String> sharedStrings = null;
+
+    private XlsxReader(Path path) throws IOException {
+        this.path = path;
+        zip = new ZipFile(path.toFile());
+        factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            readWorkbook();
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /** Opens a workbook and reads its list of sheets.
+     * @param path the .xlsx file.
+     * @return the reader.
+     * @throws IOException if the file cannot be read or is not a workbook.
+     */
+    public static XlsxReader open(Path path) throws IOException {
+        return new XlsxReader(path);
+    }
+
+    private void readWorkbook() throws IOException {
+        Map<String, String> targets = new HashMap<String, String>();
+        try (InputStream in = entry("xl/_rels/workbook.xml.rels", true)) {
+            XMLStreamReader r = parse(in, "xl/_rels/workbook.xml.rels");
+            while (r.hasNext()) {
+                if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("Relationship")) {
+                    String target = r.getAttributeValue(null, "Target");
+                    // relative to xl/, or absolute within the package
+                    targets.put(r.getAttributeValue(null, "Id"),
+                            target.startsWith("/") ? target.substring(1) : "xl/" + target);
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid workbook relationships in " + path, e);
+        }
+        try (InputStream in = entry("xl/workbook.xml", true)) {
+            XMLStreamReader r = parse(in, "xl/workbook.xml");
+            while (r.hasNext()) {
+                if (r.next() == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("sheet")) {
+                    String target = targets.get(r.getAttributeValue(REL_NS, "id"));
+                    if (target != null) {
+                        sheets.put(r.getAttributeValue(null, "name"), target);
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid workbook in " + path, e);
+        }
+    }
+
+    /** Get the names of the sheets.
+     * @return the sheet names, in workbook order.
+     */
+    public List<String> getSheetNames() {
+        return Collections.unmodifiableList(new ArrayList<String>(sheets.keySet()));
+    }
+
+    /** Opens a sheet and reads its header row. Several sheets may be open at
+     * once.
+     * @param name the sheet name.
+     * @return the sheet, positioned before its first row after the header.
+     * @throws IOException if the sheet cannot be read.
+     * @throws IllegalArgumentException if the workbook has no such sheet.
+     */
+    public TableReader openSheet(String name) throws IOException {
+        String entry = sheets.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("No sheet " + name + " in " + path);
+        }
+        if (sharedStrings == null) {
+            sharedStrings = readSharedStrings();
+        }
+        InputStream in = entry(entry, true);
+        try {
+            return new Sheet(name, in, parse(in, entry));
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /** Finds the first sheet whose name contains a word, ignoring case, as
+     * excel_file_to_model finds its Reactions and Compounds sheets.
+     * @param word the word.
+     * @return the sheet name, or null if no sheet matches.
+     */
+    public String findSheet(String word) {
+        String w = word.toLowerCase();
+        for (String name : sheets.keySet()) {
+            if (name.toLowerCase().contains(w)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private List<String> readSharedStrings() throws IOException {
+        List<String> strings = new ArrayList<String>();
+        try (InputStream in = entry("xl/sharedStrings.xml", false)) {
+            if (in == null) {
+                return strings;
+            }
+            XMLStreamReader r = parse(in, "xl/sharedStrings.xml");
+            StringBuilder sb = new StringBuilder();
+            while (r.hasNext()) {
+                int e = r.next();
+                if (e == XMLStreamConstants.START_ELEMENT) {
+                    String n = r.getLocalName();
+                    if (n.equals("si")) {
+                        sb.setLength(0);
+                    } else if (n.equals("t")) {
+                        sb.append(r.getElementText());
+                    } else if (n.equals("rPh")) {
+                        // phonetic runs are not part of the text
+                        skipElement(r);
+                    }
+                } else if (e == XMLStreamConstants.END_ELEMENT && r.getLocalName().equals("si")) {
+                    strings.add(sb.toString());
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid shared strings in " + path, e);
+        }
+        return strings;
+    }
+
+    private InputStream entry(String entry, boolean required) throws IOException {
+        ZipEntry e = zip.getEntry(entry);
+        if (e == null) {
+            if (required) {
+                throw new IOException("Not an xlsx workbook, missing " + entry + ": " + path);
+            }
+            return null;
+        }
+        return zip.getInputStream(e);
+    }
+
+    private XMLStreamReader parse(InputStream in, String entry) throws IOException {
+        try {
+            return factory.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid XML in " + entry + " of " + path, e);
+        }
+    }
+
+    private static void skipElement(XMLStreamReader r) throws XMLStreamException {
+        for (int depth = 1; depth > 0;) {
+            int e = r.next();
+            if (e == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (e == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /** Closes the workbook and any sheets still open. */
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    // zero based column of a cell reference such as AB12
+    static int column(String ref) {
+        int col = 0;
+        for (int i = 0; i < ref.length(); i++) {
+            char ch = ref.charAt(i);
+            if (ch < 'A' || ch > 'Z') {
+                break;
+            }
+            col = col * 26 + (ch - 'A' + 1);
+        }
+        return col - 1;
+    }
+
+    private class Sheet implements TableReader {
+        private final String name;
+        private final InputStream in;
+        private final XMLStreamReader r;
+        private final List<String> columns;
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+        private String[] fields = new String[16];
+        private int fieldCount = 0;
+        private boolean done = false;
+
+        Sheet(String name, InputStream in, XMLStreamReader r) throws IOException {
+            this.name = name;
+            this.in = in;
+            this.r = r;
+            if (!next()) {
+                columns = Collections.emptyList();
+                return;
+            }
+            columns = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(fields).subList(0,
+                    fieldCount)));
+            for (int c = 0; c < fieldCount; c++) {
+                String key = TsvReader.normalize(fields[c] == null ? "" : fields[c]);
+                if (!index.containsKey(key)) {
+                    index.put(key, c);
+                }
+            }
+        }
+
+        @Override
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        @Override
+        public int indexOf(String column) {
+            Integer c = index.get(TsvReader.normalize(column));
+            return c == null ? -1 : c;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            try {
+                while (!done) {
+                    if (readRow()) {
+                        return true;
+                    }
+                }
+                fieldCount = 0;
+                return false;
+            } catch (XMLStreamException e) {
+                throw new IOException("Invalid XML in sheet " + name + " of " + path, e);
+            }
+        }
+
+        // reads the next row element; false if it is blank or there is none
+        private boolean readRow() throws XMLStreamException {
+            while (r.hasNext()) {
+                int e = r.next();
+                if (e == XMLStreamConstants.START_ELEMENT && r.getLocalName().equals("row")) {
+                    break;
+                }
+                if (e == XMLStreamConstants.END_ELEMENT && r.getLocalName().equals("sheetData")) {
+                    done = true;
+                    return false;
+                }
+            }
+            if (!r.hasNext()) {
+                done = true;
+                return false;
+            }
+            fieldCount = 0;
+            int next = 0;
+            boolean blank = true;
+            while (true) {
+                int e = r.next();
+                if (e == XMLStreamConstants.END_ELEMENT && r.getLocalName().equals("row")) {
+                    break;
+                }
+                if (e != XMLStreamConstants.START_ELEMENT || !r.getLocalName().equals("c")) {
+                    continue;
+                }
+                String ref = r.getAttributeValue(null, "r");
+                int col = ref == null ? next : column(ref);
+                String value = cellValue(r.getAttributeValue(null, "t"));
+                next = col + 1;
+                if (value == null || value.isEmpty()) {
+                    continue;
+                }
+                if (col >= fields.length) {
+                    fields = Arrays.copyOf(fields, Math.max(col + 1, fields.length * 2));
+                }
+                if (col < fieldCount) {
+                    // out of order; keep the first value
+                    continue;
+                }
+                // cells skipped since the last one are empty
+                Arrays.fill(fields, fieldCount, col, "");
+                fields[col] = value;
+                fieldCount = col + 1;
+                blank = false;
+            }
+            return !blank;
+        }
+
+        // reads a c element up to its end; the trimmed value, or null
+        private String cellValue(String type) throws XMLStreamException {
+            String value = null;
+            StringBuilder inline = null;
+            while (true) {
+                int e = r.next();
+                if (e == XMLStreamConstants.END_ELEMENT && r.getLocalName().equals("c")) {
+                    break;
+                }
+                if (e != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String n = r.getLocalName();
+                if (n.equals("v")) {
+                    value = r.getElementText();
+                } else if (n.equals("t")) {
+                    // text of an inline string
+                    if (inline == null) {
+                        inline = new StringBuilder();
+                    }
+                    inline.append(r.getElementText());
+                } else if (n.equals("rPh") || n.equals("f")) {
+                    skipElement(r);
+                }
+            }
+            if ("inlineStr".equals(type)) {
+                value = inline == null ? null : inline.toString();
+            } else if ("s".equals(type) && value != null) {
+                int i = Integer.parseInt(value.trim());
+                value = i >= 0 && i < sharedStrings.size() ? sharedStrings.get(i) : null;
+            }
+            return value == null ? null : value.trim();
+        }
+
+        @Override
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        @Override
+        public String getString(int column) {
+            return column < 0 || column >= fieldCount ? null : fields[column];
+        }
+
+        @Override
+        public double getDouble(int column, double dflt) {
+            if (isEmpty(column)) {
+                return dflt;
+            }
+            try {
+                return Double.parseDouble(fields[column]);
+            } catch (NumberFormatException e) {
+                throw new NumberFormatException("Not a number in column " + (column + 1) + " of sheet " + name +
+                        ": " + fields[column]);
+            }
+        }
+
+        @Override
+        public boolean isEmpty(int column) {
+            return column < 0 || column >= fieldCount || fields[column].isEmpty();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package us.kbase.fbatools;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * <p>Streaming writer of .xlsx workbooks; the counterpart of
+ * {@link XlsxReader}.</p>
+ * <p>Sheets are written one after the other, each straight into its
+ * compressed zip entry as rows are given, so only the current row is ever
+ * held in memory. Text is written as inline strings rather than through a
+ * shared string table, which would have to be kept until the end, and
+ * numbers as numeric cells. The workbook parts that list the sheets are
+ * written when the workbook is closed.</p>
+ * <pre>
+ * try (XlsxWriter wb = XlsxWriter.create(path)) {
+ *     TableWriter sheet = wb.beginSheet("Fluxes", Arrays.asList("id", "flux"));
+ *     for (FBAReactionVariable v : fba.getFBAReactionVariables()) {
+ *         sheet.writeRow(v.getModelreactionRef(), v.getValue());
+ *     }
+ * }
+ * </pre>
+ * <p>A writer is not thread safe.</p>
+ */
+public class XlsxWriter implements Closeable {
+    private static final String PKG_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String CT_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+    private static final String WORKSHEET_TYPE =
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml";
+    // characters Excel refuses in a sheet name
+    private static final String BAD_SHEET_CHARS = "[]:*?/\\";
+
+    private final ZipOutputStream zip;
+    private final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+    private final List<String> sheetNames = new ArrayList<String>();
+    private SheetWriter current = null;
+    private OutputStream entry = null;
+    private boolean closed = false;
+
+    /** Constructs a writer of a workbook. The stream is closed with the
+     * writer.
+     * @param out the stream to write the workbook to.
+     */
+    public XlsxWriter(OutputStream out) {
+        zip = new ZipOutputStream(out);
+    }
+
+    /** Creates a writer of a workbook file, replacing any existing file.
+     * @param path the .xlsx file.
+     * @return the writer.
+     * @throws IOException if the file cannot be created.
+     */
+    public static XlsxWriter create(Path path) throws IOException {
+        return new XlsxWriter(Files.newOutputStream(path));
+    }
+
+    /** Starts a sheet and writes its header row, ending the previous sheet.
+     * @param name the sheet name, unique in the workbook, of at most 31
+     * characters and none of []:*?/\.
+     * @param columns the column names.
+     * @return the sheet, valid until the next sheet is begun or the workbook
+     * closed. Closing it ends the sheet.
+     * @throws IOException if the workbook cannot be written.
+     * @throws IllegalArgumentException if the name is not a valid sheet name.
+     */
+    public TableWriter beginSheet(String name, List<String> columns) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The workbook is closed");
+        }
+        checkSheetName(name);
+        endSheet();
+        sheetNames.add(name);
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        current = new SheetWriter(columns.size());
+        current.writeRow(columns.toArray());
+        return current;
+    }
+
+    private void checkSheetName(String name) {
+        if (name.isEmpty() || name.length() > 31) {
+            throw new IllegalArgumentException("Sheet names must be 1 to 31 characters: " + name);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (BAD_SHEET_CHARS.indexOf(name.charAt(i)) >= 0) {
+                throw new IllegalArgumentException("Invalid character in sheet name: " + name);
+            }
+        }
+        for (String s : sheetNames) {
+            if (s.equalsIgnoreCase(name)) {
+                throw new IllegalArgumentException("Duplicate sheet name: " + name);
+            }
+        }
+    }
+
+    private void endSheet() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    /** Ends the last sheet, writes the parts listing the sheets and closes
+     * the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            endSheet();
+            writePackageParts();
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void writePackageParts() throws IOException {
+        try {
+            XMLStreamWriter w = part("[Content_Types].xml");
+            w.writeStartElement("Types");
+            w.writeDefaultNamespace(CT_NS);
+            defaultType(w, "rels", "application/vnd.openxmlformats-package.relationships+xml");
+            defaultType(w, "xml", "application/xml");
+            overrideType(w, "/xl/workbook.xml",
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml");
+            for (int i = 1; i <= sheetNames.size(); i++) {
+                overrideType(w, "/xl/worksheets/sheet" + i + ".xml", WORKSHEET_TYPE);
+            }
+            endPart(w);
+
+            w = part("_rels/.rels");
+            w.writeStartElement("Relationships");
+            w.writeDefaultNamespace(PKG_REL_NS);
+            relationship(w, "rId1", XlsxReader.REL_NS + "/officeDocument", "xl/workbook.xml");
+            endPart(w);
+
+            w = part("xl/workbook.xml");
+            w.writeStartElement("workbook");
+            w.writeDefaultNamespace(XlsxReader.MAIN_NS);
+            w.writeNamespace("r", XlsxReader.REL_NS);
+            w.writeStartElement("sheets");
+            for (int i = 1; i <= sheetNames.size(); i++) {
+                w.writeEmptyElement("sheet");
+                w.writeAttribute("name", sheetNames.get(i - 1));
+                w.writeAttribute("sheetId", Integer.toString(i));
+                w.writeAttribute("r", XlsxReader.REL_NS, "id", "rId" + i);
+            }
+            w.writeEndElement();
+            endPart(w);
+
+            w = part("xl/_rels/workbook.xml.rels");
+            w.writeStartElement("Relationships");
+            w.writeDefaultNamespace(PKG_REL_NS);
+            for (int i = 1; i <= sheetNames.size(); i++) {
+                relationship(w, "rId" + i, XlsxReader.REL_NS + "/worksheet", "worksheets/sheet" + i + ".xml");
+            }
+            endPart(w);
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to write the workbook", e);
+        }
+    }
+
+    private XMLStreamWriter part(String name) throws IOException, XMLStreamException {
+        zip.putNextEntry(new ZipEntry(name));
+        XMLStreamWriter w = factory.createXMLStreamWriter(entryStream(), "UTF-8");
+        w.writeStartDocument("UTF-8", "1.0");
+        return w;
+    }
+
+    private void endPart(XMLStreamWriter w) throws IOException, XMLStreamException {
+        w.writeEndDocument();
+        w.flush();
+        w.close();
+        entry.flush();
+        zip.closeEntry();
+    }
+
+    private static void defaultType(XMLStreamWriter w, String extension, String type) throws XMLStreamException {
+        w.writeEmptyElement("Default");
+        w.writeAttribute("Extension", extension);
+        w.writeAttribute("ContentType", type);
+    }
+
+    private static void overrideType(XMLStreamWriter w, String part, String type) throws XMLStreamException {
+        w.writeEmptyElement("Override");
+        w.writeAttribute("PartName", part);
+        w.writeAttribute("ContentType", type);
+    }
+
+    private static void relationship(XMLStreamWriter w, String id, String type, String target)
+            throws XMLStreamException {
+        w.writeEmptyElement("Relationship");
+        w.writeAttribute("Id", id);
+        w.writeAttribute("Type", type);
+        w.writeAttribute("Target", target);
+    }
+
+    /* A buffered stream into the current zip entry. The XML writers write
+     * many small pieces, and must not close the zip stream under them.
+     */
+    private OutputStream entryStream() {
+        entry = new BufferedOutputStream(new FilterOutputStream(zip) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, 1 << 16);
+        return entry;
+    }
+
+    // "A", "B", ... "Z", "AA", ...
+    static String columnName(int col) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = col + 1; c > 0; c = (c - 1) / 26) {
+            sb.append((char) ('A' + (c - 1) % 26));
+        }
+        return sb.reverse().toString();
+    }
+
+    private class SheetWriter implements TableWriter {
+        private final int columnCount;
+        private final String[] refs;
+        private final XMLStreamWriter w;
+        private int row = 0;
+        private boolean ended = false;
+
+        SheetWriter(int columnCount) throws IOException {
+            this.columnCount = columnCount;
+            refs = new String[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                refs[c] = columnName(c);
+            }
+            try {
+                w = factory.createXMLStreamWriter(entryStream(), "UTF-8");
+                w.writeStartDocument("UTF-8", "1.0");
+                w.writeStartElement("worksheet");
+                w.writeDefaultNamespace(XlsxReader.MAIN_NS);
+                w.writeStartElement("sheetData");
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to write the sheet", e);
+            }
+        }
+
+        @Override
+        public void writeRow(Object... values) throws IOException {
+            if (ended) {
+                throw new IllegalStateException("The sheet has ended");
+            }
+            if (values.length != columnCount) {
+                throw new IllegalArgumentException("Expected " + columnCount + " values, got " + values.length);
+            }
+            row++;
+            try {
+                w.writeStartElement("row");
+                w.writeAttribute("r", Integer.toString(row));
+                for (int c = 0; c < values.length; c++) {
+                    writeCell(refs[c] + row, values[c]);
+                }
+                w.writeEndElement();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to write row " + row, e);
+            }
+        }
+
+        private void writeCell(String ref, Object value) throws XMLStreamException {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue()) &&
+                    !Double.isInfinite(((Number) value).doubleValue())) {
+                w.writeStartElement("c");
+                w.writeAttribute("r", ref);
+                w.writeStartElement("v");
+                double d = ((Number) value).doubleValue();
+                w.writeCharacters(d == Math.rint(d) && Math.abs(d) < 1e15 ? Long.toString((long) d) :
+                        Double.toString(d));
+                w.writeEndElement();
+                w.writeEndElement();
+                return;
+            }
+            String s = text(value.toString());
+            if (s.isEmpty()) {
+                return;
+            }
+            w.writeStartElement("c");
+            w.writeAttribute("r", ref);
+            w.writeAttribute("t", "inlineStr");
+            w.writeStartElement("is");
+            w.writeStartElement("t");
+            if (s.charAt(0) == ' ' || s.charAt(s.length() - 1) == ' ') {
+                w.writeAttribute("xml", "http://www.w3.org/XML/1998/namespace", "space", "preserve");
+            }
+            w.writeCharacters(s);
+            w.writeEndElement();
+            w.writeEndElement();
+            w.writeEndElement();
+        }
+
+        // drops the control characters XML 1.0 cannot carry
+        private String text(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char ch = s.charAt(i);
+                if (ch < 0x20 && ch != '\t' && ch != '\n' && ch != '\r') {
+                    StringBuilder sb = new StringBuilder(s.length());
+                    for (int k = 0; k < s.length(); k++) {
+                        char c = s.charAt(k);
+                        sb.append(c < 0x20 && c != '\t' && c != '\n' && c != '\r' ? ' ' : c);
+                    }
+                    return sb.toString();
+                }
+            }
+            return s;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            try {
+                w.writeEndElement();
+                w.writeEndElement();
+                w.writeEndDocument();
+                w.flush();
+                w.close();
+            } catch (XMLStreamException e) {
+                throw new IOException("Failed to end the sheet", e);
+            }
+            entry.flush();
+            zip.closeEntry();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package us.kbase.fbatools.bench;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.FluxVariabilityAnalysis;
+
+/**
+ * <p>Flux variability analysis of a synthetic model of about 1300 rows.</p>
+ * <p>The model is {@link SyntheticModels#metabolic(int, int, long)} with
+ * 1200 compounds, 2000 reactions and seed 7, on its limited media. The
+ * analysis is run with the given number of workers, 1 by default:</p>
+ * <pre>
+ * java -cp ... us.kbase.fbatools.bench.FvaBenchmark [threads] [compounds reactions seed]
+ * </pre>
+ */
+public class FvaBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int compounds = args.length > 3 ? Integer.parseInt(args[1]) : 1200;
+        int reactions = args.length > 3 ? Integer.parseInt(args[2]) : 2000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 7;
+        ObjectNode model = SyntheticModels.metabolic(compounds, reactions, seed);
+        FbaProblem problem = FbaProblem.fromModel(model, SyntheticModels.limitedMedia(model), null);
+        System.out.println(problem.getRowCount() + " rows, " + problem.getVariableCount() + " variables");
+        FluxVariabilityAnalysis fva = new FluxVariabilityAnalysis(problem);
+        fva.setThreads(threads);
+        final long start = System.nanoTime();
+        final int[] done = {0};
+        fva.setListener((variable, min, max) -> {
+            if (++done[0] % 500 == 0) {
+                System.out.println(done[0] + " ranges in " + (System.nanoTime() - start) / 1000000 + " ms");
+            }
+        });
+        FbaSolution solution = fva.run();
+        System.out.println("objective " + solution.getObjectiveValue() + ", " + done[0] + " ranges on " + threads
+                + " threads in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
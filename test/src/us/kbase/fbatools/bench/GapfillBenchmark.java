@@ -0,0 +1,142 @@
+package us.kbase.fbatools.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSession;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.GapfillMetabolicModelParams;
+import us.kbase.fbatools.GapfillResult;
+import us.kbase.fbatools.Gapfiller;
+
+/**
+ * <p>Enumerating alternative gapfilling solutions in one search against one
+ * search per solution count, as a stand-in for the integer cuts of
+ * RecursiveMILP.</p>
+ * <p>The model is {@link SyntheticModels#iMR1(int)} on a media of the
+ * compounds it takes up. Reactions carrying flux are removed at random
+ * (the seed) until it grows less than 0.01. The template has every
+ * reaction of the intact model twice, under its own id and under X and its
+ * id, so each removed reaction has two alternatives; with the default seed
+ * 12 reactions are removed and there are 1039 candidate directions. The
+ * gapfilling needs a biomass flux of 0.5. Run from the module root:</p>
+ * <pre>
+ * java -cp ... us.kbase.fbatools.bench.GapfillBenchmark [solutions, default 10] [threads, default 1] [seed, default 4]
+ * </pre>
+ */
+public class GapfillBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int solutions = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 4;
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode model = SyntheticModels.iMR1(1);
+        ObjectNode template = template(mapper, model);
+        ObjectNode media = uptakes(mapper, model);
+
+        FbaProblem problem = FbaProblem.fromModel(model, media, null);
+        FbaSession session = new FbaSession(problem);
+        Random random = new Random(seed);
+        Set<String> removed = new LinkedHashSet<String>();
+        for (FbaSolution sol = session.solve(); sol.getObjectiveValue() >= 0.01; sol = session.solve()) {
+            List<String> active = new ArrayList<String>();
+            for (int j = 0; j < problem.getMatrix().getReactionCount(); j++) {
+                if (Math.abs(sol.getValue(j)) > 1e-9) {
+                    active.add(problem.getVariableId(j));
+                }
+            }
+            String pick = active.get(random.nextInt(active.size()));
+            removed.add(pick);
+            session.knockOutReactions(Collections.singletonList(pick));
+        }
+        ArrayNode rxns = model.withArray("modelreactions");
+        for (int i = rxns.size() - 1; i >= 0; i--) {
+            if (removed.contains(rxns.get(i).path("id").asText())) {
+                rxns.remove(i);
+            }
+        }
+        System.out.println("removed " + removed);
+
+        long start = System.nanoTime();
+        Gapfiller gf = Gapfiller.fromModel(model, template, media,
+                new GapfillMetabolicModelParams().withMinimumTargetFlux(0.5));
+        System.out.printf("%d candidate directions, built in %.0f ms%n", gf.getCandidateCount(),
+                (System.nanoTime() - start) / 1e6);
+        gf.setThreads(threads);
+        gf.setNumberOfSolutions(solutions);
+        GapfillResult r = gf.run();
+        double[] costs = new double[r.getSolutions().size()];
+        for (int i = 0; i < costs.length; i++) {
+            costs[i] = r.getSolutions().get(i).getCost();
+        }
+        System.out.printf("one search, %d threads: %s, costs %s%n", threads, r, Arrays.toString(costs));
+
+        gf.setThreads(1);
+        long total = 0;
+        for (int n = 1; n <= solutions; n++) {
+            gf.setNumberOfSolutions(n);
+            total += gf.run().getElapsedMillis();
+        }
+        System.out.printf("one search per solution count, 1 thread: %d ms%n", total);
+    }
+
+    // every reaction of the model, under its own id and an X copy
+    private static ObjectNode template(ObjectMapper mapper, ObjectNode model) {
+        ObjectNode template = mapper.createObjectNode().put("id", "tmpl");
+        Map<String, ObjectNode> ccs = new LinkedHashMap<String, ObjectNode>();
+        ArrayNode trxns = template.putArray("reactions");
+        for (JsonNode rxn : model.path("modelreactions")) {
+            ArrayNode rgts = mapper.createArrayNode();
+            for (JsonNode rgt : rxn.path("modelReactionReagents")) {
+                String ref = rgt.path("modelcompound_ref").asText();
+                String cpd = ref.substring(ref.lastIndexOf('/') + 1);
+                String cc = cpd.substring(0, cpd.length() - 1);
+                if (!ccs.containsKey(cc)) {
+                    ccs.put(cc, mapper.createObjectNode().put("id", cc).put("templatecompartment_ref",
+                            "~/compartments/id/" + cc.substring(cc.lastIndexOf('_') + 1)));
+                }
+                rgts.addObject().put("templatecompcompound_ref", "~/compcompounds/id/" + cc)
+                        .put("coefficient", rgt.path("coefficient").asDouble());
+            }
+            String id = rxn.path("id").asText();
+            id = id.substring(0, id.length() - 1);
+            for (String tid : new String[] {id, "X" + id}) {
+                ObjectNode trxn = trxns.addObject();
+                trxn.put("id", tid).put("direction", rxn.path("direction").asText())
+                        .put("GapfillDirection", rxn.path("direction").asText())
+                        .put("templatecompartment_ref", "~/compartments/id/c");
+                trxn.set("templateReactionReagents", rgts);
+            }
+        }
+        template.putArray("compcompounds").addAll(ccs.values());
+        return template;
+    }
+
+    // the compounds the intact model takes up on the complete media
+    private static ObjectNode uptakes(ObjectMapper mapper, ObjectNode model) {
+        FbaProblem complete = FbaProblem.fromModel(model, null, null);
+        FbaSolution sol = complete.solve();
+        ObjectNode media = mapper.createObjectNode().put("name", "uptakes");
+        ArrayNode mcs = media.putArray("mediacompounds");
+        for (int j = 0; j < complete.getVariableCount(); j++) {
+            if (complete.getVariableType(j) == FbaProblem.VariableType.DRAIN_FLUX && sol.getValue(j) > 1e-9) {
+                String id = complete.getVariableId(j);
+                mcs.addObject().put("compound_ref", "~/compounds/id/" + id.substring(0, id.lastIndexOf('_')))
+                        .put("minFlux", -100).put("maxFlux", 10);
+            }
+        }
+        return media;
+    }
+}
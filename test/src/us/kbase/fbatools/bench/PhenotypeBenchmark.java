@@ -0,0 +1,143 @@
+package us.kbase.fbatools.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import us.kbase.fbatools.FbaObjectWriter;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.PhenotypeSimulationResult;
+import us.kbase.fbatools.PhenotypeSimulator;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+
+/**
+ * <p>Phenotype simulation against rebuilding and solving the model for
+ * every phenotype.</p>
+ * <p>The model is {@link SyntheticModels#iMR1(int)}. There are 20 media,
+ * each with one of 20 carbon sources and every other extracellular
+ * compound, and 2000 phenotypes spread over them (seed 7): 9 in 10 knock
+ * out a random gene, 1 in 50 adds glucose and 1 in 97 blocks a random
+ * reaction. The first phenotypes are solved by rebuilding an
+ * {@link FbaProblem} for the wild type and again for the knockouts, which
+ * is timed, extrapolated to all of them and used to check the simulator's
+ * growths. Then all of them are simulated with 1, 2 and 4 workers. Run from
+ * the module root:</p>
+ * <pre>
+ * java -cp ... us.kbase.fbatools.bench.PhenotypeBenchmark [rebuilt phenotypes, default 300]
+ * </pre>
+ */
+public class PhenotypeBenchmark {
+    private static final String[] CARBON = {"cpd00027", "cpd00029", "cpd00020", "cpd00036", "cpd00221",
+            "cpd00100", "cpd00023", "cpd00033", "cpd00035", "cpd00054", "cpd00041", "cpd00107", "cpd00129",
+            "cpd00130", "cpd00159", "cpd00047", "cpd00039", "cpd00051", "cpd00119", "cpd00161"};
+    private static final int PHENOTYPES = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int rebuilt = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode model = SyntheticModels.iMR1(1);
+        Map<String, JsonNode> media = media(mapper, model);
+        FbaProblem first = FbaProblem.fromModel(model, media.get("ws/M0"), null);
+        List<String> features = first.getFeatures();
+        Random random = new Random(7);
+        List<PhenotypeSimulator.Phenotype> phenos = new ArrayList<PhenotypeSimulator.Phenotype>();
+        for (int i = 0; i < PHENOTYPES; i++) {
+            PhenotypeSimulator.Phenotype p = new PhenotypeSimulator.Phenotype("p" + i, "ws/M" + (i % CARBON.length))
+                    .withRef("ws/set/phenotypes/id/p" + i);
+            if (i % 10 != 0) {
+                p.withGeneKos(Arrays.asList(features.get(random.nextInt(features.size()))));
+            }
+            if (i % 50 == 7) {
+                p.withAdditionalCompounds(Arrays.asList("cpd00027"), null);
+            }
+            if (i % 97 == 3) {
+                p.withCustomReactionBounds(Arrays.asList("0<" + first.getVariableId(random.nextInt(500)) + "<0"));
+            }
+            p.withNormalizedGrowth(random.nextDouble() < 0.7 ? 1.0 : 0.0);
+            phenos.add(p);
+        }
+
+        double[] reference = new double[rebuilt];
+        long start = System.nanoTime();
+        for (int i = 0; i < rebuilt; i++) {
+            PhenotypeSimulator.Phenotype p = phenos.get(i);
+            JsonNode md = media.get(p.getMediaRef());
+            if (!p.getAdditionalCompounds().isEmpty()) {
+                ObjectNode copy = md.deepCopy();
+                copy.withArray("mediacompounds").addObject().put("compound_ref", "cpd00027").put("minFlux", -100)
+                        .put("maxFlux", 100);
+                md = copy;
+            }
+            RunFluxBalanceAnalysisParams params = new RunFluxBalanceAnalysisParams()
+                    .withCustomBoundList(p.getCustomReactionBounds());
+            reference[i] = FbaProblem.fromModel(model, md, params).solve().getObjectiveValue();
+            if (!p.getGeneKos().isEmpty()) {
+                params.setFeatureKoList(p.getGeneKos());
+                reference[i] = FbaProblem.fromModel(model, md, params).solve().getObjectiveValue();
+            }
+        }
+        double ms = (System.nanoTime() - start) / 1e6;
+        System.out.printf("rebuilding per phenotype: %d in %.0f ms, %.0f ms extrapolated to %d%n", rebuilt, ms,
+                ms * PHENOTYPES / rebuilt, PHENOTYPES);
+
+        Path out = Files.createTempFile("phenotype-benchmark", ".json");
+        try {
+            for (int threads : new int[] {1, 2, 4}) {
+                PhenotypeSimulator sim = new PhenotypeSimulator(model, null);
+                sim.setThreads(threads);
+                start = System.nanoTime();
+                PhenotypeSimulationResult r;
+                try (FbaObjectWriter w = FbaObjectWriter.create(out)) {
+                    w.writeField("id", "sim");
+                    w.beginArray("phenotypeSimulations");
+                    r = sim.simulate(phenos, media, w);
+                }
+                ms = (System.nanoTime() - start) / 1e6;
+                int mismatches = 0;
+                for (int i = 0; i < rebuilt; i++) {
+                    double g = reference[i] < 1e-7 ? 0 : reference[i];
+                    if (Math.abs(g - r.getSimulatedGrowth(i)) > 1e-6 * Math.max(1, g)) {
+                        mismatches++;
+                    }
+                }
+                System.out.printf("%d threads: %.0f ms, %.2f ms per phenotype, %d of %d differ from the rebuild, %s%n",
+                        threads, ms, ms / PHENOTYPES, mismatches, rebuilt, r);
+            }
+        } finally {
+            Files.delete(out);
+        }
+    }
+
+    private static Map<String, JsonNode> media(ObjectMapper mapper, ObjectNode model) {
+        Set<String> carbon = new HashSet<String>(Arrays.asList(CARBON));
+        Map<String, JsonNode> media = new LinkedHashMap<String, JsonNode>();
+        for (int m = 0; m < CARBON.length; m++) {
+            ObjectNode md = mapper.createObjectNode().put("name", "M" + m);
+            ArrayNode mcs = md.putArray("mediacompounds");
+            for (JsonNode c : model.path("modelcompounds")) {
+                String id = c.path("id").asText();
+                if (!id.endsWith("_e0")) {
+                    continue;
+                }
+                String base = id.substring(0, id.length() - 3);
+                if (carbon.contains(base) && !base.equals(CARBON[m])) {
+                    continue;
+                }
+                mcs.addObject().put("compound_ref", "kbase/default/compounds/id/" + base).put("minFlux", -100)
+                        .put("maxFlux", base.equals(CARBON[m]) ? 10 : 100);
+            }
+            media.put("ws/M" + m, md);
+        }
+        return media;
+    }
+}
@@ -0,0 +1,262 @@
+package us.kbase.fbatools.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import us.kbase.fbatools.ModelTsv;
+
+/* Builds the synthetic FBAModel and Media objects the benchmarks run on.
+ * Every model is a function of its arguments, so a run can be repeated
+ * exactly.
+ */
+class SyntheticModels {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // cofactor compounds, regenerated in pairs: 0 <-> 1, 2 <-> 3, ...
+    private static final int HUBS = 20;
+    private static final Path DATA = Paths.get("test/data");
+    private static final Pattern TERM = Pattern.compile("\\(([\\d.e+-]+)\\)\\s+(\\w+)\\[(\\w)\\d\\]");
+    private static final Pattern GENE = Pattern.compile("[A-Za-z]+_\\d+");
+
+    private SyntheticModels() {}
+
+    private static String cpd(int i) {
+        return String.format("cpd%05d_c0", i);
+    }
+
+    private static String extracellular(int i) {
+        return String.format("cpd%05d_e0", i);
+    }
+
+    private static void reagent(ArrayNode reagents, String compound, double coefficient) {
+        reagents.addObject().put("modelcompound_ref", "~/modelcompounds/id/" + compound)
+                .put("coefficient", coefficient);
+    }
+
+    private static ArrayNode reaction(ArrayNode rxns, String id, String direction) {
+        ObjectNode rxn = rxns.addObject();
+        rxn.put("id", id);
+        rxn.put("direction", direction);
+        return rxn.putArray("modelReactionReagents");
+    }
+
+    /** Builds a model shaped like a metabolic network: most reactions turn
+     * one compound into a nearby one, half of them also turn over a cofactor
+     * pair, and one in twelve compounds can be taken up. The biomass drains
+     * 50 random compounds and 40 units of the main cofactor.
+     * @param compounds the number of cytosol compounds, more than 40.
+     * @param reactions the number of random reactions.
+     * @param seed the random seed.
+     */
+    static ObjectNode metabolic(int compounds, int reactions, long seed) {
+        Random random = new Random(seed);
+        ObjectNode model = MAPPER.createObjectNode();
+        model.put("id", "synthetic_" + compounds + "_" + reactions + "_" + seed);
+        ArrayNode cpds = model.putArray("modelcompounds");
+        ArrayNode rxns = model.putArray("modelreactions");
+        for (int i = 0; i < compounds; i++) {
+            cpds.addObject().put("id", cpd(i)).put("modelcompartment_ref", "~/modelcompartments/id/c0");
+        }
+        int uptakes = compounds / 12;
+        for (int i = 0; i < uptakes; i++) {
+            int k = uptake(i, compounds, uptakes);
+            cpds.addObject().put("id", extracellular(k)).put("modelcompartment_ref", "~/modelcompartments/id/e0");
+            ArrayNode r = reaction(rxns, "rxnT" + i + "_c0", "=");
+            reagent(r, extracellular(k), -1);
+            reagent(r, cpd(k), 1);
+        }
+        for (int h = 0; h < HUBS; h += 2) {
+            ArrayNode r = reaction(rxns, "rxnH" + h + "_c0", "=");
+            reagent(r, cpd(h), -1);
+            reagent(r, cpd(h + 1), 1);
+        }
+        cpds.addObject().put("id", "cpd11416_c0").put("modelcompartment_ref", "~/modelcompartments/id/c0");
+        for (int j = 0; j < reactions; j++) {
+            ObjectNode rxn = rxns.addObject();
+            rxn.put("id", String.format("rxn%05d_c0", j));
+            rxn.put("direction", random.nextInt(3) == 0 ? "=" : ">");
+            ArrayNode r = rxn.putArray("modelReactionReagents");
+            int s = HUBS + random.nextInt(compounds - HUBS);
+            int t = near(s, random, compounds);
+            if (t == s) {
+                t = s == compounds - 1 ? s - 1 : s + 1;
+            }
+            reagent(r, cpd(s), -1);
+            reagent(r, cpd(t), 1);
+            if (random.nextInt(2) == 0) {
+                int h = 2 * random.nextInt(HUBS / 2);
+                reagent(r, cpd(h), -1);
+                reagent(r, cpd(h + 1), 1);
+            }
+            if (random.nextInt(4) == 0) {
+                int u = near(s, random, compounds);
+                if (u != s && u != t) {
+                    reagent(r, cpd(u), 1);
+                }
+            }
+            rxn.putArray("modelReactionProteins").addObject().putArray("modelReactionProteinSubunits")
+                    .addObject().putArray("feature_refs")
+                    .add("~/genome/features/id/g" + random.nextInt(reactions * 2 / 3));
+        }
+        ObjectNode bio = model.putArray("biomasses").addObject();
+        bio.put("id", "bio1");
+        ArrayNode bcs = bio.putArray("biomasscompounds");
+        for (int q = 0; q < 50; q++) {
+            int b = HUBS + random.nextInt(compounds - HUBS);
+            reagent(bcs, cpd(b), -0.01 * (1 + random.nextInt(5)));
+            // a route from the nearest uptake, paid for with the main cofactor
+            int k = uptake((b - HUBS) * uptakes / (compounds - HUBS), compounds, uptakes);
+            if (k != b) {
+                ArrayNode r = reaction(rxns, "rxnB" + q + "_c0", ">");
+                reagent(r, cpd(k), -1);
+                reagent(r, cpd(b), 1);
+                reagent(r, cpd(1), -1);
+                reagent(r, cpd(0), 1);
+            }
+        }
+        ArrayNode atp = reaction(rxns, "rxnATP_c0", ">");
+        reagent(atp, cpd(HUBS), -1);
+        reagent(atp, cpd(HUBS + 1), 1);
+        reagent(atp, cpd(0), -2);
+        reagent(atp, cpd(1), 2);
+        reagent(bcs, cpd(0), -40);
+        reagent(bcs, cpd(1), 40);
+        reagent(bcs, "cpd11416_c0", 1);
+        return model;
+    }
+
+    private static int uptake(int i, int compounds, int uptakes) {
+        return HUBS + i * (compounds - HUBS) / uptakes;
+    }
+
+    private static int near(int s, Random random, int compounds) {
+        return Math.min(compounds - 1, Math.max(HUBS, s + random.nextInt(21) - 10));
+    }
+
+    /** Builds a media with every extracellular compound of a model, one in
+     * three of them limited to an uptake of 10 and the rest to 100.
+     * @param model a model from {@link #metabolic(int, int, long)}.
+     */
+    static ObjectNode limitedMedia(ObjectNode model) {
+        ObjectNode media = MAPPER.createObjectNode().put("id", "limited").put("name", "limited");
+        ArrayNode mcs = media.putArray("mediacompounds");
+        int i = 0;
+        for (JsonNode c : model.path("modelcompounds")) {
+            String id = c.path("id").asText();
+            if (id.endsWith("_e0")) {
+                mcs.addObject().put("compound_ref", "x/compounds/id/" + id.substring(0, id.length() - 3))
+                        .put("minFlux", -100).put("maxFlux", i++ % 3 == 0 ? 10 : 100);
+            }
+        }
+        return media;
+    }
+
+    // empty table cells are empty strings in the objects
+    private static String text(String s) {
+        return s == null ? "" : s;
+    }
+
+    /** Builds an FBAModel with the fields KBase models carry from
+     * test/data/iMR1_799-reactions.tsv and -compounds.tsv, read from the
+     * module root. With more than one copy, copy k is in compartments ck and
+     * ek, as in a community model. Every gene of a reaction's GPR becomes a
+     * subunit of a single protein, and each copy's biomass drains 40 of
+     * water and of ATP.
+     * @param copies the number of copies of the model.
+     */
+    static ObjectNode iMR1(int copies) throws IOException {
+        ObjectNode model = MAPPER.createObjectNode();
+        model.put("id", "iMR1_799").put("name", "iMR1_799").put("source", "KBase").put("source_id", "iMR1_799")
+                .put("type", "GenomeScale").put("genome_ref", "1/2/3").put("template_ref", "4/5/6");
+        model.putArray("gapfillings");
+        model.putArray("gapgens");
+        model.putArray("template_refs").add("4/5/6");
+        ObjectNode attributes = model.putObject("attributes");
+        attributes.putObject("pathways");
+        attributes.putObject("auxotrophy");
+        attributes.putObject("fbas");
+        ArrayNode cmps = model.putArray("modelcompartments");
+        ArrayNode cpds = model.putArray("modelcompounds");
+        ArrayNode rxns = model.putArray("modelreactions");
+        ArrayNode bios = model.putArray("biomasses");
+        for (int k = 0; k < copies; k++) {
+            for (String c : new String[] {"c", "e"}) {
+                cmps.addObject().put("id", c + k).put("compartment_ref", "~/template/compartments/id/" + c)
+                        .put("compartmentIndex", k).put("label", c + k).put("pH", 7).put("potential", 0);
+            }
+            try (ModelTsv.RecordReader<ModelTsv.Compound> r = ModelTsv.readCompounds(
+                    DATA.resolve("iMR1_799-compounds.tsv"))) {
+                for (ModelTsv.Compound c = r.next(); c != null; c = r.next()) {
+                    String id = c.getId().replaceFirst("_(\\w)0$", "_$1" + k);
+                    int us = id.lastIndexOf('_');
+                    ObjectNode cpd = cpds.addObject().put("id", id)
+                            .put("compound_ref", "~/template/compounds/id/" + id.substring(0, us))
+                            .put("name", text(c.getName())).put("formula", text(c.getFormula()))
+                            .put("charge", c.getCharge() == null ? 0 : c.getCharge())
+                            .put("modelcompartment_ref", "~/modelcompartments/id/" + id.substring(us + 1));
+                    cpd.putArray("aliases");
+                    cpd.putObject("dblinks");
+                    cpd.putObject("string_attributes");
+                    cpd.putObject("numerical_attributes");
+                    cpd.put("smiles", "").put("inchikey", "");
+                }
+            }
+            try (ModelTsv.RecordReader<ModelTsv.Reaction> r = ModelTsv.readReactions(
+                    DATA.resolve("iMR1_799-reactions.tsv"))) {
+                for (ModelTsv.Reaction x = r.next(); x != null; x = r.next()) {
+                    String id = x.getId().replaceFirst("_(\\w)0$", "_$1" + k);
+                    ObjectNode rxn = rxns.addObject().put("id", id)
+                            .put("reaction_ref", "~/template/reactions/id/" + id.substring(0, id.lastIndexOf('_'))
+                                    + "_c")
+                            .put("name", text(x.getName())).put("direction", x.getDirection()).put("protons", 0)
+                            .put("maxforflux", 1000).put("maxrevflux", 1000).put("probability", 0)
+                            .put("modelcompartment_ref", "~/modelcompartments/id/c" + k);
+                    rxn.putArray("aliases");
+                    rxn.putObject("dblinks");
+                    rxn.put("pathway", text(x.getPathway())).put("reference", text(x.getReference()))
+                            .put("imported_gpr", text(x.getGpr()));
+                    rxn.putObject("string_attributes");
+                    rxn.putObject("numerical_attributes");
+                    rxn.putObject("gapfill_data");
+                    ArrayNode reagents = rxn.putArray("modelReactionReagents");
+                    String[] sides = x.getEquation().split("<=>|=>|<=");
+                    for (int side = 0; side < sides.length && side < 2; side++) {
+                        Matcher m = TERM.matcher(sides[side]);
+                        while (m.find()) {
+                            String cpd = m.group(2).replaceFirst("_[a-z]\\d+$", "");
+                            reagent(reagents, cpd + "_" + m.group(3) + k,
+                                    (side == 0 ? -1 : 1) * Double.parseDouble(m.group(1)));
+                        }
+                    }
+                    ArrayNode proteins = rxn.putArray("modelReactionProteins");
+                    Matcher g = GENE.matcher(x.getGpr() == null ? "" : x.getGpr());
+                    ArrayNode subunits = null;
+                    while (g.find()) {
+                        if (subunits == null) {
+                            ObjectNode prot = proteins.addObject().put("complex_ref", "").put("note", "")
+                                    .put("source", "");
+                            subunits = prot.putArray("modelReactionProteinSubunits");
+                        }
+                        ObjectNode sub = subunits.addObject().put("role", "").put("triggering", 0)
+                                .put("optionalSubunit", 0).put("note", "");
+                        sub.putArray("feature_refs").add("~/genome/features/id/" + g.group());
+                    }
+                }
+            }
+            ObjectNode bio = bios.addObject().put("id", "bio" + (k + 1)).put("name", "Biomass").put("other", 0)
+                    .put("dna", 0.026).put("rna", 0.0655).put("protein", 0.5284).put("cellwall", 0.25)
+                    .put("lipid", 0.075).put("cofactor", 0.1).put("energy", 40);
+            ArrayNode bcs = bio.putArray("biomasscompounds");
+            reagent(bcs, "cpd00001_c" + k, -40);
+            reagent(bcs, "cpd00002_c" + k, -40);
+            bio.putArray("removedcompounds");
+        }
+        return model;
+    }
+}
@@ -0,0 +1,78 @@
+package us.kbase.fbatools.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import us.kbase.fbatools.FbaModel;
+
+/**
+ * <p>Memory and time of reading an FBAModel as maps, as a JsonNode tree and
+ * as a typed {@link FbaModel}.</p>
+ * <p>The model is {@link SyntheticModels#iMR1(int)}, serialized once, in
+ * the given number of copies: 1 for the single model, 10 for the community
+ * of 8210 reactions. For each representation the harness reports the bytes
+ * allocated per read, from the thread allocation counter of the HotSpot
+ * ThreadMXBean, and the heap retained per model after GC while the given
+ * number of models are held at once. Run from the module root:</p>
+ * <pre>
+ * java -Xmx2g -cp ... us.kbase.fbatools.bench.TypedModelBenchmark [copies] [held]
+ * </pre>
+ */
+public class TypedModelBenchmark {
+    private static final int READS = 10;
+
+    private interface Reader {
+        Object read(byte[] json) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int copies = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int held = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final ObjectMapper mapper = new ObjectMapper();
+        byte[] json = mapper.writeValueAsBytes(SyntheticModels.iMR1(copies));
+        System.out.printf("%d copies of iMR1_799, %.1f MB of JSON%n", copies, json.length / 1e6);
+        Map<String, Reader> readers = new LinkedHashMap<String, Reader>();
+        readers.put("Map<String,Object>", b -> mapper.readValue(b, Map.class));
+        readers.put("JsonNode", b -> mapper.readTree(b));
+        readers.put("FbaModel", b -> FbaModel.read(new ByteArrayInputStream(b)));
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        // the first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            for (Map.Entry<String, Reader> e : readers.entrySet()) {
+                for (int i = 0; i < 5; i++) {
+                    e.getValue().read(json);
+                }
+                long allocated = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                for (int i = 0; i < READS; i++) {
+                    e.getValue().read(json);
+                }
+                long micros = (System.nanoTime() - start) / READS / 1000;
+                allocated = (threads.getThreadAllocatedBytes(thread) - allocated) / READS;
+                long before = usedHeap();
+                Object[] keep = new Object[held];
+                for (int i = 0; i < held; i++) {
+                    keep[i] = e.getValue().read(json);
+                }
+                long retained = (usedHeap() - before) / held;
+                if (round == 1) {
+                    System.out.printf("%-20s read %7.1f ms  allocated %7.2f MB/read  retained %7.2f MB (%d held)%n",
+                            e.getKey(), micros / 1000.0, allocated / 1e6, retained / 1e6, keep.length);
+                }
+            }
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,100 @@
+package us.kbase.fbatools.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipFile;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import us.kbase.fbatools.ModelExcel;
+import us.kbase.fbatools.ModelTsv;
+import us.kbase.fbatools.XlsxReader;
+
+/**
+ * <p>Streaming against whole-document reading of a large FBA workbook.</p>
+ * <p>The workbook is built by cycling the reactions of
+ * test/data/iMR1_799-reactions.tsv, with flux values, until it has the
+ * requested number of rows. Each mode runs in its own JVM so that the heap
+ * limit is what is measured; from the module root:</p>
+ * <pre>
+ * java -cp ... us.kbase.fbatools.bench.XlsxBenchmark gen /tmp/big.xlsx 200000
+ * java -Xmx16m -cp ... us.kbase.fbatools.bench.XlsxBenchmark stream /tmp/big.xlsx
+ * java -Xmx2g -cp ... us.kbase.fbatools.bench.XlsxBenchmark dom /tmp/big.xlsx
+ * </pre>
+ */
+public class XlsxBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: XlsxBenchmark gen <file> <rows> | stream <file> | dom <file>");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[1]);
+        long start = System.nanoTime();
+        if (args[0].equals("gen")) {
+            int rows = Integer.parseInt(args[2]);
+            ModelExcel.writeModel(path, cycle(reactions(), rows), Collections.<ModelTsv.Compound>emptyList(),
+                    true);
+            System.out.println("wrote " + rows + " rows, " + Files.size(path) + " bytes in " + millis(start)
+                    + " ms");
+        } else if (args[0].equals("stream")) {
+            int rows = 0;
+            double sum = 0;
+            try (XlsxReader wb = XlsxReader.open(path);
+                    ModelTsv.RecordReader<ModelTsv.Reaction> r = ModelExcel.readReactions(wb)) {
+                for (ModelTsv.Reaction rxn = r.next(); rxn != null; rxn = r.next()) {
+                    rows++;
+                    sum += rxn.getFlux();
+                }
+            }
+            System.out.println("streamed " + rows + " rows (flux sum " + sum + ") in " + millis(start) + " ms");
+        } else if (args[0].equals("dom")) {
+            // the reactions are the second sheet written
+            try (ZipFile zip = new ZipFile(path.toFile())) {
+                Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(
+                        zip.getInputStream(zip.getEntry("xl/worksheets/sheet2.xml")));
+                System.out.println("parsed " + doc.getElementsByTagName("row").getLength() + " rows in "
+                        + millis(start) + " ms");
+            }
+        } else {
+            System.err.println("Unknown mode " + args[0]);
+            System.exit(1);
+        }
+    }
+
+    private static List<ModelTsv.Reaction> reactions() throws Exception {
+        List<ModelTsv.Reaction> ret = new ArrayList<ModelTsv.Reaction>();
+        try (ModelTsv.RecordReader<ModelTsv.Reaction> r = ModelTsv.readReactions(
+                Paths.get("test/data/iMR1_799-reactions.tsv"))) {
+            for (ModelTsv.Reaction rxn = r.next(); rxn != null; rxn = r.next()) {
+                ret.add(rxn.withFlux(1.5).withMinFlux(-2.0).withMaxFlux(2.0).withLowerBound(-1000.0)
+                        .withUpperBound(1000.0));
+            }
+        }
+        return ret;
+    }
+
+    private static Iterable<ModelTsv.Reaction> cycle(final List<ModelTsv.Reaction> rxns, final int rows) {
+        return () -> new Iterator<ModelTsv.Reaction>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < rows;
+            }
+
+            @Override
+            public ModelTsv.Reaction next() {
+                return rxns.get(i++ % rxns.size());
+            }
+        };
+    }
+
+    private static long millis(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
@@ -0,0 +1,422 @@
+package us.kbase.fbatools.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import us.kbase.fbatools.BlobTransfer;
+import us.kbase.common.service.UObject;
+
+/**
+ * <p>A local, in-process stand-in for the Shock blob store.</p>
+ * <p>It serves the part of the Shock API that {@link BlobTransfer} uses on
+ * the loopback interface: creating nodes, uploading them in numbered parts
+ * that are assembled once all have arrived, reading node metadata,
+ * downloading byte ranges and querying nodes by attribute. Node contents
+ * are kept in a temporary directory that is deleted on close. Failures can
+ * be injected to exercise retries and resumption. It does not check
+ * tokens.</p>
+ */
+public class BlobStoreStubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Path dir;
+    private final Map<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private static class Node {
+        final String id;
+        final String fileName;
+        final JsonNode attributes;
+        final int partCount;
+        final Map<Integer, Path> parts = new TreeMap<Integer, Path>();
+        Path file = null;
+        long size = 0;
+        String md5 = "";
+
+        Node(String id, String fileName, JsonNode attributes, int partCount) {
+            this.id = id;
+            this.fileName = fileName;
+            this.attributes = attributes;
+            this.partCount = partCount;
+        }
+    }
+
+    /** Starts a server on an ephemeral loopback port.
+     * @throws IOException if the server cannot be bound.
+     */
+    public BlobStoreStubServer() throws IOException {
+        this(0);
+    }
+
+    /** Starts a server on the given loopback port.
+     * @param port the port, or 0 for an ephemeral port.
+     * @throws IOException if the server cannot be bound.
+     */
+    public BlobStoreStubServer(int port) throws IOException {
+        dir = Files.createTempDirectory("blobstore");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::serve);
+        server.start();
+    }
+
+    /** Get the URL clients should use to reach this server.
+     * @return the Shock API URL.
+     */
+    public URL getURL() {
+        try {
+            return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Get the number of HTTP requests received so far.
+     * @return the request count.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** Get the number of nodes created so far.
+     * @return the node count.
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /** Answers the next requests with an error without acting on them.
+     * @param count the number of requests to fail.
+     */
+    public void failNextRequests(int count) {
+        failures.set(count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(dir)) {
+            List<Path> all = new ArrayList<Path>();
+            files.forEach(all::add);
+            for (int i = all.size() - 1; i >= 0; i--) {
+                Files.deleteIfExists(all.get(i));
+            }
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                readAll(exchange.getRequestBody());
+                respond(exchange, 500, null, "Injected failure");
+                return;
+            }
+            String[] segments = path.replaceAll("^/+|/+$", "").split("/");
+            if (segments.length == 1 && segments[0].equals("node")) {
+                if (method.equals("POST")) {
+                    respond(exchange, 200, toJson(create(exchange)), null);
+                } else if (method.equals("GET") && query.containsKey("query")) {
+                    respond(exchange, 200, find(query), null);
+                } else {
+                    respond(exchange, 400, null, "Unsupported request " + method + " " + path);
+                }
+                return;
+            }
+            Node node = segments.length == 2 && segments[0].equals("node") ? nodes.get(segments[1]) : null;
+            if (node == null) {
+                respond(exchange, 404, null, "Node not found");
+            } else if (method.equals("PUT")) {
+                putParts(node, exchange);
+                respond(exchange, 200, toJson(node), null);
+            } else if (method.equals("GET") && query.containsKey("download")) {
+                download(node, query, exchange);
+            } else if (method.equals("GET")) {
+                respond(exchange, 200, toJson(node), null);
+            } else {
+                respond(exchange, 400, null, "Unsupported request " + method + " " + path);
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, null, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Node create(HttpExchange exchange) throws IOException {
+        Map<String, byte[]> form = parseMultipart(exchange);
+        String id = UUID.randomUUID().toString();
+        byte[] attr = form.get("attributes_str");
+        JsonNode attributes = attr == null ? UObject.getMapper().createObjectNode()
+                : UObject.getMapper().readTree(attr);
+        byte[] name = form.get("file_name");
+        byte[] parts = form.get("parts");
+        Node node = new Node(id, name == null ? "" : new String(name, StandardCharsets.UTF_8), attributes,
+                parts == null ? 0 : Integer.parseInt(new String(parts, StandardCharsets.UTF_8).trim()));
+        byte[] upload = form.get("upload");
+        if (upload != null) {
+            Path part = dir.resolve(id + ".1");
+            Files.write(part, upload);
+            node.parts.put(1, part);
+            assemble(node, 1);
+        }
+        nodes.put(id, node);
+        return node;
+    }
+
+    private void putParts(Node node, HttpExchange exchange) throws IOException {
+        Map<String, byte[]> form = parseMultipart(exchange);
+        synchronized (node) {
+            for (Map.Entry<String, byte[]> e : form.entrySet()) {
+                int n;
+                try {
+                    n = Integer.parseInt(e.getKey());
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+                if (node.file != null || n < 1 || n > node.partCount) {
+                    throw new IllegalArgumentException("Part " + n + " is not open on node " + node.id);
+                }
+                Path part = dir.resolve(node.id + "." + n);
+                Files.write(part, e.getValue());
+                node.parts.put(n, part);
+            }
+            if (node.parts.size() == node.partCount) {
+                assemble(node, node.partCount);
+            }
+        }
+    }
+
+    private void assemble(Node node, int partCount) throws IOException {
+        Path file = dir.resolve(node.id);
+        MessageDigest md = md5();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (int n = 1; n <= partCount; n++) {
+                byte[] data = Files.readAllBytes(node.parts.get(n));
+                md.update(data);
+                out.write(ByteBuffer.wrap(data));
+                Files.delete(node.parts.get(n));
+            }
+            node.size = out.size();
+        }
+        node.md5 = hex(md.digest());
+        node.file = file;
+    }
+
+    private List<Map<String, Object>> find(Map<String, String> query) {
+        List<Map<String, Object>> found = new ArrayList<Map<String, Object>>();
+        for (Node node : nodes.values()) {
+            boolean match = true;
+            for (Map.Entry<String, String> q : query.entrySet()) {
+                String k = q.getKey();
+                if (k.equals("query") || k.equals("limit") || k.equals("offset")) {
+                    continue;
+                }
+                if (!q.getValue().equals(node.attributes.path(k).asText(null))) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                synchronized (node) {
+                    found.add(toJson(node));
+                }
+            }
+        }
+        return found;
+    }
+
+    private void download(Node node, Map<String, String> query, HttpExchange exchange) throws IOException {
+        if (node.file == null) {
+            respond(exchange, 400, null, "Node " + node.id + " has no file yet");
+            return;
+        }
+        long seek = query.containsKey("seek") ? Long.parseLong(query.get("seek")) : 0;
+        long length = query.containsKey("length") ? Long.parseLong(query.get("length")) : node.size - seek;
+        seek = Math.min(Math.max(0, seek), node.size);
+        length = Math.min(Math.max(0, length), node.size - seek);
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, length == 0 ? -1 : length);
+        if (length == 0) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(node.file, StandardOpenOption.READ);
+                OutputStream os = exchange.getResponseBody()) {
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            long pos = seek;
+            while (pos < seek + length) {
+                buf.clear();
+                buf.limit((int) Math.min(buf.capacity(), seek + length - pos));
+                int read = ch.read(buf, pos);
+                pos += read;
+                os.write(buf.array(), 0, read);
+            }
+        }
+    }
+
+    private static Map<String, Object> toJson(Node node) {
+        Map<String, Object> checksum = new LinkedHashMap<String, Object>();
+        checksum.put("md5", node.md5);
+        Map<String, Object> file = new LinkedHashMap<String, Object>();
+        file.put("name", node.fileName);
+        file.put("size", node.size);
+        file.put("checksum", checksum);
+        Map<String, Object> parts = new LinkedHashMap<String, Object>();
+        parts.put("count", node.partCount);
+        parts.put("length", node.parts.size());
+        Map<String, Object> json = new LinkedHashMap<String, Object>();
+        json.put("id", node.id);
+        json.put("file", file);
+        json.put("attributes", node.attributes);
+        if (node.partCount > 0) {
+            json.put("parts", parts);
+        }
+        return json;
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object data, String error) throws IOException {
+        Map<String, Object> resp = new LinkedHashMap<String, Object>();
+        resp.put("status", status);
+        resp.put("data", data);
+        List<String> errors = null;
+        if (error != null) {
+            errors = new ArrayList<String>();
+            errors.add(error);
+        }
+        resp.put("error", errors);
+        byte[] out = UObject.getMapper().writeValueAsBytes(resp);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, out.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(out);
+        os.close();
+    }
+
+    private static Map<String, String> parseQuery(String raw) throws IOException {
+        Map<String, String> query = new HashMap<String, String>();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            query.put(URLDecoder.decode(k, "UTF-8"), URLDecoder.decode(v, "UTF-8"));
+        }
+        return query;
+    }
+
+    // the fields of a multipart/form-data body, by name
+    private static Map<String, byte[]> parseMultipart(HttpExchange exchange) throws IOException {
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        int b = type == null ? -1 : type.indexOf("boundary=");
+        if (b < 0) {
+            throw new IllegalArgumentException("Expected a multipart/form-data body");
+        }
+        byte[] delimiter = ("--" + type.substring(b + 9).replace("\"", "").trim())
+                .getBytes(StandardCharsets.ISO_8859_1);
+        byte[] body = readAll(exchange.getRequestBody());
+        Map<String, byte[]> form = new LinkedHashMap<String, byte[]>();
+        int pos = indexOf(body, delimiter, 0);
+        while (pos >= 0) {
+            int start = pos + delimiter.length;
+            if (start + 1 < body.length && body[start] == '-' && body[start + 1] == '-') {
+                break;
+            }
+            int headersEnd = indexOf(body, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1), start);
+            int next = indexOf(body, delimiter, start);
+            if (headersEnd < 0 || next < 0) {
+                throw new IllegalArgumentException("Truncated multipart body");
+            }
+            String headers = new String(body, start, headersEnd - start, StandardCharsets.UTF_8);
+            int n = headers.indexOf("name=\"");
+            if (n >= 0) {
+                String name = headers.substring(n + 6, headers.indexOf('"', n + 6));
+                int contentEnd = next - 2; // the CRLF before the delimiter
+                byte[] value = new byte[Math.max(0, contentEnd - (headersEnd + 4))];
+                System.arraycopy(body, headersEnd + 4, value, 0, value.length);
+                form.put(name, value);
+            }
+            pos = next;
+        }
+        return form;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern, int from) {
+        outer:
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte x : bytes) {
+            sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = is.read(chunk)) >= 0) {
+            buf.write(chunk, 0, read);
+        }
+        return buf.toByteArray();
+    }
+}
@@ -0,0 +1,178 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.fbatools.BlobTransfer;
+import us.kbase.fbatools.File;
+
+public class BlobTransferTest {
+    private static final int CHUNK = 64 << 10;
+    // ten chunks and a bit
+    private static final int SIZE = 10 * CHUNK + 123;
+
+    private BlobStoreStubServer server;
+    private BlobTransfer transfer;
+    private Path dir;
+    private byte[] data;
+    private Path source;
+    private final AtomicInteger chunks = new AtomicInteger();
+    // the chunk after which the store starts failing every request, or -1
+    private volatile int failAfter = -1;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("blob-test");
+        data = new byte[SIZE];
+        new Random(42).nextBytes(data);
+        source = dir.resolve("data.bin");
+        Files.write(source, data);
+        server = new BlobStoreStubServer();
+        transfer = new BlobTransfer(server.getURL(), null);
+        transfer.setChunkSize(CHUNK);
+        transfer.setListener((shockId, chunk, chunkCount, bytes) -> {
+            if (chunks.incrementAndGet() == failAfter) {
+                server.failNextRequests(Integer.MAX_VALUE);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        File up = transfer.upload(source, null);
+        assertNotNull(up.getShockId());
+        assertEquals(source.toString(), up.getPath());
+        assertEquals(11, chunks.get());
+        Path target = dir.resolve("copy.bin");
+        File down = transfer.download(up.getShockId(), target, null);
+        assertEquals(target.toString(), down.getPath());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        assertEquals(22, chunks.get());
+    }
+
+    @Test
+    public void testSameContentIsNotUploadedAgain() throws Exception {
+        File first = transfer.upload(source, null);
+        Path copy = dir.resolve("copy.bin");
+        Files.write(copy, data);
+        int requests = server.getRequestCount();
+        File second = transfer.upload(copy, null);
+        assertEquals(first.getShockId(), second.getShockId());
+        assertEquals(1, server.getNodeCount());
+        // one query for the hash
+        assertEquals(1, server.getRequestCount() - requests);
+    }
+
+    @Test
+    public void testUploadResumes() throws Exception {
+        transfer.setThreads(1);
+        transfer.setRetries(0);
+        Path journal = dir.resolve("upload.journal");
+        failAfter = 4;
+        try {
+            transfer.upload(source, journal);
+            fail("expected the upload to fail");
+        } catch (IOException e) {
+            // the store went down after the fourth part
+        }
+        assertEquals(4, chunks.get());
+        server.failNextRequests(0);
+        File up = transfer.upload(source, journal);
+        // only the missing parts were sent, to the same node
+        assertEquals(11, chunks.get());
+        assertEquals(1, server.getNodeCount());
+        Path target = dir.resolve("copy.bin");
+        transfer.download(up.getShockId(), target, null);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testDownloadResumes() throws Exception {
+        File up = transfer.upload(source, null);
+        transfer.setThreads(1);
+        transfer.setRetries(0);
+        Path target = dir.resolve("copy.bin");
+        Path journal = dir.resolve("download.journal");
+        failAfter = 11 + 6;
+        try {
+            transfer.download(up.getShockId(), target, journal);
+            fail("expected the download to fail");
+        } catch (IOException e) {
+            // the store went down after the sixth range
+        }
+        server.failNextRequests(0);
+        transfer.download(up.getShockId(), target, journal);
+        assertEquals(22, chunks.get());
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testDownloadRepairsCorruptedRange() throws Exception {
+        File up = transfer.upload(source, null);
+        Path target = dir.resolve("copy.bin");
+        Path journal = dir.resolve("download.journal");
+        transfer.download(up.getShockId(), target, journal);
+        byte[] corrupted = data.clone();
+        corrupted[3 * CHUNK + 5] ^= 1;
+        Files.write(target, corrupted);
+        int before = chunks.get();
+        transfer.download(up.getShockId(), target, journal);
+        assertEquals(1, chunks.get() - before);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testRetriesTransientFailures() throws Exception {
+        transfer.setRetries(3);
+        server.failNextRequests(2);
+        File up = transfer.upload(source, null);
+        Path target = dir.resolve("copy.bin");
+        server.failNextRequests(2);
+        transfer.download(up.getShockId(), target, null);
+        assertArrayEquals(data, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        Path empty = dir.resolve("empty");
+        Files.write(empty, new byte[0]);
+        File up = transfer.upload(empty, null);
+        Path target = dir.resolve("copy");
+        transfer.download(up.getShockId(), target, null);
+        assertEquals(0, Files.size(target));
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        File file = new File().withPath(source.toString());
+        transfer.resolve(file);
+        assertNotNull(file.getShockId());
+        String id = file.getShockId();
+        int requests = server.getRequestCount();
+        transfer.resolve(file);
+        assertEquals(id, file.getShockId());
+        assertEquals(requests, server.getRequestCount());
+    }
+}
@@ -0,0 +1,242 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.fbatools.BlobTransfer;
+import us.kbase.fbatools.BulkExportObjectsParams;
+import us.kbase.fbatools.BulkExportResult;
+import us.kbase.fbatools.BulkExporter;
+import us.kbase.fbatools.FbaToolsClient;
+
+public class BulkExporterTest {
+    private static final int MODELS = 12;
+
+    private BlobStoreStubServer blobs;
+    private FbaToolsStubServer server;
+    private BlobTransfer transfer;
+    private FbaToolsClient client;
+    private Path dir;
+    private Path scratch;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger flaky = new AtomicInteger();
+
+    private final BulkExporter.Catalog catalog = new BulkExporter.Catalog() {
+        @Override
+        public List<BulkExporter.Item> listObjects(String workspace, BulkExporter.Kind kind) {
+            List<BulkExporter.Item> ret = new ArrayList<BulkExporter.Item>();
+            if (kind == BulkExporter.Kind.MODEL) {
+                for (int i = 1; i <= MODELS; i++) {
+                    ret.add(new BulkExporter.Item("1/" + i + "/1", kind, "m" + i));
+                }
+            }
+            return ret;
+        }
+
+        @Override
+        public BulkExporter.Item describe(String ref) {
+            return new BulkExporter.Item(ref, ref.startsWith("2/") ? BulkExporter.Kind.FBA
+                    : ref.startsWith("3/") ? BulkExporter.Kind.MEDIA : BulkExporter.Kind.MODEL, null);
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("bulk-export-test");
+        scratch = dir.resolve("scratch");
+        blobs = new BlobStoreStubServer();
+        transfer = new BlobTransfer(blobs.getURL(), null);
+        server = new FbaToolsStubServer()
+                .withHandler("fba_tools.export_model_as_sbml_file", (params, auth) -> export(params, ".xml"))
+                .withHandler("fba_tools.export_fba_as_tsv_file", (params, auth) -> export(params, ".tsv"))
+                .withHandler("fba_tools.export_media_as_excel_file", (params, auth) -> export(params, ".xls"));
+        client = new FbaToolsClient(server.getURL());
+        client.setIsInsecureHttpConnectionAllowed(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        blobs.close();
+        delete(dir);
+    }
+
+    private static void delete(Path p) throws IOException {
+        if (Files.isDirectory(p)) {
+            try (Stream<Path> left = Files.list(p)) {
+                for (Path c : (Iterable<Path>) left::iterator) {
+                    delete(c);
+                }
+            }
+        }
+        Files.delete(p);
+    }
+
+    // uploads a file named after the object and returns its node; 1/3/1
+    // fails once, 1/9/1 always, and 1/11/1 and 1/12/1 have the same name
+    private Map<String, Object> export(com.fasterxml.jackson.databind.JsonNode params, String ext)
+            throws Exception {
+        int n = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(n, Math::max);
+        try {
+            String ref = params.get(0).path("input_ref").asText();
+            if (ref.equals("1/3/1") && flaky.getAndIncrement() == 0) {
+                throw new IOException("transient");
+            }
+            if (ref.equals("1/9/1")) {
+                throw new IOException("gone");
+            }
+            Thread.sleep(50);
+            String name = ref.equals("1/11/1") || ref.equals("1/12/1") ? "dup" : ref.replace('/', '_');
+            Path f = Files.createTempDirectory(dir, "upload").resolve(name + ext);
+            Files.write(f, ("export of " + ref).getBytes(StandardCharsets.UTF_8));
+            Map<String, Object> ret = new HashMap<String, Object>();
+            ret.put("shock_id", transfer.upload(f, null).getShockId());
+            return ret;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static BulkExportObjectsParams params() {
+        return new BulkExportObjectsParams().withWorkspace("ws").withAllModels(1L)
+                .withRefs(Arrays.asList("2/1/1", "3/1/1", "1/2/1")).withMediaFormat("excel");
+    }
+
+    private long scratchFiles() throws IOException {
+        try (Stream<Path> s = Files.list(scratch)) {
+            return s.count();
+        }
+    }
+
+    @Test
+    public void testArchive() throws Exception {
+        BulkExporter ex = new BulkExporter(client, transfer);
+        ex.setMaxConcurrentExports(3);
+        ex.setRetries(1);
+        ex.setScratch(scratch);
+        final AtomicInteger maxFiles = new AtomicInteger();
+        final AtomicInteger calls = new AtomicInteger();
+        ex.setListener((entry, done, total) -> {
+            assertEquals(calls.incrementAndGet(), done);
+            assertEquals(MODELS + 2, total);
+            try {
+                maxFiles.accumulateAndGet((int) scratchFiles(), Math::max);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Path archive = dir.resolve("out.zip");
+        BulkExportResult r = ex.export(params(), catalog, archive);
+        assertEquals(MODELS + 2, r.getEntries().size());
+        assertEquals(1, r.getFailed().size());
+        BulkExportResult.Entry failed = r.getFailed().get(0);
+        assertEquals("1/9/1", failed.getItem().getRef());
+        assertEquals(2, failed.getAttempts());
+        assertNull(failed.getEntryName());
+        assertTrue(failed.getError().getMessage(), failed.getError().getMessage().contains("gone"));
+        assertEquals(Arrays.asList(failed.getItem()), r.getFailedItems());
+        assertTrue(maxInFlight.get() <= 3);
+        assertTrue(maxFiles.get() <= 3);
+        assertEquals(0, scratchFiles());
+
+        Set<String> names = new HashSet<String>();
+        try (ZipFile zip = new ZipFile(archive.toFile())) {
+            assertEquals(MODELS + 1, zip.size());
+            for (BulkExportResult.Entry e : r.getEntries()) {
+                if (!e.isSucceeded()) {
+                    continue;
+                }
+                String ref = e.getItem().getRef();
+                assertEquals(ref.equals("1/3/1") ? 2 : 1, e.getAttempts());
+                ZipEntry z = zip.getEntry(e.getEntryName());
+                byte[] content = new byte[(int) e.getBytes()];
+                assertEquals(content.length, zip.getInputStream(z).read(content));
+                assertEquals("export of " + ref, new String(content, StandardCharsets.UTF_8));
+                names.add(e.getEntryName());
+            }
+        }
+        assertTrue(names.contains("model_objects/2_1_1.tsv"));
+        assertTrue(names.contains("model_objects/3_1_1.xls"));
+        assertTrue(names.contains("model_objects/1_2_1.xml"));
+        assertTrue(names.contains("model_objects/dup.xml"));
+        assertTrue(names.contains("model_objects/dup_2.xml"));
+    }
+
+    @Test
+    public void testFailureCleansScratch() throws Exception {
+        BulkExporter ex = new BulkExporter(client, transfer);
+        ex.setMaxConcurrentExports(4);
+        ex.setRetries(0);
+        ex.setScratch(scratch);
+        Files.createDirectories(scratch);
+        Path mine = Files.write(scratch.resolve("keep.txt"), new byte[] {1});
+        ex.setListener((entry, done, total) -> {
+            if (done == 3) {
+                throw new IllegalStateException("consumer failed");
+            }
+        });
+        try {
+            ex.export(params(), catalog, dir.resolve("out.zip"));
+            fail("exported past a failed listener");
+        } catch (IllegalStateException e) {
+            assertEquals("consumer failed", e.getMessage());
+        }
+        // exports cancelled mid call remove their own files once they end
+        for (int i = 0; i < 100 && inFlight.get() > 0; i++) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(200);
+        try (Stream<Path> s = Files.list(scratch)) {
+            assertEquals(Collections.singletonList(mine), Arrays.asList(s.toArray()));
+        }
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        BulkExporter ex = new BulkExporter(client, transfer);
+        try {
+            ex.setMaxConcurrentExports(0);
+            fail("accepted no exports");
+        } catch (IllegalArgumentException e) {
+            assertEquals("maxConcurrentExports must be at least 1", e.getMessage());
+        }
+        try {
+            BulkExporter.items(new BulkExportObjectsParams().withAllMedia(1L), catalog);
+            fail("listed without a workspace");
+        } catch (IllegalArgumentException e) {
+            assertEquals("A workspace is required to export all objects of a type", e.getMessage());
+        }
+        // there is no call for the format, so the service is never asked
+        ex.setRetries(0);
+        ex.setScratch(scratch);
+        BulkExportResult r = ex.export(Arrays.asList(new BulkExporter.Item("2/1/1", BulkExporter.Kind.FBA, "f")),
+                Collections.singletonMap(BulkExporter.Kind.FBA, "sbml"), dir.resolve("out.zip"));
+        assertEquals(1, r.getFailed().size());
+        assertEquals("Objects of type KBaseFBA.FBA cannot be exported as sbml",
+                r.getFailed().get(0).getError().getMessage());
+        assertEquals(0, server.getCallCount());
+    }
+}
@@ -0,0 +1,261 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaComparison;
+import us.kbase.fbatools.FbaComparisonResult;
+import us.kbase.fbatools.FbaComparisonResult.Alignment;
+import us.kbase.fbatools.FbaComparisonResult.Similarity;
+import us.kbase.fbatools.FbaComparisonResult.State;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaResult;
+import us.kbase.fbatools.FbaSnapshot;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+
+/**
+ * Tests of FbaComparison on solutions of test/data/fba_test_model.json (see
+ * FbaProblemTest), each unique:
+ * <ul>
+ * <li>aer: 10 of A and 5 of O, respiring 5 and fermenting 20/3, growth 25/3;
+ * <li>anaer: no O, fermenting 40/3, growth 20/3;
+ * <li>noresp: O offered but respiration blocked, as anaer;
+ * <li>noferm: the model without ferm_c0 and tX_c0, on 5 of A and 5 of O,
+ * growth 5;
+ * <li>wup: aer edited so that tW_c0 runs backwards and W is taken up.
+ * </ul>
+ */
+public class FbaComparisonTest {
+    private static final double TOL = 1e-9;
+    private static final List<String> REACTIONS = Arrays.asList("tA_c0", "tO_c0", "glyc_c0", "resp_c0", "ferm_c0",
+            "tX_c0", "tW_c0", "mk_c0");
+
+    private static Map<String, FbaResult> fbas;
+
+    @BeforeClass
+    public static void solve() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        JsonNode full = mapper.readTree(new File("test/data/fba_test_media.json"));
+        ObjectNode anaerobic = full.deepCopy();
+        anaerobic.withArray("mediacompounds").remove(1);
+        ObjectNode noferm = model.deepCopy();
+        ArrayNode rxns = noferm.withArray("modelreactions");
+        for (int i = rxns.size() - 1; i >= 0; i--) {
+            String id = rxns.get(i).get("id").asText();
+            if (id.equals("ferm_c0") || id.equals("tX_c0")) {
+                rxns.remove(i);
+            }
+        }
+        fbas = new LinkedHashMap<String, FbaResult>();
+        ObjectNode aer = fba(mapper, "aer", model, full, null);
+        fbas.put("aer", FbaResult.fromJson(aer));
+        fbas.put("anaer", FbaResult.fromJson(fba(mapper, "anaer", model, anaerobic, null)));
+        fbas.put("noresp", FbaResult.fromJson(fba(mapper, "noresp", model, full,
+                new RunFluxBalanceAnalysisParams().withCustomBoundList(Arrays.asList("0<resp_c0<0")))));
+        fbas.put("noferm", FbaResult.fromJson(fba(mapper, "noferm", noferm, full, null)));
+        for (JsonNode v : aer.get("FBAReactionVariables")) {
+            if (v.get("modelreaction_ref").asText().endsWith("/tW_c0")) {
+                ((ObjectNode) v).put("value", -5.0);
+            }
+        }
+        for (JsonNode v : aer.get("FBACompoundVariables")) {
+            if (v.get("modelcompound_ref").asText().endsWith("/cpdW_e0")) {
+                ((ObjectNode) v).put("value", 5.0);
+            }
+        }
+        fbas.put("wup", FbaResult.fromJson(aer.put("id", "wup")));
+    }
+
+    private static ObjectNode fba(ObjectMapper mapper, String id, JsonNode model, JsonNode media,
+            RunFluxBalanceAnalysisParams params) {
+        FbaSolution s = FbaProblem.fromModel(model, media, params).solve();
+        ObjectNode ret = mapper.createObjectNode().put("id", id).put("objectiveValue", s.getObjectiveValue())
+                .put("fbamodel_ref", "ws/model").put("media_ref", "ws/" + media.get("id").asText());
+        ret.set("FBAReactionVariables", mapper.valueToTree(s.getReactionVariables()));
+        ret.set("FBABiomassVariables", mapper.valueToTree(s.getBiomassVariables()));
+        ret.set("FBACompoundVariables", mapper.valueToTree(s.getCompoundVariables()));
+        return ret;
+    }
+
+    @Test
+    public void testConservation() throws Exception {
+        for (int threads : new int[] {1, 3}) {
+            FbaComparison cmp = new FbaComparison();
+            cmp.setThreads(threads);
+            FbaComparisonResult c = cmp.compare(fbas);
+            assertEquals(Arrays.asList("aer", "anaer", "noresp", "noferm", "wup"), c.getFbaIds());
+            assertEquals(25.0 / 3, c.getObjectiveValue(0), TOL);
+            assertEquals(5, c.getObjectiveValue(c.indexOf("noferm")), TOL);
+            assertEquals("ws/fba_test_media", c.getMediaRef(1));
+            Alignment r = c.getReactions();
+            assertFalse(r.isCompounds());
+            assertEquals(REACTIONS, r.getIds());
+            // ferm_c0 and tX_c0 are missing from noferm
+            assertEquals(6, r.getCommonCount());
+
+            int tA = r.indexOf("tA_c0");
+            assertEquals(5, r.getCount(tA, State.POSITIVE));
+            assertEquals(9, r.getMeanFlux(tA, State.POSITIVE), TOL);
+            assertEquals(2, r.getFluxStddev(tA, State.POSITIVE), TOL);
+            assertEquals(1.0, r.getFraction(tA, State.POSITIVE), 0);
+
+            int ferm = r.indexOf("ferm_c0");
+            assertEquals(4, r.getCount(ferm, State.POSITIVE));
+            assertEquals(1, r.getCount(ferm, State.ABSENT));
+            assertEquals(4, r.getFbaCount(ferm));
+            assertEquals(10, r.getMeanFlux(ferm, State.POSITIVE), TOL);
+            assertEquals(10.0 / 3, r.getFluxStddev(ferm, State.POSITIVE), TOL);
+            assertEquals(State.ABSENT, r.getState(ferm, 3));
+            assertTrue(Double.isNaN(r.getFlux(ferm, 3)));
+            assertEquals("NA", r.getLabel(State.ABSENT));
+
+            int resp = r.indexOf("resp_c0");
+            assertEquals(3, r.getCount(resp, State.POSITIVE));
+            assertEquals(2, r.getCount(resp, State.INACTIVE));
+            assertEquals(0, r.getUpperBound(resp, 2), 0);
+            assertEquals(1000, r.getUpperBound(resp, 1), 0);
+
+            int tW = r.indexOf("tW_c0");
+            assertEquals(2, r.getCount(tW, State.POSITIVE));
+            assertEquals(2, r.getCount(tW, State.INACTIVE));
+            assertEquals(1, r.getCount(tW, State.NEGATIVE));
+            assertEquals(-5, r.getMeanFlux(tW, State.NEGATIVE), 0);
+            assertEquals(0, r.getFluxStddev(tW, State.POSITIVE), 0);
+            // a tie goes to the first state
+            assertEquals(State.POSITIVE, r.getMostCommonState(tW));
+            assertTrue(r.hasSignChange(tW));
+            for (int row = 0; row < REACTIONS.size(); row++) {
+                assertEquals(REACTIONS.get(row), row == tW, r.hasSignChange(row));
+            }
+
+            assertEquals(8, c.getReactionCount(0));
+            assertEquals(6, c.getReactionCount(3));
+            assertEquals(8, c.getForwardReactions(0));
+            assertEquals(5, c.getForwardReactions(1));
+            assertEquals(0, c.getReverseReactions(1));
+            assertEquals(1, c.getReverseReactions(4));
+
+            Alignment cpd = c.getCompounds();
+            assertTrue(cpd.isCompounds());
+            assertEquals(Arrays.asList("cpdA_e0", "cpdO_e0", "cpdW_e0", "cpdX_e0", "cpd11416_c0"), cpd.getIds());
+            assertEquals(5, cpd.getCommonCount());
+            assertEquals(State.POSITIVE, cpd.getState(cpd.indexOf("cpdO_e0"), 0));
+            assertEquals("UP", cpd.getLabel(State.POSITIVE));
+            assertEquals("EX", cpd.getLabel(cpd.getState(cpd.indexOf("cpdX_e0"), 0)));
+            // excreted twice, inactive twice and taken up once
+            assertEquals(State.NEGATIVE, cpd.getMostCommonState(cpd.indexOf("cpdW_e0")));
+            assertEquals(2, c.getUptakeCompounds(0));
+            assertEquals(3, c.getExcretionCompounds(0));
+            assertEquals(1, c.getUptakeCompounds(1));
+            assertEquals(3, c.getUptakeCompounds(4));
+        }
+    }
+
+    @Test
+    public void testSimilarities() throws Exception {
+        FbaComparisonResult c = new FbaComparison().compare(fbas);
+        int aer = c.indexOf("aer");
+        int anaer = c.indexOf("anaer");
+        int noresp = c.indexOf("noresp");
+        int noferm = c.indexOf("noferm");
+        int wup = c.indexOf("wup");
+        assertEquals(-1, c.indexOf("none"));
+        // the reactions and compounds counted, in Similarity order
+        assertSimilarities(c, aer, anaer, 8, 5, 0, 0, 5, 1, 2, 0, 0, 0);
+        assertSimilarities(c, anaer, noresp, 8, 5, 0, 3, 5, 1, 2, 2, 0, 0);
+        assertSimilarities(c, aer, noferm, 6, 6, 0, 0, 5, 2, 2, 0, 0, 0);
+        assertSimilarities(c, aer, wup, 8, 7, 0, 0, 5, 2, 2, 0, 1, 1);
+        assertSimilarities(c, noferm, wup, 6, 5, 0, 0, 5, 2, 1, 0, 1, 1);
+        for (Similarity s : Similarity.values()) {
+            assertEquals(0, c.getSimilarity(s, anaer, anaer));
+        }
+
+        JsonNode json = c.toJson("cmp", null);
+        assertEquals(6, json.get("common_reactions").asInt());
+        assertEquals(5, json.get("common_compounds").asInt());
+        JsonNode first = json.get("fbas").get(0);
+        assertEquals("aer", first.get("id").asText());
+        assertEquals("[8,5,0,0,5,1,2,0]", first.get("fba_similarity").get("anaer").toString());
+        assertFalse(first.get("fba_similarity").has("aer"));
+        assertEquals(3, first.get("excretion_compounds").asInt());
+        JsonNode tW = json.get("reactions").get(REACTIONS.indexOf("tW_c0"));
+        assertEquals("tW_c0", tW.get("id").asText());
+        assertEquals("[2,0.4,5.0,0.0]", tW.get("state_conservation").get("FOR").toString());
+        assertEquals("FOR", tW.get("most_common_state").asText());
+        assertEquals("REV", tW.get("reaction_fluxes").get("wup").get(0).asText());
+        JsonNode ferm = json.get("reactions").get(REACTIONS.indexOf("ferm_c0"));
+        assertEquals(1, ferm.get("state_conservation").get("NA").get(0).asInt());
+        assertFalse(ferm.get("reaction_fluxes").has("noferm"));
+    }
+
+    private static void assertSimilarities(FbaComparisonResult c, int f, int g, int... expected) {
+        Similarity[] all = Similarity.values();
+        for (int s = 0; s < all.length; s++) {
+            assertEquals(all[s] + " of " + f + " and " + g, expected[s], c.getSimilarity(all[s], f, g));
+            assertEquals(all[s] + " of " + g + " and " + f, expected[s], c.getSimilarity(all[s], g, f));
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        FbaComparisonResult c = new FbaComparison().compare(fbas);
+        Path dir = Files.createTempDirectory("comparison-test");
+        Path file = dir.resolve("fbas.snap");
+        try {
+            try (FbaSnapshot.Writer w = FbaSnapshot.create(file)) {
+                for (Map.Entry<String, FbaResult> e : fbas.entrySet()) {
+                    w.add(e.getKey(), e.getValue());
+                }
+            }
+            FbaComparisonResult s;
+            try (FbaSnapshot snapshot = FbaSnapshot.open(file)) {
+                FbaComparison cmp = new FbaComparison();
+                cmp.setThreads(2);
+                s = cmp.compare(snapshot);
+            }
+            assertEquals(c.getFbaIds(), s.getFbaIds());
+            // a snapshot also carries the biomass, always forward
+            Alignment r = s.getReactions();
+            assertEquals(REACTIONS, r.getIds().subList(0, REACTIONS.size()));
+            assertEquals("bio1", r.getIds().get(REACTIONS.size()));
+            assertEquals(7, r.getCommonCount());
+            for (int row = 0; row < REACTIONS.size(); row++) {
+                for (State st : State.values()) {
+                    assertEquals(c.getReactions().getCount(row, st), r.getCount(row, st));
+                    assertEquals(c.getReactions().getMeanFlux(row, st), r.getMeanFlux(row, st), TOL);
+                }
+            }
+            for (int f = 0; f < 5; f++) {
+                for (int g = f + 1; g < 5; g++) {
+                    assertEquals(c.getSimilarity(Similarity.COMMON_FORWARD, f, g) + 1,
+                            s.getSimilarity(Similarity.COMMON_FORWARD, f, g));
+                    assertEquals(c.getSimilarity(Similarity.REACTION_SIGN_CHANGES, f, g),
+                            s.getSimilarity(Similarity.REACTION_SIGN_CHANGES, f, g));
+                    assertEquals(0, s.getSimilarity(Similarity.COMMON_EXCHANGE_COMPOUNDS, f, g));
+                }
+            }
+            assertTrue(s.getCompounds().getIds().isEmpty());
+            assertNull(s.getFbamodelRef(0));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+}
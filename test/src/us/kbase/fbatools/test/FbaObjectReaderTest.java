@@ -0,0 +1,186 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import us.kbase.fbatools.FBAReactionVariable;
+import us.kbase.fbatools.FbaObjectReader;
+import us.kbase.fbatools.FbaObjectWriter;
+
+public class FbaObjectReaderTest {
+    private static final Path MODEL = Paths.get("test/data/fba_test_model.json");
+
+    private static FbaObjectReader reader(String json) throws IOException {
+        return new FbaObjectReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testReadModel() throws Exception {
+        JsonNode whole = new ObjectMapper().readTree(MODEL.toFile());
+        List<String> fields = new ArrayList<String>();
+        int compounds = 0;
+        try (FbaObjectReader r = FbaObjectReader.open(MODEL)) {
+            assertNull(r.getField());
+            for (String f = r.nextField(); f != null; f = r.nextField()) {
+                fields.add(f);
+                assertEquals(f, r.getField());
+                if (f.equals("id")) {
+                    assertEquals("fba_test_model", r.readValue(String.class));
+                } else if (f.equals("modelcompounds")) {
+                    for (JsonNode cpd = r.nextRecord(); cpd != null; cpd = r.nextRecord()) {
+                        assertEquals(whole.get("modelcompounds").get(compounds++), cpd);
+                    }
+                    assertNull(r.nextRecord());
+                } else if (f.equals("biomasses")) {
+                    assertEquals(whole.get("biomasses"), r.readValue());
+                }
+                // the other fields are skipped unread
+            }
+            assertNull(r.getField());
+            assertNull(r.nextField());
+        }
+        assertEquals(Arrays.asList("id", "name", "modelcompartments", "modelcompounds", "modelreactions",
+                "biomasses"), fields);
+        assertEquals(12, compounds);
+    }
+
+    @Test
+    public void testRecords() throws Exception {
+        List<String> ids = new ArrayList<String>();
+        try (FbaObjectReader r = FbaObjectReader.open(MODEL)) {
+            for (JsonNode rxn : r.records("modelreactions", JsonNode.class)) {
+                ids.add(rxn.get("id").asText());
+            }
+            assertEquals("modelreactions", r.getField());
+            // the field after it is still there, a field before it is not
+            assertTrue(r.seekField("biomasses"));
+            assertFalse(r.records("modelcompounds", JsonNode.class).iterator().hasNext());
+        }
+        assertEquals(Arrays.asList("tA_c0", "tO_c0", "glyc_c0", "resp_c0", "ferm_c0", "tX_c0", "tW_c0", "mk_c0"),
+                ids);
+    }
+
+    @Test
+    public void testPartlyReadArray() throws Exception {
+        try (FbaObjectReader r = reader("{\"a\": [{\"x\": [1, 2]}, {\"x\": [3]}, 4], \"b\": null, \"c\": 5}")) {
+            assertTrue(r.seekField("a"));
+            assertEquals(2, r.nextRecord().get("x").size());
+            // the rest of the array is skipped
+            assertEquals("b", r.nextField());
+            // a null array has no elements
+            assertNull(r.nextRecord());
+            assertEquals("c", r.nextField());
+            try {
+                r.nextRecord();
+                fail("read a number as an array");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Field c is not an array"));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        JsonNode whole = new ObjectMapper().readTree(MODEL.toFile());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FbaObjectReader r = FbaObjectReader.open(MODEL);
+                FbaObjectWriter w = new FbaObjectWriter(out)) {
+            for (String f = r.nextField(); f != null; f = r.nextField()) {
+                if (f.equals("modelreactions") || f.equals("modelcompounds")) {
+                    w.beginArray(f);
+                    for (JsonNode rec = r.nextRecord(); rec != null; rec = r.nextRecord()) {
+                        w.writeRecord(rec);
+                    }
+                    w.endArray();
+                } else {
+                    w.writeField(f, r.readValue());
+                }
+            }
+        }
+        assertEquals(whole, new ObjectMapper().readTree(out.toByteArray()));
+    }
+
+    @Test
+    public void testTypedRoundTrip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FbaObjectWriter w = new FbaObjectWriter(out)) {
+            w.writeField("objectiveValue", 8.5);
+            w.beginArray("FBAReactionVariables");
+            for (int i = 0; i < 1000; i++) {
+                w.writeRecord(new FBAReactionVariable().withModelreactionRef("~/fbamodel/modelreactions/id/rxn" + i)
+                        .withValue((double) i).withMin(i - 0.5).withMax(i + 0.5).withClass_("Variable"));
+            }
+            // left open, the array and the object are ended on close
+        }
+        try (FbaObjectReader r = new FbaObjectReader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("objectiveValue", r.nextField());
+            assertEquals(8.5, r.readValue(Double.class), 0);
+            int i = 0;
+            for (FBAReactionVariable v : r.records("FBAReactionVariables", FBAReactionVariable.class)) {
+                assertEquals("~/fbamodel/modelreactions/id/rxn" + i, v.getModelreactionRef());
+                assertEquals(i, v.getValue(), 0);
+                assertEquals(i + 0.5, v.getMax(), 0);
+                assertEquals("Variable", v.getClass_());
+                i++;
+            }
+            assertEquals(1000, i);
+            assertNull(r.nextField());
+        }
+    }
+
+    @Test
+    public void testMisuse() throws Exception {
+        try {
+            reader("[1, 2]");
+            fail("read an array as an object");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Expected a JSON object"));
+        }
+        try (FbaObjectReader r = reader("{\"a\": 1}")) {
+            try {
+                r.readValue();
+                fail("read a value before the first field");
+            } catch (IllegalStateException e) {
+                assertEquals("No current field", e.getMessage());
+            }
+            r.nextField();
+            r.readValue();
+            try {
+                r.readValue();
+                fail("read a value twice");
+            } catch (IllegalStateException e) {
+                assertEquals("The value of a was already read", e.getMessage());
+            }
+        }
+        try (FbaObjectWriter w = new FbaObjectWriter(new ByteArrayOutputStream())) {
+            try {
+                w.writeRecord(1);
+                fail("wrote a record outside an array");
+            } catch (IllegalStateException e) {
+                assertEquals("No array is open", e.getMessage());
+            }
+            w.beginArray("a");
+            try {
+                w.writeField("b", 1);
+                fail("wrote a field inside an array");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+}
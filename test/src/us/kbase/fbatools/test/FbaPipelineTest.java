@@ -0,0 +1,189 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.auth.AuthToken;
+import us.kbase.fbatools.BuildMetabolicModelParams;
+import us.kbase.fbatools.BuildMetabolicModelResults;
+import us.kbase.fbatools.FbaPipeline;
+import us.kbase.fbatools.FbaToolsAsyncClient;
+import us.kbase.fbatools.GapfillMetabolicModelParams;
+import us.kbase.fbatools.GapfillMetabolicModelResults;
+import us.kbase.fbatools.PipelineJournal;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.RunFluxBalanceAnalysisResults;
+
+public class FbaPipelineTest {
+    private FbaToolsStubServer server;
+    private FbaToolsAsyncClient client;
+    private Path dir;
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+    // the model each FBA was run on, by FBA output id
+    private final Map<String, String> fbaModels = new ConcurrentHashMap<String, String>();
+    private final AtomicInteger objects = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("pipeline-test");
+        server = new FbaToolsStubServer()
+                .withHandler("fba_tools.build_metabolic_model", (params, auth) ->
+                        result("build_metabolic_model", "new_fbamodel_ref"))
+                .withHandler("fba_tools.gapfill_metabolic_model", (params, auth) ->
+                        result("gapfill_metabolic_model", "new_fbamodel_ref"))
+                .withHandler("fba_tools.run_flux_balance_analysis", (params, auth) -> {
+                    fbaModels.put(params.get(0).path("fba_output_id").asText(),
+                            params.get(0).path("fbamodel_id").asText());
+                    return result("run_flux_balance_analysis", "new_fba_ref");
+                });
+        client = new FbaToolsAsyncClient(server.getURL(), new AuthToken("token", "user"));
+        client.setIsInsecureHttpConnectionAllowed(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private Map<String, Object> result(String method, String refField) {
+        calls.computeIfAbsent(method, k -> new AtomicInteger()).incrementAndGet();
+        Map<String, Object> ret = new LinkedHashMap<String, Object>();
+        ret.put(refField, "1/" + objects.incrementAndGet() + "/1");
+        return ret;
+    }
+
+    private int calls(String method) {
+        AtomicInteger n = calls.get(method);
+        return n == null ? 0 : n.get();
+    }
+
+    // build -> gapfill -> FBA on two media
+    private List<FbaPipeline.Stage<?>> declare(FbaPipeline p, String template, String gapfillMedia) {
+        FbaPipeline.Stage<BuildMetabolicModelResults> build = p.buildMetabolicModel("build",
+                new BuildMetabolicModelParams().withGenomeId("g").withTemplateId(template).withWorkspace("ws"));
+        FbaPipeline.Stage<GapfillMetabolicModelResults> gf = p.gapfillMetabolicModel("gapfill", build,
+                new GapfillMetabolicModelParams().withMediaId(gapfillMedia).withWorkspace("ws"));
+        List<FbaPipeline.Stage<?>> stages = new ArrayList<FbaPipeline.Stage<?>>();
+        stages.add(build);
+        stages.add(gf);
+        for (String media : new String[] {"glc", "ac"}) {
+            FbaPipeline.Stage<RunFluxBalanceAnalysisResults> fba = p.runFluxBalanceAnalysis("fba-" + media, gf,
+                    new RunFluxBalanceAnalysisParams().withMediaId(media).withFbaOutputId("fba-" + media)
+                            .withWorkspace("ws"));
+            stages.add(fba);
+        }
+        return stages;
+    }
+
+    private List<FbaPipeline.Stage<?>> run(Path journal, String template, String gapfillMedia) throws Exception {
+        try (PipelineJournal j = new PipelineJournal(journal)) {
+            FbaPipeline p = new FbaPipeline(client, j);
+            List<FbaPipeline.Stage<?>> stages = declare(p, template, gapfillMedia);
+            p.run().get();
+            return stages;
+        }
+    }
+
+    @Test
+    public void testStagesFeedDownstream() throws Exception {
+        FbaPipeline p = new FbaPipeline(client);
+        List<FbaPipeline.Stage<?>> stages = declare(p, "gramneg", "Complete");
+        p.run().get();
+        assertEquals(1, calls("build_metabolic_model"));
+        assertEquals(1, calls("gapfill_metabolic_model"));
+        assertEquals(2, calls("run_flux_balance_analysis"));
+        String gapfilled = stages.get(1).getOutputRef();
+        assertEquals(gapfilled, fbaModels.get("fba-glc"));
+        assertEquals(gapfilled, fbaModels.get("fba-ac"));
+    }
+
+    @Test
+    public void testUnchangedPipelineIsRestored() throws Exception {
+        Path journal = dir.resolve("journal.jsonl");
+        run(journal, "gramneg", "Complete");
+        List<FbaPipeline.Stage<?>> again = run(journal, "gramneg", "Complete");
+        for (FbaPipeline.Stage<?> s : again) {
+            assertTrue(s.getId(), s.isRestored());
+        }
+        assertEquals(1, calls("build_metabolic_model"));
+        assertEquals(1, calls("gapfill_metabolic_model"));
+        assertEquals(2, calls("run_flux_balance_analysis"));
+    }
+
+    @Test
+    public void testChangedUpstreamRerunsDownstream() throws Exception {
+        Path journal = dir.resolve("journal.jsonl");
+        List<FbaPipeline.Stage<?>> first = run(journal, "gramneg", "Complete");
+        List<FbaPipeline.Stage<?>> second = run(journal, "grampos", "Complete");
+        for (FbaPipeline.Stage<?> s : second) {
+            assertFalse(s.getId(), s.isRestored());
+        }
+        assertEquals(2, calls("build_metabolic_model"));
+        assertEquals(2, calls("gapfill_metabolic_model"));
+        assertEquals(4, calls("run_flux_balance_analysis"));
+        assertNotEquals(first.get(1).getOutputRef(), second.get(1).getOutputRef());
+        assertEquals(second.get(1).getOutputRef(), fbaModels.get("fba-glc"));
+        // and the new definitions are restored from then on
+        List<FbaPipeline.Stage<?>> third = run(journal, "grampos", "Complete");
+        for (FbaPipeline.Stage<?> s : third) {
+            assertTrue(s.getId(), s.isRestored());
+        }
+        assertEquals(4, calls("run_flux_balance_analysis"));
+    }
+
+    @Test
+    public void testChangedMiddleStage() throws Exception {
+        Path journal = dir.resolve("journal.jsonl");
+        run(journal, "gramneg", "Complete");
+        List<FbaPipeline.Stage<?>> second = run(journal, "gramneg", "Carbon-D-Glucose");
+        assertTrue(second.get(0).isRestored());
+        for (FbaPipeline.Stage<?> s : second.subList(1, second.size())) {
+            assertFalse(s.getId(), s.isRestored());
+        }
+        assertEquals(1, calls("build_metabolic_model"));
+        assertEquals(2, calls("gapfill_metabolic_model"));
+        assertEquals(4, calls("run_flux_balance_analysis"));
+    }
+
+    @Test
+    public void testRerunUpstreamInvalidatesDownstream() throws Exception {
+        Path journal = dir.resolve("journal.jsonl");
+        run(journal, "gramneg", "Complete");
+        // the gapfill runs again with the same definition, e.g. because its
+        // entry was lost, and produces another model
+        List<String> kept = new ArrayList<String>();
+        for (String line : Files.readAllLines(journal)) {
+            if (!line.contains("\"gapfill\"")) {
+                kept.add(line);
+            }
+        }
+        Files.write(journal, kept);
+        List<FbaPipeline.Stage<?>> second = run(journal, "gramneg", "Complete");
+        assertTrue(second.get(0).isRestored());
+        for (FbaPipeline.Stage<?> s : second.subList(1, second.size())) {
+            assertFalse(s.getId(), s.isRestored());
+        }
+        assertEquals(second.get(1).getOutputRef(), fbaModels.get("fba-ac"));
+        assertEquals(2, calls("gapfill_metabolic_model"));
+    }
+}
@@ -0,0 +1,73 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+
+/**
+ * Numeric regression tests of the local FBA engine on
+ * test/data/fba_test_model.json, a two pathway model whose optima can be
+ * worked out by hand. Substrate A (at most 10) is split into two P and two
+ * energy E by glyc (g1). P is respired with oxygen (at most 5) for three E
+ * by resp (g2 and g3), fermented for one E by ferm (g4 or g5), or made into
+ * the biomass precursor M with one E by mk (g6); biomass takes one M and
+ * four E. The optimum respires all the oxygen: growth 25/3.
+ */
+public class FbaProblemTest {
+    private static final double TOL = 1e-7;
+
+    private static JsonNode model;
+    private static JsonNode media;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = mapper.readTree(new File("test/data/fba_test_media.json"));
+    }
+
+    private static FbaSolution solve(RunFluxBalanceAnalysisParams params) {
+        return FbaProblem.fromModel(model, media, params).solve();
+    }
+
+    @Test
+    public void testObjective() {
+        FbaSolution s = solve(null);
+        assertTrue(s.isOptimal());
+        assertEquals(25.0 / 3, s.getObjectiveValue(), TOL);
+        assertEquals(10, s.getFlux("glyc_c0"), TOL);
+        assertEquals(5, s.getFlux("resp_c0"), TOL);
+        assertEquals(20.0 / 3, s.getFlux("ferm_c0"), TOL);
+        assertEquals(25.0 / 3, s.getFlux("mk_c0"), TOL);
+        assertEquals(10, s.getDrainFlux("cpdA_e0"), TOL);
+        assertEquals(-20.0 / 3, s.getDrainFlux("cpdX_e0"), TOL);
+    }
+
+    @Test
+    public void testParameters() {
+        // less respiration: (40 + 2 * 2) / 6
+        assertEquals(22.0 / 3, solve(new RunFluxBalanceAnalysisParams()
+                .withCustomBoundList(Arrays.asList("0<resp_c0<2"))).getObjectiveValue(), TOL);
+        // more oxygen than the substrate can use: P is all respired, 2 * 10 * 4 / 8
+        assertEquals(10, solve(new RunFluxBalanceAnalysisParams()
+                .withCustomBoundList(Arrays.asList("-100<cpdO_e0<100"))).getObjectiveValue(), TOL);
+        // fermentation only
+        assertEquals(20.0 / 3, solve(new RunFluxBalanceAnalysisParams()
+                .withReactionKoList(Arrays.asList("resp_c0"))).getObjectiveValue(), TOL);
+        // the Complete media opens every uptake
+        assertEquals(1000, FbaProblem.fromModel(model, null, null).solve().getObjectiveValue(), TOL);
+        // most fermentation: the energy it yields still has to go into
+        // biomass, 20 - b fermented for 5b energy
+        assertEquals(40.0 / 3, solve(new RunFluxBalanceAnalysisParams().withTargetReaction("tX_c0"))
+                .getObjectiveValue(), TOL);
+    }
+}
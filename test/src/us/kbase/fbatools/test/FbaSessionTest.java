@@ -0,0 +1,206 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSession;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.SimplexSolver;
+
+/**
+ * Tests of FbaSession on test/data/fba_test_model.json (see
+ * FbaProblemTest). With A uptake g, respiration r and fermentation f, the
+ * P and E balances give a growth of (4g + 2r) / 6 and f = 2g - r - growth:
+ * 25/3 on the test media, 20/3 without respiration (g2 and g3 encode its
+ * subunits), 5 without fermentation (g4 or g5 encode it) and none without
+ * glycolysis (g1).
+ */
+public class FbaSessionTest {
+    private static final double TOL = 1e-7;
+
+    private static JsonNode model;
+    private static JsonNode media;
+    private static ObjectNode anaerobic;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = mapper.readTree(new File("test/data/fba_test_media.json"));
+        anaerobic = media.deepCopy();
+        anaerobic.withArray("mediacompounds").remove(1);
+    }
+
+    private static void assertSameSolution(FbaSolution expected, FbaSolution got) {
+        assertEquals(expected.getObjectiveValue(), got.getObjectiveValue(), TOL);
+        for (int j = 0; j < expected.getValues().length; j++) {
+            assertEquals(expected.getProblem().getVariableId(j), expected.getValue(j), got.getValue(j), TOL);
+        }
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        FbaSession session = FbaSession.open(model, media, null);
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+        session.knockOutFeatures(Arrays.asList("g2"));
+        FbaSolution s = session.solve();
+        assertEquals(20.0 / 3, s.getObjectiveValue(), TOL);
+        assertEquals(0, s.getFlux("resp_c0"), TOL);
+        assertEquals(40.0 / 3, s.getFlux("ferm_c0"), TOL);
+        FbaSession.State noResp = session.saveState();
+        // either of g4 and g5 makes the fermentation enzyme, and a
+        // knockout only stops what the features given together stop
+        session.knockOutFeatures(Arrays.asList("g4"));
+        assertEquals(20.0 / 3, session.solve().getObjectiveValue(), TOL);
+        session.knockOutFeatures(Arrays.asList("g5"));
+        assertEquals(20.0 / 3, session.solve().getObjectiveValue(), TOL);
+        session.knockOutFeatures(Arrays.asList("g4", "g5"));
+        assertEquals(0, session.solve().getObjectiveValue(), TOL);
+        session.loadState(noResp);
+        assertEquals(20.0 / 3, session.solve().getObjectiveValue(), TOL);
+
+        session.reset();
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+        session.knockOutReactions(Arrays.asList("ferm"));
+        assertEquals(5, session.solve().getObjectiveValue(), TOL);
+        session.reset();
+        session.knockOutFeatures(Arrays.asList("g1"));
+        assertEquals(0, session.solve().getObjectiveValue(), TOL);
+        session.reset();
+        // a feature in no rule knocks out nothing
+        session.knockOutFeatures(Arrays.asList("g9"));
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+
+        session.setCustomBound("0<resp_c0<2");
+        s = session.solve();
+        assertEquals(22.0 / 3, s.getObjectiveValue(), TOL);
+        assertSameSolution(FbaProblem.fromModel(model, media, new RunFluxBalanceAnalysisParams()
+                .withCustomBoundList(Arrays.asList("0<resp_c0<2"))).solve(), s);
+        session.reset();
+        // with 4 of A, all of P goes to respiration and growth
+        session.setDrainBounds("cpdA", -100, 4);
+        s = session.solve();
+        assertEquals(4, s.getObjectiveValue(), TOL);
+        assertEquals(4, s.getFlux("resp_c0"), TOL);
+        assertEquals(0, s.getFlux("ferm_c0"), TOL);
+        session.reset();
+        session.setReactionBounds("bio1", 10, 10);
+        s = session.solve();
+        assertEquals(SimplexSolver.Status.INFEASIBLE, s.getStatus());
+        assertFalse(s.isOptimal());
+        session.reset();
+        assertSameSolution(FbaProblem.fromModel(model, media, null).solve(), session.solve());
+    }
+
+    @Test
+    public void testMedia() throws Exception {
+        FbaSession session = FbaSession.open(model, media, null);
+        session.solve();
+        session.setMedia(anaerobic);
+        FbaSolution s = session.solve();
+        assertSameSolution(FbaProblem.fromModel(model, anaerobic, null).solve(), s);
+        assertEquals(20.0 / 3, s.getObjectiveValue(), TOL);
+        session.setMedia(media);
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+        // custom bounds on compounds are replaced by the media's
+        session.setCustomBound("0<cpdO_e0<1");
+        assertEquals(7, session.solve().getObjectiveValue(), TOL);
+        session.setMedia(media);
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+    }
+
+    @Test
+    public void testObjective() throws Exception {
+        FbaSession session = FbaSession.open(model, media, null);
+        FbaSession.State initial = session.saveState();
+        FbaProblem problem = session.getProblem();
+        assertEquals(problem.getObjectiveVariable(), session.getObjectiveVariable());
+        session.setObjective("resp_c0", true);
+        assertEquals(problem.getReactionVariable("resp_c0"), session.getObjectiveVariable());
+        assertEquals(5, session.solve().getObjectiveValue(), TOL);
+        // the most X is excreted without respiration, with all of A
+        session.setObjective("cpdX_e0", false);
+        FbaSolution s = session.solve();
+        assertEquals(-40.0 / 3, s.getObjectiveValue(), TOL);
+        assertEquals(0, s.getFlux("resp_c0"), TOL);
+        FbaSession.State minX = session.saveState();
+        session.loadState(initial);
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+        session.loadState(minX);
+        assertEquals(-40.0 / 3, session.solve().getObjectiveValue(), TOL);
+        session.reset();
+        assertEquals(problem.getObjectiveVariable(), session.getObjectiveVariable());
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+    }
+
+    @Test
+    public void testWarmStart() throws Exception {
+        FbaSession session = FbaSession.open(model, media, null);
+        session.solve();
+        assertTrue(session.getIterations() > 0);
+        // the previous optimum is still optimal
+        session.solve();
+        assertEquals(0, session.getIterations());
+        session.setDrainBounds("cpdO", -100, 4);
+        assertEquals(8, session.solve().getObjectiveValue(), TOL);
+
+        FbaSession copy = session.copy();
+        assertEquals(8, copy.solve().getObjectiveValue(), TOL);
+        assertEquals(0, copy.getIterations());
+        copy.knockOutReactions(Collections.singletonList("resp_c0"));
+        assertEquals(20.0 / 3, copy.solve().getObjectiveValue(), TOL);
+        assertEquals(8, session.solve().getObjectiveValue(), TOL);
+        // a state saved from a copy loads into the original
+        session.loadState(copy.saveState());
+        assertEquals(20.0 / 3, session.solve().getObjectiveValue(), TOL);
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        FbaSession session = FbaSession.open(model, media, null);
+        try {
+            session.setReactionBounds("nope_c0", 0, 1);
+            fail("bounded an unknown reaction");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No such model reaction: nope_c0", e.getMessage());
+        }
+        try {
+            session.setDrainBounds("cpdP", 0, 1);
+            fail("bounded an undrained compound");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No drain for compound cpdP", e.getMessage());
+        }
+        try {
+            session.setCustomBound("resp_c0<2");
+            fail("accepted a malformed bound");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Custom bound must be of the form lower<id<upper: resp_c0<2", e.getMessage());
+        }
+        try {
+            session.setCustomBound("0<cpdP_c0<2");
+            fail("bounded an undrained compound");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Custom bound on unknown reaction or undrained compound: 0<cpdP_c0<2", e.getMessage());
+        }
+        try {
+            session.setObjective("nope", true);
+            fail("accepted an unknown objective");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Unknown objective: nope", e.getMessage());
+        }
+        // nothing was changed
+        assertEquals(25.0 / 3, session.solve().getObjectiveValue(), TOL);
+    }
+}
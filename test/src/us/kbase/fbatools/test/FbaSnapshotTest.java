@@ -0,0 +1,290 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaResult;
+import us.kbase.fbatools.FbaSnapshot;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.FluxVariabilityAnalysis;
+
+/**
+ * Tests of FbaSnapshot with three solutions: a flux variability analysis of
+ * test/data/fba_test_model.json, an FBA object carrying one reaction more
+ * and a reactions table carrying another.
+ */
+public class FbaSnapshotTest {
+    private static final int COLUMNS = FbaSnapshot.Column.values().length;
+
+    private static FbaSolution fva;
+    private static FbaResult fba;
+    private static int width;
+
+    private Path dir;
+    private Path file;
+
+    @BeforeClass
+    public static void solve() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        JsonNode media = mapper.readTree(new File("test/data/fba_test_media.json"));
+        fva = new FluxVariabilityAnalysis(FbaProblem.fromModel(model, media, null)).run();
+        FbaProblem p = fva.getProblem();
+        for (int j = 0; j < p.getVariableCount(); j++) {
+            if (p.getVariableType(j) != FbaProblem.VariableType.DRAIN_FLUX) {
+                width++;
+            }
+        }
+        ObjectNode json = mapper.createObjectNode().put("id", "fba").put("objectiveValue", 2.5);
+        json.putArray("FBAReactionVariables").addObject()
+                .put("modelreaction_ref", "~/fbamodel/modelreactions/id/resp_c0").put("value", 1.5)
+                .put("min", 1).put("max", 2).put("lowerBound", 0).put("upperBound", 1000).put("class", "Positive");
+        json.withArray("FBAReactionVariables").addObject()
+                .put("modelreaction_ref", "~/fbamodel/modelreactions/id/extra_c0").put("value", -3)
+                .put("min", -4).put("max", -2).put("lowerBound", -1000).put("upperBound", 1000)
+                .put("class", "Novel");
+        json.putArray("FBABiomassVariables").addObject().put("biomass_ref", "~/fbamodel/biomasses/id/bio1")
+                .put("value", 2.5).put("min", 2.5).put("max", 2.5).put("lowerBound", 0).put("upperBound", 1000)
+                .put("class", "Positive");
+        fba = FbaResult.fromJson(json);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("snapshot-test");
+        file = dir.resolve("fba.snap");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static int blockSize(int w) {
+        return (w * (COLUMNS * 8 + 1) + 7) & ~7;
+    }
+
+    private void write() throws IOException {
+        Path tsv = dir.resolve("reactions.tsv");
+        Files.write(tsv, Arrays.asList(
+                "id\tdirection\tcompartment\tgpr\tname\tpathway\tequation\tdefinition\tflux\tmin_flux\t" +
+                        "lowerbound\tmax_flux\tupperbound",
+                "tA_c0\t=>\tc0\t\ttA\t\t\t\t10\t9\t0\t11\t1000",
+                "tsvonly_c0\t<=>\tc0\t\tx\t\t\t\t-3\t\t-1000\t\t1000"), StandardCharsets.UTF_8);
+        try (FbaSnapshot.Writer w = FbaSnapshot.create(file)) {
+            w.add("fva", fva).add("fba", fba).addTsv("tsv", tsv);
+            try {
+                w.add("fba", fba);
+                fail("added a duplicate");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Duplicate solution id fba", e.getMessage());
+            }
+        }
+        Files.delete(tsv);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        write();
+        try (FbaSnapshot s = FbaSnapshot.open(file)) {
+            assertEquals(3, s.getSolutionCount());
+            assertEquals(Arrays.asList("fva", "fba", "tsv"),
+                    Arrays.asList(s.getSolutionId(0), s.getSolutionId(1), s.getSolutionId(2)));
+            assertEquals(2, s.getSolutionIndex("tsv"));
+            assertEquals(-1, s.getSolutionIndex("none"));
+            assertEquals(width + 2, s.getReactionCount());
+            assertEquals(Arrays.asList("extra_c0", "tsvonly_c0"), s.getReactionIds().subList(width, width + 2));
+
+            FbaProblem p = fva.getProblem();
+            assertEquals(25.0 / 3, s.getObjectiveValue(0), 1e-9);
+            for (int j = 0; j < p.getVariableCount(); j++) {
+                if (p.getVariableType(j) == FbaProblem.VariableType.DRAIN_FLUX) {
+                    continue;
+                }
+                int r = s.getReactionIndex(p.getVariableId(j));
+                assertEquals(fva.getValue(j), s.get(0, FbaSnapshot.Column.VALUE, r), 0);
+                assertEquals(fva.getMin(j), s.get(0, FbaSnapshot.Column.MIN, r), 0);
+                assertEquals(fva.getMax(j), s.get(0, FbaSnapshot.Column.MAX, r), 0);
+                assertEquals(p.getLowerBound(j), s.get(0, FbaSnapshot.Column.LOWER_BOUND, r), 0);
+                assertEquals(p.getUpperBound(j), s.get(0, FbaSnapshot.Column.UPPER_BOUND, r), 0);
+                assertEquals(fva.getVariableClass(j), s.getVariableClass(0, r));
+            }
+
+            assertEquals(2.5, s.getObjectiveValue(1), 0);
+            assertEquals(1.5, s.getFlux(1, "resp_c0"), 0);
+            assertEquals(-4, s.get(1, FbaSnapshot.Column.MIN, s.getReactionIndex("extra_c0")), 0);
+            assertEquals("Novel", s.getVariableClass(1, s.getReactionIndex("extra_c0")));
+            assertEquals(2.5, s.getFlux(1, "bio1"), 0);
+            // carried by the first solution only
+            assertTrue(Double.isNaN(s.getFlux(1, "tA_c0")));
+            assertNull(s.getVariableClass(1, s.getReactionIndex("tA_c0")));
+
+            assertTrue(Double.isNaN(s.getObjectiveValue(2)));
+            assertEquals(10, s.getFlux(2, "tA_c0"), 0);
+            assertEquals(11, s.get(2, FbaSnapshot.Column.MAX, s.getReactionIndex("tA_c0")), 0);
+            assertEquals(-3, s.getFlux(2, "tsvonly_c0"), 0);
+            assertTrue(Double.isNaN(s.get(2, FbaSnapshot.Column.MIN, s.getReactionIndex("tsvonly_c0"))));
+            assertNull(s.getVariableClass(2, s.getReactionIndex("tA_c0")));
+            assertTrue(Double.isNaN(s.getFlux(2, "nosuch_c0")));
+        }
+    }
+
+    @Test
+    public void testWidths() throws Exception {
+        write();
+        try (FbaSnapshot s = FbaSnapshot.open(file)) {
+            // each solution is as wide as the dictionary was when it was added
+            assertEquals(width, s.getWidth(0));
+            assertEquals(width + 1, s.getWidth(1));
+            assertEquals(width + 2, s.getWidth(2));
+            int extra = s.getReactionIndex("extra_c0");
+            assertEquals(width, extra);
+            assertTrue(Double.isNaN(s.get(0, FbaSnapshot.Column.VALUE, extra)));
+            assertNull(s.getVariableClass(0, extra));
+
+            DoubleBuffer col = s.getColumn(0, FbaSnapshot.Column.MAX);
+            assertEquals(width, col.remaining());
+            assertTrue(col.isReadOnly());
+            for (int r = 0; r < width; r++) {
+                assertEquals(s.get(0, FbaSnapshot.Column.MAX, r), col.get(r), 0);
+            }
+            try {
+                col.put(0, 1);
+                fail("wrote to the mapping");
+            } catch (ReadOnlyBufferException e) {
+                // expected
+            }
+            double[] dense = s.copyColumn(0, FbaSnapshot.Column.VALUE, null);
+            assertEquals(width + 2, dense.length);
+            assertTrue(Double.isNaN(dense[width]) && Double.isNaN(dense[width + 1]));
+            double[] target = new double[width + 5];
+            Arrays.fill(target, 7);
+            assertTrue(target == s.copyColumn(1, FbaSnapshot.Column.VALUE, target));
+            assertEquals(-3, target[extra], 0);
+            assertTrue(Double.isNaN(target[width + 1]));
+            assertEquals(7, target[width + 2], 0);
+        }
+    }
+
+    @Test
+    public void testLayout() throws Exception {
+        write();
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[4];
+        b.get(magic);
+        assertEquals("FBAS", new String(magic, StandardCharsets.US_ASCII));
+        assertEquals(1, b.getInt(4));
+        assertEquals(0, b.getLong(8));
+        int first = 16;
+        int second = first + blockSize(width);
+        int third = second + blockSize(width + 1);
+        int footer = third + blockSize(width + 2);
+        // the trailer: the footer offset, the magic again and the version
+        assertEquals(footer, b.getLong(b.limit() - 16));
+        assertEquals(0x53414246, b.getInt(b.limit() - 8));
+        assertEquals(1, b.getInt(b.limit() - 4));
+        try (FbaSnapshot s = FbaSnapshot.open(file)) {
+            for (int r = 0; r < width; r++) {
+                for (FbaSnapshot.Column c : FbaSnapshot.Column.values()) {
+                    assertEquals(Double.doubleToRawLongBits(s.get(0, c, r)),
+                            b.getLong(first + (c.ordinal() * width + r) * 8));
+                }
+            }
+            int extra = s.getReactionIndex("extra_c0");
+            assertEquals(-2, b.getDouble(second + ((FbaSnapshot.Column.MAX.ordinal()) * (width + 1) + extra) * 8),
+                    0);
+            // the class column after the doubles, 0xff for none
+            assertEquals((byte) 0xff, b.get(third + COLUMNS * (width + 2) * 8));
+            int resp = s.getReactionIndex("resp_c0");
+            int cls = b.get(second + COLUMNS * (width + 1) * 8 + resp);
+            assertEquals("Positive", s.getVariableClass(1, resp));
+            assertEquals(cls, b.get(second + COLUMNS * (width + 1) * 8 + s.getReactionIndex("bio1")));
+        }
+        // the footer starts with the dictionary
+        assertEquals(width + 2, b.getInt(footer));
+        int len = b.getInt(footer + 4);
+        byte[] id = new byte[len];
+        b.position(footer + 8);
+        b.get(id);
+        assertEquals(fva.getProblem().getVariableId(0), new String(id, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIncomplete() throws Exception {
+        Path copy = dir.resolve("copy.snap");
+        try (FbaSnapshot.Writer w = FbaSnapshot.create(file)) {
+            w.add("fva", fva).add("fba", fba);
+            // the blocks are on disk, the footer is not yet
+            Files.copy(file, copy);
+        }
+        assertEquals(16 + blockSize(width) + blockSize(width + 1), Files.size(copy));
+        assertRejected(copy, "Not a complete FBA snapshot: " + copy);
+
+        byte[] whole = Files.readAllBytes(file);
+        Files.write(copy, Arrays.copyOf(whole, whole.length - 1));
+        assertRejected(copy, "Not a complete FBA snapshot: " + copy);
+        Files.write(copy, Arrays.copyOf(whole, 20));
+        assertRejected(copy, "Not an FBA snapshot: " + copy);
+        whole[whole.length - 4] = 2;
+        Files.write(copy, whole);
+        assertRejected(copy, "Unsupported FBA snapshot version 2: " + copy);
+
+        FbaSnapshot s = FbaSnapshot.open(file);
+        s.close();
+        try {
+            s.getFlux(0, "resp_c0");
+            fail("read a closed snapshot");
+        } catch (IllegalStateException e) {
+            assertEquals("The snapshot is closed", e.getMessage());
+        }
+    }
+
+    private static void assertRejected(Path path, String message) {
+        try {
+            FbaSnapshot.open(path).close();
+            fail("opened " + message);
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        FbaSnapshot.create(file).close();
+        // the header, no blocks, the three counts of the footer and the trailer
+        assertEquals(16 + 12 + 16, Files.size(file));
+        try (FbaSnapshot s = FbaSnapshot.open(file)) {
+            assertEquals(0, s.getSolutionCount());
+            assertEquals(0, s.getReactionCount());
+        }
+        byte[] b = Files.readAllBytes(file);
+        assertArrayEquals(Arrays.copyOf(b, 4), Arrays.copyOfRange(b, 36, 40));
+    }
+}
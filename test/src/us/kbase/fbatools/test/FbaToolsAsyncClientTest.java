@@ -0,0 +1,125 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.auth.AuthToken;
+import us.kbase.common.service.ServerException;
+import us.kbase.common.service.UnauthorizedException;
+import us.kbase.fbatools.FbaToolsAsyncClient;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.RunFluxBalanceAnalysisResults;
+
+public class FbaToolsAsyncClientTest {
+    private FbaToolsStubServer server;
+    private FbaToolsAsyncClient client;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    // holds every FBA until released
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FbaToolsStubServer()
+                .withHandler("fba_tools.run_flux_balance_analysis", (params, auth) -> {
+                    int n = running.incrementAndGet();
+                    maxRunning.accumulateAndGet(n, Math::max);
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                        String model = params.get(0).path("fbamodel_id").asText();
+                        if (model.equals("broken")) {
+                            throw new IllegalStateException("model broken has no biomass");
+                        }
+                        return new RunFluxBalanceAnalysisResults().withNewFbaRef(model + "/fba")
+                                .withObjective(params.get(0).path("default_max_uptake").asLong());
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+        client = new FbaToolsAsyncClient(server.getURL(), new AuthToken("token", "user"));
+        client.setIsInsecureHttpConnectionAllowed(true);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.close();
+    }
+
+    private CompletableFuture<RunFluxBalanceAnalysisResults> fba(String model, double uptake) {
+        return client.runFluxBalanceAnalysis(new RunFluxBalanceAnalysisParams().withFbamodelId(model)
+                .withDefaultMaxUptake(uptake));
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        List<CompletableFuture<RunFluxBalanceAnalysisResults>> calls =
+                new ArrayList<CompletableFuture<RunFluxBalanceAnalysisResults>>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(fba("m" + i, i));
+        }
+        for (int i = 0; i < 20; i++) {
+            RunFluxBalanceAnalysisResults r = calls.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals("m" + i + "/fba", r.getNewFbaRef());
+            assertEquals(i, (long) r.getObjective());
+        }
+        assertEquals(20, server.getRequestCount());
+    }
+
+    @Test
+    public void testCallLimit() throws Exception {
+        client.setMaxConcurrentCalls(3);
+        release = new CountDownLatch(1);
+        List<CompletableFuture<RunFluxBalanceAnalysisResults>> calls =
+                new ArrayList<CompletableFuture<RunFluxBalanceAnalysisResults>>();
+        for (int i = 0; i < 10; i++) {
+            calls.add(fba("m" + i, i));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (running.get() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, client.getCallLimiter().getRunning());
+        assertEquals(7, client.getCallLimiter().getWaiting());
+        release.countDown();
+        for (CompletableFuture<RunFluxBalanceAnalysisResults> c : calls) {
+            c.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(3, maxRunning.get());
+        assertEquals(10, server.getRequestCount());
+    }
+
+    @Test
+    public void testServerError() throws Exception {
+        try {
+            fba("broken", 1).get(10, TimeUnit.SECONDS);
+            fail("expected a server error");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof ServerException);
+            assertEquals("model broken has no biomass", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testAuthRequired() throws Exception {
+        FbaToolsAsyncClient anonymous = new FbaToolsAsyncClient(server.getURL());
+        try {
+            anonymous.runFluxBalanceAnalysis(new RunFluxBalanceAnalysisParams()).get(10, TimeUnit.SECONDS);
+            fail("expected the call to be refused");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof UnauthorizedException);
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+}
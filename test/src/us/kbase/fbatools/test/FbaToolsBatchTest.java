@@ -0,0 +1,141 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.auth.AuthToken;
+import us.kbase.common.service.JsonClientException;
+import us.kbase.common.service.ServerException;
+import us.kbase.fbatools.EditMediaParams;
+import us.kbase.fbatools.EditMediaResult;
+import us.kbase.fbatools.FbaToolsAsyncClient;
+import us.kbase.fbatools.FbaToolsBatch;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.RunFluxBalanceAnalysisResults;
+
+public class FbaToolsBatchTest {
+    private FbaToolsStubServer server;
+    private FbaToolsAsyncClient client;
+    // the Authorization header of each method's last call
+    private final Map<String, String> auths = new ConcurrentHashMap<String, String>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FbaToolsStubServer()
+                .withHandler("fba_tools.status", (params, auth) -> {
+                    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+                    ret.put("state", "OK");
+                    return ret;
+                })
+                .withHandler("fba_tools.edit_media", (params, auth) -> {
+                    auths.put("edit_media", auth);
+                    String media = params.get(0).path("media_id").asText();
+                    if (media.isEmpty()) {
+                        throw new IllegalArgumentException("media_id is required");
+                    }
+                    return new EditMediaResult().withNewMediaId(media + ".edited");
+                })
+                .withHandler("fba_tools.run_flux_balance_analysis", (params, auth) ->
+                        new RunFluxBalanceAnalysisResults().withNewFbaRef("1/2/3")
+                                .withObjective(params.get(0).path("default_max_uptake").asLong()));
+        client = new FbaToolsAsyncClient(server.getURL(), new AuthToken("token", "user"));
+        client.setIsInsecureHttpConnectionAllowed(true);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testMixedCallsInOneRequest() throws Exception {
+        FbaToolsBatch batch = client.newBatch();
+        FbaToolsBatch.Call<Map<String, Object>> status = batch.status();
+        FbaToolsBatch.Call<EditMediaResult> edit = batch.editMedia(
+                new EditMediaParams().withMediaId("glc").withWorkspace("ws"));
+        FbaToolsBatch.Call<RunFluxBalanceAnalysisResults> fba = batch.runFluxBalanceAnalysis(
+                new RunFluxBalanceAnalysisParams().withFbamodelId("m").withDefaultMaxUptake(7.0));
+        assertEquals(3, batch.size());
+        assertEquals(0, server.getRequestCount());
+        batch.execute();
+        assertEquals(1, server.getRequestCount());
+        assertEquals(3, server.getCallCount());
+        assertEquals("OK", status.get().get("state"));
+        assertEquals("glc.edited", edit.get().getNewMediaId());
+        assertEquals("1/2/3", fba.get().getNewFbaRef());
+        assertEquals(7L, (long) fba.get().getObjective());
+        assertEquals("token", auths.get("edit_media"));
+    }
+
+    @Test
+    public void testFailedCallDoesNotAffectOthers() throws Exception {
+        FbaToolsBatch batch = client.newBatch();
+        List<FbaToolsBatch.Call<EditMediaResult>> edits = Arrays.asList(
+                batch.editMedia(new EditMediaParams().withMediaId("a")),
+                batch.editMedia(new EditMediaParams()),
+                batch.editMedia(new EditMediaParams().withMediaId("c")));
+        FbaToolsBatch.Call<Object> unknown = batch.add("fba_tools.no_such_method",
+                Arrays.<Object>asList(), new TypeReference<List<Object>>() {}, false);
+        batch.executeAsync().get();
+        assertEquals(1, server.getRequestCount());
+        assertEquals("a.edited", edits.get(0).get().getNewMediaId());
+        assertEquals("c.edited", edits.get(2).get().getNewMediaId());
+        assertFalse(edits.get(0).isFailed());
+        assertTrue(edits.get(1).isFailed());
+        try {
+            edits.get(1).get();
+            fail("expected a server error");
+        } catch (ServerException e) {
+            assertEquals("media_id is required", e.getMessage());
+        }
+        try {
+            unknown.get();
+            fail("expected a server error");
+        } catch (ServerException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no_such_method"));
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        FbaToolsBatch batch = client.newBatch();
+        batch.execute();
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExecuteOnce() throws Exception {
+        FbaToolsBatch batch = client.newBatch();
+        batch.status();
+        batch.execute();
+        batch.execute();
+    }
+
+    @Test
+    public void testRequestFailureFailsEveryCall() throws Exception {
+        FbaToolsBatch batch = client.newBatch();
+        FbaToolsBatch.Call<Map<String, Object>> status = batch.status();
+        FbaToolsBatch.Call<EditMediaResult> edit = batch.editMedia(new EditMediaParams().withMediaId("a"));
+        server.close();
+        try {
+            batch.execute();
+            fail("expected the batch to fail");
+        } catch (IOException | JsonClientException e) {
+            // the server is gone
+        }
+        assertTrue(status.isFailed());
+        assertTrue(edit.isFailed());
+    }
+}
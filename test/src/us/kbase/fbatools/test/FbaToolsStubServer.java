@@ -0,0 +1,205 @@
+package us.kbase.fbatools.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import us.kbase.common.service.UObject;
+
+/**
+ * <p>A local, in-process stand-in for the fba_tools service.</p>
+ * <p>It answers KBase JSON-RPC 1.1 calls as well as JSON-RPC 2.0 batch
+ * requests on the loopback interface, dispatching every call to a
+ * {@link Handler} registered for its method name. It is meant for
+ * exercising the us.kbase.fbatools clients without a deployed service; it
+ * does not check tokens.</p>
+ */
+public class FbaToolsStubServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<String, Handler>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger callCount = new AtomicInteger();
+
+    /** Serves one method of the stand-in service. */
+    public interface Handler {
+        /** Handles a call.
+         * @param params the positional arguments of the call.
+         * @param authorization the Authorization header of the request, or null.
+         * @return the single return value of the method; it is wrapped into
+         * the one-element result list by the server.
+         * @throws Exception to answer the call with an error.
+         */
+        Object handle(JsonNode params, String authorization) throws Exception;
+    }
+
+    /** Starts a server on an ephemeral loopback port.
+     * @throws IOException if the server cannot be bound.
+     */
+    public FbaToolsStubServer() throws IOException {
+        this(0);
+    }
+
+    /** Starts a server on the given loopback port.
+     * @param port the port, or 0 for an ephemeral port.
+     * @throws IOException if the server cannot be bound.
+     */
+    public FbaToolsStubServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", this::serve);
+        server.start();
+    }
+
+    /** Registers the handler of a method.
+     * @param method the fully qualified method name, e.g. fba_tools.status.
+     * @param handler the handler.
+     * @return this server.
+     */
+    public FbaToolsStubServer withHandler(String method, Handler handler) {
+        handlers.put(method, handler);
+        return this;
+    }
+
+    /** Get the URL clients should use to reach this server.
+     * @return the service URL.
+     */
+    public URL getURL() {
+        try {
+            return new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Get the number of HTTP requests received so far.
+     * @return the request count.
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /** Get the number of calls received so far, counting each entry of a
+     * batch separately.
+     * @return the call count.
+     */
+    public int getCallCount() {
+        return callCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            byte[] body = readAll(exchange.getRequestBody());
+            String auth = exchange.getRequestHeaders().getFirst("Authorization");
+            Object response;
+            int status = 200;
+            JsonNode request;
+            try {
+                request = UObject.getMapper().readTree(body);
+            } catch (IOException e) {
+                request = null;
+            }
+            if (request == null || !(request.isArray() || request.isObject())) {
+                response = error(null, false, -32700, "Parse error", null);
+                status = 500;
+            } else if (request.isArray()) {
+                List<Object> responses = new ArrayList<Object>();
+                for (JsonNode entry : (ArrayNode) request) {
+                    responses.add(dispatch(entry, auth, true));
+                }
+                response = responses;
+            } else {
+                Map<String, Object> single = dispatch(request, auth, false);
+                if (single.containsKey("error")) {
+                    status = 500;
+                }
+                response = single;
+            }
+            byte[] out = UObject.getMapper().writeValueAsBytes(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, out.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(out);
+            os.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Map<String, Object> dispatch(JsonNode request, String auth, boolean jsonRpc20) {
+        callCount.incrementAndGet();
+        JsonNode id = request.get("id");
+        String method = request.path("method").asText(null);
+        Handler handler = method == null ? null : handlers.get(method);
+        if (handler == null) {
+            return error(id, jsonRpc20, -32601, "Can not find method [" + method + "] in server class", null);
+        }
+        try {
+            Object ret = handler.handle(request.path("params"), auth);
+            List<Object> result = new ArrayList<Object>();
+            result.add(ret);
+            Map<String, Object> resp = envelope(id, jsonRpc20);
+            resp.put("result", result);
+            return resp;
+        } catch (Exception e) {
+            return error(id, jsonRpc20, -32500, e.getMessage() == null ? e.toString() : e.getMessage(),
+                    e.getClass().getName());
+        }
+    }
+
+    private static Map<String, Object> envelope(JsonNode id, boolean jsonRpc20) {
+        Map<String, Object> resp = new LinkedHashMap<String, Object>();
+        if (jsonRpc20) {
+            resp.put("jsonrpc", "2.0");
+        } else {
+            resp.put("version", "1.1");
+        }
+        resp.put("id", id);
+        return resp;
+    }
+
+    private static Map<String, Object> error(JsonNode id, boolean jsonRpc20, int code, String message, String data) {
+        Map<String, Object> err = new LinkedHashMap<String, Object>();
+        err.put("name", "JSONRPCError");
+        err.put("code", code);
+        err.put("message", message);
+        err.put(jsonRpc20 ? "data" : "error", data);
+        Map<String, Object> resp = envelope(id, jsonRpc20);
+        resp.put("error", err);
+        return resp;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = is.read(chunk)) >= 0) {
+            buf.write(chunk, 0, read);
+        }
+        return buf.toByteArray();
+    }
+}
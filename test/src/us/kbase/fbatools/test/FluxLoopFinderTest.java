@@ -0,0 +1,183 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FluxLoopCatalogue;
+import us.kbase.fbatools.FluxLoopFinder;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+
+/**
+ * Tests of FluxLoopFinder on test/data/fba_test_model.json (see
+ * FbaProblemTest), which has no loop, with three groups of reactions
+ * added:
+ * <ul>
+ * <li>the 3-cycle c1, c2, c3 of L1 to L2 to L3 and back, all forward;
+ * <li>p1 and p2, both reversible U to R, which loop either way round;
+ * <li>the reversible q1, q2 and q3 of R to S to T to 2 R, which the graph
+ * pass keeps, but which no steady state lets carry flux as U balances p1
+ * and p2.
+ * </ul>
+ * With drains and biomass closed, every reaction of the test model itself
+ * is pruned by the graph pass.
+ */
+public class FluxLoopFinderTest {
+    private static final double TOL = 1e-7;
+
+    private static ObjectNode model;
+    private Path dir;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        model = (ObjectNode) new ObjectMapper().readTree(new File("test/data/fba_test_model.json"));
+        for (String cpd : new String[] {"cpdL1_c0", "cpdL2_c0", "cpdL3_c0", "cpdU_c0", "cpdR_c0", "cpdS_c0",
+                "cpdT_c0"}) {
+            model.withArray("modelcompounds").addObject().put("id", cpd)
+                    .put("modelcompartment_ref", "~/modelcompartments/id/c0");
+        }
+        addReaction("c1_c0", ">", "cpdL1_c0", -1, "cpdL2_c0", 1);
+        addReaction("c2_c0", ">", "cpdL2_c0", -1, "cpdL3_c0", 1);
+        addReaction("c3_c0", ">", "cpdL3_c0", -1, "cpdL1_c0", 1);
+        addReaction("p1_c0", "=", "cpdU_c0", -1, "cpdR_c0", 1);
+        addReaction("p2_c0", "=", "cpdU_c0", -1, "cpdR_c0", 1);
+        addReaction("q1_c0", "=", "cpdR_c0", -1, "cpdS_c0", 1);
+        addReaction("q2_c0", "=", "cpdS_c0", -1, "cpdT_c0", 1);
+        addReaction("q3_c0", "=", "cpdT_c0", -1, "cpdR_c0", 2);
+    }
+
+    private static void addReaction(String id, String dir, Object... reagents) {
+        ObjectNode rxn = model.withArray("modelreactions").addObject();
+        rxn.put("id", id).put("direction", dir);
+        ArrayNode rgts = rxn.putArray("modelReactionReagents");
+        for (int i = 0; i < reagents.length; i += 2) {
+            rgts.addObject().put("modelcompound_ref", "~/modelcompounds/id/" + reagents[i])
+                    .put("coefficient", (Integer) reagents[i + 1]);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("loop-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static FluxLoopFinder finder(List<String> bounds) {
+        return new FluxLoopFinder(FbaProblem.fromModel(model, null,
+                new RunFluxBalanceAnalysisParams().withCustomBoundList(bounds)));
+    }
+
+    private static String describe(FluxLoopCatalogue.Loop l) {
+        List<String> ret = new ArrayList<String>();
+        for (int i = 0; i < l.size(); i++) {
+            ret.add((l.getFlux(i) > 0 ? "+" : "-") + l.getReactionIds().get(i));
+        }
+        return ret.toString();
+    }
+
+    @Test
+    public void testLoops() throws Exception {
+        for (int threads : new int[] {1, 3}) {
+            FluxLoopFinder f = finder(Collections.<String>emptyList());
+            f.setThreads(threads);
+            FluxLoopCatalogue c = f.run();
+            assertTrue(c.isComplete());
+            assertEquals(16, c.getReactionCount());
+            assertEquals(8, c.getGraphCandidateCount());
+            assertEquals(5, c.getNullSpaceCandidateCount());
+            List<String> loops = new ArrayList<String>();
+            for (FluxLoopCatalogue.Loop l : c.getLoops()) {
+                loops.add(describe(l));
+                for (int i = 0; i < l.size(); i++) {
+                    assertEquals(1, Math.abs(l.getFlux(i)), TOL);
+                }
+            }
+            assertEquals(Arrays.asList("[+c1_c0, +c2_c0, +c3_c0]", "[+p1_c0, -p2_c0]", "[-p1_c0, +p2_c0]"),
+                    loops);
+            assertEquals(Arrays.asList("c1_c0", "c2_c0", "c3_c0", "p1_c0", "p2_c0"), c.getLoopReactions());
+            assertEquals(2, c.getLoops("p2_c0").size());
+            assertTrue(c.getLoops("q1_c0").isEmpty());
+            assertTrue(c.getLoops("resp_c0").isEmpty());
+            assertEquals(f.getNetworkKey(), c.getNetworkKey());
+        }
+    }
+
+    @Test
+    public void testBounds() throws Exception {
+        // p2 only forward: one way round; c2 blocked: the cycle is gone
+        FluxLoopCatalogue c = finder(Arrays.asList("0<p2_c0<1000", "0<c2_c0<0")).run();
+        assertEquals(15, c.getReactionCount());
+        assertEquals(5, c.getGraphCandidateCount());
+        assertEquals(2, c.getNullSpaceCandidateCount());
+        assertEquals(1, c.getLoops().size());
+        assertEquals("[-p1_c0, +p2_c0]", describe(c.getLoops().get(0)));
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        Path cache = dir.resolve("loops.json");
+        FluxLoopFinder f = finder(Collections.<String>emptyList());
+        FluxLoopCatalogue first = f.run(cache);
+        assertTrue(Files.exists(cache));
+        FluxLoopCatalogue stored = FluxLoopCatalogue.read(cache);
+        assertEquals(first.getNetworkKey(), stored.getNetworkKey());
+        assertEquals(first.getLoops().size(), stored.getLoops().size());
+        assertEquals(first.getElapsedMillis(), stored.getElapsedMillis());
+
+        // a stored catalogue of the same network is returned as it is, so a
+        // loop dropped from the file stays dropped
+        ObjectNode json = first.toJson();
+        ((ArrayNode) json.get("loops")).remove(2);
+        json.put("elapsed_ms", 123456);
+        new ObjectMapper().writeValue(cache.toFile(), json);
+        FluxLoopCatalogue reused = finder(Collections.<String>emptyList()).run(cache);
+        assertEquals(2, reused.getLoops().size());
+        assertEquals(123456, reused.getElapsedMillis());
+
+        // the drains, biomass and objective are not part of the network
+        JsonNode media = new ObjectMapper().readTree(new File("test/data/fba_test_media.json"));
+        FluxLoopFinder onMedia = new FluxLoopFinder(FbaProblem.fromModel(model, media, null));
+        assertEquals(f.getNetworkKey(), onMedia.getNetworkKey());
+        assertEquals(123456, onMedia.run(cache).getElapsedMillis());
+
+        // an incomplete catalogue is ignored and replaced
+        json.put("complete", 0);
+        new ObjectMapper().writeValue(cache.toFile(), json);
+        FluxLoopCatalogue redone = f.run(cache);
+        assertEquals(3, redone.getLoops().size());
+        assertEquals(3, FluxLoopCatalogue.read(cache).getLoops().size());
+
+        // another network has another key, so is catalogued again
+        FluxLoopFinder bounded = finder(Arrays.asList("0<c2_c0<0"));
+        assertFalse(f.getNetworkKey().equals(bounded.getNetworkKey()));
+        FluxLoopCatalogue other = bounded.run(cache);
+        assertEquals(2, other.getLoops().size());
+        assertEquals(bounded.getNetworkKey(), FluxLoopCatalogue.read(cache).getNetworkKey());
+    }
+}
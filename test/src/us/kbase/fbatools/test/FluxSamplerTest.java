@@ -0,0 +1,208 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSnapshot;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.FluxSampler;
+import us.kbase.fbatools.FluxVariabilityAnalysis;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.StoichiometricMatrix;
+
+/**
+ * Tests of FluxSampler on test/data/fba_test_model.json (see
+ * FbaProblemTest): every sample must be mass balanced, within the bounds
+ * and within the variability of the same objective fraction.
+ */
+public class FluxSamplerTest {
+    private static final double TOL = 1e-7;
+
+    private static JsonNode model;
+    private static JsonNode media;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = mapper.readTree(new File("test/data/fba_test_media.json"));
+    }
+
+    // the largest mass balance residual of a point, drains included
+    private static double residual(FbaProblem problem, double[] x) {
+        StoichiometricMatrix m = problem.getMatrix();
+        double[] rows = new double[problem.getRowCount()];
+        for (int j = 0; j < m.getColumnCount(); j++) {
+            for (int p = m.getColumnStart(j); p < m.getColumnEnd(j); p++) {
+                rows[m.getRow(p)] += m.getColumnValue(p) * x[j];
+            }
+        }
+        for (int j = m.getColumnCount(); j < problem.getVariableCount(); j++) {
+            rows[m.getCompoundIndex(problem.getVariableId(j))] += x[j];
+        }
+        double max = 0;
+        for (double r : rows) {
+            max = Math.max(max, Math.abs(r));
+        }
+        return max;
+    }
+
+    @Test
+    public void testSamplesFeasible() throws Exception {
+        for (double fraction : new double[] {0, 0.5}) {
+            FbaProblem problem = FbaProblem.fromModel(model, media, new RunFluxBalanceAnalysisParams()
+                    .withFva(1L).withObjectiveFraction(fraction));
+            FbaSolution fva = new FluxVariabilityAnalysis(problem).run();
+            FluxSampler sampler = new FluxSampler(problem);
+            sampler.setObjectiveFraction(fraction);
+            sampler.setThinning(10);
+            sampler.setSeed(3);
+            sampler.setThreads(2);
+            double[][] samples = sampler.sample(500);
+            assertEquals(500, samples.length);
+            int n = problem.getVariableCount();
+            double[] min = new double[n];
+            double[] max = new double[n];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            for (double[] x : samples) {
+                assertEquals(n, x.length);
+                assertEquals(0, residual(problem, x), TOL);
+                for (int j = 0; j < n; j++) {
+                    assertTrue(problem.getVariableId(j) + " " + x[j], x[j] >= problem.getLowerBound(j) - TOL
+                            && x[j] <= problem.getUpperBound(j) + TOL);
+                    assertTrue(problem.getVariableId(j) + " " + x[j], x[j] >= fva.getMin(j) - TOL
+                            && x[j] <= fva.getMax(j) + TOL);
+                    min[j] = Math.min(min[j], x[j]);
+                    max[j] = Math.max(max[j], x[j]);
+                }
+                assertTrue(x[problem.getObjectiveVariable()] >= fraction * 25.0 / 3 - TOL);
+            }
+            // respiration and fermentation trade off against each other
+            for (String id : new String[] {"resp_c0", "ferm_c0"}) {
+                int j = problem.getReactionVariable(id);
+                assertTrue(id, max[j] - min[j] > 0.1 * (fva.getMax(j) - fva.getMin(j)));
+            }
+        }
+    }
+
+    @Test
+    public void testTightBoundNotClamped() throws Exception {
+        // tW_c0, and so respiration, can hardly vary, so its direction
+        // components are tiny next to fermentation's; they must still limit
+        // the steps, or the sample would have to be clamped off the balance
+        FbaProblem problem = FbaProblem.fromModel(model, media, new RunFluxBalanceAnalysisParams()
+                .withCustomBoundList(Arrays.asList("0<tW_c0<5e-10")));
+        FluxSampler sampler = new FluxSampler(problem);
+        sampler.setSeed(1);
+        sampler.setThreads(1);
+        sampler.setThinning(10);
+        int tW = problem.getReactionVariable("tW_c0");
+        for (double[] x : sampler.sample(500)) {
+            assertEquals(0, residual(problem, x), 1e-11);
+            assertTrue(String.valueOf(x[tW]), x[tW] >= 0 && x[tW] <= 5e-10);
+        }
+    }
+
+    @Test
+    public void testRepeatable() throws Exception {
+        FbaProblem problem = FbaProblem.fromModel(model, media, null);
+        FluxSampler sampler = new FluxSampler(problem);
+        sampler.setSeed(11);
+        sampler.setThreads(3);
+        sampler.setThinning(5);
+        double[][] first = sampler.sample(20);
+        double[][] second = sampler.sample(20);
+        for (int i = 0; i < first.length; i++) {
+            assertArrayEquals(first[i], second[i], 0);
+        }
+        sampler.setSeed(12);
+        assertTrue(first[0][problem.getReactionVariable("resp_c0")]
+                != sampler.sample(20)[0][problem.getReactionVariable("resp_c0")]);
+    }
+
+    @Test
+    public void testFixedPoint() throws Exception {
+        // at the optimum nothing can vary, so every sample is the optimum
+        FbaProblem problem = FbaProblem.fromModel(model, media, null);
+        FluxSampler sampler = new FluxSampler(problem);
+        sampler.setObjectiveFraction(1);
+        sampler.setSeed(1);
+        FbaSolution opt = problem.solve();
+        for (double[] x : sampler.sample(5)) {
+            assertEquals(25.0 / 3, x[problem.getObjectiveVariable()], TOL);
+            assertEquals(0, residual(problem, x), TOL);
+            for (int j = 0; j < x.length; j++) {
+                assertEquals(problem.getVariableId(j), opt.getValue(j), x[j], TOL);
+            }
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        FbaProblem problem = FbaProblem.fromModel(model, media, null);
+        FluxSampler sampler = new FluxSampler(problem);
+        sampler.setSeed(5);
+        sampler.setThreads(2);
+        sampler.setThinning(5);
+        double[][] samples = sampler.sample(7);
+        Path dir = Files.createTempDirectory("sampler-test");
+        Path file = dir.resolve("samples.snap");
+        try {
+            try (FbaSnapshot.Writer w = FbaSnapshot.create(file)) {
+                sampler.sample(7, w, "s.");
+            }
+            try (FbaSnapshot snapshot = FbaSnapshot.open(file)) {
+                assertEquals(7, snapshot.getSolutionCount());
+                int obj = problem.getObjectiveVariable();
+                for (int i = 0; i < 7; i++) {
+                    int k = snapshot.getSolutionIndex("s." + i);
+                    assertEquals(samples[i][obj], snapshot.getObjectiveValue(k), 0);
+                    assertEquals(samples[i][problem.getReactionVariable("resp_c0")],
+                            snapshot.getFlux(k, "resp_c0"), 0);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        FluxSampler sampler = new FluxSampler(FbaProblem.fromModel(model, media, null));
+        try {
+            sampler.setObjectiveFraction(1.5);
+            fail("accepted a fraction above 1");
+        } catch (IllegalArgumentException e) {
+            assertEquals("objectiveFraction must be between 0 and 1", e.getMessage());
+        }
+        try {
+            sampler.setThinning(0);
+            fail("accepted no thinning");
+        } catch (IllegalArgumentException e) {
+            assertEquals("thinning must be at least 1", e.getMessage());
+        }
+        // nothing can grow without any A
+        JsonNode starved = media.deepCopy();
+        ((ObjectNode) starved.get("mediacompounds").get(0)).put("maxFlux", -1);
+        try {
+            new FluxSampler(FbaProblem.fromModel(model, starved, null)).sample(1);
+            fail("sampled an infeasible program");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("The program has no optimal solution"));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.FluxVariabilityAnalysis;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.SimplexSolver;
+
+/**
+ * Tests of FluxVariabilityAnalysis on test/data/fba_test_model.json (see
+ * FbaProblemTest): every range must match a direct minimization and
+ * maximization of the flux with the objective held at the same fraction.
+ */
+public class FluxVariabilityAnalysisTest {
+    private static final double TOL = 1e-7;
+
+    private static JsonNode model;
+    private static JsonNode media;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = mapper.readTree(new File("test/data/fba_test_media.json"));
+    }
+
+    private static FbaSolution solve(RunFluxBalanceAnalysisParams params) {
+        return FbaProblem.fromModel(model, media, params).solve();
+    }
+
+    @Test
+    public void testFvaMatchesDirectSolves() throws Exception {
+        for (double fraction : new double[] {0, 0.5, 0.9, 1}) {
+            FbaProblem problem = FbaProblem.fromModel(model, media, new RunFluxBalanceAnalysisParams()
+                    .withFva(1L).withObjectiveFraction(fraction));
+            FluxVariabilityAnalysis fva = new FluxVariabilityAnalysis(problem);
+            fva.setThreads(2);
+            FbaSolution s = fva.run();
+            assertTrue(s.hasVariability());
+            int n = problem.getVariableCount();
+            int obj = problem.getObjectiveVariable();
+            for (int j = 0; j < n; j++) {
+                double[] range = new double[2];
+                for (int side = 0; side < 2; side++) {
+                    SimplexSolver direct = problem.newSolver();
+                    direct.setBounds(obj, fraction * 25.0 / 3, direct.getUpperBound(obj));
+                    double[] c = new double[n];
+                    c[j] = 1;
+                    direct.setObjective(c, side == 1);
+                    assertEquals(SimplexSolver.Status.OPTIMAL, direct.solve());
+                    range[side] = direct.getObjectiveValue();
+                }
+                String id = problem.getVariableId(j) + " at " + fraction;
+                assertEquals(id, range[0], s.getMin(j), TOL);
+                assertEquals(id, range[1], s.getMax(j), TOL);
+            }
+        }
+    }
+
+    @Test
+    public void testFvaAtOptimum() throws Exception {
+        FbaSolution s = solve(new RunFluxBalanceAnalysisParams().withFva(1L).withObjectiveFraction(1.0));
+        FbaProblem problem = s.getProblem();
+        // the optimum is unique
+        for (String rxn : new String[] {"glyc_c0", "resp_c0", "ferm_c0", "mk_c0"}) {
+            int j = problem.getReactionVariable(rxn);
+            assertEquals(rxn, s.getFlux(rxn), s.getMin(j), TOL);
+            assertEquals(rxn, s.getFlux(rxn), s.getMax(j), TOL);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.GapfillMetabolicModelParams;
+import us.kbase.fbatools.GapfillResult;
+import us.kbase.fbatools.Gapfiller;
+
+/**
+ * Tests of Gapfiller on test/data/fba_test_model.json (see FbaProblemTest)
+ * without glyc_c0 and mk_c0, so that it makes neither cpdP nor cpdM. The
+ * template has two ways to make each: glyc_c, or a1_c and a2_c through a
+ * new compound cpdQ, for cpdP; mk_c, or the reversible mk2_c, for cpdM.
+ */
+public class GapfillerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static JsonNode model;
+    private static ObjectNode gapped;
+    private static JsonNode media;
+    private static ObjectNode template;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        model = MAPPER.readTree(new File("test/data/fba_test_model.json"));
+        media = MAPPER.readTree(new File("test/data/fba_test_media.json"));
+        gapped = model.deepCopy();
+        ArrayNode rxns = gapped.withArray("modelreactions");
+        for (int i = rxns.size() - 1; i >= 0; i--) {
+            String id = rxns.get(i).get("id").asText();
+            if (id.equals("glyc_c0") || id.equals("mk_c0")) {
+                rxns.remove(i);
+            }
+        }
+        template = MAPPER.createObjectNode();
+        template.put("id", "tmpl");
+        ArrayNode ccs = template.putArray("compcompounds");
+        for (String cc : new String[] {"cpdA_c", "cpdP_c", "cpdE_c", "cpdM_c", "cpdQ_c", "cpdW_c", "cpdX_c"}) {
+            ccs.addObject().put("id", cc).put("templatecompartment_ref", "~/compartments/id/c");
+        }
+        addReaction("rxn00000_c", "=", "cpdA_c", -1, "cpdM_c", 1);
+        addReaction("glyc_c", ">", "cpdA_c", -1, "cpdP_c", 2, "cpdE_c", 2);
+        addReaction("a1_c", ">", "cpdA_c", -1, "cpdQ_c", 1);
+        addReaction("a2_c", ">", "cpdQ_c", -1, "cpdP_c", 2, "cpdE_c", 2);
+        addReaction("mk_c", ">", "cpdP_c", -1, "cpdE_c", -1, "cpdM_c", 1);
+        addReaction("mk2_c", "=", "cpdP_c", -1, "cpdE_c", -1, "cpdM_c", 1);
+        addReaction("wx_c", "=", "cpdW_c", -1, "cpdX_c", 1);
+    }
+
+    private static void addReaction(String id, String dir, Object... reagents) {
+        ObjectNode rxn = template.withArray("reactions").addObject();
+        rxn.put("id", id).put("direction", dir).put("GapfillDirection", dir)
+                .put("templatecompartment_ref", "~/compartments/id/c");
+        ArrayNode rgts = rxn.putArray("templateReactionReagents");
+        for (int i = 0; i < reagents.length; i += 2) {
+            rgts.addObject().put("templatecompcompound_ref", "~/compcompounds/id/" + reagents[i])
+                    .put("coefficient", (Integer) reagents[i + 1]);
+        }
+    }
+
+    // the growth of the gapped model with the given template reactions added
+    private static double growth(List<String> added) {
+        ObjectNode m = gapped.deepCopy();
+        for (JsonNode trxn : template.get("reactions")) {
+            if (!added.contains(trxn.get("id").asText())) {
+                continue;
+            }
+            ObjectNode rxn = m.withArray("modelreactions").addObject();
+            rxn.put("id", trxn.get("id").asText() + "0").put("direction", trxn.get("direction").asText());
+            ArrayNode rgts = rxn.putArray("modelReactionReagents");
+            for (JsonNode trgt : trxn.get("templateReactionReagents")) {
+                String cpd = trgt.get("templatecompcompound_ref").asText().replace("~/compcompounds/id/", "") + "0";
+                rgts.addObject().put("modelcompound_ref", "~/modelcompounds/id/" + cpd)
+                        .put("coefficient", trgt.get("coefficient").asDouble());
+                m.withArray("modelcompounds").addObject().put("id", cpd)
+                        .put("modelcompartment_ref", "~/modelcompartments/id/c0");
+            }
+        }
+        return FbaProblem.fromModel(m, media, null).solve().getObjectiveValue();
+    }
+
+    @Test
+    public void testAlternatives() throws Exception {
+        Gapfiller gf = Gapfiller.fromModel(gapped, template, media,
+                new GapfillMetabolicModelParams().withNumberOfSolutions(10L));
+        // glyc_c, a1_c, a2_c, mk_c one direction each; mk2_c and wx_c two
+        assertEquals(8, gf.getCandidateCount());
+        assertEquals(Gapfiller.DEFAULT_MINIMUM_TARGET_FLUX, gf.getMinimumTargetFlux(), 0);
+        for (int threads : new int[] {1, 4}) {
+            gf.setThreads(threads);
+            GapfillResult r = gf.run();
+            assertTrue(r.isComplete());
+            assertTrue(r.isGapfillingNeeded());
+            List<Set<String>> got = new ArrayList<Set<String>>();
+            List<Double> costs = new ArrayList<Double>();
+            for (GapfillResult.Solution s : r.getSolutions()) {
+                got.add(new HashSet<String>(s.getReactionIds()));
+                costs.add(s.getCost());
+                assertEquals("gf." + (got.size() - 1), s.getId());
+                assertEquals(s.getCost() > 2, s.isSuboptimal());
+                // mk2_c is only of use forward
+                for (String dir : s.getDirections()) {
+                    assertEquals(">", dir);
+                }
+            }
+            assertEquals(Arrays.asList(2.0, 2.0, 3.0, 3.0), costs);
+            assertEquals(new HashSet<Set<String>>(Arrays.asList(
+                    new HashSet<String>(Arrays.asList("glyc_c", "mk_c")),
+                    new HashSet<String>(Arrays.asList("glyc_c", "mk2_c")))),
+                    new HashSet<Set<String>>(got.subList(0, 2)));
+            assertEquals(new HashSet<Set<String>>(Arrays.asList(
+                    new HashSet<String>(Arrays.asList("a1_c", "a2_c", "mk_c")),
+                    new HashSet<String>(Arrays.asList("a1_c", "a2_c", "mk2_c")))),
+                    new HashSet<Set<String>>(got.subList(2, 4)));
+            for (int i = 0; i < got.size(); i++) {
+                for (int j = 0; j < got.size(); j++) {
+                    assertTrue(i == j || !got.get(i).containsAll(got.get(j)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMinimal() throws Exception {
+        GapfillResult r = Gapfiller.fromModel(gapped, template, media,
+                new GapfillMetabolicModelParams().withNumberOfSolutions(10L)).run();
+        assertEquals(0, growth(new ArrayList<String>()), 0);
+        for (GapfillResult.Solution s : r.getSolutions()) {
+            List<String> ids = s.getReactionIds();
+            // as much as the intact model, which takes the cheaper route
+            assertEquals(s.toString(), 25.0 / 3, growth(ids), 1e-7);
+            for (String id : ids) {
+                List<String> less = new ArrayList<String>(ids);
+                less.remove(id);
+                assertTrue(s + " without " + id, growth(less) < Gapfiller.DEFAULT_MINIMUM_TARGET_FLUX);
+            }
+        }
+        JsonNode json = r.toJson();
+        assertEquals(4, json.size());
+        JsonNode first = json.get(0);
+        assertEquals("gf.0", first.get("id").asText());
+        assertEquals(2, first.get("solutionCost").asDouble(), 0);
+        assertEquals(0, first.get("suboptimal").asInt());
+        assertEquals("~/fbamodel/template/reactions/id/glyc_c",
+                first.get("gapfillingSolutionReactions").get(0).get("reaction_ref").asText());
+        assertEquals(1, json.get(3).get("suboptimal").asInt());
+    }
+
+    @Test
+    public void testFewerSolutions() throws Exception {
+        Gapfiller gf = Gapfiller.fromModel(gapped, template, media, null);
+        for (int n = 1; n <= 4; n++) {
+            gf.setNumberOfSolutions(n);
+            GapfillResult r = gf.run();
+            assertEquals(n, r.getSolutions().size());
+            assertEquals(2, r.getSolutions().get(0).getCost(), 0);
+            assertEquals(n > 2 ? 3 : 2, r.getSolutions().get(n - 1).getCost(), 0);
+        }
+    }
+
+    @Test
+    public void testNoGapfillingNeeded() throws Exception {
+        // glyc_c and mk_c are in the model, so are not candidates
+        Gapfiller gf = Gapfiller.fromModel(model, template, media, null);
+        assertEquals(6, gf.getCandidateCount());
+        for (int threads : new int[] {1, 4}) {
+            gf.setThreads(threads);
+            GapfillResult r = gf.run();
+            assertFalse(r.isGapfillingNeeded());
+            assertTrue(r.isComplete());
+            assertTrue(r.getSolutions().isEmpty());
+            assertEquals(0, r.toJson().size());
+        }
+    }
+
+    @Test
+    public void testUnreachable() throws Exception {
+        // the template reactions grow no more than the intact model
+        GapfillResult r = Gapfiller.fromModel(gapped, template, media,
+                new GapfillMetabolicModelParams().withMinimumTargetFlux(10.0)).run();
+        assertTrue(r.isGapfillingNeeded());
+        assertTrue(r.isComplete());
+        assertTrue(r.getSolutions().isEmpty());
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        try {
+            Gapfiller.fromModel(gapped, template, media, new GapfillMetabolicModelParams()
+                    .withThermodynamicConstraints(1L).withExpseriesId("ws/expr"));
+            fail("accepted thermodynamic constraints");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not supported by the local gapfilling engine: [thermodynamic_constraints, expseries_id]",
+                    e.getMessage());
+        }
+        try {
+            Gapfiller.fromModel(gapped, template, media, null).setNumberOfSolutions(0);
+            fail("accepted no solutions");
+        } catch (IllegalArgumentException e) {
+            assertEquals("numberOfSolutions must be at least 1", e.getMessage());
+        }
+    }
+}
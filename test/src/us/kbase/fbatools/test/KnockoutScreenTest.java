@@ -0,0 +1,103 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FBADeletionResult;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.KnockoutScreen;
+import us.kbase.fbatools.KnockoutScreenResult;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+
+/**
+ * Tests of KnockoutScreen and simulate_ko on test/data/fba_test_model.json
+ * (see FbaProblemTest): every growth fraction must match a rebuild of the
+ * model with the same knockouts.
+ */
+public class KnockoutScreenTest {
+    private static final double TOL = 1e-7;
+    // growth fractions are kept as floats
+    private static final double FRACTION_TOL = 1e-6;
+
+    private static JsonNode model;
+    private static JsonNode media;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = mapper.readTree(new File("test/data/fba_test_media.json"));
+    }
+
+    private static FbaSolution solve(RunFluxBalanceAnalysisParams params) {
+        return FbaProblem.fromModel(model, media, params).solve();
+    }
+
+    @Test
+    public void testFeatureKnockoutsMatchRebuild() throws Exception {
+        FbaProblem problem = FbaProblem.fromModel(model, media, null);
+        KnockoutScreenResult screen = new KnockoutScreen(problem).screenFeatures(true);
+        double wt = screen.getWildTypeGrowth();
+        assertEquals(25.0 / 3, wt, TOL);
+        List<String> features = screen.getTargets();
+        assertEquals(Arrays.asList("g1", "g2", "g3", "g4", "g5", "g6"), features);
+        for (int i = 0; i < features.size(); i++) {
+            double rebuilt = solve(new RunFluxBalanceAnalysisParams()
+                    .withFeatureKoList(Arrays.asList(features.get(i)))).getObjectiveValue();
+            assertEquals(features.get(i), rebuilt / wt, screen.getGrowthFraction(i), FRACTION_TOL);
+            for (int k = i + 1; k < features.size(); k++) {
+                rebuilt = solve(new RunFluxBalanceAnalysisParams()
+                        .withFeatureKoList(Arrays.asList(features.get(i), features.get(k)))).getObjectiveValue();
+                assertEquals(features.get(i) + "," + features.get(k), rebuilt / wt,
+                        screen.getGrowthFraction(i, k), FRACTION_TOL);
+            }
+        }
+        // no glycolysis or precursor, no growth; no respiration, fermentation
+        // only; one of the isozymes is enough; without both, respiration only
+        assertEquals(0, screen.getGrowthFraction(screen.indexOf("g1")), FRACTION_TOL);
+        assertEquals(0, screen.getGrowthFraction(screen.indexOf("g6")), FRACTION_TOL);
+        assertEquals(0.8, screen.getGrowthFraction(screen.indexOf("g2")), FRACTION_TOL);
+        assertEquals(0.8, screen.getGrowthFraction(screen.indexOf("g3")), FRACTION_TOL);
+        assertEquals(1, screen.getGrowthFraction(screen.indexOf("g4")), FRACTION_TOL);
+        assertEquals(0.6, screen.getGrowthFraction(screen.indexOf("g4"), screen.indexOf("g5")), FRACTION_TOL);
+    }
+
+    @Test
+    public void testReactionKnockoutsMatchRebuild() throws Exception {
+        FbaProblem problem = FbaProblem.fromModel(model, media, null);
+        KnockoutScreenResult screen = new KnockoutScreen(problem).screenReactions(false);
+        double wt = screen.getWildTypeGrowth();
+        for (int i = 0; i < screen.getTargets().size(); i++) {
+            String rxn = screen.getTargets().get(i);
+            double rebuilt = solve(new RunFluxBalanceAnalysisParams()
+                    .withReactionKoList(Arrays.asList(rxn))).getObjectiveValue();
+            assertEquals(rxn, rebuilt / wt, screen.getGrowthFraction(i), FRACTION_TOL);
+        }
+    }
+
+    @Test
+    public void testSimulateKo() {
+        FbaSolution s = solve(new RunFluxBalanceAnalysisParams().withSimulateKo(1L));
+        assertEquals(25.0 / 3, s.getObjectiveValue(), TOL);
+        List<FBADeletionResult> deletions = s.getDeletionResults();
+        assertEquals(6, deletions.size());
+        for (FBADeletionResult d : deletions) {
+            List<String> features = new ArrayList<String>();
+            for (String ref : d.getFeatureRefs()) {
+                features.add(ref.substring(ref.lastIndexOf('/') + 1));
+            }
+            double rebuilt = solve(new RunFluxBalanceAnalysisParams().withFeatureKoList(features))
+                    .getObjectiveValue();
+            assertEquals(d.getFeatureRefs().toString(), rebuilt, d.getGrowthFraction() * s.getObjectiveValue(),
+                    FRACTION_TOL * 10);
+        }
+    }
+}
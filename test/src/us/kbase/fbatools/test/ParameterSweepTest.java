@@ -0,0 +1,248 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.FbaSolution;
+import us.kbase.fbatools.FluxVariabilityAnalysis;
+import us.kbase.fbatools.ParameterSweep;
+import us.kbase.fbatools.ParameterSweepResult;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+
+/**
+ * Tests of ParameterSweep on test/data/fba_test_model.json (see
+ * FbaProblemTest). On the Complete media both A and O are taken up up to
+ * default_max_uptake, and all of A is respired, so the growth is
+ * default_max_uptake itself.
+ */
+public class ParameterSweepTest {
+    private static final double TOL = 1e-7;
+
+    private static JsonNode model;
+    private static JsonNode media;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = mapper.readTree(new File("test/data/fba_test_media.json"));
+    }
+
+    private static ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> uptakeSweep() {
+        return ParameterSweep.local(model, null, new RunFluxBalanceAnalysisParams().withFbamodelId("m"))
+                .addRange("default_max_uptake", 1, 8, 8);
+    }
+
+    @Test
+    public void testGrid() throws Exception {
+        ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> sweep = uptakeSweep();
+        sweep.setMaxConcurrentRuns(3);
+        assertEquals(8, sweep.getPointCount());
+        ParameterSweepResult<RunFluxBalanceAnalysisParams, FbaSolution> r = sweep.run();
+        assertEquals(Arrays.asList("default_max_uptake"), r.getFields());
+        assertEquals(8, r.getPoints().size());
+        for (ParameterSweepResult.Point<RunFluxBalanceAnalysisParams, FbaSolution> p : r.getPoints()) {
+            assertEquals(ParameterSweepResult.Status.SUCCEEDED, p.getStatus());
+            assertEquals(p.getIndex() + 1, p.getValues().get("default_max_uptake"), 0);
+            assertEquals(p.getIndex() + 1, p.getObjective(), TOL);
+            assertEquals(p.getIndex() + 1, p.getResults().getFlux("resp_c0"), TOL);
+        }
+        assertEquals(7, r.getBest().getIndex());
+        assertNull(r.getTargetPoint());
+    }
+
+    @Test
+    public void testTargetStopsSweep() throws Exception {
+        ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> sweep = uptakeSweep();
+        // one at a time, so that the points after the target are not started
+        sweep.setMaxConcurrentRuns(1);
+        sweep.setTarget(objective -> objective >= 5 - TOL);
+        final AtomicInteger done = new AtomicInteger();
+        sweep.setListener(p -> done.incrementAndGet());
+        ParameterSweepResult<RunFluxBalanceAnalysisParams, FbaSolution> r = sweep.run();
+        assertTrue(r.isTargetReached());
+        assertEquals(4, r.getTargetPoint().getIndex());
+        assertEquals(5, r.getTargetPoint().getObjective(), TOL);
+        for (ParameterSweepResult.Point<RunFluxBalanceAnalysisParams, FbaSolution> p : r.getPoints()) {
+            if (p.getIndex() <= 4) {
+                assertEquals(ParameterSweepResult.Status.SUCCEEDED, p.getStatus());
+            } else {
+                assertEquals(ParameterSweepResult.Status.SKIPPED, p.getStatus());
+                assertNull(p.getResults());
+                assertTrue(Double.isNaN(p.getObjective()));
+                assertEquals(p.getIndex() + 1, p.getValues().get("default_max_uptake"), 0);
+            }
+        }
+        // skipped points are not reported
+        assertEquals(5, done.get());
+        assertEquals(4, r.getBest().getIndex());
+    }
+
+    @Test
+    public void testFvaPointsSingleThreaded() throws Exception {
+        ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> sweep = ParameterSweep.local(model, media,
+                new RunFluxBalanceAnalysisParams().withFva(1L));
+        sweep.addAxis("objective_fraction", 0, 0.5, 0.9, 1);
+        sweep.setMaxConcurrentRuns(2);
+        // watch the variability workers while the sweep runs
+        final Set<String> workers = Collections.synchronizedSet(new HashSet<String>());
+        final boolean[] stop = new boolean[1];
+        Thread watcher = new Thread(() -> {
+            while (!stop[0]) {
+                for (Thread t : Thread.getAllStackTraces().keySet()) {
+                    if (t.getName().startsWith("fba-fva-")) {
+                        workers.add(t.getName());
+                    }
+                }
+                Thread.yield();
+            }
+        });
+        watcher.start();
+        ParameterSweepResult<RunFluxBalanceAnalysisParams, FbaSolution> r;
+        try {
+            r = sweep.run();
+        } finally {
+            stop[0] = true;
+            watcher.join();
+        }
+        // each variability analysis has a pool of its own, of one thread
+        for (String w : workers) {
+            assertEquals("fba-fva-1", w);
+        }
+        FbaProblem problem = FbaProblem.fromModel(model, media, new RunFluxBalanceAnalysisParams().withFva(1L));
+        for (ParameterSweepResult.Point<RunFluxBalanceAnalysisParams, FbaSolution> p : r.getPoints()) {
+            assertEquals(ParameterSweepResult.Status.SUCCEEDED, p.getStatus());
+            FluxVariabilityAnalysis fva = new FluxVariabilityAnalysis(problem);
+            fva.setObjectiveFraction(p.getValues().get("objective_fraction"));
+            FbaSolution expected = fva.run();
+            FbaSolution got = p.getResults();
+            assertTrue(got.hasVariability());
+            for (int j = 0; j < problem.getVariableCount(); j++) {
+                assertEquals(expected.getMin(j), got.getMin(j), TOL);
+                assertEquals(expected.getMax(j), got.getMax(j), TOL);
+            }
+        }
+        // at the optimum there is no respiration to spare
+        int resp = problem.getReactionVariable("resp_c0");
+        assertEquals(5, r.getPoints().get(3).getResults().getMin(resp), TOL);
+        assertEquals(0, r.getPoints().get(0).getResults().getMin(resp), TOL);
+    }
+
+    @Test
+    public void testSharedExecutor() throws Exception {
+        ThreadPoolExecutor exec = (ThreadPoolExecutor) Executors.newFixedThreadPool(4);
+        try {
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final AtomicInteger maxQueued = new AtomicInteger();
+            ParameterSweep<RunFluxBalanceAnalysisParams, Double> sweep =
+                    new ParameterSweep<RunFluxBalanceAnalysisParams, Double>(RunFluxBalanceAnalysisParams.class,
+                            new RunFluxBalanceAnalysisParams(), p -> {
+                                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                                maxQueued.accumulateAndGet(exec.getQueue().size(), Math::max);
+                                try {
+                                    Thread.sleep(20);
+                                    if (Math.abs(p.getObjectiveFraction() - 0.3) < 1e-9) {
+                                        throw new IOException("no solution");
+                                    }
+                                    return p.getObjectiveFraction() * 10;
+                                } finally {
+                                    running.decrementAndGet();
+                                }
+                            }, d -> d);
+            sweep.addRange("objective_fraction", 0, 0.9, 10);
+            sweep.setMaxConcurrentRuns(2);
+            sweep.setExecutor(exec);
+            ParameterSweepResult<RunFluxBalanceAnalysisParams, Double> r = sweep.run();
+            assertEquals(2, maxRunning.get());
+            // the points waiting their turn are not handed to the executor,
+            // where they would hold its threads or queue ahead of other work
+            assertEquals(0, maxQueued.get());
+            // a failed point does not stop the sweep
+            ParameterSweepResult.Point<RunFluxBalanceAnalysisParams, Double> failed = r.getPoints().get(3);
+            assertEquals(ParameterSweepResult.Status.FAILED, failed.getStatus());
+            assertEquals("no solution", failed.getError().getMessage());
+            assertEquals(9, r.getBest().getObjective(), TOL);
+            assertFalse(exec.isShutdown());
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        ParameterSweep<RunFluxBalanceAnalysisParams, FbaSolution> sweep = uptakeSweep();
+        try {
+            sweep.addAxis("objective_fraction", 0.5);
+            fail("swept a field the single solve ignores");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not supported by the local FBA engine: sweeping objective_fraction, only " +
+                    "[default_max_uptake] with these parameters", e.getMessage());
+        }
+        try {
+            ParameterSweep.local(model, media, new RunFluxBalanceAnalysisParams().withFva(1L))
+                    .addAxis("default_max_uptake", 5);
+            fail("swept the uptake of an fva");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not supported by the local FBA engine: sweeping default_max_uptake, only " +
+                    "[objective_fraction] with these parameters", e.getMessage());
+        }
+        try {
+            sweep.addAxis("fbamodel_id", 1);
+            fail("swept a text field");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No numeric field fbamodel_id in RunFluxBalanceAnalysisParams", e.getMessage());
+        }
+        try {
+            sweep.addAxis("default_max_uptake", 9);
+            fail("swept a field twice");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Field default_max_uptake is already swept", e.getMessage());
+        }
+        try {
+            sweep.addRange("default_max_uptake", 1, 2, 0);
+            fail("accepted an empty range");
+        } catch (IllegalArgumentException e) {
+            assertEquals("count must be at least 1", e.getMessage());
+        }
+        try {
+            sweep.setMaxConcurrentRuns(0);
+            fail("accepted no runs");
+        } catch (IllegalArgumentException e) {
+            assertEquals("maxConcurrentRuns must be at least 1", e.getMessage());
+        }
+        assertEquals(8, sweep.getPointCount());
+    }
+
+    @Test
+    public void testOutputIds() throws Exception {
+        // the client is only called when run
+        ParameterSweep<?, ?> sweep = ParameterSweep.fluxBalance(null,
+                new RunFluxBalanceAnalysisParams().withFbamodelId("m").withMaxCUptake(1.0));
+        sweep.addAxis("max_c_uptake", 5, 10).addAxis("objective_fraction", 0.1, 0.5, 0.9);
+        assertEquals(6, sweep.getPointCount());
+        assertEquals("{max_c_uptake=10.0, objective_fraction=0.5}", sweep.getValues(4).toString());
+        RunFluxBalanceAnalysisParams p = (RunFluxBalanceAnalysisParams) sweep.paramsForPoint(4);
+        assertEquals("m.fba.4", p.getFbaOutputId());
+        assertEquals("m", p.getFbamodelId());
+        assertEquals(10, p.getMaxCUptake(), 0);
+        assertEquals(0.5, p.getObjectiveFraction(), 0);
+    }
+}
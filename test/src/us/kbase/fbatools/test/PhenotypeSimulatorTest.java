@@ -0,0 +1,189 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.FbaObjectWriter;
+import us.kbase.fbatools.FbaProblem;
+import us.kbase.fbatools.PhenotypeSimulationResult;
+import us.kbase.fbatools.PhenotypeSimulator;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.SimulateGrowthOnPhenotypeDataParams;
+
+/**
+ * Tests of PhenotypeSimulator on test/data/fba_test_model.json (see
+ * FbaProblemTest). With oxygen the model grows 25/3; without it only by
+ * fermentation, 2/3 of the carbon uptake; without carbon not at all.
+ */
+public class PhenotypeSimulatorTest {
+    private static final double TOL = 1e-7;
+
+    private static JsonNode model;
+    private static Map<String, JsonNode> media;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        model = mapper.readTree(new File("test/data/fba_test_model.json"));
+        media = new HashMap<String, JsonNode>();
+        JsonNode full = mapper.readTree(new File("test/data/fba_test_media.json"));
+        media.put("ws/full", full);
+        ObjectNode anaerobic = full.deepCopy();
+        anaerobic.withArray("mediacompounds").remove(1);
+        media.put("ws/anaerobic", anaerobic);
+        ObjectNode none = full.deepCopy();
+        none.withArray("mediacompounds").removeAll();
+        media.put("ws/none", none);
+    }
+
+    private static List<PhenotypeSimulator.Phenotype> phenotypes() {
+        return Arrays.asList(
+                new PhenotypeSimulator.Phenotype("wt", "ws/full").withNormalizedGrowth(1.0),
+                new PhenotypeSimulator.Phenotype("g1", "ws/full").withGeneKos(Arrays.asList("g1"))
+                        .withNormalizedGrowth(0.0),
+                new PhenotypeSimulator.Phenotype("g6", "ws/full").withGeneKos(Arrays.asList("g6"))
+                        .withNormalizedGrowth(0.8),
+                new PhenotypeSimulator.Phenotype("anaerobic", "ws/anaerobic").withNormalizedGrowth(0.0),
+                new PhenotypeSimulator.Phenotype("anaerobic.g2", "ws/anaerobic").withGeneKos(Arrays.asList("g2")),
+                new PhenotypeSimulator.Phenotype("none", "ws/none").withNormalizedGrowth(0.00001),
+                new PhenotypeSimulator.Phenotype("none.A", "ws/none")
+                        .withAdditionalCompounds(Arrays.asList("cpdA"), null).withNormalizedGrowth(1.0),
+                new PhenotypeSimulator.Phenotype("none.A10", "ws/none")
+                        .withAdditionalCompounds(Arrays.asList("cpdA"), Arrays.asList(new double[] {-100, 10}))
+                        .withNormalizedGrowth(1.0),
+                new PhenotypeSimulator.Phenotype("noresp", "ws/full")
+                        .withCustomReactionBounds(Arrays.asList("0<resp_c0<0")).withNormalizedGrowth(1.0),
+                new PhenotypeSimulator.Phenotype("noresp.g4g5", "ws/full")
+                        .withCustomReactionBounds(Arrays.asList("0<resp_c0<0"))
+                        .withGeneKos(Arrays.asList("g4", "g5")).withNormalizedGrowth(0.0));
+    }
+
+    @Test
+    public void testClassification() throws Exception {
+        List<PhenotypeSimulator.Phenotype> phenos = phenotypes();
+        double[] growth = {25.0 / 3, 0, 0, 20.0 / 3, 20.0 / 3, 0, 200.0 / 3, 20.0 / 3, 20.0 / 3, 0};
+        double[] wildType = {25.0 / 3, 25.0 / 3, 25.0 / 3, 20.0 / 3, 20.0 / 3, 0, 200.0 / 3, 20.0 / 3, 20.0 / 3,
+                20.0 / 3};
+        // an observed growth at or below 0.0001 is no growth
+        List<String> classes = Arrays.asList("CP", "CN", "FN", "FP", "UN", "CN", "CP", "CP", "CP", "CN");
+        for (int threads : new int[] {1, 3}) {
+            PhenotypeSimulator sim = new PhenotypeSimulator(model, null);
+            sim.setThreads(threads);
+            final AtomicInteger done = new AtomicInteger();
+            sim.setListener((i, g, c) -> done.incrementAndGet());
+            PhenotypeSimulationResult r = sim.simulate(phenos, media);
+            assertEquals(phenos.size(), done.get());
+            assertEquals(Arrays.asList("wt", "g1", "g6", "anaerobic", "anaerobic.g2", "none", "none.A", "none.A10",
+                    "noresp", "noresp.g4g5"), r.getPhenotypeIds());
+            List<String> got = new ArrayList<String>();
+            for (int i = 0; i < phenos.size(); i++) {
+                String id = phenos.get(i).getId();
+                assertEquals(id, growth[i], r.getSimulatedGrowth(i), TOL);
+                assertEquals(id, wildType[i], r.getWildTypeGrowth(i), TOL);
+                assertEquals(id, wildType[i] == 0 ? 0 : growth[i] / wildType[i], r.getGrowthFraction(i), TOL);
+                got.add(r.getPhenoclass(i));
+            }
+            assertEquals(classes, got);
+            assertEquals(4, r.getClassCount(PhenotypeSimulationResult.CORRECT_POSITIVE));
+            assertEquals(3, r.getClassCount(PhenotypeSimulationResult.CORRECT_NEGATIVE));
+            assertEquals(1, r.getClassCount(PhenotypeSimulationResult.FALSE_POSITIVE));
+            assertEquals(1, r.getClassCount(PhenotypeSimulationResult.FALSE_NEGATIVE));
+            assertEquals(1, r.getClassCount(PhenotypeSimulationResult.UNKNOWN));
+            assertEquals(7.0 / 9, r.getAccuracy(), TOL);
+        }
+    }
+
+    @Test
+    public void testMatchesRebuild() throws Exception {
+        List<PhenotypeSimulator.Phenotype> phenos = phenotypes();
+        PhenotypeSimulationResult r = new PhenotypeSimulator(model, null).simulate(phenos, media);
+        for (int i = 0; i < phenos.size(); i++) {
+            PhenotypeSimulator.Phenotype p = phenos.get(i);
+            if (!p.getAdditionalCompounds().isEmpty()) {
+                continue;
+            }
+            RunFluxBalanceAnalysisParams params = new RunFluxBalanceAnalysisParams()
+                    .withCustomBoundList(p.getCustomReactionBounds());
+            double wt = FbaProblem.fromModel(model, media.get(p.getMediaRef()), params).solve().getObjectiveValue();
+            params.setFeatureKoList(p.getGeneKos());
+            double ko = FbaProblem.fromModel(model, media.get(p.getMediaRef()), params).solve().getObjectiveValue();
+            assertEquals(p.getId(), wt, r.getWildTypeGrowth(i), TOL);
+            assertEquals(p.getId(), ko, r.getSimulatedGrowth(i), TOL);
+        }
+    }
+
+    @Test
+    public void testWrittenRows() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode set = mapper.createObjectNode();
+        ObjectNode p = set.putArray("phenotypes").addObject().put("id", "p1").put("media_ref", "ws/full")
+                .put("normalizedGrowth", 1.0);
+        p.putArray("geneko_refs").add("~/genome/features/id/g2");
+        p.putArray("custom_reaction_bounds").addArray().add(0).add("~/fbamodel/modelreactions/id/ferm_c0").add(0);
+        p = set.withArray("phenotypes").addObject().put("id", "p2").put("media_ref", "ws/anaerobic");
+        p.putArray("additionalcompound_refs").add("~/compounds/id/cpdO");
+        p.putArray("additionalcompound_bounds").addArray().add(-100).add(5);
+        List<PhenotypeSimulator.Phenotype> phenos = PhenotypeSimulator.Phenotype.fromPhenotypeSet(set, "ws/set");
+        assertEquals(Arrays.asList("g2"), phenos.get(0).getGeneKos());
+        assertEquals(Arrays.asList("0<ferm_c0<0"), phenos.get(0).getCustomReactionBounds());
+        assertEquals("ws/set/phenotypes/id/p2", phenos.get(1).getRef());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PhenotypeSimulationResult r;
+        try (FbaObjectWriter w = new FbaObjectWriter(out)) {
+            w.beginArray("phenotypeSimulations");
+            r = new PhenotypeSimulator(model, null).simulate(phenos, media, w);
+        }
+        // no respiration and no fermentation; oxygen added back
+        assertEquals(0, r.getSimulatedGrowth(0), TOL);
+        assertEquals("FN", r.getPhenoclass(0));
+        assertEquals(25.0 / 3, r.getSimulatedGrowth(1), TOL);
+        JsonNode rows = mapper.readTree(out.toByteArray()).get("phenotypeSimulations");
+        assertEquals(2, rows.size());
+        for (JsonNode row : rows) {
+            int i = r.indexOf(row.get("id").asText().replace(".sim", ""));
+            assertEquals("ws/set/phenotypes/id/" + r.getPhenotypeIds().get(i), row.get("phenotype_ref").asText());
+            assertEquals(r.getSimulatedGrowth(i), row.get("simulatedGrowth").asDouble(), 0);
+            assertEquals(r.getWildTypeGrowth(i), row.get("wildtype").asDouble(), 0);
+            assertEquals(r.getPhenoclass(i), row.get("phenoclass").asText());
+        }
+    }
+
+    @Test
+    public void testRejected() throws Exception {
+        try {
+            new PhenotypeSimulator(model, new SimulateGrowthOnPhenotypeDataParams().withGapfillPhenotypes(1L)
+                    .withSaveFluxes(1L));
+            fail("accepted gap filling");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Not supported by the local phenotype simulator: [gapfill_phenotypes, save_fluxes]",
+                    e.getMessage());
+        }
+        try {
+            new PhenotypeSimulator(model, null).simulate(
+                    Arrays.asList(new PhenotypeSimulator.Phenotype("p", "ws/missing")), media);
+            fail("simulated without media");
+        } catch (IllegalArgumentException e) {
+            assertEquals("No media ws/missing for phenotype p", e.getMessage());
+        }
+        PhenotypeSimulationResult r = new PhenotypeSimulator(model, null).simulate(
+                Collections.<PhenotypeSimulator.Phenotype>emptyList(), media);
+        assertTrue(r.getPhenotypeIds().isEmpty());
+        assertTrue(Double.isNaN(r.getAccuracy()));
+    }
+}
@@ -0,0 +1,354 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.fbatools.FbaObjectReader;
+import us.kbase.fbatools.ModelTsv;
+import us.kbase.fbatools.ModelTsvFiles;
+import us.kbase.fbatools.SbmlReader;
+import us.kbase.fbatools.SbmlValidator;
+import us.kbase.fbatools.SbmlWriter;
+
+public class SbmlReaderTest {
+    private static final Path DATA = Paths.get("test/data");
+    private static final Pattern PARAMETER = Pattern.compile("<parameter id=\"([^\"]+)\" value=\"([^\"]+)\"");
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("sbml-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static List<ModelTsv.Compound> compounds(SbmlReader r) throws IOException {
+        List<ModelTsv.Compound> ret = new ArrayList<ModelTsv.Compound>();
+        for (ModelTsv.Compound c = r.nextCompound(); c != null; c = r.nextCompound()) {
+            ret.add(c);
+        }
+        return ret;
+    }
+
+    private static Map<String, ModelTsv.Reaction> reactions(SbmlReader r) throws IOException {
+        Map<String, ModelTsv.Reaction> ret = new LinkedHashMap<String, ModelTsv.Reaction>();
+        for (ModelTsv.Reaction rxn = r.nextReaction(); rxn != null; rxn = r.nextReaction()) {
+            ret.put(rxn.getId(), rxn);
+        }
+        return ret;
+    }
+
+    private static SbmlReader reader(String xml) throws IOException {
+        return new SbmlReader(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String write(ObjectNode model) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FbaObjectReader in = new FbaObjectReader(new ByteArrayInputStream(mapper.writeValueAsBytes(model)))) {
+            SbmlWriter.writeModel(in, out);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testReadLevel3() throws Exception {
+        try (SbmlReader r = SbmlReader.open(DATA.resolve("e_coli_core.xml"))) {
+            assertEquals(3, r.getLevel());
+            assertEquals("e_coli_core", r.getModelId());
+            List<ModelTsv.Compound> cpds = compounds(r);
+            assertEquals(72, cpds.size());
+            assertEquals("13dpg_c0", cpds.get(0).getId());
+            assertEquals("3-Phospho-D-glyceroyl phosphate", cpds.get(0).getName());
+            assertEquals("C3H4O10P2", cpds.get(0).getFormula());
+            ModelTsv.Compound glc = null;
+            for (ModelTsv.Compound c : cpds) {
+                if (c.getId().equals("glc__D_e0")) {
+                    glc = c;
+                }
+            }
+            assertEquals("D-Glucose", glc.getName());
+            Map<String, String> cmps = new LinkedHashMap<String, String>();
+            cmps.put("c", "cytosol");
+            cmps.put("e", "extracellular space");
+            assertEquals(cmps, r.getCompartments());
+            // no more compounds once the reactions are reached
+            Map<String, ModelTsv.Reaction> rxns = reactions(r);
+            assertNull(r.nextCompound());
+            assertEquals(95, rxns.size());
+            ModelTsv.Reaction acald = rxns.get("ACALD");
+            assertEquals("=", acald.getDirection());
+            assertEquals("Acetaldehyde dehydrogenase (acetylating)", acald.getName());
+            assertEquals("(G_b0351 or G_b1241)", acald.getGpr());
+            assertEquals("(1) acald[c0] + (1) coa[c0] + (1) nad[c0] => (1) accoa[c0] + (1) h[c0] + (1) nadh[c0]",
+                    acald.getEquation());
+            assertEquals(-1000, acald.getLowerBound(), 0);
+            assertEquals(1000, acald.getUpperBound(), 0);
+            assertEquals(">", rxns.get("PFK").getDirection());
+            assertEquals(0, rxns.get("PFK").getLowerBound(), 0);
+            assertEquals(8.39, rxns.get("ATPM").getLowerBound(), 0);
+            assertEquals(-10, rxns.get("EX_glc__D_e").getLowerBound(), 0);
+            assertEquals(137, r.getGeneTranslation().size());
+            assertEquals(Arrays.asList("b0351"), r.getGeneTranslation().get("G_b0351"));
+            assertEquals(Arrays.asList("BIOMASS_Ecoli_core_w_GAM"), r.getObjective());
+            assertEquals(0, r.getProblemCount());
+            assertNull(r.nextReaction());
+        }
+    }
+
+    @Test
+    public void testReadLevel2() throws Exception {
+        try (SbmlReader r = SbmlReader.open(DATA.resolve("test_model.sbml"))) {
+            assertEquals(2, r.getLevel());
+            assertEquals("New211586_9_gf", r.getModelId());
+            // the reactions can be read without reading the compounds first
+            Map<String, ModelTsv.Reaction> rxns = reactions(r);
+            assertEquals(1448, rxns.size());
+            assertEquals("(fig|211586.9.peg.2086 and fig|211586.9.peg.2087)", rxns.get("rxn07431_c0").getGpr());
+            assertEquals(Arrays.asList("bio1"), r.getObjective());
+            assertEquals(0, r.getProblemCount());
+        }
+        try (SbmlReader r = SbmlReader.open(DATA.resolve("test_model.sbml"))) {
+            ModelTsvFiles files = r.writeModelTsv(dir, "test_model");
+            // a header and a line per record
+            assertEquals(1515, Files.readAllLines(Paths.get(files.getCompoundsFile().getPath())).size());
+            assertEquals(1449, Files.readAllLines(Paths.get(files.getReactionsFile().getPath())).size());
+        }
+    }
+
+    @Test
+    public void testModelRoundTrip() throws Exception {
+        Path sbml = dir.resolve("fba_test_model.xml");
+        try (FbaObjectReader in = FbaObjectReader.open(DATA.resolve("fba_test_model.json"));
+                OutputStream out = Files.newOutputStream(sbml)) {
+            SbmlWriter.writeModel(in, out);
+        }
+        try (SbmlReader r = SbmlReader.open(sbml)) {
+            assertEquals(3, r.getLevel());
+            assertEquals("fba_test_model", r.getModelId());
+            assertEquals("Two pathway test model", r.getModelName());
+            List<ModelTsv.Compound> cpds = compounds(r);
+            assertEquals(12, cpds.size());
+            assertEquals("cpdA_e0", cpds.get(0).getId());
+            assertEquals("cpd11416_c0", cpds.get(11).getId());
+            Map<String, ModelTsv.Reaction> rxns = reactions(r);
+            // 8 reactions, the biomass, and an exchange for each of the four
+            // extracellular compounds and the biomass compound
+            assertEquals(Arrays.asList("tA_c0", "tO_c0", "glyc_c0", "resp_c0", "ferm_c0", "tX_c0", "tW_c0", "mk_c0",
+                    "bio1", "EX_cpdA_e0", "EX_cpdO_e0", "EX_cpdW_e0", "EX_cpdX_e0", "EX_cpd11416_c0"),
+                    new ArrayList<String>(rxns.keySet()));
+            assertEquals("(1) cpdP[c0] + (1) cpdO[c0] => (3) cpdE[c0] + (1) cpdW[c0]",
+                    rxns.get("resp_c0").getEquation());
+            assertEquals("(G_g2 and G_g3)", rxns.get("resp_c0").getGpr());
+            assertEquals("(G_g4 or G_g5)", rxns.get("ferm_c0").getGpr());
+            assertEquals("G_g1", rxns.get("glyc_c0").getGpr());
+            assertEquals("(1) cpdM[c0] + (4) cpdE[c0] => (1) cpd11416[c0]", rxns.get("bio1").getEquation());
+            assertEquals("=", rxns.get("tW_c0").getDirection());
+            assertEquals(-1000, rxns.get("tW_c0").getLowerBound(), 0);
+            assertEquals(0, rxns.get("tA_c0").getLowerBound(), 0);
+            assertEquals(1000, rxns.get("tA_c0").getUpperBound(), 0);
+            assertEquals(0, rxns.get("EX_cpd11416_c0").getLowerBound(), 0);
+            assertEquals(Arrays.asList("g4"), r.getGeneTranslation().get("G_g4"));
+            assertEquals(6, r.getGeneTranslation().size());
+            assertEquals(Arrays.asList("bio1"), r.getObjective());
+            assertEquals(Collections.emptyList(), r.getProblems());
+        }
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode model = mapper.createObjectNode().put("id", "2 odd/model").put("name", "a <model> & \"more\"");
+        ArrayNode cmps = model.putArray("modelcompartments");
+        cmps.addObject().put("id", "c0").put("label", "cyto & plasm");
+        ArrayNode cpds = model.putArray("modelcompounds");
+        cpds.addObject().put("id", "glc-D_c0").put("name", "D-Glucose <alpha> & \"beta\"").put("formula", "C6H12O6")
+                .put("charge", -2).put("modelcompartment_ref", "~/modelcompartments/id/c0");
+        cpds.addObject().put("id", "g6p_c0").put("name", "D-Glucose 6-phosphate").put("formula", "not a formula")
+                .put("modelcompartment_ref", "~/modelcompartments/id/c0");
+        ArrayNode rxns = model.putArray("modelreactions");
+        ObjectNode hex = rxns.addObject().put("id", "HEX.1|a_c0").put("name", "hexokinase <ATP> & 'Mg'")
+                .put("direction", ">").put("maxforflux", 12.5);
+        ArrayNode reagents = hex.putArray("modelReactionReagents");
+        reagents.addObject().put("modelcompound_ref", "~/modelcompounds/id/glc-D_c0").put("coefficient", -1);
+        reagents.addObject().put("modelcompound_ref", "~/modelcompounds/id/g6p_c0").put("coefficient", 0.5);
+        hex.putArray("modelReactionProteins").addObject().putArray("modelReactionProteinSubunits").addObject()
+                .putArray("feature_refs").add("~/genome/features/id/fig|211586.9.peg.1");
+        // reversible, but no flux backwards: a lower bound of -0.0
+        rxns.addObject().put("id", "iso_c0").put("direction", "=").put("maxrevflux", 0)
+                .putArray("modelReactionReagents");
+        String xml = write(model);
+        assertTrue(xml, xml.contains("name=\"a &lt;model&gt; &amp; &quot;more&quot;\""));
+
+        try (SbmlReader r = reader(xml)) {
+            assertEquals("A_2__32__odd__47__model", r.getModelId());
+            assertEquals("a <model> & \"more\"", r.getModelName());
+            List<ModelTsv.Compound> c = compounds(r);
+            assertEquals(2, c.size());
+            // compound ids keep only word characters, as in the service
+            assertEquals("glc_D_c0", c.get(0).getId());
+            assertEquals("D-Glucose <alpha> & \"beta\"", c.get(0).getName());
+            assertEquals("C6H12O6", c.get(0).getFormula());
+            assertEquals(-2, c.get(0).getCharge(), 0);
+            assertEquals("Unknown", c.get(1).getFormula());
+            assertEquals("cyto & plasm", r.getCompartments().get("c0"));
+            Map<String, ModelTsv.Reaction> read = reactions(r);
+            ModelTsv.Reaction rxn = read.get("HEX.1|a_c0");
+            assertNotNull(read.keySet().toString(), rxn);
+            assertEquals("hexokinase <ATP> & 'Mg'", rxn.getName());
+            assertEquals("(1) glc_D[c0] => (0.5) g6p[c0]", rxn.getEquation());
+            assertEquals(12.5, rxn.getUpperBound(), 0);
+            assertEquals("G_fig__124__211586__46__9__46__peg__46__1", rxn.getGpr());
+            assertEquals(Arrays.asList("fig|211586.9.peg.1"),
+                    r.getGeneTranslation().get("G_fig__124__211586__46__9__46__peg__46__1"));
+            assertEquals(">", read.get("iso_c0").getDirection());
+            assertEquals(0, read.get("iso_c0").getLowerBound(), 0);
+            assertEquals(0, r.getProblemCount());
+        }
+
+        // -0.0 and 0.0 share a bound parameter
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        Matcher m = PARAMETER.matcher(xml);
+        while (m.find()) {
+            params.put(m.group(1), m.group(2));
+        }
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        expected.put("cobra_default_lb", "-1000");
+        expected.put("cobra_default_ub", "1000");
+        expected.put("cobra_0_bound", "0");
+        expected.put("bound_3", "12.5");
+        assertEquals(expected, params);
+        assertFalse(xml, xml.contains("fbc:lowerFluxBound=\"bound_4\""));
+    }
+
+    @Test
+    public void testProblems() throws Exception {
+        String xml = "<sbml xmlns=\"http://www.sbml.org/sbml/level3/version1/core\""
+                + " xmlns:fbc=\"http://www.sbml.org/sbml/level3/version1/fbc/version2\" level=\"3\">"
+                + "<model id=\"m\"><listOfCompartments><compartment id=\"c\"/></listOfCompartments>"
+                + "<listOfSpecies><species id=\"M_a_c\" compartment=\"c\"/><species id=\"M_a_c\" compartment=\"c\"/>"
+                + "<species id=\"M_b_x\" compartment=\"x\"/></listOfSpecies>"
+                + "<listOfReactions><reaction id=\"R_r1\"><listOfReactants>"
+                + "<speciesReference species=\"M_nope\" stoichiometry=\"1\"/></listOfReactants>"
+                + "<fbc:geneProductAssociation><fbc:geneProductRef fbc:geneProduct=\"G_x\"/>"
+                + "</fbc:geneProductAssociation></reaction></listOfReactions>"
+                + "<fbc:listOfObjectives fbc:activeObjective=\"o\"><fbc:objective fbc:id=\"o\">"
+                + "<fbc:listOfFluxObjectives><fbc:fluxObjective fbc:reaction=\"R_r2\"/>"
+                + "</fbc:listOfFluxObjectives></fbc:objective></fbc:listOfObjectives></model></sbml>";
+        try (SbmlReader r = reader(xml)) {
+            assertEquals(3, compounds(r).size());
+            assertEquals(1, reactions(r).size());
+            assertEquals(5, r.getProblemCount());
+            String all = r.getProblems().toString();
+            assertTrue(all, all.contains("Duplicate species M_a_c"));
+            assertTrue(all, all.contains("Species M_b_x is in undefined compartment x"));
+            assertTrue(all, all.contains("M_nope"));
+            assertTrue(all, all.contains("Undefined gene product G_x"));
+            assertTrue(all, all.contains("Undefined objective reaction R_r2"));
+            assertEquals(Arrays.asList("r2"), r.getObjective());
+        }
+        try {
+            reader("<notsbml/>").close();
+            fail("read a document that is not SBML");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Not an SBML document"));
+        }
+        try {
+            reader("<sbml level=\"3\"></sbml>").close();
+            fail("read a document without a model");
+        } catch (IOException e) {
+            assertEquals("The SBML document has no model", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testValidator() throws Exception {
+        Path broken = dir.resolve("broken.xml");
+        Files.write(broken, "<sbml level=\"3\"><model id=\"cut\"><listOfSpecies><species id=\"M_a\"/>"
+                .getBytes(StandardCharsets.UTF_8));
+        List<Path> paths = Arrays.asList(DATA.resolve("e_coli_core.xml"), DATA.resolve("Community_model.sbml"),
+                DATA.resolve("test_model.sbml"), dir.resolve("missing.xml"), broken, DATA.resolve("iMB155.xml"));
+        for (int threads : new int[] {1, 4}) {
+            SbmlValidator v = new SbmlValidator();
+            v.setThreads(threads);
+            final List<Path> checked = Collections.synchronizedList(new ArrayList<Path>());
+            v.setListener(report -> checked.add(report.getPath()));
+            List<SbmlValidator.Report> reports = v.check(paths);
+            assertEquals(paths.size(), checked.size());
+            assertEquals(paths.size(), reports.size());
+            for (int i = 0; i < paths.size(); i++) {
+                assertEquals(paths.get(i), reports.get(i).getPath());
+            }
+            SbmlValidator.Report ecoli = reports.get(0);
+            assertTrue(ecoli.toString(), ecoli.isValid());
+            assertEquals("e_coli_core", ecoli.getModelId());
+            assertEquals(72, ecoli.getCompoundCount());
+            assertEquals(95, ecoli.getReactionCount());
+            assertEquals(137, ecoli.getGeneCount());
+            SbmlValidator.Report community = reports.get(1);
+            assertFalse(community.isValid());
+            assertNull(community.getError());
+            assertEquals(3, community.getProblemCount());
+            assertEquals("Duplicate species cpd11416_b", community.getProblems().get(0));
+            assertTrue(reports.get(2).isValid());
+            assertEquals(1448, reports.get(2).getReactionCount());
+            assertFalse(reports.get(3).isValid());
+            assertTrue(reports.get(3).getError() instanceof IOException);
+            SbmlValidator.Report cut = reports.get(4);
+            assertFalse(cut.isValid());
+            assertNotNull(cut.getError());
+            assertEquals("cut", cut.getModelId());
+            assertTrue(reports.get(5).isValid());
+            assertEquals(155, reports.get(5).getGeneCount());
+        }
+        // a caller's executor is left running
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            SbmlValidator v = new SbmlValidator();
+            v.setExecutor(exec);
+            assertTrue(v.check(paths.subList(0, 1)).get(0).isValid());
+            assertFalse(exec.isShutdown());
+        } finally {
+            exec.shutdown();
+        }
+        assertEquals(337, SbmlValidator.check(DATA.resolve("iMB155.xml")).getReactionCount());
+    }
+}
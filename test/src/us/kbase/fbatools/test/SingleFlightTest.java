@@ -0,0 +1,136 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.auth.AuthToken;
+import us.kbase.fbatools.FbaToolsAsyncClient;
+import us.kbase.fbatools.RunFluxBalanceAnalysisParams;
+import us.kbase.fbatools.RunFluxBalanceAnalysisResults;
+import us.kbase.fbatools.SingleFlight;
+
+public class SingleFlightTest {
+    private FbaToolsStubServer server;
+    private FbaToolsAsyncClient client;
+    // holds every FBA until released
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FbaToolsStubServer()
+                .withHandler("fba_tools.run_flux_balance_analysis", (params, auth) -> {
+                    release.await(10, TimeUnit.SECONDS);
+                    return new RunFluxBalanceAnalysisResults()
+                            .withNewFbaRef(params.get(0).path("fbamodel_id").asText() + "/fba");
+                });
+        client = new FbaToolsAsyncClient(server.getURL(), new AuthToken("token", "user"));
+        client.setIsInsecureHttpConnectionAllowed(true);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        server.close();
+    }
+
+    private CompletableFuture<RunFluxBalanceAnalysisResults> fba(String model) {
+        return client.runFluxBalanceAnalysis(new RunFluxBalanceAnalysisParams().withFbamodelId(model)
+                .withDefaultMaxUptake(10.0));
+    }
+
+    @Test
+    public void testSharesCallsInFlight() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>();
+        CompletableFuture<Integer> call = new CompletableFuture<Integer>();
+        AtomicInteger started = new AtomicInteger();
+        List<CompletableFuture<Integer>> results = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 3; i++) {
+            results.add(flight.execute("k", () -> {
+                started.incrementAndGet();
+                return call;
+            }));
+        }
+        assertEquals(1, started.get());
+        assertEquals(1, flight.getInFlight());
+        // cancelling one caller leaves the others waiting
+        results.get(0).cancel(true);
+        call.complete(42);
+        assertEquals(42, (int) results.get(1).get());
+        assertEquals(42, (int) results.get(2).get());
+        assertEquals(0, flight.getInFlight());
+        assertEquals(1, flight.getStarted());
+        assertEquals(2, flight.getJoined());
+        // not a cache: a later call runs again
+        flight.execute("k", () -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(7);
+        }).get();
+        assertEquals(2, started.get());
+    }
+
+    @Test
+    public void testSharesErrors() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<String, Integer>();
+        CompletableFuture<Integer> call = new CompletableFuture<Integer>();
+        CompletableFuture<Integer> a = flight.execute("k", () -> call);
+        CompletableFuture<Integer> b = flight.execute("k", () -> call);
+        call.completeExceptionally(new IllegalStateException("boom"));
+        for (CompletableFuture<Integer> f : Arrays.asList(a, b)) {
+            try {
+                f.get();
+                fail("expected the shared error");
+            } catch (ExecutionException e) {
+                assertEquals("boom", e.getCause().getMessage());
+            }
+        }
+        assertEquals(0, flight.getInFlight());
+    }
+
+    @Test
+    public void testClientDeduplication() throws Exception {
+        client.setInFlightDeduplication(true);
+        release = new CountDownLatch(1);
+        List<CompletableFuture<RunFluxBalanceAnalysisResults>> calls =
+                new ArrayList<CompletableFuture<RunFluxBalanceAnalysisResults>>();
+        for (int i = 0; i < 5; i++) {
+            calls.add(fba("same"));
+        }
+        calls.add(fba("other"));
+        release.countDown();
+        for (CompletableFuture<RunFluxBalanceAnalysisResults> c : calls) {
+            c.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals("same/fba", calls.get(0).get().getNewFbaRef());
+        assertEquals("other/fba", calls.get(5).get().getNewFbaRef());
+        assertEquals(2, server.getCallCount());
+        assertEquals(4, client.getInFlightCalls().getJoined());
+        // once done, the same call goes to the service again
+        fba("same").get(10, TimeUnit.SECONDS);
+        assertEquals(3, server.getCallCount());
+    }
+
+    @Test
+    public void testDeduplicationOffByDefault() throws Exception {
+        List<CompletableFuture<RunFluxBalanceAnalysisResults>> calls =
+                new ArrayList<CompletableFuture<RunFluxBalanceAnalysisResults>>();
+        for (int i = 0; i < 3; i++) {
+            calls.add(fba("same"));
+        }
+        for (CompletableFuture<RunFluxBalanceAnalysisResults> c : calls) {
+            c.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(3, server.getCallCount());
+        assertEquals(0, client.getInFlightCalls().getJoined());
+    }
+}
@@ -0,0 +1,254 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import us.kbase.fbatools.StoichiometricMatrix;
+
+public class StoichiometricMatrixTest {
+    private static final int MAGIC = 0x46424d53;
+
+    private static JsonNode model;
+    private Path dir;
+
+    @BeforeClass
+    public static void loadModel() throws Exception {
+        model = new ObjectMapper().readTree(new File("test/data/fba_test_model.json"));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("matrix-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testFromModel() {
+        StoichiometricMatrix s = StoichiometricMatrix.fromModel(model);
+        assertEquals(12, s.getRowCount());
+        assertEquals(9, s.getColumnCount());
+        assertEquals(8, s.getReactionCount());
+        assertEquals(24, s.getNonZeroCount());
+        assertEquals(2, s.getCompartmentCount());
+        assertTrue(s.isBiomass(s.getReactionIndex("bio1")));
+        assertFalse(s.isBiomass(s.getReactionIndex("resp_c0")));
+        assertEquals("e0", s.getCompartmentId(s.getCompartment(s.getCompoundIndex("cpdA_e0"))));
+        assertEquals("c0", s.getCompartmentId(s.getCompartment(s.getCompoundIndex("cpdA_c0"))));
+        int resp = s.getReactionIndex("resp_c0");
+        assertEquals(4, s.getColumnEnd(resp) - s.getColumnStart(resp));
+        assertEquals(3, s.getCoefficient(s.getCompoundIndex("cpdE_c0"), resp), 0);
+        assertEquals(-1, s.getCoefficient(s.getCompoundIndex("cpdO_c0"), resp), 0);
+        assertEquals(0, s.getCoefficient(s.getCompoundIndex("cpdA_c0"), resp), 0);
+        assertEquals(-4, s.getCoefficient(s.getCompoundIndex("cpdE_c0"), s.getReactionIndex("bio1")), 0);
+        // energy is made by glyc, resp and ferm, and used by mk and bio1
+        int e = s.getCompoundIndex("cpdE_c0");
+        String[] users = new String[s.getRowEnd(e) - s.getRowStart(e)];
+        for (int p = s.getRowStart(e); p < s.getRowEnd(e); p++) {
+            users[p - s.getRowStart(e)] = s.getReactionId(s.getColumn(p));
+        }
+        assertArrayEquals(new String[] {"glyc_c0", "resp_c0", "ferm_c0", "mk_c0", "bio1"}, users);
+        assertEquals(-1, s.getReactionIndex("nope"));
+        assertEquals(-1, s.getCompoundIndex("nope"));
+    }
+
+    @Test
+    public void testMergesDuplicatesAndDropsZeros() throws Exception {
+        StoichiometricMatrix s = StoichiometricMatrix.fromModel(new ObjectMapper().readTree(
+                "{\"modelcompounds\": [{\"id\": \"b_c0\"}, {\"id\": \"a_c0\"}, {\"id\": \"c_c0\"}]," +
+                "\"modelreactions\": [{\"id\": \"r1\", \"modelReactionReagents\": [" +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/a_c0\", \"coefficient\": -1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/b_c0\", \"coefficient\": 1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/a_c0\", \"coefficient\": -1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/c_c0\", \"coefficient\": 1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/c_c0\", \"coefficient\": -1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/x_c0\", \"coefficient\": 1}]}]}"));
+        assertEquals(1, s.getColumnCount());
+        assertEquals(1, s.getCompartmentCount());
+        // rows are sorted, a is summed, c cancels out and x is not a compound
+        assertArrayEquals(new int[] {0, 2}, s.getColumnStarts());
+        assertArrayEquals(new int[] {0, 1}, s.getRowIndexes());
+        assertArrayEquals(new double[] {1, -2}, s.getColumnValues(), 0);
+    }
+
+    @Test
+    public void testWriteAndMap() throws Exception {
+        StoichiometricMatrix s = StoichiometricMatrix.fromModel(model);
+        Path path = dir.resolve("model.smat");
+        s.write(path);
+        StoichiometricMatrix mapped = StoichiometricMatrix.map(path);
+        assertMatrixEquals(s, mapped);
+        // the file can be written again from the mapping, and replaced
+        Path copy = dir.resolve("copy.smat");
+        mapped.write(copy);
+        assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(copy));
+        mapped.write(path);
+        assertMatrixEquals(s, StoichiometricMatrix.map(path));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+    @Test
+    public void testLayout() throws Exception {
+        // a three row, two column matrix, so that every int section but the
+        // first needs padding
+        StoichiometricMatrix s = StoichiometricMatrix.fromModel(new ObjectMapper().readTree(
+                "{\"modelcompartments\": [{\"id\": \"c0\"}]," +
+                "\"modelcompounds\": [{\"id\": \"a_c0\", \"modelcompartment_ref\": \"~/modelcompartments/id/c0\"}," +
+                "{\"id\": \"b_c0\", \"modelcompartment_ref\": \"~/modelcompartments/id/c0\"}," +
+                "{\"id\": \"c_c0\", \"modelcompartment_ref\": \"~/modelcompartments/id/c0\"}]," +
+                "\"modelreactions\": [{\"id\": \"r1\", \"modelReactionReagents\": [" +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/a_c0\", \"coefficient\": -1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/b_c0\", \"coefficient\": 2}]}]," +
+                "\"biomasses\": [{\"id\": \"bio1\", \"biomasscompounds\": [" +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/b_c0\", \"coefficient\": -1}," +
+                "{\"modelcompound_ref\": \"~/modelcompounds/id/c_c0\", \"coefficient\": 0.5}]}]}"));
+        Path path = dir.resolve("small.smat");
+        s.write(path);
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        // header: magic, version, rows, columns, non zeros, reactions
+        assertEquals("SMBF", new String(Arrays.copyOf(b.array(), 4), StandardCharsets.US_ASCII));
+        assertEquals(MAGIC, b.getInt());
+        assertEquals(1, b.getInt());
+        assertEquals(3, b.getInt());
+        assertEquals(2, b.getInt());
+        assertEquals(4, b.getInt());
+        assertEquals(1, b.getInt());
+        // compartment, compound and reaction ids, length prefixed
+        assertArrayEquals(new String[] {"c0"}, strings(b));
+        assertArrayEquals(new String[] {"a_c0", "b_c0", "c_c0"}, strings(b));
+        assertArrayEquals(new String[] {"r1", "bio1"}, strings(b));
+        // then 8 byte aligned sections
+        align(b);
+        assertArrayEquals(new int[] {0, 0, 0}, ints(b, 3));
+        assertArrayEquals(new int[] {0, 2, 4}, ints(b, 3));
+        assertArrayEquals(new int[] {0, 1, 1, 2}, ints(b, 4));
+        assertArrayEquals(new double[] {-1, 2, -1, 0.5}, doubles(b, 4), 0);
+        assertArrayEquals(new int[] {0, 1, 3, 4}, ints(b, 4));
+        assertArrayEquals(new int[] {0, 0, 1, 1}, ints(b, 4));
+        assertArrayEquals(new double[] {-1, 2, -1, 0.5}, doubles(b, 4), 0);
+        assertEquals(0, b.remaining());
+        assertMatrixEquals(s, StoichiometricMatrix.map(path));
+    }
+
+    @Test
+    public void testMapRejectsBadFiles() throws Exception {
+        Path path = dir.resolve("model.smat");
+        StoichiometricMatrix.fromModel(model).write(path);
+        byte[] good = Files.readAllBytes(path);
+
+        Files.write(path, Arrays.copyOf(good, good.length / 2));
+        assertMapFails(path, "Corrupt stoichiometric matrix file");
+        byte[] bad = good.clone();
+        bad[0] ^= 1;
+        Files.write(path, bad);
+        assertMapFails(path, "Not a stoichiometric matrix file");
+        bad = good.clone();
+        bad[4] = 2;
+        Files.write(path, bad);
+        assertMapFails(path, "Unsupported stoichiometric matrix file version 2");
+        bad = good.clone();
+        // one more row than there are compound ids
+        bad[8]++;
+        Files.write(path, bad);
+        assertMapFails(path, "Corrupt stoichiometric matrix file");
+    }
+
+    private static void assertMapFails(Path path, String message) {
+        try {
+            StoichiometricMatrix.map(path);
+            fail("mapped a bad file");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+    }
+
+    private static void assertMatrixEquals(StoichiometricMatrix expected, StoichiometricMatrix actual) {
+        assertEquals(expected.toString(), actual.toString());
+        for (int i = 0; i < expected.getRowCount(); i++) {
+            assertEquals(expected.getCompoundId(i), actual.getCompoundId(i));
+            assertEquals(i, actual.getCompoundIndex(expected.getCompoundId(i)));
+            assertEquals(expected.getCompartment(i), actual.getCompartment(i));
+            assertEquals(expected.getRowStart(i), actual.getRowStart(i));
+            assertEquals(expected.getRowEnd(i), actual.getRowEnd(i));
+        }
+        for (int j = 0; j < expected.getColumnCount(); j++) {
+            assertEquals(expected.getReactionId(j), actual.getReactionId(j));
+            assertEquals(j, actual.getReactionIndex(expected.getReactionId(j)));
+            assertEquals(expected.isBiomass(j), actual.isBiomass(j));
+            for (int i = 0; i < expected.getRowCount(); i++) {
+                assertEquals(expected.getCoefficient(i, j), actual.getCoefficient(i, j), 0);
+            }
+        }
+        for (int c = 0; c < expected.getCompartmentCount(); c++) {
+            assertEquals(expected.getCompartmentId(c), actual.getCompartmentId(c));
+        }
+        assertArrayEquals(expected.getColumnStarts(), actual.getColumnStarts());
+        assertArrayEquals(expected.getRowIndexes(), actual.getRowIndexes());
+        assertArrayEquals(expected.getColumnValues(), actual.getColumnValues(), 0);
+        for (int p = 0; p < expected.getNonZeroCount(); p++) {
+            assertEquals(expected.getColumn(p), actual.getColumn(p));
+            assertEquals(expected.getRowValue(p), actual.getRowValue(p), 0);
+        }
+    }
+
+    private static String[] strings(ByteBuffer b) {
+        String[] ret = new String[b.getInt()];
+        for (int i = 0; i < ret.length; i++) {
+            byte[] s = new byte[b.getInt()];
+            b.get(s);
+            ret[i] = new String(s, StandardCharsets.UTF_8);
+        }
+        return ret;
+    }
+
+    private static void align(ByteBuffer b) {
+        while (b.position() % 8 != 0) {
+            assertEquals(0, b.get());
+        }
+    }
+
+    private static int[] ints(ByteBuffer b, int count) {
+        int[] ret = new int[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = b.getInt();
+        }
+        align(b);
+        return ret;
+    }
+
+    private static double[] doubles(ByteBuffer b, int count) {
+        double[] ret = new double[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = b.getDouble();
+        }
+        return ret;
+    }
+}
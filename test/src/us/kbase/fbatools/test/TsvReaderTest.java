@@ -0,0 +1,267 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.fbatools.ModelTsv;
+import us.kbase.fbatools.ModelTsvFiles;
+import us.kbase.fbatools.TsvReader;
+
+public class TsvReaderTest {
+    private static final Path DATA = Paths.get("test/data");
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("tsv-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static List<ModelTsv.Reaction> reactions(Path path) throws IOException {
+        List<ModelTsv.Reaction> ret = new ArrayList<ModelTsv.Reaction>();
+        try (ModelTsv.RecordReader<ModelTsv.Reaction> r = ModelTsv.readReactions(path)) {
+            for (ModelTsv.Reaction rxn = r.next(); rxn != null; rxn = r.next()) {
+                ret.add(rxn);
+            }
+        }
+        return ret;
+    }
+
+    private static List<ModelTsv.Compound> compounds(Path path) throws IOException {
+        List<ModelTsv.Compound> ret = new ArrayList<ModelTsv.Compound>();
+        try (ModelTsv.RecordReader<ModelTsv.Compound> r = ModelTsv.readCompounds(path)) {
+            for (ModelTsv.Compound cpd = r.next(); cpd != null; cpd = r.next()) {
+                ret.add(cpd);
+            }
+        }
+        return ret;
+    }
+
+    private static List<List<String>> rows(TsvReader r) throws IOException {
+        List<List<String>> ret = new ArrayList<List<String>>();
+        ret.add(r.getColumns());
+        while (r.next()) {
+            List<String> row = new ArrayList<String>();
+            for (int c = 0; c < r.getFieldCount(); c++) {
+                row.add(r.getString(c));
+            }
+            ret.add(row);
+        }
+        return ret;
+    }
+
+    private Path write(String name, String content) throws IOException {
+        Path p = dir.resolve(name);
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        return p;
+    }
+
+    @Test
+    public void testReadModelTables() throws Exception {
+        List<ModelTsv.Reaction> rxns = reactions(DATA.resolve("iMR1_799-reactions.tsv"));
+        assertEquals(821, rxns.size());
+        ModelTsv.Reaction first = rxns.get(0);
+        assertEquals("4HBTE_c0", first.getId());
+        assertEquals("=", first.getDirection());
+        assertEquals("Cytosol_0", first.getCompartment());
+        assertEquals("SO_1256", first.getGpr());
+        assertEquals("Cofactor and Prosthetic Group Biosynthesis", first.getPathway());
+        assertNull(first.getEnzyme());
+        assertNull(first.getFlux());
+        assertEquals("(SO_3705 or SO_1322)", rxns.get(1).getGpr());
+        assertEquals("XPK_c0", rxns.get(820).getId());
+
+        List<ModelTsv.Compound> cpds = compounds(DATA.resolve("iMR1_799-compounds.tsv"));
+        assertEquals(745, cpds.size());
+        assertEquals("cpd01892_c0", cpds.get(0).getId());
+        assertEquals(-3, cpds.get(0).getCharge(), 0);
+        assertNull(cpds.get(0).getAliases());
+        assertEquals("H2O", cpds.get(1).getFormula());
+        assertEquals(0, cpds.get(1).getCharge(), 0);
+        assertEquals("wo4_c0", cpds.get(744).getId());
+
+        rxns = reactions(DATA.resolve("test_model-reactions.tsv"));
+        assertEquals(1377, rxns.size());
+        assertEquals("rxn02201_c0", rxns.get(0).getId());
+        assertEquals("fig|211586.9.peg.1077", rxns.get(0).getGpr());
+        assertEquals("bio1", rxns.get(1376).getId());
+        cpds = compounds(DATA.resolve("test_model-compounds.tsv"));
+        assertEquals(1443, cpds.size());
+        assertEquals("ABEE_c0", cpds.get(0).getName());
+        assertEquals("cpd03585_c0", cpds.get(1442).getId());
+    }
+
+    @Test
+    public void testSmallWindows() throws Exception {
+        // lines are up to 6 KB long, so small windows are remapped and grown
+        // mid line on almost every row
+        for (String table : new String[] {"test_model-reactions.tsv", "iMR1_799-compounds.tsv"}) {
+            Path path = DATA.resolve(table);
+            List<List<String>> expected;
+            try (TsvReader r = TsvReader.open(path)) {
+                expected = rows(r);
+            }
+            for (int window : new int[] {1, 2, 3, 7, 100, 4095, 4096, 65536}) {
+                try (TsvReader r = TsvReader.open(path, window)) {
+                    assertEquals(table + " in " + window + " byte windows", expected, rows(r));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLineEndingsAcrossWindows() throws Exception {
+        // a byte order mark, every line ending, blank lines, padding and no
+        // final line ending
+        Path path = write("endings.tsv", "\uFEFFid\tName \r\na\t1\r\n\r\n  \t \nb\t 2 \rc\n\r\nd\t4\re\t5");
+        List<List<String>> expected = Arrays.asList(Arrays.asList("id", "Name"), Arrays.asList("a", "1"),
+                Arrays.asList("b", "2"), Arrays.asList("c"), Arrays.asList("d", "4"), Arrays.asList("e", "5"));
+        long size = Files.size(path);
+        // every window size puts a boundary between the \r and \n of a \r\n
+        // somewhere
+        for (int window = 1; window <= size + 1; window++) {
+            try (TsvReader r = TsvReader.open(path, window)) {
+                assertEquals("window " + window, expected, rows(r));
+            }
+        }
+        try (TsvReader r = TsvReader.open(path, 3)) {
+            assertEquals(1, r.indexOf("name"));
+            assertTrue(r.next());
+            assertEquals(2, r.getLineNumber());
+            assertTrue(r.next());
+            // the blank lines are counted
+            assertEquals(5, r.getLineNumber());
+            assertEquals(2, r.getDouble(1, 0), 0);
+            assertTrue(r.next());
+            assertEquals(-1, r.getDouble(1, -1), 0);
+            assertTrue(r.isEmpty(1));
+            assertNull(r.getString(1));
+        }
+    }
+
+    @Test
+    public void testCommasAndColumnNames() throws Exception {
+        Path path = write("commas.csv", "ID,Min_Flux,flux\nr1,-1.5,2e3\n");
+        try (TsvReader r = TsvReader.open(path)) {
+            assertEquals(Arrays.asList("ID", "Min_Flux", "flux"), r.getColumns());
+            assertEquals(0, r.indexOf("id"));
+            assertEquals(1, r.indexOf("minflux"));
+            assertEquals(1, r.indexOf("MIN_FLUX"));
+            assertEquals(-1, r.indexOf("max_flux"));
+            assertTrue(r.next());
+            assertEquals("r1", r.getString("Id"));
+            assertEquals(-1.5, r.getDouble(1, 0), 0);
+            assertEquals(2000, r.getDouble(2, 0), 0);
+            assertFalse(r.next());
+            assertFalse(r.next());
+        }
+    }
+
+    @Test
+    public void testBadTables() throws Exception {
+        assertOpenFails(write("empty.tsv", ""), "Empty table file");
+        assertOpenFails(write("nodelim.tsv", "id\nr1\n"), "either does not use commas or tabs");
+        try {
+            ModelTsv.readReactions(write("noid.tsv", "name\tflux\nx\t1\n"));
+            fail("read a table without ids");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Table file missing required column 'id'"));
+        }
+        try (ModelTsv.RecordReader<ModelTsv.Reaction> r = ModelTsv.readReactions(
+                write("nan.tsv", "id\tflux\nr1\t1\n\nr2\tlots\n"))) {
+            assertEquals(1, r.next().getFlux(), 0);
+            try {
+                r.next();
+                fail("read a word as a number");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Not a number in column flux at line 4"));
+            }
+        }
+    }
+
+    private static void assertOpenFails(Path path, String message) {
+        try {
+            TsvReader.open(path).close();
+            fail("opened " + path);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    @Test
+    public void testModelRoundTrip() throws Exception {
+        List<ModelTsv.Reaction> rxns = reactions(DATA.resolve("iMR1_799-reactions.tsv"));
+        List<ModelTsv.Compound> cpds = compounds(DATA.resolve("iMR1_799-compounds.tsv"));
+        ModelTsvFiles files = ModelTsv.writeModel(dir, "iMR1_799", rxns, cpds);
+        assertEquals(dir.resolve("iMR1_799-reactions.tsv").toString(), files.getReactionsFile().getPath());
+        assertEquals(fields(rxns), fields(reactions(Paths.get(files.getReactionsFile().getPath()))));
+        assertEquals(compoundFields(cpds), compoundFields(compounds(Paths.get(files.getCompoundsFile().getPath()))));
+    }
+
+    @Test
+    public void testFbaRoundTrip() throws Exception {
+        Path path = dir.resolve("fba-reactions.tsv");
+        try (ModelTsv.RecordWriter<ModelTsv.Reaction> w = ModelTsv.writeReactions(path, true)) {
+            w.write(new ModelTsv.Reaction().withId("rxn1_c0").withDirection(">").withName("a\tname\r\nwith breaks")
+                    .withFlux(2.0).withMinFlux(-0.25).withLowerBound(-1000.0).withMaxFlux(1e20)
+                    .withUpperBound(1000.0));
+            // the enzyme is not a column of the FBA layout
+            w.write(new ModelTsv.Reaction().withId("rxn2_c0").withEnzyme("1.1.1.1"));
+        }
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertEquals(String.join("\t", ModelTsv.FBA_REACTION_COLUMNS), lines.get(0));
+        assertEquals("rxn1_c0\t>\t\t\ta name  with breaks\t\t\t\t2\t-0.25\t-1000\t1.0E20\t1000", lines.get(1));
+        List<ModelTsv.Reaction> read = reactions(path);
+        assertEquals(2, read.size());
+        assertEquals("a name  with breaks", read.get(0).getName());
+        assertEquals(2, read.get(0).getFlux(), 0);
+        assertEquals(-0.25, read.get(0).getMinFlux(), 0);
+        assertEquals(1e20, read.get(0).getMaxFlux(), 0);
+        assertNull(read.get(0).getGpr());
+        assertNull(read.get(1).getEnzyme());
+        assertNull(read.get(1).getFlux());
+    }
+
+    private static List<List<Object>> fields(List<ModelTsv.Reaction> rxns) {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        for (ModelTsv.Reaction r : rxns) {
+            ret.add(Arrays.<Object>asList(r.getId(), r.getDirection(), r.getCompartment(), r.getGpr(), r.getName(),
+                    r.getEnzyme(), r.getPathway(), r.getReference(), r.getEquation(), r.getDefinition()));
+        }
+        return ret;
+    }
+
+    private static List<List<Object>> compoundFields(List<ModelTsv.Compound> cpds) {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        for (ModelTsv.Compound c : cpds) {
+            ret.add(Arrays.<Object>asList(c.getId(), c.getName(), c.getFormula(), c.getCharge(), c.getAliases(),
+                    c.getCompartment(), c.getInchikey(), c.getSmiles()));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,375 @@
+package us.kbase.fbatools.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import us.kbase.fbatools.ModelExcel;
+import us.kbase.fbatools.ModelTsv;
+import us.kbase.fbatools.TableReader;
+import us.kbase.fbatools.TableWriter;
+import us.kbase.fbatools.XlsxReader;
+import us.kbase.fbatools.XlsxWriter;
+
+public class XlsxReaderTest {
+    private static final Path DATA = Paths.get("test/data");
+    private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("xlsx-test");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> left = Files.list(dir)) {
+            for (Path p : (Iterable<Path>) left::iterator) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static <T> List<T> readAll(ModelTsv.RecordReader<T> r) throws IOException {
+        List<T> ret = new ArrayList<T>();
+        try {
+            for (T t = r.next(); t != null; t = r.next()) {
+                ret.add(t);
+            }
+        } finally {
+            r.close();
+        }
+        return ret;
+    }
+
+    private static List<List<Object>> reactionFields(List<ModelTsv.Reaction> rxns) {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        for (ModelTsv.Reaction r : rxns) {
+            ret.add(Arrays.<Object>asList(r.getId(), r.getDirection(), r.getCompartment(), r.getGpr(), r.getName(),
+                    r.getEnzyme(), r.getPathway(), r.getReference(), r.getEquation(), r.getDefinition(),
+                    r.getFlux(), r.getMinFlux(), r.getLowerBound(), r.getMaxFlux(), r.getUpperBound()));
+        }
+        return ret;
+    }
+
+    private static List<List<Object>> compoundFields(List<ModelTsv.Compound> cpds) {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        for (ModelTsv.Compound c : cpds) {
+            ret.add(Arrays.<Object>asList(c.getId(), c.getName(), c.getFormula(), c.getCharge(), c.getAliases(),
+                    c.getCompartment(), c.getInchikey(), c.getSmiles(), c.getUptake(), c.getMinUptake(),
+                    c.getLowerBound(), c.getMaxUptake(), c.getUpperBound()));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testReadModelWorkbook() throws Exception {
+        // the same model as the test_model TSV tables, with shared strings
+        try (XlsxReader wb = XlsxReader.open(DATA.resolve("test_model.xlsx"))) {
+            assertEquals(Arrays.asList("compounds", "MehReactions"), wb.getSheetNames());
+            assertEquals("MehReactions", wb.findSheet("reaction"));
+            assertNull(wb.findSheet("Media"));
+            List<ModelTsv.Reaction> rxns = readAll(ModelExcel.readReactions(wb));
+            List<ModelTsv.Compound> cpds = readAll(ModelExcel.readCompounds(wb));
+            assertEquals(1377, rxns.size());
+            assertEquals(1443, cpds.size());
+            assertEquals("rxn02201_c0", rxns.get(0).getId());
+            assertEquals("bio1", rxns.get(1376).getId());
+            // the name is stored as &amp; in the shared string table
+            assertEquals("rxn08971_c0", rxns.get(161).getId());
+            assertEquals("NADH dehydrogenase (menaquinone-8 & 0 protons)_c0", rxns.get(161).getName());
+            // the workbook was saved with every = turned into -, which
+            // leaves the ids, compartments, gprs, formulas and charges alone
+            List<ModelTsv.Reaction> tsvRxns = readAll(ModelTsv.readReactions(
+                    DATA.resolve("test_model-reactions.tsv")));
+            for (int i = 0; i < rxns.size(); i++) {
+                assertEquals(Arrays.asList(tsvRxns.get(i).getId(), tsvRxns.get(i).getCompartment(),
+                        tsvRxns.get(i).getGpr()), Arrays.asList(rxns.get(i).getId(), rxns.get(i).getCompartment(),
+                        rxns.get(i).getGpr()));
+            }
+            List<ModelTsv.Compound> tsvCpds = readAll(ModelTsv.readCompounds(
+                    DATA.resolve("test_model-compounds.tsv")));
+            for (int i = 0; i < cpds.size(); i++) {
+                assertEquals(Arrays.<Object>asList(tsvCpds.get(i).getId(), tsvCpds.get(i).getFormula(),
+                        tsvCpds.get(i).getCharge()), Arrays.<Object>asList(cpds.get(i).getId(),
+                        cpds.get(i).getFormula(), cpds.get(i).getCharge()));
+            }
+        }
+    }
+
+    @Test
+    public void testModelRoundTrip() throws Exception {
+        List<ModelTsv.Reaction> rxns = readAll(ModelTsv.readReactions(DATA.resolve("iMR1_799-reactions.tsv")));
+        List<ModelTsv.Compound> cpds = readAll(ModelTsv.readCompounds(DATA.resolve("iMR1_799-compounds.tsv")));
+        Path path = dir.resolve("model.xlsx");
+        ModelExcel.writeModel(path, rxns, cpds, false);
+        try (XlsxReader wb = XlsxReader.open(path)) {
+            assertEquals(Arrays.asList(ModelExcel.COMPOUNDS_SHEET, ModelExcel.REACTIONS_SHEET), wb.getSheetNames());
+            assertEquals(reactionFields(rxns), reactionFields(readAll(ModelExcel.readReactions(wb))));
+            assertEquals(compoundFields(cpds), compoundFields(readAll(ModelExcel.readCompounds(wb))));
+        }
+        // the FBA layout carries the fluxes but not the enzymes
+        for (int i = 0; i < rxns.size(); i++) {
+            rxns.get(i).withFlux(i / 8.0).withMinFlux(-i - 0.5).withLowerBound(-1000.0).withMaxFlux(i * 1e17)
+                    .withUpperBound(1000.0).withEnzyme(null).withReference(null);
+        }
+        ModelExcel.writeModel(path, rxns, cpds, true);
+        try (XlsxReader wb = XlsxReader.open(path)) {
+            assertEquals(reactionFields(rxns), reactionFields(readAll(ModelExcel.readReactions(wb))));
+        }
+    }
+
+    @Test
+    public void testEscaping() throws Exception {
+        Path path = dir.resolve("text.xlsx");
+        try (XlsxWriter wb = XlsxWriter.create(path)) {
+            TableWriter sheet = wb.beginSheet("Text & <more>", Arrays.asList("id", "text", "number"));
+            sheet.writeRow("markup", "<b>&amp;</b> \"quoted\" 'single' ]]>", 1.5);
+            sheet.writeRow("control", "a\u0001b\u001fc\td", -0.0);
+            sheet.writeRow("unicode", "\u03b1 \u2192 \u03b2 \ud83d\ude00", 1e300);
+            sheet.writeRow("spaces", "  padded  ", Double.NaN);
+            sheet.writeRow("empty", "", null);
+            sheet.writeRow(null, null, null);
+            sheet.writeRow("last", "x", 12345678901234L);
+        }
+        try (XlsxReader wb = XlsxReader.open(path);
+                TableReader sheet = wb.openSheet("Text & <more>")) {
+            assertEquals(Arrays.asList("id", "text", "number"), sheet.getColumns());
+            List<List<String>> rows = new ArrayList<List<String>>();
+            while (sheet.next()) {
+                rows.add(Arrays.asList(sheet.getString(0), sheet.getString(1), sheet.getString(2)));
+            }
+            assertEquals(Arrays.asList(
+                    Arrays.asList("markup", "<b>&amp;</b> \"quoted\" 'single' ]]>", "1.5"),
+                    Arrays.asList("control", "a b c\td", "0"),
+                    Arrays.asList("unicode", "\u03b1 \u2192 \u03b2 \ud83d\ude00", "1.0E300"),
+                    // values are trimmed, and a NaN is written as text
+                    Arrays.asList("spaces", "padded", "NaN"),
+                    // a row whose only value is an id; the blank row is skipped
+                    Arrays.asList("empty", null, null),
+                    Arrays.asList("last", "x", "12345678901234")), rows);
+        }
+    }
+
+    @Test
+    public void testSharedStringsAndCellTypes() throws Exception {
+        Path path = dir.resolve("shared.xlsx");
+        String sst = "<sst xmlns=\"" + MAIN_NS + "\">" +
+                "<si><t>id</t></si>" +
+                "<si><t>value</t></si>" +
+                "<si><t>A &amp; B &lt;C&gt; &#233;</t></si>" +
+                // rich text runs are joined, phonetic runs dropped
+                "<si><r><t>run</t></r><r><rPr><b/></rPr><t xml:space=\"preserve\"> two</t></r>" +
+                "<rPh sb=\"0\" eb=\"1\"><t>ignored</t></rPh></si>" +
+                "<si><t>note</t></si>" +
+                "</sst>";
+        String sheet = "<worksheet xmlns=\"" + MAIN_NS + "\"><sheetData>" +
+                "<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\" t=\"s\"><v>1</v></c>" +
+                "<c r=\"D1\" t=\"s\"><v>4</v></c></row>" +
+                "<row r=\"2\"><c r=\"A2\" t=\"s\"><v>2</v></c><c r=\"B2\"><v>2.5</v></c></row>" +
+                "<row r=\"3\"/>" +
+                "<row r=\"4\"><c r=\"A4\" t=\"s\"><v>3</v></c><c r=\"B4\" t=\"b\"><v>1</v></c>" +
+                "<c r=\"D4\" t=\"inlineStr\"><is><t>in &amp; line</t></is></c></row>" +
+                // no cell references, a formula with its cached result and an
+                // unknown shared string
+                "<row><c t=\"str\"><f>CONCAT(\"f\",\"x\")</f><v>fx</v></c><c><f>1+1</f><v>2</v></c>" +
+                "<c t=\"s\"><v>99</v></c><c t=\"s\"><v>4</v></c></row>" +
+                "</sheetData></worksheet>";
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(path))) {
+            put(zip, "xl/workbook.xml", "<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS + "\"><sheets>" +
+                    "<sheet name=\"Data\" sheetId=\"1\" r:id=\"rId1\"/></sheets></workbook>");
+            put(zip, "xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"" +
+                    "http://schemas.openxmlformats.org/package/2006/relationships\"><Relationship Id=\"rId1\" " +
+                    "Type=\"" + REL_NS + "/worksheet\" Target=\"worksheets/data.xml\"/></Relationships>");
+            put(zip, "xl/sharedStrings.xml", sst);
+            put(zip, "xl/worksheets/data.xml", sheet);
+        }
+        try (XlsxReader wb = XlsxReader.open(path);
+                TableReader data = wb.openSheet("Data")) {
+            assertEquals(Arrays.asList("id", "value", "", "note"), data.getColumns());
+            assertEquals(3, data.indexOf("note"));
+            assertTrue(data.next());
+            assertEquals("A & B <C> \u00e9", data.getString(0));
+            assertEquals(2.5, data.getDouble(1, 0), 0);
+            assertEquals(2, data.getFieldCount());
+            assertTrue(data.next());
+            assertEquals("run two", data.getString(0));
+            assertEquals(1, data.getDouble(1, 0), 0);
+            assertTrue(data.isEmpty(2));
+            assertEquals("in & line", data.getString(3));
+            assertTrue(data.next());
+            assertEquals("fx", data.getString(0));
+            assertEquals(2, data.getDouble(1, 0), 0);
+            assertEquals("", data.getString(2));
+            assertEquals("note", data.getString(3));
+            assertFalse(data.next());
+        }
+    }
+
+    private static void put(ZipOutputStream zip, String name, String xml) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(xml.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    @Test
+    public void testMediaRoundTrip() throws Exception {
+        List<ModelTsv.MediaCompound> media = readAll(ModelTsv.readMedia(DATA.resolve("test_media.tsv")));
+        assertEquals(18, media.size());
+        assertEquals("cpd12855", media.get(0).getCompound());
+        assertEquals("Al", media.get(0).getName());
+        assertNull(media.get(0).getFormula());
+        assertEquals(-100, media.get(0).getMinFlux(), 0);
+        assertEquals(100, media.get(0).getMaxFlux(), 0);
+        assertEquals(0.001, media.get(0).getConcentration(), 0);
+        assertEquals("cpd00034", media.get(17).getCompound());
+        assertEquals("Zn", media.get(17).getFormula());
+        // other layouts of the same columns
+        List<ModelTsv.MediaCompound> example = readAll(ModelTsv.readMedia(DATA.resolve("media_example.tsv")));
+        assertEquals("D-Glucose", example.get(0).getCompound());
+        assertEquals(-100, example.get(0).getMinFlux(), 0);
+        assertEquals(100, example.get(0).getMaxFlux(), 0);
+        assertEquals("cpd00001", readAll(ModelTsv.readMedia(DATA.resolve("medio.tsv"))).get(0).getCompound());
+
+        Path tsv = dir.resolve("media.tsv");
+        try (ModelTsv.RecordWriter<ModelTsv.MediaCompound> w = ModelTsv.writeMedia(tsv)) {
+            for (ModelTsv.MediaCompound c : media) {
+                w.write(c);
+            }
+        }
+        assertEquals(Files.readAllLines(DATA.resolve("test_media.tsv")), Files.readAllLines(tsv));
+        Path xlsx = dir.resolve("media.xlsx");
+        ModelExcel.writeMedia(xlsx, media);
+        try (XlsxReader wb = XlsxReader.open(xlsx)) {
+            assertEquals(Arrays.asList(ModelExcel.MEDIA_SHEET), wb.getSheetNames());
+            assertEquals(mediaFields(media), mediaFields(readAll(ModelExcel.readMedia(wb))));
+        }
+        // a workbook without a media sheet is read from its first sheet
+        try (XlsxWriter wb = XlsxWriter.create(xlsx)) {
+            wb.beginSheet("Sheet1", Arrays.asList("compounds", "minflux", "maxflux")).writeRow("cpd00027", -5, 5);
+            wb.beginSheet("Other", Arrays.asList("x"));
+        }
+        try (XlsxReader wb = XlsxReader.open(xlsx)) {
+            List<ModelTsv.MediaCompound> read = readAll(ModelExcel.readMedia(wb));
+            assertEquals(1, read.size());
+            assertEquals("cpd00027", read.get(0).getCompound());
+            assertEquals(-5, read.get(0).getMinFlux(), 0);
+            assertNull(read.get(0).getConcentration());
+        }
+    }
+
+    private static List<List<Object>> mediaFields(List<ModelTsv.MediaCompound> media) {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        for (ModelTsv.MediaCompound c : media) {
+            ret.add(Arrays.<Object>asList(c.getCompound(), c.getName(), c.getFormula(), c.getMinFlux(),
+                    c.getMaxFlux(), c.getConcentration()));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testPhenotypeSimulationRoundTrip() throws Exception {
+        List<ModelTsv.PhenotypeSimulation> sims = readAll(ModelTsv.readPhenotypeSimulations(
+                DATA.resolve("phenotype_simulation.tsv")));
+        assertEquals(94, sims.size());
+        ModelTsv.PhenotypeSimulation first = sims.get(0);
+        assertEquals("none", first.getGeneKo());
+        assertEquals("KBaseMedia", first.getMediaWorkspace());
+        assertEquals("Carbon-D-Glucose", first.getMedia());
+        assertEquals(1, first.getGrowth(), 0);
+        assertEquals(0.642031, first.getSimulatedGrowth(), 0);
+        assertEquals(1, first.getSimulatedGrowthFraction(), 0);
+        assertEquals(Long.valueOf(0), first.getGapfilledReactionCount());
+        assertNull(first.getGapfilledReactions());
+        assertEquals("Nitrogen-Nitrate", sims.get(93).getMedia());
+        // a phenotype set has no simulation columns
+        List<ModelTsv.PhenotypeSimulation> set = readAll(ModelTsv.readPhenotypeSimulations(
+                DATA.resolve("NewPhenotypeSet.tsv")));
+        assertEquals("Glucose;NH3", set.get(0).getAdditionalCompounds());
+        assertNull(set.get(0).getSimulatedGrowth());
+
+        sims.get(1).withGeneKo("g1;g2").withGapfilledReactionCount(2L).withGapfilledReactions("rxn1;rxn2");
+        Path tsv = dir.resolve("sims.tsv");
+        try (ModelTsv.RecordWriter<ModelTsv.PhenotypeSimulation> w = ModelTsv.writePhenotypeSimulations(tsv)) {
+            for (ModelTsv.PhenotypeSimulation s : sims) {
+                w.write(s);
+            }
+        }
+        assertEquals(simulationFields(sims), simulationFields(readAll(ModelTsv.readPhenotypeSimulations(tsv))));
+        Path xlsx = dir.resolve("sims.xlsx");
+        ModelExcel.writePhenotypeSimulations(xlsx, sims);
+        try (XlsxReader wb = XlsxReader.open(xlsx)) {
+            assertEquals(Arrays.asList(ModelExcel.PHENOTYPE_SIMULATIONS_SHEET), wb.getSheetNames());
+            assertEquals(simulationFields(sims), simulationFields(readAll(ModelExcel.readPhenotypeSimulations(wb))));
+        }
+    }
+
+    private static List<List<Object>> simulationFields(List<ModelTsv.PhenotypeSimulation> sims) {
+        List<List<Object>> ret = new ArrayList<List<Object>>();
+        for (ModelTsv.PhenotypeSimulation s : sims) {
+            ret.add(Arrays.<Object>asList(s.getGeneKo(), s.getMediaWorkspace(), s.getMedia(),
+                    s.getAdditionalCompounds(), s.getGrowth(), s.getSimulatedGrowth(),
+                    s.getSimulatedGrowthFraction(), s.getGapfilledReactionCount(), s.getGapfilledReactions()));
+        }
+        return ret;
+    }
+
+    @Test
+    public void testBadWorkbooks() throws Exception {
+        Path path = dir.resolve("bad.xlsx");
+        try (XlsxWriter wb = new XlsxWriter(Files.newOutputStream(path))) {
+            wb.beginSheet("Only", Arrays.asList("id"));
+            for (String name : new String[] {"", "a/b", "ONLY", "0123456789012345678901234567890x"}) {
+                try {
+                    wb.beginSheet(name, Arrays.asList("id"));
+                    fail("began sheet " + name);
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+        }
+        try (XlsxReader wb = XlsxReader.open(path)) {
+            try {
+                ModelExcel.readReactions(wb);
+                fail("read reactions from a workbook without them");
+            } catch (IOException e) {
+                assertEquals("The workbook has no Reactions sheet", e.getMessage());
+            }
+            try {
+                wb.openSheet("Missing");
+                fail("opened a missing sheet");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(path)) {
+            out.write("not a zip".getBytes(StandardCharsets.UTF_8));
+        }
+        try {
+            XlsxReader.open(path).close();
+            fail("opened a file that is not a workbook");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}